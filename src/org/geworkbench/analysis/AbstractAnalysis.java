@@ -8,11 +8,13 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.PrintStream;
 import java.io.Serializable;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Vector;
 
@@ -31,6 +33,9 @@ import org.geworkbench.bison.datastructure.complex.panels.DSPanel;
 import org.geworkbench.bison.model.analysis.Analysis;
 import org.geworkbench.bison.model.analysis.ParamValidationResults;
 import org.geworkbench.bison.model.analysis.ParameterPanel;
+import org.geworkbench.builtin.projects.history.ProvenanceLog;
+import org.geworkbench.builtin.projects.history.ProvenanceStep;
+import org.geworkbench.builtin.projects.history.SelectionRecord;
 import org.geworkbench.engine.config.PluginRegistry;
 import org.geworkbench.engine.management.ComponentClassLoader;
 import org.geworkbench.util.FilePathnameUtils;
@@ -632,6 +637,23 @@ public abstract class AbstractAnalysis implements Analysis, Serializable,
 	 */
 	public String generateHistoryForMaSetView(
 			DSMicroarraySetView<DSGeneMarker, DSMicroarray> maSetView) {
+		StringBuilder ans = new StringBuilder();
+		for (Object part : historyForMaSetView(maSetView)) {
+			ans.append(part instanceof SelectionRecord ? ((SelectionRecord) part)
+					.getText()
+					: part);
+		}
+		return ans.toString();
+	}
+
+	/*
+	 * The text of generateHistoryForMaSetView in parts, with the arrays and
+	 * markers listed as SelectionRecords, which are shared rather than
+	 * written out again when the same selection is used once more.
+	 */
+	private List<Object> historyForMaSetView(
+			DSMicroarraySetView<DSGeneMarker, DSMicroarray> maSetView) {
+		List<Object> parts = new ArrayList<Object>();
 		StringBuilder ans = new StringBuilder(
 				"=The MicroarraySetView used for analysis: ");
 		/* Generate text for microarrays/groups */
@@ -646,50 +668,60 @@ public abstract class AbstractAnalysis implements Analysis, Serializable,
 				ans.append("==Used Microarray Sets [")
 						.append(paneltest.size() + "]==")
 						.append(NEWLINE);
+				List<String> lines = new ArrayList<String>();
 				for (DSPanel<DSMicroarray> temp : paneltest) {
-					ans.append(TAB + temp.toString()).append(
-							NEWLINE);
+					lines.add(TAB + temp.toString());
 					for (DSMicroarray temp2 : temp) {
-						ans.append(TAB).append(TAB)
-								.append(temp2.toString())
-								.append(NEWLINE);
+						lines.add(TAB + TAB + temp2.toString());
 					}
 				}
+				parts.add(ans.toString());
+				ans.setLength(0);
+				parts.add(SelectionRecord.listing("", lines));
 			} else if (maSetView.items().getClass() == CSMicroarraySet.class) {
 				log.debug("situation 2: microarraySets not selected");
 				CSMicroarraySet exprSet = (CSMicroarraySet) maSetView.items();
 				ans.append("==Used Microarrays [").append(exprSet.size())
 						.append("]==").append(NEWLINE);
+				List<String> labels = new ArrayList<String>(exprSet.size());
 				for (Iterator<DSMicroarray> iterator = exprSet.iterator(); iterator
 						.hasNext();) {
 					DSMicroarray array = iterator.next();
-					ans.append(TAB).append(array.getLabel())
-							.append(NEWLINE);
+					labels.add(array.getLabel());
 				}
+				parts.add(ans.toString());
+				ans.setLength(0);
+				parts.add(SelectionRecord.listing(TAB, labels));
 			}
 			ans.append("==End of Microarray Sets==").append(NEWLINE);
 			/* Generate text for markers */
 
 			DSPanel<DSGeneMarker> paneltest = maSetView.getMarkerPanel();
 
+			List<String> labels;
 			if ((paneltest != null) && (paneltest.size() > 0)) {
 				log.debug("situation 3: markers selected");
 
 				ans.append("==Used Markers [").append(paneltest.size())
 						.append("]==\n");
+				labels = new ArrayList<String>(paneltest.size());
 				for (Object obj : paneltest) {
 					CSExpressionMarker temp = (CSExpressionMarker) obj;
-					ans.append("\t").append(temp.getLabel()).append("\n");
+					labels.add(temp.getLabel());
 				}
 			} else {
 				log.debug("situation 4: no markers selected.");
 				DSItemList<DSGeneMarker> markers = maSetView.markers();
 				ans.append("==Used Markers [").append(markers.size())
 						.append("]==\n");
+				labels = new ArrayList<String>(markers.size());
 				for (DSGeneMarker marker : markers) {
-					ans.append("\t").append(marker.getLabel()).append("\n");
+					labels.add(marker.getLabel());
 				}
 			}
+			parts.add(ans.toString());
+			ans.setLength(0);
+			parts.add(SelectionRecord.listing(TAB, labels));
 
 			ans.append("==End of Used Markers==").append(NEWLINE);
 		} catch (ClassCastException cce) {
@@ -697,7 +729,32 @@ public abstract class AbstractAnalysis implements Analysis, Serializable,
 			log.error(cce);
 		}
 		ans.append("=End of MicroarraySetView data=");
-		return ans.toString();
+		parts.add(ans.toString());
+		return parts;
+	}
+
+	/**
+	 * A history step for running this analysis on a view, recording the
+	 * current parameters and the selections of the view.
+	 * 
+	 * @param description
+	 *            analysis name and parameter summary to display
+	 */
+	public ProvenanceStep createHistoryStep(String description,
+			DSMicroarraySetView<DSGeneMarker, DSMicroarray> maSetView) {
+		Map<String, Serializable> parameters = new LinkedHashMap<String, Serializable>();
+		if (aspp != null) {
+			Map<Serializable, Serializable> values = aspp.getParameters();
+			if (values != null) {
+				for (Map.Entry<Serializable, Serializable> e : values
+						.entrySet()) {
+					parameters.put(String.valueOf(e.getKey()), e.getValue());
+				}
+			}
+		}
+		return ProvenanceStep.withListings(null, getClass().getName(),
+				description, parameters, historyForMaSetView(maSetView),
+				ProvenanceLog.fingerprint(maSetView.getMicroarraySet()));
 	}
 
 	@SuppressWarnings("rawtypes")
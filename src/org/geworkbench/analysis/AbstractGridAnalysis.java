@@ -2,6 +2,7 @@ package org.geworkbench.analysis;
 
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -26,6 +27,22 @@ public abstract class AbstractGridAnalysis extends AbstractAnalysis {
 	private static final long serialVersionUID = -7310721066701534971L;
 	private Log log = LogFactory.getLog(AbstractGridAnalysis.class);
 
+	/* view blocks kept track of, over all services */
+	static final int MAX_SUBMITTED_INPUTS = 256;
+
+	/*
+	 * "service URL content hash" of the view blocks services have accepted,
+	 * least recently used first
+	 */
+	@SuppressWarnings("serial")
+	private static final Map<String, Boolean> submittedInputs = new LinkedHashMap<String, Boolean>(
+			16, 0.75f, true) {
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+			return size() > MAX_SUBMITTED_INPUTS;
+		}
+	};
+
 	/**
 	 * Analyses extending this class will implement this method, setting the
 	 * name of the service. This name should be equivalent to one of the names
@@ -48,6 +65,17 @@ public abstract class AbstractGridAnalysis extends AbstractAnalysis {
 	 */
 	protected abstract boolean useMicroarraySetView();
 
+	/**
+	 * Services that accept a {@link MicroarrayViewBlock} (or its
+	 * {@link MicroarrayViewBlock.Reference}) in place of the view return true;
+	 * the view is then sent as a compact block and not as its object graph.
+	 * 
+	 * @return false unless overridden
+	 */
+	protected boolean useCompactMicroarrayView() {
+		return false;
+	}
+
 	/**
 	 * Some grid analyses use "other" data sets (ie. EdgeList) as inputs, some
 	 * don't.
@@ -76,11 +104,34 @@ public abstract class AbstractGridAnalysis extends AbstractAnalysis {
 	 */
 	public List<Serializable> handleBisonInputs(
 			DSMicroarraySetView<DSGeneMarker, DSMicroarray> microarraySetView, DSDataSet<?> otherDataset) {
+		return handleBisonInputs(microarraySetView, otherDataset, null);
+	}
+
+	/**
+	 * Packs the bison inputs for the grid service at <code>serviceUrl</code>.
+	 * A view this service has already accepted, as reported to
+	 * {@link #submissionFinished(String, List, boolean)}, is sent as a
+	 * {@link MicroarrayViewBlock.Reference}.
+	 * 
+	 * @param microarraySetView
+	 * @param otherDataset
+	 * @param serviceUrl
+	 *            null to send every input in full
+	 * @return {@link List} - A list of service inputs.
+	 */
+	public List<Serializable> handleBisonInputs(
+			DSMicroarraySetView<DSGeneMarker, DSMicroarray> microarraySetView,
+			DSDataSet<?> otherDataset, String serviceUrl) {
 
 		List<Serializable> serviceParameterList = new ArrayList<Serializable>();
 
 		if (useMicroarraySetView()) {
-			serviceParameterList.add(microarraySetView);
+			if (useCompactMicroarrayView()) {
+				serviceParameterList.add(packMicroarraySetView(
+						microarraySetView, serviceUrl));
+			} else {
+				serviceParameterList.add(microarraySetView);
+			}
 		}
 		if (useOtherDataSet()) {
 			if (otherDataset != null) {
@@ -96,6 +147,54 @@ public abstract class AbstractGridAnalysis extends AbstractAnalysis {
 		return serviceParameterList;
 	}
 	
+	/*
+	 * a reference if this service has already accepted the same content,
+	 * otherwise the block itself
+	 */
+	private Serializable packMicroarraySetView(
+			DSMicroarraySetView<DSGeneMarker, DSMicroarray> microarraySetView,
+			String serviceUrl) {
+		MicroarrayViewBlock block = MicroarrayViewBlock
+				.fromView(microarraySetView);
+		if (serviceUrl != null) {
+			synchronized (submittedInputs) {
+				if (submittedInputs.get(serviceUrl + " "
+						+ block.getContentHash()) != null) {
+					log.debug("Sending a reference to "
+							+ block.getContentHash());
+					return block.getReference();
+				}
+			}
+		}
+		return block;
+	}
+
+	/**
+	 * Report how the submission of inputs from
+	 * {@link #handleBisonInputs(DSMicroarraySetView, DSDataSet, String)} to
+	 * <code>serviceUrl</code> went. The view blocks of a successful submission
+	 * are sent as references from then on; after a failure, those sent as
+	 * references are sent in full again, in case the service has lost them.
+	 */
+	public static void submissionFinished(String serviceUrl,
+			List<Serializable> inputs, boolean succeeded) {
+		synchronized (submittedInputs) {
+			for (Serializable input : inputs) {
+				if (succeeded && input instanceof MicroarrayViewBlock) {
+					submittedInputs.put(serviceUrl + " "
+							+ ((MicroarrayViewBlock) input).getContentHash(),
+							Boolean.TRUE);
+				} else if (!succeeded
+						&& input instanceof MicroarrayViewBlock.Reference) {
+					submittedInputs.remove(serviceUrl
+							+ " "
+							+ ((MicroarrayViewBlock.Reference) input)
+									.getContentHash());
+				}
+			}
+		}
+	}
+
 	public abstract ParamValidationResults validInputData(DSMicroarraySetView<DSGeneMarker, DSMicroarray> maSetView, DSDataSet<?> refMASet);
 	
 	/**
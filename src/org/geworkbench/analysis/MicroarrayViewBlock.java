@@ -0,0 +1,358 @@
+package org.geworkbench.analysis;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.security.DigestInputStream;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+import org.geworkbench.bison.annotation.CSAnnotationContextManager;
+import org.geworkbench.bison.annotation.DSAnnotationContext;
+import org.geworkbench.bison.datastructure.biocollections.microarrays.DSMicroarraySet;
+import org.geworkbench.bison.datastructure.biocollections.views.DSMicroarraySetView;
+import org.geworkbench.bison.datastructure.bioobjects.markers.DSGeneMarker;
+import org.geworkbench.bison.datastructure.bioobjects.microarray.DSMicroarray;
+import org.geworkbench.bison.datastructure.complex.panels.DSItemList;
+import org.geworkbench.bison.util.ExpressionMatrix;
+
+/**
+ * The part of a {@link DSMicroarraySetView} a grid service works on: the
+ * active markers and arrays with their labels, the phenotype labels of the
+ * current array context and the expression values as a float matrix
+ * (missing values are NaN).
+ *
+ * On the wire the block is a single deflated columnar record instead of the
+ * object graph of the data set, and each block carries a content hash so an
+ * input the service already holds can be sent as a {@link Reference}.
+ *
+ * @version $Id$
+ */
+public final class MicroarrayViewBlock implements Serializable {
+
+	private static final long serialVersionUID = 2284771620592163528L;
+
+	private static final int MAGIC = 0x47575642; // "GWVB"
+	private static final int VERSION = 1;
+
+	private transient String label;
+	private transient String[] markerLabels;
+	private transient int[] markerSerials;
+	private transient String[] arrayLabels;
+	private transient int[] arraySerials;
+	private transient String contextName;
+	private transient String[][] phenotypes;
+	/* row-major, one row per marker */
+	private transient float[] values;
+
+	private transient byte[] packed;
+	private transient String hash;
+
+	private MicroarrayViewBlock() {
+	}
+
+	/** Snapshot the active markers and arrays of the view. */
+	public static MicroarrayViewBlock fromView(
+			DSMicroarraySetView<? extends DSGeneMarker, ? extends DSMicroarray> view) {
+		MicroarrayViewBlock block = new MicroarrayViewBlock();
+		DSMicroarraySet set = view.getMicroarraySet();
+		block.label = set == null ? null : set.getLabel();
+
+		DSItemList<? extends DSGeneMarker> markers = view.markers();
+		block.markerLabels = new String[markers.size()];
+		for (int i = 0; i < block.markerLabels.length; i++) {
+			block.markerLabels[i] = markers.get(i).getLabel();
+		}
+
+		DSItemList<? extends DSMicroarray> arrays = view.items();
+		block.arrayLabels = new String[arrays.size()];
+		block.arraySerials = new int[arrays.size()];
+		block.phenotypes = new String[arrays.size()][];
+		DSAnnotationContext<DSMicroarray> context = set == null ? null
+				: CSAnnotationContextManager.getInstance().getCurrentContext(
+						set);
+		block.contextName = context == null ? null : context.getName();
+		for (int j = 0; j < block.arrayLabels.length; j++) {
+			DSMicroarray array = arrays.get(j);
+			block.arrayLabels[j] = array.getLabel();
+			block.arraySerials[j] = array.getSerial();
+			block.phenotypes[j] = context == null ? new String[0] : context
+					.getLabelsForItem(array);
+		}
+
+		ExpressionMatrix matrix = ExpressionMatrix.fromView(view, true);
+		block.markerSerials = matrix.getRowSerials();
+		block.values = matrix.getValues();
+		block.pack();
+		return block;
+	}
+
+	/**
+	 * Hex SHA-1 of the uncompressed record; equal blocks have equal hashes
+	 * whatever the compressor does.
+	 */
+	public String getContentHash() {
+		return hash;
+	}
+
+	/** A stand-in for this block for a service that has already received it. */
+	public Reference getReference() {
+		return new Reference(hash);
+	}
+
+	/** Size of the block on the wire, not counting serialization headers. */
+	public int getPackedSize() {
+		return packed.length;
+	}
+
+	public String getLabel() {
+		return label;
+	}
+
+	public int getMarkerCount() {
+		return markerLabels.length;
+	}
+
+	public int getArrayCount() {
+		return arrayLabels.length;
+	}
+
+	public String[] getMarkerLabels() {
+		return markerLabels;
+	}
+
+	/** Serial of each marker (row) in the original data set. */
+	public int[] getMarkerSerials() {
+		return markerSerials;
+	}
+
+	public String[] getArrayLabels() {
+		return arrayLabels;
+	}
+
+	/** Serial of each array (column) in the original data set. */
+	public int[] getArraySerials() {
+		return arraySerials;
+	}
+
+	/** Name of the array context the phenotypes come from, or null. */
+	public String getPhenotypeContext() {
+		return contextName;
+	}
+
+	/** Labels of array <i>column</i> in the phenotype context. */
+	public String[] getPhenotypes(int column) {
+		return phenotypes[column];
+	}
+
+	public float getValue(int row, int column) {
+		return values[row * arrayLabels.length + column];
+	}
+
+	/** The values as a matrix; it shares storage with this block. */
+	public ExpressionMatrix getMatrix() {
+		return new ExpressionMatrix(markerLabels.length, arrayLabels.length,
+				values, markerSerials);
+	}
+
+	/*
+	 * The record is written once, through a digest on the uncompressed side.
+	 * Values go column by column with the four bytes of each float in
+	 * separate planes, which lets deflate find the shared exponent bytes.
+	 */
+	private void pack() {
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-1");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+		try {
+			DataOutputStream out = new DataOutputStream(
+					new BufferedOutputStream(new DigestOutputStream(
+							new DeflaterOutputStream(bytes, deflater, 1 << 16),
+							digest), 1 << 16));
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			writeString(out, label);
+			int rows = markerLabels.length;
+			int columns = arrayLabels.length;
+			out.writeInt(rows);
+			out.writeInt(columns);
+			for (int i = 0; i < rows; i++) {
+				out.writeInt(markerSerials[i]);
+				writeString(out, markerLabels[i]);
+			}
+			writeString(out, contextName);
+			for (int j = 0; j < columns; j++) {
+				out.writeInt(arraySerials[j]);
+				writeString(out, arrayLabels[j]);
+				out.writeInt(phenotypes[j].length);
+				for (String phenotype : phenotypes[j]) {
+					writeString(out, phenotype);
+				}
+			}
+			byte[] planes = new byte[rows * 4];
+			for (int j = 0; j < columns; j++) {
+				for (int i = 0; i < rows; i++) {
+					int bits = Float.floatToRawIntBits(values[i * columns + j]);
+					planes[i] = (byte) (bits >>> 24);
+					planes[rows + i] = (byte) (bits >>> 16);
+					planes[2 * rows + i] = (byte) (bits >>> 8);
+					planes[3 * rows + i] = (byte) bits;
+				}
+				out.write(planes);
+			}
+			out.close();
+		} catch (IOException e) {
+			// not thrown by in-memory streams
+			throw new IllegalStateException(e);
+		} finally {
+			deflater.end();
+		}
+		packed = bytes.toByteArray();
+		hash = toHex(digest.digest());
+	}
+
+	private void unpack() throws IOException {
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-1");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+		DataInputStream in = new DataInputStream(new BufferedInputStream(
+				new DigestInputStream(new InflaterInputStream(
+						new ByteArrayInputStream(packed)), digest), 1 << 16));
+		if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+			throw new InvalidObjectException("not a microarray view block");
+		}
+		label = readString(in);
+		int rows = in.readInt();
+		int columns = in.readInt();
+		markerLabels = new String[rows];
+		markerSerials = new int[rows];
+		for (int i = 0; i < rows; i++) {
+			markerSerials[i] = in.readInt();
+			markerLabels[i] = readString(in);
+		}
+		contextName = readString(in);
+		arrayLabels = new String[columns];
+		arraySerials = new int[columns];
+		phenotypes = new String[columns][];
+		for (int j = 0; j < columns; j++) {
+			arraySerials[j] = in.readInt();
+			arrayLabels[j] = readString(in);
+			phenotypes[j] = new String[in.readInt()];
+			for (int k = 0; k < phenotypes[j].length; k++) {
+				phenotypes[j][k] = readString(in);
+			}
+		}
+		values = new float[rows * columns];
+		byte[] planes = new byte[rows * 4];
+		for (int j = 0; j < columns; j++) {
+			in.readFully(planes);
+			for (int i = 0; i < rows; i++) {
+				values[i * columns + j] = Float
+						.intBitsToFloat((planes[i] & 0xff) << 24
+								| (planes[rows + i] & 0xff) << 16
+								| (planes[2 * rows + i] & 0xff) << 8
+								| (planes[3 * rows + i] & 0xff));
+			}
+		}
+		hash = toHex(digest.digest());
+	}
+
+	private void writeObject(ObjectOutputStream out) throws IOException {
+		out.defaultWriteObject();
+		out.writeInt(packed.length);
+		out.write(packed);
+	}
+
+	private void readObject(ObjectInputStream in) throws IOException,
+			ClassNotFoundException {
+		in.defaultReadObject();
+		packed = new byte[in.readInt()];
+		in.readFully(packed);
+		unpack();
+	}
+
+	private static void writeString(DataOutputStream out, String s)
+			throws IOException {
+		if (s == null) {
+			out.writeInt(-1);
+		} else {
+			byte[] bytes = s.getBytes("UTF-8");
+			out.writeInt(bytes.length);
+			out.write(bytes);
+		}
+	}
+
+	private static String readString(DataInputStream in) throws IOException {
+		int length = in.readInt();
+		if (length < 0) {
+			return null;
+		}
+		byte[] bytes = new byte[length];
+		in.readFully(bytes);
+		return new String(bytes, "UTF-8");
+	}
+
+	private static String toHex(byte[] bytes) {
+		StringBuilder hex = new StringBuilder(bytes.length * 2);
+		for (byte b : bytes) {
+			hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(
+					Character.forDigit(b & 0xf, 16));
+		}
+		return hex.toString();
+	}
+
+	/**
+	 * Sent in place of a block the service is known to hold. A service that
+	 * no longer has it should fail the call, after which the client calls
+	 * {@link AbstractGridAnalysis#forgetSubmittedInputs(String)} and resends.
+	 */
+	public static final class Reference implements Serializable {
+		private static final long serialVersionUID = -6027187046131549186L;
+
+		private final String hash;
+
+		public Reference(String hash) {
+			this.hash = hash;
+		}
+
+		public String getContentHash() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			return o instanceof Reference && ((Reference) o).hash.equals(hash);
+		}
+
+		@Override
+		public int hashCode() {
+			return hash.hashCode();
+		}
+
+		@Override
+		public String toString() {
+			return "MicroarrayViewBlock " + hash;
+		}
+	}
+
+}
@@ -1,5 +1,6 @@
 package org.geworkbench.bison.datastructure.biocollections;
 
+import java.util.BitSet;
 import java.util.HashSet;
 import java.util.Hashtable;
 import java.util.Map;
@@ -218,6 +219,15 @@ public class CSMarkerVector extends CSSequentialItemList<DSGeneMarker> {
 		return marker;
 	}
 
+	/* remove the items at the given indices, then rebuild the maps once */
+	public int removeIndices(BitSet indices) {
+		int removed = super.removeIndices(indices);
+		if (removed > 0) {
+			correctMaps();
+		}
+		return removed;
+	}
+
 	/* reset this class to be clear */
 	public void clear() {
 		super.clear();
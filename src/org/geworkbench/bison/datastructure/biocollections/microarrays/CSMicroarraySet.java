@@ -1,19 +1,15 @@
 package org.geworkbench.bison.datastructure.biocollections.microarrays;
 
-import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileWriter;
 import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.util.Collections;
 import java.util.Comparator;
-import java.util.Iterator;
 import java.util.TreeMap;
 import java.util.Vector;
 
 import javax.swing.JOptionPane;
-import javax.swing.ProgressMonitor;
 
 import org.apache.commons.math.stat.StatUtils;
 import org.geworkbench.bison.annotation.CSAnnotationContext;
@@ -240,70 +236,14 @@ final public class CSMicroarraySet extends CSDataSet<DSMicroarray> implements DS
         return null;
     }
 
+	/**
+	 * Write the set in the .exp format; see
+	 * {@link MicroarraySetExporter#writeExpressionFile(File)}.
+	 */
 	public void writeToFile(String fileName) {
-		File file = new File(fileName);
-
 		try {
-			BufferedWriter writer = new BufferedWriter(new FileWriter(file));
-			// start processing the data.
-			// Start with the header line, comprising the array names.
-			String outLine = "AffyID" + "\t" + "Annotation";
-			for (int i = 0; i < size(); ++i) {
-				outLine = outLine.concat("\t" + get(i).toString());
-			}
-			writer.write(outLine);
-			writer.newLine();
-
-			DSAnnotationContextManager manager = CSAnnotationContextManager
-					.getInstance();
-			int n = manager.getNumberOfContexts(this);
-			for (int i = 0; i < n; i++) {
-				DSAnnotationContext<DSMicroarray> context = manager.getContext(
-						this, i);
-				StringBuilder line = new StringBuilder("Description" + '\t'
-						+ context.getName());
-				for (Iterator<DSMicroarray> iterator = this.iterator(); iterator
-						.hasNext();) {
-					DSMicroarray microarray = iterator.next();
-					String label = "";
-					String[] labels = context.getLabelsForItem(microarray);
-					if (labels.length > 0) {
-						label = labels[0];
-						if (labels.length > 1) { // multiple labels
-							for (int j = 1; j < labels.length; j++)
-								label += "|" + labels[j];
-						}
-					}
-					line.append('\t' + label);
-				}
-				writer.write(line.toString());
-				writer.newLine();
-			}
-
-			ProgressMonitor pm = new ProgressMonitor(null, "Total "
-					+ markerVector.size(), "saving ", 0, markerVector.size());
-			// Proceed to write one marker at a time
-			for (int i = 0; i < markerVector.size(); ++i) {
-				pm.setProgress(i);
-				pm.setNote("saving " + i);
-				outLine = markerVector.get(i).getLabel();
-				outLine = outLine.concat('\t' + getMarkers().get(i).getLabel());
-				for (int j = 0; j < size(); ++j) {
-					DSMarkerValue mv = get(j).getMarkerValue(i);
-					if (!mv.isMissing())
-						outLine = outLine.concat("\t" + (float) mv.getValue()
-								+ '\t')
-								+ (float) mv.getConfidence();
-					else
-						outLine = outLine.concat("\t" + "n/a" + '\t')
-								+ (float) mv.getConfidence();
-				}
-				writer.write(outLine);
-				writer.newLine();
-			}
-			pm.close();
-			writer.flush();
-			writer.close();
+			new MicroarraySetExporter(this).writeExpressionFile(new File(
+					fileName));
 		} catch (IOException e) {
 			JOptionPane.showMessageDialog(null, "File " + fileName
 					+ " is not saved due to IOException " + e.getMessage(),
@@ -314,36 +254,9 @@ final public class CSMicroarraySet extends CSDataSet<DSMicroarray> implements DS
 	
 	public void writeToTabDelimFile(String fileName)
 	{
-		File file = new File(fileName);	 
-		
 		try {
-			BufferedWriter pw = new BufferedWriter(new FileWriter(file));
-			pw.write("ID");
-			for(int i=0; i< size(); i++) {
-				pw.write("\t"+ get(i));
-			}
-			pw.newLine();
-			ProgressMonitor pm = new ProgressMonitor(null, "Total "
-					+ markerVector.size(), "exporting ", 0, markerVector.size());
-			// Proceed to write one marker at a time
-			for (int i = 0; i < markerVector.size(); ++i) {
-				pm.setProgress(i);
-				pm.setNote("exporting " + i);
-				pw.write(markerVector.get(i).getLabel());			 
-				for (int j = 0; j < size(); ++j) {
-					DSMarkerValue mv = get(j).getMarkerValue(i);
-					if (!mv.isMissing())
-						pw.write("\t" + (float) mv.getValue());
-						 
-					else
-						pw.write("\t" + "n/a" ); 
-				}
-				pw.newLine();
-				 
-			}
-			pm.close();
-			pw.flush();
-			pw.close();
+			new MicroarraySetExporter(this).writeTabDelimited(new File(
+					fileName));
 		} catch (IOException e) {
 			JOptionPane.showMessageDialog(null, "File " + fileName
 					+ " is not saved due to IOException " + e.getMessage(),
@@ -351,10 +264,6 @@ final public class CSMicroarraySet extends CSDataSet<DSMicroarray> implements DS
 
 		}
 	}
-		
-	 
-	
-	
 
 	public void initializeMarkerVector(int markerCount) {
         for (int i = 0; i < markerCount; i++) {
@@ -0,0 +1,503 @@
+package org.geworkbench.bison.datastructure.biocollections.microarrays;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.PushbackInputStream;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.charset.Charset;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.geworkbench.bison.annotation.CSAnnotationContext;
+import org.geworkbench.bison.annotation.CSAnnotationContextManager;
+import org.geworkbench.bison.annotation.DSAnnotationContext;
+import org.geworkbench.bison.annotation.DSAnnotationContextManager;
+import org.geworkbench.bison.datastructure.bioobjects.markers.CSExpressionMarker;
+import org.geworkbench.bison.datastructure.bioobjects.markers.DSGeneMarker;
+import org.geworkbench.bison.datastructure.bioobjects.microarray.CSExpressionMarkerValue;
+import org.geworkbench.bison.datastructure.bioobjects.microarray.CSMicroarray;
+import org.geworkbench.bison.datastructure.bioobjects.microarray.DSMarkerValue;
+import org.geworkbench.bison.datastructure.bioobjects.microarray.DSMicroarray;
+import org.geworkbench.util.Parallel;
+
+/**
+ * Writes a microarray set as an expression (.exp) file, a tab-delimited
+ * matrix or a binary matrix, streaming the rows instead of building each line
+ * by string concatenation.
+ *
+ * Blocks of rows are formatted in parallel into byte buffers and written in
+ * order; numbers are appended to a reused buffer with the same digits as
+ * <code>Float.toString</code>, so the text output is identical to what
+ * {@link CSMicroarraySet#writeToFile(String)} always wrote. Files whose name
+ * ends with ".gz" are compressed.
+ *
+ * The binary form keeps every value and confidence bit for bit, together
+ * with array and marker labels and the array annotations; it is read back by
+ * {@link #readBinary(InputStream)}.
+ *
+ * An exporter can run on a worker thread: it reports progress and stops when
+ * its {@link Progress} is cancelled. It must not run while the set changes.
+ *
+ * @version $Id$
+ */
+public class MicroarraySetExporter {
+
+	/** Told about progress; may stop the export. */
+	public interface Progress {
+		/** <code>done</code> of <code>total</code> rows are written. */
+		void rowsWritten(int done, int total);
+
+		boolean isCancelled();
+	}
+
+	private static final int MAGIC = 0x47574D58; // "GWMX"
+	private static final int VERSION = 1;
+
+	private static final int BLOCK_ROWS = 256;
+	private static final int BUFFER_SIZE = 1 << 18;
+	private static final String NEWLINE = System.getProperty("line.separator");
+
+	private final DSMicroarraySet set;
+	private final Charset charset = Charset.defaultCharset();
+	private final boolean asciiCompatible;
+	private Progress progress = null;
+
+	public MicroarraySetExporter(DSMicroarraySet set) {
+		this.set = set;
+		String probe = "\t\n\r 0123456789.-+EAZaz|n/";
+		boolean compatible;
+		try {
+			compatible = new String(probe.getBytes(charset), "US-ASCII")
+					.equals(probe);
+		} catch (IOException e) {
+			compatible = false;
+		}
+		asciiCompatible = compatible;
+	}
+
+	public void setProgress(Progress progress) {
+		this.progress = progress;
+	}
+
+	/** Open a file for writing, compressed if its name ends with ".gz". */
+	public static OutputStream openOutput(File file) throws IOException {
+		OutputStream out = new FileOutputStream(file);
+		if (file.getName().toLowerCase().endsWith(".gz")) {
+			// favour throughput; the default level is several times slower
+			// for little gain on numeric text
+			return new GZIPOutputStream(out, BUFFER_SIZE) {
+				{
+					def.setLevel(Deflater.BEST_SPEED);
+				}
+			};
+		}
+		return new BufferedOutputStream(out, BUFFER_SIZE);
+	}
+
+	/** Write the .exp form to a file; see {@link #openOutput(File)}. */
+	public void writeExpressionFile(File file) throws IOException {
+		OutputStream out = openOutput(file);
+		try {
+			writeExpressionFile(out);
+		} finally {
+			out.close();
+		}
+	}
+
+	public void writeTabDelimited(File file) throws IOException {
+		OutputStream out = openOutput(file);
+		try {
+			writeTabDelimited(out);
+		} finally {
+			out.close();
+		}
+	}
+
+	public void writeBinary(File file) throws IOException {
+		OutputStream out = openOutput(file);
+		try {
+			writeBinary(out);
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * The .exp form: a header of array names, one "Description" line per
+	 * array annotation, then per marker its label twice and the value and
+	 * confidence in every array.
+	 */
+	public void writeExpressionFile(OutputStream out) throws IOException {
+		StringBuilder head = new StringBuilder("AffyID\tAnnotation");
+		for (int j = 0; j < set.size(); ++j) {
+			head.append('\t').append(set.get(j).toString());
+		}
+		head.append(NEWLINE);
+
+		DSAnnotationContextManager manager = CSAnnotationContextManager
+				.getInstance();
+		int n = manager.getNumberOfContexts(set);
+		for (int c = 0; c < n; c++) {
+			DSAnnotationContext<DSMicroarray> context = manager.getContext(set,
+					c);
+			head.append("Description\t").append(context.getName());
+			for (DSMicroarray microarray : set) {
+				head.append('\t');
+				String[] labels = context.getLabelsForItem(microarray);
+				for (int k = 0; k < labels.length; k++) {
+					if (k > 0) {
+						head.append('|');
+					}
+					head.append(labels[k]);
+				}
+			}
+			head.append(NEWLINE);
+		}
+		write(out, head);
+
+		writeRows(out, new RowFormat() {
+			public void format(StringBuilder line, int marker,
+					DSMarkerValue[][] columns) {
+				String label = set.getMarkers().get(marker).getLabel();
+				line.append(label).append('\t').append(label);
+				for (DSMarkerValue[] column : columns) {
+					DSMarkerValue mv = column[marker];
+					if (!mv.isMissing()) {
+						line.append('\t').append((float) mv.getValue());
+					} else {
+						line.append("\tn/a");
+					}
+					line.append('\t').append((float) mv.getConfidence());
+				}
+				line.append(NEWLINE);
+			}
+		});
+	}
+
+	/** Marker labels and values only; missing values are "n/a". */
+	public void writeTabDelimited(OutputStream out) throws IOException {
+		StringBuilder head = new StringBuilder("ID");
+		for (int j = 0; j < set.size(); j++) {
+			head.append('\t').append(set.get(j).toString());
+		}
+		head.append(NEWLINE);
+		write(out, head);
+
+		writeRows(out, new RowFormat() {
+			public void format(StringBuilder line, int marker,
+					DSMarkerValue[][] columns) {
+				line.append(set.getMarkers().get(marker).getLabel());
+				for (DSMarkerValue[] column : columns) {
+					DSMarkerValue mv = column[marker];
+					if (!mv.isMissing()) {
+						line.append('\t').append((float) mv.getValue());
+					} else {
+						line.append("\tn/a");
+					}
+				}
+				line.append(NEWLINE);
+			}
+		});
+	}
+
+	private interface RowFormat {
+		void format(StringBuilder line, int marker, DSMarkerValue[][] columns);
+	}
+
+	private void writeRows(OutputStream out, final RowFormat format)
+			throws IOException {
+		final int rows = set.getMarkers().size();
+		final DSMarkerValue[][] columns = new DSMarkerValue[set.size()][];
+		for (int j = 0; j < columns.length; j++) {
+			columns[j] = set.get(j).getMarkerValues();
+		}
+		int batch = Math.max(1, Parallel.getParallelism() * 2);
+		final Block[] blocks = new Block[batch];
+		for (int b = 0; b < batch; b++) {
+			blocks[b] = new Block();
+		}
+		for (int first = 0; first < rows; first += batch * BLOCK_ROWS) {
+			checkCancelled();
+			final int start = first;
+			final int count = Math.min(batch, (rows - first + BLOCK_ROWS - 1)
+					/ BLOCK_ROWS);
+			Parallel.forRange(0, count, 1, new Parallel.RangeTask() {
+				public void run(int from, int to) {
+					StringBuilder line = new StringBuilder(1 << 16);
+					for (int b = from; b < to; b++) {
+						line.setLength(0);
+						int end = Math.min(rows, start + (b + 1) * BLOCK_ROWS);
+						for (int i = start + b * BLOCK_ROWS; i < end; i++) {
+							format.format(line, i, columns);
+						}
+						encode(line, blocks[b]);
+					}
+				}
+			});
+			for (int b = 0; b < count; b++) {
+				out.write(blocks[b].bytes, 0, blocks[b].length);
+			}
+			if (progress != null) {
+				progress.rowsWritten(Math.min(rows, first + batch
+						* BLOCK_ROWS), rows);
+			}
+		}
+		out.flush();
+	}
+
+	/* encoded rows of one block; the buffer is reused */
+	private static final class Block {
+		byte[] bytes = new byte[0];
+		int length = 0;
+	}
+
+	private void write(OutputStream out, StringBuilder text)
+			throws IOException {
+		byte[] bytes = text.toString().getBytes(charset);
+		out.write(bytes);
+	}
+
+	/*
+	 * the text as bytes in the default charset; ASCII text is copied straight
+	 * into the block's buffer
+	 */
+	private void encode(StringBuilder text, Block block) {
+		int n = text.length();
+		if (asciiCompatible) {
+			if (block.bytes.length < n) {
+				block.bytes = new byte[Math.max(n, 1 << 16)];
+			}
+			byte[] buffer = block.bytes;
+			int i = 0;
+			for (; i < n; i++) {
+				char c = text.charAt(i);
+				if (c >= 0x80) {
+					break;
+				}
+				buffer[i] = (byte) c;
+			}
+			if (i == n) {
+				block.length = n;
+				return;
+			}
+		}
+		block.bytes = text.toString().getBytes(charset);
+		block.length = block.bytes.length;
+	}
+
+	private void checkCancelled() throws InterruptedIOException {
+		if (progress != null && progress.isCancelled()) {
+			throw new InterruptedIOException("export cancelled");
+		}
+	}
+
+	/**
+	 * The binary matrix: labels, array annotations and markers, then per
+	 * array its values and confidences as raw floats.
+	 */
+	public void writeBinary(OutputStream stream) throws IOException {
+		DataOutputStream out = new DataOutputStream(stream);
+		int rows = set.getMarkers().size();
+		int columns = set.size();
+		out.writeInt(MAGIC);
+		out.writeInt(VERSION);
+		writeString(out, set.getLabel());
+		writeString(out, set.getCompatibilityLabel());
+		writeString(out, set.getAnnotationFileName());
+		out.writeInt(rows);
+		out.writeInt(columns);
+		for (int j = 0; j < columns; j++) {
+			writeString(out, set.get(j).getLabel());
+		}
+
+		DSAnnotationContextManager manager = CSAnnotationContextManager
+				.getInstance();
+		int n = manager.getNumberOfContexts(set);
+		out.writeInt(n);
+		for (int c = 0; c < n; c++) {
+			DSAnnotationContext<DSMicroarray> context = manager.getContext(set,
+					c);
+			writeString(out, context.getName());
+			for (DSMicroarray microarray : set) {
+				String[] labels = context.getLabelsForItem(microarray);
+				out.writeInt(labels.length);
+				for (String label : labels) {
+					writeString(out, label);
+				}
+			}
+		}
+
+		for (int i = 0; i < rows; i++) {
+			DSGeneMarker marker = set.getMarkers().get(i);
+			writeString(out, marker.getLabel());
+			writeString(out, marker.getDescription());
+			writeString(out, marker.getGeneName());
+			out.writeInt(marker.getGeneId());
+		}
+
+		byte[] bytes = new byte[rows * 8];
+		FloatBuffer floats = ByteBuffer.wrap(bytes).asFloatBuffer();
+		for (int j = 0; j < columns; j++) {
+			checkCancelled();
+			DSMarkerValue[] values = set.get(j).getMarkerValues();
+			floats.clear();
+			for (int i = 0; i < rows; i++) {
+				floats.put((float) values[i].getValue());
+			}
+			for (int i = 0; i < rows; i++) {
+				floats.put((float) values[i].getConfidence());
+			}
+			out.write(bytes);
+			if (progress != null) {
+				progress.rowsWritten(
+						(int) ((long) rows * (j + 1) / columns), rows);
+			}
+		}
+		out.flush();
+	}
+
+	/**
+	 * Read a set written by {@link #writeBinary(OutputStream)}, compressed or
+	 * not. Markers come back as expression markers and values as expression
+	 * values.
+	 *
+	 * @throws IOException
+	 *             if the data is not a binary matrix of this version
+	 */
+	public static CSMicroarraySet readBinary(InputStream stream)
+			throws IOException {
+		PushbackInputStream pushback = new PushbackInputStream(stream, 2);
+		int b0 = pushback.read();
+		int b1 = pushback.read();
+		if (b1 >= 0) {
+			pushback.unread(b1);
+		}
+		if (b0 >= 0) {
+			pushback.unread(b0);
+		}
+		InputStream in = pushback;
+		if (b0 == (GZIPInputStream.GZIP_MAGIC & 0xff)
+				&& b1 == (GZIPInputStream.GZIP_MAGIC >> 8)) {
+			in = new GZIPInputStream(pushback, BUFFER_SIZE);
+		}
+		DataInputStream data = new DataInputStream(new BufferedInputStream(in,
+				BUFFER_SIZE));
+		if (data.readInt() != MAGIC || data.readInt() != VERSION) {
+			throw new IOException("not a binary microarray matrix");
+		}
+		CSMicroarraySet set = new CSMicroarraySet();
+		set.setLabel(readString(data));
+		set.setCompatibilityLabel(readString(data));
+		set.setAnnotationFileName(readString(data));
+		final int rows = data.readInt();
+		int columns = data.readInt();
+		String[] arrayLabels = new String[columns];
+		for (int j = 0; j < columns; j++) {
+			arrayLabels[j] = readString(data);
+		}
+
+		int n = data.readInt();
+		String[] contextNames = new String[n];
+		String[][][] contextLabels = new String[n][columns][];
+		for (int c = 0; c < n; c++) {
+			contextNames[c] = readString(data);
+			for (int j = 0; j < columns; j++) {
+				String[] labels = new String[data.readInt()];
+				for (int k = 0; k < labels.length; k++) {
+					labels[k] = readString(data);
+				}
+				contextLabels[c][j] = labels;
+			}
+		}
+
+		for (int i = 0; i < rows; i++) {
+			CSExpressionMarker marker = new CSExpressionMarker(i);
+			marker.setLabel(readString(data));
+			String description = readString(data);
+			if (description != null) {
+				marker.setDescription(description);
+			}
+			String geneName = readString(data);
+			if (geneName != null) {
+				marker.setGeneName(geneName);
+			}
+			marker.setGeneId(data.readInt());
+			marker.getUnigene().set(marker.getLabel());
+			set.getMarkers().add(marker);
+		}
+		set.getMarkers().correctMaps();
+
+		byte[] bytes = new byte[rows * 8];
+		FloatBuffer floats = ByteBuffer.wrap(bytes).asFloatBuffer();
+		for (int j = 0; j < columns; j++) {
+			data.readFully(bytes);
+			CSMicroarray array = new CSMicroarray(j, rows, arrayLabels[j],
+					DSMicroarraySet.DO_NOT_CREATE_VALUE_OBJECT);
+			for (int i = 0; i < rows; i++) {
+				CSExpressionMarkerValue value = new CSExpressionMarkerValue(
+						floats.get(i));
+				value.setConfidence(floats.get(rows + i));
+				array.setMarkerValue(i, value);
+			}
+			set.add(array);
+		}
+
+		CSAnnotationContextManager manager = CSAnnotationContextManager
+				.getInstance();
+		for (int c = 0; c < n; c++) {
+			DSAnnotationContext<DSMicroarray> context = manager.getContext(set,
+					contextNames[c]);
+			CSAnnotationContext.initializePhenotypeContext(context);
+			for (int j = 0; j < columns; j++) {
+				for (String label : contextLabels[c][j]) {
+					context.labelItem(set.get(j), label);
+				}
+			}
+		}
+		return set;
+	}
+
+	/** {@link #readBinary(InputStream)} from a file. */
+	public static CSMicroarraySet readBinary(File file) throws IOException {
+		InputStream in = new FileInputStream(file);
+		try {
+			return readBinary(in);
+		} finally {
+			in.close();
+		}
+	}
+
+	/* strings of any length, or null */
+	private static void writeString(DataOutputStream out, String s)
+			throws IOException {
+		if (s == null) {
+			out.writeInt(-1);
+			return;
+		}
+		byte[] bytes = s.getBytes("UTF-8");
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	private static String readString(DataInputStream in) throws IOException {
+		int n = in.readInt();
+		if (n < 0) {
+			return null;
+		}
+		byte[] bytes = new byte[n];
+		in.readFully(bytes);
+		return new String(bytes, "UTF-8");
+	}
+
+}
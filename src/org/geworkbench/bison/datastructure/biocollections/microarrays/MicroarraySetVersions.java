@@ -0,0 +1,537 @@
+package org.geworkbench.bison.datastructure.biocollections.microarrays;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.geworkbench.bison.datastructure.biocollections.CSMarkerVector;
+import org.geworkbench.bison.datastructure.bioobjects.markers.DSGeneMarker;
+import org.geworkbench.bison.datastructure.bioobjects.microarray.DSMarkerValue;
+import org.geworkbench.bison.datastructure.bioobjects.microarray.DSMicroarray;
+import org.geworkbench.bison.datastructure.bioobjects.microarray.DSMutableMarkerValue;
+import org.geworkbench.bison.datastructure.complex.panels.DSItemList;
+import org.geworkbench.util.Parallel;
+
+/**
+ * Saved versions of the contents of a microarray set, for undoing filtering,
+ * normalization and merges, which change the set in place.
+ * <p>
+ * A version keeps the markers, the arrays and, for each array, a column: the
+ * marker value objects with their values and confidences. Columns are shared
+ * between versions. A column is copied only when its values changed; when
+ * markers were removed, a version refers to the rows of the column it had
+ * before. So a filter costs a row index per marker, and a full copy is made
+ * only of the values a step actually changed.
+ * <p>
+ * Versions form one line. Saving after an undo drops the versions that could
+ * have been redone. Restoring a version puts its markers, arrays and values
+ * back into the set. Other properties of the value objects, such as the
+ * GenePix channels, are not kept.
+ * <p>
+ * The versions refer to their set weakly, so they go with it once nothing
+ * else holds the set, and {@link #remove(DSMicroarraySet)} drops them as
+ * soon as the set leaves the project. They belong to the set object itself,
+ * not to sets equal to it: a copy of the set, such as one read back from
+ * disk, has none.
+ *
+ * @version $Id$
+ */
+public final class MicroarraySetVersions {
+
+	private static Log log = LogFactory.getLog(MicroarraySetVersions.class);
+
+	/* the oldest versions are dropped beyond this */
+	private static final int MAX_VERSIONS = 16;
+	/* sizes used for the memory estimate */
+	private static final int REFERENCE = 8, VALUE = 4, INDEX = 4;
+
+	/* looked up by identity; sets are equal by their id */
+	private static final List<MicroarraySetVersions> instances = new ArrayList<MicroarraySetVersions>();
+
+	/* weak, since the list of instances must not keep the sets */
+	private final WeakReference<DSMicroarraySet> set;
+	private final List<Version> versions = new ArrayList<Version>();
+	/* the version the set was last saved as or restored to */
+	private Version current;
+
+	/** The versions of a set, created empty the first time. */
+	public static synchronized MicroarraySetVersions getInstance(
+			DSMicroarraySet set) {
+		MicroarraySetVersions instance = find(set, false);
+		if (instance == null) {
+			instance = new MicroarraySetVersions(set);
+			instances.add(instance);
+		}
+		return instance;
+	}
+
+	/** The versions of a set, or null if none were ever saved. */
+	public static synchronized MicroarraySetVersions getExisting(
+			DSMicroarraySet set) {
+		return find(set, false);
+	}
+
+	/** Drop the versions of a set that is no longer used. */
+	public static synchronized void remove(DSMicroarraySet set) {
+		find(set, true);
+	}
+
+	/* the versions of the very set, dropping those whose set is gone */
+	private static MicroarraySetVersions find(DSMicroarraySet set,
+			boolean remove) {
+		MicroarraySetVersions found = null;
+		for (Iterator<MicroarraySetVersions> i = instances.iterator(); i
+				.hasNext();) {
+			MicroarraySetVersions instance = i.next();
+			DSMicroarraySet s = instance.set.get();
+			if (s == null || (s == set && remove)) {
+				i.remove();
+			} else if (s == set) {
+				found = instance;
+			}
+		}
+		return found;
+	}
+
+	private MicroarraySetVersions(DSMicroarraySet set) {
+		this.set = new WeakReference<DSMicroarraySet>(set);
+	}
+
+	private DSMicroarraySet set() {
+		DSMicroarraySet s = set.get();
+		if (s == null) {
+			throw new IllegalStateException("The microarray set is gone");
+		}
+		return s;
+	}
+
+	/**
+	 * The values of one array as they were saved. Never changed once made,
+	 * so that versions can share it.
+	 */
+	private static final class Block {
+		final DSMarkerValue[] objects;
+		final float[] values;
+		final float[] confidences;
+
+		Block(DSMarkerValue[] live) {
+			int n = live.length;
+			objects = live.clone();
+			values = new float[n];
+			confidences = new float[n];
+			for (int i = 0; i < n; i++) {
+				if (live[i] != null) {
+					values[i] = (float) live[i].getValue();
+					confidences[i] = (float) live[i].getConfidence();
+				}
+			}
+		}
+
+		long bytes() {
+			return (long) objects.length * (REFERENCE + 2 * VALUE);
+		}
+
+		boolean matches(DSMarkerValue value, int row) {
+			if (value == null) {
+				return objects[row] == null;
+			}
+			return objects[row] == value
+					&& Float.floatToIntBits((float) value.getValue()) == Float
+							.floatToIntBits(values[row])
+					&& Float.floatToIntBits((float) value.getConfidence()) == Float
+							.floatToIntBits(confidences[row]);
+		}
+	}
+
+	/* an array of a version: the rows of a block, or all of it if rows is null */
+	private static final class Column {
+		final Block block;
+		final int[] rows;
+
+		Column(Block block, int[] rows) {
+			this.block = block;
+			this.rows = rows;
+		}
+
+		int row(int i) {
+			return rows == null ? i : rows[i];
+		}
+	}
+
+	/** A saved state of the set. */
+	public static final class Version {
+		private final String name;
+		private final long time = System.currentTimeMillis();
+		private final DSGeneMarker[] markers;
+		private final DSMicroarray[] arrays;
+		private final Column[] columns;
+		private long memory;
+
+		private Version(String name, DSGeneMarker[] markers,
+				DSMicroarray[] arrays, Column[] columns) {
+			this.name = name;
+			this.markers = markers;
+			this.arrays = arrays;
+			this.columns = columns;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public long getTime() {
+			return time;
+		}
+
+		public int getMarkerCount() {
+			return markers.length;
+		}
+
+		public int getArrayCount() {
+			return arrays.length;
+		}
+
+		/**
+		 * The estimated bytes this version holds that the version before it
+		 * does not share, which is what dropping it would free.
+		 */
+		public long getMemoryUsage() {
+			return memory;
+		}
+
+		public String toString() {
+			return name;
+		}
+	}
+
+	/**
+	 * Save the current contents of the set as a new version, unless they are
+	 * those of the version it was last saved as or restored to.
+	 *
+	 * @return the version the set is now at
+	 */
+	public synchronized Version save(String name) {
+		Version version = capture(name);
+		if (version == null) {
+			return current;
+		}
+		append(version);
+		return version;
+	}
+
+	public synchronized boolean canUndo() {
+		return versions.indexOf(current) > 0;
+	}
+
+	public synchronized boolean canRedo() {
+		int index = versions.indexOf(current);
+		return index >= 0 && index < versions.size() - 1;
+	}
+
+	/**
+	 * Go back to the version before the current one. Changes made since the
+	 * current version are saved first, so that they can be redone.
+	 *
+	 * @return the version restored, or null if there is none before
+	 */
+	public synchronized Version undo() {
+		Version latest = capture("Before undo");
+		if (latest != null) {
+			append(latest);
+		}
+		int index = versions.indexOf(current);
+		if (index <= 0) {
+			return null;
+		}
+		Version version = versions.get(index - 1);
+		restore(version);
+		return version;
+	}
+
+	/**
+	 * Go forward to the version after the current one. If the set changed
+	 * since the current version, those changes are saved instead and there is
+	 * nothing to redo.
+	 *
+	 * @return the version restored, or null if there is none after
+	 */
+	public synchronized Version redo() {
+		Version latest = capture("Before redo");
+		if (latest != null) {
+			append(latest);
+			return null;
+		}
+		int index = versions.indexOf(current);
+		if (index < 0 || index == versions.size() - 1) {
+			return null;
+		}
+		Version version = versions.get(index + 1);
+		restore(version);
+		return version;
+	}
+
+	public synchronized List<Version> getVersions() {
+		return Collections.unmodifiableList(new ArrayList<Version>(versions));
+	}
+
+	public synchronized Version getCurrent() {
+		return current;
+	}
+
+	/** The estimated bytes held by all versions. */
+	public synchronized long getMemoryUsage() {
+		long total = 0;
+		for (Version version : versions) {
+			total += version.memory;
+		}
+		return total;
+	}
+
+	/* a version after the current one, whose redo versions are dropped */
+	private void append(Version version) {
+		int index = versions.indexOf(current);
+		versions.subList(index + 1, versions.size()).clear();
+		versions.add(version);
+		if (versions.size() > MAX_VERSIONS) {
+			versions.remove(0);
+			Version oldest = versions.get(0);
+			oldest.memory = memory(oldest, null);
+		}
+		current = version;
+		log.debug("Saved version " + version.name + " of " + set().getLabel()
+				+ ", " + (version.memory >> 10) + " KB");
+	}
+
+	/**
+	 * Take the contents of the set, sharing what is unchanged since the
+	 * current version.
+	 *
+	 * @return null if nothing changed
+	 */
+	private Version capture(String name) {
+		final Version previous = current;
+		DSMicroarraySet set = set();
+		DSItemList<DSGeneMarker> markerList = set.getMarkers();
+		final int markerCount = markerList.size();
+		DSGeneMarker[] markers = markerList
+				.toArray(new DSGeneMarker[markerCount]);
+		DSMicroarray[] arrays = set.toArray(new DSMicroarray[set.size()]);
+
+		// where each marker was in the previous version, -1 if it was not
+		final int[] previousRow = new int[markerCount];
+		Map<DSMicroarray, Integer> previousColumn = new IdentityHashMap<DSMicroarray, Integer>();
+		boolean sameMarkers = false;
+		if (previous != null) {
+			Map<DSGeneMarker, Integer> rows = new IdentityHashMap<DSGeneMarker, Integer>();
+			for (int i = 0; i < previous.markers.length; i++) {
+				rows.put(previous.markers[i], i);
+			}
+			for (int i = 0; i < markerCount; i++) {
+				Integer row = rows.get(markers[i]);
+				previousRow[i] = row == null ? -1 : row;
+			}
+			for (int j = 0; j < previous.arrays.length; j++) {
+				previousColumn.put(previous.arrays[j], j);
+			}
+			sameMarkers = isIdentity(previousRow, previous.markers.length);
+			if (sameMarkers) {
+				markers = previous.markers;
+			}
+			if (same(arrays, previous.arrays)) {
+				arrays = previous.arrays;
+			}
+		}
+
+		// the rows of the new version into each block it can share
+		final Map<int[], int[]> composed = new IdentityHashMap<int[], int[]>();
+		final int[] byRow = sameMarkers ? null : compose(previousRow, null,
+				markerCount);
+		if (previous != null && !sameMarkers) {
+			for (Column column : previous.columns) {
+				if (column.rows != null && !composed.containsKey(column.rows)) {
+					composed.put(column.rows, compose(previousRow, column.rows,
+							markerCount));
+				}
+			}
+		}
+
+		final Column[] columns = new Column[arrays.length];
+		final int[] previousIndex = new int[arrays.length];
+		for (int j = 0; j < arrays.length; j++) {
+			Integer index = previousColumn.get(arrays[j]);
+			previousIndex[j] = index == null ? -1 : index;
+		}
+		final DSMicroarray[] columnArrays = arrays;
+		Parallel.forRange(0, arrays.length, 4, new Parallel.RangeTask() {
+			public void run(int from, int to) {
+				for (int j = from; j < to; j++) {
+					DSMarkerValue[] live = columnArrays[j].getMarkerValues();
+					Column old = previousIndex[j] < 0 ? null
+							: previous.columns[previousIndex[j]];
+					if (old != null && live.length == markerCount) {
+						int[] rows = old.rows == null ? byRow
+								: byRow == null ? old.rows : composed
+										.get(old.rows);
+						if (rows != NO_ROWS && unchanged(live, old.block, rows)) {
+							columns[j] = rows == old.rows ? old : new Column(
+									old.block, normalize(rows,
+											old.block.objects.length));
+							continue;
+						}
+					}
+					columns[j] = new Column(new Block(live), null);
+				}
+			}
+		});
+
+		if (previous != null && markers == previous.markers
+				&& arrays == previous.arrays
+				&& Arrays.equals(columns, previous.columns)) {
+			return null;
+		}
+		Version version = new Version(name, markers, arrays, columns);
+		version.memory = memory(version, previous);
+		return version;
+	}
+
+	/* the rows of the old blocks, or NO_ROWS if a marker is new */
+	private static final int[] NO_ROWS = new int[0];
+
+	private static int[] compose(int[] previousRow, int[] rows, int count) {
+		int[] result = new int[count];
+		for (int i = 0; i < count; i++) {
+			int row = previousRow[i];
+			if (row < 0) {
+				return NO_ROWS;
+			}
+			result[i] = rows == null ? row : rows[row];
+		}
+		return result;
+	}
+
+	/* all rows of a block in order need no index */
+	private static int[] normalize(int[] rows, int blockLength) {
+		return rows != null && isIdentity(rows, blockLength) ? null : rows;
+	}
+
+	private static boolean isIdentity(int[] rows, int length) {
+		if (rows.length != length) {
+			return false;
+		}
+		for (int i = 0; i < rows.length; i++) {
+			if (rows[i] != i) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static boolean same(Object[] a, Object[] b) {
+		if (a.length != b.length) {
+			return false;
+		}
+		for (int i = 0; i < a.length; i++) {
+			if (a[i] != b[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static boolean unchanged(DSMarkerValue[] live, Block block,
+			int[] rows) {
+		for (int i = 0; i < live.length; i++) {
+			if (!block.matches(live[i], rows == null ? i : rows[i])) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/* what the version holds that the one before it does not */
+	private static long memory(Version version, Version previous) {
+		long bytes = (long) version.columns.length * 4 * REFERENCE;
+		if (previous == null || version.markers != previous.markers) {
+			bytes += (long) version.markers.length * REFERENCE;
+		}
+		if (previous == null || version.arrays != previous.arrays) {
+			bytes += (long) version.arrays.length * REFERENCE;
+		}
+		Map<Object, Boolean> shared = new IdentityHashMap<Object, Boolean>();
+		if (previous != null) {
+			for (Column column : previous.columns) {
+				shared.put(column.block, Boolean.TRUE);
+				if (column.rows != null) {
+					shared.put(column.rows, Boolean.TRUE);
+				}
+			}
+		}
+		for (Column column : version.columns) {
+			if (shared.put(column.block, Boolean.TRUE) == null) {
+				bytes += column.block.bytes();
+			}
+			if (column.rows != null
+					&& shared.put(column.rows, Boolean.TRUE) == null) {
+				bytes += (long) column.rows.length * INDEX;
+			}
+		}
+		return bytes;
+	}
+
+	/** Put the markers, arrays and values of a version back into the set. */
+	public synchronized void restore(Version version) {
+		if (!versions.contains(version)) {
+			throw new IllegalArgumentException("Not a version of this set: "
+					+ version);
+		}
+		long start = System.currentTimeMillis();
+		DSMicroarraySet set = set();
+		DSItemList<DSGeneMarker> markers = set.getMarkers();
+		markers.clear();
+		for (int i = 0; i < version.markers.length; i++) {
+			// appends without looking for the label, and numbers the marker
+			markers.add(i, version.markers[i]);
+		}
+		if (markers instanceof CSMarkerVector) {
+			((CSMarkerVector) markers).correctMaps();
+		}
+
+		set.clear();
+		for (int j = 0; j < version.arrays.length; j++) {
+			set.add(j, version.arrays[j]);
+		}
+		final Version restored = version;
+		final int markerCount = version.markers.length;
+		Parallel.forRange(0, version.arrays.length, 4,
+				new Parallel.RangeTask() {
+					public void run(int from, int to) {
+						for (int j = from; j < to; j++) {
+							DSMicroarray array = restored.arrays[j];
+							Column column = restored.columns[j];
+							array.resize(markerCount);
+							for (int i = 0; i < markerCount; i++) {
+								int row = column.row(i);
+								DSMutableMarkerValue value = (DSMutableMarkerValue) column.block.objects[row];
+								if (value != null) {
+									value.setValue(column.block.values[row]);
+									value.setConfidence(column.block.confidences[row]);
+								}
+								array.setMarkerValue(i, value);
+							}
+						}
+					}
+				});
+		current = version;
+		log.info("Restored version " + version.name + " of "
+				+ set.getLabel() + " in "
+				+ (System.currentTimeMillis() - start) + " ms");
+	}
+
+}
@@ -15,6 +15,7 @@ import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 
@@ -43,6 +44,8 @@ public class CSPCADataSet extends CSAncillaryDataSet<DSBioObject> implements DSP
 	private HashMap<Integer, String> percentVariations;
 	private HashMap<Integer, List<String>> eigenVectors;
 	private String variables;
+	/* null for results computed elsewhere */
+	private PrincipalComponents components;
 
 	@SuppressWarnings("rawtypes")
 	public CSPCADataSet(DSDataSet<? extends DSMicroarray> parent, String label, String variables,
@@ -58,6 +61,56 @@ public class CSPCADataSet extends CSAncillaryDataSet<DSBioObject> implements DSP
 		this.percentVariations = percentVariations;
 	}
 
+	/**
+	 * Components computed with the arrays as points and the markers as
+	 * variables. The maps and matrix of the other constructor are derived
+	 * from them when first asked for.
+	 */
+	@SuppressWarnings("rawtypes")
+	public CSPCADataSet(DSDataSet<? extends DSMicroarray> parent, String label,
+			PrincipalComponents components) {
+		super((DSDataSet) parent, label);
+		this.variables = "experiments";
+		this.numPCs = components.getComponentCount();
+		this.components = components;
+	}
+
+	/**
+	 * The loadings, scores and means as primitive arrays, or null when the
+	 * result was computed elsewhere.
+	 */
+	public PrincipalComponents getComponents() {
+		return components;
+	}
+
+	/* the boxed and string forms, from the components */
+	private synchronized void deriveMaps() {
+		if (eigenValues != null || components == null) {
+			return;
+		}
+		int markerCount = components.getMarkerCount();
+		HashMap<Integer, Double> values = new HashMap<Integer, Double>();
+		HashMap<Integer, String> percents = new HashMap<Integer, String>();
+		HashMap<Integer, List<String>> vectors = new HashMap<Integer, List<String>>();
+		float[][] u = new float[markerCount][numPCs];
+		for (int c = 0; c < numPCs; c++) {
+			values.put(c + 1, components.getVariance(c));
+			percents.put(c + 1, String.format("%.2f",
+					100 * components.getVarianceFraction(c)));
+			List<String> vector = new ArrayList<String>(markerCount);
+			for (int i = 0; i < markerCount; i++) {
+				float loading = components.getLoading(i, c);
+				vector.add(String.valueOf(loading));
+				u[i][c] = loading;
+			}
+			vectors.put(c + 1, vector);
+		}
+		u_Matrix = u;
+		percentVariations = percents;
+		eigenVectors = vectors;
+		eigenValues = values;
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * 
@@ -73,6 +126,7 @@ public class CSPCADataSet extends CSAncillaryDataSet<DSBioObject> implements DSP
 	 * @see org.geworkbench.bison.datastructure.biocollections.pca.DSPCADataSet#getEigenValues()
 	 */
 	public HashMap<Integer, Double> getEigenValues() {
+		deriveMaps();
 		return eigenValues;
 	}
 
@@ -82,6 +136,7 @@ public class CSPCADataSet extends CSAncillaryDataSet<DSBioObject> implements DSP
 	 * @see org.geworkbench.bison.datastructure.biocollections.pca.DSPCADataSet#getPercentVars()
 	 */
 	public HashMap<Integer, String> getPercentVars() {
+		deriveMaps();
 		return percentVariations;
 	}
 
@@ -91,6 +146,7 @@ public class CSPCADataSet extends CSAncillaryDataSet<DSBioObject> implements DSP
 	 * @see org.geworkbench.bison.datastructure.biocollections.pca.DSPCADataSet#getEigenVectors()
 	 */
 	public HashMap<Integer, List<String>> getEigenVectors() {
+		deriveMaps();
 		return eigenVectors;
 	}
 
@@ -100,6 +156,7 @@ public class CSPCADataSet extends CSAncillaryDataSet<DSBioObject> implements DSP
 	 * @see org.geworkbench.bison.datastructure.biocollections.pca.DSPCADataSet#getUMatrix()
 	 */
 	public float[][] getUMatrix() {
+		deriveMaps();
 		return u_Matrix;
 	}
 
@@ -0,0 +1,146 @@
+package org.geworkbench.bison.datastructure.biocollections.pca;
+
+import java.io.Serializable;
+import java.util.List;
+
+import org.geworkbench.bison.datastructure.bioobjects.microarray.DSMarkerValue;
+import org.geworkbench.bison.datastructure.bioobjects.microarray.DSMicroarray;
+
+/**
+ * Principal components of a set of arrays, with the markers as variables.
+ * Loadings are kept per marker and scores per array, both row-major in
+ * primitive arrays: the loading of marker row <i>i</i> on component <i>c</i>
+ * is at <code>i * componentCount + c</code>, and likewise for scores.
+ * <p>
+ * The marker means are kept as well, so that arrays added later can be
+ * placed in the same components with {@link #project(DSMicroarray)} without
+ * recomputing them.
+ *
+ * @version $Id$
+ */
+public final class PrincipalComponents implements Serializable {
+
+	private static final long serialVersionUID = 2407939447187165932L;
+
+	private final int componentCount;
+	/* marker serial of each row of the means and loadings */
+	private final int[] markerSerials;
+	private final float[] means;
+	private final float[] loadings;
+	private final float[] scores;
+	/* variance along each component, largest first */
+	private final double[] variances;
+	private final double totalVariance;
+
+	public PrincipalComponents(int componentCount, int[] markerSerials,
+			float[] means, float[] loadings, float[] scores,
+			double[] variances, double totalVariance) {
+		if (means.length != markerSerials.length
+				|| loadings.length != markerSerials.length * componentCount
+				|| scores.length % Math.max(1, componentCount) != 0
+				|| variances.length != componentCount) {
+			throw new IllegalArgumentException(
+					"component dimensions do not match");
+		}
+		this.componentCount = componentCount;
+		this.markerSerials = markerSerials;
+		this.means = means;
+		this.loadings = loadings;
+		this.scores = scores;
+		this.variances = variances;
+		this.totalVariance = totalVariance;
+	}
+
+	public int getComponentCount() {
+		return componentCount;
+	}
+
+	public int getMarkerCount() {
+		return markerSerials.length;
+	}
+
+	/** The number of arrays the components were computed from. */
+	public int getArrayCount() {
+		return componentCount == 0 ? 0 : scores.length / componentCount;
+	}
+
+	public int getMarkerSerial(int row) {
+		return markerSerials[row];
+	}
+
+	public float getMean(int row) {
+		return means[row];
+	}
+
+	public float getLoading(int row, int component) {
+		return loadings[row * componentCount + component];
+	}
+
+	/** The backing row-major marker by component array. */
+	public float[] getLoadings() {
+		return loadings;
+	}
+
+	public float getScore(int array, int component) {
+		return scores[array * componentCount + component];
+	}
+
+	/** The backing row-major array by component array. */
+	public float[] getScores() {
+		return scores;
+	}
+
+	/** The eigenvalue of the covariance matrix for this component. */
+	public double getVariance(int component) {
+		return variances[component];
+	}
+
+	/** The variance summed over all markers, explained or not. */
+	public double getTotalVariance() {
+		return totalVariance;
+	}
+
+	/** The part of the total variance this component explains, 0 to 1. */
+	public double getVarianceFraction(int component) {
+		return totalVariance > 0 ? variances[component] / totalVariance : 0;
+	}
+
+	/**
+	 * The scores of an array that was not part of the computation. The array
+	 * must come from the same set; a missing value counts as the mean.
+	 */
+	public float[] project(DSMicroarray array) {
+		DSMarkerValue[] values = array.getMarkerValues();
+		double[] score = new double[componentCount];
+		for (int i = 0; i < markerSerials.length; i++) {
+			DSMarkerValue value = values[markerSerials[i]];
+			if (value.isMissing()) {
+				continue;
+			}
+			double x = value.getValue() - means[i];
+			if (Double.isNaN(x)) {
+				continue;
+			}
+			int offset = i * componentCount;
+			for (int c = 0; c < componentCount; c++) {
+				score[c] += x * loadings[offset + c];
+			}
+		}
+		float[] result = new float[componentCount];
+		for (int c = 0; c < componentCount; c++) {
+			result[c] = (float) score[c];
+		}
+		return result;
+	}
+
+	/** The scores of several new arrays, row-major like {@link #getScores()}. */
+	public float[] project(List<? extends DSMicroarray> arrays) {
+		float[] result = new float[arrays.size() * componentCount];
+		for (int j = 0; j < arrays.size(); j++) {
+			System.arraycopy(project(arrays.get(j)), 0, result, j
+					* componentCount, componentCount);
+		}
+		return result;
+	}
+
+}
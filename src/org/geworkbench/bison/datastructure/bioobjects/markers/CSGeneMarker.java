@@ -144,6 +144,9 @@ public class CSGeneMarker implements DSGeneMarker, Serializable {
 		String name = label;
 		try {
 			String[] geneSymbol = AnnotationParser.getInfo(label, AnnotationParser.GENE_SYMBOL);
+			if (geneSymbol == null || geneSymbol.length == 0) {
+				return name;
+			}
 			name = geneSymbol[0];
 			for(int i=1; i<geneSymbol.length; i++)
 				name += " /// "+geneSymbol[i];
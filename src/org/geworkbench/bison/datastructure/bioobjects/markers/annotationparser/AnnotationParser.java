@@ -86,6 +86,28 @@ public class AnnotationParser implements Serializable {
 		 
 	}
 
+	/* The annotation of a single dataset, for keeping it while the dataset is written out on its own. */
+	public static APSerializable getSerializable(DSMicroarraySet dataset) {
+		WeakHashMap<DSMicroarraySet, String> chipType = new WeakHashMap<DSMicroarraySet, String>();
+		WeakHashMap<DSMicroarraySet, Map<String, AnnotationFields>> annotation = new WeakHashMap<DSMicroarraySet, Map<String, AnnotationFields>>();
+		String s = datasetToChipTypes.get(dataset);
+		if (s != null) {
+			chipType.put(dataset, s);
+		}
+		Map<String, AnnotationFields> m = datasetToAnnotation.get(dataset);
+		if (m != null) {
+			annotation.put(dataset, m);
+		}
+		return new APSerializable(null, chipType, annotation,
+				new WeakHashMap<String, AnnotationType>());
+	}
+
+	/* Put back what getSerializable(DSMicroarraySet) took, leaving the current dataset alone. */
+	public static void addFromSerializable(APSerializable aps) {
+		datasetToChipTypes.putAll(aps.datasetToChipTypes);
+		datasetToAnnotation.putAll(aps.datasetToAnnotation);
+	}
+
 	public static void setCurrentDataSet(DSDataSet<?> currentDataSet) {
 		if(!(currentDataSet instanceof DSMicroarraySet)) {
 			AnnotationParser.currentDataSet = null;
@@ -193,7 +215,13 @@ public class AnnotationParser implements Serializable {
 		try {
 			String field = "";
 
-			AnnotationFields fields = datasetToAnnotation.get(currentDataSet).get(affyID);
+			// no annotation is the common case for non-Affymetrix data; don't
+			// pay for an exception on every marker
+			Map<String, AnnotationFields> annotation = datasetToAnnotation.get(currentDataSet);
+			if (annotation == null || annotation.get(affyID) == null) {
+				return null;
+			}
+			AnnotationFields fields = annotation.get(affyID);
 			// individual field to be process separately to eventually get rid of the large map
 			if(fieldID.equals(GENE_SYMBOL)) { // same as ABREV
 				field = fields.getGeneSymbol();
@@ -387,8 +387,8 @@ public class GeneOntologyTree {
 	}
 
 	private void getAncestorsHelper(GOTerm term, Set<GOTerm> set) {
-		if (term != null) {
-			set.add(term);
+		// a term reached again along another path has been expanded already
+		if (term != null && set.add(term)) {
 			GOTerm[] parents = term.getParents();
 			for (GOTerm parent : parents) {
 				getAncestorsHelper(parent, set);
@@ -409,7 +409,9 @@ public class GeneOntologyTree {
 	}
 
 	private void getChildrenHelper(GOTerm term, Set<GOTerm> set) {
-		set.add(term);
+		if (!set.add(term)) {
+			return;
+		}
 		GOTerm[] children = term.getChildren();
 		for (GOTerm child : children) {
 			getChildrenHelper(child, set);
@@ -1,21 +1,31 @@
 package org.geworkbench.bison.datastructure.bioobjects.structure;
 
-import java.io.BufferedReader;
-import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
 import java.io.DataInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
-import java.io.FileReader;
-import java.io.FileWriter;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamField;
+import java.lang.ref.SoftReference;
 import java.util.HashMap;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
 
 import org.geworkbench.bison.datastructure.biocollections.CSAncillaryDataSet;
 import org.geworkbench.bison.datastructure.biocollections.DSDataSet;
 import org.geworkbench.bison.datastructure.bioobjects.DSBioObject;
 
 /**
+ * A PDB file loaded into the project. The file is read once: its summary
+ * (title, chains) is taken right away and the bytes are kept deflated. The
+ * text and the parsed {@link StructureModel} are built on demand and held
+ * softly; the model is also kept in the {@link StructureCache} of the
+ * workspace the structure was last saved in or opened from.
  * 
  * @author mhall
  * @author zji
@@ -26,16 +36,79 @@ public class CSProteinStructure extends CSAncillaryDataSet<DSBioObject> implemen
 		DSProteinStructure {
 
 	private static final long serialVersionUID = 7279040007729050440L;
+
+	/*
+	 * content is what older versions stored; it is read from old workspaces
+	 * and written as null
+	 */
+	private static final ObjectStreamField[] serialPersistentFields = {
+			new ObjectStreamField("dataFile", File.class),
+			new ObjectStreamField("chainoffset", Integer.TYPE),
+			new ObjectStreamField("content", String.class),
+			new ObjectStreamField("packed", byte[].class),
+			new ObjectStreamField("length", Integer.TYPE),
+			new ObjectStreamField("digest", byte[].class),
+			new ObjectStreamField("summary", StructureSummary.class) };
+
 	private File dataFile = null;
 	private int chainoffset = 21;
-	private String content = null;
+
+	/* the file bytes, deflated */
+	private byte[] packed = null;
+	private int length = 0;
+	/* SHA-256 of the file bytes */
+	private byte[] digest = null;
+	private StructureSummary summary = null;
+
+	private transient SoftReference<String> content = null;
+	private transient SoftReference<StructureModel> model = null;
+	/* null for the temporary cache */
+	private transient StructureCache cache = null;
 
 	public CSProteinStructure(DSDataSet<DSBioObject> parent, String label) {
 		super(parent, label);
 	}
 
-	public String getContent() {
-		return content;
+	public synchronized String getContent() {
+		if (packed == null) {
+			return null;
+		}
+		String text = content == null ? null : content.get();
+		if (text == null) {
+			text = new String(getBytes());
+			content = new SoftReference<String>(text);
+		}
+		return text;
+	}
+
+	/** Title and chains, available without parsing the structure. */
+	public StructureSummary getSummary() {
+		return summary;
+	}
+
+	/** The first model of the structure, parsed on first use. */
+	public synchronized StructureModel getModel() {
+		if (packed == null) {
+			return null;
+		}
+		StructureModel m = model == null ? null : model.get();
+		if (m == null) {
+			m = getStructureCache().load(digest);
+			if (m == null) {
+				m = PDBParser.parse(getBytes(), length);
+				getStructureCache().store(digest, m);
+			}
+			model = new SoftReference<StructureModel>(m);
+		}
+		return m;
+	}
+
+	synchronized StructureCache getStructureCache() {
+		return cache == null ? StructureCache.getTemporary() : cache;
+	}
+
+	synchronized void setStructureCache(StructureCache cache) {
+		this.cache = cache;
 	}
 
 	public File getDataSetFile() {
@@ -44,7 +117,7 @@ public class CSProteinStructure extends CSAncillaryDataSet<DSBioObject> implemen
 
 	public void setDataSetFile(File file) {
 		dataFile = file;
-        content = getContent(file);
+		load(file);
 	}
 	
 	public String getDescription()
@@ -53,66 +126,106 @@ public class CSProteinStructure extends CSAncillaryDataSet<DSBioObject> implemen
 	}
 
 	public HashMap<String, Integer> getChains() {
-		// /get chains from pdb file
-		File prtfile = this.getFile();
-		File pdbfile = prtfile.getAbsoluteFile();
 		HashMap<String, Integer> chainhm = new HashMap<String, Integer>();
-		BufferedReader br = null;
-		try {
-			br = new BufferedReader(new FileReader(pdbfile));
-			String line = null;
-			while ((line = br.readLine()) != null) {
-				if (line.startsWith("ATOM  ") || line.startsWith("HETATM")) {
-					chainhm
-							.put(line.substring(chainoffset, chainoffset + 1),
-									1);
-				}
-			}
-			br.close();
-		} catch (Exception e) {
-			e.printStackTrace();
-		} finally {
-			try {
-				br.close();
-			} catch (IOException e) {
-			}
+		if (summary == null) {
+			return chainhm;
 		}
-		if (chainhm.get(" ") != null) {
-			chainhm.remove(" ");
-			chainhm.put("_", 1);
+		for (char chain : summary.getChainIds()) {
+			chainhm.put(chain == ' ' ? "_" : String.valueOf(chain), 1);
 		}
 		return chainhm;
 	}
 
-	/** Return the content of a file */
-	static private String getContent(File pdbfile) {
+	/** Read a file and keep its summary and packed bytes. */
+	private synchronized void load(File pdbfile) {
 		byte[] fileBytes = null;
 		try {
-			FileInputStream fileIn = new FileInputStream(pdbfile);
-			DataInputStream dataIn = new DataInputStream(fileIn);
-			fileBytes = new byte[dataIn.available()];
-			dataIn.readFully(fileBytes);
-			dataIn.close();
+			fileBytes = readFile(pdbfile);
 		} catch (FileNotFoundException e) {
 			e.printStackTrace();
-			return null;
 		} catch (IOException e) {
 			e.printStackTrace();
-			return null;
 		}
-		return new String(fileBytes);
+		setBytes(fileBytes);
+	}
+
+	private static byte[] readFile(File pdbfile) throws IOException {
+		DataInputStream dataIn = new DataInputStream(new FileInputStream(
+				pdbfile));
+		try {
+			long size = pdbfile.length();
+			if (size > Integer.MAX_VALUE) {
+				throw new IOException(pdbfile + " is too large");
+			}
+			byte[] fileBytes = new byte[(int) size];
+			dataIn.readFully(fileBytes);
+			return fileBytes;
+		} finally {
+			dataIn.close();
+		}
+	}
+
+	private void setBytes(byte[] bytes) {
+		content = null;
+		model = null;
+		if (bytes == null) {
+			packed = null;
+			length = 0;
+			digest = null;
+			summary = null;
+			return;
+		}
+		length = bytes.length;
+		digest = StructureCache.digest(bytes);
+		summary = PDBParser.summarize(bytes, bytes.length);
+		packed = deflate(bytes);
+	}
+
+	private byte[] getBytes() {
+		Inflater inflater = new Inflater();
+		try {
+			inflater.setInput(packed);
+			byte[] bytes = new byte[length];
+			int n = 0;
+			while (n < length && !inflater.finished()) {
+				n += inflater.inflate(bytes, n, length - n);
+			}
+			return bytes;
+		} catch (DataFormatException e) {
+			throw new IllegalStateException(e);
+		} finally {
+			inflater.end();
+		}
+	}
+
+	private static byte[] deflate(byte[] bytes) {
+		Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+		try {
+			deflater.setInput(bytes);
+			deflater.finish();
+			ByteArrayOutputStream out = new ByteArrayOutputStream(
+					bytes.length / 3 + 64);
+			byte[] buffer = new byte[1 << 16];
+			while (!deflater.finished()) {
+				int n = deflater.deflate(buffer);
+				out.write(buffer, 0, n);
+			}
+			return out.toByteArray();
+		} finally {
+			deflater.end();
+		}
 	}
 
 	/* this is implemented in CSDataSet. It is overridden here to make sure the content is caught all the time */
 	@Override
     public void setFile(File file) {
         this.file = file;
-        content = getContent(file);
+        load(file);
     }
 
 	/**
 	 * For now, it works by calling setFile() when create a protein object.
-	 * The content will be load to the <code>content</code> variable.
+	 * The file content is kept with the object.
 	 * This writeToFile() will write the content to the given filename.
 	 * 
 	 * If in the future, we have some protein object which only exist in
@@ -121,18 +234,70 @@ public class CSProteinStructure extends CSAncillaryDataSet<DSBioObject> implemen
 	 */
 	@Override
 	public void writeToFile(String fileName) {
-		if (content == null)
+		if (packed == null)
 			throw new RuntimeException("Must call setFile() before invoking this method.");
 		else {
 			try {
-				BufferedWriter writer = new BufferedWriter(new FileWriter(
-						fileName));
-				writer.write(content);
-				writer.flush();
-				writer.close();
+				FileOutputStream out = new FileOutputStream(fileName);
+				try {
+					out.write(getBytes());
+				} finally {
+					out.close();
+				}
 			} catch (IOException ioe) {
 				ioe.printStackTrace();
 			}
 		}
 	}
+
+	private synchronized void writeObject(ObjectOutputStream out)
+			throws IOException {
+		if (out instanceof StructureCache.Scope) {
+			// from now on the structure belongs to the workspace being saved
+			StructureCache target = ((StructureCache.Scope) out)
+					.getStructureCache();
+			if (packed != null && !target.contains(digest)) {
+				StructureModel m = model == null ? null : model.get();
+				if (m == null) {
+					m = getStructureCache().load(digest);
+				}
+				if (m != null) {
+					target.store(digest, m);
+				}
+			}
+			cache = target;
+		}
+		ObjectOutputStream.PutField fields = out.putFields();
+		fields.put("dataFile", dataFile);
+		fields.put("chainoffset", chainoffset);
+		fields.put("content", null);
+		fields.put("packed", packed);
+		fields.put("length", length);
+		fields.put("digest", digest);
+		fields.put("summary", summary);
+		out.writeFields();
+	}
+
+	private void readObject(ObjectInputStream in) throws IOException,
+			ClassNotFoundException {
+		ObjectInputStream.GetField fields = in.readFields();
+		dataFile = (File) fields.get("dataFile", null);
+		chainoffset = fields.get("chainoffset", 21);
+		String text = (String) fields.get("content", null);
+		if (text != null) {
+			// saved by an older version
+			setBytes(text.getBytes());
+		} else {
+			packed = (byte[]) fields.get("packed", null);
+			length = fields.get("length", 0);
+			digest = (byte[]) fields.get("digest", null);
+			summary = (StructureSummary) fields.get("summary", null);
+			if (packed != null && digest == null) {
+				digest = StructureCache.digest(getBytes());
+			}
+		}
+		if (in instanceof StructureCache.Scope) {
+			cache = ((StructureCache.Scope) in).getStructureCache();
+		}
+	}
 }
@@ -13,4 +13,10 @@ import java.util.HashMap;
  */
 public interface DSProteinStructure extends DSAncillaryDataSet<DSBioObject> {
     public HashMap<String, Integer> getChains();
+
+    /** Title and chains, without parsing the structure. */
+    public StructureSummary getSummary();
+
+    /** The parsed first model; null if no file was loaded. */
+    public StructureModel getModel();
 }
@@ -0,0 +1,383 @@
+package org.geworkbench.bison.datastructure.bioobjects.structure;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads the fixed column records of a PDB file held in memory. Fields are
+ * decoded straight from the bytes; only names not seen before become
+ * Strings. Only the first MODEL is read; TER, ANISOU and other records are
+ * skipped.
+ *
+ * @version $Id$
+ */
+public final class PDBParser {
+
+	private PDBParser() {
+	}
+
+	/** Title and chains of the first model, without reading coordinates. */
+	public static StructureSummary summarize(byte[] data, int length) {
+		String idCode = "";
+		StringBuilder title = new StringBuilder();
+		char[] chains = new char[8];
+		int[] atoms = new int[8];
+		int chainCount = 0;
+		int atomCount = 0;
+		int models = 0;
+		boolean firstModelDone = false;
+		for (int p = 0; p < length;) {
+			int end = lineEnd(data, p, length);
+			if (isAtom(data, p, end)) {
+				if (!firstModelDone) {
+					char chain = column(data, p, end, 22);
+					int c = 0;
+					while (c < chainCount && chains[c] != chain) {
+						c++;
+					}
+					if (c == chainCount) {
+						if (c == chains.length) {
+							chains = Arrays.copyOf(chains, c * 2);
+							atoms = Arrays.copyOf(atoms, c * 2);
+						}
+						chains[c] = chain;
+						chainCount++;
+					}
+					atoms[c]++;
+					atomCount++;
+				}
+			} else if (startsWith(data, p, end, "MODEL ")) {
+				models++;
+			} else if (startsWith(data, p, end, "ENDMDL")) {
+				firstModelDone = true;
+			} else if (startsWith(data, p, end, "HEADER")) {
+				idCode = text(data, p, end, 63, 66);
+			} else if (startsWith(data, p, end, "TITLE ")) {
+				appendTitle(title, data, p, end);
+			}
+			p = next(data, end, length);
+		}
+		return new StructureSummary(idCode, title.toString(), Arrays.copyOf(
+				chains, chainCount), Arrays.copyOf(atoms, chainCount),
+				atomCount, Math.max(1, models));
+	}
+
+	/** The first model of the structure, column by column. */
+	public static StructureModel parse(byte[] data, int length) {
+		StructureModel m = new StructureModel();
+		NameTable names = new NameTable();
+
+		int atoms = 0;
+		for (int p = 0; p < length;) {
+			int end = lineEnd(data, p, length);
+			if (isAtom(data, p, end)) {
+				atoms++;
+			} else if (startsWith(data, p, end, "ENDMDL")) {
+				break;
+			}
+			p = next(data, end, length);
+		}
+		m.allocateAtoms(atoms);
+		m.allocateResidues(atoms);
+		m.allocateSegments(Math.max(1, atoms));
+
+		List<int[]> ranges = new ArrayList<int[]>();
+		StringBuilder title = new StringBuilder();
+		boolean firstModelDone = false;
+		int models = 0;
+		char lastChain = 0;
+		int lastNumber = Integer.MIN_VALUE;
+		char lastICode = 0;
+		for (int p = 0; p < length;) {
+			int end = lineEnd(data, p, length);
+			if (isAtom(data, p, end)) {
+				if (!firstModelDone) {
+					int a = m.atomCount++;
+					char chain = column(data, p, end, 22);
+					int number = parseInt(data, p, end, 23, 26, 0);
+					char iCode = column(data, p, end, 27);
+					if (a == 0 || chain != lastChain) {
+						m.segmentChain[m.segmentCount] = chain;
+						m.segmentStart[m.segmentCount++] = m.residueCount;
+					}
+					if (a == 0 || chain != lastChain || number != lastNumber
+							|| iCode != lastICode) {
+						int r = m.residueCount++;
+						m.residueName[r] = names.id(data, p, end, 18, 20);
+						m.residueNumber[r] = number;
+						m.insertionCode[r] = iCode;
+						m.residueStart[r] = a;
+					}
+					lastChain = chain;
+					lastNumber = number;
+					lastICode = iCode;
+
+					m.atomSerial[a] = parseInt(data, p, end, 7, 11, a + 1);
+					m.atomName[a] = names.id(data, p, end, 13, 16);
+					m.altLoc[a] = column(data, p, end, 17);
+					m.element[a] = names.id(data, p, end, 77, 78);
+					m.hetero[a] = data[p] == 'H';
+					m.x[a] = parseFloat(data, p, end, 31, 38);
+					m.y[a] = parseFloat(data, p, end, 39, 46);
+					m.z[a] = parseFloat(data, p, end, 47, 54);
+					m.occupancy[a] = parseFloat(data, p, end, 55, 60);
+					m.tempFactor[a] = parseFloat(data, p, end, 61, 66);
+				}
+			} else if (startsWith(data, p, end, "HELIX ")) {
+				ranges.add(new int[] { StructureModel.HELIX,
+						column(data, p, end, 20), parseInt(data, p, end, 22, 25, 0),
+						column(data, p, end, 26), parseInt(data, p, end, 34, 37, 0),
+						column(data, p, end, 38) });
+			} else if (startsWith(data, p, end, "SHEET ")) {
+				ranges.add(new int[] { StructureModel.SHEET,
+						column(data, p, end, 22), parseInt(data, p, end, 23, 26, 0),
+						column(data, p, end, 27), parseInt(data, p, end, 34, 37, 0),
+						column(data, p, end, 38) });
+			} else if (startsWith(data, p, end, "MODEL ")) {
+				models++;
+			} else if (startsWith(data, p, end, "ENDMDL")) {
+				firstModelDone = true;
+			} else if (startsWith(data, p, end, "HEADER")) {
+				m.classification = text(data, p, end, 11, 50);
+				m.idCode = text(data, p, end, 63, 66);
+			} else if (startsWith(data, p, end, "TITLE ")) {
+				appendTitle(title, data, p, end);
+			}
+			p = next(data, end, length);
+		}
+		m.title = title.toString();
+		m.modelCount = Math.max(1, models);
+		m.names = names.toArray();
+		m.residueStart[m.residueCount] = m.atomCount;
+		m.segmentStart[m.segmentCount] = m.residueCount;
+		trim(m);
+		assignSecondaryStructure(m, ranges);
+		return m;
+	}
+
+	private static void trim(StructureModel m) {
+		int r = m.residueCount;
+		m.residueName = Arrays.copyOf(m.residueName, r);
+		m.residueNumber = Arrays.copyOf(m.residueNumber, r);
+		m.insertionCode = Arrays.copyOf(m.insertionCode, r);
+		m.residueStart = Arrays.copyOf(m.residueStart, r + 1);
+		m.secondary = new byte[r];
+		int s = m.segmentCount;
+		m.segmentChain = Arrays.copyOf(m.segmentChain, s);
+		m.segmentStart = Arrays.copyOf(m.segmentStart, s + 1);
+	}
+
+	/* ranges are {type, chain, start number, start code, end number, end code} */
+	private static void assignSecondaryStructure(StructureModel m,
+			List<int[]> ranges) {
+		if (ranges.isEmpty()) {
+			return;
+		}
+		Map<Long, Integer> residues = new HashMap<Long, Integer>();
+		for (int r = m.residueCount - 1; r >= 0; r--) {
+			char chain = m.segmentChain[m.getResidueSegment(r)];
+			residues.put(key(chain, m.residueNumber[r], m.insertionCode[r]),
+					r);
+		}
+		for (int[] range : ranges) {
+			Integer start = residues.get(key((char) range[1], range[2],
+					(char) range[3]));
+			Integer end = residues.get(key((char) range[1], range[4],
+					(char) range[5]));
+			if (start == null || end == null) {
+				continue;
+			}
+			for (int r = start; r <= end; r++) {
+				m.secondary[r] = (byte) range[0];
+			}
+		}
+	}
+
+	private static long key(char chain, int number, char iCode) {
+		return ((long) chain << 48) ^ ((number & 0xffffffffL) << 16) ^ iCode;
+	}
+
+	private static void appendTitle(StringBuilder title, byte[] data, int p,
+			int end) {
+		String part = text(data, p, end, 11, 80);
+		if (part.length() > 0) {
+			if (title.length() > 0) {
+				title.append(' ');
+			}
+			title.append(part);
+		}
+	}
+
+	private static boolean isAtom(byte[] data, int p, int end) {
+		return startsWith(data, p, end, "ATOM  ")
+				|| startsWith(data, p, end, "HETATM");
+	}
+
+	private static int lineEnd(byte[] data, int p, int length) {
+		int end = p;
+		while (end < length && data[end] != '\n') {
+			end++;
+		}
+		return end > p && data[end - 1] == '\r' ? end - 1 : end;
+	}
+
+	private static int next(byte[] data, int end, int length) {
+		while (end < length && data[end] != '\n') {
+			end++;
+		}
+		return end + 1;
+	}
+
+	private static boolean startsWith(byte[] data, int p, int end,
+			String record) {
+		int n = record.length();
+		if (end - p < n) {
+			// short lines such as "END" or "TER"; compare what is there
+			for (int k = 0; k < n; k++) {
+				char c = p + k < end ? (char) data[p + k] : ' ';
+				if (c != record.charAt(k)) {
+					return false;
+				}
+			}
+			return true;
+		}
+		for (int k = 0; k < n; k++) {
+			if (data[p + k] != record.charAt(k)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/* the character in a 1-based column, ' ' beyond the end of the line */
+	private static char column(byte[] data, int p, int end, int column) {
+		int i = p + column - 1;
+		return i < end ? (char) (data[i] & 0xff) : ' ';
+	}
+
+	private static String text(byte[] data, int p, int end, int from, int to) {
+		int a = p + from - 1;
+		int b = Math.min(p + to, end);
+		while (a < b && data[a] == ' ') {
+			a++;
+		}
+		while (b > a && data[b - 1] == ' ') {
+			b--;
+		}
+		if (a >= b) {
+			return "";
+		}
+		char[] chars = new char[b - a];
+		for (int i = a; i < b; i++) {
+			chars[i - a] = (char) (data[i] & 0xff);
+		}
+		return new String(chars);
+	}
+
+	private static int parseInt(byte[] data, int p, int end, int from, int to,
+			int otherwise) {
+		int a = p + from - 1;
+		int b = Math.min(p + to, end);
+		while (a < b && data[a] == ' ') {
+			a++;
+		}
+		boolean negative = a < b && data[a] == '-';
+		if (negative) {
+			a++;
+		}
+		if (a >= b) {
+			return otherwise;
+		}
+		int value = 0;
+		for (int i = a; i < b; i++) {
+			byte c = data[i];
+			if (c == ' ') {
+				break;
+			}
+			if (c < '0' || c > '9') {
+				// e.g. hybrid-36 serial numbers of very large entries
+				return otherwise;
+			}
+			value = value * 10 + (c - '0');
+		}
+		return negative ? -value : value;
+	}
+
+	private static float parseFloat(byte[] data, int p, int end, int from,
+			int to) {
+		int a = p + from - 1;
+		int b = Math.min(p + to, end);
+		while (a < b && data[a] == ' ') {
+			a++;
+		}
+		boolean negative = a < b && data[a] == '-';
+		if (negative) {
+			a++;
+		}
+		long digits = 0;
+		int scale = 0;
+		boolean fraction = false;
+		for (int i = a; i < b; i++) {
+			byte c = data[i];
+			if (c == '.') {
+				fraction = true;
+			} else if (c >= '0' && c <= '9') {
+				digits = digits * 10 + (c - '0');
+				if (fraction) {
+					scale++;
+				}
+			} else {
+				break;
+			}
+		}
+		double value = digits;
+		for (int k = 0; k < scale; k++) {
+			value /= 10;
+		}
+		return (float) (negative ? -value : value);
+	}
+
+	/* names of up to seven characters keyed by their packed bytes */
+	private static final class NameTable {
+		private final Map<Long, Integer> ids = new HashMap<Long, Integer>();
+		private final List<String> names = new ArrayList<String>();
+		private long lastKey = -1;
+		private int lastId = -1;
+
+		int id(byte[] data, int p, int end, int from, int to) {
+			int a = p + from - 1;
+			int b = Math.min(p + to, end);
+			while (a < b && data[a] == ' ') {
+				a++;
+			}
+			while (b > a && data[b - 1] == ' ') {
+				b--;
+			}
+			long key = 0;
+			for (int i = a; i < b; i++) {
+				key = (key << 8) | (data[i] & 0xff);
+			}
+			key = (key << 8) | Math.max(0, b - a);
+			if (key == lastKey) {
+				return lastId;
+			}
+			Integer id = ids.get(key);
+			if (id == null) {
+				id = names.size();
+				names.add(text(data, p, end, from, to).intern());
+				ids.put(key, id);
+			}
+			lastKey = key;
+			lastId = id;
+			return id;
+		}
+
+		String[] toArray() {
+			return names.toArray(new String[names.size()]);
+		}
+	}
+
+}
@@ -0,0 +1,238 @@
+package org.geworkbench.bison.datastructure.bioobjects.structure;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.geworkbench.util.FilePathnameUtils;
+
+/**
+ * Parsed structure models kept on disk in the binary form of
+ * {@link StructureModel#write(java.io.DataOutput)}, one file per distinct PDB
+ * content. Each file starts with the SHA-256 digest of the content it was
+ * parsed from, which is compared on every lookup.
+ *
+ * A workspace has a cache of its own beside the workspace file, so reopening
+ * it does not parse its structures again; saving the workspace drops the
+ * entries it no longer uses. Structures that belong to no saved workspace use
+ * a cache in the temporary files directory, which keeps only the most
+ * recently used entries.
+ *
+ * A cache file that cannot be read is ignored and the structure is parsed
+ * again.
+ *
+ * @version $Id$
+ */
+public final class StructureCache {
+
+	private static Log log = LogFactory.getLog(StructureCache.class);
+
+	private static final String SUFFIX = ".pdbc";
+	private static final int DIGEST_LENGTH = 32;
+	/* entries kept in the temporary cache */
+	private static final int TEMPORARY_LIMIT = 64;
+
+	private static StructureCache temporary = null;
+
+	/**
+	 * Implemented by the object streams that read and write a workspace, so
+	 * that the structures in it use the cache of that workspace.
+	 */
+	public interface Scope {
+		StructureCache getStructureCache();
+	}
+
+	private final File directory;
+	/* 0 for no limit */
+	private final int limit;
+	/* names of the files looked up or stored through this instance */
+	private final Set<String> used = new HashSet<String>();
+
+	public StructureCache(File directory) {
+		this(directory, 0);
+	}
+
+	private StructureCache(File directory, int limit) {
+		this.directory = directory;
+		this.limit = limit;
+	}
+
+	/** The cache of structures that belong to no saved workspace. */
+	public static synchronized StructureCache getTemporary() {
+		if (temporary == null) {
+			temporary = new StructureCache(new File(FilePathnameUtils
+					.getTemporaryFilesDirectoryPath(), "structures"),
+					TEMPORARY_LIMIT);
+		}
+		return temporary;
+	}
+
+	/** The cache beside a workspace file. */
+	public static StructureCache forWorkspace(String workspaceFilename) {
+		return new StructureCache(new File(workspaceFilename + "_structures"));
+	}
+
+	/** SHA-256 of the content, identifying it in the cache. */
+	public static byte[] digest(byte[] content) {
+		try {
+			return MessageDigest.getInstance("SHA-256").digest(content);
+		} catch (NoSuchAlgorithmException e) {
+			// every Java platform has SHA-256
+			throw new IllegalStateException(e);
+		}
+	}
+
+	public File getDirectory() {
+		return directory;
+	}
+
+	private File fileFor(byte[] digest) {
+		StringBuilder name = new StringBuilder();
+		for (int i = 0; i < 16; i++) {
+			name.append(String.format("%02x", digest[i] & 0xff));
+		}
+		name.append(SUFFIX);
+		synchronized (used) {
+			used.add(name.toString());
+		}
+		return new File(directory, name.toString());
+	}
+
+	public boolean contains(byte[] digest) {
+		return fileFor(digest).isFile();
+	}
+
+	/** The cached model of the content with the given digest, or null. */
+	public StructureModel load(byte[] digest) {
+		File file = fileFor(digest);
+		if (!file.isFile()) {
+			return null;
+		}
+		DataInputStream in = null;
+		try {
+			in = new DataInputStream(new BufferedInputStream(
+					new FileInputStream(file), 1 << 16));
+			byte[] stored = new byte[DIGEST_LENGTH];
+			in.readFully(stored);
+			if (!Arrays.equals(stored, digest)) {
+				log.warn("structure cache file " + file
+						+ " holds other content");
+				return null;
+			}
+			StructureModel model = StructureModel.read(in);
+			if (limit > 0) {
+				file.setLastModified(System.currentTimeMillis());
+			}
+			return model;
+		} catch (IOException e) {
+			log.warn("ignoring structure cache file " + file + ": " + e);
+			return null;
+		} finally {
+			close(in);
+		}
+	}
+
+	/** Store a model; failures only cost a parse later on. */
+	public void store(byte[] digest, StructureModel model) {
+		File file = fileFor(digest);
+		if (!directory.isDirectory() && !directory.mkdirs()) {
+			log.warn("cannot create structure cache directory " + directory);
+			return;
+		}
+		File partial = new File(directory, file.getName() + ".part");
+		DataOutputStream out = null;
+		try {
+			out = new DataOutputStream(new BufferedOutputStream(
+					new FileOutputStream(partial), 1 << 16));
+			out.write(digest);
+			model.write(out);
+			out.close();
+			out = null;
+			if (!partial.renameTo(file)) {
+				file.delete();
+				if (!partial.renameTo(file)) {
+					partial.delete();
+				}
+			}
+		} catch (IOException e) {
+			log.warn("cannot write structure cache file " + file + ": " + e);
+			close(out);
+			partial.delete();
+		}
+		if (limit > 0) {
+			trim();
+		}
+	}
+
+	/* keep the most recently used entries of a limited cache */
+	private void trim() {
+		File[] files = cacheFiles();
+		if (files.length <= limit) {
+			return;
+		}
+		Arrays.sort(files, new Comparator<File>() {
+			public int compare(File a, File b) {
+				long d = b.lastModified() - a.lastModified();
+				return d < 0 ? -1 : (d > 0 ? 1 : 0);
+			}
+		});
+		for (int i = limit; i < files.length; i++) {
+			files[i].delete();
+		}
+	}
+
+	/**
+	 * Delete the entries that have not been looked up or stored through this
+	 * instance; called once a workspace has been written.
+	 */
+	public void prune() {
+		Set<String> keep;
+		synchronized (used) {
+			keep = new HashSet<String>(used);
+		}
+		for (File file : cacheFiles()) {
+			if (!keep.contains(file.getName())) {
+				file.delete();
+			}
+		}
+	}
+
+	private File[] cacheFiles() {
+		File[] files = directory.listFiles();
+		if (files == null) {
+			return new File[0];
+		}
+		int n = 0;
+		for (File file : files) {
+			if (file.getName().endsWith(SUFFIX)) {
+				files[n++] = file;
+			}
+		}
+		return Arrays.copyOf(files, n);
+	}
+
+	private static void close(Closeable c) {
+		if (c != null) {
+			try {
+				c.close();
+			} catch (IOException e) {
+				// nothing left to do
+			}
+		}
+	}
+
+}
@@ -0,0 +1,346 @@
+package org.geworkbench.bison.datastructure.bioobjects.structure;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * The first model of a PDB entry held column by column: one array per atom
+ * field, residues and chains as contiguous ranges of atoms and residues, and
+ * the secondary structure of each residue from the HELIX and SHEET records.
+ *
+ * Atom, residue and element names come from small tables, so each atom costs
+ * a few dozen bytes instead of a line of text. A chain identifier may occur
+ * in several segments (e.g. the polymer and, after it, its ligands);
+ * {@link #getSegments(char)} lists them.
+ *
+ * @version $Id$
+ */
+public final class StructureModel {
+
+	public static final byte COIL = 0;
+	public static final byte HELIX = 1;
+	public static final byte SHEET = 2;
+
+	private static final int MAGIC = 0x50444243; // "PDBC"
+	private static final int VERSION = 1;
+
+	String idCode = "";
+	String classification = "";
+	String title = "";
+	int modelCount = 0;
+
+	/* names referred to by index from the atom and residue columns */
+	String[] names = new String[0];
+
+	int atomCount = 0;
+	int[] atomSerial;
+	int[] atomName;
+	char[] altLoc;
+	int[] element;
+	boolean[] hetero;
+	float[] x;
+	float[] y;
+	float[] z;
+	float[] occupancy;
+	float[] tempFactor;
+
+	int residueCount = 0;
+	int[] residueName;
+	int[] residueNumber;
+	char[] insertionCode;
+	/* first atom of each residue, plus the atom count at the end */
+	int[] residueStart;
+	byte[] secondary;
+
+	int segmentCount = 0;
+	char[] segmentChain;
+	/* first residue of each segment, plus the residue count at the end */
+	int[] segmentStart;
+
+	StructureModel() {
+	}
+
+	public String getIdCode() {
+		return idCode;
+	}
+
+	public String getClassification() {
+		return classification;
+	}
+
+	public String getTitle() {
+		return title;
+	}
+
+	public int getModelCount() {
+		return modelCount;
+	}
+
+	public int getAtomCount() {
+		return atomCount;
+	}
+
+	public int getAtomSerial(int atom) {
+		return atomSerial[atom];
+	}
+
+	public String getAtomName(int atom) {
+		return names[atomName[atom]];
+	}
+
+	public char getAltLoc(int atom) {
+		return altLoc[atom];
+	}
+
+	public String getElement(int atom) {
+		return names[element[atom]];
+	}
+
+	public boolean isHetero(int atom) {
+		return hetero[atom];
+	}
+
+	public float getX(int atom) {
+		return x[atom];
+	}
+
+	public float getY(int atom) {
+		return y[atom];
+	}
+
+	public float getZ(int atom) {
+		return z[atom];
+	}
+
+	public float getOccupancy(int atom) {
+		return occupancy[atom];
+	}
+
+	public float getTempFactor(int atom) {
+		return tempFactor[atom];
+	}
+
+	/** The residue an atom belongs to. */
+	public int getAtomResidue(int atom) {
+		return rangeOf(residueStart, residueCount, atom);
+	}
+
+	public int getResidueCount() {
+		return residueCount;
+	}
+
+	public String getResidueName(int residue) {
+		return names[residueName[residue]];
+	}
+
+	public int getResidueNumber(int residue) {
+		return residueNumber[residue];
+	}
+
+	public char getInsertionCode(int residue) {
+		return insertionCode[residue];
+	}
+
+	public int getResidueFirstAtom(int residue) {
+		return residueStart[residue];
+	}
+
+	public int getResidueAtomCount(int residue) {
+		return residueStart[residue + 1] - residueStart[residue];
+	}
+
+	/** {@link #HELIX}, {@link #SHEET} or {@link #COIL}. */
+	public byte getSecondaryStructure(int residue) {
+		return secondary[residue];
+	}
+
+	/** The segment a residue belongs to. */
+	public int getResidueSegment(int residue) {
+		return rangeOf(segmentStart, segmentCount, residue);
+	}
+
+	public int getSegmentCount() {
+		return segmentCount;
+	}
+
+	public char getSegmentChain(int segment) {
+		return segmentChain[segment];
+	}
+
+	public int getSegmentFirstResidue(int segment) {
+		return segmentStart[segment];
+	}
+
+	public int getSegmentResidueCount(int segment) {
+		return segmentStart[segment + 1] - segmentStart[segment];
+	}
+
+	/** Distinct chain identifiers in order of appearance. */
+	public char[] getChainIds() {
+		char[] ids = new char[segmentCount];
+		int n = 0;
+		for (int s = 0; s < segmentCount; s++) {
+			char c = segmentChain[s];
+			boolean seen = false;
+			for (int k = 0; k < n && !seen; k++) {
+				seen = ids[k] == c;
+			}
+			if (!seen) {
+				ids[n++] = c;
+			}
+		}
+		return Arrays.copyOf(ids, n);
+	}
+
+	/** The segments of a chain, in order. */
+	public int[] getSegments(char chain) {
+		int[] segments = new int[segmentCount];
+		int n = 0;
+		for (int s = 0; s < segmentCount; s++) {
+			if (segmentChain[s] == chain) {
+				segments[n++] = s;
+			}
+		}
+		return Arrays.copyOf(segments, n);
+	}
+
+	/* index i with starts[i] <= value < starts[i + 1] */
+	private static int rangeOf(int[] starts, int count, int value) {
+		int lo = 0;
+		int hi = count - 1;
+		while (lo < hi) {
+			int mid = (lo + hi + 1) >>> 1;
+			if (starts[mid] <= value) {
+				lo = mid;
+			} else {
+				hi = mid - 1;
+			}
+		}
+		return lo;
+	}
+
+	/** Write the model in the binary form read by {@link #read(DataInput)}. */
+	public void write(DataOutput out) throws IOException {
+		out.writeInt(MAGIC);
+		out.writeInt(VERSION);
+		out.writeUTF(idCode);
+		out.writeUTF(classification);
+		out.writeUTF(title);
+		out.writeInt(modelCount);
+		out.writeInt(names.length);
+		for (String name : names) {
+			out.writeUTF(name);
+		}
+		out.writeInt(atomCount);
+		for (int a = 0; a < atomCount; a++) {
+			out.writeInt(atomSerial[a]);
+			out.writeInt(atomName[a]);
+			out.writeChar(altLoc[a]);
+			out.writeInt(element[a]);
+			out.writeBoolean(hetero[a]);
+			out.writeFloat(x[a]);
+			out.writeFloat(y[a]);
+			out.writeFloat(z[a]);
+			out.writeFloat(occupancy[a]);
+			out.writeFloat(tempFactor[a]);
+		}
+		out.writeInt(residueCount);
+		for (int r = 0; r < residueCount; r++) {
+			out.writeInt(residueName[r]);
+			out.writeInt(residueNumber[r]);
+			out.writeChar(insertionCode[r]);
+			out.writeInt(residueStart[r]);
+			out.writeByte(secondary[r]);
+		}
+		out.writeInt(segmentCount);
+		for (int s = 0; s < segmentCount; s++) {
+			out.writeChar(segmentChain[s]);
+			out.writeInt(segmentStart[s]);
+		}
+	}
+
+	/**
+	 * Read a model written by {@link #write(DataOutput)}.
+	 *
+	 * @throws IOException
+	 *             if the data is not a model of this version
+	 */
+	public static StructureModel read(DataInput in) throws IOException {
+		if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+			throw new IOException("not a structure model");
+		}
+		StructureModel m = new StructureModel();
+		m.idCode = in.readUTF();
+		m.classification = in.readUTF();
+		m.title = in.readUTF();
+		m.modelCount = in.readInt();
+		m.names = new String[in.readInt()];
+		for (int i = 0; i < m.names.length; i++) {
+			m.names[i] = in.readUTF().intern();
+		}
+		int atoms = in.readInt();
+		m.allocateAtoms(atoms);
+		m.atomCount = atoms;
+		for (int a = 0; a < atoms; a++) {
+			m.atomSerial[a] = in.readInt();
+			m.atomName[a] = in.readInt();
+			m.altLoc[a] = in.readChar();
+			m.element[a] = in.readInt();
+			m.hetero[a] = in.readBoolean();
+			m.x[a] = in.readFloat();
+			m.y[a] = in.readFloat();
+			m.z[a] = in.readFloat();
+			m.occupancy[a] = in.readFloat();
+			m.tempFactor[a] = in.readFloat();
+		}
+		int residues = in.readInt();
+		m.allocateResidues(residues);
+		m.residueCount = residues;
+		for (int r = 0; r < residues; r++) {
+			m.residueName[r] = in.readInt();
+			m.residueNumber[r] = in.readInt();
+			m.insertionCode[r] = in.readChar();
+			m.residueStart[r] = in.readInt();
+			m.secondary[r] = in.readByte();
+		}
+		m.residueStart[residues] = atoms;
+		int segments = in.readInt();
+		m.allocateSegments(segments);
+		m.segmentCount = segments;
+		for (int s = 0; s < segments; s++) {
+			m.segmentChain[s] = in.readChar();
+			m.segmentStart[s] = in.readInt();
+		}
+		m.segmentStart[segments] = residues;
+		return m;
+	}
+
+	void allocateAtoms(int capacity) {
+		atomSerial = new int[capacity];
+		atomName = new int[capacity];
+		altLoc = new char[capacity];
+		element = new int[capacity];
+		hetero = new boolean[capacity];
+		x = new float[capacity];
+		y = new float[capacity];
+		z = new float[capacity];
+		occupancy = new float[capacity];
+		tempFactor = new float[capacity];
+	}
+
+	void allocateResidues(int capacity) {
+		residueName = new int[capacity];
+		residueNumber = new int[capacity];
+		insertionCode = new char[capacity];
+		residueStart = new int[capacity + 1];
+		secondary = new byte[capacity];
+	}
+
+	void allocateSegments(int capacity) {
+		segmentChain = new char[capacity];
+		segmentStart = new int[capacity + 1];
+	}
+
+}
@@ -0,0 +1,64 @@
+package org.geworkbench.bison.datastructure.bioobjects.structure;
+
+import java.io.Serializable;
+
+/**
+ * What the project tree and tooltips show about a structure: its title and
+ * chains with their sizes, taken from a single scan of the PDB file without
+ * parsing coordinates.
+ *
+ * @version $Id$
+ */
+public final class StructureSummary implements Serializable {
+
+	private static final long serialVersionUID = -2418839506211457303L;
+
+	private final String idCode;
+	private final String title;
+	private final char[] chainIds;
+	private final int[] chainAtoms;
+	private final int atomCount;
+	private final int modelCount;
+
+	StructureSummary(String idCode, String title, char[] chainIds,
+			int[] chainAtoms, int atomCount, int modelCount) {
+		this.idCode = idCode;
+		this.title = title;
+		this.chainIds = chainIds;
+		this.chainAtoms = chainAtoms;
+		this.atomCount = atomCount;
+		this.modelCount = modelCount;
+	}
+
+	public String getIdCode() {
+		return idCode;
+	}
+
+	public String getTitle() {
+		return title;
+	}
+
+	/** Distinct chain identifiers in order of appearance; ' ' if unnamed. */
+	public char[] getChainIds() {
+		return chainIds.clone();
+	}
+
+	public int getChainCount() {
+		return chainIds.length;
+	}
+
+	/** Atoms of the first model in the chain with the given position. */
+	public int getChainAtomCount(int chain) {
+		return chainAtoms[chain];
+	}
+
+	/** ATOM and HETATM records of the first model. */
+	public int getAtomCount() {
+		return atomCount;
+	}
+
+	public int getModelCount() {
+		return modelCount;
+	}
+
+}
@@ -1,6 +1,7 @@
 package org.geworkbench.bison.datastructure.complex.panels;
 
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collection;
 import java.util.Hashtable;
 import java.util.Iterator;
@@ -108,6 +109,36 @@ public class CSItemList <T extends DSNamed> extends ArrayList<T> implements DSIt
 		return old;
 	}
 	
+	/**
+	 * Removes the items at every set index of <code>indices</code> in a
+	 * single pass, keeping the order of the remaining items. Removing items
+	 * one by one shifts the tail of the list for each of them.
+	 *
+	 * @param indices the positions of the items to remove.
+	 * @return the number of items removed.
+	 */
+	public int removeIndices(BitSet indices) {
+		int size = size();
+		int first = indices.nextSetBit(0);
+		if (first < 0 || first >= size) {
+			return 0;
+		}
+		int kept = first;
+		for (int i = first; i < size; i++) {
+			T item = super.get(i);
+			if (indices.get(i)) {
+				String label = item.getLabel();
+				if (label != null && objectMap.get(label) == item) {
+					objectMap.remove(label);
+				}
+			} else {
+				super.set(kept++, item);
+			}
+		}
+		removeRange(kept, size);
+		return size - kept;
+	}
+
 	/*
 	 * There are several reason that we don't like this method to be here: it is
 	 * only used by CSMarkerVevtor; it has limited used in CSMarkerVevtor in the
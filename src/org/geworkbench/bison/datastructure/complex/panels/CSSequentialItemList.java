@@ -1,5 +1,7 @@
 package org.geworkbench.bison.datastructure.complex.panels;
 
+import java.util.BitSet;
+
 import org.geworkbench.bison.datastructure.properties.DSSequential;
 
 /**
@@ -74,4 +76,22 @@ public class CSSequentialItemList<T extends DSSequential> extends CSItemList<T>
         }
     }
 
+    /**
+     * Removes the items at the given indices and renumbers the remaining
+     * items once.
+     *
+     * @param indices the positions of the items to remove.
+     * @return the number of items removed.
+     */
+    @Override
+    public int removeIndices(BitSet indices) {
+        int removed = super.removeIndices(indices);
+        if (removed > 0) {
+            for (int i = indices.nextSetBit(0); i < size(); i++) {
+                get(i).setSerial(i);
+            }
+        }
+        return removed;
+    }
+
 }
@@ -3,15 +3,15 @@
  */
 package org.geworkbench.bison.datastructure.complex.pattern;
 
-import java.io.BufferedReader;
 import java.io.BufferedWriter;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
 import java.io.File;
-import java.io.FileReader;
+import java.io.FileInputStream;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.io.Serializable;
 import java.util.ArrayList;
-import java.util.Iterator;
 import java.util.List;
 
 import javax.swing.JOptionPane;
@@ -24,7 +24,7 @@ import org.geworkbench.bison.datastructure.biocollections.sequences.DSSequenceSe
 import org.geworkbench.bison.datastructure.bioobjects.sequence.DSSequence;
 import org.geworkbench.bison.datastructure.complex.pattern.sequence.DSMatchedSeqPattern;
 import org.geworkbench.bison.util.RandomNumberGenerator;
-import org.geworkbench.util.patterns.CSMatchedSeqPattern;
+import org.geworkbench.util.patterns.PatternStore;
 
 /**
  * @author zji
@@ -42,6 +42,8 @@ public class PatternResult extends CSAncillaryDataSet<DSSequence> implements
     public static final String DISCOVER = "discovery";
     public static final String EXHAUSTIVE = "exhaustive";
     
+	/* patterns read from a file, followed by those added one by one */
+	private PatternStore store = null;
 	private List<DSMatchedSeqPattern> patterns = new ArrayList<DSMatchedSeqPattern>();
 	private File dataSetFile;
 	public DSSequenceSet<? extends DSSequence> sequenceDB;
@@ -100,52 +102,73 @@ public class PatternResult extends CSAncillaryDataSet<DSSequence> implements
 		try {
 			file = new File(_file.getCanonicalPath());
 			label = file.getName();
-			BufferedReader reader = new BufferedReader(new FileReader(file));
-			reader.readLine();
-			String s = reader.readLine();
-			if (s.startsWith("File:")) {
-				File newFile = new File(s.substring(5));
-				if (!dataSetFile.getName().equalsIgnoreCase(newFile.getName())) {
-					JOptionPane.showMessageDialog(null,
-							"The sequence dataset selected and the sequence filename in the pattern file do not match.",
-							"Pattern Discovery", JOptionPane.WARNING_MESSAGE);
-					reader.close();
-					return false;
+			byte[] data = readFully(file);
+			PatternStore read;
+			if (PatternStore.isStore(data, data.length)) {
+				read = PatternStore.read(new DataInputStream(
+						new ByteArrayInputStream(data)));
+			} else {
+				// the first line names the algorithm
+				int p = nextLine(data, 0);
+				int end = nextLine(data, p);
+				String s = new String(data, p, end - p).trim();
+				if (s.startsWith("File:")) {
+					File newFile = new File(s.substring(5));
+					if (!dataSetFile.getName().equalsIgnoreCase(newFile.getName())) {
+						JOptionPane.showMessageDialog(null,
+								"The sequence dataset selected and the sequence filename in the pattern file do not match.",
+								"Pattern Discovery", JOptionPane.WARNING_MESSAGE);
+						return false;
+					}
+					p = end;
 				}
-				s = reader.readLine();
+				read = PatternStore.parse(data, p, data.length);
 			}
 			patterns.clear();
-			while (s != null) {
-				CSMatchedSeqPattern pattern = new org.geworkbench.util.patterns.CSMatchedSeqPattern(
-						s);
-				patterns.add(pattern);
-				s = reader.readLine();
-			}
-			reader.close();
+			store = read;
 		} catch (IOException ex) {
 			log.error("IOException: " + ex);
 			return false;
 		}
 
-		setDescription("Number of Patterns found:" + patterns.size());
+		setDescription("Number of Patterns found:" + getPatternNo());
 		return true;
 	}
 
+	private static byte[] readFully(File file) throws IOException {
+		DataInputStream in = new DataInputStream(new FileInputStream(file));
+		try {
+			long size = file.length();
+			if (size > Integer.MAX_VALUE) {
+				throw new IOException(file + " is too large");
+			}
+			byte[] data = new byte[(int) size];
+			in.readFully(data);
+			return data;
+		} finally {
+			in.close();
+		}
+	}
+
+	private static int nextLine(byte[] data, int p) {
+		while (p < data.length && data[p] != '\n') {
+			p++;
+		}
+		return Math.min(data.length, p + 1);
+	}
+
 	// create file that is consumed by read(File) method
 	public void write(File file) {
 		try {
 			BufferedWriter writer = new BufferedWriter(new FileWriter(file));
-			int i = 0;
-			Iterator<DSMatchedSeqPattern> it = patterns.iterator();
 			String path = dataSetFile.getCanonicalPath();
 			writer.write(DISCOVER);
 			writer.newLine();
 			writer.write("File:" + path);
 			writer.newLine();
-			while (it.hasNext()) {
-				DSMatchedSeqPattern pattern = (DSMatchedSeqPattern) it.next();
-				writer.write("[" + i++ + "]\t");
-				pattern.write(writer);
+			for (int i = 0; i < getPatternNo(); i++) {
+				writer.write("[" + i + "]\t");
+				getPattern(i).write(writer);
 			}
 			writer.flush();
 			writer.close();
@@ -155,16 +178,28 @@ public class PatternResult extends CSAncillaryDataSet<DSSequence> implements
 	}
 
 	public int getPatternNo() {
-		return patterns.size();
+		return (store == null ? 0 : store.size()) + patterns.size();
 	}
 
 	public DSMatchedSeqPattern getPattern(int i) {
-		if (i>=0 && i < patterns.size()) {
-			return (DSMatchedSeqPattern) patterns.get(i);
+		int stored = store == null ? 0 : store.size();
+		if (i >= 0 && i < stored) {
+			return store.getPattern(i);
+		}
+		if (i >= stored && i < stored + patterns.size()) {
+			return (DSMatchedSeqPattern) patterns.get(i - stored);
 		}
 		return null;
 	}
 
+	/**
+	 * The columns of the patterns read by {@link #read(File)}, which are the
+	 * first {@link PatternStore#size()} patterns; null if none were read.
+	 */
+	public PatternStore getPatternStore() {
+		return store;
+	}
+
 	public void add(DSMatchedSeqPattern pattern) {
 		patterns.add(pattern);
 	}
@@ -191,10 +226,7 @@ public class PatternResult extends CSAncillaryDataSet<DSSequence> implements
 
 	@Override
 	public int size() {
-		if (patterns != null) {
-			return patterns.size();
-		}
-		return 0;
+		return getPatternNo();
 	}
 
     public DSSequenceSet<? extends DSSequence> getParentSequenceSet() {
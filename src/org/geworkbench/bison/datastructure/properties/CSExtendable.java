@@ -1,5 +1,9 @@
 package org.geworkbench.bison.datastructure.properties;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamField;
 import java.io.Serializable;
 import java.util.Vector;
 
@@ -8,93 +12,113 @@ import java.util.Vector;
  * <p>Company: First Genetic Trust Inc.</p>
  * <p/>
  * Baseline implementation of interface <code>Extendable</code>.
+ * <p/>
+ * The name-value pairs are kept in a {@link PropertyMap}; the serialized form
+ * is still the <code>Vector</code> of <code>Name</code> entries written by
+ * earlier versions, so saved workspaces read and write unchanged.
  *
  * @author First Genetic Trust Inc.
  * @version $Id$
  */
 public class CSExtendable implements DSExtendable, Serializable {
 	private static final long serialVersionUID = -2136995152001635498L;
-	
-	/**
-     * Every entry in this vector is an object of type <code>Name<code> and
-     * contains all values associated with a given name.
-     */
-    Vector<Name> nameValuePairs = new Vector<Name>();
+
+	private static final ObjectStreamField[] serialPersistentFields = { new ObjectStreamField(
+			"nameValuePairs", Vector.class) };
+
+	private transient PropertyMap properties = new PropertyMap();
 
     public void addNameValuePair(String name, Object value) {
-        if (name == null || value == null)
-            return;
-        Name nameValueList = null;
-        if (!nameValuePairs.contains((nameValueList = new Name(name))))
-            nameValuePairs.add(nameValueList);
-        nameValueList = (Name) nameValuePairs.get(nameValuePairs.indexOf(new Name(name)));
-        nameValueList.add(value);
+        properties.add(name, value);
     }
 
     public Object[] getValuesForName(String name) {
-        if (name == null)
-            return null;
-        int index;
-        // Check if the given name is there.
-        if ((index = nameValuePairs.indexOf(new Name(name))) < 0)
-            return null;
-        else {
-            Name nameValueList = (Name) nameValuePairs.get(index);
-            if (nameValueList.values.size() > 0)
-                return nameValueList.values.toArray();
-            else
-                return null;
-        }
+        return properties.getAll(name);
+    }
 
+    /**
+     * The first value associated with <code>name</code>, or null if there is
+     * none. Unlike {@link #getValuesForName(String)} this does not allocate.
+     */
+    public Object getValueForName(String name) {
+        return properties.get(name);
     }
 
-    public void forceUniqueValue(String name) {
-        int index;
-        if (name != null)
-            if ((index = nameValuePairs.indexOf(new Name(name))) >= 0) {
-                Name nameValueList = (Name) nameValuePairs.get(index);
-                nameValueList.uniqueValue = true;
-                nameValueList.clearValues();
-            }
+    /**
+     * The first value associated with <code>name</code> that is an instance
+     * of <code>type</code>, or null if there is none.
+     */
+    public <T> T getValueForName(String name, Class<T> type) {
+        return properties.get(name, type);
+    }
 
+    public int getValueCountForName(String name) {
+        return properties.count(name);
     }
 
-    public void allowMultipleValues(String name) {
-        int index;
-        if (name != null)
-            if ((index = nameValuePairs.indexOf(new Name(name))) >= 0) {
-                Name nameValueList = (Name) nameValuePairs.get(index);
-                nameValueList.uniqueValue = false;
-            }
+    public void forceUniqueValue(String name) {
+        properties.setUnique(name, true);
+    }
 
+    public void allowMultipleValues(String name) {
+        properties.setUnique(name, false);
     }
 
     public boolean isUniqueValue(String name) {
-        int index;
-        if (name != null)
-            if ((index = nameValuePairs.indexOf(new Name(name))) >= 0) {
-                Name nameValueList = (Name) nameValuePairs.get(index);
-                return nameValueList.uniqueValue;
-            }
-
-        return false;
+        return properties.isUnique(name);
     }
 
     public void clearName(String name) {
-        int index;
-        if (name != null)
-            if ((index = nameValuePairs.indexOf(new Name(name))) >= 0) {
-                Name nameValueList = (Name) nameValuePairs.get(index);
-                nameValueList.clearValues();
+        properties.clear(name);
+    }
+
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        Vector<Name> nameValuePairs = new Vector<Name>();
+        for (String name : properties.names()) {
+            Name entry = new Name(name);
+            entry.uniqueValue = properties.isUnique(name);
+            entry.values = new Vector<Object>();
+            Object[] values = properties.getAll(name);
+            if (values != null) {
+                for (Object value : values) {
+                    entry.values.add(value);
+                }
             }
+            nameValuePairs.add(entry);
+        }
+        ObjectOutputStream.PutField fields = out.putFields();
+        fields.put("nameValuePairs", nameValuePairs);
+        out.writeFields();
+    }
 
+    @SuppressWarnings("unchecked")
+    private void readObject(ObjectInputStream in) throws IOException,
+            ClassNotFoundException {
+        ObjectInputStream.GetField fields = in.readFields();
+        Vector<Name> nameValuePairs = (Vector<Name>) fields.get(
+                "nameValuePairs", null);
+        properties = new PropertyMap();
+        if (nameValuePairs == null) {
+            return;
+        }
+        for (Name entry : nameValuePairs) {
+            if (entry == null || entry.name == null) {
+                continue;
+            }
+            properties.define(entry.name, entry.uniqueValue);
+            if (entry.values != null) {
+                for (Object value : entry.values) {
+                    properties.add(entry.name, value);
+                }
+            }
+        }
     }
 
     /**
      * <p>Copyright: Copyright (c) 2003</p>
      * <p>Company: First Genetic Trust, Inc.</p>
      * <p/>
-     * Structure used to capture the name-value pairs defined for a given 'name'.
+     * The values defined for a given 'name', as found in the serialized form.
      *
      * @author First Genetic Trust, Inc.
      * @version $Id$
@@ -113,40 +137,6 @@ public class CSExtendable implements DSExtendable, Serializable {
             name = n;
         }
 
-        public boolean equals(Object n) {
-            if (n == null || name == null)
-                return false;
-            if (Name.class.isAssignableFrom(n.getClass()))
-                return this.name.equals(((Name) n).name);
-            else if (String.class.isAssignableFrom(n.getClass()))
-                return this.name.equals((String) n);
-            else
-                return false;
-        }
-
-        /**
-         * Add the designated value <code>v</code> at this name-value pair list,
-         * respecting any uniqueness requirements set forth by the instance variable
-         * <code>uniqueValue</code>.
-         *
-         * @param v The value to add.
-         */
-        public void add(Object v) {
-            if (values == null)
-                values = new Vector<Object>();
-            if (uniqueValue)
-                values.clear();
-            values.add(v);
-        }
-
-        /**
-         * Clear all values associated with the name represented by this object.
-         */
-        public void clearValues() {
-            if (values != null)
-                values.clear();
-        }
-
     }
 
 }
@@ -0,0 +1,274 @@
+package org.geworkbench.bison.datastructure.properties;
+
+import java.util.Arrays;
+
+/**
+ * Compact storage for the name-value pairs of {@link CSExtendable}: an open
+ * addressing hash table keyed by interned names, with the values of each name
+ * held in place (one value directly, several as a small array).
+ *
+ * Lookups do not allocate and take no lock. A published table is never
+ * modified: changes are serialized on the map, build a new table (sharing the
+ * names with the old one unless a name is added) and publish it, so a lookup
+ * sees either the table before or after a change.
+ *
+ * @version $Id$
+ */
+public final class PropertyMap {
+
+	/* more than one value of a name; never handed out, never modified */
+	private static final class Several {
+		final Object[] values;
+
+		Several(Object[] values) {
+			this.values = values;
+		}
+	}
+
+	/* never modified once published */
+	private static final class Table {
+		final String[] names;
+		/* slots in the order names were first added */
+		final int[] order;
+		final int size;
+		/* null, a single value or a Several */
+		final Object[] values;
+		final boolean[] unique;
+
+		Table(String[] names, int[] order, int size, Object[] values,
+				boolean[] unique) {
+			this.names = names;
+			this.order = order;
+			this.size = size;
+			this.values = values;
+			this.unique = unique;
+		}
+
+		/* the same names, with slot i changed */
+		Table with(int i, Object value, boolean isUnique) {
+			Object[] v = values.clone();
+			v[i] = value;
+			boolean[] u = unique;
+			if (u[i] != isUnique) {
+				u = u.clone();
+				u[i] = isUnique;
+			}
+			return new Table(names, order, size, v, u);
+		}
+	}
+
+	private volatile Table table = null;
+
+	private static int slot(String[] names, String name) {
+		int mask = names.length - 1;
+		int h = name.hashCode();
+		int i = (h ^ (h >>> 16)) & mask;
+		while (true) {
+			String n = names[i];
+			if (n == null) {
+				return -1 - i;
+			}
+			if (n == name || n.equals(name)) {
+				return i;
+			}
+			i = (i + 1) & mask;
+		}
+	}
+
+	/* slot of name in t, or -1 if t does not hold it */
+	private static int indexOf(Table t, String name) {
+		return t == null || name == null ? -1 : Math.max(-1, slot(t.names,
+				name));
+	}
+
+	/*
+	 * The current table if it holds name, otherwise a new one that does;
+	 * caller holds the lock and publishes the result.
+	 */
+	private Table withName(String name) {
+		Table t = table;
+		if (t == null) {
+			t = new Table(new String[4], new int[4], 0, new Object[4],
+					new boolean[4]);
+		}
+		if (slot(t.names, name) >= 0) {
+			return t;
+		}
+		int capacity = t.names.length;
+		if ((t.size + 1) * 4 > capacity * 3) {
+			capacity *= 2;
+		}
+		String[] names = new String[capacity];
+		int[] order = new int[capacity];
+		Object[] values = new Object[capacity];
+		boolean[] unique = new boolean[capacity];
+		for (int k = 0; k < t.size; k++) {
+			int old = t.order[k];
+			int i = capacity == t.names.length ? old : -1 - slot(names,
+					t.names[old]);
+			names[i] = t.names[old];
+			values[i] = t.values[old];
+			unique[i] = t.unique[old];
+			order[k] = i;
+		}
+		int i = -1 - slot(names, name);
+		names[i] = name.intern();
+		order[t.size] = i;
+		return new Table(names, order, t.size + 1, values, unique);
+	}
+
+	/**
+	 * Add a value to a name, replacing the current one if the name only
+	 * allows one value. Null names and values are ignored.
+	 */
+	public synchronized void add(String name, Object value) {
+		if (name == null || value == null) {
+			return;
+		}
+		Table t = withName(name);
+		int i = slot(t.names, name);
+		Object current = t.values[i];
+		Object updated;
+		if (current == null || t.unique[i]) {
+			updated = value;
+		} else if (current instanceof Several) {
+			Object[] values = ((Several) current).values;
+			Object[] more = Arrays.copyOf(values, values.length + 1);
+			more[values.length] = value;
+			updated = new Several(more);
+		} else {
+			updated = new Several(new Object[] { current, value });
+		}
+		table = t.with(i, updated, t.unique[i]);
+	}
+
+	/** A new array with the values of a name, or null if it has none. */
+	public Object[] getAll(String name) {
+		Table t = table;
+		int i = indexOf(t, name);
+		if (i < 0) {
+			return null;
+		}
+		Object v = t.values[i];
+		if (v == null) {
+			return null;
+		}
+		if (v instanceof Several) {
+			return ((Several) v).values.clone();
+		}
+		return new Object[] { v };
+	}
+
+	/** The first value of a name, or null if it has none. */
+	public Object get(String name) {
+		Table t = table;
+		int i = indexOf(t, name);
+		if (i < 0) {
+			return null;
+		}
+		Object v = t.values[i];
+		return v instanceof Several ? ((Several) v).values[0] : v;
+	}
+
+	/**
+	 * The first value of a name that is of the given type, or null if there
+	 * is none.
+	 */
+	public <T> T get(String name, Class<T> type) {
+		Table t = table;
+		int i = indexOf(t, name);
+		if (i < 0) {
+			return null;
+		}
+		Object v = t.values[i];
+		if (v instanceof Several) {
+			for (Object o : ((Several) v).values) {
+				if (type.isInstance(o)) {
+					return type.cast(o);
+				}
+			}
+			return null;
+		}
+		return type.isInstance(v) ? type.cast(v) : null;
+	}
+
+	public int count(String name) {
+		Table t = table;
+		int i = indexOf(t, name);
+		if (i < 0) {
+			return 0;
+		}
+		Object v = t.values[i];
+		return v == null ? 0 : (v instanceof Several ? ((Several) v).values.length
+				: 1);
+	}
+
+	/** Whether the name has been added, whether or not it has values now. */
+	public boolean contains(String name) {
+		return indexOf(table, name) >= 0;
+	}
+
+	/**
+	 * Add a name without values, with the given uniqueness; used when
+	 * reading a saved map back.
+	 */
+	synchronized void define(String name, boolean unique) {
+		if (name == null) {
+			return;
+		}
+		Table t = withName(name);
+		int i = slot(t.names, name);
+		table = t.with(i, t.values[i], unique);
+	}
+
+	/**
+	 * Let a name that has been added keep only one value, dropping the ones
+	 * it has; unknown names are ignored.
+	 */
+	public synchronized void setUnique(String name, boolean unique) {
+		Table t = table;
+		int i = indexOf(t, name);
+		if (i < 0) {
+			return;
+		}
+		table = t.with(i, unique ? null : t.values[i], unique);
+	}
+
+	public boolean isUnique(String name) {
+		Table t = table;
+		int i = indexOf(t, name);
+		return i >= 0 && t.unique[i];
+	}
+
+	/** Drop the values of a name; the name and its uniqueness are kept. */
+	public synchronized void clear(String name) {
+		Table t = table;
+		int i = indexOf(t, name);
+		if (i < 0) {
+			return;
+		}
+		if (t.values[i] != null) {
+			table = t.with(i, null, t.unique[i]);
+		}
+	}
+
+	/** Number of names that have been added. */
+	public int size() {
+		Table t = table;
+		return t == null ? 0 : t.size;
+	}
+
+	/** The names in the order they were first added. */
+	public String[] names() {
+		Table t = table;
+		if (t == null) {
+			return new String[0];
+		}
+		String[] names = new String[t.size];
+		for (int k = 0; k < names.length; k++) {
+			names[k] = t.names[t.order[k]];
+		}
+		return names;
+	}
+
+}
@@ -1,17 +1,15 @@
 package org.geworkbench.bison.model.analysis;
 
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.List;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.geworkbench.analysis.AbstractAnalysis;
-import org.geworkbench.bison.datastructure.biocollections.microarrays.CSMicroarraySet;
 import org.geworkbench.bison.datastructure.biocollections.microarrays.DSMicroarraySet;
-import org.geworkbench.bison.datastructure.bioobjects.markers.DSGeneMarker;
-import org.geworkbench.bison.datastructure.bioobjects.microarray.DSMarkerValue;
-import org.geworkbench.bison.datastructure.bioobjects.microarray.DSMicroarray;
-import org.geworkbench.bison.datastructure.complex.panels.DSItemList;
+import org.geworkbench.bison.model.pipeline.MarkerSelectionStage;
+import org.geworkbench.bison.model.pipeline.PreprocessingPipeline;
 
 /**
  * Abstract class to tag filtering analysis and defines common methods for
@@ -54,14 +52,23 @@ public abstract class FilteringAnalysis extends AbstractAnalysis {
 		}
 
 		getParametersFromPanel();
-		remove(getMarkersToBeRemoved(maSet));
+		// through the public method, which subclasses may override
+		BitSet tobeRemoved = new BitSet(maSet.getMarkers().size());
+		for (int index : getMarkersToBeRemoved(maSet)) {
+			tobeRemoved.set(index);
+		}
+		if (tobeRemoved.isEmpty()) {
+			return new AlgorithmExecutionResults(true, "No errors", input);
+		}
+
+		// the input set is left as it is; the result is a new set
+		PreprocessingPipeline pipeline = new PreprocessingPipeline(maSet);
+		pipeline.addStage(new MarkerSelectionStage(getLabel(), tobeRemoved));
+		DSMicroarraySet filtered = pipeline.createMicroarraySet(maSet
+				.getLabel());
 		log.debug("finished with fitering");
-		
-		String description = "Microarray experiment. # of microarrays: " + maSet.size() + ",   "
-				+ "# of markers: " + maSet.getMarkers().size();
-		maSet.setDescription(description);
 
-		return new AlgorithmExecutionResults(true, "No errors", input);
+		return new AlgorithmExecutionResults(true, "No errors", filtered);
 	}
 
 	protected abstract void getParametersFromPanel();
@@ -74,46 +81,6 @@ public abstract class FilteringAnalysis extends AbstractAnalysis {
 
 	protected String expectedTypeName = null;
 
-	// This may not be the best implementation
-	// especially the resizing operation seems unnecessary is CSMicroarray is
-	// implemented cleaned
-	// in other words, CSMicroarray should make sure that when you do
-	// markers.remove, resizing will happen automatically
-	private void remove(List<Integer> tobeRemoved) {
-		int markerCount = maSet.getMarkers().size();
-
-		int removeCount = tobeRemoved.size();
-		int finalCount = markerCount - removeCount;
-		DSItemList<DSGeneMarker> markers = maSet.getMarkers();
-		for (int i = 0; i < removeCount; i++) {
-			// Account for already-removed markers
-			int index = tobeRemoved.get(i) - i ;
-			// Remove the marker
-			markers.remove(markers.get(index));
-		}
-		
-		List<Integer> remains = new ArrayList<Integer>();
-		for(int i=0; i<markerCount; i++) {
-			if (!tobeRemoved.contains(i)) remains.add(i);
-		}
-
-		// Resize each microarray
-		for (DSMicroarray microarray : maSet) {
-			DSMarkerValue[] newValues = new DSMarkerValue[finalCount];
-			int index = 0;
-			for (int i: remains) {
-				newValues[index] = microarray.getMarkerValue(i);
-				index++;
-			}
-			microarray.resize(finalCount);
-			for (int i = 0; i < finalCount; i++) {
-				microarray.setMarkerValue(i, newValues[i]);
-			}
-		}
-
-		((CSMicroarraySet)maSet).getMarkers().correctMaps();
-	}
-
 	public List<Integer> getMarkersToBeRemoved(DSMicroarraySet input) {
 
 		maSet = (DSMicroarraySet) input;
@@ -123,12 +90,14 @@ public abstract class FilteringAnalysis extends AbstractAnalysis {
 		int arrayCount = maSet.size();
 		int markerCount = maSet.getMarkers().size();
 
-		// Identify the markers that do not meet the cutoff value.
+		// Identify the markers that do not meet the cutoff value. isMissing()
+		// is not required to be thread-safe, so this stays on one thread.
 		List<Integer> removeList = new ArrayList<Integer>();
 		for (int i = 0; i < markerCount; i++) {
-			if ((criterionOption == CriterionOption.COUNT && countMissing(i) > numberThreshold)
+			int missing = countMissing(i);
+			if ((criterionOption == CriterionOption.COUNT && missing > numberThreshold)
 					|| (criterionOption == CriterionOption.PERCENT && 
-							(double) countMissing(i) / arrayCount > percentThreshold)) {
+							(double) missing / arrayCount > percentThreshold)) {
 				removeList.add(i);
 			}
 		}
@@ -0,0 +1,131 @@
+package org.geworkbench.bison.model.imputation;
+
+import java.util.List;
+
+import org.geworkbench.bison.datastructure.bioobjects.microarray.DSMicroarray;
+import org.geworkbench.bison.datastructure.bioobjects.microarray.DSMutableMarkerValue;
+
+/**
+ * The cells a {@link MissingValueImputer} filled in, with the values it gave
+ * them, in row-major order. Rows and columns are those of the imputed
+ * matrix: the markers and arrays of the set or view, in its order.
+ * <p>
+ * When the cells came from a set or view, {@link #apply()} writes the values
+ * into its marker values and marks them present, and {@link #revert()} puts
+ * back what was there, missing again. Keep this object to tell imputed cells
+ * from measured ones afterwards.
+ *
+ * @version $Id$
+ */
+public final class ImputedCells {
+
+	private final int columnCount;
+	private final int[] rows;
+	private final int[] columns;
+	private final float[] values;
+
+	/* where the cells came from; null for a bare matrix */
+	private final List<? extends DSMicroarray> arrays;
+	private final int[] rowSerials;
+
+	/* what the marker values held before apply(), null until then */
+	private float[] originalValues;
+	private float[] originalConfidences;
+
+	ImputedCells(int columnCount, int[] rows, int[] columns, float[] values,
+			List<? extends DSMicroarray> arrays, int[] rowSerials) {
+		this.columnCount = columnCount;
+		this.rows = rows;
+		this.columns = columns;
+		this.values = values;
+		this.arrays = arrays;
+		this.rowSerials = rowSerials;
+	}
+
+	ImputedCells bind(List<? extends DSMicroarray> arrays, int[] rowSerials) {
+		return new ImputedCells(columnCount, rows, columns, values, arrays,
+				rowSerials);
+	}
+
+	public int size() {
+		return rows.length;
+	}
+
+	public int getRow(int cell) {
+		return rows[cell];
+	}
+
+	public int getColumn(int cell) {
+		return columns[cell];
+	}
+
+	public float getValue(int cell) {
+		return values[cell];
+	}
+
+	/** Whether the value at this row and column was imputed. */
+	public boolean isImputed(int row, int column) {
+		long key = (long) row * columnCount + column;
+		int low = 0;
+		int high = rows.length - 1;
+		while (low <= high) {
+			int middle = (low + high) >>> 1;
+			long middleKey = (long) rows[middle] * columnCount
+					+ columns[middle];
+			if (middleKey < key) {
+				low = middle + 1;
+			} else if (middleKey > key) {
+				high = middle - 1;
+			} else {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/** Write the imputed values into the marker values they came from. */
+	public synchronized void apply() {
+		if (arrays == null) {
+			throw new IllegalStateException(
+					"The cells were imputed in a bare matrix");
+		}
+		if (originalValues != null) {
+			return;
+		}
+		float[] oldValues = new float[rows.length];
+		float[] oldConfidences = new float[rows.length];
+		for (int cell = 0; cell < rows.length; cell++) {
+			DSMutableMarkerValue value = valueAt(cell);
+			oldValues[cell] = (float) value.getValue();
+			oldConfidences[cell] = (float) value.getConfidence();
+			value.setValue(values[cell]);
+			value.setMissing(false);
+		}
+		originalValues = oldValues;
+		originalConfidences = oldConfidences;
+	}
+
+	/** Put back the values that were there before {@link #apply()}. */
+	public synchronized void revert() {
+		if (originalValues == null) {
+			return;
+		}
+		for (int cell = 0; cell < rows.length; cell++) {
+			DSMutableMarkerValue value = valueAt(cell);
+			value.setValue(originalValues[cell]);
+			value.setConfidence(originalConfidences[cell]);
+		}
+		originalValues = null;
+		originalConfidences = null;
+	}
+
+	public synchronized boolean isApplied() {
+		return originalValues != null;
+	}
+
+	private DSMutableMarkerValue valueAt(int cell) {
+		return (DSMutableMarkerValue) arrays.get(columns[cell])
+				.getMarkerValue(rowSerials[rows[cell]]);
+	}
+
+}
@@ -0,0 +1,571 @@
+package org.geworkbench.bison.model.imputation;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.geworkbench.bison.datastructure.biocollections.microarrays.DSMicroarraySet;
+import org.geworkbench.bison.datastructure.biocollections.views.DSMicroarraySetView;
+import org.geworkbench.bison.datastructure.bioobjects.markers.DSGeneMarker;
+import org.geworkbench.bison.datastructure.bioobjects.microarray.DSMicroarray;
+import org.geworkbench.bison.util.ExpressionMatrix;
+import org.geworkbench.util.NumericSort;
+import org.geworkbench.util.Parallel;
+
+/**
+ * Fills in the missing values of expression data, as an alternative to
+ * removing the markers that have them. The methods are
+ * <ul>
+ * <li>the mean of the observed values of the marker (row) or array (column);
+ * <li>KNN: the mean of the values of the <i>k</i> nearest markers that were
+ * observed in that array, weighted by inverse distance; the distance between
+ * two markers is the root mean square difference over the arrays where both
+ * were observed;
+ * <li>SVD: the rank-<i>r</i> approximation of the matrix, computed again
+ * with the values filled in until they settle.
+ * </ul>
+ * The work is split over blocks of rows on the shared pool. For large
+ * matrices, KNN looks for neighbors through a {@link NeighborIndex} instead
+ * of comparing every pair of markers. The means and KNN use measured values
+ * only, never values imputed in the same run.
+ *
+ * @version $Id$
+ */
+public final class MissingValueImputer {
+
+	private static Log log = LogFactory.getLog(MissingValueImputer.class);
+
+	public enum Method {
+		ROW_MEAN, COLUMN_MEAN, KNN, SVD
+	};
+
+	/* below this many rows, KNN compares all pairs */
+	private static final int EXACT_ROWS = 1024;
+	/* dimension of the random projections the neighbor index works on */
+	private static final int FEATURES = 32;
+	/* candidates from the index per neighbor used */
+	private static final int CANDIDATE_FACTOR = 4;
+
+	private final Method method;
+	private int neighbors = 10;
+	private int rank = 10;
+	private int maxIterations = 50;
+	private double tolerance = 1e-4;
+	private long seed = 48;
+
+	public MissingValueImputer(Method method) {
+		this.method = method;
+	}
+
+	public Method getMethod() {
+		return method;
+	}
+
+	public int getNeighbors() {
+		return neighbors;
+	}
+
+	/** The number of markers KNN averages over. */
+	public void setNeighbors(int neighbors) {
+		if (neighbors < 1) {
+			throw new IllegalArgumentException("neighbors must be positive");
+		}
+		this.neighbors = neighbors;
+	}
+
+	public int getRank() {
+		return rank;
+	}
+
+	/** The rank of the SVD approximation. */
+	public void setRank(int rank) {
+		if (rank < 1) {
+			throw new IllegalArgumentException("rank must be positive");
+		}
+		this.rank = rank;
+	}
+
+	public int getMaxIterations() {
+		return maxIterations;
+	}
+
+	public void setMaxIterations(int maxIterations) {
+		this.maxIterations = maxIterations;
+	}
+
+	public double getTolerance() {
+		return tolerance;
+	}
+
+	/**
+	 * SVD stops once the imputed values change by less than this, relative
+	 * to the size of the data.
+	 */
+	public void setTolerance(double tolerance) {
+		this.tolerance = tolerance;
+	}
+
+	/** The seed of the random starts of SVD and of the neighbor index. */
+	public void setSeed(long seed) {
+		this.seed = seed;
+	}
+
+	/**
+	 * Impute the missing values of all markers and arrays of the set. The
+	 * set is not changed until {@link ImputedCells#apply()}.
+	 */
+	public ImputedCells impute(DSMicroarraySet set) {
+		ExpressionMatrix matrix = ExpressionMatrix
+				.fromMicroarraySet(set, true);
+		return impute(matrix).bind(set, matrix.getRowSerials());
+	}
+
+	/** Impute the missing values of the active markers and arrays. */
+	public ImputedCells impute(
+			DSMicroarraySetView<? extends DSGeneMarker, ? extends DSMicroarray> view) {
+		ExpressionMatrix matrix = ExpressionMatrix.fromView(view, true);
+		return impute(matrix).bind(view.items(), matrix.getRowSerials());
+	}
+
+	/**
+	 * Fill in the NaN cells of the matrix.
+	 *
+	 * @return the cells filled in
+	 */
+	public ImputedCells impute(ExpressionMatrix matrix) {
+		long start = System.currentTimeMillis();
+		Missing missing = new Missing(matrix);
+		float[] imputed = new float[missing.rows.length];
+		if (imputed.length > 0) {
+			switch (method) {
+			case ROW_MEAN:
+			case COLUMN_MEAN:
+				imputeMeans(matrix, missing, imputed);
+				break;
+			case KNN:
+				imputeNeighbors(matrix, missing, imputed);
+				break;
+			case SVD:
+				imputeLowRank(matrix, missing, imputed);
+				break;
+			}
+			float[] x = matrix.getValues();
+			int columnCount = matrix.getColumnCount();
+			for (int cell = 0; cell < imputed.length; cell++) {
+				x[missing.rows[cell] * columnCount + missing.columns[cell]] = imputed[cell];
+			}
+		}
+		log.info(method + " imputed " + imputed.length + " of "
+				+ ((long) matrix.getRowCount() * matrix.getColumnCount())
+				+ " values in " + (System.currentTimeMillis() - start) + " ms");
+		return new ImputedCells(matrix.getColumnCount(), missing.rows,
+				missing.columns, imputed, null, null);
+	}
+
+	/** The missing cells in row-major order, found in parallel. */
+	private static final class Missing {
+		/* the cells of row i are rowStart[i] to rowStart[i + 1] */
+		final int[] rowStart;
+		final int[] rows;
+		final int[] columns;
+
+		Missing(ExpressionMatrix matrix) {
+			final float[] x = matrix.getValues();
+			final int rowCount = matrix.getRowCount();
+			final int columnCount = matrix.getColumnCount();
+			final int[] counts = new int[rowCount];
+			Parallel.forRange(0, rowCount, 256, new Parallel.RangeTask() {
+				public void run(int from, int to) {
+					for (int i = from; i < to; i++) {
+						int offset = i * columnCount;
+						int count = 0;
+						for (int j = 0; j < columnCount; j++) {
+							if (Float.isNaN(x[offset + j])) {
+								count++;
+							}
+						}
+						counts[i] = count;
+					}
+				}
+			});
+			rowStart = new int[rowCount + 1];
+			for (int i = 0; i < rowCount; i++) {
+				rowStart[i + 1] = rowStart[i] + counts[i];
+			}
+			rows = new int[rowStart[rowCount]];
+			columns = new int[rows.length];
+			Parallel.forRange(0, rowCount, 256, new Parallel.RangeTask() {
+				public void run(int from, int to) {
+					for (int i = from; i < to; i++) {
+						int offset = i * columnCount;
+						int cell = rowStart[i];
+						for (int j = 0; j < columnCount; j++) {
+							if (Float.isNaN(x[offset + j])) {
+								rows[cell] = i;
+								columns[cell++] = j;
+							}
+						}
+					}
+				}
+			});
+		}
+	}
+
+	/* the mean of the observed values of each row; NaN if there are none */
+	private static double[] rowMeans(ExpressionMatrix matrix) {
+		final float[] x = matrix.getValues();
+		final int columnCount = matrix.getColumnCount();
+		final double[] means = new double[matrix.getRowCount()];
+		Parallel.forRange(0, means.length, 256, new Parallel.RangeTask() {
+			public void run(int from, int to) {
+				for (int i = from; i < to; i++) {
+					int offset = i * columnCount;
+					double sum = 0;
+					int count = 0;
+					for (int j = 0; j < columnCount; j++) {
+						float v = x[offset + j];
+						if (!Float.isNaN(v)) {
+							sum += v;
+							count++;
+						}
+					}
+					means[i] = count == 0 ? Double.NaN : sum / count;
+				}
+			}
+		});
+		return means;
+	}
+
+	/* the mean of the observed values of each column, 0 if there are none */
+	private static double[] columnMeans(ExpressionMatrix matrix) {
+		final float[] x = matrix.getValues();
+		final int columnCount = matrix.getColumnCount();
+		final double[] sums = new double[columnCount];
+		final int[] counts = new int[columnCount];
+		Parallel.forRange(0, matrix.getRowCount(), 1024,
+				new Parallel.RangeTask() {
+					public void run(int from, int to) {
+						double[] blockSums = new double[columnCount];
+						int[] blockCounts = new int[columnCount];
+						for (int i = from; i < to; i++) {
+							int offset = i * columnCount;
+							for (int j = 0; j < columnCount; j++) {
+								float v = x[offset + j];
+								if (!Float.isNaN(v)) {
+									blockSums[j] += v;
+									blockCounts[j]++;
+								}
+							}
+						}
+						synchronized (sums) {
+							for (int j = 0; j < columnCount; j++) {
+								sums[j] += blockSums[j];
+								counts[j] += blockCounts[j];
+							}
+						}
+					}
+				});
+		for (int j = 0; j < columnCount; j++) {
+			sums[j] = counts[j] == 0 ? 0 : sums[j] / counts[j];
+		}
+		return sums;
+	}
+
+	private void imputeMeans(ExpressionMatrix matrix, Missing missing,
+			float[] imputed) {
+		double[] rowMeans = rowMeans(matrix);
+		double[] columnMeans = columnMeans(matrix);
+		for (int cell = 0; cell < imputed.length; cell++) {
+			double rowMean = rowMeans[missing.rows[cell]];
+			imputed[cell] = (float) (method == Method.ROW_MEAN
+					&& !Double.isNaN(rowMean) ? rowMean
+					: columnMeans[missing.columns[cell]]);
+		}
+	}
+
+	/* the mean square difference over the columns observed in both rows */
+	private static double distance(float[] x, int columnCount, int row,
+			int other) {
+		int offset = row * columnCount;
+		int otherOffset = other * columnCount;
+		double sum = 0;
+		int count = 0;
+		for (int j = 0; j < columnCount; j++) {
+			float a = x[offset + j];
+			float b = x[otherOffset + j];
+			if (!Float.isNaN(a) && !Float.isNaN(b)) {
+				double d = a - b;
+				sum += d * d;
+				count++;
+			}
+		}
+		return count == 0 ? Double.NaN : sum / count;
+	}
+
+	private void imputeNeighbors(ExpressionMatrix matrix,
+			final Missing missing, final float[] imputed) {
+		final float[] x = matrix.getValues();
+		final int rowCount = matrix.getRowCount();
+		final int columnCount = matrix.getColumnCount();
+		final double[] rowMeans = rowMeans(matrix);
+		final double[] columnMeans = columnMeans(matrix);
+		final NeighborIndex index = rowCount > EXACT_ROWS ? buildIndex(x,
+				rowCount, columnCount, columnMeans) : null;
+		final int candidateCount = Math.min(rowCount - 1, neighbors
+				* CANDIDATE_FACTOR);
+
+		Parallel.forRange(0, rowCount, 16, new Parallel.RangeTask() {
+			public void run(int from, int to) {
+				for (int i = from; i < to; i++) {
+					int first = missing.rowStart[i];
+					int last = missing.rowStart[i + 1];
+					if (first == last) {
+						continue;
+					}
+					int[] candidates;
+					if (index == null) {
+						candidates = new int[rowCount - 1];
+						for (int r = 0, k = 0; r < rowCount; r++) {
+							if (r != i) {
+								candidates[k++] = r;
+							}
+						}
+					} else {
+						candidates = index.candidates(i, candidateCount);
+					}
+					double[] distances = new double[candidates.length];
+					for (int c = 0; c < candidates.length; c++) {
+						distances[c] = distance(x, columnCount, i,
+								candidates[c]);
+					}
+					// nearest first; pairs with nothing in common last
+					int[] order = NumericSort.argsort(distances);
+					for (int cell = first; cell < last; cell++) {
+						int j = missing.columns[cell];
+						double sum = 0;
+						double weights = 0;
+						int used = 0;
+						for (int c = 0; c < order.length && used < neighbors; c++) {
+							double distance = distances[order[c]];
+							if (Double.isNaN(distance)) {
+								break;
+							}
+							float v = x[candidates[order[c]] * columnCount + j];
+							if (Float.isNaN(v)) {
+								continue;
+							}
+							double weight = 1 / (Math.sqrt(distance) + 1e-6);
+							sum += weight * v;
+							weights += weight;
+							used++;
+						}
+						imputed[cell] = (float) (used > 0 ? sum / weights
+								: !Double.isNaN(rowMeans[i]) ? rowMeans[i]
+										: columnMeans[j]);
+					}
+				}
+			}
+		});
+	}
+
+	/*
+	 * Random projections of the rows, with missing values taken as the mean of
+	 * their column, grouped for neighbor search.
+	 */
+	private NeighborIndex buildIndex(final float[] x, int rowCount,
+			final int columnCount, final double[] columnMeans) {
+		final int dimension = Math.min(FEATURES, columnCount);
+		final float[] projection = new float[columnCount * dimension];
+		Random random = new Random(seed);
+		double scale = 1 / Math.sqrt(dimension);
+		for (int k = 0; k < projection.length; k++) {
+			projection[k] = (float) (random.nextGaussian() * scale);
+		}
+		final float[] features = new float[rowCount * dimension];
+		Parallel.forRange(0, rowCount, 256, new Parallel.RangeTask() {
+			public void run(int from, int to) {
+				double[] feature = new double[dimension];
+				for (int i = from; i < to; i++) {
+					Arrays.fill(feature, 0);
+					int offset = i * columnCount;
+					for (int j = 0; j < columnCount; j++) {
+						float v = x[offset + j];
+						double value = Float.isNaN(v) ? columnMeans[j] : v;
+						int p = j * dimension;
+						for (int t = 0; t < dimension; t++) {
+							feature[t] += value * projection[p + t];
+						}
+					}
+					for (int t = 0; t < dimension; t++) {
+						features[i * dimension + t] = (float) feature[t];
+					}
+				}
+			}
+		});
+		return new NeighborIndex(features, rowCount, dimension, (int) Math
+				.sqrt(rowCount), seed);
+	}
+
+	/*
+	 * Start from the row means, then repeat: project the row-centered matrix
+	 * onto its leading r right singular vectors (kept from the last round and
+	 * improved by one power step) and take the missing values from that.
+	 */
+	private void imputeLowRank(ExpressionMatrix matrix, final Missing missing,
+			final float[] imputed) {
+		final float[] x = matrix.getValues();
+		final int rowCount = matrix.getRowCount();
+		final int columnCount = matrix.getColumnCount();
+		final double[] rowMeans = rowMeans(matrix);
+		double[] columnMeans = columnMeans(matrix);
+		for (int cell = 0; cell < imputed.length; cell++) {
+			int i = missing.rows[cell];
+			int j = missing.columns[cell];
+			x[i * columnCount + j] = (float) (Double.isNaN(rowMeans[i]) ? columnMeans[j]
+					: rowMeans[i]);
+		}
+		// a row with nothing observed is left uncentered
+		for (int i = 0; i < rowCount; i++) {
+			if (Double.isNaN(rowMeans[i])) {
+				rowMeans[i] = 0;
+			}
+		}
+		final int r = Math.max(1, Math.min(rank, Math.min(rowCount,
+				columnCount) - 1));
+
+		// the size of the data, to measure changes against
+		double total = 0;
+		for (int k = 0; k < x.length; k++) {
+			double d = x[k] - rowMeans[k / columnCount];
+			total += d * d;
+		}
+		total = Math.max(total, Double.MIN_VALUE);
+
+		double[] v = new double[columnCount * r];
+		Random random = new Random(seed);
+		for (int k = 0; k < v.length; k++) {
+			v[k] = random.nextGaussian();
+		}
+		orthonormalize(v, columnCount, r);
+
+		final double[] u = new double[rowCount * r];
+		int iteration = 0;
+		while (true) {
+			final double[] basis = v;
+			// U = Y V
+			Parallel.forRange(0, rowCount, 256, new Parallel.RangeTask() {
+				public void run(int from, int to) {
+					for (int i = from; i < to; i++) {
+						int offset = i * columnCount;
+						int out = i * r;
+						for (int c = 0; c < r; c++) {
+							u[out + c] = 0;
+						}
+						for (int j = 0; j < columnCount; j++) {
+							double y = x[offset + j] - rowMeans[i];
+							int p = j * r;
+							for (int c = 0; c < r; c++) {
+								u[out + c] += y * basis[p + c];
+							}
+						}
+					}
+				}
+			});
+			// the missing values from U V'
+			final double[] changes = new double[1];
+			Parallel.forRange(0, rowCount, 256, new Parallel.RangeTask() {
+				public void run(int from, int to) {
+					double change = 0;
+					for (int i = from; i < to; i++) {
+						for (int cell = missing.rowStart[i]; cell < missing.rowStart[i + 1]; cell++) {
+							int j = missing.columns[cell];
+							double value = rowMeans[i];
+							for (int c = 0; c < r; c++) {
+								value += u[i * r + c] * basis[j * r + c];
+							}
+							int k = i * columnCount + j;
+							double d = value - x[k];
+							change += d * d;
+							x[k] = (float) value;
+						}
+					}
+					synchronized (changes) {
+						changes[0] += change;
+					}
+				}
+			});
+			iteration++;
+			if (changes[0] / total < tolerance * tolerance
+					|| iteration >= maxIterations) {
+				log.debug("SVD imputation stopped after " + iteration
+						+ " rounds, change " + Math.sqrt(changes[0] / total));
+				break;
+			}
+			// V = Y' U, orthonormalized
+			final double[] next = new double[columnCount * r];
+			Parallel.forRange(0, rowCount, 1024, new Parallel.RangeTask() {
+				public void run(int from, int to) {
+					double[] block = new double[columnCount * r];
+					for (int i = from; i < to; i++) {
+						int offset = i * columnCount;
+						for (int j = 0; j < columnCount; j++) {
+							double y = x[offset + j] - rowMeans[i];
+							int p = j * r;
+							for (int c = 0; c < r; c++) {
+								block[p + c] += y * u[i * r + c];
+							}
+						}
+					}
+					synchronized (next) {
+						for (int k = 0; k < block.length; k++) {
+							next[k] += block[k];
+						}
+					}
+				}
+			});
+			orthonormalize(next, columnCount, r);
+			v = next;
+		}
+
+		for (int cell = 0; cell < imputed.length; cell++) {
+			imputed[cell] = x[missing.rows[cell] * columnCount
+					+ missing.columns[cell]];
+		}
+	}
+
+	/*
+	 * Gram-Schmidt on the r columns of a row-major n x r matrix; a column
+	 * that vanishes is replaced by a unit vector.
+	 */
+	private static void orthonormalize(double[] m, int n, int r) {
+		for (int c = 0; c < r; c++) {
+			for (int pass = 0; pass < 2; pass++) {
+				for (int b = 0; b < c; b++) {
+					double dot = 0;
+					for (int i = 0; i < n; i++) {
+						dot += m[i * r + c] * m[i * r + b];
+					}
+					for (int i = 0; i < n; i++) {
+						m[i * r + c] -= dot * m[i * r + b];
+					}
+				}
+			}
+			double norm = 0;
+			for (int i = 0; i < n; i++) {
+				norm += m[i * r + c] * m[i * r + c];
+			}
+			norm = Math.sqrt(norm);
+			if (norm < 1e-12) {
+				for (int i = 0; i < n; i++) {
+					m[i * r + c] = i == c ? 1 : 0;
+				}
+				continue;
+			}
+			for (int i = 0; i < n; i++) {
+				m[i * r + c] /= norm;
+			}
+		}
+	}
+
+}
@@ -0,0 +1,165 @@
+package org.geworkbench.bison.model.imputation;
+
+import java.util.Random;
+
+import org.geworkbench.util.NumericSort;
+import org.geworkbench.util.Parallel;
+
+/**
+ * Finds rows near a given row without comparing it to every other row. Rows
+ * are given as short feature vectors (random projections of the full rows),
+ * grouped around k-means centroids. A query looks at the groups whose
+ * centroids are nearest until it has seen enough rows, and returns the
+ * nearest of those by feature distance. The result is a candidate list, to
+ * be ordered by the exact distance.
+ *
+ * @version $Id$
+ */
+final class NeighborIndex {
+
+	private static final int KMEANS_ITERATIONS = 6;
+	/* rows looked at per candidate returned */
+	private static final int PROBE_FACTOR = 8;
+
+	private final int rowCount;
+	private final int dimension;
+	private final float[] features;
+	private final int centroidCount;
+	private final float[] centroids;
+	/* the rows of each group */
+	private final int[][] groups;
+
+	NeighborIndex(float[] features, int rowCount, int dimension,
+			int centroidCount, long seed) {
+		this.rowCount = rowCount;
+		this.dimension = dimension;
+		this.features = features;
+		this.centroidCount = Math.max(1, Math.min(centroidCount, rowCount));
+		this.centroids = new float[this.centroidCount * dimension];
+
+		// start from distinct random rows
+		int[] order = new int[rowCount];
+		for (int i = 0; i < rowCount; i++) {
+			order[i] = i;
+		}
+		Random random = new Random(seed);
+		for (int c = 0; c < this.centroidCount; c++) {
+			int pick = c + random.nextInt(rowCount - c);
+			int row = order[pick];
+			order[pick] = order[c];
+			order[c] = row;
+			System.arraycopy(features, row * dimension, centroids, c
+					* dimension, dimension);
+		}
+
+		final int[] assignment = new int[rowCount];
+		for (int iteration = 0; iteration < KMEANS_ITERATIONS; iteration++) {
+			assign(assignment);
+			update(assignment);
+		}
+		assign(assignment);
+
+		int[] sizes = new int[this.centroidCount];
+		for (int i = 0; i < rowCount; i++) {
+			sizes[assignment[i]]++;
+		}
+		groups = new int[this.centroidCount][];
+		for (int c = 0; c < this.centroidCount; c++) {
+			groups[c] = new int[sizes[c]];
+			sizes[c] = 0;
+		}
+		for (int i = 0; i < rowCount; i++) {
+			int c = assignment[i];
+			groups[c][sizes[c]++] = i;
+		}
+	}
+
+	private void assign(final int[] assignment) {
+		Parallel.forRange(0, rowCount, 256, new Parallel.RangeTask() {
+			public void run(int from, int to) {
+				for (int i = from; i < to; i++) {
+					int best = 0;
+					double bestDistance = Double.POSITIVE_INFINITY;
+					for (int c = 0; c < centroidCount; c++) {
+						double distance = distance(i, centroids, c);
+						if (distance < bestDistance) {
+							bestDistance = distance;
+							best = c;
+						}
+					}
+					assignment[i] = best;
+				}
+			}
+		});
+	}
+
+	/* the mean of each group; a group left empty keeps its centroid */
+	private void update(int[] assignment) {
+		double[] sums = new double[centroids.length];
+		int[] counts = new int[centroidCount];
+		for (int i = 0; i < rowCount; i++) {
+			int c = assignment[i];
+			counts[c]++;
+			int offset = i * dimension;
+			int centroid = c * dimension;
+			for (int t = 0; t < dimension; t++) {
+				sums[centroid + t] += features[offset + t];
+			}
+		}
+		for (int c = 0; c < centroidCount; c++) {
+			if (counts[c] == 0) {
+				continue;
+			}
+			for (int t = 0; t < dimension; t++) {
+				centroids[c * dimension + t] = (float) (sums[c * dimension + t] / counts[c]);
+			}
+		}
+	}
+
+	private double distance(int row, float[] other, int otherRow) {
+		int offset = row * dimension;
+		int otherOffset = otherRow * dimension;
+		double sum = 0;
+		for (int t = 0; t < dimension; t++) {
+			double d = features[offset + t] - other[otherOffset + t];
+			sum += d * d;
+		}
+		return sum;
+	}
+
+	/**
+	 * Rows near <code>row</code>, nearest first by feature distance, not
+	 * including the row itself.
+	 */
+	int[] candidates(int row, int wanted) {
+		double[] toCentroids = new double[centroidCount];
+		for (int c = 0; c < centroidCount; c++) {
+			toCentroids[c] = distance(row, centroids, c);
+		}
+		int[] nearestGroups = NumericSort.argsort(toCentroids);
+
+		int enough = Math.min(rowCount - 1, wanted * PROBE_FACTOR);
+		int seen = 0;
+		int probed = 0;
+		while (probed < centroidCount && seen < enough + 1) {
+			seen += groups[nearestGroups[probed++]].length;
+		}
+		int[] rows = new int[seen];
+		double[] distances = new double[seen];
+		int k = 0;
+		for (int g = 0; g < probed; g++) {
+			for (int other : groups[nearestGroups[g]]) {
+				rows[k] = other;
+				distances[k] = other == row ? Double.NaN : distance(row,
+						features, other);
+				k++;
+			}
+		}
+		int[] best = NumericSort.topK(distances, wanted, false);
+		for (int i = 0; i < best.length; i++) {
+			best[i] = rows[best[i]];
+		}
+		return best;
+	}
+
+}
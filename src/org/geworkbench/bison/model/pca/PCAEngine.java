@@ -0,0 +1,532 @@
+package org.geworkbench.bison.model.pca;
+
+import java.util.List;
+import java.util.Random;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.geworkbench.bison.datastructure.biocollections.pca.CSPCADataSet;
+import org.geworkbench.bison.datastructure.biocollections.pca.PrincipalComponents;
+import org.geworkbench.bison.datastructure.biocollections.views.DSMicroarraySetView;
+import org.geworkbench.bison.datastructure.bioobjects.markers.DSGeneMarker;
+import org.geworkbench.bison.datastructure.bioobjects.microarray.DSMarkerValue;
+import org.geworkbench.bison.datastructure.bioobjects.microarray.DSMicroarray;
+import org.geworkbench.bison.datastructure.complex.panels.DSItemList;
+import org.geworkbench.bison.util.ExpressionMatrix;
+import org.geworkbench.util.Parallel;
+
+/**
+ * Principal component analysis of the arrays of a view, with the active
+ * markers as variables. Each marker is centered on its mean; a missing value
+ * counts as the mean. The modes are
+ * <ul>
+ * <li>EXACT: the eigenvectors of the smaller of the array by array Gram
+ * matrix and the marker by marker covariance matrix;
+ * <li>RANDOMIZED: the top components from a random projection of the data
+ * refined by a few power iterations (Halko, Martinsson and Tropp), a handful
+ * of passes over the data each as costly as a product with a thin matrix;
+ * <li>INCREMENTAL: the randomized method reading blocks of markers from the
+ * view on every pass, so the expression matrix is never held in memory.
+ * </ul>
+ * All passes run over blocks of markers on the shared pool.
+ *
+ * @version $Id$
+ */
+public final class PCAEngine {
+
+	private static Log log = LogFactory.getLog(PCAEngine.class);
+
+	public enum Mode {
+		EXACT, RANDOMIZED, INCREMENTAL
+	};
+
+	/* markers read and worked on at a time */
+	private static final int BLOCK_ROWS = 512;
+
+	private final Mode mode;
+	private int components = 3;
+	private int oversampling = 10;
+	private int powerIterations = 2;
+	private long seed = 49;
+
+	public PCAEngine(Mode mode) {
+		this.mode = mode;
+	}
+
+	public Mode getMode() {
+		return mode;
+	}
+
+	public int getComponents() {
+		return components;
+	}
+
+	public void setComponents(int components) {
+		if (components < 1) {
+			throw new IllegalArgumentException("at least one component");
+		}
+		this.components = components;
+	}
+
+	/** Extra random directions beyond the components, for the randomized modes. */
+	public void setOversampling(int oversampling) {
+		this.oversampling = Math.max(0, oversampling);
+	}
+
+	public void setPowerIterations(int powerIterations) {
+		this.powerIterations = Math.max(0, powerIterations);
+	}
+
+	public void setSeed(long seed) {
+		this.seed = seed;
+	}
+
+	/** The components of the active arrays over the active markers. */
+	public PrincipalComponents compute(
+			DSMicroarraySetView<? extends DSGeneMarker, ? extends DSMicroarray> view) {
+		if (mode == Mode.INCREMENTAL) {
+			return compute(new ViewRows(view));
+		}
+		return compute(ExpressionMatrix.fromView(view, true));
+	}
+
+	/** The components of the columns of the matrix; NaN cells are missing. */
+	public PrincipalComponents compute(ExpressionMatrix matrix) {
+		return compute(new MatrixRows(matrix));
+	}
+
+	/** {@link #compute(DSMicroarraySetView)} as a data set of the view's set. */
+	public CSPCADataSet createDataSet(
+			DSMicroarraySetView<? extends DSGeneMarker, ? extends DSMicroarray> view,
+			String label) {
+		return new CSPCADataSet(view.getMicroarraySet(), label, compute(view));
+	}
+
+	private PrincipalComponents compute(Rows rows) {
+		long start = System.currentTimeMillis();
+		int p = rows.rowCount;
+		int n = rows.columnCount;
+		int k = Math.min(components, Math.min(p, n));
+
+		// also computes the means
+		double totalVariance = n > 1 ? sumOfSquares(rows) / (n - 1) : 0;
+		double[][] loadings = new double[k][];
+		double[][] scores = new double[k][];
+		double[] eigenvalues = new double[k];
+		if (k > 0) {
+			if (mode == Mode.EXACT) {
+				exact(rows, k, loadings, scores, eigenvalues);
+			} else {
+				randomized(rows, k, loadings, scores, eigenvalues);
+			}
+		}
+
+		float[] loadingValues = new float[p * k];
+		float[] scoreValues = new float[n * k];
+		double[] variances = new double[k];
+		for (int c = 0; c < k; c++) {
+			// a deterministic sign: the largest loading is positive
+			int largest = 0;
+			for (int i = 1; i < p; i++) {
+				if (Math.abs(loadings[c][i]) > Math.abs(loadings[c][largest])) {
+					largest = i;
+				}
+			}
+			double sign = loadings[c][largest] < 0 ? -1 : 1;
+			for (int i = 0; i < p; i++) {
+				loadingValues[i * k + c] = (float) (sign * loadings[c][i]);
+			}
+			for (int j = 0; j < n; j++) {
+				scoreValues[j * k + c] = (float) (sign * scores[c][j]);
+			}
+			variances[c] = n > 1 ? Math.max(0, eigenvalues[c]) / (n - 1) : 0;
+		}
+		log.info(mode + " PCA of " + p + " markers by " + n + " arrays in "
+				+ (System.currentTimeMillis() - start) + " ms");
+		return new PrincipalComponents(k, rows.serials, rows.means,
+				loadingValues, scoreValues, variances, totalVariance);
+	}
+
+	/*
+	 * Eigenvectors of X'X when there are fewer arrays than markers, of XX'
+	 * otherwise; the other side follows by one product with X.
+	 */
+	private static void exact(Rows rows, int k, double[][] loadings,
+			double[][] scores, double[] eigenvalues) {
+		if (rows.columnCount <= rows.rowCount) {
+			SymmetricEigen eigen = new SymmetricEigen(gramOfColumns(rows));
+			double[][] v = new double[k][];
+			for (int c = 0; c < k; c++) {
+				eigenvalues[c] = eigen.getValue(c);
+				v[c] = eigen.getVector(c);
+			}
+			double[][] u = times(rows, v);
+			for (int c = 0; c < k; c++) {
+				loadings[c] = normalized(u[c]);
+				double s = Math.sqrt(Math.max(0, eigenvalues[c]));
+				scores[c] = new double[rows.columnCount];
+				for (int j = 0; j < rows.columnCount; j++) {
+					scores[c][j] = v[c][j] * s;
+				}
+			}
+		} else {
+			SymmetricEigen eigen = new SymmetricEigen(gramOfRows(rows));
+			for (int c = 0; c < k; c++) {
+				eigenvalues[c] = eigen.getValue(c);
+				loadings[c] = eigen.getVector(c);
+			}
+			double[][] s = transposeTimes(rows, loadings);
+			System.arraycopy(s, 0, scores, 0, k);
+		}
+	}
+
+	private void randomized(Rows rows, int k, double[][] loadings,
+			double[][] scores, double[] eigenvalues) {
+		int n = rows.columnCount;
+		int l = Math.min(k + oversampling, Math.min(rows.rowCount, n));
+		Random random = new Random(seed);
+		double[][] omega = new double[l][n];
+		for (int a = 0; a < l; a++) {
+			for (int j = 0; j < n; j++) {
+				omega[a][j] = random.nextGaussian();
+			}
+		}
+
+		// an orthonormal basis q of the range of X, with l vectors
+		double[][] q = times(rows, omega);
+		orthonormalize(q);
+		for (int iteration = 0; iteration < powerIterations; iteration++) {
+			double[][] z = transposeTimes(rows, q);
+			orthonormalize(z);
+			q = times(rows, z);
+			orthonormalize(q);
+		}
+
+		// X = q B; the components of B from the small matrix BB'
+		double[][] bt = transposeTimes(rows, q);
+		double[][] small = new double[l][l];
+		for (int a = 0; a < l; a++) {
+			for (int b = a; b < l; b++) {
+				small[a][b] = small[b][a] = dot(bt[a], bt[b]);
+			}
+		}
+		SymmetricEigen eigen = new SymmetricEigen(small);
+		for (int c = 0; c < k; c++) {
+			eigenvalues[c] = eigen.getValue(c);
+			double[] w = eigen.getVector(c);
+			loadings[c] = new double[rows.rowCount];
+			scores[c] = new double[n];
+			for (int a = 0; a < l; a++) {
+				axpy(w[a], q[a], loadings[c]);
+				axpy(w[a], bt[a], scores[c]);
+			}
+		}
+	}
+
+	/* sum of the squared centered values; fills in the means */
+	private static double sumOfSquares(Rows rows) {
+		final double[] total = new double[1];
+		new Pass<double[]>(rows) {
+			double[] begin() {
+				return new double[1];
+			}
+
+			void block(int from, int to, float[] x, double[] sum) {
+				int length = (to - from) * rows.columnCount;
+				for (int t = 0; t < length; t++) {
+					sum[0] += (double) x[t] * x[t];
+				}
+			}
+
+			void end(double[] sum) {
+				synchronized (total) {
+					total[0] += sum[0];
+				}
+			}
+		}.run();
+		return total[0];
+	}
+
+	/* X m' for m given as vectors over the arrays: one vector per marker side */
+	private static double[][] times(final Rows rows, final double[][] m) {
+		final int n = rows.columnCount;
+		final double[][] y = new double[m.length][rows.rowCount];
+		new Pass<Object>(rows) {
+			void block(int from, int to, float[] x, Object state) {
+				for (int i = from; i < to; i++) {
+					int offset = (i - from) * n;
+					for (int c = 0; c < m.length; c++) {
+						double[] v = m[c];
+						double sum = 0;
+						for (int j = 0; j < n; j++) {
+							sum += x[offset + j] * v[j];
+						}
+						y[c][i] = sum;
+					}
+				}
+			}
+		}.run();
+		return y;
+	}
+
+	/* X' q' for q given as vectors over the markers */
+	private static double[][] transposeTimes(final Rows rows, final double[][] q) {
+		final int n = rows.columnCount;
+		final double[][] z = new double[q.length][n];
+		new Pass<double[][]>(rows) {
+			double[][] begin() {
+				return new double[q.length][n];
+			}
+
+			void block(int from, int to, float[] x, double[][] partial) {
+				for (int i = from; i < to; i++) {
+					int offset = (i - from) * n;
+					for (int c = 0; c < q.length; c++) {
+						double a = q[c][i];
+						if (a == 0) {
+							continue;
+						}
+						double[] target = partial[c];
+						for (int j = 0; j < n; j++) {
+							target[j] += a * x[offset + j];
+						}
+					}
+				}
+			}
+
+			void end(double[][] partial) {
+				synchronized (z) {
+					for (int c = 0; c < q.length; c++) {
+						axpy(1, partial[c], z[c]);
+					}
+				}
+			}
+		}.run();
+		return z;
+	}
+
+	/* X'X, reading one block of markers at a time */
+	private static double[][] gramOfColumns(Rows rows) {
+		final int n = rows.columnCount;
+		final double[][] g = new double[n][n];
+		final float[] x = new float[BLOCK_ROWS * n];
+		for (int from = 0; from < rows.rowCount; from += BLOCK_ROWS) {
+			final int count = Math.min(BLOCK_ROWS, rows.rowCount - from);
+			rows.read(from, from + count, x);
+			Parallel.forRange(0, n, 16, new Parallel.RangeTask() {
+				public void run(int first, int last) {
+					for (int j = first; j < last; j++) {
+						double[] target = g[j];
+						for (int i = 0; i < count; i++) {
+							int offset = i * n;
+							double a = x[offset + j];
+							if (a == 0) {
+								continue;
+							}
+							for (int t = j; t < n; t++) {
+								target[t] += a * x[offset + t];
+							}
+						}
+					}
+				}
+			});
+		}
+		for (int j = 0; j < n; j++) {
+			for (int t = j + 1; t < n; t++) {
+				g[t][j] = g[j][t];
+			}
+		}
+		return g;
+	}
+
+	/* XX', for fewer markers than arrays */
+	private static double[][] gramOfRows(Rows rows) {
+		final int p = rows.rowCount;
+		final int n = rows.columnCount;
+		final float[] x = new float[p * n];
+		rows.read(0, p, x);
+		final double[][] g = new double[p][p];
+		Parallel.forRange(0, p, 8, new Parallel.RangeTask() {
+			public void run(int from, int to) {
+				for (int a = from; a < to; a++) {
+					for (int b = 0; b <= a; b++) {
+						double sum = 0;
+						for (int j = 0; j < n; j++) {
+							sum += (double) x[a * n + j] * x[b * n + j];
+						}
+						g[a][b] = sum;
+					}
+				}
+			}
+		});
+		for (int a = 0; a < p; a++) {
+			for (int b = a + 1; b < p; b++) {
+				g[a][b] = g[b][a];
+			}
+		}
+		return g;
+	}
+
+	/* modified Gram-Schmidt, twice; dependent vectors become zero */
+	static void orthonormalize(double[][] vectors) {
+		for (int pass = 0; pass < 2; pass++) {
+			for (int a = 0; a < vectors.length; a++) {
+				double[] v = vectors[a];
+				for (int b = 0; b < a; b++) {
+					axpy(-dot(vectors[b], v), vectors[b], v);
+				}
+				double norm = Math.sqrt(dot(v, v));
+				double scale = norm > 1e-300 ? 1 / norm : 0;
+				for (int t = 0; t < v.length; t++) {
+					v[t] *= scale;
+				}
+			}
+		}
+	}
+
+	private static double[] normalized(double[] v) {
+		double norm = Math.sqrt(dot(v, v));
+		if (norm > 0) {
+			for (int t = 0; t < v.length; t++) {
+				v[t] /= norm;
+			}
+		}
+		return v;
+	}
+
+	private static double dot(double[] a, double[] b) {
+		double sum = 0;
+		for (int t = 0; t < a.length; t++) {
+			sum += a[t] * b[t];
+		}
+		return sum;
+	}
+
+	private static void axpy(double a, double[] x, double[] y) {
+		for (int t = 0; t < y.length; t++) {
+			y[t] += a * x[t];
+		}
+	}
+
+	/**
+	 * One parallel pass over the markers in blocks, with a state per task
+	 * merged at its end.
+	 */
+	private abstract static class Pass<S> implements Parallel.RangeTask {
+		final Rows rows;
+
+		Pass(Rows rows) {
+			this.rows = rows;
+		}
+
+		S begin() {
+			return null;
+		}
+
+		abstract void block(int from, int to, float[] x, S state);
+
+		void end(S state) {
+		}
+
+		public void run(int from, int to) {
+			S state = begin();
+			float[] x = new float[Math.min(BLOCK_ROWS, to - from)
+					* rows.columnCount];
+			for (int start = from; start < to; start += BLOCK_ROWS) {
+				int stop = Math.min(to, start + BLOCK_ROWS);
+				rows.read(start, stop, x);
+				block(start, stop, x, state);
+			}
+			end(state);
+		}
+
+		void run() {
+			Parallel.forRange(0, rows.rowCount, BLOCK_ROWS, this);
+		}
+	}
+
+	/** Expression values by marker, centered as they are read. */
+	private abstract static class Rows {
+		final int rowCount;
+		final int columnCount;
+		final int[] serials;
+		final float[] means;
+
+		Rows(int[] serials, int columnCount) {
+			this.rowCount = serials.length;
+			this.columnCount = columnCount;
+			this.serials = serials;
+			this.means = new float[rowCount];
+		}
+
+		/* rows [from, to) into x, row-major; missing values as NaN */
+		abstract void readRaw(int from, int to, float[] x);
+
+		final void read(int from, int to, float[] x) {
+			readRaw(from, to, x);
+			for (int i = from; i < to; i++) {
+				int offset = (i - from) * columnCount;
+				double sum = 0;
+				int count = 0;
+				for (int j = 0; j < columnCount; j++) {
+					float value = x[offset + j];
+					if (!Float.isNaN(value)) {
+						sum += value;
+						count++;
+					}
+				}
+				float mean = count > 0 ? (float) (sum / count) : 0;
+				means[i] = mean;
+				for (int j = 0; j < columnCount; j++) {
+					float value = x[offset + j];
+					x[offset + j] = Float.isNaN(value) ? 0 : value - mean;
+				}
+			}
+		}
+	}
+
+	private static final class MatrixRows extends Rows {
+		private final float[] values;
+
+		MatrixRows(ExpressionMatrix matrix) {
+			super(matrix.getRowSerials(), matrix.getColumnCount());
+			this.values = matrix.getValues();
+		}
+
+		void readRaw(int from, int to, float[] x) {
+			System.arraycopy(values, from * columnCount, x, 0, (to - from)
+					* columnCount);
+		}
+	}
+
+	/* reads the marker values of the view's arrays on every pass */
+	private static final class ViewRows extends Rows {
+		private final List<? extends DSMicroarray> arrays;
+
+		ViewRows(
+				DSMicroarraySetView<? extends DSGeneMarker, ? extends DSMicroarray> view) {
+			super(serials(view.markers()), view.items().size());
+			this.arrays = view.items();
+		}
+
+		private static int[] serials(DSItemList<? extends DSGeneMarker> markers) {
+			int[] serials = new int[markers.size()];
+			for (int i = 0; i < serials.length; i++) {
+				serials[i] = markers.get(i).getSerial();
+			}
+			return serials;
+		}
+
+		void readRaw(int from, int to, float[] x) {
+			for (int j = 0; j < columnCount; j++) {
+				DSMarkerValue[] values = arrays.get(j).getMarkerValues();
+				for (int i = from; i < to; i++) {
+					DSMarkerValue value = values[serials[i]];
+					x[(i - from) * columnCount + j] = value.isMissing() ? Float.NaN
+							: (float) value.getValue();
+				}
+			}
+		}
+	}
+
+}
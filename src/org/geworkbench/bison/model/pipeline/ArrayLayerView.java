@@ -0,0 +1,135 @@
+package org.geworkbench.bison.model.pipeline;
+
+import org.geworkbench.util.Parallel;
+
+/**
+ * @version $Id$
+ */
+final class ArrayLayerView extends DerivedView {
+
+	private final ArrayNormalizerStage stage;
+	private final ColumnStamps stamps;
+	/* replaced, never modified, so that readers need no lock */
+	private volatile Fit fit = new Fit(new float[0], new float[0], new long[0],
+			-1, -1);
+
+	/* the per-array fit and the own column stamps it was made for */
+	private static final class Fit {
+		final float[] shift;
+		final float[] scale;
+		final long[] fitted;
+		final int modifications;
+		final int version;
+
+		Fit(float[] shift, float[] scale, long[] fitted, int modifications,
+				int version) {
+			this.shift = shift;
+			this.scale = scale;
+			this.fitted = fitted;
+			this.modifications = modifications;
+			this.version = version;
+		}
+	}
+
+	ArrayLayerView(PipelineView parent, ArrayNormalizerStage stage) {
+		super(parent);
+		this.stage = stage;
+		this.stamps = new ColumnStamps(parent.getColumnCount());
+	}
+
+	/*
+	 * The fit made up front; only a parameter change since then takes the
+	 * lock and reads the column stamps.
+	 */
+	private Fit current() {
+		Fit f = fit;
+		if (f.modifications == PipelineStage.getModificationCount()
+				&& f.version == stage.getVersion()) {
+			return f;
+		}
+		return fit();
+	}
+
+	/* refit the arrays whose column stamp changed, once per pass */
+	private synchronized Fit fit() {
+		int modifications = PipelineStage.getModificationCount();
+		int version = stage.getVersion();
+		final Fit old = fit;
+		if (old.modifications == modifications && old.version == version) {
+			return old;
+		}
+		final int columns = parent.getColumnCount();
+		final long[] now = new long[columns];
+		for (int c = 0; c < columns; c++) {
+			now[c] = getColumnStamp(c);
+		}
+		final float[] newShift = new float[columns];
+		final float[] newScale = new float[columns];
+		Parallel.forRange(0, columns, 4, new Parallel.RangeTask() {
+			public void run(int from, int to) {
+				int rows = parent.getRowCount();
+				float[] values = new float[rows];
+				float[] shiftScale = new float[2];
+				for (int c = from; c < to; c++) {
+					if (c < old.fitted.length && old.fitted[c] == now[c]) {
+						newShift[c] = old.shift[c];
+						newScale[c] = old.scale[c];
+						continue;
+					}
+					shiftScale[0] = 0;
+					shiftScale[1] = 1;
+					if (stage.isArrayIncluded(c)) {
+						parent.getColumn(c, values);
+						stage.fit(values, rows, shiftScale);
+					}
+					newShift[c] = shiftScale[0];
+					newScale[c] = shiftScale[1];
+				}
+			}
+		});
+		Fit f = new Fit(newShift, newScale, now, modifications, version);
+		fit = f;
+		return f;
+	}
+
+	@Override
+	void prepare() {
+		parent.prepare();
+		fit();
+	}
+
+	@Override
+	public float get(int row, int column) {
+		Fit f = current();
+		return (parent.get(row, column) - f.shift[column]) * f.scale[column];
+	}
+
+	@Override
+	public void getColumn(int column, float[] dst) {
+		Fit f = current();
+		parent.getColumn(column, dst);
+		float s = f.shift[column];
+		float k = f.scale[column];
+		int rows = getRowCount();
+		for (int r = 0; r < rows; r++) {
+			dst[r] = (dst[r] - s) * k;
+		}
+	}
+
+	@Override
+	public void getRow(int row, float[] dst) {
+		Fit f = current();
+		parent.getRow(row, dst);
+		int columns = getColumnCount();
+		for (int c = 0; c < columns; c++) {
+			dst[c] = (dst[c] - f.shift[c]) * f.scale[c];
+		}
+	}
+
+	@Override
+	public long getColumnStamp(int column) {
+		return stamps.get(column, parent.getColumnStamp(column), stage
+				.getColumnVersion(column));
+	}
+
+}
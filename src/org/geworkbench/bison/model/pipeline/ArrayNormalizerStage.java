@@ -0,0 +1,61 @@
+package org.geworkbench.bison.model.pipeline;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * A stage that shifts and scales every array on its own:
+ * <code>(value - shift) * scale</code>, with shift and scale fitted to the
+ * values of that array. Its view stores two numbers per array.
+ *
+ * Arrays can be excluded from normalization one at a time; that only refits
+ * the array concerned.
+ *
+ * @version $Id$
+ */
+public abstract class ArrayNormalizerStage extends PipelineStage {
+
+	private final BitSet excluded = new BitSet();
+	private int[] columnVersions = new int[0];
+
+	/**
+	 * Fit the shift (<code>shiftScale[0]</code>) and scale
+	 * (<code>shiftScale[1]</code>, preset to 1) of one array.
+	 *
+	 * @param values
+	 *            the values of the array, NaN for missing
+	 * @param length
+	 *            number of values
+	 */
+	protected abstract void fit(float[] values, int length, float[] shiftScale);
+
+	public synchronized void setArrayIncluded(int column, boolean included) {
+		if (excluded.get(column) != included) {
+			return;
+		}
+		excluded.set(column, !included);
+		if (column >= columnVersions.length) {
+			columnVersions = Arrays.copyOf(columnVersions, Math.max(column + 1,
+					columnVersions.length * 2));
+		}
+		columnVersions[column]++;
+		modified();
+	}
+
+	public synchronized boolean isArrayIncluded(int column) {
+		return !excluded.get(column);
+	}
+
+	/* the stage version in the high word, the array's own in the low word */
+	synchronized long getColumnVersion(int column) {
+		long local = column < columnVersions.length ? columnVersions[column]
+				: 0;
+		return ((long) getVersion() << 32) | local;
+	}
+
+	@Override
+	PipelineView createView(PipelineView input) {
+		return new ArrayLayerView(input, this);
+	}
+
+}
@@ -0,0 +1,64 @@
+package org.geworkbench.bison.model.pipeline;
+
+import org.geworkbench.bison.util.ExpressionMatrix;
+
+/**
+ * The raw values of the source data set, shared by every stage.
+ *
+ * @version $Id$
+ */
+final class BaseView extends PipelineView {
+
+	private final ExpressionMatrix matrix;
+
+	BaseView(ExpressionMatrix matrix) {
+		this.matrix = matrix;
+	}
+
+	@Override
+	public int getRowCount() {
+		return matrix.getRowCount();
+	}
+
+	@Override
+	public int getColumnCount() {
+		return matrix.getColumnCount();
+	}
+
+	@Override
+	public int getRowSerial(int row) {
+		return matrix.getRowSerial(row);
+	}
+
+	@Override
+	public float get(int row, int column) {
+		return matrix.get(row, column);
+	}
+
+	@Override
+	public void getColumn(int column, float[] dst) {
+		float[] values = matrix.getValues();
+		int columns = matrix.getColumnCount();
+		int rows = matrix.getRowCount();
+		for (int r = 0, k = column; r < rows; r++, k += columns) {
+			dst[r] = values[k];
+		}
+	}
+
+	@Override
+	public void getRow(int row, float[] dst) {
+		System.arraycopy(matrix.getValues(), matrix.getRowOffset(row), dst, 0,
+				matrix.getColumnCount());
+	}
+
+	@Override
+	public long getColumnStamp(int column) {
+		// the snapshot never changes
+		return 0;
+	}
+
+	@Override
+	void prepare() {
+	}
+
+}
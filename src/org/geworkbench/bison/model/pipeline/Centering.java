@@ -0,0 +1,61 @@
+package org.geworkbench.bison.model.pipeline;
+
+import java.util.Arrays;
+
+/**
+ * Location estimates used by the centering stages. Missing values (NaN) are
+ * ignored; a vector without values has a NaN center.
+ *
+ * @version $Id$
+ */
+public enum Centering {
+
+	MEAN {
+		public float center(float[] values, int length) {
+			double sum = 0;
+			int n = 0;
+			for (int i = 0; i < length; i++) {
+				if (!Float.isNaN(values[i])) {
+					sum += values[i];
+					n++;
+				}
+			}
+			return n == 0 ? Float.NaN : (float) (sum / n);
+		}
+	},
+
+	MEDIAN {
+		public float center(float[] values, int length) {
+			float[] present = new float[length];
+			int n = 0;
+			for (int i = 0; i < length; i++) {
+				if (!Float.isNaN(values[i])) {
+					present[n++] = values[i];
+				}
+			}
+			if (n == 0) {
+				return Float.NaN;
+			}
+			Arrays.sort(present, 0, n);
+			return n % 2 == 1 ? present[n / 2]
+					: (present[n / 2 - 1] + present[n / 2]) / 2;
+		}
+	};
+
+	public abstract float center(float[] values, int length);
+
+	/** Standard deviation of the present values around <code>center</code>. */
+	static float deviation(float[] values, int length, float center) {
+		double ss = 0;
+		int n = 0;
+		for (int i = 0; i < length; i++) {
+			if (!Float.isNaN(values[i])) {
+				double d = values[i] - center;
+				ss += d * d;
+				n++;
+			}
+		}
+		return n < 2 ? Float.NaN : (float) Math.sqrt(ss / (n - 1));
+	}
+
+}
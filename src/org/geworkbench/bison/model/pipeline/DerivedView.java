@@ -0,0 +1,36 @@
+package org.geworkbench.bison.model.pipeline;
+
+/**
+ * A view computed from the output of the previous stage.
+ *
+ * @version $Id$
+ */
+abstract class DerivedView extends PipelineView {
+
+	protected final PipelineView parent;
+
+	DerivedView(PipelineView parent) {
+		this.parent = parent;
+	}
+
+	@Override
+	public int getRowCount() {
+		return parent.getRowCount();
+	}
+
+	@Override
+	public int getColumnCount() {
+		return parent.getColumnCount();
+	}
+
+	@Override
+	public int getRowSerial(int row) {
+		return parent.getRowSerial(row);
+	}
+
+	@Override
+	void prepare() {
+		parent.prepare();
+	}
+
+}
@@ -0,0 +1,36 @@
+package org.geworkbench.bison.model.pipeline;
+
+/**
+ * Drops markers whose standard deviation over the present values is below a
+ * cutoff. Markers with fewer than two present values are dropped.
+ *
+ * @version $Id$
+ */
+public class DeviationFilterStage extends MarkerFilterStage {
+
+	private float minDeviation = 0;
+
+	public String getName() {
+		return "Deviation filter";
+	}
+
+	public String getParameterDescription() {
+		return "deviation at least " + minDeviation;
+	}
+
+	public float getMinDeviation() {
+		return minDeviation;
+	}
+
+	public void setMinDeviation(float minDeviation) {
+		this.minDeviation = minDeviation;
+		parametersChanged();
+	}
+
+	protected boolean accept(float[] values, int length) {
+		float deviation = Centering.deviation(values, length, Centering.MEAN
+				.center(values, length));
+		return deviation >= minDeviation;
+	}
+
+}
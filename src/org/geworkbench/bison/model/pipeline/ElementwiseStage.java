@@ -0,0 +1,19 @@
+package org.geworkbench.bison.model.pipeline;
+
+/**
+ * A stage that maps every value on its own, such as a log transformation or
+ * a threshold. Its view stores nothing.
+ *
+ * @version $Id$
+ */
+public abstract class ElementwiseStage extends PipelineStage {
+
+	/** The new value; NaN marks a missing value. */
+	public abstract float transform(float value);
+
+	@Override
+	PipelineView createView(PipelineView input) {
+		return new ElementwiseView(input, this);
+	}
+
+}
@@ -0,0 +1,46 @@
+package org.geworkbench.bison.model.pipeline;
+
+/**
+ * @version $Id$
+ */
+final class ElementwiseView extends DerivedView {
+
+	private final ElementwiseStage stage;
+	private final ColumnStamps stamps;
+
+	ElementwiseView(PipelineView parent, ElementwiseStage stage) {
+		super(parent);
+		this.stage = stage;
+		this.stamps = new ColumnStamps(parent.getColumnCount());
+	}
+
+	@Override
+	public float get(int row, int column) {
+		return stage.transform(parent.get(row, column));
+	}
+
+	@Override
+	public void getColumn(int column, float[] dst) {
+		parent.getColumn(column, dst);
+		int rows = getRowCount();
+		for (int r = 0; r < rows; r++) {
+			dst[r] = stage.transform(dst[r]);
+		}
+	}
+
+	@Override
+	public void getRow(int row, float[] dst) {
+		parent.getRow(row, dst);
+		int columns = getColumnCount();
+		for (int c = 0; c < columns; c++) {
+			dst[c] = stage.transform(dst[c]);
+		}
+	}
+
+	@Override
+	public long getColumnStamp(int column) {
+		return stamps.get(column, parent.getColumnStamp(column), stage
+				.getVersion());
+	}
+
+}
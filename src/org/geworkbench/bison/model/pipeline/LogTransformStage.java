@@ -0,0 +1,40 @@
+package org.geworkbench.bison.model.pipeline;
+
+/**
+ * Logarithm of every value. Values at or below zero become missing.
+ *
+ * @version $Id$
+ */
+public class LogTransformStage extends ElementwiseStage {
+
+	private double base = 2;
+	private float inverseLogBase = (float) (1 / Math.log(2));
+
+	public String getName() {
+		return "Log transformation";
+	}
+
+	public String getParameterDescription() {
+		return "base " + base;
+	}
+
+	public double getBase() {
+		return base;
+	}
+
+	public void setBase(double base) {
+		if (!(base > 1)) {
+			throw new IllegalArgumentException("log base must be above 1: "
+					+ base);
+		}
+		this.base = base;
+		this.inverseLogBase = (float) (1 / Math.log(base));
+		parametersChanged();
+	}
+
+	public float transform(float value) {
+		return value > 0 ? (float) Math.log(value) * inverseLogBase
+				: Float.NaN;
+	}
+
+}
@@ -0,0 +1,55 @@
+package org.geworkbench.bison.model.pipeline;
+
+/**
+ * Centers every marker on its mean or median over the arrays, optionally
+ * scaling it to unit standard deviation.
+ *
+ * @version $Id$
+ */
+public class MarkerCenteringStage extends MarkerNormalizerStage {
+
+	private Centering centering = Centering.MEAN;
+	private boolean scaled = false;
+
+	public String getName() {
+		return "Marker centering";
+	}
+
+	public String getParameterDescription() {
+		return centering.name().toLowerCase()
+				+ (scaled ? ", unit deviation" : "");
+	}
+
+	public Centering getCentering() {
+		return centering;
+	}
+
+	public void setCentering(Centering centering) {
+		this.centering = centering;
+		parametersChanged();
+	}
+
+	public boolean isScaled() {
+		return scaled;
+	}
+
+	public void setScaled(boolean scaled) {
+		this.scaled = scaled;
+		parametersChanged();
+	}
+
+	protected void fit(float[] values, int length, float[] shiftScale) {
+		float center = centering.center(values, length);
+		if (Float.isNaN(center)) {
+			return;
+		}
+		shiftScale[0] = center;
+		if (scaled) {
+			float deviation = Centering.deviation(values, length, center);
+			if (deviation > 0) {
+				shiftScale[1] = 1 / deviation;
+			}
+		}
+	}
+
+}
@@ -0,0 +1,42 @@
+package org.geworkbench.bison.model.pipeline;
+
+/**
+ * A stage that drops markers. Its view stores the indices of the surviving
+ * markers.
+ *
+ * @version $Id$
+ */
+public abstract class MarkerFilterStage extends PipelineStage {
+
+	/**
+	 * Whether a marker is kept.
+	 *
+	 * @param values
+	 *            the values of the marker over all arrays, NaN for missing
+	 * @param length
+	 *            number of values
+	 */
+	protected abstract boolean accept(float[] values, int length);
+
+	/**
+	 * Whether a marker is kept, for filters that also go by which marker it
+	 * is; by default only the values count.
+	 *
+	 * @param serial
+	 *            serial of the marker in the source data set
+	 */
+	protected boolean accept(int serial, float[] values, int length) {
+		return accept(values, length);
+	}
+
+	@Override
+	public boolean isFilter() {
+		return true;
+	}
+
+	@Override
+	PipelineView createView(PipelineView input) {
+		return new MarkerSubsetView(input, this);
+	}
+
+}
@@ -0,0 +1,130 @@
+package org.geworkbench.bison.model.pipeline;
+
+import org.geworkbench.util.Parallel;
+
+/**
+ * @version $Id$
+ */
+final class MarkerLayerView extends DerivedView {
+
+	private final MarkerNormalizerStage stage;
+	private final ColumnStamps stamps;
+	private final InputState input = new InputState();
+	/* replaced, never modified, so that readers need no lock */
+	private volatile Fit fit = new Fit(new float[0], new float[0], 0, -1, -1);
+
+	/* the per-marker fit and the inputs it was made for */
+	private static final class Fit {
+		final float[] shift;
+		final float[] scale;
+		final long stamp;
+		final int modifications;
+		final int version;
+
+		Fit(float[] shift, float[] scale, long stamp, int modifications,
+				int version) {
+			this.shift = shift;
+			this.scale = scale;
+			this.stamp = stamp;
+			this.modifications = modifications;
+			this.version = version;
+		}
+	}
+
+	MarkerLayerView(PipelineView parent, MarkerNormalizerStage stage) {
+		super(parent);
+		this.stage = stage;
+		this.stamps = new ColumnStamps(parent.getColumnCount());
+	}
+
+	/*
+	 * The fit made up front; only a parameter change since then takes the
+	 * lock.
+	 */
+	private Fit current() {
+		Fit f = fit;
+		if (f.modifications == PipelineStage.getModificationCount()
+				&& f.version == stage.getVersion()) {
+			return f;
+		}
+		return fit();
+	}
+
+	/* refit every marker if any input column or the stage changed */
+	private synchronized Fit fit() {
+		int modifications = PipelineStage.getModificationCount();
+		int version = stage.getVersion();
+		Fit old = fit;
+		if (!input.changed(parent, version)) {
+			if (old.modifications != modifications || old.version != version) {
+				fit = old = new Fit(old.shift, old.scale, old.stamp,
+						modifications, version);
+			}
+			return old;
+		}
+		final int rows = parent.getRowCount();
+		final int columns = parent.getColumnCount();
+		final float[] newShift = new float[rows];
+		final float[] newScale = new float[rows];
+		Parallel.forRange(0, rows, 256, new Parallel.RangeTask() {
+			public void run(int from, int to) {
+				float[] values = new float[columns];
+				float[] shiftScale = new float[2];
+				for (int r = from; r < to; r++) {
+					parent.getRow(r, values);
+					shiftScale[0] = 0;
+					shiftScale[1] = 1;
+					stage.fit(values, columns, shiftScale);
+					newShift[r] = shiftScale[0];
+					newScale[r] = shiftScale[1];
+				}
+			}
+		});
+		fit = old = new Fit(newShift, newScale, nextStamp(), modifications,
+				version);
+		return old;
+	}
+
+	@Override
+	void prepare() {
+		parent.prepare();
+		fit();
+	}
+
+	@Override
+	public float get(int row, int column) {
+		Fit f = current();
+		return (parent.get(row, column) - f.shift[row]) * f.scale[row];
+	}
+
+	@Override
+	public void getColumn(int column, float[] dst) {
+		Fit f = current();
+		parent.getColumn(column, dst);
+		float[] s = f.shift;
+		float[] k = f.scale;
+		int rows = getRowCount();
+		for (int r = 0; r < rows; r++) {
+			dst[r] = (dst[r] - s[r]) * k[r];
+		}
+	}
+
+	@Override
+	public void getRow(int row, float[] dst) {
+		Fit f = current();
+		parent.getRow(row, dst);
+		float s = f.shift[row];
+		float k = f.scale[row];
+		int columns = getColumnCount();
+		for (int c = 0; c < columns; c++) {
+			dst[c] = (dst[c] - s) * k;
+		}
+	}
+
+	@Override
+	public long getColumnStamp(int column) {
+		long fitStamp = current().stamp;
+		return stamps.get(column, parent.getColumnStamp(column), fitStamp);
+	}
+
+}
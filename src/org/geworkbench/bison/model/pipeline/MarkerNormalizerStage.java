@@ -0,0 +1,29 @@
+package org.geworkbench.bison.model.pipeline;
+
+/**
+ * A stage that shifts and scales every marker on its own:
+ * <code>(value - shift) * scale</code>, with shift and scale fitted to the
+ * values of that marker over all arrays. Its view stores two numbers per
+ * marker.
+ *
+ * @version $Id$
+ */
+public abstract class MarkerNormalizerStage extends PipelineStage {
+
+	/**
+	 * Fit the shift (<code>shiftScale[0]</code>) and scale
+	 * (<code>shiftScale[1]</code>, preset to 1) of one marker.
+	 *
+	 * @param values
+	 *            the values of the marker, NaN for missing
+	 * @param length
+	 *            number of values
+	 */
+	protected abstract void fit(float[] values, int length, float[] shiftScale);
+
+	@Override
+	PipelineView createView(PipelineView input) {
+		return new MarkerLayerView(input, this);
+	}
+
+}
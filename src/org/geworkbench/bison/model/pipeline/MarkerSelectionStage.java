@@ -0,0 +1,47 @@
+package org.geworkbench.bison.model.pipeline;
+
+import java.util.BitSet;
+
+/**
+ * Drops the markers a filter has already selected, given by their serials in
+ * the source data set. This is how filters that look at the marker value
+ * objects themselves, such as
+ * {@link org.geworkbench.bison.model.analysis.FilteringAnalysis}, run as a
+ * stage.
+ *
+ * @version $Id$
+ */
+public class MarkerSelectionStage extends MarkerFilterStage {
+
+	private final String name;
+	private final BitSet removed;
+
+	/**
+	 * @param name
+	 *            the filter that selected the markers
+	 * @param removed
+	 *            serials of the markers to drop
+	 */
+	public MarkerSelectionStage(String name, BitSet removed) {
+		this.name = name;
+		this.removed = (BitSet) removed.clone();
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public String getParameterDescription() {
+		return removed.cardinality() + " markers removed";
+	}
+
+	protected boolean accept(float[] values, int length) {
+		return true;
+	}
+
+	@Override
+	protected boolean accept(int serial, float[] values, int length) {
+		return !removed.get(serial);
+	}
+
+}
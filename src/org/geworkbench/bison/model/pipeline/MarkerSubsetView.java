@@ -0,0 +1,141 @@
+package org.geworkbench.bison.model.pipeline;
+
+import java.util.Arrays;
+
+import org.geworkbench.util.Parallel;
+
+/**
+ * @version $Id$
+ */
+final class MarkerSubsetView extends DerivedView {
+
+	private final MarkerFilterStage stage;
+	private final ColumnStamps stamps;
+	private final InputState input = new InputState();
+	/* replaced, never modified, so that readers need no lock */
+	private volatile Rows rows = new Rows(new int[0], 0, -1, -1);
+
+	/* the surviving rows and the inputs they were filtered for */
+	private static final class Rows {
+		final int[] kept;
+		/* changes only when the surviving rows do */
+		final long stamp;
+		final int modifications;
+		final int version;
+
+		Rows(int[] kept, long stamp, int modifications, int version) {
+			this.kept = kept;
+			this.stamp = stamp;
+			this.modifications = modifications;
+			this.version = version;
+		}
+	}
+
+	MarkerSubsetView(PipelineView parent, MarkerFilterStage stage) {
+		super(parent);
+		this.stage = stage;
+		this.stamps = new ColumnStamps(parent.getColumnCount());
+	}
+
+	/*
+	 * The rows filtered up front; only a parameter change since then takes
+	 * the lock, so reading a cell costs no more than the parent's.
+	 */
+	private Rows current() {
+		Rows r = rows;
+		if (r.modifications == PipelineStage.getModificationCount()
+				&& r.version == stage.getVersion()) {
+			return r;
+		}
+		return filter();
+	}
+
+	private synchronized Rows filter() {
+		int modifications = PipelineStage.getModificationCount();
+		int version = stage.getVersion();
+		Rows old = rows;
+		if (!input.changed(parent, version)) {
+			if (old.modifications != modifications || old.version != version) {
+				rows = old = new Rows(old.kept, old.stamp, modifications,
+						version);
+			}
+			return old;
+		}
+		int n = parent.getRowCount();
+		final int columns = parent.getColumnCount();
+		final boolean[] keep = new boolean[n];
+		Parallel.forRange(0, n, 256, new Parallel.RangeTask() {
+			public void run(int from, int to) {
+				float[] values = new float[columns];
+				for (int r = from; r < to; r++) {
+					parent.getRow(r, values);
+					keep[r] = stage.accept(parent.getRowSerial(r), values,
+							columns);
+				}
+			}
+		});
+		int count = 0;
+		for (int r = 0; r < n; r++) {
+			if (keep[r]) {
+				count++;
+			}
+		}
+		int[] kept = new int[count];
+		for (int r = 0, k = 0; r < n; r++) {
+			if (keep[r]) {
+				kept[k++] = r;
+			}
+		}
+		long stamp = old.stamp;
+		if (stamp == 0 || !Arrays.equals(kept, old.kept)) {
+			stamp = nextStamp();
+		} else {
+			kept = old.kept;
+		}
+		rows = old = new Rows(kept, stamp, modifications, version);
+		return old;
+	}
+
+	@Override
+	void prepare() {
+		parent.prepare();
+		filter();
+	}
+
+	@Override
+	public int getRowCount() {
+		return current().kept.length;
+	}
+
+	@Override
+	public int getRowSerial(int row) {
+		return parent.getRowSerial(current().kept[row]);
+	}
+
+	@Override
+	public float get(int row, int column) {
+		return parent.get(current().kept[row], column);
+	}
+
+	@Override
+	public void getColumn(int column, float[] dst) {
+		int[] kept = current().kept;
+		float[] all = new float[parent.getRowCount()];
+		parent.getColumn(column, all);
+		for (int r = 0; r < kept.length; r++) {
+			dst[r] = all[kept[r]];
+		}
+	}
+
+	@Override
+	public void getRow(int row, float[] dst) {
+		parent.getRow(current().kept[row], dst);
+	}
+
+	@Override
+	public long getColumnStamp(int column) {
+		long rowsStamp = current().stamp;
+		return stamps.get(column, parent.getColumnStamp(column), rowsStamp);
+	}
+
+}
@@ -0,0 +1,49 @@
+package org.geworkbench.bison.model.pipeline;
+
+/**
+ * Drops markers with more missing values than allowed, given either as a
+ * count or as a fraction of the arrays.
+ *
+ * @version $Id$
+ */
+public class MissingValueFilterStage extends MarkerFilterStage {
+
+	private int maxCount = Integer.MAX_VALUE;
+	private double maxFraction = Double.NaN;
+
+	public String getName() {
+		return "Missing values filter";
+	}
+
+	public String getParameterDescription() {
+		return Double.isNaN(maxFraction) ? "at most " + maxCount + " missing"
+				: "at most " + (maxFraction * 100) + "% missing";
+	}
+
+	/** Keep markers with at most <code>count</code> missing values. */
+	public void setMaxCount(int count) {
+		this.maxCount = count;
+		this.maxFraction = Double.NaN;
+		parametersChanged();
+	}
+
+	/** Keep markers with at most this fraction of missing values. */
+	public void setMaxFraction(double fraction) {
+		this.maxFraction = fraction;
+		parametersChanged();
+	}
+
+	protected boolean accept(float[] values, int length) {
+		int missing = 0;
+		for (int i = 0; i < length; i++) {
+			if (Float.isNaN(values[i])) {
+				missing++;
+			}
+		}
+		if (Double.isNaN(maxFraction)) {
+			return missing <= maxCount;
+		}
+		return length == 0 || (double) missing / length <= maxFraction;
+	}
+
+}
@@ -0,0 +1,59 @@
+package org.geworkbench.bison.model.pipeline;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * One recorded, parameterized step of a {@link PreprocessingPipeline}.
+ *
+ * A stage does not touch the data set it is applied to; the pipeline asks it
+ * for a {@link PipelineView} over the output of the previous stage. Setters
+ * of stage parameters must call {@link #parametersChanged()} so that the
+ * views derived from the stage recompute what depends on them, and nothing
+ * else.
+ *
+ * @version $Id$
+ */
+public abstract class PipelineStage {
+
+	/* bumped on any parameter change of any stage */
+	private static final AtomicInteger modifications = new AtomicInteger();
+
+	private volatile int version = 0;
+
+	/** Short name of the filter or normalizer, e.g. "Log2 transformation". */
+	public abstract String getName();
+
+	/** The current parameter settings, as recorded in the data set history. */
+	public abstract String getParameterDescription();
+
+	/** Filters drop markers; every other stage changes values. */
+	public boolean isFilter() {
+		return false;
+	}
+
+	public int getVersion() {
+		return version;
+	}
+
+	/** Subclasses call this from every parameter setter. */
+	protected synchronized void parametersChanged() {
+		version++;
+		modified();
+	}
+
+	static void modified() {
+		modifications.incrementAndGet();
+	}
+
+	static int getModificationCount() {
+		return modifications.get();
+	}
+
+	abstract PipelineView createView(PipelineView input);
+
+	@Override
+	public String toString() {
+		return getName() + " (" + getParameterDescription() + ")";
+	}
+
+}
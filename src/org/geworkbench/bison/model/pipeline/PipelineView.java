@@ -0,0 +1,114 @@
+package org.geworkbench.bison.model.pipeline;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Read-only, lazily evaluated expression matrix produced by a stage of a
+ * {@link PreprocessingPipeline}: one row per surviving marker, one column per
+ * array.
+ *
+ * Views do not copy the matrix. Each one keeps at most a few numbers per row
+ * or column (fitted shifts and scales, the surviving rows) and computes
+ * values from its parent on access. Every column carries a stamp that changes
+ * whenever its content may have changed, which is how a view finds the
+ * columns it has to refit after an upstream parameter change.
+ *
+ * Views may be read from several threads.
+ *
+ * @version $Id$
+ */
+public abstract class PipelineView {
+
+	private static final AtomicLong stamps = new AtomicLong();
+
+	static long nextStamp() {
+		return stamps.incrementAndGet();
+	}
+
+	public abstract int getRowCount();
+
+	public abstract int getColumnCount();
+
+	/** Serial, in the source data set, of the marker shown in <code>row</code>. */
+	public abstract int getRowSerial(int row);
+
+	public abstract float get(int row, int column);
+
+	/** Copies the column into <code>dst[0 .. getRowCount())</code>. */
+	public abstract void getColumn(int column, float[] dst);
+
+	/** Copies the row into <code>dst[0 .. getColumnCount())</code>. */
+	public abstract void getRow(int row, float[] dst);
+
+	/**
+	 * Changes whenever the content of the column may have changed; equal
+	 * stamps mean equal content.
+	 */
+	public abstract long getColumnStamp(int column);
+
+	/**
+	 * Bring per-marker state (surviving rows, per-marker fits) up to date.
+	 * Called before reading columns in parallel.
+	 */
+	abstract void prepare();
+
+	/*
+	 * Per column: the stamp issued for the last combination of parent stamp
+	 * and local version seen.
+	 */
+	static final class ColumnStamps {
+		private final long[] parent;
+		private final long[] version;
+		private final long[] stamp;
+
+		ColumnStamps(int columns) {
+			parent = new long[columns];
+			version = new long[columns];
+			stamp = new long[columns];
+			Arrays.fill(parent, -1);
+		}
+
+		synchronized long get(int column, long parentStamp, long localVersion) {
+			if (parent[column] != parentStamp
+					|| version[column] != localVersion) {
+				parent[column] = parentStamp;
+				version[column] = localVersion;
+				stamp[column] = nextStamp();
+			}
+			return stamp[column];
+		}
+	}
+
+	/*
+	 * The stamps of every parent column and the stage version seen when
+	 * per-marker state was last computed.
+	 */
+	static final class InputState {
+		private long[] seen = null;
+		private int version = -1;
+		private int modifications = -1;
+
+		/* callers hold the lock of the owning view */
+		boolean changed(PipelineView parent, int stageVersion) {
+			int m = PipelineStage.getModificationCount();
+			if (seen != null && m == modifications && stageVersion == version) {
+				return false;
+			}
+			modifications = m;
+			int columns = parent.getColumnCount();
+			long[] now = new long[columns];
+			for (int c = 0; c < columns; c++) {
+				now[c] = parent.getColumnStamp(c);
+			}
+			if (seen != null && stageVersion == version
+					&& Arrays.equals(seen, now)) {
+				return false;
+			}
+			seen = now;
+			version = stageVersion;
+			return true;
+		}
+	}
+
+}
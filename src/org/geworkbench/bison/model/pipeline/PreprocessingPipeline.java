@@ -0,0 +1,222 @@
+package org.geworkbench.bison.model.pipeline;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.geworkbench.bison.datastructure.biocollections.microarrays.CSMicroarraySet;
+import org.geworkbench.bison.datastructure.biocollections.microarrays.DSMicroarraySet;
+import org.geworkbench.bison.datastructure.bioobjects.markers.DSGeneMarker;
+import org.geworkbench.bison.datastructure.bioobjects.markers.annotationparser.AnnotationParser;
+import org.geworkbench.bison.datastructure.bioobjects.microarray.CSExpressionMarkerValue;
+import org.geworkbench.bison.datastructure.bioobjects.microarray.CSMicroarray;
+import org.geworkbench.bison.datastructure.bioobjects.microarray.DSMarkerValue;
+import org.geworkbench.bison.datastructure.bioobjects.microarray.DSMicroarray;
+import org.geworkbench.bison.datastructure.bioobjects.microarray.DSMutableMarkerValue;
+import org.geworkbench.bison.util.ExpressionMatrix;
+import org.geworkbench.builtin.projects.history.HistoryPanel;
+import org.geworkbench.builtin.projects.history.ProvenanceLog;
+import org.geworkbench.builtin.projects.history.ProvenanceStep;
+import org.geworkbench.util.Parallel;
+
+/**
+ * A chain of filtering and normalizing stages over one microarray set that
+ * never modifies the set.
+ *
+ * The raw values are read once into a shared snapshot (missing values as
+ * NaN); every stage contributes a lazily evaluated {@link PipelineView} over
+ * the previous one, keeping only per-marker or per-array fits rather than a
+ * copy of the matrix. Changing a stage parameter or the chain only recomputes
+ * the fits that depend on it, so thresholds can be tuned interactively. A new
+ * data set is created only when {@link #createMicroarraySet(String)} is
+ * called.
+ *
+ * @version $Id$
+ */
+public class PreprocessingPipeline {
+
+	private final DSMicroarraySet source;
+	private final PipelineView base;
+	private final List<PipelineStage> stages = new ArrayList<PipelineStage>();
+	/* output of stage i, built on demand; views of unchanged prefixes are kept */
+	private final List<PipelineView> views = new ArrayList<PipelineView>();
+
+	public PreprocessingPipeline(DSMicroarraySet source) {
+		this.source = source;
+		this.base = new BaseView(ExpressionMatrix.fromMicroarraySet(source,
+				true));
+	}
+
+	public DSMicroarraySet getSource() {
+		return source;
+	}
+
+	public synchronized void addStage(PipelineStage stage) {
+		stages.add(stage);
+	}
+
+	public synchronized void insertStage(int index, PipelineStage stage) {
+		stages.add(index, stage);
+		truncateViews(index);
+	}
+
+	public synchronized PipelineStage removeStage(int index) {
+		truncateViews(index);
+		return stages.remove(index);
+	}
+
+	public synchronized void setStage(int index, PipelineStage stage) {
+		stages.set(index, stage);
+		truncateViews(index);
+	}
+
+	public synchronized List<PipelineStage> getStages() {
+		return Collections.unmodifiableList(new ArrayList<PipelineStage>(
+				stages));
+	}
+
+	private void truncateViews(int from) {
+		while (views.size() > from) {
+			views.remove(views.size() - 1);
+		}
+	}
+
+	/** The raw values, before any stage. */
+	public PipelineView getInput() {
+		return base;
+	}
+
+	/** The output of the stage at <code>index</code>. */
+	public synchronized PipelineView getOutput(int index) {
+		for (int i = views.size(); i <= index; i++) {
+			PipelineView input = i == 0 ? base : views.get(i - 1);
+			views.add(stages.get(i).createView(input));
+		}
+		return views.get(index);
+	}
+
+	/** The output of the last stage. */
+	public synchronized PipelineView getResult() {
+		return stages.isEmpty() ? base : getOutput(stages.size() - 1);
+	}
+
+	/** Evaluate the whole chain into a dense matrix, arrays in parallel. */
+	public ExpressionMatrix materialize() {
+		final PipelineView result = getResult();
+		result.prepare();
+		final int rows = result.getRowCount();
+		final int columns = result.getColumnCount();
+		final float[] values = new float[rows * columns];
+		Parallel.forRange(0, columns, 4, new Parallel.RangeTask() {
+			public void run(int from, int to) {
+				float[] column = new float[rows];
+				for (int c = from; c < to; c++) {
+					result.getColumn(c, column);
+					for (int r = 0, k = c; r < rows; r++, k += columns) {
+						values[k] = column[r];
+					}
+				}
+			}
+		});
+		int[] serials = new int[rows];
+		for (int r = 0; r < rows; r++) {
+			serials[r] = result.getRowSerial(r);
+		}
+		return new ExpressionMatrix(rows, columns, values, serials);
+	}
+
+	/**
+	 * One provenance step per stage, in order, each recording the pipeline
+	 * source as its input.
+	 */
+	public synchronized ProvenanceLog getProvenance() {
+		ProvenanceLog log = new ProvenanceLog();
+		long input = ProvenanceLog.fingerprint(source);
+		for (PipelineStage stage : stages) {
+			log.add(new ProvenanceStep(stage.isFilter() ? "Filtered with"
+					: "Normalized with", stage.getClass().getName(), stage
+					.toString(), null, null, input));
+		}
+		return log;
+	}
+
+	/** History lines for the stages, in the form the project panel writes. */
+	public String getHistory() {
+		return getProvenance().render();
+	}
+
+	/**
+	 * A new microarray set holding the pipeline output: copies of the
+	 * surviving markers, and one array per source array. Each value is a copy
+	 * of the source value object, so calls and other properties are kept,
+	 * with the value set where a stage changed it. The source set is left
+	 * untouched.
+	 */
+	public DSMicroarraySet createMicroarraySet(String label) {
+		final ExpressionMatrix matrix = materialize();
+		final int rows = matrix.getRowCount();
+		CSMicroarraySet result = new CSMicroarraySet();
+		result.setLabel(label);
+		result.setCompatibilityLabel(source.getCompatibilityLabel());
+		result.setAnnotationFileName(source.getAnnotationFileName());
+		for (int r = 0; r < rows; r++) {
+			DSGeneMarker marker = source.getMarkers().get(
+					matrix.getRowSerial(r));
+			result.getMarkers().add(marker.deepCopy());
+		}
+		result.getMarkers().correctMaps();
+
+		final CSMicroarray[] arrays = new CSMicroarray[matrix.getColumnCount()];
+		Parallel.forRange(0, arrays.length, 4, new Parallel.RangeTask() {
+			public void run(int from, int to) {
+				for (int c = from; c < to; c++) {
+					DSMicroarray original = source.get(c);
+					DSMarkerValue[] originals = original.getMarkerValues();
+					CSMicroarray array = new CSMicroarray(c, rows, original
+							.getLabel(),
+							DSMicroarraySet.DO_NOT_CREATE_VALUE_OBJECT);
+					for (int r = 0; r < rows; r++) {
+						array.setMarkerValue(r, copy(originals[matrix
+								.getRowSerial(r)], matrix.get(r, c)));
+					}
+					arrays[c] = array;
+				}
+			}
+		});
+		for (CSMicroarray array : arrays) {
+			result.add(array);
+		}
+
+		AnnotationParser.setChipType(result, AnnotationParser
+				.getChipType(source));
+		HistoryPanel.copyHistory(source, result);
+		HistoryPanel.addSteps(result, getProvenance());
+		result.setDescription("Microarray experiment. # of microarrays: "
+				+ result.size() + ",   " + "# of markers: "
+				+ result.getMarkers().size());
+		return result;
+	}
+
+	/* a copy of the source value with the output value, NaN for missing */
+	private static DSMarkerValue copy(DSMarkerValue original, float v) {
+		DSMarkerValue copy = original.deepCopy();
+		if (!(copy instanceof DSMutableMarkerValue)) {
+			CSExpressionMarkerValue value = new CSExpressionMarkerValue(Float
+					.isNaN(v) ? 0 : v);
+			value.setMissing(Float.isNaN(v));
+			return value;
+		}
+		DSMutableMarkerValue value = (DSMutableMarkerValue) copy;
+		if (Float.isNaN(v)) {
+			// the raw value of a missing cell is kept
+			value.setMissing(true);
+		} else {
+			if ((float) value.getValue() != v) {
+				value.setValue(v);
+			}
+			value.setMissing(false);
+		}
+		return value;
+	}
+
+}
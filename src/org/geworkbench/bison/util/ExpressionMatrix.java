@@ -0,0 +1,142 @@
+package org.geworkbench.bison.util;
+
+import java.io.Serializable;
+import java.util.List;
+
+import org.geworkbench.bison.datastructure.biocollections.microarrays.DSMicroarraySet;
+import org.geworkbench.bison.datastructure.biocollections.views.DSMicroarraySetView;
+import org.geworkbench.bison.datastructure.bioobjects.markers.DSGeneMarker;
+import org.geworkbench.bison.datastructure.bioobjects.microarray.DSMarkerValue;
+import org.geworkbench.bison.datastructure.bioobjects.microarray.DSMicroarray;
+import org.geworkbench.bison.datastructure.complex.panels.DSItemList;
+import org.geworkbench.util.Parallel;
+
+/**
+ * Dense, row-major float snapshot of expression values: one row per marker,
+ * one column per array. Numeric kernels work on this instead of going through
+ * <code>getMarkerValue()</code> for every cell.
+ *
+ * The snapshot is not updated when the source data set changes.
+ *
+ * @version $Id$
+ */
+public final class ExpressionMatrix implements Serializable {
+
+	private static final long serialVersionUID = -3163722046405521133L;
+
+	private final int rowCount;
+	private final int columnCount;
+	private final float[] values;
+	/* marker serial of each row */
+	private final int[] rowSerials;
+
+	public ExpressionMatrix(int rowCount, int columnCount, float[] values,
+			int[] rowSerials) {
+		if (values.length != rowCount * columnCount
+				|| rowSerials.length != rowCount) {
+			throw new IllegalArgumentException("matrix dimensions do not match");
+		}
+		this.rowCount = rowCount;
+		this.columnCount = columnCount;
+		this.values = values;
+		this.rowSerials = rowSerials;
+	}
+
+	/**
+	 * All markers of all arrays in the set; row <i>i</i> is the marker with
+	 * serial <i>i</i>.
+	 *
+	 * @param missingAsNaN
+	 *            store missing values as NaN instead of their raw value
+	 */
+	public static ExpressionMatrix fromMicroarraySet(DSMicroarraySet set,
+			boolean missingAsNaN) {
+		return fromMicroarrays(set, set.getMarkers().size(), missingAsNaN);
+	}
+
+	/** All markers of the given arrays, in array list order. */
+	public static ExpressionMatrix fromMicroarrays(
+			List<? extends DSMicroarray> arrays, int markerCount,
+			boolean missingAsNaN) {
+		int[] serials = new int[markerCount];
+		for (int i = 0; i < markerCount; i++) {
+			serials[i] = i;
+		}
+		return extract(arrays, serials, missingAsNaN);
+	}
+
+	/** The markers and arrays currently active in the view, in view order. */
+	public static ExpressionMatrix fromView(
+			DSMicroarraySetView<? extends DSGeneMarker, ? extends DSMicroarray> view,
+			boolean missingAsNaN) {
+		DSItemList<? extends DSGeneMarker> markers = view.markers();
+		int[] serials = new int[markers.size()];
+		for (int i = 0; i < serials.length; i++) {
+			serials[i] = markers.get(i).getSerial();
+		}
+		return extract(view.items(), serials, missingAsNaN);
+	}
+
+	private static ExpressionMatrix extract(
+			final List<? extends DSMicroarray> arrays, final int[] serials,
+			final boolean missingAsNaN) {
+		final int rows = serials.length;
+		final int columns = arrays.size();
+		final float[] values = new float[rows * columns];
+		Parallel.forRange(0, columns, 8, new Parallel.RangeTask() {
+			public void run(int from, int to) {
+				for (int j = from; j < to; j++) {
+					DSMarkerValue[] markerValues = arrays.get(j)
+							.getMarkerValues();
+					for (int i = 0; i < rows; i++) {
+						DSMarkerValue mv = markerValues[serials[i]];
+						values[i * columns + j] = missingAsNaN && mv.isMissing() ? Float.NaN
+								: (float) mv.getValue();
+					}
+				}
+			}
+		});
+		return new ExpressionMatrix(rows, columns, values, serials);
+	}
+
+	public int getRowCount() {
+		return rowCount;
+	}
+
+	public int getColumnCount() {
+		return columnCount;
+	}
+
+	public float get(int row, int column) {
+		return values[row * columnCount + column];
+	}
+
+	public void set(int row, int column, float value) {
+		values[row * columnCount + column] = value;
+	}
+
+	/** Offset of the first cell of <code>row</code> in {@link #getValues()}. */
+	public int getRowOffset(int row) {
+		return row * columnCount;
+	}
+
+	/** The backing row-major array; changes write through. */
+	public float[] getValues() {
+		return values;
+	}
+
+	public float[] getRow(int row) {
+		float[] r = new float[columnCount];
+		System.arraycopy(values, row * columnCount, r, 0, columnCount);
+		return r;
+	}
+
+	public int getRowSerial(int row) {
+		return rowSerials[row];
+	}
+
+	public int[] getRowSerials() {
+		return rowSerials;
+	}
+
+}
@@ -1,6 +1,7 @@
 package org.geworkbench.builtin.projects;
 
 import java.io.IOException;
+import java.io.ObjectStreamField;
 
 import org.geworkbench.bison.annotation.CSAnnotationContextManager;
 import org.geworkbench.bison.datastructure.biocollections.DSDataSet;
@@ -21,22 +22,60 @@ public class DataSetNode extends ProjectTreeNode {
 	
 	private static final long serialVersionUID = 1423608759523479212L;
 	
-	private final DSDataSet<? extends DSBioObject> dataFile;
+	/* the dataset, written as the field it used to be */
+	private static final ObjectStreamField[] serialPersistentFields = { new ObjectStreamField(
+			"dataFile", DSDataSet.class) };
+
+	private transient SpillableDataSet dataFile;
+
+	/** The dataset, read back from disk if it was moved there. */
+	@SuppressWarnings("unchecked")
 	@Override
-	public DSDataSet<? extends DSBioObject> getDataset() { return dataFile; }
-    
+	public DSDataSet<? extends DSBioObject> getDataset() {
+		return (DSDataSet<? extends DSBioObject>) dataFile.get();
+	}
+
+	/** The dataset if it is in memory, otherwise null. */
+	@SuppressWarnings("unchecked")
+	public DSDataSet<? extends DSBioObject> peekDataset() {
+		return (DSDataSet<? extends DSBioObject>) dataFile.peek();
+	}
+
+	/** The class of the dataset, without reading it back from disk. */
+	@SuppressWarnings("rawtypes")
+	public Class<? extends DSDataSet> getDataSetType() {
+		return dataFile.getType();
+	}
+
+	/** The description of the dataset, without reading it back from disk. */
+	public String getDataSetDescription() {
+		return dataFile.getDescription();
+	}
+
+	SpillableDataSet getSpillable() {
+		return dataFile;
+	}
+
     DataSetNode(final DSDataSet<? extends DSBioObject> df) {
-        dataFile = df;
-        setUserObject(dataFile.getDataSetName());
+        dataFile = new SpillableDataSet(DataSetResidency.getInstance(), df);
+        setUserObject(df.getDataSetName());
 
         dirPropertyKey = "datanodeDir";
     }
 
+    /* a dataset on disk is written as a copy of its file, with its contexts */
     private void writeObject(java.io.ObjectOutputStream out) throws IOException {
+        DSDataSet<?> dataFile = this.dataFile.peek();
+        java.io.ObjectOutputStream.PutField fields = out.putFields();
+        fields.put("dataFile", dataFile);
+        out.writeFields();
+        if (dataFile == null) {
+            out.writeObject(this.dataFile);
+            return;
+        }
         // Include the criteria info if there is any
         CSAnnotationContextManager manager = CSAnnotationContextManager.getInstance();
         CSAnnotationContextManager.SerializableContexts contexts = manager.getContextsForSerialization(dataFile);
-        out.defaultWriteObject();
         out.writeObject(contexts);
         if (dataFile instanceof DSMicroarraySet) {
             DSMicroarraySet set = (DSMicroarraySet) dataFile;
@@ -46,7 +85,12 @@ public class DataSetNode extends ProjectTreeNode {
     }
 
     private void readObject(java.io.ObjectInputStream in) throws IOException, ClassNotFoundException {
-        in.defaultReadObject();
+        DSDataSet<?> dataFile = (DSDataSet<?>) in.readFields().get("dataFile", null);
+        if (dataFile == null) {
+            this.dataFile = (SpillableDataSet) in.readObject();
+            return;
+        }
+        this.dataFile = new SpillableDataSet(DataSetResidency.getInstance(), dataFile);
         CSAnnotationContextManager manager = CSAnnotationContextManager.getInstance();
         manager.setContextsFromSerializedObject(dataFile, (CSAnnotationContextManager.SerializableContexts) in.readObject());
         if (dataFile instanceof DSMicroarraySet) {
@@ -0,0 +1,847 @@
+package org.geworkbench.builtin.projects;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.InvalidObjectException;
+import java.io.OutputStream;
+import java.lang.ref.WeakReference;
+import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import javax.swing.SwingUtilities;
+import javax.swing.event.TreeModelEvent;
+import javax.swing.event.TreeModelListener;
+import javax.swing.tree.TreeModel;
+import javax.swing.tree.TreeNode;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.geworkbench.bison.datastructure.biocollections.DSAncillaryDataSet;
+import org.geworkbench.bison.datastructure.biocollections.DSDataSet;
+import org.geworkbench.bison.datastructure.biocollections.microarrays.DSMicroarraySet;
+import org.geworkbench.bison.datastructure.biocollections.microarrays.MicroarraySetVersions;
+import org.geworkbench.engine.preferences.GlobalPreferences;
+import org.geworkbench.util.FilePathnameUtils;
+
+/**
+ * Keeps the datasets of the project tree within a memory budget. When the
+ * datasets in memory are estimated to need more than the budget, the ones
+ * used least recently are written to disk and let go; a dataset on disk is
+ * read back the next time its node asks for it. The budget is the global
+ * preference {@link GlobalPreferences#DATASET_MEMORY_BUDGET}; with no budget,
+ * nothing is ever written out.
+ *
+ * The datasets of {@link DataSetNode}s and the results of
+ * {@link DataSetSubNode}s are written out alike; a set is passed over only
+ * while one of its results is in memory, since that keeps it there anyway.
+ * A microarray set with saved versions is never written out: the versions
+ * belong to the set object, and a copy read back would have none.
+ * A dataset is streamed to its file by a background thread. Datasets are
+ * changed where they are asked for from their node, so a write is stopped
+ * as soon as the dataset is used, and only a dataset not used from the start
+ * to the end of its write is let go. Each dataset is written on its own with
+ * {@link DataSetStreams}, so its references to the datasets of other nodes
+ * come back as the objects in memory. A dataset let go is also held weakly,
+ * and as long as something else still uses it, that same object is given
+ * back instead of the copy. A dataset is read back outside of the lock, so
+ * other nodes can be used meanwhile.
+ *
+ * @version $Id$
+ */
+final class DataSetResidency {
+
+	private static Log log = LogFactory.getLog(DataSetResidency.class);
+
+	/* memory guessed for the bookkeeping of a dataset of unknown structure */
+	private static final long BASE_COST = 64 * 1024;
+
+	private static DataSetResidency instance;
+
+	private final long budget;
+	private File directory;
+
+	/* tracked datasets, least recently used first */
+	private final Map<Integer, SpillableDataSet> tracked = new LinkedHashMap<Integer, SpillableDataSet>(
+			16, 0.75f, true);
+	/* every file on disk, deleted once its dataset can no longer be used */
+	private final Map<File, WeakReference<SpillableDataSet>> files = new HashMap<File, WeakReference<SpillableDataSet>>();
+	/* files being copied, which are deleted only once the copies are done */
+	private final Map<File, Integer> copying = new HashMap<File, Integer>();
+
+	private ExecutorService writer;
+	private int pending;
+	private int ids;
+	private long clock;
+
+	private int writeCount;
+	private long writeBytes;
+	private long writeNanos;
+	private int readCount;
+	private int reuseCount;
+	private long readNanos;
+
+	/** Thrown where a dataset written from memory is used before it is done. */
+	static final class StoppedException extends InterruptedIOException {
+		private static final long serialVersionUID = 5049272105717434581L;
+
+		StoppedException(String message) {
+			super(message);
+		}
+	}
+
+	/**
+	 * The dataset of a node as written off the event dispatch thread: a copy
+	 * of the file it was moved to, or while it is in memory, the dataset
+	 * itself, which is stopped if the dataset is used before it is done.
+	 * Closed when done with.
+	 */
+	final class Capture {
+		private final SpillableDataSet data;
+		private final DSDataSet<?> value;
+		private final File file;
+		private final long stamp;
+		private final Map<Integer, SpillableDataSet> tokens;
+		private final Map<Integer, DSDataSet<?>> others;
+		private final Set<Integer> used = new HashSet<Integer>();
+		private volatile boolean stopped;
+		private boolean closed;
+
+		private Capture(SpillableDataSet data, DSDataSet<?> value, File file,
+				Map<Integer, SpillableDataSet> tokens,
+				Map<Integer, DSDataSet<?>> others) {
+			this.data = data;
+			this.value = value;
+			this.file = file;
+			this.stamp = data.lastUse;
+			this.tokens = tokens;
+			this.others = others;
+		}
+
+		/** Whether this is a copy of the file the dataset was moved to. */
+		boolean isCopy() {
+			return file != null;
+		}
+
+		/** The length of the copy, or -1 for a dataset in memory. */
+		long length() {
+			return file == null ? -1 : file.length();
+		}
+
+		/**
+		 * The datasets of other nodes that what is written may refer to, by
+		 * the token it has for each.
+		 */
+		Map<Integer, SpillableDataSet> getTokens() {
+			return Collections.unmodifiableMap(tokens);
+		}
+
+		/** The datasets of other nodes that what was written refers to. */
+		Collection<SpillableDataSet> getUsed() {
+			if (file != null) {
+				return tokens.values();
+			}
+			List<SpillableDataSet> list = new ArrayList<SpillableDataSet>();
+			for (Integer id : used) {
+				list.add(tokens.get(id));
+			}
+			return list;
+		}
+
+		/**
+		 * Write what {@link DataSetStreams#write} writes for the dataset.
+		 *
+		 * @throws StoppedException
+		 *             if the dataset in memory was used meanwhile
+		 */
+		void writeTo(OutputStream out) throws IOException {
+			if (file != null) {
+				InputStream in = new FileInputStream(file);
+				try {
+					transfer(in, out, Long.MAX_VALUE);
+				} finally {
+					in.close();
+				}
+				return;
+			}
+			Object[] annotations = annotationsOf(value);
+			try {
+				DataSetStreams.write(new FilterOutputStream(out) {
+					@Override
+					public void write(int b) throws IOException {
+						check();
+						out.write(b);
+					}
+
+					@Override
+					public void write(byte[] b, int off, int len)
+							throws IOException {
+						check();
+						out.write(b, off, len);
+					}
+				}, value, annotations, others, used);
+			} catch (RuntimeException e) {
+				// changed while being written
+				check();
+				throw e;
+			}
+			check();
+		}
+
+		private void check() throws StoppedException {
+			if (stopped) {
+				throw new StoppedException(value.getLabel()
+						+ " was used while being written");
+			}
+		}
+
+		/** Whether the dataset in memory was used since this was taken. */
+		boolean isStopped() {
+			return stopped;
+		}
+
+		void close() {
+			synchronized (DataSetResidency.this) {
+				if (closed) {
+					return;
+				}
+				closed = true;
+				if (file == null) {
+					data.captures.remove(this);
+					return;
+				}
+				int count = copying.get(file) - 1;
+				if (count > 0) {
+					copying.put(file, count);
+				} else {
+					copying.remove(file);
+					if (!files.containsKey(file)) {
+						// read back while it was copied
+						file.delete();
+					}
+				}
+			}
+		}
+	}
+
+	static synchronized DataSetResidency getInstance() {
+		if (instance == null) {
+			instance = new DataSetResidency(null, -1);
+		}
+		return instance;
+	}
+
+	/**
+	 * @param directory
+	 *            where to write datasets, or null for a new directory under
+	 *            the temporary files directory
+	 * @param budget
+	 *            in bytes, 0 for none, or negative to follow the global
+	 *            preference
+	 */
+	DataSetResidency(File directory, long budget) {
+		this.directory = directory;
+		this.budget = budget;
+	}
+
+	synchronized int nextId() {
+		return ++ids;
+	}
+
+	/** Count the dataset against the budget and let it be moved to disk. */
+	synchronized void track(SpillableDataSet data) {
+		if (data.tracked) {
+			return;
+		}
+		data.tracked = true;
+		data.lastUse = ++clock;
+		if (data.cost == 0) {
+			data.cost = estimate(data.peek());
+		}
+		tracked.put(data.id, data);
+		enforce(data);
+	}
+
+	/**
+	 * Stop counting the dataset. A dataset already on disk stays there, so
+	 * the node can still be used if it comes back.
+	 */
+	synchronized void untrack(SpillableDataSet data) {
+		if (!data.tracked) {
+			return;
+		}
+		data.tracked = false;
+		data.spilling = false;
+		tracked.remove(data.id);
+	}
+
+	/** Untrack every dataset not in the collection. */
+	synchronized void retainOnly(Collection<SpillableDataSet> keep) {
+		Set<SpillableDataSet> set = Collections
+				.newSetFromMap(new IdentityHashMap<SpillableDataSet, Boolean>());
+		set.addAll(keep);
+		for (SpillableDataSet data : new ArrayList<SpillableDataSet>(tracked
+				.values())) {
+			if (!set.contains(data)) {
+				untrack(data);
+			}
+		}
+	}
+
+	/**
+	 * A listener that tracks the datasets of the nodes of a tree model while
+	 * they are in the tree.
+	 */
+	TreeModelListener createTreeListener() {
+		return new TreeModelListener() {
+			public void treeNodesInserted(TreeModelEvent e) {
+				List<SpillableDataSet> found = new ArrayList<SpillableDataSet>();
+				for (Object child : e.getChildren()) {
+					collect((TreeNode) child, found);
+				}
+				for (SpillableDataSet data : found) {
+					track(data);
+				}
+			}
+
+			public void treeNodesRemoved(TreeModelEvent e) {
+				List<SpillableDataSet> found = new ArrayList<SpillableDataSet>();
+				for (Object child : e.getChildren()) {
+					collect((TreeNode) child, found);
+				}
+				for (SpillableDataSet data : found) {
+					untrack(data);
+				}
+			}
+
+			public void treeNodesChanged(TreeModelEvent e) {
+			}
+
+			public void treeStructureChanged(TreeModelEvent e) {
+				List<SpillableDataSet> found = new ArrayList<SpillableDataSet>();
+				collect((TreeNode) ((TreeModel) e.getSource()).getRoot(),
+						found);
+				retainOnly(found);
+				for (SpillableDataSet data : found) {
+					track(data);
+				}
+			}
+		};
+	}
+
+	/* the datasets of the DataSetNodes and DataSetSubNodes */
+	private static void collect(TreeNode node, List<SpillableDataSet> found) {
+		if (node instanceof DataSetNode) {
+			found.add(((DataSetNode) node).getSpillable());
+		} else if (node instanceof DataSetSubNode) {
+			found.add(((DataSetSubNode) node).getSpillable());
+		}
+		for (int i = 0; i < node.getChildCount(); i++) {
+			collect(node.getChildAt(i), found);
+		}
+	}
+
+	DSDataSet<?> use(SpillableDataSet data) {
+		while (true) {
+			CountDownLatch loading;
+			synchronized (this) {
+				data.lastUse = ++clock;
+				if (data.tracked) {
+					tracked.get(data.id);
+				}
+				if (data.resident != null) {
+					// no longer the least recently used, and may be changed
+					data.spilling = false;
+					for (Capture capture : data.captures) {
+						capture.stopped = true;
+					}
+					return data.resident;
+				}
+				if (data.loading == null) {
+					DSDataSet<?> value = data.released == null ? null
+							: data.released.get();
+					if (value != null) {
+						reuseCount++;
+						log.debug(value.getLabel() + " was still in memory");
+						loaded(data, value);
+						enforce(data);
+						return value;
+					}
+					data.loading = new CountDownLatch(1);
+					data.loader = Thread.currentThread();
+					break;
+				}
+				if (data.loader == Thread.currentThread()) {
+					throw new IllegalStateException("Circular reference to "
+							+ data.getLabel());
+				}
+				loading = data.loading;
+			}
+			// read back by another thread
+			try {
+				loading.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IllegalStateException("Interrupted while "
+						+ data.getLabel() + " was read back from disk");
+			}
+		}
+		return load(data);
+	}
+
+	/** Memory estimated for the datasets in memory and not being written. */
+	synchronized long getResidentCost() {
+		long total = 0;
+		for (SpillableDataSet data : tracked.values()) {
+			if (data.resident != null && !data.spilling) {
+				total += data.cost;
+			}
+		}
+		return total;
+	}
+
+	synchronized int getWriteCount() {
+		return writeCount;
+	}
+
+	synchronized int getReadCount() {
+		return readCount;
+	}
+
+	synchronized int getReuseCount() {
+		return reuseCount;
+	}
+
+	/**
+	 * Take the dataset of a node to be written off the event dispatch
+	 * thread.
+	 *
+	 * @param others
+	 *            the nodes whose datasets the one written may refer to, as
+	 *            long as it is in memory
+	 */
+	synchronized Capture capture(SpillableDataSet data,
+			Collection<SpillableDataSet> others) {
+		Capture copy = copy(data);
+		if (copy != null) {
+			return copy;
+		}
+		Map<Integer, SpillableDataSet> tokens = new HashMap<Integer, SpillableDataSet>();
+		Map<Integer, DSDataSet<?>> datasets = new HashMap<Integer, DSDataSet<?>>();
+		for (SpillableDataSet other : others) {
+			DSDataSet<?> dataset = other.peek();
+			if (other != data && dataset != null) {
+				tokens.put(other.id, other);
+				datasets.put(other.id, dataset);
+			}
+		}
+		Capture capture = new Capture(data, data.resident, null, tokens,
+				datasets);
+		data.captures.add(capture);
+		return capture;
+	}
+
+	/**
+	 * A copy of the file the dataset was moved to, or null if it is in
+	 * memory. The file stays until the copy is closed.
+	 */
+	synchronized Capture copy(SpillableDataSet data) {
+		if (data.resident != null) {
+			return null;
+		}
+		Integer count = copying.get(data.spillFile);
+		copying.put(data.spillFile, count == null ? 1 : count + 1);
+		return new Capture(data, null, data.spillFile,
+				new HashMap<Integer, SpillableDataSet>(data.references), null);
+	}
+
+	/**
+	 * Put what a copy wrote into a new file of the dataset, which stays on
+	 * disk until it is used.
+	 */
+	void receive(SpillableDataSet data, InputStream in, long length,
+			Map<Integer, SpillableDataSet> references) throws IOException {
+		File file;
+		synchronized (this) {
+			file = File.createTempFile("dataset-", ".ser", directory());
+		}
+		try {
+			OutputStream out = new BufferedOutputStream(new FileOutputStream(
+					file), 1 << 16);
+			try {
+				if (transfer(in, out, length) < length) {
+					throw new EOFException("The copy of " + data.getLabel()
+							+ " is cut short");
+				}
+			} finally {
+				out.close();
+			}
+		} catch (IOException e) {
+			file.delete();
+			throw e;
+		}
+		synchronized (this) {
+			data.spillFile = file;
+			data.references = references;
+			data.cost = 2 * length;
+			files.put(file, new WeakReference<SpillableDataSet>(data));
+		}
+	}
+
+	/** Wait for the datasets being written so far. */
+	void awaitWrites() throws InterruptedException {
+		while (true) {
+			ExecutorService executor;
+			synchronized (this) {
+				if (pending == 0) {
+					return;
+				}
+				executor = writer;
+			}
+			try {
+				executor.submit(new Runnable() {
+					public void run() {
+					}
+				}).get();
+			} catch (ExecutionException e) {
+				throw new IllegalStateException(e);
+			}
+		}
+	}
+
+	private long budget() {
+		if (budget >= 0) {
+			return budget;
+		}
+		return (long) GlobalPreferences.getInstance().getDatasetMemoryBudget() << 20;
+	}
+
+	/* start writing out the least recently used datasets until within budget */
+	private void enforce(SpillableDataSet current) {
+		deleteUnusedFiles();
+		long limit = budget();
+		if (limit <= 0) {
+			return;
+		}
+		long total = getResidentCost();
+		if (total <= limit) {
+			return;
+		}
+		// a set is kept in memory by its results, so they go first
+		Set<Object> parents = Collections
+				.newSetFromMap(new IdentityHashMap<Object, Boolean>());
+		for (SpillableDataSet data : tracked.values()) {
+			if (data.resident instanceof DSAncillaryDataSet) {
+				parents.add(((DSAncillaryDataSet<?>) data.resident)
+						.getParentDataSet());
+			}
+		}
+		for (final SpillableDataSet data : new ArrayList<SpillableDataSet>(
+				tracked.values())) {
+			if (total <= limit) {
+				break;
+			}
+			if (data == current || data.resident == null || data.spilling
+					|| parents.contains(data.resident)
+					|| isVersioned(data.resident)) {
+				continue;
+			}
+			data.spilling = true;
+			total -= data.cost;
+			submit(new Runnable() {
+				public void run() {
+					spill(data);
+				}
+			});
+		}
+	}
+
+	private synchronized void submit(final Runnable task) {
+		if (writer == null) {
+			writer = Executors.newSingleThreadExecutor(new ThreadFactory() {
+				public Thread newThread(Runnable r) {
+					Thread thread = new Thread(r, "Dataset writer");
+					thread.setDaemon(true);
+					thread.setPriority(Thread.NORM_PRIORITY - 1);
+					return thread;
+				}
+			});
+		}
+		pending++;
+		writer.execute(new Runnable() {
+			public void run() {
+				try {
+					task.run();
+				} finally {
+					synchronized (DataSetResidency.this) {
+						pending--;
+					}
+				}
+			}
+		});
+	}
+
+	/* stream a dataset to disk and let it go, if it was not used meanwhile */
+	private void spill(SpillableDataSet data) {
+		Capture capture;
+		File file;
+		synchronized (this) {
+			if (!data.spilling || data.resident == null) {
+				data.spilling = false;
+				return;
+			}
+			capture = capture(data, tracked.values());
+			file = new File(directory(), "dataset-" + data.id + ".ser");
+		}
+
+		DSDataSet<?> value = capture.value;
+		long start = System.nanoTime();
+		try {
+			OutputStream stream = new BufferedOutputStream(
+					new FileOutputStream(file), 1 << 16);
+			try {
+				capture.writeTo(stream);
+			} finally {
+				stream.close();
+			}
+		} catch (StoppedException e) {
+			log.debug(e.getMessage());
+			capture.close();
+			file.delete();
+			return;
+		} catch (Exception e) {
+			log.error("Could not write " + value.getLabel() + " to disk", e);
+			capture.close();
+			file.delete();
+			synchronized (this) {
+				data.spilling = false;
+			}
+			return;
+		}
+		long nanos = System.nanoTime() - start;
+
+		synchronized (this) {
+			capture.close();
+			if (!data.spilling || capture.isStopped()
+					|| data.lastUse != capture.stamp || isVersioned(value)) {
+				// used or dropped meanwhile; keep it in memory
+				data.spilling = false;
+				file.delete();
+				return;
+			}
+			data.spilling = false;
+			data.resident = null;
+			data.released = new WeakReference<DSDataSet<?>>(value);
+			data.spillFile = file;
+			data.remember(value);
+			data.cost = Math.max(data.cost, 2 * file.length());
+			files.put(file, new WeakReference<SpillableDataSet>(data));
+			data.references = new HashMap<Integer, SpillableDataSet>();
+			for (SpillableDataSet other : capture.getUsed()) {
+				data.references.put(other.id, other);
+			}
+			writeCount++;
+			writeBytes += file.length();
+			writeNanos += nanos;
+			log.info("Moved " + value.getLabel() + " to disk: "
+					+ (file.length() >> 10) + " KB in " + (nanos / 1000000)
+					+ " ms; " + statistics());
+			// the set of a result may go now
+			enforce(null);
+		}
+	}
+
+	/* versions are kept for undo by the set object itself */
+	private static boolean isVersioned(DSDataSet<?> dataset) {
+		return dataset instanceof DSMicroarraySet
+				&& MicroarraySetVersions.getExisting((DSMicroarraySet) dataset) != null;
+	}
+
+	/* read a dataset back, with no lock held while reading */
+	private DSDataSet<?> load(SpillableDataSet data) {
+		File file;
+		Map<Integer, SpillableDataSet> references;
+		synchronized (this) {
+			file = data.spillFile;
+			references = data.references;
+		}
+		long start = System.nanoTime();
+		DSDataSet<?> value = null;
+		try {
+			value = read(file, references);
+		} catch (IOException e) {
+			throw new IllegalStateException("Could not read "
+					+ data.getLabel() + " back from disk", e);
+		} catch (ClassNotFoundException e) {
+			throw new IllegalStateException("Could not read "
+					+ data.getLabel() + " back from disk", e);
+		} finally {
+			synchronized (this) {
+				if (value != null) {
+					long nanos = System.nanoTime() - start;
+					readCount++;
+					readNanos += nanos;
+					log.info("Read " + value.getLabel() + " back from disk in "
+							+ (nanos / 1000000) + " ms; " + statistics());
+					loaded(data, value);
+					enforce(data);
+				}
+				data.loading.countDown();
+				data.loading = null;
+				data.loader = null;
+			}
+		}
+		return value;
+	}
+
+	/* called with the lock held */
+	private void loaded(SpillableDataSet data, DSDataSet<?> value) {
+		data.resident = value;
+		data.released = null;
+		files.remove(data.spillFile);
+		if (!copying.containsKey(data.spillFile)) {
+			data.spillFile.delete();
+		}
+		data.spillFile = null;
+		data.references = null;
+	}
+
+	private static DSDataSet<?> read(File file,
+			final Map<Integer, SpillableDataSet> references)
+			throws IOException, ClassNotFoundException {
+		InputStream stream = new BufferedInputStream(new FileInputStream(file),
+				1 << 16);
+		try {
+			return DataSetStreams.read(stream, new DataSetStreams.Resolver() {
+				public DSDataSet<?> resolve(int id) throws IOException {
+					SpillableDataSet owner = references.get(id);
+					if (owner == null) {
+						throw new InvalidObjectException("Dataset " + id
+								+ " is gone");
+					}
+					return owner.get();
+				}
+			});
+		} finally {
+			stream.close();
+		}
+	}
+
+	/*
+	 * What is kept about a dataset outside of it is taken on the event
+	 * dispatch thread, where it is used.
+	 */
+	private static Object[] annotationsOf(final DSDataSet<?> value)
+			throws IOException {
+		if (SwingUtilities.isEventDispatchThread()) {
+			return DataSetStreams.annotationsOf(value);
+		}
+		final Object[][] annotations = new Object[1][];
+		try {
+			SwingUtilities.invokeAndWait(new Runnable() {
+				public void run() {
+					annotations[0] = DataSetStreams.annotationsOf(value);
+				}
+			});
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while writing "
+					+ value.getLabel());
+		} catch (InvocationTargetException e) {
+			throw new IOException(e.getCause());
+		}
+		return annotations[0];
+	}
+
+	/* copy up to length bytes, and return how many there were */
+	private static long transfer(InputStream in, OutputStream out, long length)
+			throws IOException {
+		byte[] buffer = new byte[1 << 16];
+		long done = 0;
+		while (done < length) {
+			int n = in.read(buffer, 0, (int) Math.min(buffer.length, length
+					- done));
+			if (n < 0) {
+				break;
+			}
+			out.write(buffer, 0, n);
+			done += n;
+		}
+		return done;
+	}
+
+	private void deleteUnusedFiles() {
+		for (Iterator<Map.Entry<File, WeakReference<SpillableDataSet>>> i = files
+				.entrySet().iterator(); i.hasNext();) {
+			Map.Entry<File, WeakReference<SpillableDataSet>> entry = i.next();
+			if (entry.getValue().get() == null
+					&& !copying.containsKey(entry.getKey())) {
+				entry.getKey().delete();
+				i.remove();
+			}
+		}
+	}
+
+	private File directory() {
+		if (directory == null) {
+			try {
+				directory = File.createTempFile("datasets", "", new File(
+						FilePathnameUtils.getTemporaryFilesDirectoryPath()));
+			} catch (IOException e) {
+				throw new IllegalStateException(e);
+			}
+			directory.delete();
+			directory.deleteOnExit();
+		}
+		if (!directory.exists()) {
+			directory.mkdirs();
+		}
+		return directory;
+	}
+
+	/* estimated memory of a dataset in bytes */
+	static long estimate(DSDataSet<?> dataset) {
+		if (dataset == null) {
+			return BASE_COST;
+		}
+		if (dataset instanceof DSMicroarraySet) {
+			DSMicroarraySet set = (DSMicroarraySet) dataset;
+			long markers = set.getMarkers().size();
+			long arrays = set.size();
+			// a value object per measurement, plus the marker and array objects
+			return BASE_COST + markers * arrays * 32 + markers * 300 + arrays
+					* 200;
+		}
+		return BASE_COST + (long) dataset.size() * 256;
+	}
+
+	private String statistics() {
+		return "written " + writeCount + " (" + (writeBytes >> 20) + " MB, "
+				+ (writeNanos / 1000000) + " ms), read back " + readCount
+				+ " (" + (readNanos / 1000000) + " ms), found in memory "
+				+ reuseCount;
+	}
+
+}
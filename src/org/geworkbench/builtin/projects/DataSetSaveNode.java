@@ -9,6 +9,7 @@ import org.geworkbench.bison.annotation.CSAnnotationContextManager;
 import org.geworkbench.bison.datastructure.biocollections.DSDataSet;
 import org.geworkbench.bison.datastructure.biocollections.microarrays.DSMicroarraySet;
 import org.geworkbench.bison.datastructure.bioobjects.DSBioObject;
+import org.geworkbench.bison.util.RandomNumberGenerator;
 
 /**
  * A representation of a node for saving to disk.
@@ -22,6 +23,8 @@ public class DataSetSaveNode implements Serializable {
 
     private String description = "";
     private DSDataSet<? extends DSBioObject> dataSet;
+    /* instead of the dataset, when that was saved as a copy of its file */
+    private SpillableDataSet spilled;
     private String visualSelected;
     private String selectionSelected;
     private ArrayList<DataSetSaveNode> children;
@@ -63,6 +66,24 @@ public class DataSetSaveNode implements Serializable {
         children = new ArrayList<DataSetSaveNode>();
     }
 
+    DataSetSaveNode(SpillableDataSet spilled) {
+        this.spilled = spilled;
+        children = new ArrayList<DataSetSaveNode>();
+    }
+
+    /* read back a dataset saved as a copy of its file */
+    @SuppressWarnings("unchecked")
+    void readBack() {
+        if (spilled == null) {
+            return;
+        }
+        dataSet = (DSDataSet<? extends DSBioObject>) spilled.get();
+        spilled = null;
+        if (dataSet.getID() == null) {
+            dataSet.setID(RandomNumberGenerator.getID());
+        }
+    }
+
     public DSDataSet<? extends DSBioObject> getDataSet() {
         return dataSet;
     }
@@ -0,0 +1,302 @@
+package org.geworkbench.builtin.projects;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.geworkbench.bison.annotation.CSAnnotationContextManager;
+import org.geworkbench.bison.datastructure.biocollections.DSAncillaryDataSet;
+import org.geworkbench.bison.datastructure.biocollections.DSDataSet;
+import org.geworkbench.bison.datastructure.biocollections.microarrays.DSMicroarraySet;
+import org.geworkbench.bison.datastructure.bioobjects.DSBioObject;
+import org.geworkbench.bison.datastructure.bioobjects.markers.DSGeneMarker;
+import org.geworkbench.bison.datastructure.bioobjects.markers.annotationparser.APSerializable;
+import org.geworkbench.bison.datastructure.bioobjects.markers.annotationparser.AnnotationParser;
+import org.geworkbench.bison.datastructure.complex.panels.DSItemList;
+import org.geworkbench.util.AnnotationInformationManager;
+import org.geworkbench.util.AnnotationInformationManager.AnnotationType;
+
+/**
+ * Writes the dataset of one project node on its own. References from it to
+ * the datasets of other nodes, and to the markers of its parent microarray
+ * set, are written as tokens naming the node, and are resolved to the
+ * objects in memory when it is read back, so the object graph stays the
+ * same. What is kept about the dataset outside of it (annotation contexts
+ * and the annotation of a microarray set) goes along with it.
+ *
+ * @version $Id$
+ */
+final class DataSetStreams {
+
+	/** Gives the dataset of a node named by a token. */
+	interface Resolver {
+		DSDataSet<?> resolve(int id) throws IOException;
+	}
+
+	private DataSetStreams() {
+	}
+
+	/**
+	 * Take what is kept about the dataset outside of it. The annotation maps
+	 * are not thread safe, so this is called where they are used, and the
+	 * result is passed to {@link #write}.
+	 */
+	static Object[] annotationsOf(DSDataSet<?> value) {
+		CSAnnotationContextManager manager = CSAnnotationContextManager
+				.getInstance();
+		if (!(value instanceof DSMicroarraySet)) {
+			return new Object[] { manager.getContextsForSerialization(value) };
+		}
+		DSMicroarraySet set = (DSMicroarraySet) value;
+		return new Object[] {
+				manager.getContextsForSerialization(value),
+				manager.getContextsForSerialization(set.getMarkers()),
+				AnnotationParser.getSerializable(set),
+				AnnotationInformationManager.getInstance().getAnnotationType(
+						set) };
+	}
+
+	/**
+	 * @param others
+	 *            the datasets of the other nodes, by id
+	 * @param used
+	 *            receives the ids of the nodes written as tokens
+	 */
+	static void write(OutputStream stream, DSDataSet<?> value,
+			Object[] annotations, Map<Integer, DSDataSet<?>> others,
+			final Set<Integer> used) throws IOException {
+		final Map<Object, Object> tokens = new IdentityHashMap<Object, Object>();
+		DSDataSet<?> parent = value instanceof DSAncillaryDataSet ? ((DSAncillaryDataSet<?>) value)
+				.getParentDataSet()
+				: null;
+		for (Map.Entry<Integer, DSDataSet<?>> other : others.entrySet()) {
+			DSDataSet<?> dataset = other.getValue();
+			if (dataset == value) {
+				continue;
+			}
+			int id = other.getKey();
+			tokens.put(dataset, new DataSetToken(id));
+			if (dataset == parent && parent instanceof DSMicroarraySet) {
+				addMarkerTokens(tokens, id, (DSMicroarraySet) parent);
+			}
+		}
+		writeWithTokens(stream, tokens, used, value, annotations);
+	}
+
+	/**
+	 * Write the annotations of a dataset without it: references to the
+	 * dataset, its items and its markers are written as tokens.
+	 */
+	static void writeAnnotations(OutputStream stream, DSDataSet<?> value,
+			Object[] annotations) throws IOException {
+		Map<Object, Object> tokens = new IdentityHashMap<Object, Object>();
+		tokens.put(value, new DataSetToken(SELF));
+		for (int i = 0; i < value.size(); i++) {
+			DSBioObject item = value.get(i);
+			tokens.put(item, new ItemToken(SELF, i, item.getLabel()));
+		}
+		if (value instanceof DSMicroarraySet) {
+			addMarkerTokens(tokens, SELF, (DSMicroarraySet) value);
+		}
+		writeWithTokens(stream, tokens, new HashSet<Integer>(), annotations);
+	}
+
+	/**
+	 * Read what {@link #writeAnnotations} wrote for the dataset; give it to
+	 * {@link #restoreAnnotations} to put it back.
+	 */
+	static Object[] readAnnotations(InputStream stream, final DSDataSet<?> value)
+			throws IOException, ClassNotFoundException {
+		return (Object[]) readWithTokens(stream, new Resolver() {
+			public DSDataSet<?> resolve(int id) throws IOException {
+				if (id != SELF) {
+					throw new InvalidObjectException("Dataset " + id
+							+ " is not this one");
+				}
+				return value;
+			}
+		}).readObject();
+	}
+
+	private static void addMarkerTokens(Map<Object, Object> tokens, int id,
+			DSMicroarraySet set) {
+		DSItemList<DSGeneMarker> markers = set.getMarkers();
+		for (int i = 0; i < markers.size(); i++) {
+			DSGeneMarker marker = markers.get(i);
+			tokens.put(marker, new MarkerToken(id, i, marker.getLabel()));
+		}
+	}
+
+	private static void writeWithTokens(OutputStream stream,
+			final Map<Object, Object> tokens, final Set<Integer> used,
+			Object... objects) throws IOException {
+		ObjectOutputStream out = new ObjectOutputStream(stream) {
+			{
+				enableReplaceObject(true);
+			}
+
+			@Override
+			protected Object replaceObject(Object obj) {
+				Object token = tokens.get(obj);
+				if (token == null) {
+					return obj;
+				}
+				used.add(((Token) token).id);
+				return token;
+			}
+		};
+		for (Object object : objects) {
+			out.writeObject(object);
+		}
+		out.flush();
+	}
+
+	/** Read a dataset and put back what was kept about it. */
+	static DSDataSet<?> read(InputStream stream, Resolver resolver)
+			throws IOException, ClassNotFoundException {
+		ObjectInputStream in = readWithTokens(stream, resolver);
+		DSDataSet<?> value = (DSDataSet<?>) in.readObject();
+		restoreAnnotations(value, (Object[]) in.readObject());
+		return value;
+	}
+
+	private static ObjectInputStream readWithTokens(InputStream stream,
+			final Resolver resolver) throws IOException {
+		return new ObjectInputStream(stream) {
+			{
+				enableResolveObject(true);
+			}
+
+			@Override
+			protected Object resolveObject(Object obj) throws IOException {
+				if (obj instanceof DataSetToken) {
+					return resolver.resolve(((DataSetToken) obj).id);
+				} else if (obj instanceof MarkerToken) {
+					return resolve((MarkerToken) obj, resolver);
+				} else if (obj instanceof ItemToken) {
+					return resolve((ItemToken) obj, resolver);
+				}
+				return obj;
+			}
+		};
+	}
+
+	private static DSGeneMarker resolve(MarkerToken token, Resolver resolver)
+			throws IOException {
+		DSDataSet<?> parent = resolver.resolve(token.id);
+		if (!(parent instanceof DSMicroarraySet)) {
+			throw new InvalidObjectException("Dataset " + token.id
+					+ " has no markers");
+		}
+		DSItemList<DSGeneMarker> markers = ((DSMicroarraySet) parent)
+				.getMarkers();
+		if (token.index < markers.size()) {
+			DSGeneMarker marker = markers.get(token.index);
+			if (marker.getLabel() == null ? token.label == null : marker
+					.getLabel().equals(token.label)) {
+				return marker;
+			}
+		}
+		// the markers were reordered meanwhile
+		DSGeneMarker marker = markers.get(token.label);
+		if (marker == null) {
+			throw new InvalidObjectException("Marker " + token.label
+					+ " is gone");
+		}
+		return marker;
+	}
+
+	private static DSBioObject resolve(ItemToken token, Resolver resolver)
+			throws IOException {
+		DSDataSet<?> dataset = resolver.resolve(token.id);
+		if (token.index < dataset.size()) {
+			DSBioObject item = dataset.get(token.index);
+			if (item.getLabel() == null ? token.label == null : item
+					.getLabel().equals(token.label)) {
+				return item;
+			}
+		}
+		DSBioObject item = dataset.get(token.label);
+		if (item == null) {
+			throw new InvalidObjectException("Item " + token.label
+					+ " is gone");
+		}
+		return item;
+	}
+
+	static void restoreAnnotations(DSDataSet<?> value,
+			Object[] annotations) {
+		CSAnnotationContextManager manager = CSAnnotationContextManager
+				.getInstance();
+		manager.setContextsFromSerializedObject(value,
+				(CSAnnotationContextManager.SerializableContexts) annotations[0]);
+		if (value instanceof DSMicroarraySet) {
+			DSMicroarraySet set = (DSMicroarraySet) value;
+			manager.setContextsFromSerializedObject(set.getMarkers(),
+					(CSAnnotationContextManager.SerializableContexts) annotations[1]);
+			AnnotationParser.addFromSerializable((APSerializable) annotations[2]);
+			if (annotations[3] != null) {
+				AnnotationInformationManager.getInstance().add(set,
+						(AnnotationType) annotations[3]);
+			}
+		}
+	}
+
+	/* the node the tokens of an annotations record refer to */
+	private static final int SELF = 0;
+
+	private static class Token implements Serializable {
+		private static final long serialVersionUID = 3093117380951740523L;
+
+		final int id;
+
+		Token(int id) {
+			this.id = id;
+		}
+	}
+
+	private static final class DataSetToken extends Token {
+		private static final long serialVersionUID = -6311893713541853042L;
+
+		DataSetToken(int id) {
+			super(id);
+		}
+	}
+
+	/* the markers of a microarray set */
+	private static final class MarkerToken extends Token {
+		private static final long serialVersionUID = 2468217934467183025L;
+
+		final int index;
+		final String label;
+
+		MarkerToken(int id, int index, String label) {
+			super(id);
+			this.index = index;
+			this.label = label;
+		}
+	}
+
+	/* the items of a dataset, such as the arrays of a microarray set */
+	private static final class ItemToken extends Token {
+		private static final long serialVersionUID = -2384000563420948214L;
+
+		final int index;
+		final String label;
+
+		ItemToken(int id, int index, String label) {
+			super(id);
+			this.index = index;
+			this.label = label;
+		}
+	}
+
+}
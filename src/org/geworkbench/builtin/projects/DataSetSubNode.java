@@ -1,6 +1,10 @@
 package org.geworkbench.builtin.projects;
 
 import java.awt.Component;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamField;
 
 import org.geworkbench.bison.datastructure.biocollections.DSAncillaryDataSet;
 import org.geworkbench.bison.datastructure.biocollections.DSDataSet;
@@ -20,32 +24,97 @@ import org.geworkbench.bison.datastructure.bioobjects.microarray.CSTTestResultSe
 
 public class DataSetSubNode extends ProjectTreeNode {
 	private static final long serialVersionUID = 790047443850868022L;
-	
-	@SuppressWarnings("rawtypes")
-	final public DSAncillaryDataSet _aDataSet;
+
+	/* the result, written as the field it used to be */
+	private static final ObjectStreamField[] serialPersistentFields = { new ObjectStreamField(
+			"_aDataSet", DSAncillaryDataSet.class) };
+
+	private transient SpillableDataSet aDataSet;
 	
     @SuppressWarnings("rawtypes")
 	public DataSetSubNode(DSAncillaryDataSet ads) {
-        _aDataSet = ads;
-        super.setUserObject(ads);
+        aDataSet = new SpillableDataSet(DataSetResidency.getInstance(), ads);
+        // shows the label without keeping the result in memory
+        super.setUserObject(aDataSet);
         
         dirPropertyKey = "subnodeDir";
     }
+
+	/** The result, read back from disk if it was moved there. */
+	@SuppressWarnings("rawtypes")
+	public DSAncillaryDataSet getAncillaryDataSet() {
+		return (DSAncillaryDataSet) aDataSet.get();
+	}
+
+	/** The result if it is in memory, otherwise null. */
+	@SuppressWarnings("rawtypes")
+	public DSAncillaryDataSet peekAncillaryDataSet() {
+		return (DSAncillaryDataSet) aDataSet.peek();
+	}
+
+	@SuppressWarnings("rawtypes")
+	public Class<? extends DSDataSet> getDataSetType() {
+		return aDataSet.getType();
+	}
+
+	public String getDataSetLabel() {
+		return aDataSet.getLabel();
+	}
+
+	public String getDataSetDescription() {
+		return aDataSet.getDescription();
+	}
+
+	SpillableDataSet getSpillable() {
+		return aDataSet;
+	}
     
 	@SuppressWarnings("unchecked")
 	@Override
-	public DSDataSet<? extends DSBioObject> getDataset() { return _aDataSet; }
+	public DSDataSet<? extends DSBioObject> getDataset() { return getAncillaryDataSet(); }
 
 	@SuppressWarnings("unchecked")
 	@Override
 	protected void writeToFile(final boolean tabDelimited,
 			final Component dialogParent) {
 
-		if (_aDataSet instanceof CSTTestResultSet) { // special case for CSTTestResultSet
-			CSTTestResultSet<? extends DSGeneMarker> tTestResultSet = (CSTTestResultSet<? extends DSGeneMarker>) _aDataSet;
+		DSAncillaryDataSet<?> result = getAncillaryDataSet();
+		if (result instanceof CSTTestResultSet) { // special case for CSTTestResultSet
+			CSTTestResultSet<? extends DSGeneMarker> tTestResultSet = (CSTTestResultSet<? extends DSGeneMarker>) result;
 			tTestResultSet.saveDataToCSVFile();
 		} else {
 			super.writeToFile(tabDelimited, dialogParent);
 		}
 	}
+
+	/* a result on disk is written as a copy of its file */
+	private void writeObject(ObjectOutputStream out) throws IOException {
+		DSDataSet<?> result = aDataSet.peek();
+		ObjectOutputStream.PutField fields = out.putFields();
+		fields.put("_aDataSet", result);
+		out.writeFields();
+		if (result == null) {
+			out.writeObject(aDataSet);
+		}
+	}
+
+	private void readObject(ObjectInputStream in) throws IOException,
+			ClassNotFoundException {
+		DSDataSet<?> result = (DSDataSet<?>) in.readFields().get("_aDataSet",
+				null);
+		Object user = getUserObject();
+		if (result == null) {
+			aDataSet = (SpillableDataSet) in.readObject();
+		} else if (user instanceof SpillableDataSet
+				&& ((SpillableDataSet) user).peek() == result) {
+			aDataSet = (SpillableDataSet) user;
+		} else {
+			aDataSet = new SpillableDataSet(DataSetResidency.getInstance(),
+					result);
+		}
+		// written by older versions as the result itself
+		if (user instanceof DSDataSet || user instanceof SpillableDataSet) {
+			setUserObject(aDataSet);
+		}
+	}
 }
@@ -0,0 +1,223 @@
+package org.geworkbench.builtin.projects;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * An append-only file of records. A record is its length, the CRC-32 of its
+ * content, then the content, which is streamed so that a record can be
+ * larger than memory. Reading stops at the first record that is cut short or
+ * does not match its checksum, which is where a crash left the file.
+ *
+ * @version $Id$
+ */
+final class JournalFile {
+
+	/* length and checksum */
+	private static final int HEADER = 12;
+
+	/** Writes the content of a record. */
+	interface Content {
+		void writeTo(DataOutputStream out) throws IOException;
+	}
+
+	/**
+	 * Reads records in two steps, so that nothing is applied from a record
+	 * whose checksum turns out wrong.
+	 */
+	interface Handler {
+		Object read(DataInputStream in) throws IOException,
+				ClassNotFoundException;
+
+		void apply(Object record) throws IOException;
+	}
+
+	private final File file;
+	private final RandomAccessFile access;
+	private final FileChannel channel;
+	private volatile long end;
+
+	/**
+	 * @param truncate
+	 *            whether to start empty rather than append to what is there
+	 */
+	JournalFile(File file, boolean truncate) throws IOException {
+		this.file = file;
+		access = new RandomAccessFile(file, "rw");
+		channel = access.getChannel();
+		if (truncate) {
+			channel.truncate(0);
+		}
+		end = channel.size();
+	}
+
+	File getFile() {
+		return file;
+	}
+
+	/** The length of the file, which is the bytes written since it started. */
+	long length() {
+		return end;
+	}
+
+	/** Append a record; on failure the file is left as it was. */
+	void append(Content content) throws IOException {
+		long start = end;
+		try {
+			channel.position(start + HEADER);
+			CheckedOutputStream checked = new CheckedOutputStream(Channels
+					.newOutputStream(channel), new CRC32());
+			DataOutputStream out = new DataOutputStream(
+					new BufferedOutputStream(checked, 1 << 16));
+			content.writeTo(out);
+			out.flush();
+			long length = channel.position() - start - HEADER;
+			ByteBuffer header = ByteBuffer.allocate(HEADER);
+			header.putLong(length).putInt(
+					(int) checked.getChecksum().getValue()).flip();
+			while (header.hasRemaining()) {
+				channel.write(header, start + HEADER - header.remaining());
+			}
+			end = start + HEADER + length;
+		} catch (IOException e) {
+			channel.truncate(start);
+			throw e;
+		} catch (RuntimeException e) {
+			channel.truncate(start);
+			throw e;
+		}
+	}
+
+	/** Make what was appended so far survive a crash. */
+	void sync() throws IOException {
+		channel.force(false);
+	}
+
+	void close() throws IOException {
+		access.close();
+	}
+
+	/**
+	 * Read the records of a file up to the first damaged one.
+	 *
+	 * @return the number of records applied
+	 */
+	static int read(File file, Handler handler) throws IOException {
+		long remaining = file.length();
+		DataInputStream in = new DataInputStream(new BufferedInputStream(
+				new FileInputStream(file), 1 << 16));
+		int count = 0;
+		try {
+			while (remaining >= HEADER) {
+				long length = in.readLong();
+				int crc = in.readInt();
+				remaining -= HEADER;
+				if (length < 0 || length > remaining) {
+					break;
+				}
+				Bounded bounded = new Bounded(in, length);
+				CheckedInputStream checked = new CheckedInputStream(bounded,
+						new CRC32());
+				Object record;
+				try {
+					record = handler.read(new DataInputStream(checked));
+				} catch (IOException e) {
+					break;
+				} catch (ClassNotFoundException e) {
+					break;
+				} catch (RuntimeException e) {
+					// what a damaged record may raise while deserializing
+					break;
+				}
+				byte[] skip = new byte[8192];
+				while (checked.read(skip) >= 0) {
+				}
+				remaining -= length;
+				if ((int) checked.getChecksum().getValue() != crc) {
+					break;
+				}
+				handler.apply(record);
+				count++;
+			}
+		} catch (EOFException e) {
+			// cut short
+		} finally {
+			in.close();
+		}
+		return count;
+	}
+
+	/* the content of one record */
+	private static class Bounded extends FilterInputStream {
+		private long left;
+
+		Bounded(InputStream in, long length) {
+			super(in);
+			left = length;
+		}
+
+		@Override
+		public int read() throws IOException {
+			if (left <= 0) {
+				return -1;
+			}
+			int b = in.read();
+			if (b < 0) {
+				throw new EOFException();
+			}
+			left--;
+			return b;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			if (left <= 0) {
+				return -1;
+			}
+			int n = in.read(b, off, (int) Math.min(len, left));
+			if (n < 0) {
+				throw new EOFException();
+			}
+			left -= n;
+			return n;
+		}
+
+		@Override
+		public long skip(long n) throws IOException {
+			long skipped = in.skip(Math.min(n, left));
+			left -= skipped;
+			return skipped;
+		}
+
+		@Override
+		public int available() throws IOException {
+			return (int) Math.min(in.available(), left);
+		}
+
+		@Override
+		public void close() {
+			// the file stays open for the next record
+		}
+
+		@Override
+		public boolean markSupported() {
+			return false;
+		}
+	}
+
+}
@@ -53,6 +53,7 @@ import org.geworkbench.bison.datastructure.biocollections.DSAncillaryDataSet;
 import org.geworkbench.bison.datastructure.biocollections.DSDataSet;
 import org.geworkbench.bison.datastructure.biocollections.microarrays.CSMicroarraySet;
 import org.geworkbench.bison.datastructure.biocollections.microarrays.DSMicroarraySet;
+import org.geworkbench.bison.datastructure.biocollections.microarrays.MicroarraySetVersions;
 import org.geworkbench.bison.datastructure.biocollections.views.CSMicroarraySetView;
 import org.geworkbench.bison.datastructure.bioobjects.DSBioObject;
 import org.geworkbench.bison.datastructure.bioobjects.markers.DSGeneMarker;
@@ -62,10 +63,13 @@ import org.geworkbench.bison.datastructure.bioobjects.microarray.CSTTestResultSe
 import org.geworkbench.bison.datastructure.bioobjects.microarray.DSMicroarray;
 import org.geworkbench.bison.datastructure.bioobjects.microarray.DSSignificanceResultSet;
 import org.geworkbench.bison.datastructure.complex.panels.DSPanel;
+import org.geworkbench.bison.model.pipeline.PreprocessingPipeline;
 import org.geworkbench.bison.util.RandomNumberGenerator;
 import org.geworkbench.bison.util.colorcontext.ColorContext;
 import org.geworkbench.builtin.projects.WorkspaceHandler.OpenTask;
 import org.geworkbench.builtin.projects.history.HistoryPanel;
+import org.geworkbench.builtin.projects.history.ProvenanceLog;
+import org.geworkbench.builtin.projects.history.ProvenanceStep;
 import org.geworkbench.engine.config.GUIFramework;
 import org.geworkbench.engine.config.MenuListener;
 import org.geworkbench.engine.config.UILauncher;
@@ -138,6 +142,12 @@ public class ProjectPanel implements VisualPlugin, MenuListener {
 
 	final private JMenuItem jRenameMenuItem = new JMenuItem("Rename");
 
+	final private JMenuItem jUndoItem = new JMenuItem("Undo Change");
+
+	final private JMenuItem jRedoItem = new JMenuItem("Redo Change");
+
+	final private JMenuItem jSaveVersionItem = new JMenuItem("Save Version");
+
 	/*
 	 * enforce ProjectPanel to be singleton: 'regular' method of making
 	 * constructor private is not applicable because of the cglib
@@ -172,9 +182,14 @@ public class ProjectPanel implements VisualPlugin, MenuListener {
 
 		init();
 
+		// a crashed session comes back instead of the default workspace
+		boolean recovering = new WorkspaceJournal(new File(FilePathnameUtils
+				.getUserSettingDirectoryPath(), "journal")).start(this,
+				projectTreeModel, projectTree);
+
 		// Checks if a default workspace exists and loads it
 		File defaultWS = new File("./default.wsp");
-		if (defaultWS.exists()) {
+		if (!recovering && defaultWS.exists()) {
 			WorkspaceHandler ws = new WorkspaceHandler();
 			ProgressDialog pdnonmodal = ProgressDialog
 					.getInstance(false);
@@ -409,6 +424,7 @@ public class ProjectPanel implements VisualPlugin, MenuListener {
 	public void setCommentText(String newComments) {
 		ProjectTreeNode selectedNode = selection.getSelectedNode();
 		selectedNode.setDescription(newComments);
+		projectTreeModel.nodeChanged(selectedNode);
 	}
 
 	/**
@@ -546,7 +562,8 @@ public class ProjectPanel implements VisualPlugin, MenuListener {
 
 		DSDataSet<? extends DSBioObject> dNodeFile = null;
 		if ((pnode instanceof DataSetNode)) {
-			dNodeFile = ((DataSetNode) pnode).getDataset();
+			// a set still referred to is in memory
+			dNodeFile = ((DataSetNode) pnode).peekDataset();
 
 		}
 		if ((dNodeFile != null && dNodeFile.hashCode() == parentData.hashCode())) {
@@ -608,7 +625,8 @@ public class ProjectPanel implements VisualPlugin, MenuListener {
 			while (children.hasMoreElements()) {
 				Object obj = children.nextElement();
 				if (obj instanceof DataSetSubNode) {
-					DSAncillaryDataSet<? extends DSBioObject> ads = ((DataSetSubNode) obj)._aDataSet;
+					// one on disk cannot be this instance
+					DSAncillaryDataSet<? extends DSBioObject> ads = ((DataSetSubNode) obj).peekAncillaryDataSet();
 					if (_ancDataSet.equals(ads)) {
 						return;
 					}
@@ -626,8 +644,8 @@ public class ProjectPanel implements VisualPlugin, MenuListener {
 				while (children.hasMoreElements()) {
 					Object obj = children.nextElement();
 					if (obj instanceof DataSetSubNode) {
-						existingLabel = ((DataSetSubNode) obj)._aDataSet
-								.getLabel();
+						existingLabel = ((DataSetSubNode) obj)
+								.getDataSetLabel();
 						if (newLabel.equals(existingLabel)) {
 							foundOne = true;
 							break;
@@ -686,6 +704,17 @@ public class ProjectPanel implements VisualPlugin, MenuListener {
 		return false;
 	}
 
+	private void refreshVersionItems(DSDataSet<?> ds) {
+		boolean microarrays = ds instanceof DSMicroarraySet;
+		jUndoItem.setVisible(microarrays);
+		jRedoItem.setVisible(microarrays);
+		jSaveVersionItem.setVisible(microarrays);
+		MicroarraySetVersions versions = microarrays ? MicroarraySetVersions
+				.getExisting((DSMicroarraySet) ds) : null;
+		jUndoItem.setEnabled(versions != null && versions.canUndo());
+		jRedoItem.setEnabled(versions != null && versions.canRedo());
+	}
+
 	/**
 	 * Mouse release event. Used to popup menus
 	 * 
@@ -741,16 +770,19 @@ public class ProjectPanel implements VisualPlugin, MenuListener {
 			if ((mNode == null) || (mNode == root)) {
 				jRootMenu.show(projectTree, e.getX(), e.getY());
 			} else if (mNode instanceof DataSetNode) {
-				refreshDataSetMenu(((DataSetNode) mNode).getDataset()
-						.getClass());
+				refreshDataSetMenu(((DataSetNode) mNode).getDataSetType());
+				refreshVersionItems(((DataSetNode) mNode).peekDataset());
 				dataSetMenu.show(projectTree, e.getX(), e.getY());
 			} else if (mNode instanceof DataSetSubNode) {
 				refreshDataSetMenu(null);
-				DSDataSet<? extends DSBioObject> ds = ((DataSetSubNode) mNode)._aDataSet;
+				refreshVersionItems(null);
+				@SuppressWarnings("rawtypes")
+				Class<? extends DSDataSet> type = ((DataSetSubNode) mNode)
+						.getDataSetType();
 				boolean supportWriteToFile = DataTypeUtils
-						.supportWriteToFile(ds.getClass());
+						.supportWriteToFile(type);
 				jSaveMenuItem.setEnabled(supportWriteToFile);
-				if (ds instanceof CSTTestResultSet)
+				if (CSTTestResultSet.class.isAssignableFrom(type))
 					jSaveMenuItem.setEnabled(true);
 				dataSetMenu.show(projectTree, e.getX(), e.getY());
 			} else if (mNode instanceof PendingTreeNode) {
@@ -905,7 +937,7 @@ public class ProjectPanel implements VisualPlugin, MenuListener {
 		for(int i = 0; i < parent.getChildCount(); i++){
 			TreeNode subnode = parent.getChildAt(i);
 			if (subnode instanceof DataSetSubNode){
-				subnodeNames.add(((DataSetSubNode)subnode)._aDataSet.getLabel());
+				subnodeNames.add(((DataSetSubNode)subnode).getDataSetLabel());
 			}
 		}
 		return Util.getUniqueName(originalName, subnodeNames);
@@ -1053,13 +1085,12 @@ public class ProjectPanel implements VisualPlugin, MenuListener {
 			DSAncillaryDataSet<? extends DSBioObject> aDataSet) {
 
 		if (selection.getSelectedNode() instanceof DataSetSubNode) {
-			if (((DataSetSubNode) (selection.getSelectedNode()))._aDataSet != aDataSet) {
+			if (((DataSetSubNode) (selection.getSelectedNode())).peekAncillaryDataSet() != aDataSet) {
 				log.warn("the added node is not the selected node.");
 				return;
 			}
 
-			publishNodeRemovedEvent(new ProjectNodeRemovedEvent(
-					((DataSetSubNode) (selection.getSelectedNode()))._aDataSet));
+			publishNodeRemovedEvent(new ProjectNodeRemovedEvent(aDataSet));
 
 			ProjectTreeNode node = selection.getSelectedNode();
 
@@ -1123,6 +1154,10 @@ public class ProjectPanel implements VisualPlugin, MenuListener {
 		if (node instanceof DataSetNode) {
 			AnnotationParser.cleanUpAnnotatioAfterUnload(((DataSetNode) node)
 					.getDataset());
+			DSDataSet<?> removed = ((DataSetNode) node).peekDataset();
+			if (removed instanceof DSMicroarraySet) {
+				MicroarraySetVersions.remove((DSMicroarraySet) removed);
+			}
 
 			if (node.getChildCount() > 0) {
 				for (Enumeration<?> en = node.children(); en.hasMoreElements();) {
@@ -1130,7 +1165,7 @@ public class ProjectPanel implements VisualPlugin, MenuListener {
 							.nextElement();
 					if (childNode instanceof DataSetSubNode)
 						publishNodeRemovedEvent(new ProjectNodeRemovedEvent(
-								((DataSetSubNode) (childNode))._aDataSet));
+								((DataSetSubNode) (childNode)).getAncillaryDataSet()));
 					if (childNode instanceof PendingTreeNode) {
 
 						publishPendingNodeCancelledEvent(new PendingNodeCancelledEvent(
@@ -1149,7 +1184,7 @@ public class ProjectPanel implements VisualPlugin, MenuListener {
 
 		if (node instanceof DataSetSubNode)
 			publishNodeRemovedEvent(new ProjectNodeRemovedEvent(
-					((DataSetSubNode) (node))._aDataSet)); 
+					((DataSetSubNode) (node)).getAncillaryDataSet())); 
 
 		projectTreeModel.removeNodeFromParent(node);
 
@@ -1199,7 +1234,7 @@ public class ProjectPanel implements VisualPlugin, MenuListener {
 	 * @param node
 	 *            The project tree node to show up as selected.
 	 */
-	private void setNodeSelection(ProjectTreeNode node) {
+	void setNodeSelection(ProjectTreeNode node) {
 
 		if (node == null) {
 			log.error("selected node is null");
@@ -1291,7 +1326,7 @@ public class ProjectPanel implements VisualPlugin, MenuListener {
 		// Ignore phenotype selection for significance resultset
 		ProjectTreeNode selectedNode = selection.getSelectedNode();
 		if (selectedNode != null && selectedNode instanceof DataSetSubNode) {
-			DSAncillaryDataSet<?> selectedSubset = ((DataSetSubNode) selectedNode)._aDataSet;
+			DSAncillaryDataSet<?> selectedSubset = ((DataSetSubNode) selectedNode).getAncillaryDataSet();
 			if (selectedSubset != null
 					&& selectedSubset instanceof DSSignificanceResultSet) {
 				return;
@@ -1321,27 +1356,29 @@ public class ProjectPanel implements VisualPlugin, MenuListener {
 
 	/**
 	 * process the results of applying a normalizer to a microarray set.
+	 * A normalizer that leaves its source as it is, by running a
+	 * {@link PreprocessingPipeline}, returns a new set, which is added to the
+	 * project; otherwise the source was normalized in place.
 	 * 
 	 */
 	public void processNormalization(DSMicroarraySet sourceMA,
 			DSMicroarraySet resultMA, String information) {
 
+		if (resultMA != null && resultMA != sourceMA) {
+			addDerivedSet(resultMA);
+			return;
+		}
 		updateColorContext(resultMA);
 		// Set up the "history" information for the new dataset.
-		Object[] prevHistory = sourceMA.getValuesForName(HistoryPanel.HISTORY);
-
 		Object[] historyDetail = sourceMA
 				.getValuesForName(HistoryPanel.HISTORYDETAIL);
 		String detail = (historyDetail == null ? "" : (String) historyDetail[0]);
 		sourceMA.clearName(HistoryPanel.HISTORYDETAIL);
 
-		if (prevHistory != null) {
-			sourceMA.clearName(HistoryPanel.HISTORY);
-		}
-		sourceMA.addNameValuePair(HistoryPanel.HISTORY,
-				(prevHistory == null ? "" : (String) prevHistory[0])
-						+ "Normalized with " + information + "\n" + detail
-						+ "\n");
+		HistoryPanel.addStep(sourceMA, new ProvenanceStep("Normalized with",
+				null, information, null, detail, ProvenanceLog
+						.fingerprint(sourceMA)));
+		saveVersion(sourceMA, "Normalized");
 
 		// Notify interested components that the selected dataset has changed
 		// The event is thrown only if the normalized dataset is the one
@@ -1369,15 +1406,19 @@ public class ProjectPanel implements VisualPlugin, MenuListener {
 		if (sourceMA == null) {
 			return;
 		}
+		// filters run through a pipeline and leave their input as it is
+		DSMicroarraySet resultMA = fe.getFilteredMASet();
+		if (resultMA != null && resultMA != sourceMA) {
+			addDerivedSet(resultMA);
+			return;
+		}
 
 		// Set up the "history" information for the new dataset.
-		Object[] prevHistory = sourceMA.getValuesForName(HistoryPanel.HISTORY);
-		if (prevHistory != null) {
-			sourceMA.clearName(HistoryPanel.HISTORY);
-		}
-		sourceMA.addNameValuePair(HistoryPanel.HISTORY,
-				(prevHistory == null ? "" : (String) prevHistory[0])
-						+ "Filtered with " + fe.getInformation() + "\n");
+		HistoryPanel.addStep(sourceMA, new ProvenanceStep("Filtered with",
+				source == null ? null : source.getClass().getName(), fe
+						.getInformation(), null, null, ProvenanceLog
+						.fingerprint(sourceMA)));
+		saveVersion(sourceMA, "Filtered");
 		// Notify interested components that the selected dataset has changed
 		// The event is thrown only if the dataset filtered is the one
 		// currently selected in the project panel.
@@ -1391,6 +1432,69 @@ public class ProjectPanel implements VisualPlugin, MenuListener {
 		}
 	}
 
+	/**
+	 * Add the output of a preprocessing pipeline as a new data set. Its
+	 * history already holds that of its source and the steps of the
+	 * pipeline.
+	 */
+	public void processPipeline(PreprocessingPipeline pipeline, String label) {
+		addDerivedSet(pipeline.createMicroarraySet(label));
+	}
+
+	private void addDerivedSet(DSMicroarraySet resultMA) {
+		updateColorContext(resultMA);
+		addDataSetNode(resultMA);
+	}
+
+	/* only sets that already have versions, so undo can go back to the last */
+	private static void saveVersion(DSMicroarraySet set, String name) {
+		MicroarraySetVersions versions = MicroarraySetVersions
+				.getExisting(set);
+		if (versions != null) {
+			versions.save(name);
+		}
+	}
+
+	/**
+	 * Go back to or forward from the version of the selected microarray set,
+	 * or save it as a new one.
+	 */
+	private void changeVersion(ActionEvent e) {
+		DSDataSet<? extends DSBioObject> ds = selection.getDataSet();
+		if (!(ds instanceof DSMicroarraySet)) {
+			return;
+		}
+		DSMicroarraySet set = (DSMicroarraySet) ds;
+		MicroarraySetVersions versions = MicroarraySetVersions
+				.getInstance(set);
+		MicroarraySetVersions.Version version;
+		String action;
+		if (e.getSource() == jUndoItem) {
+			version = versions.undo();
+			action = "Undone to version ";
+		} else if (e.getSource() == jRedoItem) {
+			version = versions.redo();
+			action = "Redone to version ";
+		} else {
+			String name = JOptionPane.showInputDialog(null,
+					"Name of the version:", "Save Version",
+					JOptionPane.PLAIN_MESSAGE);
+			if (name == null) {
+				return;
+			}
+			versions.save(name);
+			log.info("Versions of " + set.getLabel() + " use "
+					+ (versions.getMemoryUsage() >> 10) + " KB");
+			return;
+		}
+		if (version == null) {
+			return;
+		}
+		HistoryPanel.addStep(set, ProvenanceStep.text(action
+				+ version.getName() + "\n", ProvenanceLog.fingerprint(set)));
+		publishProjectEvent(new ProjectEvent(set, selection.getSelectedNode()));
+	}
+
 	/**
 	 * Clears the current workspace from the project panel.
 	 */
@@ -1490,6 +1594,9 @@ public class ProjectPanel implements VisualPlugin, MenuListener {
 
 		ToolTipManager.sharedInstance().registerComponent(projectTree);
 		projectTree.setCellRenderer(new TreeNodeRenderer());
+		// datasets of the nodes in the tree may be moved to disk to save memory
+		projectTreeModel.addTreeModelListener(DataSetResidency.getInstance()
+				.createTreeListener());
 		projectTree.getSelectionModel().setSelectionMode(
 				TreeSelectionModel.DISCONTIGUOUS_TREE_SELECTION);
 
@@ -1517,6 +1624,9 @@ public class ProjectPanel implements VisualPlugin, MenuListener {
 		dataSetMenu.add(jRemoveDatasetItem);
 		dataSetMenu.add(jEditItem);
 		dataSetMenu.add(jViewAnnotations);
+		dataSetMenu.add(jUndoItem);
+		dataSetMenu.add(jRedoItem);
+		dataSetMenu.add(jSaveVersionItem);
 
 		// part 2: the listeners
 		projectTree.addMouseListener(new java.awt.event.MouseAdapter() {
@@ -1585,6 +1695,16 @@ public class ProjectPanel implements VisualPlugin, MenuListener {
 		};
 		listeners.put("File.Remove", removeNodeListener);
 		jRemoveDatasetItem.addActionListener(removeNodeListener);
+
+		ActionListener versionListener = new ActionListener() {
+			@Override
+			public void actionPerformed(ActionEvent e) {
+				changeVersion(e);
+			}
+		};
+		jUndoItem.addActionListener(versionListener);
+		jRedoItem.addActionListener(versionListener);
+		jSaveVersionItem.addActionListener(versionListener);
 		// pending menu
 		JMenuItem jRemovePendingItem = new JMenuItem("Remove");
 		jRemovePendingItem.addActionListener(removeNodeListener);
@@ -51,7 +51,7 @@ public class ProjectSelection {
     @SuppressWarnings("rawtypes")
 	public DSAncillaryDataSet getDataSubSet() {
         if (selectedDataSetSubNode != null) {
-            return selectedDataSetSubNode._aDataSet;
+            return selectedDataSetSubNode.getAncillaryDataSet();
         } else {
             return null;
         }
@@ -98,9 +98,9 @@ public class ProjectSelection {
                 selectedDataSetNode = getParentDataSet(selectedDataSetSubNode);
                 if ( selectedDataSetNode != null)
                    AnnotationParser.setCurrentDataSet(selectedDataSetNode.getDataset());//Fix bug 1471
-                GeawConfigObject.getGuiWindow().setVisualizationType(selectedDataSetSubNode._aDataSet);
+                GeawConfigObject.getGuiWindow().setVisualizationType(selectedDataSetSubNode.getAncillaryDataSet());
 				ProjectPanel.getInstance().publishProjectEvent(
-						new ProjectEvent(selectedDataSetSubNode._aDataSet,
+						new ProjectEvent(selectedDataSetSubNode.getAncillaryDataSet(),
 								selectedDataSetSubNode));
             } else if (node instanceof PendingTreeNode) {
                 selectedDataSetNode = getParentDataSet(node);
@@ -4,6 +4,7 @@ import java.awt.Component;
 import java.io.File;
 import java.io.IOException;
 import java.io.Serializable;
+import java.util.concurrent.ExecutionException;
 
 import javax.swing.JFileChooser;
 import javax.swing.JOptionPane;
@@ -11,9 +12,13 @@ import javax.swing.tree.DefaultMutableTreeNode;
 
 import org.geworkbench.bison.datastructure.biocollections.DSDataSet;
 import org.geworkbench.bison.datastructure.biocollections.microarrays.DSMicroarraySet;
+import org.geworkbench.bison.datastructure.biocollections.microarrays.MicroarraySetExporter;
 import org.geworkbench.bison.datastructure.bioobjects.DSBioObject;
 import org.geworkbench.builtin.projects.SaveFileFilterFactory.CustomFileFilter;
 import org.geworkbench.engine.properties.PropertiesManager;
+import org.geworkbench.util.ProgressDialog;
+import org.geworkbench.util.ProgressItem;
+import org.geworkbench.util.ProgressTask;
 
 /**
  * <p>
@@ -130,12 +135,15 @@ public class ProjectTreeNode extends DefaultMutableTreeNode implements
 				}
 			}
 			
+			if (ds instanceof DSMicroarraySet) {
+				ProgressDialog.getInstance(false).executeTask(
+						new ExportTask((DSMicroarraySet) ds, new File(
+								newFileName), tabDelimited));
+				return;
+			}
+
 			try {
-				if (tabDelimited
-						&& ds instanceof DSMicroarraySet)
-					((DSMicroarraySet) ds).writeToTabDelimFile(newFileName);
-				else
-					ds.writeToFile(newFileName);
+				ds.writeToFile(newFileName);
 			} catch (RuntimeException e) {
 				JOptionPane.showMessageDialog(null, e.getMessage() + " "
 						+ ds.getClass().getName(), "Save Error",
@@ -143,4 +151,60 @@ public class ProjectTreeNode extends DefaultMutableTreeNode implements
 			}
 		}
 	}
-}
\ No newline at end of file
+
+	/**
+	 * Writes a microarray set off the event dispatch thread so that large
+	 * exports do not freeze the UI; the progress item can cancel it.
+	 */
+	private static class ExportTask extends ProgressTask<Void, Void> {
+		private final DSMicroarraySet set;
+		private final File file;
+		private final boolean tabDelimited;
+
+		ExportTask(DSMicroarraySet set, File file, boolean tabDelimited) {
+			super(ProgressItem.BOUNDED_TYPE, "Saving " + file.getName());
+			this.set = set;
+			this.file = file;
+			this.tabDelimited = tabDelimited;
+		}
+
+		@Override
+		protected Void doInBackground() throws IOException {
+			MicroarraySetExporter exporter = new MicroarraySetExporter(set);
+			exporter.setProgress(new MicroarraySetExporter.Progress() {
+				public void rowsWritten(int done, int total) {
+					setProgress(total == 0 ? 100 : (int) (100L * done / total));
+				}
+
+				public boolean isCancelled() {
+					return ExportTask.this.isCancelled();
+				}
+			});
+			if (tabDelimited) {
+				exporter.writeTabDelimited(file);
+			} else {
+				exporter.writeExpressionFile(file);
+			}
+			return null;
+		}
+
+		@Override
+		protected void done() {
+			ProgressDialog.getInstance(false).removeTask(this);
+			if (isCancelled()) {
+				file.delete();
+				return;
+			}
+			try {
+				get();
+			} catch (ExecutionException e) {
+				file.delete();
+				JOptionPane.showMessageDialog(null, "File " + file.getName()
+						+ " is not saved due to " + e.getCause().getMessage(),
+						"File Saving Failed", JOptionPane.ERROR_MESSAGE);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+}
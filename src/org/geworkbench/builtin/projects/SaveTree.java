@@ -1,5 +1,7 @@
 package org.geworkbench.builtin.projects;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
 
 import org.geworkbench.bison.datastructure.biocollections.DSDataSet;
@@ -39,20 +41,15 @@ public class SaveTree implements Serializable {
 		addChildren(panel.getRoot(), rootNode);
 	}
 
+	/* the dataset of a node if it is in memory; one on disk is not read back */
 	static DSDataSet<?> getDSDataSet(ProjectTreeNode treeNode) {
 		if (treeNode instanceof DataSetNode) {
 			DataSetNode childNode = (DataSetNode) treeNode;
-			return childNode.getDataset();
-		} else if (treeNode instanceof ImageNode) {
-			ImageNode childNode = (ImageNode) treeNode;
-			DSDataSet<?> dataSet = childNode._aDataSet;
-			if (dataSet.getID() == null)
-				dataSet.setID(RandomNumberGenerator.getID());
-			return dataSet;
+			return childNode.peekDataset();
 		} else if (treeNode instanceof DataSetSubNode) {
 			DataSetSubNode childNode = (DataSetSubNode) treeNode;
-			DSDataSet<?> dataSet = childNode._aDataSet;
-			if (dataSet.getID() == null)
+			DSDataSet<?> dataSet = childNode.peekAncillaryDataSet();
+			if (dataSet != null && dataSet.getID() == null)
 				dataSet.setID(RandomNumberGenerator.getID());
 			return dataSet;
 		} else if (treeNode instanceof PendingTreeNode) {
@@ -61,6 +58,15 @@ public class SaveTree implements Serializable {
 		}
 		return null; // unexpected;
 	}
+
+	private static SpillableDataSet getSpillable(ProjectTreeNode treeNode) {
+		if (treeNode instanceof DataSetNode) {
+			return ((DataSetNode) treeNode).getSpillable();
+		} else if (treeNode instanceof DataSetSubNode) {
+			return ((DataSetSubNode) treeNode).getSpillable();
+		}
+		return null;
+	}
 	
 	// Recursively build tree
 	private void addChildren(ProjectTreeNode node, DataSetSaveNode saveNode) {
@@ -70,16 +76,36 @@ public class SaveTree implements Serializable {
 			ProjectTreeNode treeNode = (ProjectTreeNode) node.getChildAt(i);
 			DSDataSet<?> dataSet = getDSDataSet(treeNode);
 
-			DataSetSaveNode childSave = new DataSetSaveNode(dataSet);
-			childSave.setSelectionSelected(skin
-					.getSelectionLastSelected(dataSet));
-			childSave.setVisualSelected(skin.getVisualLastSelected(dataSet));
+			DataSetSaveNode childSave;
+			if (dataSet != null) {
+				childSave = new DataSetSaveNode(dataSet);
+				childSave.setSelectionSelected(skin
+						.getSelectionLastSelected(dataSet));
+				childSave.setVisualSelected(skin.getVisualLastSelected(dataSet));
+			} else {
+				// on disk: saved as a copy of its file
+				childSave = new DataSetSaveNode(getSpillable(treeNode));
+			}
 			childSave.setDescription(treeNode.getDescription());
 			saveNode.addChild(childSave);
 			addChildren(treeNode, childSave);
 		}
 	}
 
+	/* datasets saved as copies of their files are read back here, off the event dispatch thread */
+	private void readObject(ObjectInputStream in) throws IOException,
+			ClassNotFoundException {
+		in.defaultReadObject();
+		readBack(rootNode);
+	}
+
+	private static void readBack(DataSetSaveNode saveNode) {
+		for (DataSetSaveNode child : saveNode.getChildren()) {
+			child.readBack();
+			readBack(child);
+		}
+	}
+
 	public DSDataSet<? extends DSBioObject> getSelected() {
 		return selected;
 	}
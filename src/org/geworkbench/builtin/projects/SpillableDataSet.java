@@ -0,0 +1,166 @@
+package org.geworkbench.builtin.projects;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+
+import org.geworkbench.bison.datastructure.biocollections.DSDataSet;
+
+/**
+ * The dataset of a project node, which {@link DataSetResidency} may move to
+ * disk while the node is not used and bring back when it is. The type, label
+ * and description stay available without bringing the dataset back, for
+ * drawing the tree; {@link #toString()} is the label, so it can be the user
+ * object of the node.
+ *
+ * Serialized, it is the dataset if that is in memory, or else a copy of the
+ * file it was moved to, which is read back into a new file and stays there
+ * until it is used.
+ *
+ * All fields are guarded by the residency.
+ *
+ * @version $Id$
+ */
+final class SpillableDataSet implements Serializable {
+
+	private static final long serialVersionUID = -3540284921537924862L;
+
+	transient DataSetResidency residency;
+	transient int id;
+
+	/* null while on disk */
+	transient DSDataSet<?> resident;
+	/* the dataset last moved to disk, for as long as something else keeps it */
+	transient WeakReference<DSDataSet<?>> released;
+	transient File spillFile;
+	/*
+	 * the datasets the one on disk refers to, which must stay readable, by
+	 * the token it has for each
+	 */
+	transient Map<Integer, SpillableDataSet> references;
+	/* the dataset being written out while in memory; stopped when it is used */
+	transient List<DataSetResidency.Capture> captures = new ArrayList<DataSetResidency.Capture>();
+
+	transient long cost;
+	transient long lastUse;
+	transient boolean tracked;
+	transient boolean spilling;
+	/* while the dataset is read back, by the thread that does it */
+	transient CountDownLatch loading;
+	transient Thread loader;
+
+	@SuppressWarnings("rawtypes")
+	private transient Class<? extends DSDataSet> type;
+	private transient String label;
+	private transient String description;
+
+	SpillableDataSet(DataSetResidency residency, DSDataSet<?> dataset) {
+		this.residency = residency;
+		this.id = residency.nextId();
+		this.resident = dataset;
+		remember(dataset);
+	}
+
+	/** The dataset, read back from disk if it was moved there. */
+	DSDataSet<?> get() {
+		return residency.use(this);
+	}
+
+	/** The dataset if it is in memory, otherwise null. */
+	DSDataSet<?> peek() {
+		synchronized (residency) {
+			if (resident != null) {
+				return resident;
+			}
+			return released == null ? null : released.get();
+		}
+	}
+
+	@SuppressWarnings("rawtypes")
+	Class<? extends DSDataSet> getType() {
+		synchronized (residency) {
+			return type;
+		}
+	}
+
+	String getLabel() {
+		synchronized (residency) {
+			return resident == null ? label : resident.getLabel();
+		}
+	}
+
+	String getDescription() {
+		synchronized (residency) {
+			return resident == null ? description : resident.getDescription();
+		}
+	}
+
+	@Override
+	public String toString() {
+		return getLabel();
+	}
+
+	/* called with the residency held */
+	void remember(DSDataSet<?> dataset) {
+		type = dataset.getClass();
+		label = dataset.getLabel();
+		description = dataset.getDescription();
+	}
+
+	private void writeObject(ObjectOutputStream out) throws IOException {
+		out.defaultWriteObject();
+		while (true) {
+			DSDataSet<?> value = peek();
+			if (value != null) {
+				out.writeObject(value);
+				return;
+			}
+			DataSetResidency.Capture copy = residency.copy(this);
+			if (copy == null) {
+				// read back meanwhile
+				continue;
+			}
+			try {
+				out.writeObject(null);
+				out.writeObject(getType());
+				out.writeObject(getLabel());
+				out.writeObject(getDescription());
+				out.writeObject(copy.getTokens());
+				out.writeLong(copy.length());
+				copy.writeTo(out);
+			} finally {
+				copy.close();
+			}
+			return;
+		}
+	}
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private void readObject(ObjectInputStream in) throws IOException,
+			ClassNotFoundException {
+		in.defaultReadObject();
+		residency = DataSetResidency.getInstance();
+		id = residency.nextId();
+		captures = new ArrayList<DataSetResidency.Capture>();
+		DSDataSet<?> value = (DSDataSet<?>) in.readObject();
+		if (value != null) {
+			resident = value;
+			remember(value);
+			return;
+		}
+		type = (Class<? extends DSDataSet>) in.readObject();
+		label = (String) in.readObject();
+		description = (String) in.readObject();
+		Map<Integer, SpillableDataSet> tokens = (Map<Integer, SpillableDataSet>) in
+				.readObject();
+		residency.receive(this, in, in.readLong(), tokens);
+	}
+
+}
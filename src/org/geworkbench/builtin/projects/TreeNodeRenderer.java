@@ -6,9 +6,6 @@ import javax.swing.ImageIcon;
 import javax.swing.JTree;
 import javax.swing.tree.DefaultTreeCellRenderer;
 
-import org.geworkbench.bison.datastructure.biocollections.DSAncillaryDataSet;
-import org.geworkbench.bison.datastructure.biocollections.DSDataSet;
-import org.geworkbench.bison.datastructure.bioobjects.DSBioObject;
 import org.geworkbench.bison.datastructure.properties.DSNamed;
 import org.geworkbench.engine.management.TypeMap;
 
@@ -37,8 +34,7 @@ public class TreeNodeRenderer extends DefaultTreeCellRenderer {
      * @param hasFocus if the node has focus
      * @return the <code>Component</code> to be used for rendering
      */
-    @SuppressWarnings("unchecked")
-	@Override
+    @Override
     public Component getTreeCellRendererComponent(JTree tree, Object value, boolean sel, boolean expanded, boolean leaf, int row, boolean hasFocus) {
         super.getTreeCellRendererComponent(tree, value, sel, expanded, leaf, row, hasFocus);
 
@@ -51,23 +47,23 @@ public class TreeNodeRenderer extends DefaultTreeCellRenderer {
         	setToolTipText(null);
         } else {
             if (value.getClass() == DataSetNode.class) {
-                DSDataSet<? extends DSBioObject> df = ((DataSetNode) value).getDataset();
-                ImageIcon icon = getIconForType(df.getClass());
+                DataSetNode node = (DataSetNode) value;
+                ImageIcon icon = getIconForType(node.getDataSetType());
                 if (icon != null) {
                     setIcon(icon);
                 } else {
                     setIcon(Icons.MICROARRAYS_ICON);
                 }
-                description = df.getDescription();
+                description = node.getDataSetDescription();
             } else if (value.getClass() == DataSetSubNode.class) {
-                DSAncillaryDataSet<? extends DSBioObject> adf = ((DataSetSubNode) value)._aDataSet;               
-                ImageIcon icon = getIconForType(adf.getClass());
+                DataSetSubNode node = (DataSetSubNode) value;
+                ImageIcon icon = getIconForType(node.getDataSetType());
                 if (icon != null) {
                     setIcon(icon);
                 } else {
                     setIcon(Icons.DATASUBSET_ICON);
                 }
-                description = adf.getDescription();
+                description = node.getDataSetDescription();
             } else if (value.getClass() == ImageNode.class) {
                 setIcon(Icons.IMAGE_ICON);
             }
@@ -5,9 +5,11 @@ import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutput;
 import java.io.ObjectOutputStream;
+import java.io.OutputStream;
 import java.util.concurrent.ExecutionException;
 
 import javax.swing.JFileChooser;
@@ -18,6 +20,7 @@ import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.geworkbench.bison.datastructure.bioobjects.markers.annotationparser.APSerializable;
 import org.geworkbench.bison.datastructure.bioobjects.markers.annotationparser.AnnotationParser;
+import org.geworkbench.bison.datastructure.bioobjects.structure.StructureCache;
 import org.geworkbench.engine.config.UILauncher;
 import org.geworkbench.engine.config.rules.GeawConfigObject;
 import org.geworkbench.engine.properties.PropertiesManager;
@@ -272,8 +275,9 @@ public class WorkspaceHandler {
 			ObjectOutput s = null;
 			FileOutputStream f = null;
 			try {
+				StructureCache cache = StructureCache.forWorkspace(filename);
 				f = new FileOutputStream(filename);
-				s = new ObjectOutputStream(f);
+				s = new ScopedOutputStream(f, cache);
 				SaveTree saveTree = new SaveTree(enclosingProjectPanel,
 						enclosingProjectPanel.getDataSet(), RWspHandler.wspId, RWspHandler.dirty, 
 						RWspHandler.checkoutstr, RWspHandler.lastchange);
@@ -281,6 +285,7 @@ public class WorkspaceHandler {
 				APSerializable aps = AnnotationParser.getSerializable();
 				s.writeObject(aps);
 				s.flush();
+				cache.prune();
 			} finally {
 				try {
 					f.close();
@@ -352,7 +357,8 @@ public class WorkspaceHandler {
 			FileInputStream in = null;
 			try {
 				in = new FileInputStream(filename);
-				ObjectInputStream s = new ObjectInputStream(in);
+				ObjectInputStream s = new ScopedInputStream(in,
+						StructureCache.forWorkspace(filename));
 				saveTree = (SaveTree) s.readObject();
 				APSerializable aps = (APSerializable) s.readObject();
 				AnnotationParser.setFromSerializable(aps);
@@ -370,6 +376,37 @@ public class WorkspaceHandler {
 
 	}
 	
+	/* streams of one workspace file, with its structure cache */
+	private static class ScopedOutputStream extends ObjectOutputStream
+			implements StructureCache.Scope {
+		private final StructureCache cache;
+
+		ScopedOutputStream(OutputStream out, StructureCache cache)
+				throws IOException {
+			super(out);
+			this.cache = cache;
+		}
+
+		public StructureCache getStructureCache() {
+			return cache;
+		}
+	}
+
+	private static class ScopedInputStream extends ObjectInputStream implements
+			StructureCache.Scope {
+		private final StructureCache cache;
+
+		ScopedInputStream(InputStream in, StructureCache cache)
+				throws IOException {
+			super(in);
+			this.cache = cache;
+		}
+
+		public StructureCache getStructureCache() {
+			return cache;
+		}
+	}
+
 	private static class WorkspaceFileFilter extends FileFilter {
 		private static final String fileExt = ".wsp";
 
@@ -0,0 +1,923 @@
+package org.geworkbench.builtin.projects;
+
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.InvalidObjectException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileLock;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.swing.JOptionPane;
+import javax.swing.JTree;
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
+import javax.swing.event.TreeModelEvent;
+import javax.swing.event.TreeModelListener;
+import javax.swing.event.TreeSelectionEvent;
+import javax.swing.event.TreeSelectionListener;
+import javax.swing.tree.DefaultTreeModel;
+import javax.swing.tree.TreePath;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.geworkbench.bison.datastructure.biocollections.DSAncillaryDataSet;
+import org.geworkbench.bison.datastructure.biocollections.DSDataSet;
+import org.geworkbench.bison.datastructure.bioobjects.DSBioObject;
+import org.geworkbench.util.ProgressDialog;
+import org.geworkbench.util.ProgressItem;
+import org.geworkbench.util.ProgressTask;
+
+/**
+ * Records the changes to the project tree in a journal, so that the datasets
+ * of a session that did not end normally can be recovered at the next start.
+ * Nodes added (with their datasets), removed, renamed or commented on,
+ * selections and the annotations of the selected set are written as records
+ * to an append-only file by a background thread. A dataset is streamed into
+ * its record there, through {@link DataSetResidency}: one on disk is copied
+ * from its file without being read back, and one in memory is written until
+ * it is used, which may change it, and then written again a little later.
+ * Once the journal outgrows the last checkpoint, a new checkpoint of the
+ * whole tree is written the same way and the journal starts over.
+ *
+ * The files are removed when the application exits normally, so finding them
+ * at start means the last session crashed.
+ *
+ * @version $Id$
+ */
+final class WorkspaceJournal {
+
+	private static Log log = LogFactory.getLog(WorkspaceJournal.class);
+
+	private static final byte ADD = 1, REMOVE = 2, CHANGE = 3, SELECT = 4,
+			ANNOTATIONS = 5;
+	static final byte DATASET = 0, SUBSET = 1, IMAGE = 2;
+
+	/* a checkpoint rewrites every dataset, so there is none before this */
+	private static final long MIN_CHECKPOINT = 64L << 20;
+	/* how often the annotations of the selected set are looked at */
+	private static final int ANNOTATIONS_INTERVAL = 60 * 1000;
+	/* writes of a dataset that keeps being used, and the wait before the next */
+	private static final int ATTEMPTS = 5;
+	private static final long RETRY_DELAY = 1000;
+
+	private final File directory;
+	private final File journalFile;
+	private final File checkpointFile;
+	private FileLock lock;
+	private ThreadPoolExecutor writer;
+
+	/* used on the event dispatch thread only */
+	private final Map<ProjectTreeNode, Integer> ids = new IdentityHashMap<ProjectTreeNode, Integer>();
+	private int nextId;
+	private ProjectTreeNode selected;
+
+	/* shared with the writer */
+	private final AtomicLong checkpointLength = new AtomicLong();
+	private final AtomicBoolean checkpointQueued = new AtomicBoolean();
+
+	/* used by the writer only */
+	private volatile JournalFile journal;
+	/* the datasets written so far, with the id of their node */
+	private final Map<SpillableDataSet, Integer> journaled = new IdentityHashMap<SpillableDataSet, Integer>();
+	private final Map<Integer, byte[]> lastAnnotations = new HashMap<Integer, byte[]>();
+
+	/** What is known about a node when its record is queued. */
+	private static class Entry {
+		final int id;
+		final int parentId;
+		final byte kind;
+		final ProjectTreeNode node;
+		final String label;
+		final String description;
+		final SpillableDataSet data;
+
+		Entry(int id, int parentId, byte kind, ProjectTreeNode node) {
+			this.id = id;
+			this.parentId = parentId;
+			this.kind = kind;
+			this.node = node;
+			this.label = node.toString();
+			this.description = node.getDescription();
+			this.data = node instanceof DataSetNode ? ((DataSetNode) node)
+					.getSpillable() : ((DataSetSubNode) node).getSpillable();
+		}
+	}
+
+	WorkspaceJournal(File directory) {
+		this.directory = directory;
+		journalFile = new File(directory, "journal.log");
+		checkpointFile = new File(directory, "checkpoint.log");
+	}
+
+	/**
+	 * Start journaling the tree, first offering to recover the last session
+	 * if it crashed.
+	 *
+	 * @return whether a recovery was started, which fills the tree in the
+	 *         background
+	 */
+	boolean start(ProjectPanel panel, DefaultTreeModel model, JTree tree) {
+		try {
+			directory.mkdirs();
+			lock = new RandomAccessFile(new File(directory, "session.lock"),
+					"rw").getChannel().tryLock();
+		} catch (IOException e) {
+			log.error("Cannot lock the workspace journal", e);
+		}
+		if (lock == null) {
+			log.info("Another session keeps the workspace journal; not journaling");
+			return false;
+		}
+
+		boolean recovering = false;
+		if (journalFile.length() > 0 || checkpointFile.length() > 0) {
+			File oldCheckpoint = new File(directory, "checkpoint.recovering");
+			File oldJournal = new File(directory, "journal.recovering");
+			oldCheckpoint.delete();
+			oldJournal.delete();
+			checkpointFile.renameTo(oldCheckpoint);
+			journalFile.renameTo(oldJournal);
+			int choice = JOptionPane.showConfirmDialog(null,
+					"geWorkbench did not exit normally last time.\n"
+							+ "Do you want to recover the datasets of that session?",
+					"Recover Workspace", JOptionPane.YES_NO_OPTION);
+			if (choice == JOptionPane.YES_OPTION) {
+				ProgressDialog.getInstance(false).executeTask(
+						new RecoverTask(panel, oldCheckpoint, oldJournal));
+				recovering = true;
+			} else {
+				oldCheckpoint.delete();
+				oldJournal.delete();
+			}
+		}
+
+		try {
+			journal = new JournalFile(journalFile, true);
+		} catch (IOException e) {
+			log.error("Cannot open the workspace journal; not journaling", e);
+			return recovering;
+		}
+		writer = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+				new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+					public Thread newThread(Runnable r) {
+						Thread thread = new Thread(r, "Workspace journal");
+						thread.setDaemon(true);
+						thread.setPriority(Thread.NORM_PRIORITY - 1);
+						return thread;
+					}
+				});
+		install(model, tree);
+		Runtime.getRuntime().addShutdownHook(
+				new Thread("Workspace journal shutdown") {
+					public void run() {
+						close();
+					}
+				});
+		return recovering;
+	}
+
+	/* a normal exit: the journal is not needed any more */
+	private void close() {
+		writer.shutdownNow();
+		try {
+			writer.awaitTermination(5, TimeUnit.SECONDS);
+			journal.close();
+			lock.release();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (IOException e) {
+			log.warn("Closing the workspace journal", e);
+		}
+		journalFile.delete();
+		checkpointFile.delete();
+	}
+
+	private void install(DefaultTreeModel model, final JTree tree) {
+		model.addTreeModelListener(new TreeModelListener() {
+			public void treeNodesInserted(TreeModelEvent e) {
+				int parentId = idOf(e.getTreePath().getLastPathComponent());
+				for (Object child : e.getChildren()) {
+					added((ProjectTreeNode) child, parentId);
+				}
+				checkpointIfLarge();
+			}
+
+			public void treeNodesRemoved(TreeModelEvent e) {
+				for (Object child : e.getChildren()) {
+					removed((ProjectTreeNode) child);
+				}
+			}
+
+			public void treeNodesChanged(TreeModelEvent e) {
+				if (e.getChildren() == null) {
+					return;
+				}
+				for (Object child : e.getChildren()) {
+					Integer id = ids.get(child);
+					if (id != null) {
+						ProjectTreeNode node = (ProjectTreeNode) child;
+						queue(new Change(id, node.toString(), node
+								.getDescription()));
+					}
+				}
+			}
+
+			public void treeStructureChanged(TreeModelEvent e) {
+				restart((ProjectTreeNode) ((DefaultTreeModel) e.getSource())
+						.getRoot());
+			}
+		});
+		tree.addTreeSelectionListener(new TreeSelectionListener() {
+			public void valueChanged(TreeSelectionEvent e) {
+				TreePath path = e.getNewLeadSelectionPath();
+				if (path == null) {
+					return;
+				}
+				ProjectTreeNode node = (ProjectTreeNode) path
+						.getLastPathComponent();
+				Integer id = ids.get(node);
+				if (id == null || node == selected) {
+					return;
+				}
+				// panels and phenotypes are edited on the selected set
+				annotationsChanged();
+				selected = node;
+				queue(new Select(id));
+			}
+		});
+		new Timer(ANNOTATIONS_INTERVAL, new ActionListener() {
+			public void actionPerformed(ActionEvent e) {
+				annotationsChanged();
+			}
+		}).start();
+	}
+
+	private int idOf(Object node) {
+		Integer id = ids.get(node);
+		return id == null ? 0 : id;
+	}
+
+	/* pending nodes cannot be brought back, so they are left out */
+	private static byte kindOf(ProjectTreeNode node) {
+		if (node instanceof ImageNode) {
+			return IMAGE;
+		} else if (node instanceof DataSetSubNode) {
+			return SUBSET;
+		} else if (node instanceof DataSetNode) {
+			return DATASET;
+		}
+		return -1;
+	}
+
+	private void added(ProjectTreeNode node, int parentId) {
+		byte kind = kindOf(node);
+		if (kind < 0) {
+			return;
+		}
+		int id = ++nextId;
+		ids.put(node, id);
+		queue(new Add(new Entry(id, parentId, kind, node)));
+		for (int i = 0; i < node.getChildCount(); i++) {
+			added((ProjectTreeNode) node.getChildAt(i), id);
+		}
+	}
+
+	private void removed(ProjectTreeNode node) {
+		Integer id = ids.get(node);
+		if (id == null) {
+			return;
+		}
+		List<Integer> subtree = new ArrayList<Integer>();
+		forget(node, subtree);
+		queue(new Remove(id, subtree));
+	}
+
+	private void forget(ProjectTreeNode node, List<Integer> subtree) {
+		Integer id = ids.remove(node);
+		if (id != null) {
+			subtree.add(id);
+		}
+		if (node == selected) {
+			selected = null;
+		}
+		for (int i = 0; i < node.getChildCount(); i++) {
+			forget((ProjectTreeNode) node.getChildAt(i), subtree);
+		}
+	}
+
+	/* a workspace was opened or cleared: start over from a checkpoint */
+	private void restart(ProjectTreeNode root) {
+		ids.clear();
+		selected = null;
+		for (int i = 0; i < root.getChildCount(); i++) {
+			collect((ProjectTreeNode) root.getChildAt(i), 0);
+		}
+		checkpoint();
+	}
+
+	private void collect(ProjectTreeNode node, int parentId) {
+		if (kindOf(node) < 0) {
+			return;
+		}
+		int id = ++nextId;
+		ids.put(node, id);
+		for (int i = 0; i < node.getChildCount(); i++) {
+			collect((ProjectTreeNode) node.getChildAt(i), id);
+		}
+	}
+
+	private void checkpointIfLarge() {
+		long length = journal.length();
+		if (length > MIN_CHECKPOINT && length > checkpointLength.get()) {
+			checkpoint();
+		}
+	}
+
+	private void checkpoint() {
+		if (!checkpointQueued.compareAndSet(false, true)) {
+			return;
+		}
+		List<Entry> entries = new ArrayList<Entry>();
+		for (Map.Entry<ProjectTreeNode, Integer> e : sorted()) {
+			ProjectTreeNode node = e.getKey();
+			entries.add(new Entry(e.getValue(), idOf(node.getParent()),
+					kindOf(node), node));
+		}
+		queue(new Checkpoint(entries, idOf(selected)));
+	}
+
+	/* the nodes in the order they were added, parents first */
+	private List<Map.Entry<ProjectTreeNode, Integer>> sorted() {
+		List<Map.Entry<ProjectTreeNode, Integer>> list = new ArrayList<Map.Entry<ProjectTreeNode, Integer>>(
+				ids.entrySet());
+		Collections.sort(list,
+				new Comparator<Map.Entry<ProjectTreeNode, Integer>>() {
+					public int compare(Map.Entry<ProjectTreeNode, Integer> a,
+							Map.Entry<ProjectTreeNode, Integer> b) {
+						return a.getValue().compareTo(b.getValue());
+					}
+				});
+		return list;
+	}
+
+	private void annotationsChanged() {
+		if (!(selected instanceof DataSetNode)) {
+			return;
+		}
+		DSDataSet<?> dataset = ((DataSetNode) selected).peekDataset();
+		Integer id = ids.get(selected);
+		if (dataset == null || id == null) {
+			return;
+		}
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try {
+			DataSetStreams.writeAnnotations(bytes, dataset, DataSetStreams
+					.annotationsOf(dataset));
+		} catch (IOException e) {
+			log.warn("Could not journal the annotations of " + selected, e);
+			return;
+		}
+		queue(new Annotations(id, bytes.toByteArray()));
+	}
+
+	private void queue(Task task) {
+		writer.execute(task);
+	}
+
+	/** A record, written by the writer thread. */
+	private abstract class Task implements Runnable {
+		public final void run() {
+			try {
+				write();
+				if (writer.getQueue().isEmpty()) {
+					journal.sync();
+				}
+			} catch (Exception e) {
+				failed(e);
+			}
+		}
+
+		abstract void write() throws IOException;
+
+		void failed(Exception e) {
+			log.warn("Could not journal a change; writing a checkpoint", e);
+			SwingUtilities.invokeLater(new Runnable() {
+				public void run() {
+					checkpoint();
+				}
+			});
+		}
+	}
+
+	private class Add extends Task {
+		private final Entry entry;
+
+		Add(Entry entry) {
+			this.entry = entry;
+		}
+
+		void write() throws IOException {
+			writeAdd(journal, entry);
+		}
+	}
+
+	/*
+	 * Stream the dataset of an entry into an add record; references to the
+	 * datasets written before it are written as tokens. A dataset used
+	 * meanwhile leaves nothing in the file, and is tried again.
+	 */
+	private void writeAdd(JournalFile file, Entry entry) throws IOException {
+		for (int attempt = 1;; attempt++) {
+			DataSetResidency.Capture capture = entry.data.residency.capture(
+					entry.data, journaled.keySet());
+			try {
+				file.append(add(entry.id, entry.parentId, entry.kind,
+						entry.label, entry.description, capture, journaled));
+				journaled.put(entry.data, entry.id);
+				return;
+			} catch (DataSetResidency.StoppedException e) {
+				if (attempt == ATTEMPTS) {
+					throw e;
+				}
+			} finally {
+				capture.close();
+			}
+			try {
+				Thread.sleep(attempt * RETRY_DELAY);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("Journaling interrupted");
+			}
+		}
+	}
+
+	private class Remove extends Task {
+		private final int id;
+		private final List<Integer> subtree;
+
+		Remove(int id, List<Integer> subtree) {
+			this.id = id;
+			this.subtree = subtree;
+		}
+
+		void write() throws IOException {
+			journal.append(remove(id));
+			journaled.values().removeAll(subtree);
+			for (Integer removed : subtree) {
+				lastAnnotations.remove(removed);
+			}
+		}
+	}
+
+	private class Change extends Task {
+		private final int id;
+		private final String label;
+		private final String description;
+
+		Change(int id, String label, String description) {
+			this.id = id;
+			this.label = label;
+			this.description = description;
+		}
+
+		void write() throws IOException {
+			journal.append(change(id, label, description));
+		}
+	}
+
+	private class Select extends Task {
+		private final int id;
+
+		Select(int id) {
+			this.id = id;
+		}
+
+		void write() throws IOException {
+			journal.append(select(id));
+		}
+	}
+
+	private class Annotations extends Task {
+		private final int id;
+		private final byte[] data;
+
+		Annotations(int id, byte[] data) {
+			this.id = id;
+			this.data = data;
+		}
+
+		void write() throws IOException {
+			if (!journaled.containsValue(id)) {
+				return;
+			}
+			if (Arrays.equals(data, lastAnnotations.get(id))) {
+				return;
+			}
+			journal.append(annotations(id, data));
+			lastAnnotations.put(id, data);
+		}
+	}
+
+	private class Checkpoint extends Task {
+		private final List<Entry> entries;
+		private final int selectedId;
+
+		Checkpoint(List<Entry> entries, int selectedId) {
+			this.entries = entries;
+			this.selectedId = selectedId;
+		}
+
+		void write() throws IOException {
+			checkpointQueued.set(false);
+			long start = System.currentTimeMillis();
+			File temporary = new File(directory, "checkpoint.tmp");
+			JournalFile file = new JournalFile(temporary, true);
+			journaled.clear();
+			lastAnnotations.clear();
+			try {
+				for (Entry entry : entries) {
+					try {
+						writeAdd(file, entry);
+					} catch (DataSetResidency.StoppedException e) {
+						log.warn("Leaving " + entry.label
+								+ " out of the workspace checkpoint", e);
+					} catch (InterruptedIOException e) {
+						throw e;
+					} catch (IOException e) {
+						log.warn("Leaving " + entry.label
+								+ " out of the workspace checkpoint", e);
+					}
+				}
+				if (selectedId != 0) {
+					file.append(select(selectedId));
+				}
+				file.sync();
+			} finally {
+				file.close();
+			}
+			try {
+				Files.move(temporary.toPath(), checkpointFile.toPath(),
+						StandardCopyOption.REPLACE_EXISTING,
+						StandardCopyOption.ATOMIC_MOVE);
+			} catch (AtomicMoveNotSupportedException e) {
+				Files.move(temporary.toPath(), checkpointFile.toPath(),
+						StandardCopyOption.REPLACE_EXISTING);
+			}
+			checkpointLength.set(checkpointFile.length());
+			journal.close();
+			journal = new JournalFile(journalFile, true);
+			log.info("Workspace checkpoint of " + entries.size()
+					+ " datasets, " + (checkpointFile.length() >> 10)
+					+ " KB in " + (System.currentTimeMillis() - start) + " ms");
+		}
+
+		@Override
+		void failed(Exception e) {
+			// the journal still holds what the last checkpoint does not
+			log.error("Could not write a workspace checkpoint", e);
+		}
+	}
+
+	/**
+	 * An add record. The dataset is written as the capture gives it, after a
+	 * table from the tokens it may have for other datasets to the ids of
+	 * their nodes.
+	 *
+	 * @param journaled
+	 *            the datasets written before, with the ids of their nodes;
+	 *            the record fails if the dataset refers to any other
+	 */
+	static JournalFile.Content add(final int id, final int parentId,
+			final byte kind, final String label, final String description,
+			final DataSetResidency.Capture capture,
+			final Map<SpillableDataSet, Integer> journaled) {
+		return new JournalFile.Content() {
+			public void writeTo(DataOutputStream out) throws IOException {
+				out.writeByte(ADD);
+				out.writeInt(id);
+				out.writeInt(parentId);
+				out.writeByte(kind);
+				writeString(out, label);
+				writeString(out, description);
+				Map<Integer, Integer> table = new HashMap<Integer, Integer>();
+				for (Map.Entry<Integer, SpillableDataSet> token : capture
+						.getTokens().entrySet()) {
+					Integer node = journaled.get(token.getValue());
+					if (node != null) {
+						table.put(token.getKey(), node);
+					}
+				}
+				out.writeInt(table.size());
+				for (Map.Entry<Integer, Integer> token : table.entrySet()) {
+					out.writeInt(token.getKey());
+					out.writeInt(token.getValue());
+				}
+				capture.writeTo(out);
+				for (SpillableDataSet used : capture.getUsed()) {
+					if (!journaled.containsKey(used)) {
+						throw new IOException(label
+								+ " refers to a dataset that is not journaled");
+					}
+				}
+			}
+		};
+	}
+
+	static JournalFile.Content remove(final int id) {
+		return new JournalFile.Content() {
+			public void writeTo(DataOutputStream out) throws IOException {
+				out.writeByte(REMOVE);
+				out.writeInt(id);
+			}
+		};
+	}
+
+	static JournalFile.Content change(final int id, final String label,
+			final String description) {
+		return new JournalFile.Content() {
+			public void writeTo(DataOutputStream out) throws IOException {
+				out.writeByte(CHANGE);
+				out.writeInt(id);
+				writeString(out, label);
+				writeString(out, description);
+			}
+		};
+	}
+
+	static JournalFile.Content select(final int id) {
+		return new JournalFile.Content() {
+			public void writeTo(DataOutputStream out) throws IOException {
+				out.writeByte(SELECT);
+				out.writeInt(id);
+			}
+		};
+	}
+
+	/* what DataSetStreams.writeAnnotations wrote */
+	static JournalFile.Content annotations(final int id, final byte[] data) {
+		return new JournalFile.Content() {
+			public void writeTo(DataOutputStream out) throws IOException {
+				out.writeByte(ANNOTATIONS);
+				out.writeInt(id);
+				out.write(data);
+			}
+		};
+	}
+
+	/* strings of any length, unlike writeUTF */
+	private static void writeString(DataOutputStream out, String s)
+			throws IOException {
+		if (s == null) {
+			out.writeInt(-1);
+			return;
+		}
+		byte[] bytes = s.getBytes("UTF-8");
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	private static String readString(DataInputStream in) throws IOException {
+		int length = in.readInt();
+		if (length < 0) {
+			return null;
+		}
+		byte[] bytes = new byte[length];
+		in.readFully(bytes);
+		return new String(bytes, "UTF-8");
+	}
+
+	/** A node read back from the files. */
+	static class Recovered {
+		final int id;
+		final int parentId;
+		final byte kind;
+		final DSDataSet<?> dataset;
+		String label;
+		String description;
+
+		Recovered(int id, int parentId, byte kind, DSDataSet<?> dataset,
+				String label, String description) {
+			this.id = id;
+			this.parentId = parentId;
+			this.kind = kind;
+			this.dataset = dataset;
+			this.label = label;
+			this.description = description;
+		}
+	}
+
+	/** Replays the checkpoint and the journal into the final list of nodes. */
+	static class Recovery implements JournalFile.Handler {
+		/* parents before their children */
+		final Map<Integer, Recovered> nodes = new LinkedHashMap<Integer, Recovered>();
+		int selected;
+
+		/* tokens resolved through the table of an add record */
+		private DataSetStreams.Resolver resolver(
+				final Map<Integer, Integer> table) {
+			return new DataSetStreams.Resolver() {
+				public DSDataSet<?> resolve(int token) throws IOException {
+					Integer id = table.get(token);
+					Recovered node = id == null ? null : nodes.get(id);
+					if (node == null) {
+						throw new InvalidObjectException("Dataset " + token
+								+ " is gone");
+					}
+					return node.dataset;
+				}
+			};
+		}
+
+		public Object read(DataInputStream in) throws IOException,
+				ClassNotFoundException {
+			byte type = in.readByte();
+			int id = in.readInt();
+			switch (type) {
+			case ADD:
+				int parentId = in.readInt();
+				byte kind = in.readByte();
+				String label = readString(in);
+				String description = readString(in);
+				Map<Integer, Integer> table = new HashMap<Integer, Integer>();
+				for (int n = in.readInt(); n > 0; n--) {
+					table.put(in.readInt(), in.readInt());
+				}
+				return new Recovered(id, parentId, kind, DataSetStreams.read(
+						in, resolver(table)), label, description);
+			case REMOVE:
+				return new Object[] { REMOVE, id };
+			case CHANGE:
+				return new Object[] { CHANGE, id, readString(in),
+						readString(in) };
+			case SELECT:
+				return new Object[] { SELECT, id };
+			case ANNOTATIONS:
+				Recovered node = nodes.get(id);
+				if (node == null) {
+					return null;
+				}
+				return new Object[] { ANNOTATIONS, id,
+						DataSetStreams.readAnnotations(in, node.dataset) };
+			default:
+				throw new InvalidObjectException("Unknown record " + type);
+			}
+		}
+
+		public void apply(Object record) {
+			if (record instanceof Recovered) {
+				Recovered node = (Recovered) record;
+				if (node.parentId == 0 || nodes.containsKey(node.parentId)) {
+					nodes.put(node.id, node);
+				}
+				return;
+			}
+			if (record == null) {
+				return;
+			}
+			Object[] fields = (Object[]) record;
+			int id = (Integer) fields[1];
+			switch ((Byte) fields[0]) {
+			case REMOVE:
+				remove(id);
+				break;
+			case CHANGE:
+				Recovered node = nodes.get(id);
+				if (node != null) {
+					node.label = (String) fields[2];
+					node.description = (String) fields[3];
+				}
+				break;
+			case SELECT:
+				selected = id;
+				break;
+			case ANNOTATIONS:
+				Recovered annotated = nodes.get(id);
+				if (annotated != null) {
+					DataSetStreams.restoreAnnotations(annotated.dataset,
+							(Object[]) fields[2]);
+				}
+				break;
+			}
+		}
+
+		private void remove(int id) {
+			Set<Integer> removed = new HashSet<Integer>();
+			removed.add(id);
+			// children come after their parents
+			for (Iterator<Recovered> i = nodes.values().iterator(); i
+					.hasNext();) {
+				Recovered node = i.next();
+				if (removed.contains(node.id)
+						|| removed.contains(node.parentId)) {
+					removed.add(node.id);
+					i.remove();
+				}
+			}
+		}
+	}
+
+	/* reads the files in the background and puts the nodes in the tree */
+	private static class RecoverTask extends ProgressTask<Recovery, Void> {
+		private final ProjectPanel panel;
+		private final File checkpoint;
+		private final File journal;
+
+		RecoverTask(ProjectPanel panel, File checkpoint, File journal) {
+			super(ProgressItem.INDETERMINATE_TYPE,
+					"Workspace is being recovered.");
+			this.panel = panel;
+			this.checkpoint = checkpoint;
+			this.journal = journal;
+		}
+
+		@Override
+		protected Recovery doInBackground() throws Exception {
+			long start = System.currentTimeMillis();
+			Recovery recovery = new Recovery();
+			int records = 0;
+			if (checkpoint.exists()) {
+				records += JournalFile.read(checkpoint, recovery);
+			}
+			if (journal.exists()) {
+				records += JournalFile.read(journal, recovery);
+			}
+			log.info("Recovered " + recovery.nodes.size() + " datasets from "
+					+ records + " records in "
+					+ (System.currentTimeMillis() - start) + " ms");
+			return recovery;
+		}
+
+		@Override
+		protected void done() {
+			ProgressDialog.getInstance(false).removeTask(this);
+			Recovery recovery;
+			try {
+				recovery = get();
+			} catch (Exception e) {
+				log.error("Workspace recovery failed", e);
+				JOptionPane.showMessageDialog(null,
+						"The datasets of the last session could not be recovered.\n"
+								+ e, "Recover Workspace",
+						JOptionPane.ERROR_MESSAGE);
+				return;
+			}
+			restore(panel, recovery);
+			checkpoint.delete();
+			journal.delete();
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	static void restore(ProjectPanel panel, Recovery recovery) {
+		Map<Integer, ProjectTreeNode> created = new HashMap<Integer, ProjectTreeNode>();
+		ProjectSelection selection = panel.getSelection();
+		for (Recovered node : recovery.nodes.values()) {
+			node.dataset.setLabel(node.label);
+			node.dataset.setExperimentInformation(node.description);
+			if (node.kind == DATASET) {
+				panel.addDataSetNode((DSDataSet<? extends DSBioObject>) node.dataset);
+				created.put(node.id, selection.getSelectedNode());
+			} else {
+				ProjectTreeNode parent = created.get(node.parentId);
+				if (parent == null) {
+					continue;
+				}
+				// the new node goes under the selected set
+				panel.setNodeSelection(parent);
+				panel.addDataSetSubNode((DSAncillaryDataSet<? extends DSBioObject>) node.dataset);
+				created.put(node.id, selection.getSelectedNode());
+			}
+		}
+		ProjectTreeNode selected = created.get(recovery.selected);
+		if (selected != null) {
+			panel.setNodeSelection(selected);
+		}
+	}
+
+}
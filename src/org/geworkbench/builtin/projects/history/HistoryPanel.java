@@ -80,11 +80,9 @@ import org.geworkbench.engine.management.Subscribe;
 		if (maSet != null) {
 			datasetHistory = DEFAULT_MESSAGE;
 
-			Object[] values = maSet.getValuesForName(HISTORY);
-			if (values != null && values.length > 0) {
-				datasetHistory = (String) values[0];
-				if (datasetHistory.trim().equals(""))
-					datasetHistory = DEFAULT_MESSAGE;
+			String history = getHistory(maSet);
+			if (history != null && !history.trim().equals("")) {
+				datasetHistory = history;
 			}
 
 			historyTextArea.setText(datasetHistory);
@@ -105,11 +103,9 @@ import org.geworkbench.engine.management.Subscribe;
 		if (maSet != null) {
 			datasetHistory = DEFAULT_MESSAGE;
 
-			Object[] values = maSet.getValuesForName(HISTORY);
-			if (values != null && values.length > 0) {
-				datasetHistory = (String) values[0];
-				if (datasetHistory.trim().equals(""))
-					datasetHistory = DEFAULT_MESSAGE;
+			String history = getHistory(maSet);
+			if (history != null && !history.trim().equals("")) {
+				datasetHistory = history;
 			}
 			historyTextArea.setText(datasetHistory);
 			historyTextArea.setCaretPosition(0);
@@ -117,11 +113,19 @@ import org.geworkbench.engine.management.Subscribe;
 	}
 
     /**
-	 * Used as the "name" in the name-value pair that keeps track of the history
-	 * of changes that a given dataset is being submitted to.
+	 * Used as the "name" in the name-value pair under which older versions
+	 * kept the history of changes as text. Such text is turned into steps of
+	 * the {@link #PROVENANCE} log when the log is first read; the text itself
+	 * is no longer stored, {@link #getHistory(DSExtendable)} renders it.
 	 */
 	public static final String HISTORY = "History";
 
+	/**
+	 * Used as the "name" in the name-value pair that holds the
+	 * {@link ProvenanceLog} of a data set.
+	 */
+	public static final String PROVENANCE = "Provenance";
+
 	// TODO this name probably is not really used 
 	public static final String HISTORYDETAIL = "HistoryDetail";
 
@@ -131,37 +135,140 @@ import org.geworkbench.engine.management.Subscribe;
 		objectWithHistory.addNameValuePair(HISTORYDETAIL, detail);
 	}
 
-	public static void addToHistory(DSExtendable objectWithHistory,
-			String newHistory) {
+	/**
+	 * A copy of the provenance log of an object. Steps are added through
+	 * {@link #addStep(DSExtendable, ProvenanceStep)} and
+	 * {@link #addSteps(DSExtendable, ProvenanceLog)}.
+	 */
+	public static ProvenanceLog getProvenance(DSExtendable objectWithHistory) {
+		synchronized (objectWithHistory) {
+			return provenance(objectWithHistory).copy();
+		}
+	}
 
-		Object[] prevHistory = objectWithHistory.getValuesForName(HISTORY);
-		if (prevHistory != null) {
+	/*
+	 * The log of the object, created if it has none yet. History kept as a
+	 * string, by older versions or by one that changed it after the log was
+	 * saved, is carried over as a step and the string dropped.
+	 */
+	private static ProvenanceLog provenance(DSExtendable objectWithHistory) {
+		ProvenanceLog current = null;
+		boolean held = false;
+		Object[] values = objectWithHistory.getValuesForName(PROVENANCE);
+		if (values != null) {
+			for (Object value : values) {
+				if (value instanceof ProvenanceLog) {
+					current = (ProvenanceLog) value;
+					held = true;
+					break;
+				}
+				if (value instanceof byte[]) {
+					try {
+						current = ProvenanceLog.fromBytes((byte[]) value);
+					} catch (Exception e) {
+						log.warn("cannot read the saved provenance", e);
+					}
+				}
+			}
+			if (!held) {
+				objectWithHistory.clearName(PROVENANCE);
+			}
+		}
+		if (current == null) {
+			current = new ProvenanceLog();
+		}
+		Object[] text = objectWithHistory.getValuesForName(HISTORY);
+		if (text != null) {
 			objectWithHistory.clearName(HISTORY);
+			String history = (String) text[0];
+			// an older version keeps the text it read and adds to its end
+			String rendered = current.render();
+			if (history.startsWith(rendered)) {
+				history = history.substring(rendered.length());
+			}
+			if (history.length() > 0) {
+				current.add(legacyStep(history));
+			}
+		}
+		if (!held) {
+			objectWithHistory.addNameValuePair(PROVENANCE, current);
+		}
+		return current;
+	}
+
+	/* the string ends each entry with a newline, which rendering adds back */
+	private static ProvenanceStep legacyStep(String history) {
+		if (history.endsWith("\n")) {
+			history = history.substring(0, history.length() - 1);
+		}
+		return ProvenanceStep.text(history, 0);
+	}
+
+	/* whether the object has a log or history text to make one from */
+	private static boolean hasLog(DSExtendable objectWithHistory) {
+		return objectWithHistory.getValuesForName(PROVENANCE) != null
+				|| objectWithHistory.getValuesForName(HISTORY) != null;
+	}
+
+	public static void addStep(DSExtendable objectWithHistory,
+			ProvenanceStep step) {
+		synchronized (objectWithHistory) {
+			ProvenanceLog current = provenance(objectWithHistory);
+			current.add(step);
+		}
+	}
+
+	public static void addSteps(DSExtendable objectWithHistory,
+			ProvenanceLog steps) {
+		synchronized (objectWithHistory) {
+			ProvenanceLog current = provenance(objectWithHistory);
+			current.addAll(steps);
 		}
-		objectWithHistory.addNameValuePair(HISTORY, (prevHistory == null ? ""
-				: (String) prevHistory[0])
-				+ newHistory + "\n");
+	}
+
+	/**
+	 * Start the history of <code>derived</code> with the history of
+	 * <code>source</code>. The steps themselves are shared.
+	 */
+	public static void copyHistory(DSExtendable source, DSExtendable derived) {
+		if (!hasLog(source)) {
+			return;
+		}
+		addSteps(derived, getProvenance(source));
+	}
+
+	public static void addToHistory(DSExtendable objectWithHistory,
+			String newHistory) {
+		addStep(objectWithHistory, ProvenanceStep.text(newHistory,
+				fingerprint(objectWithHistory)));
 	}
 	
 	public static void addBeforeToHistory(DSExtendable objectWithHistory,
 			String newHistory) {
-
-		Object[] prevHistory = objectWithHistory.getValuesForName(HISTORY);
-		if (prevHistory != null) {
-			objectWithHistory.clearName(HISTORY);
+		synchronized (objectWithHistory) {
+			ProvenanceLog current = provenance(objectWithHistory);
+			current.addFirst(ProvenanceStep.text(newHistory,
+					fingerprint(objectWithHistory)));
 		}
-		objectWithHistory.addNameValuePair(HISTORY, newHistory + "\n" + (prevHistory == null ? ""
-				: (String) prevHistory[0]));
+	}
+
+	private static long fingerprint(DSExtendable objectWithHistory) {
+		return objectWithHistory instanceof DSDataSet ? ProvenanceLog
+				.fingerprint((DSDataSet<?>) objectWithHistory) : 0;
 	}
 	
+	/**
+	 * The history as text, rendered from the provenance log when the log
+	 * changed since it was last asked for; null if the object has no
+	 * history.
+	 */
 	public static String getHistory(DSExtendable objectWithHistory) {
-
-		Object[] prevHistory = objectWithHistory.getValuesForName(HISTORY);
-		 if (prevHistory != null)
-			  return (String) prevHistory[0];
-		 else
-			 return null;
-				 
+		synchronized (objectWithHistory) {
+			if (!hasLog(objectWithHistory)) {
+				return null;
+			}
+			return provenance(objectWithHistory).render();
+		}
 	}
 	
 	public static boolean hasHistory(DSExtendable objectWithHistory)
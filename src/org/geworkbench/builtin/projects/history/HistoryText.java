@@ -0,0 +1,154 @@
+package org.geworkbench.builtin.projects.history;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Text of a {@link ProvenanceStep}, with every long run of tab-indented lines
+ * (the selections listed by analyses) held as a {@link SelectionRecord}.
+ * Rendering in full gives back exactly the text it was made from.
+ *
+ * @version $Id$
+ */
+final class HistoryText implements Serializable {
+
+	private static final long serialVersionUID = 2618804283562431540L;
+
+	/* shorter listings are left in the text */
+	static final int MIN_LINES = 8;
+
+	static final String SAME_AS_ABOVE = "\t(same as listed above)\n";
+
+	/* one more than listings: the text before, between and after them */
+	private final String[] texts;
+	private final SelectionRecord[] listings;
+
+	private HistoryText(String[] texts, SelectionRecord[] listings) {
+		this.texts = texts;
+		this.listings = listings;
+	}
+
+	static HistoryText of(String text) {
+		List<String> texts = new ArrayList<String>();
+		List<SelectionRecord> listings = new ArrayList<SelectionRecord>();
+		int segmentStart = 0;
+		int runStart = 0;
+		int runLines = 0;
+		int lineStart = 0;
+		while (lineStart < text.length()) {
+			int end = text.indexOf('\n', lineStart);
+			if (end < 0) {
+				// a last line without a newline is not part of a listing
+				break;
+			}
+			if (text.charAt(lineStart) == '\t') {
+				if (runLines == 0) {
+					runStart = lineStart;
+				}
+				runLines++;
+			} else {
+				if (runLines >= MIN_LINES) {
+					texts.add(text.substring(segmentStart, runStart));
+					listings.add(SelectionRecord.of(text.substring(runStart,
+							lineStart), runLines));
+					segmentStart = lineStart;
+				}
+				runLines = 0;
+			}
+			lineStart = end + 1;
+		}
+		if (runLines >= MIN_LINES) {
+			texts.add(text.substring(segmentStart, runStart));
+			listings.add(SelectionRecord.of(text.substring(runStart,
+					lineStart), runLines));
+			segmentStart = lineStart;
+		}
+		texts.add(text.substring(segmentStart));
+		return new HistoryText(texts.toArray(new String[texts.size()]),
+				listings.toArray(new SelectionRecord[listings.size()]));
+	}
+
+	/**
+	 * The text made of the given parts in order: strings, and
+	 * {@link SelectionRecord}s which are held as they are when long enough
+	 * to be worth it.
+	 */
+	static HistoryText of(List<?> parts) {
+		List<String> texts = new ArrayList<String>();
+		List<SelectionRecord> listings = new ArrayList<SelectionRecord>();
+		StringBuilder text = new StringBuilder();
+		for (Object part : parts) {
+			if (!(part instanceof SelectionRecord)) {
+				text.append(part);
+				continue;
+			}
+			SelectionRecord listing = (SelectionRecord) part;
+			if (listing.size() < MIN_LINES) {
+				text.append(listing.getText());
+			} else {
+				texts.add(text.toString());
+				text.setLength(0);
+				listings.add(listing);
+			}
+		}
+		texts.add(text.toString());
+		return new HistoryText(texts.toArray(new String[texts.size()]),
+				listings.toArray(new SelectionRecord[listings.size()]));
+	}
+
+	SelectionRecord[] getListings() {
+		return listings.clone();
+	}
+
+	/**
+	 * The same text, with each listing replaced by the equal one already in
+	 * <code>pool</code>, if any; other listings are added to the pool.
+	 */
+	HistoryText share(Map<SelectionRecord, SelectionRecord> pool) {
+		SelectionRecord[] shared = null;
+		for (int i = 0; i < listings.length; i++) {
+			SelectionRecord known = pool.get(listings[i]);
+			if (known == null) {
+				pool.put(listings[i], listings[i]);
+			} else if (known != listings[i]) {
+				if (shared == null) {
+					shared = listings.clone();
+				}
+				shared[i] = known;
+			}
+		}
+		return shared == null ? this : new HistoryText(texts, shared);
+	}
+
+	/**
+	 * Append the text. A listing is written out in full only if
+	 * <code>listed</code> is null or does not contain it yet; otherwise one
+	 * line says it is the same as above.
+	 */
+	void render(StringBuilder out, Set<SelectionRecord> listed) {
+		for (int i = 0; i < texts.length; i++) {
+			out.append(texts[i]);
+			if (i < listings.length) {
+				if (listed == null || listed.add(listings[i])) {
+					out.append(listings[i].getText());
+				} else {
+					out.append(SAME_AS_ABOVE);
+				}
+			}
+		}
+	}
+
+	@Override
+	public String toString() {
+		if (listings.length == 0) {
+			return texts[0];
+		}
+		StringBuilder out = new StringBuilder();
+		render(out, null);
+		return out.toString();
+	}
+
+}
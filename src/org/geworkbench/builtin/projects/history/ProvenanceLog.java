@@ -0,0 +1,181 @@
+package org.geworkbench.builtin.projects.history;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamException;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.geworkbench.bison.datastructure.biocollections.DSDataSet;
+import org.geworkbench.bison.datastructure.biocollections.microarrays.DSMicroarraySet;
+
+/**
+ * The provenance of a data set: the ordered {@link ProvenanceStep}s it has
+ * gone through. Steps are immutable and shared between the logs of a data set
+ * and the data sets derived from it. Within a log, equal selection listings
+ * are held once, so a log grows with the number of steps rather than with the
+ * size of the selections they were run on.
+ *
+ * The log is only turned into text when it is displayed. A selection is
+ * listed in full the first time it appears and abbreviated afterwards.
+ *
+ * A log is saved as a byte array, so that versions which do not know this
+ * class can still read a workspace holding one.
+ *
+ * @version $Id$
+ */
+public final class ProvenanceLog implements Serializable {
+
+	private static final long serialVersionUID = -5790815484553625183L;
+
+	private final List<ProvenanceStep> steps;
+	/* the listings held by the steps */
+	private transient Map<SelectionRecord, SelectionRecord> listings = null;
+	private transient String rendered = null;
+
+	public ProvenanceLog() {
+		steps = new ArrayList<ProvenanceStep>();
+	}
+
+	private ProvenanceLog(List<ProvenanceStep> steps) {
+		this.steps = new ArrayList<ProvenanceStep>(steps);
+	}
+
+	/** A new log with the same steps, to be continued by a derived data set. */
+	public synchronized ProvenanceLog copy() {
+		return new ProvenanceLog(steps);
+	}
+
+	public synchronized void add(ProvenanceStep step) {
+		steps.add(share(step));
+		rendered = null;
+	}
+
+	public synchronized void addFirst(ProvenanceStep step) {
+		steps.add(0, share(step));
+		rendered = null;
+	}
+
+	public synchronized void addAll(ProvenanceLog other) {
+		if (other == this) {
+			return;
+		}
+		for (ProvenanceStep step : other.getSteps()) {
+			steps.add(share(step));
+		}
+		rendered = null;
+	}
+
+	private ProvenanceStep share(ProvenanceStep step) {
+		if (listings == null) {
+			listings = new HashMap<SelectionRecord, SelectionRecord>();
+			for (ProvenanceStep s : steps) {
+				s.share(listings);
+			}
+		}
+		return step.share(listings);
+	}
+
+	public synchronized List<ProvenanceStep> getSteps() {
+		return Collections.unmodifiableList(new ArrayList<ProvenanceStep>(
+				steps));
+	}
+
+	public synchronized int size() {
+		return steps.size();
+	}
+
+	public synchronized boolean isEmpty() {
+		return steps.isEmpty();
+	}
+
+	/** The history as text, in the layout of the former history string. */
+	public synchronized String render() {
+		if (rendered == null) {
+			StringBuilder out = new StringBuilder();
+			Set<SelectionRecord> listed = new HashSet<SelectionRecord>();
+			for (ProvenanceStep step : steps) {
+				step.render(out, listed);
+				out.append('\n');
+			}
+			rendered = out.toString();
+		}
+		return rendered;
+	}
+
+	private Object writeReplace() throws ObjectStreamException {
+		return toBytes();
+	}
+
+	/** The serialized steps; see {@link #fromBytes(byte[])}. */
+	public synchronized byte[] toBytes() {
+		try {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			ObjectOutputStream out = new ObjectOutputStream(bytes);
+			out.writeObject(new ArrayList<ProvenanceStep>(steps));
+			out.close();
+			return bytes.toByteArray();
+		} catch (IOException e) {
+			// steps hold nothing but strings and numbers
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/** The log saved by {@link #toBytes()}. */
+	@SuppressWarnings("unchecked")
+	public static ProvenanceLog fromBytes(byte[] bytes) throws IOException,
+			ClassNotFoundException {
+		ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(
+				bytes));
+		try {
+			ProvenanceLog log = new ProvenanceLog();
+			log.steps.addAll((List<ProvenanceStep>) in.readObject());
+			return log;
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * A cheap fingerprint of the identity and shape of a data set, recorded
+	 * as the input of each step.
+	 */
+	public static long fingerprint(DSDataSet<?> dataSet) {
+		if (dataSet == null) {
+			return 0;
+		}
+		long hash = 0xcbf29ce484222325L;
+		hash = mix(hash, dataSet.getClass().getName());
+		hash = mix(hash, dataSet.getID());
+		hash = mix(hash, dataSet.getLabel());
+		hash = mix(hash, String.valueOf(dataSet.size()));
+		if (dataSet instanceof DSMicroarraySet) {
+			hash = mix(hash, String.valueOf(((DSMicroarraySet) dataSet)
+					.getMarkers().size()));
+		}
+		return hash;
+	}
+
+	private static long mix(long hash, String s) {
+		if (s != null) {
+			for (int i = 0; i < s.length(); i++) {
+				hash = (hash ^ s.charAt(i)) * 0x100000001b3L;
+			}
+		}
+		return (hash ^ 0xff) * 0x100000001b3L;
+	}
+
+	public String toString() {
+		return render();
+	}
+
+}
@@ -0,0 +1,172 @@
+package org.geworkbench.builtin.projects.history;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * One immutable entry of a {@link ProvenanceLog}: what was done to a data
+ * set, by which component, with which parameters, on which input and when.
+ *
+ * The text of a step is kept as given, except that the marker and array
+ * listings in it are held as compressed {@link SelectionRecord}s, which the
+ * log shares between steps.
+ *
+ * @version $Id$
+ */
+public final class ProvenanceStep implements Serializable {
+
+	private static final long serialVersionUID = 4727305880624651209L;
+
+	private final String action;
+	private final String source;
+	private final HistoryText description;
+	private final Map<String, String> parameters;
+	private final HistoryText detail;
+	private final long inputFingerprint;
+	private final long timestamp;
+
+	/**
+	 * @param action
+	 *            the verb of the step, e.g. "Filtered with"; null for free
+	 *            text
+	 * @param source
+	 *            class name of the component that did the step, or null
+	 * @param description
+	 *            the analysis name and a summary of its parameters, or the
+	 *            text of a free text step
+	 * @param parameters
+	 *            parameter values by name, in display order; may be null
+	 * @param detail
+	 *            further text rendered under the description; may be null
+	 * @param inputFingerprint
+	 *            {@link ProvenanceLog#fingerprint} of the input data set
+	 */
+	public ProvenanceStep(String action, String source, String description,
+			Map<String, ?> parameters, String detail, long inputFingerprint) {
+		this(action, source, HistoryText.of(description == null ? ""
+				: description), parameters, detail == null ? null
+				: HistoryText.of(detail), inputFingerprint);
+	}
+
+	private ProvenanceStep(String action, String source,
+			HistoryText description, Map<String, ?> parameters,
+			HistoryText detail, long inputFingerprint) {
+		this.action = action;
+		this.source = source;
+		this.description = description;
+		if (parameters == null || parameters.isEmpty()) {
+			this.parameters = Collections.emptyMap();
+		} else {
+			Map<String, String> copy = new LinkedHashMap<String, String>();
+			for (Map.Entry<String, ?> e : parameters.entrySet()) {
+				copy.put(e.getKey(), String.valueOf(e.getValue()));
+			}
+			this.parameters = Collections.unmodifiableMap(copy);
+		}
+		this.detail = detail;
+		this.inputFingerprint = inputFingerprint;
+		this.timestamp = System.currentTimeMillis();
+	}
+
+	/**
+	 * A step whose detail is given as parts: strings, and the
+	 * {@link SelectionRecord}s of selections, which are held as they are
+	 * rather than written out and parsed back.
+	 */
+	public static ProvenanceStep withListings(String action, String source,
+			String description, Map<String, ?> parameters, List<?> detail,
+			long inputFingerprint) {
+		return new ProvenanceStep(action, source, HistoryText
+				.of(description == null ? "" : description), parameters,
+				HistoryText.of(detail), inputFingerprint);
+	}
+
+	private ProvenanceStep(ProvenanceStep step, HistoryText description,
+			HistoryText detail) {
+		this.action = step.action;
+		this.source = step.source;
+		this.description = description;
+		this.parameters = step.parameters;
+		this.detail = detail;
+		this.inputFingerprint = step.inputFingerprint;
+		this.timestamp = step.timestamp;
+	}
+
+	/** A step that is just text, as added by the string based history API. */
+	public static ProvenanceStep text(String text, long inputFingerprint) {
+		return new ProvenanceStep(null, null, text, null, null,
+				inputFingerprint);
+	}
+
+	public String getAction() {
+		return action;
+	}
+
+	public String getSource() {
+		return source;
+	}
+
+	public String getDescription() {
+		return description.toString();
+	}
+
+	public Map<String, String> getParameters() {
+		return parameters;
+	}
+
+	public String getDetail() {
+		return detail == null ? null : detail.toString();
+	}
+
+	/** The listings held apart from the text, in the order they appear. */
+	public List<SelectionRecord> getSelections() {
+		List<SelectionRecord> list = new ArrayList<SelectionRecord>(Arrays
+				.asList(description.getListings()));
+		if (detail != null) {
+			list.addAll(Arrays.asList(detail.getListings()));
+		}
+		return Collections.unmodifiableList(list);
+	}
+
+	public long getInputFingerprint() {
+		return inputFingerprint;
+	}
+
+	public long getTimestamp() {
+		return timestamp;
+	}
+
+	/* this step, holding the listings of the pool where they are equal */
+	ProvenanceStep share(Map<SelectionRecord, SelectionRecord> pool) {
+		HistoryText d = description.share(pool);
+		HistoryText e = detail == null ? null : detail.share(pool);
+		if (d == description && e == detail) {
+			return this;
+		}
+		return new ProvenanceStep(this, d, e);
+	}
+
+	/* the layout of the former history string, without the final newline */
+	void render(StringBuilder out, Set<SelectionRecord> listed) {
+		if (action != null) {
+			out.append(action).append(' ');
+		}
+		description.render(out, listed);
+		if (detail != null) {
+			out.append('\n');
+			detail.render(out, listed);
+		}
+	}
+
+	public String toString() {
+		return action == null ? getDescription() : action + " "
+				+ getDescription();
+	}
+
+}
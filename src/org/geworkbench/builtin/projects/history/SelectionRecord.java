@@ -0,0 +1,169 @@
+package org.geworkbench.builtin.projects.history;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * An immutable, compressed run of listing lines from history text: the
+ * tab-indented markers or arrays an analysis was run on.
+ *
+ * A {@link ProvenanceLog} keeps one instance per distinct listing, so a
+ * selection used by many analyses is held and saved once. Records are equal
+ * only when their text is; the fingerprint is just a quick way to tell most
+ * different records apart.
+ *
+ * Records made by {@link #listing(String, List)} for the same lines are the
+ * same object for as long as the line set is among the last few used, so
+ * repeating an analysis on one selection neither writes out nor compresses
+ * the selection again.
+ *
+ * @version $Id$
+ */
+public final class SelectionRecord implements Serializable {
+
+	private static final long serialVersionUID = -3263447513470718014L;
+
+	private static final int RECENT = 32;
+
+	/* the records of recently listed selections, by fingerprint */
+	private static final Map<Long, SelectionRecord> recent = new LinkedHashMap<Long, SelectionRecord>(
+			RECENT, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(
+				Map.Entry<Long, SelectionRecord> eldest) {
+			return size() > RECENT;
+		}
+	};
+
+	private final int size;
+	private final long fingerprint;
+	private final byte[] content;
+
+	private SelectionRecord(int size, long fingerprint, byte[] content) {
+		this.size = size;
+		this.fingerprint = fingerprint;
+		this.content = content;
+	}
+
+	/**
+	 * @param text
+	 *            the listing, each of its <code>lines</code> ending with a
+	 *            newline
+	 */
+	static SelectionRecord of(String text, int lines) {
+		long hash = 0xcbf29ce484222325L;
+		for (int i = 0; i < text.length(); i++) {
+			hash = (hash ^ text.charAt(i)) * 0x100000001b3L;
+		}
+		return new SelectionRecord(lines, hash, encode(text));
+	}
+
+	/**
+	 * The record of a listing with one line per label, each line made of
+	 * <code>indent</code>, the label and a newline.
+	 */
+	public static SelectionRecord listing(String indent, List<String> labels) {
+		long hash = 0xcbf29ce484222325L;
+		for (String label : labels) {
+			for (int i = 0; i < indent.length(); i++) {
+				hash = (hash ^ indent.charAt(i)) * 0x100000001b3L;
+			}
+			String line = String.valueOf(label);
+			for (int i = 0; i < line.length(); i++) {
+				hash = (hash ^ line.charAt(i)) * 0x100000001b3L;
+			}
+			hash = (hash ^ '\n') * 0x100000001b3L;
+		}
+		synchronized (recent) {
+			SelectionRecord known = recent.get(hash);
+			if (known != null && known.size == labels.size()) {
+				return known;
+			}
+		}
+		StringBuilder text = new StringBuilder();
+		for (String label : labels) {
+			text.append(indent).append(label).append('\n');
+		}
+		SelectionRecord record = new SelectionRecord(labels.size(), hash,
+				encode(text.toString()));
+		synchronized (recent) {
+			recent.put(hash, record);
+		}
+		return record;
+	}
+
+	/** Number of lines in the listing. */
+	public int size() {
+		return size;
+	}
+
+	/** Compressed size of the listing, in bytes. */
+	public int getCompressedSize() {
+		return content.length;
+	}
+
+	/** The listing as it appeared in the history text. */
+	public String getText() {
+		try {
+			InputStream in = new InflaterInputStream(new ByteArrayInputStream(
+					content));
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream(
+					content.length * 4);
+			byte[] buffer = new byte[4096];
+			for (int n = in.read(buffer); n >= 0; n = in.read(buffer)) {
+				bytes.write(buffer, 0, n);
+			}
+			return new String(bytes.toByteArray(), "UTF-8");
+		} catch (IOException e) {
+			// cannot happen on a byte array written by encode()
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static byte[] encode(String text) {
+		try {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			OutputStream out = new DeflaterOutputStream(bytes);
+			out.write(text.getBytes("UTF-8"));
+			out.close();
+			return bytes.toByteArray();
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (obj == this) {
+			return true;
+		}
+		if (!(obj instanceof SelectionRecord)) {
+			return false;
+		}
+		SelectionRecord other = (SelectionRecord) obj;
+		if (size != other.size || fingerprint != other.fingerprint) {
+			return false;
+		}
+		// another deflater may compress the same text differently
+		return Arrays.equals(content, other.content)
+				|| getText().equals(other.getText());
+	}
+
+	@Override
+	public int hashCode() {
+		return (int) (fingerprint ^ (fingerprint >>> 32));
+	}
+
+}
@@ -1,15 +1,14 @@
 package org.geworkbench.builtin.projects.remoteresources;
 
 import java.io.BufferedReader;
-import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileWriter;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.util.ArrayList;
 
+import org.geworkbench.engine.properties.SettingsWriter;
 import org.geworkbench.util.FilePathnameUtils;
 
 /**
@@ -23,10 +22,18 @@ public class RemoteResourceManager {
 	private static final String DEFAULTRESOURCEFILE = "defaultResources.csv";
 	private String filename;
 	private String cloumnseparator = ",";
+	private static final String LINE_SEPARATOR = System
+			.getProperty("line.separator");
 
 	public RemoteResourceManager() {
 		existedResources = new ArrayList<RemoteResource>();
 		filename = FilePathnameUtils.getTemporaryFilesDirectoryPath() + DEFAULTRESOURCEFILE;
+		try {
+			// another instance may have saved changes not yet on disk
+			SettingsWriter.flush(new File(filename));
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
 		if (filename != null && new File(filename).canRead()) {
 			init(new File(filename));
 
@@ -189,32 +196,29 @@ public class RemoteResourceManager {
 	}
 
 	/**
-	 * saveToFile
+	 * saveToFile: the list is captured now and written shortly after, off
+	 * the calling thread.
 	 */
 	public void saveToFile() {
-		try {
-			if (existedResources.size() == 0) {
-				return;
-			}
-
-			BufferedWriter writer = new BufferedWriter(new FileWriter(new File(
-					filename)));
-			for (RemoteResource s : existedResources) {
-
-				writer.write(s.getShortname() + cloumnseparator + s.getUri()
-						+ cloumnseparator + s.getPortnumber() + cloumnseparator
-						+ s.getConnectProtocal() + cloumnseparator
-						+ s.getUsername() + cloumnseparator + s.getEncryptedPassword()
-						+ cloumnseparator + s.isEditable());
-				writer.newLine();
-			}
-
-			writer.flush();
-			writer.close();
-		} catch (IOException ioe) {
-			ioe.printStackTrace();
+		if (existedResources.size() == 0) {
+			return;
 		}
 
+		StringBuilder text = new StringBuilder();
+		for (RemoteResource s : existedResources) {
+			text.append(s.getShortname() + cloumnseparator + s.getUri()
+					+ cloumnseparator + s.getPortnumber() + cloumnseparator
+					+ s.getConnectProtocal() + cloumnseparator
+					+ s.getUsername() + cloumnseparator + s.getEncryptedPassword()
+					+ cloumnseparator + s.isEditable());
+			text.append(LINE_SEPARATOR);
+		}
+		final byte[] data = text.toString().getBytes();
+		SettingsWriter.schedule(new File(filename), new SettingsWriter.Source() {
+			public byte[] snapshot() {
+				return data;
+			}
+		});
 	}
 
 }
@@ -0,0 +1,143 @@
+package org.geworkbench.builtin.projects.sync;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The chunk list of one version of a workspace file: chunk ids with their
+ * lengths, in file order. The text form is a "GWCM 1" header, the file
+ * length, then one "id length" line per chunk.
+ *
+ * @version $Id$
+ */
+public final class ChunkManifest {
+
+	private static final String HEADER = "GWCM 1";
+
+	private final List<String> ids = new ArrayList<String>();
+	private final List<Integer> lengths = new ArrayList<Integer>();
+	private final List<Long> offsets = new ArrayList<Long>();
+	private long length;
+
+	public ChunkManifest() {
+	}
+
+	/** Chunk a file; see {@link Chunker}. */
+	public static ChunkManifest build(File file) throws IOException {
+		final ChunkManifest manifest = new ChunkManifest();
+		InputStream in = new BufferedInputStream(new FileInputStream(file),
+				1 << 16);
+		try {
+			Chunker.split(in, new Chunker.Sink() {
+				public void chunk(String id, byte[] data, int offset,
+						int length) {
+					manifest.add(id, length);
+				}
+			});
+		} finally {
+			in.close();
+		}
+		return manifest;
+	}
+
+	public void add(String id, int chunkLength) {
+		ids.add(id);
+		lengths.add(chunkLength);
+		offsets.add(length);
+		length += chunkLength;
+	}
+
+	public int size() {
+		return ids.size();
+	}
+
+	public String getId(int chunk) {
+		return ids.get(chunk);
+	}
+
+	public int getLength(int chunk) {
+		return lengths.get(chunk);
+	}
+
+	/** Position of the chunk in the file. */
+	public long getOffset(int chunk) {
+		return offsets.get(chunk);
+	}
+
+	/** Length of the whole file. */
+	public long getLength() {
+		return length;
+	}
+
+	public List<String> getIds() {
+		return Collections.unmodifiableList(ids);
+	}
+
+	/** First index of each distinct chunk id. */
+	public Map<String, Integer> index() {
+		Map<String, Integer> index = new HashMap<String, Integer>();
+		for (int i = ids.size() - 1; i >= 0; i--) {
+			index.put(ids.get(i), i);
+		}
+		return index;
+	}
+
+	public void write(OutputStream out) throws IOException {
+		Writer writer = new BufferedWriter(new OutputStreamWriter(out,
+				"US-ASCII"));
+		writer.write(HEADER);
+		writer.write('\n');
+		writer.write(Long.toString(length));
+		writer.write('\n');
+		for (int i = 0; i < ids.size(); i++) {
+			writer.write(ids.get(i));
+			writer.write(' ');
+			writer.write(Integer.toString(lengths.get(i)));
+			writer.write('\n');
+		}
+		writer.flush();
+	}
+
+	/**
+	 * @throws IOException
+	 *             if the text is not a manifest or its chunk lengths do not
+	 *             add up to the file length
+	 */
+	public static ChunkManifest read(InputStream in) throws IOException {
+		BufferedReader reader = new BufferedReader(new InputStreamReader(in,
+				"US-ASCII"));
+		if (!HEADER.equals(reader.readLine())) {
+			throw new IOException("not a chunk manifest");
+		}
+		ChunkManifest manifest = new ChunkManifest();
+		try {
+			long expected = Long.parseLong(reader.readLine());
+			for (String line; (line = reader.readLine()) != null;) {
+				int space = line.indexOf(' ');
+				manifest.add(line.substring(0, space), Integer.parseInt(line
+						.substring(space + 1)));
+			}
+			if (manifest.length != expected) {
+				throw new IOException("truncated chunk manifest");
+			}
+		} catch (RuntimeException e) {
+			throw new IOException("malformed chunk manifest: " + e);
+		}
+		return manifest;
+	}
+
+}
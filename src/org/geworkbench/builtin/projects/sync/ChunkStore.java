@@ -0,0 +1,41 @@
+package org.geworkbench.builtin.projects.sync;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Set;
+
+/**
+ * The server side of a workspace sync: a content-addressed chunk store plus
+ * the current manifest of each workspace. Implementations must be safe for
+ * concurrent chunk transfers.
+ *
+ * @version $Id$
+ */
+public interface ChunkStore {
+
+	/** @return the current manifest of the workspace, or null if none */
+	public ChunkManifest getManifest(String workspace) throws IOException;
+
+	/**
+	 * Make the manifest the current version of the workspace; every chunk it
+	 * lists must already be stored.
+	 */
+	public void putManifest(String workspace, ChunkManifest manifest)
+			throws IOException;
+
+	/** The ids among the given ones that the store does not hold. */
+	public Set<String> findMissing(Collection<String> ids) throws IOException;
+
+	/**
+	 * Store a chunk.
+	 *
+	 * @throws IOException
+	 *             if the content does not hash to the id
+	 */
+	public void putChunk(String id, byte[] data, int offset, int length)
+			throws IOException;
+
+	/** @return the chunk content; the caller verifies it against the id */
+	public byte[] getChunk(String id) throws IOException;
+
+}
@@ -0,0 +1,114 @@
+package org.geworkbench.builtin.projects.sync;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Random;
+
+/**
+ * Splits a stream into content-defined chunks: a cut is made where a rolling
+ * "gear" hash of the last 64 bytes matches a mask, so an insertion or
+ * deletion only changes the chunks around it and the boundaries after it
+ * fall in the same places as before. Chunks are between 16 and 256 KB, 64 KB
+ * on average, and are named by the hex SHA-1 of their content.
+ *
+ * @version $Id$
+ */
+public final class Chunker {
+
+	static final int MIN_CHUNK = 16 << 10;
+	static final int MAX_CHUNK = 256 << 10;
+	/* 16 bits, average chunk of 64 KB after the minimum */
+	private static final long MASK = 0xffffL << 48;
+
+	private static final long[] GEAR = new long[256];
+	static {
+		// fixed seed: boundaries must be the same on every machine
+		Random random = new Random(0x6765617243444cL);
+		for (int i = 0; i < GEAR.length; i++) {
+			GEAR[i] = random.nextLong();
+		}
+	}
+
+	/** Receives the chunks in stream order. */
+	public interface Sink {
+		void chunk(String id, byte[] data, int offset, int length)
+				throws IOException;
+	}
+
+	private Chunker() {
+	}
+
+	/** Chunk the whole stream; the stream is not closed. */
+	public static void split(InputStream in, Sink sink) throws IOException {
+		MessageDigest digest = newDigest();
+		byte[] buffer = new byte[MAX_CHUNK * 2];
+		int start = 0;
+		int length = 0;
+		boolean eof = false;
+		while (true) {
+			while (!eof && length < buffer.length) {
+				int n = in.read(buffer, length, buffer.length - length);
+				if (n < 0) {
+					eof = true;
+				} else {
+					length += n;
+				}
+			}
+			while (length - start >= MAX_CHUNK || (eof && start < length)) {
+				int end = findCut(buffer, start, Math.min(length, start
+						+ MAX_CHUNK));
+				digest.update(buffer, start, end - start);
+				sink.chunk(toHex(digest.digest()), buffer, start, end - start);
+				start = end;
+			}
+			if (eof) {
+				return;
+			}
+			System.arraycopy(buffer, start, buffer, 0, length - start);
+			length -= start;
+			start = 0;
+		}
+	}
+
+	/* index just past the chunk that starts at from */
+	static int findCut(byte[] data, int from, int to) {
+		if (to - from <= MIN_CHUNK) {
+			return to;
+		}
+		long hash = 0;
+		for (int i = from + MIN_CHUNK; i < to; i++) {
+			hash = (hash << 1) + GEAR[data[i] & 0xff];
+			if ((hash & MASK) == 0) {
+				return i + 1;
+			}
+		}
+		return to;
+	}
+
+	/** Hex SHA-1 of a byte range, the id of a chunk with this content. */
+	public static String id(byte[] data, int offset, int length) {
+		MessageDigest digest = newDigest();
+		digest.update(data, offset, length);
+		return toHex(digest.digest());
+	}
+
+	private static MessageDigest newDigest() {
+		try {
+			return MessageDigest.getInstance("SHA-1");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static String toHex(byte[] bytes) {
+		StringBuilder hex = new StringBuilder(bytes.length * 2);
+		for (byte b : bytes) {
+			hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(
+					Character.forDigit(b & 0xf, 16));
+		}
+		return hex.toString();
+	}
+
+}
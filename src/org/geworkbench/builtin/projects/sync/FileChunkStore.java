@@ -0,0 +1,134 @@
+package org.geworkbench.builtin.projects.sync;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * A {@link ChunkStore} in a directory: chunks under "chunks/" fanned out by
+ * the first two hex digits of their id, manifests under "manifests/". Files
+ * are written under a temporary name and renamed, so a reader never sees a
+ * partial chunk or manifest. It stands in for the remote workspace service
+ * in tests and works as-is on a shared file system.
+ *
+ * @version $Id$
+ */
+public class FileChunkStore implements ChunkStore {
+
+	private final File chunks;
+	private final File manifests;
+
+	public FileChunkStore(File directory) {
+		chunks = new File(directory, "chunks");
+		manifests = new File(directory, "manifests");
+		chunks.mkdirs();
+		manifests.mkdirs();
+	}
+
+	public ChunkManifest getManifest(String workspace) throws IOException {
+		InputStream in;
+		try {
+			in = new FileInputStream(manifestFile(workspace));
+		} catch (FileNotFoundException e) {
+			return null;
+		}
+		try {
+			return ChunkManifest.read(in);
+		} finally {
+			in.close();
+		}
+	}
+
+	public void putManifest(String workspace, ChunkManifest manifest)
+			throws IOException {
+		Set<String> missing = findMissing(manifest.getIds());
+		if (!missing.isEmpty()) {
+			throw new IOException(missing.size() + " chunks of " + workspace
+					+ " have not been stored");
+		}
+		File file = manifestFile(workspace);
+		File part = new File(file.getPath() + ".part");
+		OutputStream out = new FileOutputStream(part);
+		try {
+			manifest.write(out);
+		} finally {
+			out.close();
+		}
+		replace(part, file);
+	}
+
+	public Set<String> findMissing(Collection<String> ids) {
+		Set<String> missing = new LinkedHashSet<String>();
+		for (String id : ids) {
+			if (!chunkFile(id).isFile()) {
+				missing.add(id);
+			}
+		}
+		return missing;
+	}
+
+	public void putChunk(String id, byte[] data, int offset, int length)
+			throws IOException {
+		if (!Chunker.id(data, offset, length).equals(id)) {
+			throw new IOException("chunk " + id + " is corrupt");
+		}
+		File file = chunkFile(id);
+		if (file.isFile()) {
+			return;
+		}
+		file.getParentFile().mkdirs();
+		File part = File.createTempFile(id, ".part", file.getParentFile());
+		OutputStream out = new FileOutputStream(part);
+		try {
+			out.write(data, offset, length);
+		} finally {
+			out.close();
+		}
+		replace(part, file);
+	}
+
+	public byte[] getChunk(String id) throws IOException {
+		RandomAccessFile file = new RandomAccessFile(chunkFile(id), "r");
+		try {
+			byte[] data = new byte[(int) file.length()];
+			file.readFully(data);
+			return data;
+		} finally {
+			file.close();
+		}
+	}
+
+	File chunkFile(String id) {
+		if (id.length() < 3 || id.indexOf('/') >= 0
+				|| id.indexOf(File.separatorChar) >= 0) {
+			throw new IllegalArgumentException("bad chunk id " + id);
+		}
+		return new File(new File(chunks, id.substring(0, 2)), id);
+	}
+
+	private File manifestFile(String workspace) {
+		return new File(manifests, workspace.replaceAll("[^A-Za-z0-9._-]", "_")
+				+ ".manifest");
+	}
+
+	private static void replace(File from, File to) throws IOException {
+		if (!from.renameTo(to)) {
+			// renameTo does not replace an existing file on every platform
+			to.delete();
+			if (!from.renameTo(to) && !to.isFile()) {
+				from.delete();
+				throw new IOException("could not write " + to);
+			}
+		}
+		from.delete();
+	}
+
+}
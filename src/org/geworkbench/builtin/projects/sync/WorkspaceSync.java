@@ -0,0 +1,266 @@
+package org.geworkbench.builtin.projects.sync;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Moves workspace files to and from a {@link ChunkStore} a chunk at a time.
+ * An upload sends only the chunks the store lacks and then commits the new
+ * manifest; a download fetches only the chunks that the previous local copy
+ * does not already contain. Transfers run in parallel, every chunk is
+ * checked against its id, and an interrupted transfer resumes where it
+ * stopped: chunks already in the store are not resent, and a download
+ * continues from its ".part" file.
+ *
+ * @version $Id$
+ */
+public class WorkspaceSync {
+
+	private static Log log = LogFactory.getLog(WorkspaceSync.class);
+
+	private static final int ATTEMPTS = 3;
+
+	private final ChunkStore store;
+	private final int threads;
+
+	public WorkspaceSync(ChunkStore store) {
+		this(store, 4);
+	}
+
+	public WorkspaceSync(ChunkStore store, int threads) {
+		this.store = store;
+		this.threads = threads;
+	}
+
+	/**
+	 * Make the file the current version of the workspace in the store.
+	 *
+	 * @return the number of chunk bytes sent
+	 */
+	public long upload(File file, String workspace) throws IOException {
+		final ChunkManifest manifest = ChunkManifest.build(file);
+		Set<String> missing = store.findMissing(new LinkedHashSet<String>(
+				manifest.getIds()));
+		Map<String, Integer> index = manifest.index();
+		final AtomicLong sent = new AtomicLong();
+		final RandomAccessFile source = new RandomAccessFile(file, "r");
+		try {
+			final FileChannel channel = source.getChannel();
+			List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+			for (final String id : missing) {
+				final int chunk = index.get(id);
+				tasks.add(new Callable<Void>() {
+					public Void call() throws IOException {
+						byte[] data = read(channel, manifest.getOffset(chunk),
+								manifest.getLength(chunk));
+						if (!Chunker.id(data, 0, data.length).equals(id)) {
+							throw new IOException(
+									"workspace file changed during upload");
+						}
+						for (int attempt = 1;; attempt++) {
+							try {
+								store.putChunk(id, data, 0, data.length);
+								break;
+							} catch (IOException e) {
+								if (attempt == ATTEMPTS) {
+									throw e;
+								}
+								log.warn("Retrying chunk " + id + ": " + e);
+							}
+						}
+						sent.addAndGet(data.length);
+						return null;
+					}
+				});
+			}
+			run(tasks);
+		} finally {
+			source.close();
+		}
+		store.putManifest(workspace, manifest);
+		log.debug(workspace + ": sent " + missing.size() + " of "
+				+ manifest.size() + " chunks, " + sent.get() + " bytes");
+		return sent.get();
+	}
+
+	/**
+	 * Replace the file with the current version of the workspace in the
+	 * store. What the file already has in common with it is not fetched.
+	 *
+	 * @return the number of chunk bytes fetched
+	 * @throws IOException
+	 *             if the store has no such workspace or returns corrupt data;
+	 *             the file is left as it was
+	 */
+	public long download(final String workspace, File file) throws IOException {
+		final ChunkManifest manifest = store.getManifest(workspace);
+		if (manifest == null) {
+			throw new IOException("no workspace " + workspace);
+		}
+		File part = new File(file.getPath() + ".part");
+		final AtomicLong fetched = new AtomicLong();
+		final RandomAccessFile target = new RandomAccessFile(part, "rw");
+		try {
+			final FileChannel out = target.getChannel();
+			List<Integer> needed = resume(manifest, out);
+			needed = copyLocal(manifest, needed, file, out);
+			target.setLength(manifest.getLength());
+
+			List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+			for (final int chunk : needed) {
+				tasks.add(new Callable<Void>() {
+					public Void call() throws IOException {
+						String id = manifest.getId(chunk);
+						for (int attempt = 1;; attempt++) {
+							byte[] data;
+							try {
+								data = store.getChunk(id);
+							} catch (IOException e) {
+								if (attempt == ATTEMPTS) {
+									throw e;
+								}
+								log.warn("Retrying chunk " + id + ": " + e);
+								continue;
+							}
+							if (data.length == manifest.getLength(chunk)
+									&& Chunker.id(data, 0, data.length)
+											.equals(id)) {
+								write(out, manifest.getOffset(chunk), data);
+								fetched.addAndGet(data.length);
+								return null;
+							}
+							if (attempt == ATTEMPTS) {
+								throw new IOException("chunk " + id
+										+ " of " + workspace + " is corrupt");
+							}
+						}
+					}
+				});
+			}
+			run(tasks);
+			out.force(false);
+		} finally {
+			target.close();
+		}
+		if (file.exists() && !file.delete()) {
+			throw new IOException("could not replace " + file);
+		}
+		if (!part.renameTo(file)) {
+			throw new IOException("could not replace " + file);
+		}
+		log.debug(workspace + ": fetched " + fetched.get() + " of "
+				+ manifest.getLength() + " bytes");
+		return fetched.get();
+	}
+
+	/* chunks a partial download does not already hold */
+	private static List<Integer> resume(ChunkManifest manifest,
+			FileChannel part) throws IOException {
+		List<Integer> needed = new ArrayList<Integer>();
+		long size = part.size();
+		for (int i = 0; i < manifest.size(); i++) {
+			long end = manifest.getOffset(i) + manifest.getLength(i);
+			if (end > size
+					|| !Chunker.id(
+							read(part, manifest.getOffset(i), manifest
+									.getLength(i)), 0, manifest.getLength(i))
+							.equals(manifest.getId(i))) {
+				needed.add(i);
+			}
+		}
+		return needed;
+	}
+
+	/* copy chunks the old file has; return the ones it does not */
+	private static List<Integer> copyLocal(ChunkManifest manifest,
+			List<Integer> needed, File file, FileChannel out)
+			throws IOException {
+		if (needed.isEmpty() || !file.isFile()) {
+			return needed;
+		}
+		ChunkManifest local = ChunkManifest.build(file);
+		Map<String, Integer> index = local.index();
+		List<Integer> remaining = new ArrayList<Integer>();
+		RandomAccessFile old = new RandomAccessFile(file, "r");
+		try {
+			for (int chunk : needed) {
+				Integer at = index.get(manifest.getId(chunk));
+				if (at == null) {
+					remaining.add(chunk);
+				} else {
+					write(out, manifest.getOffset(chunk), read(old
+							.getChannel(), local.getOffset(at), local
+							.getLength(at)));
+				}
+			}
+		} finally {
+			old.close();
+		}
+		return remaining;
+	}
+
+	private void run(List<Callable<Void>> tasks) throws IOException {
+		if (tasks.isEmpty()) {
+			return;
+		}
+		ExecutorService executor = Executors.newFixedThreadPool(Math.min(
+				threads, tasks.size()));
+		try {
+			List<Future<Void>> futures = new ArrayList<Future<Void>>();
+			for (Callable<Void> task : tasks) {
+				futures.add(executor.submit(task));
+			}
+			for (Future<Void> future : futures) {
+				future.get();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("sync interrupted");
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException) {
+				throw (IOException) e.getCause();
+			}
+			throw new IOException(e.getCause().toString());
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	private static byte[] read(FileChannel channel, long position, int length)
+			throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(length);
+		while (buffer.hasRemaining()) {
+			if (channel.read(buffer, position + buffer.position()) < 0) {
+				break;
+			}
+		}
+		return buffer.array();
+	}
+
+	private static void write(FileChannel channel, long position, byte[] data)
+			throws IOException {
+		ByteBuffer buffer = ByteBuffer.wrap(data);
+		while (buffer.hasRemaining()) {
+			channel.write(buffer, position + buffer.position());
+		}
+	}
+
+}
@@ -205,6 +205,10 @@ public class ComponentRegistry {
     private TypeMap<List<Object>> listeners;
     // Holds lists of components that are registered to accept specified types.
     private HashMap<Class<?>, List<Class<?>>> acceptors;
+    // The acceptors of each data type asked for, including those of its supertypes.
+    private Map<Class<?>, Set<Class<?>>> resolvedAcceptors = new HashMap<Class<?>, Set<Class<?>>>();
+    // Incremented whenever an acceptor is added or removed.
+    private int acceptorsVersion = 0;
     // Executor Service for asynchronous event dispatching.
     private Map<Class<?>, SynchModel> synchModels;
     // List of the components themselves.
@@ -267,34 +271,45 @@ public class ComponentRegistry {
             acceptors.put(type, list);
         }
         list.add(subscriber);
+        acceptorsChanged();
+    }
+
+    private void acceptorsChanged() {
+        resolvedAcceptors.clear();
+        acceptorsVersion++;
     }
 
     /**
-     * Gets the acceptors for the given type.
-     *
-     * @todo fix
+     * Changes whenever the acceptors of some type change, so callers may cache what they derive
+     * from {@link #getAcceptors(Class)} as long as the version stays the same.
+     */
+    public synchronized int getAcceptorsVersion() {
+        return acceptorsVersion;
+    }
+
+    /**
+     * Gets the acceptors for the given type: those registered for the type or any of its supertypes.
+     * The result is resolved once per type and a fresh copy is returned to each caller.
      */
     public synchronized Set<Class<?>> getAcceptors(Class<?> type) {
         if (type == null) {
             return new HashSet<Class<?>>(acceptors.get(null));
         }
-        log.debug("getAcceptors for " + type.toString());
-        Set<Class<?>> targetTypes = acceptors.keySet();
-        Set<Class<?>> subscribers = new HashSet<Class<?>>();
-        for (Class<?> targetType : targetTypes) {
-            if (targetType != null) {
-                log.debug("TargetType: " + targetType.toString());
-                if (targetType.isAssignableFrom(type)) {
-                    log.debug("is assignable.");
-                    List<Class<?>> results = acceptors.get(targetType);
-                    for (Class<?> aClass : results) {
-                        log.debug("Found: " + aClass.toString());
-                    }
-                    subscribers.addAll(results);
+        Set<Class<?>> subscribers = resolvedAcceptors.get(type);
+        if (subscribers == null) {
+            subscribers = new HashSet<Class<?>>();
+            for (Map.Entry<Class<?>, List<Class<?>>> entry : acceptors.entrySet()) {
+                Class<?> targetType = entry.getKey();
+                if (targetType != null && targetType.isAssignableFrom(type)) {
+                    subscribers.addAll(entry.getValue());
                 }
             }
+            if (log.isDebugEnabled()) {
+                log.debug("getAcceptors for " + type + ": " + subscribers);
+            }
+            resolvedAcceptors.put(type, subscribers);
         }
-        return subscribers;
+        return new HashSet<Class<?>>(subscribers);
     }
 
     private synchronized void registerSynchModel(SynchModel model) {
@@ -562,6 +577,7 @@ public class ComponentRegistry {
 			newList.add(componentClass);
 		}
 		acceptors.put(type, newList);
+		acceptorsChanged();
 	}
 
 	/**
@@ -595,14 +611,17 @@ public class ComponentRegistry {
 		}
 		
 		/* Second, remove ad acceptor from all types.*/
-		for (List<Class<?>> acceptorList : acceptors.values()) {
-			Iterator<Class<?>> iter = acceptorList.iterator();
-			while (iter.hasNext()) {
-				Class<?> acceptor = iter.next();
-				if (componentClassName.equals(acceptor.getName())) {
-					iter.remove();
+		synchronized (this) {
+			for (List<Class<?>> acceptorList : acceptors.values()) {
+				Iterator<Class<?>> iter = acceptorList.iterator();
+				while (iter.hasNext()) {
+					Class<?> acceptor = iter.next();
+					if (componentClassName.equals(acceptor.getName())) {
+						iter.remove();
+					}
 				}
 			}
+			acceptorsChanged();
 		}
 
 		/* Third */
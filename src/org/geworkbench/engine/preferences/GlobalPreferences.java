@@ -22,6 +22,7 @@ public class GlobalPreferences {
     public static final String MAX_NETWORK_OBJECT_NUMBER = "Soft Limit on Cytoscape Network Objects (nodes+edges)";
     public static final String R_LOCATION = "R Location (Rscript.exe and its folder)";
     public static final String R_LIBPATH = "R package directory (leave it blank for default path)";
+    public static final String DATASET_MEMORY_BUDGET = "Memory for datasets in MB, the rest kept on disk (0 for no limit)";
     
     public static final String[] VISUALIZATION_VALUES = new String[]{"Absolute(zero=black)", "Relative", "Absolute(zero=white)"};
     @SuppressWarnings("unchecked")
@@ -105,6 +106,10 @@ public class GlobalPreferences {
         TextField field9 = new TextField(R_LIBPATH);
         field9.setValue(GlobalPreferences.DEFAULT_R_LIBPATH );
 
+        // datasets beyond this much memory are moved to disk until used again
+        IntegerField field10 = new IntegerField(DATASET_MEMORY_BUDGET);
+        field10.setValue(0);
+
         prefs.addField(field1);
         prefs.addField(field2);
         prefs.addField(field3);
@@ -114,6 +119,7 @@ public class GlobalPreferences {
         prefs.addField(field7);
         prefs.addField(field8);
         prefs.addField(field9);
+        prefs.addField(field10);
 
         // Load stored values
         PreferencesManager manager = PreferencesManager.getPreferencesManager();
@@ -154,6 +160,11 @@ public class GlobalPreferences {
         return ((IntegerField)prefs.getField(MAX_NETWORK_OBJECT_NUMBER)).getValue();
     }
     
+    /** @return the memory budget for datasets in megabytes, 0 for none */
+    public int getDatasetMemoryBudget() {
+        return ((IntegerField)prefs.getField(DATASET_MEMORY_BUDGET)).getValue();
+    }
+
     public String getRLocation() {
         return prefs.getField(R_LOCATION).toString();
     }
@@ -1,14 +1,19 @@
 package org.geworkbench.engine.preferences;
 
 import java.awt.Frame;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
+import org.geworkbench.engine.properties.SettingsWriter;
 import org.geworkbench.util.FilePathnameUtils;
 
 /**
@@ -35,6 +40,9 @@ public class PreferencesManager {
 
     private File prefDir;
 
+    /* the last preferences saved to each file, serialized */
+    private Map<File, byte[]> saved = new ConcurrentHashMap<File, byte[]>();
+
     private PreferencesManager() {
         String tempDir = FilePathnameUtils.getTemporaryFilesDirectoryPath() + PREF_DIR;
         prefDir = new File(tempDir);
@@ -63,7 +71,7 @@ public class PreferencesManager {
             fileName = component.getName() + PREFERENCES_EXTENSION;
         }
         File prefFile = new File(prefDir, fileName);
-        if (prefFile.exists()) {
+        if (saved.containsKey(prefFile) || prefFile.exists()) {
             Preferences oldPreferences = readPreferences(prefFile);
             if (oldPreferences != null)
             	updatePreferences(preferences, oldPreferences);
@@ -88,6 +96,10 @@ public class PreferencesManager {
         return result;
     }
 
+    /**
+     * The preferences are serialized on the calling thread and written to disk shortly after by the
+     * {@link SettingsWriter}; until then they are read back from memory.
+     */
     public void savePreferences(Class<?> component, Preferences preferences) {
         String fileName;
         if (component == null) {
@@ -95,13 +107,18 @@ public class PreferencesManager {
         } else {
             fileName = component.getName() + PREFERENCES_EXTENSION;
         }
-        File prefFile = new File(prefDir, fileName);
+        final File prefFile = new File(prefDir, fileName);
         try {
-            FileOutputStream fos = new FileOutputStream(prefFile);
-            ObjectOutputStream oos = new ObjectOutputStream(fos);
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            ObjectOutputStream oos = new ObjectOutputStream(bytes);
             oos.writeObject(preferences);
-            oos.flush();
             oos.close();
+            saved.put(prefFile, bytes.toByteArray());
+            SettingsWriter.schedule(prefFile, new SettingsWriter.Source() {
+                public byte[] snapshot() {
+                    return saved.get(prefFile);
+                }
+            });
         } catch (IOException e) {
             System.out.println("Error persisting preferences:");
             e.printStackTrace();
@@ -121,7 +138,8 @@ public class PreferencesManager {
 
     private Preferences readPreferences(File fromFile) {
         try {
-            FileInputStream fis = new FileInputStream(fromFile);
+            byte[] bytes = saved.get(fromFile);
+            InputStream fis = bytes != null ? new ByteArrayInputStream(bytes) : new FileInputStream(fromFile);
             ObjectInputStream ois = new ObjectInputStream(fis);
             Preferences preferences = (Preferences) ois.readObject();
             ois.close();
@@ -1,10 +1,9 @@
 package org.geworkbench.engine.properties;
 
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.util.Properties;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.geworkbench.engine.management.ComponentClassLoader;
 import org.geworkbench.engine.management.ComponentResource;
@@ -40,41 +39,41 @@ public class PropertiesManager {
         }
     }
 
-    private Properties getProperties(Class<?> component) throws IOException {
-        File confFile = getPropertiesPath(component);
+    /* component class, or null for the global settings, to its store */
+    private Map<Class<?>, SettingsStore> stores = new ConcurrentHashMap<Class<?>, SettingsStore>();
 
-        if (confFile.exists()) {
-            Properties props = new Properties();
-            FileInputStream in = new FileInputStream(confFile);
-            try {
-                props.loadFromXML(in);
-            } finally {
-                in.close();
-            }
-            return props;
-        } else {
-            return new Properties();
-        }
-    }
-
-    private void saveProperties(Class<?> component, Properties props) throws IOException {
-        File confFile = getPropertiesPath(component);
-        FileOutputStream out = new FileOutputStream(confFile);
-        try {
-            props.storeToXML(out, "Auto-generated by geWorkbench.");
-        } finally {
-            out.close();
+    private SettingsStore getStore(Class<?> component) {
+        Class<?> key = component == null ? PropertiesManager.class : component;
+        SettingsStore store = stores.get(key);
+        if (store == null) {
+            store = SettingsStore.forFile(getPropertiesPath(component), true);
+            stores.put(key, store);
         }
+        return store;
     }
 
+    /**
+     * Changes are kept in memory at once and written to the file shortly
+     * after, off the calling thread.
+     */
     public void setProperty(Class<?> component, String key, String value) throws IOException {
-        Properties props = getProperties(component);
-        props.setProperty(key, value);
-        saveProperties(component, props);
+        getStore(component).set(key, value);
     }
 
     public String getProperty(Class<?> component, String key, String defaultValue) throws IOException {
-        Properties props = getProperties(component);
-        return props.getProperty(key, defaultValue);
+        return getStore(component).get(key, defaultValue);
+    }
+
+    public void addListener(Class<?> component, SettingsStore.Listener listener) {
+        getStore(component).addListener(listener);
+    }
+
+    public void removeListener(Class<?> component, SettingsStore.Listener listener) {
+        getStore(component).removeListener(listener);
+    }
+
+    /** Write the component's pending changes now. */
+    public void flush(Class<?> component) throws IOException {
+        getStore(component).flush();
     }
 }
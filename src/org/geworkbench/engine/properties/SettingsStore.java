@@ -0,0 +1,165 @@
+package org.geworkbench.engine.properties;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * The settings of one file, read once and then served from memory. Reads are
+ * a hash lookup and may come from any thread; changes update memory at once,
+ * notify the listeners and leave the file to {@link SettingsWriter}, which
+ * coalesces a burst of changes into one write.
+ *
+ * There is one store per file: {@link #forFile(File, boolean)} returns the
+ * same instance for the same path.
+ *
+ * @version $Id$
+ */
+public class SettingsStore {
+
+	/** Told about every change made through the store. */
+	public interface Listener {
+		/**
+		 * Called on the thread that made the change.
+		 *
+		 * @param oldValue
+		 *            null if the key was not set
+		 * @param newValue
+		 *            null if the key was removed
+		 */
+		void settingChanged(SettingsStore store, String key, String oldValue,
+				String newValue);
+	}
+
+	private static final Map<File, SettingsStore> stores = new HashMap<File, SettingsStore>();
+
+	private final File file;
+	private final boolean xml;
+	private final ConcurrentHashMap<String, String> values = new ConcurrentHashMap<String, String>();
+	private final CopyOnWriteArrayList<Listener> listeners = new CopyOnWriteArrayList<Listener>();
+	private volatile boolean loaded;
+
+	private final SettingsWriter.Source source = new SettingsWriter.Source() {
+		public byte[] snapshot() throws IOException {
+			Properties properties = new Properties();
+			properties.putAll(values);
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			if (xml) {
+				properties.storeToXML(bytes, "Auto-generated by geWorkbench.");
+			} else {
+				properties.store(bytes, "Properties");
+			}
+			return bytes.toByteArray();
+		}
+	};
+
+	private SettingsStore(File file, boolean xml) {
+		this.file = file;
+		this.xml = xml;
+	}
+
+	/**
+	 * @param xml
+	 *            whether the file is in the XML properties format rather than
+	 *            the plain one
+	 */
+	public static SettingsStore forFile(File file, boolean xml) {
+		File key;
+		try {
+			key = file.getCanonicalFile();
+		} catch (IOException e) {
+			key = file.getAbsoluteFile();
+		}
+		synchronized (stores) {
+			SettingsStore store = stores.get(key);
+			if (store == null) {
+				store = new SettingsStore(key, xml);
+				stores.put(key, store);
+			}
+			return store;
+		}
+	}
+
+	public File getFile() {
+		return file;
+	}
+
+	/**
+	 * @throws IOException
+	 *             if the file exists but cannot be read; it is tried again on
+	 *             the next call
+	 */
+	public String get(String key, String defaultValue) throws IOException {
+		load();
+		String value = values.get(key);
+		return value == null ? defaultValue : value;
+	}
+
+	/** Set the value, or remove the key if the value is null. */
+	public void set(String key, String value) throws IOException {
+		load();
+		String old = value == null ? values.remove(key) : values.put(key,
+				value);
+		if (old == null ? value == null : old.equals(value)) {
+			return;
+		}
+		SettingsWriter.schedule(file, source);
+		for (Listener listener : listeners) {
+			listener.settingChanged(this, key, old, value);
+		}
+	}
+
+	/** A copy of all the settings. */
+	public Map<String, String> getAll() throws IOException {
+		load();
+		return new HashMap<String, String>(values);
+	}
+
+	/** Write any pending change now. */
+	public void flush() throws IOException {
+		SettingsWriter.flush(file);
+	}
+
+	public void addListener(Listener listener) {
+		listeners.add(listener);
+	}
+
+	public void removeListener(Listener listener) {
+		listeners.remove(listener);
+	}
+
+	private void load() throws IOException {
+		if (loaded) {
+			return;
+		}
+		synchronized (this) {
+			if (loaded) {
+				return;
+			}
+			if (file.exists()) {
+				Properties properties = new Properties();
+				FileInputStream in = new FileInputStream(file);
+				try {
+					if (xml) {
+						properties.loadFromXML(in);
+					} else {
+						properties.load(in);
+					}
+				} finally {
+					in.close();
+				}
+				for (String name : properties.stringPropertyNames()) {
+					values.put(name, properties.getProperty(name));
+				}
+			}
+			loaded = true;
+		}
+	}
+
+}
@@ -0,0 +1,141 @@
+package org.geworkbench.engine.properties;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Writes settings files in the background. A file scheduled several times
+ * before the writer gets to it is written once, with the content at the time
+ * of writing. Each file is replaced atomically, so a crash leaves either the
+ * old or the new content, and whatever is still pending is written when the
+ * application exits.
+ *
+ * @version $Id$
+ */
+public final class SettingsWriter {
+
+	private static Log log = LogFactory.getLog(SettingsWriter.class);
+
+	/** Produces the bytes of a settings file at the time it is written. */
+	public interface Source {
+		byte[] snapshot() throws IOException;
+	}
+
+	/* how long a change waits for further changes to the same file */
+	private static final long DELAY = 200;
+
+	private static final Map<File, Source> pending = new LinkedHashMap<File, Source>();
+	/* held while writing, so a file is never written by two threads at once */
+	private static final Object writeLock = new Object();
+	private static ScheduledExecutorService executor;
+	private static boolean scheduled;
+
+	private SettingsWriter() {
+	}
+
+	/** Write the file soon, with the content the source gives then. */
+	public static void schedule(File file, Source source) {
+		synchronized (pending) {
+			pending.put(file.getAbsoluteFile(), source);
+			if (!scheduled) {
+				scheduled = true;
+				executor().schedule(new Runnable() {
+					public void run() {
+						synchronized (pending) {
+							scheduled = false;
+						}
+						flushAll();
+					}
+				}, DELAY, TimeUnit.MILLISECONDS);
+			}
+		}
+	}
+
+	/** Write the file now if it has a pending change. */
+	public static void flush(File file) throws IOException {
+		synchronized (writeLock) {
+			Source source;
+			synchronized (pending) {
+				source = pending.remove(file.getAbsoluteFile());
+			}
+			if (source != null) {
+				write(file, source.snapshot());
+			}
+		}
+	}
+
+	/** Write every pending file; failures are logged. */
+	public static void flushAll() {
+		List<File> files;
+		synchronized (pending) {
+			files = new ArrayList<File>(pending.keySet());
+		}
+		for (File file : files) {
+			try {
+				flush(file);
+			} catch (IOException e) {
+				log.error("Could not save settings to " + file, e);
+			}
+		}
+	}
+
+	/** Replace the file with the data, through a temporary file. */
+	public static void write(File file, byte[] data) throws IOException {
+		File directory = file.getAbsoluteFile().getParentFile();
+		if (directory != null && !directory.exists()) {
+			directory.mkdirs();
+		}
+		File temporary = new File(directory, file.getName() + ".tmp");
+		FileOutputStream out = new FileOutputStream(temporary);
+		try {
+			out.write(data);
+			out.getFD().sync();
+		} finally {
+			out.close();
+		}
+		try {
+			Files.move(temporary.toPath(), file.toPath(),
+					StandardCopyOption.REPLACE_EXISTING,
+					StandardCopyOption.ATOMIC_MOVE);
+		} catch (AtomicMoveNotSupportedException e) {
+			Files.move(temporary.toPath(), file.toPath(),
+					StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+
+	private static ScheduledExecutorService executor() {
+		if (executor == null) {
+			executor = Executors
+					.newSingleThreadScheduledExecutor(new ThreadFactory() {
+						public Thread newThread(Runnable r) {
+							Thread thread = new Thread(r, "Settings writer");
+							thread.setDaemon(true);
+							return thread;
+						}
+					});
+			Runtime.getRuntime().addShutdownHook(
+					new Thread("Settings writer shutdown") {
+						public void run() {
+							flushAll();
+						}
+					});
+		}
+		return executor;
+	}
+
+}
@@ -116,6 +116,15 @@ public class Skin extends GUIFramework {
     private ArrayList<DockableImpl> selectorDockables = new ArrayList<DockableImpl>();
     private DSDataSet<? extends DSBioObject> currentDataSet;
     private boolean tabSwappingMode = false;
+
+    /* the tabs each dataset class shows, per area, valid while neither
+     * the plugins nor the registry acceptors change */
+    private Map<String, Map<Class<?>, List<Component>>> layouts = new HashMap<String, Map<Class<?>, List<Component>>>();
+    private int layoutsAcceptorsVersion = -1;
+    /* one dockable per plugin, reused every time its tab is shown */
+    private Map<Component, DockableImpl> tabDockables = new HashMap<Component, DockableImpl>();
+    /* areas whose port holds exactly their dockables list */
+    private Set<String> managedAreas = new HashSet<String>();
     public static final String APP_SIZE_FILE = "appCoords.txt";
 
     public String getVisualLastSelected(DSDataSet<? extends DSBioObject> dataSet) {
@@ -415,6 +424,8 @@ public class Skin extends GUIFramework {
     public void remove(Component visualPluginComponent) {    
         mainComponentClass.remove(visualPluginComponent);
         visualRegistry.remove(visualPluginComponent);
+        tabDockables.remove(visualPluginComponent);
+        layouts.clear();
     }
 
     public String getVisualArea(Component visualPlugin) {
@@ -435,8 +446,21 @@ public class Skin extends GUIFramework {
         }
         visualRegistry.put(visualPlugin, areaName);
         mainComponentClass.put(visualPlugin, mainPluginClass);
+        layouts.clear();
+        if ( !areaName.equals(GUIFramework.VISUAL_AREA) ) {
+            // the port now holds a wrapper outside the area's dockables
+            managedAreas.remove(areaName);
+        }
     }
 
+    // loaded once for all dockables
+    private static final ImageIcon dock_grey = new ImageIcon(Skin.class.getResource("dock_grey.gif"));
+    private static final ImageIcon dock = new ImageIcon(Skin.class.getResource("dock.gif"));
+    private static final ImageIcon dock_active = new ImageIcon(Skin.class.getResource("dock_active.gif"));
+    private static final ImageIcon undock_grey = new ImageIcon(Skin.class.getResource("undock_grey.gif"));
+    private static final ImageIcon undock = new ImageIcon(Skin.class.getResource("undock.gif"));
+    private static final ImageIcon undock_active = new ImageIcon(Skin.class.getResource("undock_active.gif"));
+
     private class DockableImpl extends DockableAdapter {
 
         private JPanel wrapper = null;
@@ -449,12 +473,6 @@ public class Skin extends GUIFramework {
 
 		private boolean docked = true;
 
-        private ImageIcon dock_grey = new ImageIcon(Skin.class.getResource("dock_grey.gif"));
-        private ImageIcon dock = new ImageIcon(Skin.class.getResource("dock.gif"));
-        private ImageIcon dock_active = new ImageIcon(Skin.class.getResource("dock_active.gif"));
-        private ImageIcon undock_grey = new ImageIcon(Skin.class.getResource("undock_grey.gif"));
-        private ImageIcon undock = new ImageIcon(Skin.class.getResource("undock.gif"));
-        private ImageIcon undock_active = new ImageIcon(Skin.class.getResource("undock_active.gif"));
 
         DockableImpl(Component plugin, String desc) {
             this.plugin = plugin;
@@ -553,6 +571,7 @@ public class Skin extends GUIFramework {
                 docked = true;
                 frame.getContentPane().remove(wrapper);
                 frame.dispose();
+                frame = null;
             }
         }
 
@@ -641,14 +660,17 @@ public class Skin extends GUIFramework {
         }
 
         // Set up Visual Area
+        Class<?> dataSetClass = type == null ? null : type.getClass();
         tabSwappingMode = true;
-        addAppropriateComponents(acceptors, GUIFramework.VISUAL_AREA, visualDockables);
+        boolean changed = showTabs(getLayout(dataSetClass, GUIFramework.VISUAL_AREA), GUIFramework.VISUAL_AREA, visualDockables);
         selectLastComponent(GUIFramework.VISUAL_AREA, visualLastSelected.get(type));
-        addAppropriateComponents(acceptors, GUIFramework.SELECTION_AREA, selectorDockables);
+        changed |= showTabs(getLayout(dataSetClass, GUIFramework.SELECTION_AREA), GUIFramework.SELECTION_AREA, selectorDockables);
         selectLastComponent(GUIFramework.SELECTION_AREA, selectionLastSelected.get(type));
         tabSwappingMode = false;
-        contentPane.revalidate();
-        contentPane.repaint();
+        if (changed) {
+            contentPane.revalidate();
+            contentPane.repaint();
+        }
     }
     
     public void setStatusBarText(String text) {
@@ -656,13 +678,35 @@ public class Skin extends GUIFramework {
     }
 
 	private void addAppropriateComponents(Set<Class<?>> acceptors, String screenRegion, ArrayList<DockableImpl> dockables) {
-        DefaultDockingPort port = (DefaultDockingPort) areas.get(screenRegion);
-        for (DockableImpl dockable : dockables) {
-            dockable.redock(port);
-        }
-        dockables.clear();
-        port.removeAll();
+		showTabs(findTabs(acceptors, screenRegion), screenRegion, dockables);
+	}
+
+	/* the tabs of the area for a dataset class, worked out once per class */
+	private List<Component> getLayout(Class<?> dataSetClass, String screenRegion) {
+		int version = ComponentRegistry.getRegistry().getAcceptorsVersion();
+		if (version != layoutsAcceptorsVersion) {
+			layouts.clear();
+			layoutsAcceptorsVersion = version;
+		}
+		Map<Class<?>, List<Component>> byClass = layouts.get(screenRegion);
+		if (byClass == null) {
+			byClass = new HashMap<Class<?>, List<Component>>();
+			layouts.put(screenRegion, byClass);
+		}
+		List<Component> tabs = byClass.get(dataSetClass);
+		if (tabs == null) {
+			Set<Class<?>> typeAcceptors = ComponentRegistry.getRegistry().getAcceptors(null);
+			if (dataSetClass != null) {
+				typeAcceptors.addAll(ComponentRegistry.getRegistry().getAcceptors(dataSetClass));
+			}
+			tabs = findTabs(typeAcceptors, screenRegion);
+			byClass.put(dataSetClass, tabs);
+		}
+		return tabs;
+	}
 
+	/* the plugins of the area that accept the data, in tab order */
+	private List<Component> findTabs(Set<Class<?>> acceptors, String screenRegion) {
         SortedMap<Integer, Component> tabsToAdd = new TreeMap<Integer, Component>();
         for (Component component : visualRegistry.keySet()) {
             if (visualRegistry.get(component).equals(screenRegion)) {
@@ -678,14 +722,77 @@ public class Skin extends GUIFramework {
                 }
             }
         }
-        for (Integer tabIndex : tabsToAdd.keySet()) {
-            PluginDescriptor desc = ComponentRegistry.getRegistry().getDescriptorForPluginClass(mainComponentClass.get(tabsToAdd.get(tabIndex)));
-            Component component = tabsToAdd.get(tabIndex);
-            DockableImpl dockable = new DockableImpl(component, desc.getLabel());
-            dockables.add(dockable);
+        return new ArrayList<Component>(tabsToAdd.values());
+	}
+
+	/**
+	 * Make the area show the given tabs. Tabs shown already stay where they are; only those that
+	 * are no longer wanted, or that come after the first difference in order, are undocked, and
+	 * only the missing ones are docked. Tabs floating in their own window stay there if wanted.
+	 *
+	 * @return whether the area changed
+	 */
+	private boolean showTabs(List<Component> tabs, String screenRegion, ArrayList<DockableImpl> dockables) {
+        DefaultDockingPort port = (DefaultDockingPort) areas.get(screenRegion);
+        if (!managedAreas.contains(screenRegion)) {
+            // first use, or the port holds something else: start from scratch
+            for (DockableImpl dockable : dockables) {
+                dockable.redock(port);
+            }
+            dockables.clear();
+            port.removeAll();
+            managedAreas.add(screenRegion);
+        }
+
+        Set<Component> wanted = new HashSet<Component>(tabs);
+        boolean changed = false;
+        List<DockableImpl> inPort = new ArrayList<DockableImpl>();
+        for (DockableImpl dockable : dockables) {
+            if (!wanted.contains(dockable.getPlugin())) {
+                dockable.redock(port);
+                port.undock(dockable.getDockable());
+                changed = true;
+            } else if (dockable.docked) {
+                inPort.add(dockable);
+            }
+        }
+        List<Component> toDock = new ArrayList<Component>();
+        for (Component component : tabs) {
+            DockableImpl dockable = tabDockables.get(component);
+            if (dockable == null || dockable.docked) {
+                toDock.add(component);
+            }
+        }
+
+        int same = 0;
+        while (same < inPort.size() && same < toDock.size() && inPort.get(same).getPlugin() == toDock.get(same)) {
+            same++;
+        }
+        for (int i = same; i < inPort.size(); i++) {
+            port.undock(inPort.get(i).getDockable());
+            changed = true;
+        }
+        for (int i = same; i < toDock.size(); i++) {
+            Component component = toDock.get(i);
+            DockableImpl dockable = tabDockables.get(component);
+            if (dockable == null) {
+                PluginDescriptor desc = ComponentRegistry.getRegistry().getDescriptorForPluginClass(mainComponentClass.get(component));
+                dockable = new DockableImpl(component, desc.getLabel());
+                tabDockables.put(component, dockable);
+            }
             port.dock(dockable, DockingPort.CENTER_REGION);
+            changed = true;
+        }
+
+        dockables.clear();
+        for (Component component : tabs) {
+            dockables.add(tabDockables.get(component));
+        }
+        if (changed) {
+            port.reevaluateContainerTree();
+            port.invalidate();
         }
-        port.invalidate();
+        return changed;
     }
 
     private void selectLastComponent(String screenRegion, String selected) {
@@ -40,6 +40,8 @@ import org.geworkbench.bison.datastructure.bioobjects.DSBioObject;
 import org.geworkbench.builtin.projects.DataSetNode;
 import org.geworkbench.builtin.projects.ProjectPanel;
 import org.geworkbench.engine.properties.PropertiesManager;
+import org.geworkbench.util.FilePathnameUtils;
+import org.geworkbench.util.ResponseCache;
 import org.geworkbench.util.ResultSetlUtil;
 import org.geworkbench.util.Util;
 
@@ -57,6 +59,8 @@ public class AdjacencyMatrixFileFormat extends DataSetFileFormat {
 	public static final String INTERACTIONS_SERVLET_URL = "interactions_servlet_url";
 	public static final String PROPERTIES_FILE = "conf/application.properties";
 	public static final String INTERACTIONS_SERVLET_CONNECTION_TIMEOUT = "interactions_servlet_connection_timeout";
+	public static final String INTERACTIONS_RESPONSE_CACHE_HOURS = "interactions_response_cache_hours";
+	public static final String INTERACTIONS_RESPONSE_CACHE_MEGABYTES = "interactions_response_cache_megabytes";
 
 	String[] adjMatrixExtensions = { "txt", "adj", "sif" };
 	String[] representedByList;
@@ -97,7 +101,7 @@ public class AdjacencyMatrixFileFormat extends DataSetFileFormat {
 		this.fileName = file.getName();
 		ArrayList<DataSetNode> dataSetstmp = new ArrayList<DataSetNode>();
 		for (DataSetNode node : ProjectPanel.getInstance().getTopLevelDataSetNodes()) {
-			if ( ((DataSetNode) node).getDataset() instanceof DSMicroarraySet ) {
+			if ( DSMicroarraySet.class.isAssignableFrom(node.getDataSetType()) ) {
 				dataSetstmp.add((DataSetNode) node);
 			}
 		}
@@ -263,10 +267,28 @@ public class AdjacencyMatrixFileFormat extends DataSetFileFormat {
 				iteractionsProp
 						.getProperty(INTERACTIONS_SERVLET_CONNECTION_TIMEOUT));
 		ResultSetlUtil.setTimeout(timeout);
+		if (ResultSetlUtil.getResponseCache() == null) {
+			installResponseCache(iteractionsProp);
+		}
 
 		return urlStr;
 	}
 
+	/* answer repeated queries from responses kept under the temporary files directory */
+	private static void installResponseCache(Properties prop) {
+		long hours = Long.parseLong(prop.getProperty(
+				INTERACTIONS_RESPONSE_CACHE_HOURS, "24").trim());
+		long megabytes = Long.parseLong(prop.getProperty(
+				INTERACTIONS_RESPONSE_CACHE_MEGABYTES, "64").trim());
+		if (megabytes <= 0) {
+			return;
+		}
+		File directory = new File(FilePathnameUtils
+				.getTemporaryFilesDirectoryPath(), "responses");
+		ResultSetlUtil.setResponseCache(new ResponseCache(directory,
+				hours * 60 * 60 * 1000, megabytes * 1024 * 1024));
+	}
+
 	class AdjacencyMatrixFileFilter extends FileFilter {
 		public String getDescription() {
 			return getFormatName();
@@ -5,9 +5,9 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileReader;
 import java.io.IOException;
-import java.io.InputStreamReader;
 import java.io.InterruptedIOException;
-import java.util.StringTokenizer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
 
 import javax.swing.ProgressMonitorInputStream;
 import javax.swing.filechooser.FileFilter;
@@ -18,9 +18,9 @@ import org.geworkbench.bison.datastructure.biocollections.DSDataSet;
 import org.geworkbench.bison.datastructure.bioobjects.DSBioObject;
 import org.geworkbench.bison.parsers.resources.EdgeListResource;
 import org.geworkbench.bison.parsers.resources.Resource;
-import org.geworkbench.util.pathwaydecoder.mutualinformation.Edge;
 import org.geworkbench.util.pathwaydecoder.mutualinformation.EdgeList;
 import org.geworkbench.util.pathwaydecoder.mutualinformation.EdgeListDataSet;
+import org.geworkbench.util.pathwaydecoder.mutualinformation.EdgeListReader;
 
 /**
  * 
@@ -139,92 +139,29 @@ public class EdgeListFileFormat extends DataSetFileFormat {
 	}
 
 	private EdgeList parseEdgeListDataFile(File file)
-			throws InputFileFormatException, InterruptedIOException{
-		EdgeList el = new EdgeList();
-		BufferedReader reader = null;
-		ProgressMonitorInputStream progressIn = null;
-		try {
-			FileInputStream fileIn = new FileInputStream(file);
-			progressIn = new ProgressMonitorInputStream(
-					null, "Scanning File", fileIn);
-			reader = new BufferedReader(new InputStreamReader(progressIn));
-
-			String line = null;
-			StringTokenizer st = null;
-			while ((line = reader.readLine()) != null) {
-				if (!line.trim().equals("") && !this.isComment(line)) {
-					st = new StringTokenizer(line);
-					int numTokens = st.countTokens();
-					if (numTokens == 2) {
-						el.addEdge(new Edge(st.nextToken(), st.nextToken()));
-					}
-				}
-			}
-		} catch (java.io.InterruptedIOException ie) {
-			if ( progressIn.getProgressMonitor().isCanceled())
-			{			    
-				throw ie;				 
-			}			 
-			else
-			   ie.printStackTrace();
-		} catch (IOException e) {
-			log.debug("Problems reading file: " + file.getName(), e);
-			throw new InputFileFormatException("Cannot read Net Boost file: "
-					+ file.getName());
-		} catch (Exception e) {
-			log.debug("Problems parsing file: " + file.getName(), e);
-			throw new InputFileFormatException("Cannot parse Net Boost file: "
-					+ file.getName());
-		} finally {
-			try {
-				reader.close();
-			} catch (IOException e) {
-				e.printStackTrace();
-			}
-		}
-		return el;
+			throws InputFileFormatException, InterruptedIOException {
+		return parse(file, false);
 	}
 
 	private EdgeList parseAdjacencyMatrixDataFile(File file)
 			throws InputFileFormatException, InterruptedIOException {
+		return parse(file, true);
+	}
+
+	private EdgeList parse(File file, boolean adjacency)
+			throws InputFileFormatException, InterruptedIOException {
 		EdgeList el = new EdgeList();
-		BufferedReader reader = null;
+		ReadableByteChannel channel = null;
 		ProgressMonitorInputStream progressIn = null;
 		try {
 			FileInputStream fileIn = new FileInputStream(file);
 			progressIn = new ProgressMonitorInputStream(
 					null, "Scanning File", fileIn);
-			reader = new BufferedReader(new InputStreamReader(progressIn));
-
-			String line = null;
-			StringTokenizer st = null;
-			while ((line = reader.readLine()) != null) {
-				if (!line.trim().equals("") && !this.isComment(line)) {
-					st = new StringTokenizer(line);
-					int numTokens = st.countTokens();
-					if (numTokens >= 3) {
-						String gene1ID = st.nextToken().trim();
-						String delim = this.getDelimiter(gene1ID);
-						if (!delim.trim().equals("")) {
-							gene1ID = gene1ID
-									.substring(gene1ID.indexOf(delim) + 1);
-						}
-						while (st.hasMoreTokens()) {
-							String gene2ID = st.nextToken().trim();
-							delim = this.getDelimiter(gene2ID);
-							if (!delim.trim().equals("")) {
-								gene2ID = gene2ID.substring(gene2ID
-										.indexOf(delim) + 1);
-							}
-							el.addEdge(gene1ID, gene2ID);
-							if (st.hasMoreTokens()) { // skipping interaction
-														// strength
-								st.nextToken();
-							}
-						}
-					}
-				}
-			}
+			channel = Channels.newChannel(progressIn);
+			EdgeListReader reader = new EdgeListReader(COMMENTS,
+					GENE_NAME_GENE_ID_DELIMITER);
+			el = adjacency ? reader.readAdjacencyMatrix(channel) : reader
+					.readEdgeList(channel);
 		} catch (java.io.InterruptedIOException ie) {
 			if ( progressIn.getProgressMonitor().isCanceled())
 			{			    
@@ -242,7 +179,9 @@ public class EdgeListFileFormat extends DataSetFileFormat {
 					+ file.getName());
 		} finally {
 			try {
-				reader.close();
+				if (channel != null) {
+					channel.close();
+				}
 			} catch (IOException e) {
 				e.printStackTrace();
 			}
@@ -250,29 +189,6 @@ public class EdgeListFileFormat extends DataSetFileFormat {
 		return el;
 	}
 
-	private boolean isComment(String line) {
-		boolean result = false;
-		for (String comment : COMMENTS) {
-			if (line.trim().startsWith(comment)) {
-				result = true;
-				break;
-			}
-		}
-		return result;
-	}
-
-	private String getDelimiter(String token) {
-		String result = "";
-		for (String delim : GENE_NAME_GENE_ID_DELIMITER) {
-			int index = token.trim().indexOf(delim);
-			if ((index >= 0) && (index < token.length())) {
-				result = delim;
-				break;
-			}
-		}
-		return result;
-	}
-
 	private boolean isEdgeListFile(File file) {
 		boolean result = false;
 		for (String ext : EDGE_LIST_FILE_EXTENSIONS) {
@@ -98,7 +98,7 @@ public class PatternFileFormat extends DataSetFileFormat {
 			// attached to
 			ArrayList<DataSetNode> dataSetstmp = new ArrayList<DataSetNode>();
 			for (DataSetNode node : ProjectPanel.getInstance().getTopLevelDataSetNodes()) {
-				if ( ((DataSetNode)node).getDataset() instanceof DSSequenceSet ) {
+				if ( DSSequenceSet.class.isAssignableFrom(node.getDataSetType()) ) {
 					dataSetstmp.add((DataSetNode) node);
 				}
 			}
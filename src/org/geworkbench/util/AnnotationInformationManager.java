@@ -57,6 +57,12 @@ public class AnnotationInformationManager {
 		infoMap.put(dataset, new Info(annotationType));
 	}
 
+	/** @return null if the dataset has no annotation */
+	public AnnotationType getAnnotationType(DSMicroarraySet dataset) {
+		Info info = infoMap.get(dataset);
+		return info == null ? null : info.annotationType;
+	}
+
 	public boolean is3Prime(DSMicroarraySet dataset) {
 		Info info = infoMap.get(dataset);
 		if (info != null && info.annotationType == AnnotationType.AFFYMETRIX_3_EXPRESSION)
@@ -0,0 +1,295 @@
+package org.geworkbench.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.nio.charset.Charset;
+
+/**
+ * Reads "|"-delimited lines from a byte stream into a reusable buffer and
+ * records where each field starts and ends, so a row costs no String until
+ * a field is asked for as one. Numbers are parsed straight from the bytes.
+ *
+ * Lines end at "\n", "\r" or "\r\n" as with {@link java.io.BufferedReader},
+ * and fields are decoded with the platform charset as an InputStreamReader
+ * would; the delimiters are ASCII, so they cannot occur inside a multi-byte
+ * character of an ASCII-compatible charset.
+ *
+ * @version $Id$
+ */
+final class DelimitedRowDecoder {
+
+	static final Charset CHARSET = Charset.defaultCharset();
+
+	private static final double[] POWERS_OF_TEN = new double[23];
+	static {
+		POWERS_OF_TEN[0] = 1;
+		for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+			POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+		}
+	}
+
+	private final InputStream in;
+	private byte[] buffer = new byte[1 << 16];
+	private int position;
+	private int limit;
+	private boolean eof;
+	private boolean skipLineFeed;
+
+	private int lineStart;
+	private int lineEnd;
+	/* start and end of field i at 2i and 2i + 1 */
+	private int[] fields = new int[64];
+	private int fieldCount;
+
+	DelimitedRowDecoder(InputStream in) {
+		this.in = in;
+	}
+
+	/**
+	 * Advance to the next line.
+	 *
+	 * @return false at the end of the stream or at a blank line
+	 */
+	boolean nextLine() throws IOException {
+		int scan = position;
+		while (true) {
+			if (skipLineFeed && position < limit) {
+				if (buffer[position] == '\n') {
+					position++;
+				}
+				skipLineFeed = false;
+				scan = position;
+			}
+			int end = -1;
+			for (int i = scan; i < limit; i++) {
+				byte b = buffer[i];
+				if (b == '\n' || b == '\r') {
+					end = i;
+					break;
+				}
+			}
+			if (end >= 0) {
+				lineStart = position;
+				lineEnd = end;
+				position = end + 1;
+				skipLineFeed = buffer[end] == '\r';
+				break;
+			}
+			if (eof) {
+				if (position == limit) {
+					fieldCount = 0;
+					return false;
+				}
+				lineStart = position;
+				lineEnd = limit;
+				position = limit;
+				break;
+			}
+			scan = limit - position;
+			fill();
+			scan += position;
+		}
+		split();
+		return !isBlank(lineStart, lineEnd);
+	}
+
+	/* keep the unread bytes, make room and read more */
+	private void fill() throws IOException {
+		if (position > 0) {
+			System.arraycopy(buffer, position, buffer, 0, limit - position);
+			limit -= position;
+			position = 0;
+		}
+		if (limit == buffer.length) {
+			byte[] grown = new byte[buffer.length * 2];
+			System.arraycopy(buffer, 0, grown, 0, limit);
+			buffer = grown;
+		}
+		int n = in.read(buffer, limit, buffer.length - limit);
+		if (n < 0) {
+			eof = true;
+		} else {
+			limit += n;
+		}
+	}
+
+	private void split() {
+		fieldCount = 0;
+		int start = lineStart;
+		for (int i = lineStart; i <= lineEnd; i++) {
+			if (i == lineEnd || buffer[i] == '|') {
+				if (2 * fieldCount + 2 > fields.length) {
+					int[] grown = new int[fields.length * 2];
+					System.arraycopy(fields, 0, grown, 0, fields.length);
+					fields = grown;
+				}
+				fields[2 * fieldCount] = start;
+				fields[2 * fieldCount + 1] = i;
+				fieldCount++;
+				start = i + 1;
+			}
+		}
+	}
+
+	int getFieldCount() {
+		return fieldCount;
+	}
+
+	/** The raw buffer; valid until the next call to {@link #nextLine()}. */
+	byte[] getBuffer() {
+		return buffer;
+	}
+
+	int getLineStart() {
+		return lineStart;
+	}
+
+	int getLineEnd() {
+		return lineEnd;
+	}
+
+	/* the field offsets of the line, moved by shift, into target at position */
+	void copyOffsets(int[] target, int position, int shift) {
+		for (int i = 0; i < 2 * fieldCount; i++) {
+			target[position + i] = fields[i] + shift;
+		}
+	}
+
+	int getStart(int field) {
+		check(field);
+		return fields[2 * field];
+	}
+
+	int getEnd(int field) {
+		check(field);
+		return fields[2 * field + 1];
+	}
+
+	String getString(int field) {
+		int start = getStart(field);
+		return new String(buffer, start, fields[2 * field + 1] - start, CHARSET);
+	}
+
+	double getDouble(int field) {
+		return parseDouble(buffer, getStart(field), fields[2 * field + 1]);
+	}
+
+	BigDecimal getBigDecimal(int field) {
+		return parseBigDecimal(buffer, getStart(field), fields[2 * field + 1]);
+	}
+
+	private void check(int field) {
+		if (field < 0 || field >= fieldCount) {
+			throw new ArrayIndexOutOfBoundsException(field);
+		}
+	}
+
+	private boolean isBlank(int from, int to) {
+		for (int i = from; i < to; i++) {
+			if ((buffer[i] & 0xff) > ' ') {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Same as <code>Double.valueOf(s.trim())</code> with "null" read as 0,
+	 * where s is the field decoded as a String. Plain decimals of up to 15
+	 * digits are converted directly: both the digits and the power of ten
+	 * are exact doubles, so one division rounds correctly. Anything else
+	 * goes through {@link Double#parseDouble(String)}.
+	 */
+	static double parseDouble(byte[] b, int from, int to) {
+		while (from < to && (b[from] & 0xff) <= ' ') {
+			from++;
+		}
+		while (to > from && (b[to - 1] & 0xff) <= ' ') {
+			to--;
+		}
+		if (isNull(b, from, to)) {
+			return 0;
+		}
+		int i = from;
+		boolean negative = false;
+		if (i < to && (b[i] == '-' || b[i] == '+')) {
+			negative = b[i] == '-';
+			i++;
+		}
+		long mantissa = 0;
+		int digits = 0;
+		int scale = -1;
+		for (; i < to; i++) {
+			byte c = b[i];
+			if (c >= '0' && c <= '9') {
+				mantissa = mantissa * 10 + (c - '0');
+				digits++;
+				if (scale >= 0) {
+					scale++;
+				}
+			} else if (c == '.' && scale < 0) {
+				scale = 0;
+			} else {
+				break;
+			}
+		}
+		if (i == to && digits > 0 && digits <= 15 && scale < POWERS_OF_TEN.length) {
+			double value = scale > 0 ? mantissa / POWERS_OF_TEN[scale]
+					: (double) mantissa;
+			return negative ? -value : value;
+		}
+		return Double.parseDouble(new String(b, from, to - from, CHARSET));
+	}
+
+	/**
+	 * Same as <code>new BigDecimal(s.trim())</code> with "null" read as
+	 * {@link ResultSetlUtil#NULL_BIGDECIMAL}; plain decimals of up to 18
+	 * digits are built from their unscaled value.
+	 */
+	static BigDecimal parseBigDecimal(byte[] b, int from, int to) {
+		while (from < to && (b[from] & 0xff) <= ' ') {
+			from++;
+		}
+		while (to > from && (b[to - 1] & 0xff) <= ' ') {
+			to--;
+		}
+		if (isNull(b, from, to)) {
+			return ResultSetlUtil.NULL_BIGDECIMAL;
+		}
+		int i = from;
+		boolean negative = false;
+		if (i < to && (b[i] == '-' || b[i] == '+')) {
+			negative = b[i] == '-';
+			i++;
+		}
+		long unscaled = 0;
+		int digits = 0;
+		int scale = -1;
+		for (; i < to; i++) {
+			byte c = b[i];
+			if (c >= '0' && c <= '9') {
+				unscaled = unscaled * 10 + (c - '0');
+				digits++;
+				if (scale >= 0) {
+					scale++;
+				}
+			} else if (c == '.' && scale < 0) {
+				scale = 0;
+			} else {
+				break;
+			}
+		}
+		if (i == to && digits > 0 && digits <= 18) {
+			return BigDecimal.valueOf(negative ? -unscaled : unscaled,
+					Math.max(scale, 0));
+		}
+		return new BigDecimal(new String(b, from, to - from, CHARSET));
+	}
+
+	private static boolean isNull(byte[] b, int from, int to) {
+		return to - from == 4 && b[from] == 'n' && b[from + 1] == 'u'
+				&& b[from + 2] == 'l' && b[from + 3] == 'l';
+	}
+
+}
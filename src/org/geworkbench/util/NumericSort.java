@@ -0,0 +1,404 @@
+package org.geworkbench.util;
+
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Sorting, ranking and selection over primitive arrays.
+ *
+ * All sorts are stable merge sorts that carry the keys along with the
+ * indices, so sorted or duplicate-heavy input costs no more than random input
+ * and recursion depth is bounded by log(n). NaN is treated as the missing
+ * value; where it ends up is controlled by {@link NaNPolicy}.
+ *
+ * @version $Id$
+ */
+public final class NumericSort {
+
+	/** Where missing (NaN) values go in a sort order. */
+	public enum NaNPolicy {
+		/** NaN indices first, in their original order. */
+		FIRST,
+		/** NaN indices last, in their original order. */
+		LAST,
+		/** NaN indices are left out of the result; their rank is NaN. */
+		OMIT
+	}
+
+	/** How tied values are ranked. Ranks start at 1. */
+	public enum TieMethod {
+		/** Mean of the positions the tied values occupy. */
+		AVERAGE,
+		/** Lowest position of the tied group. */
+		MIN,
+		/** Highest position of the tied group. */
+		MAX,
+		/** Consecutive group number, without gaps. */
+		DENSE,
+		/** Position in the stable sort order; ties are broken by index. */
+		ORDINAL
+	}
+
+	/** Below this size a (sub)range is sorted on the calling thread. */
+	static final int PARALLEL_THRESHOLD = 1 << 15;
+
+	private static final int INSERTION_THRESHOLD = 32;
+
+	private NumericSort() {
+	}
+
+	public static int[] argsort(double[] a) {
+		return argsort(a, true, NaNPolicy.LAST, false);
+	}
+
+	/**
+	 * Stable argsort: returns the indices of <code>a</code> in sorted order.
+	 * Equal values keep their original relative order in both directions.
+	 */
+	public static int[] argsort(double[] a, boolean ascending,
+			NaNPolicy nanPolicy) {
+		return argsort(a, ascending, nanPolicy, false);
+	}
+
+	public static int[] argsort(float[] a, boolean ascending,
+			NaNPolicy nanPolicy) {
+		return argsort(toDouble(a), ascending, nanPolicy, false);
+	}
+
+	/** Same result as {@link #argsort(double[], boolean, NaNPolicy)}. */
+	public static int[] parallelArgsort(double[] a, boolean ascending,
+			NaNPolicy nanPolicy) {
+		return argsort(a, ascending, nanPolicy, true);
+	}
+
+	public static int[] parallelArgsort(float[] a, boolean ascending,
+			NaNPolicy nanPolicy) {
+		return argsort(toDouble(a), ascending, nanPolicy, true);
+	}
+
+	public static double[] rank(double[] a, TieMethod ties, NaNPolicy nanPolicy) {
+		return rank(a, ties, nanPolicy, false);
+	}
+
+	public static double[] rank(float[] a, TieMethod ties, NaNPolicy nanPolicy) {
+		return rank(toDouble(a), ties, nanPolicy, false);
+	}
+
+	public static double[] parallelRank(double[] a, TieMethod ties,
+			NaNPolicy nanPolicy) {
+		return rank(a, ties, nanPolicy, true);
+	}
+
+	/**
+	 * Indices of the <code>k</code> largest (or smallest) values, best first.
+	 * Ties are broken by lower index; NaN values are never selected. Runs in
+	 * O(n log k) without sorting the whole array.
+	 */
+	public static int[] topK(double[] a, int k, boolean largest) {
+		if (k <= 0) {
+			return new int[0];
+		}
+		int[] heap = new int[k];
+		int size = 0;
+		for (int i = 0; i < a.length; i++) {
+			if (Double.isNaN(a[i])) {
+				continue;
+			}
+			if (size < k) {
+				heap[size] = i;
+				siftUp(a, largest, heap, size);
+				size++;
+			} else if (better(a, largest, i, heap[0])) {
+				heap[0] = i;
+				siftDown(a, largest, heap, 0, size);
+			}
+		}
+		// pop the worst element to the back until the heap is empty
+		for (int end = size - 1; end > 0; end--) {
+			int worst = heap[0];
+			heap[0] = heap[end];
+			heap[end] = worst;
+			siftDown(a, largest, heap, 0, end);
+		}
+		if (size == k) {
+			return heap;
+		}
+		int[] result = new int[size];
+		System.arraycopy(heap, 0, result, 0, size);
+		return result;
+	}
+
+	public static int[] topK(float[] a, int k, boolean largest) {
+		return topK(toDouble(a), k, largest);
+	}
+
+	private static int[] argsort(double[] a, boolean ascending,
+			NaNPolicy nanPolicy, boolean parallel) {
+		int n = a.length;
+		int nanCount = 0;
+		for (int i = 0; i < n; i++) {
+			if (Double.isNaN(a[i])) {
+				nanCount++;
+			}
+		}
+		int m = n - nanCount;
+		double[] keys = new double[m];
+		int[] index = new int[m];
+		int[] nans = new int[nanCount];
+		for (int i = 0, k = 0, j = 0; i < n; i++) {
+			if (Double.isNaN(a[i])) {
+				nans[j++] = i;
+			} else {
+				// negation is exact, so a stable ascending sort of the negated
+				// keys is a stable descending sort of the values
+				keys[k] = ascending ? a[i] : -a[i];
+				index[k++] = i;
+			}
+		}
+
+		sort(keys, index, parallel);
+
+		if (nanPolicy == NaNPolicy.OMIT || nanCount == 0) {
+			return index;
+		}
+		int[] result = new int[n];
+		if (nanPolicy == NaNPolicy.FIRST) {
+			System.arraycopy(nans, 0, result, 0, nanCount);
+			System.arraycopy(index, 0, result, nanCount, m);
+		} else {
+			System.arraycopy(index, 0, result, 0, m);
+			System.arraycopy(nans, 0, result, m, nanCount);
+		}
+		return result;
+	}
+
+	private static double[] rank(double[] a, TieMethod ties,
+			NaNPolicy nanPolicy, boolean parallel) {
+		int[] order = argsort(a, true, nanPolicy, parallel);
+		double[] ranks = new double[a.length];
+		if (nanPolicy == NaNPolicy.OMIT) {
+			for (int i = 0; i < a.length; i++) {
+				if (Double.isNaN(a[i])) {
+					ranks[i] = Double.NaN;
+				}
+			}
+		}
+
+		int dense = 0;
+		int start = 0;
+		while (start < order.length) {
+			int end = start + 1;
+			double v = a[order[start]];
+			while (end < order.length && same(v, a[order[end]])) {
+				end++;
+			}
+			dense++;
+			for (int p = start; p < end; p++) {
+				double r;
+				switch (ties) {
+				case MIN:
+					r = start + 1;
+					break;
+				case MAX:
+					r = end;
+					break;
+				case DENSE:
+					r = dense;
+					break;
+				case ORDINAL:
+					r = p + 1;
+					break;
+				default:
+					r = (start + 1 + end) / 2.0;
+				}
+				ranks[order[p]] = r;
+			}
+			start = end;
+		}
+		return ranks;
+	}
+
+	private static boolean same(double x, double y) {
+		return x == y || (Double.isNaN(x) && Double.isNaN(y));
+	}
+
+	static void sort(double[] keys, int[] index, boolean parallel) {
+		int n = keys.length;
+		double[] keyBuffer = new double[n];
+		int[] indexBuffer = new int[n];
+		if (parallel && n > PARALLEL_THRESHOLD) {
+			SortTask task = new SortTask(keys, index, keyBuffer, indexBuffer,
+					0, n);
+			if (ForkJoinTask.inForkJoinPool()) {
+				task.invoke();
+			} else {
+				Parallel.pool().invoke(task);
+			}
+		} else {
+			mergeSort(keys, index, 0, n, keyBuffer, indexBuffer);
+		}
+	}
+
+	private static final class SortTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private final double[] keys;
+		private final int[] index;
+		private final double[] keyBuffer;
+		private final int[] indexBuffer;
+		private final int from;
+		private final int to;
+
+		SortTask(double[] keys, int[] index, double[] keyBuffer,
+				int[] indexBuffer, int from, int to) {
+			this.keys = keys;
+			this.index = index;
+			this.keyBuffer = keyBuffer;
+			this.indexBuffer = indexBuffer;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from <= PARALLEL_THRESHOLD) {
+				mergeSort(keys, index, from, to, keyBuffer, indexBuffer);
+				return;
+			}
+			int mid = (from + to) >>> 1;
+			invokeAll(new SortTask(keys, index, keyBuffer, indexBuffer, from,
+					mid), new SortTask(keys, index, keyBuffer, indexBuffer, mid,
+					to));
+			merge(keys, index, from, mid, to, keyBuffer, indexBuffer);
+			System.arraycopy(keyBuffer, from, keys, from, to - from);
+			System.arraycopy(indexBuffer, from, index, from, to - from);
+		}
+	}
+
+	/* bottom-up merge sort of [from, to); result ends up in keys/index */
+	private static void mergeSort(double[] keys, int[] index, int from, int to,
+			double[] keyBuffer, int[] indexBuffer) {
+		for (int lo = from; lo < to; lo += INSERTION_THRESHOLD) {
+			insertionSort(keys, index, lo, Math.min(lo + INSERTION_THRESHOLD, to));
+		}
+		double[] ks = keys;
+		int[] is = index;
+		double[] kd = keyBuffer;
+		int[] id = indexBuffer;
+		for (int width = INSERTION_THRESHOLD; width < to - from; width <<= 1) {
+			for (int lo = from; lo < to; lo += width << 1) {
+				int mid = Math.min(lo + width, to);
+				int hi = Math.min(lo + (width << 1), to);
+				merge(ks, is, lo, mid, hi, kd, id);
+			}
+			double[] kt = ks;
+			ks = kd;
+			kd = kt;
+			int[] it = is;
+			is = id;
+			id = it;
+		}
+		if (ks != keys) {
+			System.arraycopy(ks, from, keys, from, to - from);
+			System.arraycopy(is, from, index, from, to - from);
+		}
+	}
+
+	private static void insertionSort(double[] keys, int[] index, int from,
+			int to) {
+		for (int i = from + 1; i < to; i++) {
+			double k = keys[i];
+			int x = index[i];
+			int j = i - 1;
+			while (j >= from && keys[j] > k) {
+				keys[j + 1] = keys[j];
+				index[j + 1] = index[j];
+				j--;
+			}
+			keys[j + 1] = k;
+			index[j + 1] = x;
+		}
+	}
+
+	private static void merge(double[] ks, int[] is, int lo, int mid, int hi,
+			double[] kd, int[] id) {
+		if (mid >= hi || ks[mid - 1] <= ks[mid]) {
+			// already in order (common for sorted input)
+			System.arraycopy(ks, lo, kd, lo, hi - lo);
+			System.arraycopy(is, lo, id, lo, hi - lo);
+			return;
+		}
+		int i = lo;
+		int j = mid;
+		int o = lo;
+		while (i < mid && j < hi) {
+			if (ks[j] < ks[i]) {
+				kd[o] = ks[j];
+				id[o++] = is[j++];
+			} else {
+				kd[o] = ks[i];
+				id[o++] = is[i++];
+			}
+		}
+		while (i < mid) {
+			kd[o] = ks[i];
+			id[o++] = is[i++];
+		}
+		while (j < hi) {
+			kd[o] = ks[j];
+			id[o++] = is[j++];
+		}
+	}
+
+	/* true if a[i] should be ranked ahead of a[j] */
+	private static boolean better(double[] a, boolean largest, int i, int j) {
+		if (a[i] == a[j]) {
+			return i < j;
+		}
+		return largest ? a[i] > a[j] : a[i] < a[j];
+	}
+
+	/* the heap keeps the worst kept element at the root */
+	private static void siftUp(double[] a, boolean largest, int[] heap, int pos) {
+		int x = heap[pos];
+		while (pos > 0) {
+			int parent = (pos - 1) >>> 1;
+			if (!better(a, largest, heap[parent], x)) {
+				break;
+			}
+			heap[pos] = heap[parent];
+			pos = parent;
+		}
+		heap[pos] = x;
+	}
+
+	private static void siftDown(double[] a, boolean largest, int[] heap,
+			int pos, int size) {
+		int x = heap[pos];
+		while (true) {
+			int child = 2 * pos + 1;
+			if (child >= size) {
+				break;
+			}
+			if (child + 1 < size
+					&& better(a, largest, heap[child], heap[child + 1])) {
+				child++;
+			}
+			if (!better(a, largest, x, heap[child])) {
+				break;
+			}
+			heap[pos] = heap[child];
+			pos = child;
+		}
+		heap[pos] = x;
+	}
+
+	private static double[] toDouble(float[] a) {
+		double[] d = new double[a.length];
+		for (int i = 0; i < a.length; i++) {
+			d[i] = a[i];
+		}
+		return d;
+	}
+
+}
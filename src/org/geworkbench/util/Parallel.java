@@ -0,0 +1,89 @@
+package org.geworkbench.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Shared fork-join pool and block-parallel loop helper for the numeric
+ * kernels. All kernels run on the same pool so that nested parallel calls do
+ * not oversubscribe the machine.
+ *
+ * @version $Id$
+ */
+public final class Parallel {
+
+	/** Work on one contiguous block <code>[from, to)</code> of an index range. */
+	public interface RangeTask {
+		void run(int from, int to);
+	}
+
+	private static volatile ForkJoinPool pool = null;
+
+	private Parallel() {
+	}
+
+	public static ForkJoinPool pool() {
+		if (pool == null) {
+			synchronized (Parallel.class) {
+				if (pool == null) {
+					pool = new ForkJoinPool(Runtime.getRuntime()
+							.availableProcessors());
+				}
+			}
+		}
+		return pool;
+	}
+
+	public static int getParallelism() {
+		return pool().getParallelism();
+	}
+
+	/**
+	 * Run <code>task</code> over <code>[from, to)</code> split into blocks of
+	 * at least <code>grain</code> indices. Small ranges run on the calling
+	 * thread.
+	 */
+	public static void forRange(final int from, final int to, final int grain,
+			final RangeTask task) {
+		int n = to - from;
+		if (n <= 0) {
+			return;
+		}
+		int blocks = Math.min(getParallelism() * 4,
+				(n + Math.max(1, grain) - 1) / Math.max(1, grain));
+		if (blocks <= 1) {
+			task.run(from, to);
+			return;
+		}
+		final int blockSize = (n + blocks - 1) / blocks;
+		final List<RecursiveAction> actions = new ArrayList<RecursiveAction>();
+		for (int lo = from; lo < to; lo += blockSize) {
+			final int start = lo;
+			final int end = Math.min(to, lo + blockSize);
+			actions.add(new RecursiveAction() {
+				private static final long serialVersionUID = 1L;
+
+				@Override
+				protected void compute() {
+					task.run(start, end);
+				}
+			});
+		}
+		if (ForkJoinTask.inForkJoinPool()) {
+			ForkJoinTask.invokeAll(actions);
+		} else {
+			pool().invoke(new RecursiveAction() {
+				private static final long serialVersionUID = 1L;
+
+				@Override
+				protected void compute() {
+					invokeAll(actions);
+				}
+			});
+		}
+	}
+
+}
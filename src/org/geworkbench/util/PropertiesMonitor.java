@@ -10,18 +10,17 @@
 package org.geworkbench.util;
 
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.util.Properties;
 import java.util.Set;
 import java.util.StringTokenizer;
 import java.util.TreeSet;
 
+import org.geworkbench.engine.properties.SettingsStore;
+
 public class PropertiesMonitor {
     public static PropertiesMonitor instance = null;
-    //the properties
-    Properties properties = new Properties();
+    //the properties, cached in memory and written in the background
+    private SettingsStore properties;
     public static final String SOAP_CONFIG_FILE = "soap.ini";
     public static final String SOAP_CONFIG_PATH = FilePathnameUtils.getTemporaryFilesDirectoryPath();
 
@@ -50,14 +49,8 @@ public class PropertiesMonitor {
      * Reads the initialization file into a properties object.
      */
     protected void readProperties() {
-        File initFile = null;
+        properties = SettingsStore.forFile(new File(absolutePath()), false);
         try {
-            initFile = new File(absolutePath());
-            if (initFile.canRead()) {
-                FileInputStream input = new FileInputStream(initFile);
-                properties.load(input);
-            } else {
-            }
             validate();
         } catch (IOException ex1) {
             System.out.println("PropertiesMonitor::::::readProperties(): " + ex1.toString());
@@ -72,12 +65,12 @@ public class PropertiesMonitor {
     protected void validate() throws IOException {
         String tmp = null;
 
-        tmp = properties.getProperty("host");
+        tmp = getProperty("host");
         if (tmp == null) {
-            properties.setProperty("host", "localhost");
+            set("host", "localhost");
         }
 
-        tmp = properties.getProperty("port");
+        tmp = getProperty("port");
         if (tmp == null) {
             set("port", "8001");
         } else {
@@ -92,7 +85,7 @@ public class PropertiesMonitor {
             }
         }
 
-        tmp = properties.getProperty("userName");
+        tmp = getProperty("userName");
         if (tmp == null || tmp.equals("")) {
             try {
                 set("userName", System.getProperties().getProperty("user.name"));
@@ -101,19 +94,19 @@ public class PropertiesMonitor {
             }
         }
 
-        tmp = properties.getProperty("defPath");
+        tmp = getProperty("defPath");
         if (tmp == null) {
             set("defPath", System.getProperties().getProperty("user.home"));
         }
     }
 
     /**
-     * Write to a SOAP_CONFIG_FILE file with the current set properties.
+     * Write to a SOAP_CONFIG_FILE file with the current set properties. Changes are written
+     * shortly after they are made anyway; this writes them now.
      */
     public synchronized void writeProperties() {
         try {
-            FileOutputStream output = new FileOutputStream(new File(absolutePath()));
-            properties.store(output, "Properties");
+            properties.flush();
         } catch (IOException ex2) {
             /** @todo the exception should propegate */
             System.out.println("Error: " + ex2);
@@ -131,7 +124,7 @@ public class PropertiesMonitor {
     }
 
     public synchronized String getHostSelected() {
-        return properties.getProperty("lastHost");
+        return getProperty("lastHost");
     }
 
     public synchronized void addHost(String ht) {
@@ -140,7 +133,7 @@ public class PropertiesMonitor {
             Set<String> hostSet = getHosts();
             if (hostSet.add(ht)) {
                 //we did not see this host before, add it
-                String hostList = properties.getProperty("host");
+                String hostList = getProperty("host");
                 hostList += " " + ht;
                 set("host", hostList);
             }
@@ -154,7 +147,7 @@ public class PropertiesMonitor {
      */
     public synchronized Set<String> getHosts() {
         //note: this is a bit expensive, but really the list of hosts is minimal
-        String hostList = properties.getProperty("host");
+        String hostList = getProperty("host");
         StringTokenizer st = new StringTokenizer(hostList);
         Set<String> hostSet = new TreeSet<String>();
         while (st.hasMoreTokens()) {
@@ -174,7 +167,7 @@ public class PropertiesMonitor {
     }
 
     public String getPort() {
-        return properties.getProperty("port");
+        return getProperty("port");
     }
 
     public void setUserName(String user) {
@@ -182,7 +175,7 @@ public class PropertiesMonitor {
     }
 
     public String getUserName() {
-        return properties.getProperty("userName");
+        return getProperty("userName");
     }
 
     public void setDefPath(String dPath) {
@@ -190,17 +183,29 @@ public class PropertiesMonitor {
     }
 
     public String getDefPath() {
-        return properties.getProperty("defPath");
+        return getProperty("defPath");
     }
 
     private void set(String prop, String val) {
         if (val != null) {
-            properties.setProperty(prop, val);
-            writeProperties();
+            try {
+                properties.set(prop, val);
+            } catch (IOException ex2) {
+                System.out.println("Error: " + ex2);
+            }
         }
     }
 
+    private String getProperty(String key) {
+        return get(key, null);
+    }
+
     public String get(String key, String defaultValue) {
-        return properties.getProperty(key, defaultValue);
+        try {
+            return properties.get(key, defaultValue);
+        } catch (IOException ex1) {
+            System.out.println("Error: " + ex1);
+            return defaultValue;
+        }
     }
 }
@@ -1,85 +1,39 @@
 package org.geworkbench.util;
 
-import java.util.Vector;
+import org.geworkbench.util.NumericSort.NaNPolicy;
 
 /*
 Copyright @ 1999-2003, The Institute for Genomic Research (TIGR).
 All rights reserved.
 */
 
+/**
+ * Sort that remembers the original index of each element. NaN values sort
+ * first in ascending order (last in descending order).
+ * 
+ * The sorting itself is done by {@link NumericSort}; this class is kept for
+ * its original API. New code should call {@link NumericSort} directly.
+ */
 public class QSort {
 
     private int[] origIndx;
     private float[] sorted;
     private double[] sortedDouble;
-    private int[] NaNIndices;
-    private int[] negInfinityIndices;
     public static final int ASCENDING = 1;
     public static final int DESCENDING = 2;
     private boolean ascending;
 
     public QSort(float[] origA) {
-        float[] copyA = new float[origA.length];
         this.ascending = true;
-        Vector<Integer> NaNIndicesVector = new Vector<Integer>();
-        Vector<Integer> negInfinityIndicesVector = new Vector<Integer>();
-
-        for (int i = 0; i < copyA.length; i++) {
-            copyA[i] = origA[i];
-            if (Float.isNaN(origA[i])) {
-                NaNIndicesVector.add(new Integer(i));
-                copyA[i] = Float.NEGATIVE_INFINITY; // so that NaN's are always first when the array is sorted in ascending order
-            }
-            if (Float.isInfinite(origA[i]) && (origA[i] < 0)) { // in case there are actual negative infinity values in origA
-                negInfinityIndicesVector.add(new Integer(i));
-            }
-        }
-
-
-        NaNIndices = new int[NaNIndicesVector.size()];
-
-        for (int i = 0; i < NaNIndices.length; i++) {
-            NaNIndices[i] = ((Integer) (NaNIndicesVector.get(i))).intValue();
-        }
-
-        negInfinityIndices = new int[negInfinityIndicesVector.size()];
-
-        for (int i = 0; i < negInfinityIndices.length; i++) {
-            negInfinityIndices[i] = ((Integer) (negInfinityIndicesVector.get(i))).intValue();
-        }
-
+        float[] copyA = new float[origA.length];
+        System.arraycopy(origA, 0, copyA, 0, origA.length);
         sort(copyA);
     }
 
     public QSort(double[] origA) {
-        double[] copyA = new double[origA.length];
         this.ascending = true;
-        Vector<Integer> NaNIndicesVector = new Vector<Integer>();
-        Vector<Integer> negInfinityIndicesVector = new Vector<Integer>();
-
-        for (int i = 0; i < copyA.length; i++) {
-            copyA[i] = origA[i];
-            if (Double.isNaN(origA[i])) {
-                NaNIndicesVector.add(new Integer(i));
-                copyA[i] = Double.NEGATIVE_INFINITY; // so that NaN's are always first when the array is sorted in ascending order
-            }
-            if (Double.isInfinite(origA[i]) && (origA[i] < 0)) { // in case there are actual negative infinity values in origA
-                negInfinityIndicesVector.add(new Integer(i));
-            }
-        }
-
-        NaNIndices = new int[NaNIndicesVector.size()];
-
-        for (int i = 0; i < NaNIndices.length; i++) {
-            NaNIndices[i] = ((Integer) (NaNIndicesVector.get(i))).intValue();
-        }
-
-        negInfinityIndices = new int[negInfinityIndicesVector.size()];
-
-        for (int i = 0; i < negInfinityIndices.length; i++) {
-            negInfinityIndices[i] = ((Integer) (negInfinityIndicesVector.get(i))).intValue();
-        }
-
+        double[] copyA = new double[origA.length];
+        System.arraycopy(origA, 0, copyA, 0, origA.length);
         sort(copyA);
     }
 
@@ -101,184 +55,43 @@ public class QSort {
         }
     }
 
+    /** Sort <code>a</code> in place (ascending, NaN first). */
     public void sort(float a[]) {
-
-        origIndx = new int[a.length];
-        for (int i = 0; i <= origIndx.length - 1; i++) {
-            origIndx[i] = i;
-        }
-        quickSort(a, 0, a.length - 1);
-    }
-
-    public void sort(double a[]) {
-
-        origIndx = new int[a.length];
-        for (int i = 0; i <= origIndx.length - 1; i++) {
-            origIndx[i] = i;
-        }
-        quickSort(a, 0, a.length - 1);
-    }
-
-    void quickSort(float a[], int lo0, int hi0) {
-        int lo = lo0;
-        int hi = hi0;
-        float mid;
-
-        if (hi0 > lo0) {
-
-            /* Arbitrarily establishing partition element as the midpoint of
-             * the array.
-             */
-            mid = a[(lo0 + hi0) / 2];
-
-            // loop through the array until indices cross
-            while (lo <= hi) {
-                /* find the first element that is greater than or equal to
-                 * the partition element starting from the left Index.
-                 */
-                while ((lo < hi0) && (a[lo] < mid))
-                    ++lo;
-
-                /* find an element that is smaller than or equal to
-                 * the partition element starting from the right Index.
-                 */
-                while ((hi > lo0) && (a[hi] > mid))
-                    --hi;
-
-                // if the indexes have not crossed, swap
-                if (lo <= hi) {
-                    swap(a, lo, hi);
-                    ++lo;
-                    --hi;
-                }
-            }
-
-            /* If the right index has not reached the left side of array
-             * must now sort the left partition.
-             */
-            if (lo0 < hi)
-                quickSort(a, lo0, hi);
-
-            /* If the left index has not reached the right side of array
-             * must now sort the right partition.
-             */
-            if (lo < hi0)
-                quickSort(a, lo, hi0);
-
+        origIndx = NumericSort.argsort(a, true, NaNPolicy.FIRST);
+        float[] copy = a.clone();
+        for (int i = 0; i < origIndx.length; i++) {
+            a[i] = copy[origIndx[i]];
         }
         sorted = a;
     }
 
-    void quickSort(double a[], int lo0, int hi0) {
-        int lo = lo0;
-        int hi = hi0;
-        double mid;
-
-        if (hi0 > lo0) {
-
-            /* Arbitrarily establishing partition element as the midpoint of
-             * the array.
-             */
-            mid = a[(lo0 + hi0) / 2];
-
-            // loop through the array until indices cross
-            while (lo <= hi) {
-                /* find the first element that is greater than or equal to
-                 * the partition element starting from the left Index.
-                 */
-                while ((lo < hi0) && (a[lo] < mid))
-                    ++lo;
-
-                /* find an element that is smaller than or equal to
-                 * the partition element starting from the right Index.
-                 */
-                while ((hi > lo0) && (a[hi] > mid))
-                    --hi;
-
-                // if the indexes have not crossed, swap
-                if (lo <= hi) {
-                    swap(a, lo, hi);
-                    ++lo;
-                    --hi;
-                }
-            }
-
-            /* If the right index has not reached the left side of array
-             * must now sort the left partition.
-             */
-            if (lo0 < hi)
-                quickSort(a, lo0, hi);
-
-            /* If the left index has not reached the right side of array
-             * must now sort the right partition.
-             */
-            if (lo < hi0)
-                quickSort(a, lo, hi0);
-
+    /** Sort <code>a</code> in place (ascending, NaN first). */
+    public void sort(double a[]) {
+        origIndx = NumericSort.argsort(a, true, NaNPolicy.FIRST);
+        double[] copy = a.clone();
+        for (int i = 0; i < origIndx.length; i++) {
+            a[i] = copy[origIndx[i]];
         }
         sortedDouble = a;
     }
 
-    private void swap(float a[], int i, int j) {
-
-        float T;
-        T = a[i];
-        a[i] = a[j];
-        a[j] = T;
-
-        int TT = origIndx[i];
-        origIndx[i] = origIndx[j];
-        origIndx[j] = TT;
-    }
-
-    private void swap(double a[], int i, int j) {
-
-        double T;
-        T = a[i];
-        a[i] = a[j];
-        a[j] = T;
-
-        int TT = origIndx[i];
-        origIndx[i] = origIndx[j];
-        origIndx[j] = TT;
-    }
-
     public float[] getSorted() {
-        for (int i = 0; i < NaNIndices.length; i++) {
-            sorted[i] = Float.NaN;
-        }
         if (!ascending) {
-            float[] revSorted = reverse(sorted);
-            return revSorted;
+            return reverse(sorted);
         } else {
             return sorted;
         }
-        //return sorted;
     }
 
     public double[] getSortedDouble() {
-        for (int i = 0; i < NaNIndices.length; i++) {
-            sortedDouble[i] = Double.NaN;
-        }
-
         if (!ascending) {
-            double[] revSortedDouble = reverse(sortedDouble);
-            return revSortedDouble;
+            return reverse(sortedDouble);
         } else {
             return sortedDouble;
         }
     }
 
     public int[] getOrigIndx() {
-
-        for (int i = 0; i < NaNIndices.length; i++) {
-            origIndx[i] = NaNIndices[i];
-        }
-
-        for (int i = NaNIndices.length; i < NaNIndices.length + negInfinityIndices.length; i++) {
-            origIndx[i] = negInfinityIndices[i - NaNIndices.length];
-        }
-
         if (!ascending) {
             return reverse(origIndx);
         } else {
@@ -288,36 +101,24 @@ public class QSort {
 
     private int[] reverse(int[] arr) {
         int[] revArr = new int[arr.length];
-        int revCount = 0;
-        int count = arr.length - 1;
         for (int i = 0; i < arr.length; i++) {
-            revArr[revCount] = arr[count];
-            revCount++;
-            count--;
+            revArr[i] = arr[arr.length - 1 - i];
         }
         return revArr;
     }
 
     private float[] reverse(float[] arr) {
         float[] revArr = new float[arr.length];
-        int revCount = 0;
-        int count = arr.length - 1;
         for (int i = 0; i < arr.length; i++) {
-            revArr[revCount] = arr[count];
-            revCount++;
-            count--;
+            revArr[i] = arr[arr.length - 1 - i];
         }
         return revArr;
     }
 
     private double[] reverse(double[] arr) {
         double[] revArr = new double[arr.length];
-        int revCount = 0;
-        int count = arr.length - 1;
         for (int i = 0; i < arr.length; i++) {
-            revArr[revCount] = arr[count];
-            revCount++;
-            count--;
+            revArr[i] = arr[arr.length - 1 - i];
         }
         return revArr;
     }
@@ -0,0 +1,208 @@
+package org.geworkbench.util;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Server responses kept on disk under the SHA-1 of what was asked, so that
+ * repeating a query, in this session or a later one, does not go back to
+ * the server. An entry expires a fixed time after it was fetched, and when
+ * the entries together exceed the size limit the least recently used ones
+ * are removed.
+ *
+ * @version $Id$
+ */
+public class ResponseCache {
+
+	private static Log log = LogFactory.getLog(ResponseCache.class);
+
+	private static final String SUFFIX = ".response";
+
+	private final File directory;
+	private final long maxAge;
+	private final long maxBytes;
+
+	/* key to entry size, least recently used first; loaded on first use */
+	private LinkedHashMap<String, Long> entries;
+	private long totalBytes;
+
+	/**
+	 * @param maxAge
+	 *            milliseconds an entry stays valid after it is stored
+	 * @param maxBytes
+	 *            limit on the total size of the entries
+	 */
+	public ResponseCache(File directory, long maxAge, long maxBytes) {
+		this.directory = directory;
+		this.maxAge = maxAge;
+		this.maxBytes = maxBytes;
+	}
+
+	/** The key of a request: the SHA-1 of the url, the user and the body. */
+	public static String key(String url, String userInfo, String request) {
+		try {
+			MessageDigest digest = MessageDigest.getInstance("SHA-1");
+			digest.update(url.getBytes("UTF-8"));
+			digest.update((byte) 0);
+			if (userInfo != null) {
+				digest.update(userInfo.getBytes("UTF-8"));
+			}
+			digest.update((byte) 0);
+			digest.update(request.getBytes("UTF-8"));
+			StringBuilder key = new StringBuilder();
+			for (byte b : digest.digest()) {
+				key.append(Character.forDigit((b >> 4) & 0xf, 16));
+				key.append(Character.forDigit(b & 0xf, 16));
+			}
+			return key.toString();
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		} catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/** @return the stored response, or null if absent or expired */
+	public synchronized byte[] get(String key) {
+		load();
+		if (!entries.containsKey(key)) {
+			return null;
+		}
+		File file = file(key);
+		try {
+			DataInputStream in = new DataInputStream(new FileInputStream(file));
+			try {
+				long stored = in.readLong();
+				if (System.currentTimeMillis() - stored >= maxAge) {
+					in.close();
+					remove(key);
+					return null;
+				}
+				byte[] data = new byte[(int) (file.length() - 8)];
+				in.readFully(data);
+				// entries.get moved the entry to the recent end; keep the
+				// file time in step for the next session
+				entries.get(key);
+				file.setLastModified(System.currentTimeMillis());
+				return data;
+			} finally {
+				in.close();
+			}
+		} catch (IOException e) {
+			log.warn("Dropping unreadable cached response " + file + ": " + e);
+			remove(key);
+			return null;
+		}
+	}
+
+	public synchronized void put(String key, byte[] data) {
+		load();
+		remove(key);
+		if (data.length + 8 > maxBytes) {
+			return;
+		}
+		File file = file(key);
+		File temporary = new File(directory, key + ".tmp");
+		try {
+			DataOutputStream out = new DataOutputStream(new FileOutputStream(
+					temporary));
+			try {
+				out.writeLong(System.currentTimeMillis());
+				out.write(data);
+			} finally {
+				out.close();
+			}
+			if (!temporary.renameTo(file)) {
+				throw new IOException("could not rename " + temporary);
+			}
+		} catch (IOException e) {
+			log.warn("Could not cache response: " + e);
+			temporary.delete();
+			return;
+		}
+		entries.put(key, file.length());
+		totalBytes += file.length();
+		Iterator<Map.Entry<String, Long>> oldest = entries.entrySet()
+				.iterator();
+		while (totalBytes > maxBytes && oldest.hasNext()) {
+			Map.Entry<String, Long> entry = oldest.next();
+			file(entry.getKey()).delete();
+			totalBytes -= entry.getValue();
+			oldest.remove();
+		}
+	}
+
+	/** Total size of the entries on disk, in bytes. */
+	public synchronized long size() {
+		load();
+		return totalBytes;
+	}
+
+	public synchronized void clear() {
+		load();
+		for (String key : entries.keySet()) {
+			file(key).delete();
+		}
+		entries.clear();
+		totalBytes = 0;
+	}
+
+	private void remove(String key) {
+		Long length = entries.remove(key);
+		if (length != null) {
+			file(key).delete();
+			totalBytes -= length;
+		}
+	}
+
+	private File file(String key) {
+		return new File(directory, key + SUFFIX);
+	}
+
+	/* index the entries left by earlier sessions, oldest use first */
+	private void load() {
+		if (entries != null) {
+			return;
+		}
+		entries = new LinkedHashMap<String, Long>(16, 0.75f, true);
+		totalBytes = 0;
+		directory.mkdirs();
+		File[] files = directory.listFiles();
+		if (files == null) {
+			return;
+		}
+		Arrays.sort(files, new Comparator<File>() {
+			public int compare(File a, File b) {
+				long x = a.lastModified();
+				long y = b.lastModified();
+				return x < y ? -1 : (x == y ? 0 : 1);
+			}
+		});
+		for (File file : files) {
+			String name = file.getName();
+			if (name.endsWith(SUFFIX)) {
+				entries.put(name.substring(0, name.length() - SUFFIX.length()),
+						file.length());
+				totalBytes += file.length();
+			} else if (name.endsWith(".tmp")) {
+				file.delete();
+			}
+		}
+	}
+
+}
@@ -1,16 +1,27 @@
 package org.geworkbench.util;
 
+import java.io.BufferedInputStream;
 import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.InputStreamReader;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.io.OutputStreamWriter;
 import java.math.BigDecimal;
 import java.net.Authenticator;
 import java.net.HttpURLConnection;
 import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Properties;
 import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import sun.misc.BASE64Encoder;
 
@@ -50,18 +61,29 @@ public class ResultSetlUtil {
 	private static int urlConnectionTimeout = 0;
 
 	private TreeMap<String, Integer> metaMap;
-	private String[] row;
-	private String decodedString;
-	private BufferedReader in;
+	private List<String> columnNames = new ArrayList<String>();
+	private DelimitedRowDecoder decoder;
+	private InputStream in;
+
+	private static ResponseCache responseCache = null;
 
 	public ResultSetlUtil(BufferedReader in) throws IOException {
+		this(new LineInputStream(in));
+	}
+
+	/**
+	 * Read the result from a byte stream in the platform charset; rows are
+	 * split and their numbers parsed from the bytes.
+	 */
+	public ResultSetlUtil(InputStream in) throws IOException {
 		this.in = in;
+		decoder = new DelimitedRowDecoder(in);
 		metaMap = new TreeMap<String, Integer>();
 
 		// metadata
-		next();
-
-		processMetadata();
+		if (next()) {
+			processMetadata();
+		}
 	}
 
 	public static void setUrl(String aUrl) {
@@ -76,12 +98,24 @@ public class ResultSetlUtil {
 		urlConnectionTimeout = timeout;
 	}
 
+	/**
+	 * Keep responses in the given cache and answer repeated queries from it;
+	 * null turns caching off.
+	 */
+	public static void setResponseCache(ResponseCache cache) {
+		responseCache = cache;
+	}
+
+	public static ResponseCache getResponseCache() {
+		return responseCache;
+	}
+
 	// reconstruct metadata
 	public void processMetadata() {
-		if (row == null)
-			return;
-		for (int i = 0; i < row.length; i++) {
-			metaMap.put(row[i], new Integer(i + 1));
+		for (int i = 0; i < decoder.getFieldCount(); i++) {
+			String name = decoder.getString(i);
+			columnNames.add(name);
+			metaMap.put(name, new Integer(i + 1));
 		}
 		return;
 	}
@@ -101,15 +135,7 @@ public class ResultSetlUtil {
 	}
 
 	public double getDouble(int colmNum) {
-		double ret = 0;
-
-		String tmp = getString(colmNum).trim();
-
-		if (!tmp.equals(NULL_STR)) {
-			ret = Double.valueOf(tmp).doubleValue();
-		}
-
-		return ret;
+		return decoder.getDouble(colmNum - 1);
 	}
 
 	public BigDecimal getBigDecimal(String colmName) {
@@ -118,14 +144,7 @@ public class ResultSetlUtil {
 	}
 
 	public BigDecimal getBigDecimal(int colmNum) {
-		BigDecimal ret = NULL_BIGDECIMAL;
-
-		String tmp = getString(colmNum).trim();
-		if (!tmp.equals(NULL_STR)) {
-			ret = new BigDecimal(tmp);
-		}
-
-		return ret;
+		return decoder.getBigDecimal(colmNum - 1);
 	}
 
 	public String getString(String colmName) {
@@ -138,19 +157,21 @@ public class ResultSetlUtil {
 
 	public String getString(int colmNum) {
 		// get from row
-		return row[colmNum - 1];
+		return decoder.getString(colmNum - 1);
 	}
 
 	public boolean next() throws IOException {
-		boolean ret = false;
-		decodedString = in.readLine();
-
-		if (decodedString != null && !decodedString.trim().equals("")) { 
-			row = decodedString.split(REGEX_DEL, SPLIT_ALL);
-			ret = true;
-		}
+		return decoder.nextLine();
+	}
 
-		return ret;
+	/**
+	 * Read the remaining rows into a table whose columns can be taken as
+	 * typed arrays.
+	 */
+	public ResultTable readTable() throws IOException {
+		ResultTable table = new ResultTable(columnNames);
+		table.readRows(decoder);
+		return table;
 	}
 
 	public void close() throws IOException {
@@ -176,6 +197,16 @@ public class ResultSetlUtil {
 	public static ResultSetlUtil executeQueryWithUserInfo(String methodAndParams,
 			String urlStr, String userInfo) throws IOException, UnAuthenticatedException {
 
+		ResponseCache cache = responseCache;
+		String key = null;
+		if (cache != null) {
+			key = ResponseCache.key(urlStr, userInfo, methodAndParams);
+			byte[] cached = cache.get(key);
+			if (cached != null) {
+				return new ResultSetlUtil(new ByteArrayInputStream(cached));
+			}
+		}
+
 		HttpURLConnection aConnection = getConnection(urlStr);
 
 		if (userInfo != null && userInfo.trim().length() != 0)
@@ -205,17 +236,131 @@ public class ResultSetlUtil {
 					+ ", see server logs");
 		}
 
-		BufferedReader in = new BufferedReader(new InputStreamReader(
-				aConnection.getInputStream()));
+		InputStream in = new BufferedInputStream(aConnection.getInputStream());
+		if (cache == null || respCode != HttpURLConnection.HTTP_OK) {
+			return new ResultSetlUtil(in);
+		}
+		byte[] response;
+		try {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			byte[] buffer = new byte[8192];
+			int n;
+			while ((n = in.read(buffer)) > 0) {
+				bytes.write(buffer, 0, n);
+			}
+			response = bytes.toByteArray();
+		} finally {
+			in.close();
+		}
+		cache.put(key, response);
+		return new ResultSetlUtil(new ByteArrayInputStream(response));
+	}
 
-		ResultSetlUtil rs = new ResultSetlUtil(in);
+	/**
+	 * Run many queries against the same servlet, typically one per gene,
+	 * and read each result into a table. The queries share a few keep-alive
+	 * connections, so there is no connection setup per query, and the
+	 * response cache is consulted as for a single query.
+	 * 
+	 * @param connections
+	 *            number of queries in flight at a time
+	 * @return the results in the order of the queries
+	 */
+	public static List<ResultTable> executeQueries(
+			List<String> methodAndParams, final String urlStr,
+			final String userInfo, int connections) throws IOException,
+			UnAuthenticatedException {
+		List<Callable<ResultTable>> tasks = new ArrayList<Callable<ResultTable>>();
+		for (final String query : methodAndParams) {
+			tasks.add(new Callable<ResultTable>() {
+				public ResultTable call() throws Exception {
+					ResultSetlUtil rs = executeQueryWithUserInfo(query, urlStr,
+							userInfo);
+					try {
+						return rs.readTable();
+					} finally {
+						// a fully read and closed stream returns the
+						// connection to the keep-alive pool
+						rs.close();
+					}
+				}
+			});
+		}
+		List<ResultTable> tables = new ArrayList<ResultTable>();
+		if (tasks.isEmpty()) {
+			return tables;
+		}
+		ExecutorService executor = Executors.newFixedThreadPool(Math.max(1,
+				Math.min(connections, tasks.size())));
+		try {
+			for (Future<ResultTable> future : executor.invokeAll(tasks)) {
+				tables.add(future.get());
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("queries interrupted");
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof UnAuthenticatedException) {
+				throw (UnAuthenticatedException) cause;
+			}
+			if (cause instanceof IOException) {
+				throw (IOException) cause;
+			}
+			throw new IOException(cause.toString());
+		} finally {
+			executor.shutdownNow();
+		}
+		return tables;
+	}
+
+	/* the lines of a reader as bytes in the platform charset */
+	private static class LineInputStream extends InputStream {
+		private final BufferedReader reader;
+		private byte[] line = new byte[0];
+		private int position;
+
+		LineInputStream(BufferedReader reader) {
+			this.reader = reader;
+		}
+
+		public int read() throws IOException {
+			if (!fill()) {
+				return -1;
+			}
+			return line[position++] & 0xff;
+		}
+
+		public int read(byte[] b, int off, int len) throws IOException {
+			if (len == 0) {
+				return 0;
+			}
+			if (!fill()) {
+				return -1;
+			}
+			int n = Math.min(len, line.length - position);
+			System.arraycopy(line, position, b, off, n);
+			position += n;
+			return n;
+		}
+
+		private boolean fill() throws IOException {
+			if (position < line.length) {
+				return true;
+			}
+			String next = reader.readLine();
+			if (next == null) {
+				return false;
+			}
+			line = (next + "\n").getBytes(DelimitedRowDecoder.CHARSET);
+			position = 0;
+			return true;
+		}
 
-		return rs;
+		public void close() throws IOException {
+			reader.close();
+		}
 	}
-	
-	
-	
-	
 
 	// test
 	public static void main(String[] args) {
@@ -0,0 +1,168 @@
+package org.geworkbench.util;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A whole delimited query result held as the response bytes plus the
+ * offsets of every field. Columns come out as typed arrays, decoded from
+ * the bytes on request, with the conversions of {@link ResultSetlUtil}:
+ * "null" is 0 as a double and {@link ResultSetlUtil#NULL_BIGDECIMAL} as a
+ * BigDecimal.
+ *
+ * @version $Id$
+ */
+public final class ResultTable {
+
+	private final Map<String, Integer> columns = new LinkedHashMap<String, Integer>();
+	private byte[] data = new byte[1 << 12];
+	private int size;
+	/* start and end of every field, row after row */
+	private int[] offsets = new int[256];
+	private int fieldCount;
+	/* index of the first field of each row, plus one past the last row */
+	private int[] rows = new int[65];
+	private int rowCount;
+
+	ResultTable(List<String> columnNames) {
+		for (int i = 0; i < columnNames.size(); i++) {
+			columns.put(columnNames.get(i), i);
+		}
+	}
+
+	/* read the rest of the decoder's lines, up to the first blank one */
+	void readRows(DelimitedRowDecoder decoder) throws IOException {
+		while (decoder.nextLine()) {
+			addRow(decoder);
+		}
+	}
+
+	void addRow(DelimitedRowDecoder decoder) {
+		int fields = decoder.getFieldCount();
+		int from = decoder.getLineStart();
+		int length = decoder.getLineEnd() - from;
+		if (size + length > data.length) {
+			data = grow(data, size + length);
+		}
+		System.arraycopy(decoder.getBuffer(), from, data, size, length);
+		if (2 * (fieldCount + fields) > offsets.length) {
+			offsets = grow(offsets, 2 * (fieldCount + fields));
+		}
+		decoder.copyOffsets(offsets, 2 * fieldCount, size - from);
+		fieldCount += fields;
+		size += length;
+		if (rowCount + 2 > rows.length) {
+			rows = grow(rows, rowCount + 2);
+		}
+		rowCount++;
+		rows[rowCount] = fieldCount;
+	}
+
+	public int getRowCount() {
+		return rowCount;
+	}
+
+	public List<String> getColumnNames() {
+		return Collections.unmodifiableList(new ArrayList<String>(columns
+				.keySet()));
+	}
+
+	/** @return the 0-based column index, or -1 for an unknown name */
+	public int getColumnIndex(String name) {
+		Integer index = columns.get(name);
+		return index == null ? -1 : index.intValue();
+	}
+
+	public String getString(int row, String column) {
+		int field = field(row, column(column));
+		return new String(data, offsets[2 * field], offsets[2 * field + 1]
+				- offsets[2 * field], DelimitedRowDecoder.CHARSET);
+	}
+
+	public double getDouble(int row, String column) {
+		int field = field(row, column(column));
+		return DelimitedRowDecoder.parseDouble(data, offsets[2 * field],
+				offsets[2 * field + 1]);
+	}
+
+	public BigDecimal getBigDecimal(int row, String column) {
+		int field = field(row, column(column));
+		return DelimitedRowDecoder.parseBigDecimal(data, offsets[2 * field],
+				offsets[2 * field + 1]);
+	}
+
+	/** @return the column, or null if the result has no such column */
+	public String[] getStrings(String column) {
+		int index = getColumnIndex(column);
+		if (index < 0) {
+			return null;
+		}
+		String[] values = new String[rowCount];
+		for (int r = 0; r < rowCount; r++) {
+			int field = field(r, index);
+			values[r] = new String(data, offsets[2 * field],
+					offsets[2 * field + 1] - offsets[2 * field],
+					DelimitedRowDecoder.CHARSET);
+		}
+		return values;
+	}
+
+	public double[] getDoubles(String column) {
+		int index = column(column);
+		double[] values = new double[rowCount];
+		for (int r = 0; r < rowCount; r++) {
+			int field = field(r, index);
+			values[r] = DelimitedRowDecoder.parseDouble(data,
+					offsets[2 * field], offsets[2 * field + 1]);
+		}
+		return values;
+	}
+
+	public BigDecimal[] getBigDecimals(String column) {
+		int index = column(column);
+		BigDecimal[] values = new BigDecimal[rowCount];
+		for (int r = 0; r < rowCount; r++) {
+			int field = field(r, index);
+			values[r] = DelimitedRowDecoder.parseBigDecimal(data,
+					offsets[2 * field], offsets[2 * field + 1]);
+		}
+		return values;
+	}
+
+	private int column(String name) {
+		Integer index = columns.get(name);
+		if (index == null) {
+			throw new IllegalArgumentException("no column " + name);
+		}
+		return index.intValue();
+	}
+
+	private int field(int row, int column) {
+		if (row < 0 || row >= rowCount) {
+			throw new ArrayIndexOutOfBoundsException(row);
+		}
+		int field = rows[row] + column;
+		if (field >= rows[row + 1]) {
+			throw new ArrayIndexOutOfBoundsException(column);
+		}
+		return field;
+	}
+
+	private static byte[] grow(byte[] array, int needed) {
+		byte[] grown = new byte[Math.max(needed, array.length * 2)];
+		System.arraycopy(array, 0, grown, 0, array.length);
+		return grown;
+	}
+
+	private static int[] grow(int[] array, int needed) {
+		int[] grown = new int[Math.max(needed, array.length * 2)];
+		System.arraycopy(array, 0, grown, 0, array.length);
+		return grown;
+	}
+
+}
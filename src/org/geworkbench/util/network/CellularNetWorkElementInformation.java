@@ -1,6 +1,8 @@
 package org.geworkbench.util.network;
 
 import java.util.ArrayList; 
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List; 
@@ -40,6 +42,8 @@ public class CellularNetWorkElementInformation implements java.io.Serializable {
 	private String goInfoStr;
 	private String geneType;
 	private InteractionDetail[] interactionDetails;
+	/* built from interactionDetails on first use */
+	private transient InteractionEvidenceIndex evidenceIndex;
 	private double threshold;
 	private boolean isDirty;
 	
@@ -137,64 +141,34 @@ public class CellularNetWorkElementInformation implements java.io.Serializable {
 			List<String> interactionIncludedList, short selectedConfidenceType) {
 		ArrayList<InteractionDetail> arrayList = new ArrayList<InteractionDetail>();
 		if (interactionDetails != null && interactionDetails.length > 0) {
-			for (int i = 0; i < interactionDetails.length; i++) {
-				InteractionDetail interactionDetail = interactionDetails[i];
-				if (interactionDetail != null
-						&& interactionDetail.getConfidenceValue(selectedConfidenceType) >= threshold) {
-					if (interactionIncludedList.contains(interactionDetail
-							.getInteractionType())) {
-						arrayList.add(interactionDetail);
-					}
-
-				}
-			}
+			arrayList.addAll(Arrays.asList(getEvidenceIndex().select(
+					interactionIncludedList, selectedConfidenceType, threshold)));
 		}
 		return arrayList;
 	}
 
 	public ArrayList<InteractionDetail> getSelectedInteractions(
 			String interactionType, short selectedConfidenceType) {
-		ArrayList<InteractionDetail> arrayList = new ArrayList<InteractionDetail>();
-		if (interactionDetails != null && interactionDetails.length > 0) {
-			for (int i = 0; i < interactionDetails.length; i++) {
-				InteractionDetail interactionDetail = interactionDetails[i];
-				if (interactionDetail != null
-						&& interactionDetail.getConfidenceValue(selectedConfidenceType) >= threshold) {
-					if (interactionType.equals(interactionDetail
-							.getInteractionType())) {
-						arrayList.add(interactionDetail);
-					}
-
-				}
-			}
-		}
-		return arrayList;
+		return getSelectedInteractions(Collections
+				.singletonList(interactionType), selectedConfidenceType);
 	}
 
-	
-	
+	/**
+	 * Element <i>i</i> is the number of interactions of the selected types
+	 * whose confidence is at least <i>i</i> increments; the last bin also
+	 * counts everything above it.
+	 */
 	public int[] getDistribution(List<String> displaySelectedInteractionTypes, short selectedConfidenceType, double smallestIncrement) {
 		 
 		int[] distribution = new int[binNumber];
-		for (int i = 0; i < binNumber; i++)
-			distribution[i] = 0;
 		if (interactionDetails == null || interactionDetails.length <= 0)
 			return distribution;
-		for (InteractionDetail interactionDetail : interactionDetails) {
-			if (interactionDetail != null
-					&& displaySelectedInteractionTypes
-							.contains(interactionDetail.getInteractionType())) {
-				int confidence = (int) (interactionDetail.getConfidenceValue(selectedConfidenceType) / smallestIncrement);
-				if (confidence >= 0) {
-					if (confidence >= distribution.length)
-						confidence = distribution.length-1;
-				 
-					for (int i = 0; i <= confidence; i++)
-						distribution[i]++;
-
-				}
-
-			}
+		for (String interactionType : new HashSet<String>(
+				displaySelectedInteractionTypes)) {
+			int[] d = getEvidenceIndex().distribution(interactionType,
+					selectedConfidenceType, smallestIncrement, binNumber);
+			for (int i = 0; i < binNumber; i++)
+				distribution[i] += d[i];
 		}
 	 
 		return distribution;
@@ -244,6 +218,7 @@ public class CellularNetWorkElementInformation implements java.io.Serializable {
 	 */
 	public void setInteractionDetails(List<InteractionDetail> arrayList, CellularNetworkPreference pref) {
 		 
+		evidenceIndex = null;
 		if (arrayList != null && arrayList.size() > 0) {
 			interactionDetails = new InteractionDetail[arrayList.size()];
 			
@@ -295,21 +270,15 @@ public class CellularNetWorkElementInformation implements java.io.Serializable {
 			return;
 		}
 
-		for (InteractionDetail interactionDetail : interactionDetails) {
-			if (interactionDetail != null) {
-				double confidence = interactionDetail.getConfidenceValue(selectedConfidenceType);
-				String interactionType = interactionDetail.getInteractionType();
-				if (confidence >= threshold) {
-					if (this.interactionNumMap.containsKey(interactionType)) {
-						int num = interactionNumMap.get(interactionType) + 1;
-						interactionNumMap.put(interactionType, num);
-
-					} else {
-						interactionNumMap.put(interactionType, 1);
-
-					}
-
-				}
+		InteractionEvidenceIndex index = getEvidenceIndex();
+		for (String interactionType : index.getInteractionTypes()) {
+			int num = index.count(interactionType, selectedConfidenceType,
+					threshold);
+			if (num > 0) {
+				// added to the -1 or 0 that reset() left for known types
+				Integer base = interactionNumMap.get(interactionType);
+				interactionNumMap.put(interactionType, base == null ? num
+						: base + num);
 			}
 		}
 
@@ -317,29 +286,18 @@ public class CellularNetWorkElementInformation implements java.io.Serializable {
 
 	public int[] getInteractionDistribution(String interactionType, short selectedConfidenceType, double smallestIncrement) {	
 	 
-		int[] interactionDistribution = new int[binNumber];
-		for (int i = 0; i < binNumber; i++)
-			interactionDistribution[i] = 0;
 		if (interactionDetails == null || interactionDetails.length <= 0)
-			return interactionDistribution;
-
-		for (InteractionDetail interactionDetail : interactionDetails) {
-			int confidence = (int) (interactionDetail.getConfidenceValue(selectedConfidenceType) / smallestIncrement);
-			if (confidence >= 0) {
-
-				if (interactionDetail.getInteractionType().equals(
-						interactionType)) {
-					if (confidence >= interactionDistribution.length)
-						confidence = interactionDistribution.length-1;				 
-					for (int i = 0; i <= confidence; i++)
-						interactionDistribution[i]++;
+			return new int[binNumber];
 
-				}
-			}
+		return getEvidenceIndex().distribution(interactionType,
+				selectedConfidenceType, smallestIncrement, binNumber).clone();
+	}
 
+	private InteractionEvidenceIndex getEvidenceIndex() {
+		if (evidenceIndex == null) {
+			evidenceIndex = new InteractionEvidenceIndex(interactionDetails);
 		}
-	 
-		return interactionDistribution;
+		return evidenceIndex;
 	}
 
 	public DSGeneMarker getdSGeneMarker() {
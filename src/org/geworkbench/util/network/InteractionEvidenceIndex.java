@@ -0,0 +1,217 @@
+package org.geworkbench.util.network;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+
+import org.geworkbench.util.NumericSort;
+
+/**
+ * The interactions of one marker grouped by interaction type, with the
+ * confidence values of each group sorted into a primitive column per
+ * confidence type. Threshold counts and selections are a binary search in
+ * the column, and the cumulative histograms of
+ * {@link CellularNetWorkElementInformation} one binary search per bin, so
+ * moving the confidence threshold does not rescan the interactions.
+ *
+ * Results are the same as looping over the interactions with
+ * {@link InteractionDetail#getConfidenceValue(int)}, including its 0 for an
+ * interaction without the confidence type. Columns are built on first use.
+ *
+ * @version $Id$
+ */
+class InteractionEvidenceIndex {
+
+	private final InteractionDetail[] details;
+	/* positions of the non-null details of each interaction type */
+	private final Map<String, int[]> positions = new LinkedHashMap<String, int[]>();
+	private final Map<Short, Map<String, Column>> columns = new HashMap<Short, Map<String, Column>>();
+
+	/* one interaction type under one confidence type */
+	private static final class Column {
+		/* ascending, NaN excluded */
+		final double[] values;
+		/* detail position of each value */
+		final int[] positions;
+		final int nanCount;
+
+		/* single-entry cache of the histogram for the last increment */
+		double increment = Double.NaN;
+		int[] distribution;
+
+		Column(double[] values, int[] positions, int nanCount) {
+			this.values = values;
+			this.positions = positions;
+			this.nanCount = nanCount;
+		}
+	}
+
+	InteractionEvidenceIndex(InteractionDetail[] details) {
+		this.details = details;
+		Map<String, int[]> counts = new LinkedHashMap<String, int[]>();
+		for (InteractionDetail detail : details) {
+			if (detail != null) {
+				int[] count = counts.get(detail.getInteractionType());
+				if (count == null) {
+					count = new int[1];
+					counts.put(detail.getInteractionType(), count);
+				}
+				count[0]++;
+			}
+		}
+		for (Map.Entry<String, int[]> e : counts.entrySet()) {
+			positions.put(e.getKey(), new int[e.getValue()[0]]);
+			e.getValue()[0] = 0;
+		}
+		for (int i = 0; i < details.length; i++) {
+			if (details[i] != null) {
+				String type = details[i].getInteractionType();
+				positions.get(type)[counts.get(type)[0]++] = i;
+			}
+		}
+	}
+
+	/** Interaction types present, in order of first appearance. */
+	Collection<String> getInteractionTypes() {
+		return positions.keySet();
+	}
+
+	/** Number of interactions of the type with confidence >= threshold. */
+	int count(String interactionType, short confidenceType, double threshold) {
+		Column column = column(interactionType, confidenceType);
+		if (column == null) {
+			return 0;
+		}
+		return column.values.length - atLeast(column.values, threshold);
+	}
+
+	/**
+	 * The interactions of the given types with confidence >= threshold, in
+	 * their original order.
+	 */
+	InteractionDetail[] select(Collection<String> interactionTypes,
+			short confidenceType, double threshold) {
+		int total = 0;
+		int[][] parts = new int[interactionTypes.size()][];
+		int[] starts = new int[parts.length];
+		int p = 0;
+		for (String type : new LinkedHashSet<String>(interactionTypes)) {
+			Column column = column(type, confidenceType);
+			if (column != null) {
+				parts[p] = column.positions;
+				starts[p] = atLeast(column.values, threshold);
+				total += column.values.length - starts[p];
+				p++;
+			}
+		}
+		int[] selected = new int[total];
+		int n = 0;
+		for (int k = 0; k < p; k++) {
+			int length = parts[k].length - starts[k];
+			System.arraycopy(parts[k], starts[k], selected, n, length);
+			n += length;
+		}
+		Arrays.sort(selected);
+		InteractionDetail[] result = new InteractionDetail[total];
+		for (int i = 0; i < total; i++) {
+			result[i] = details[selected[i]];
+		}
+		return result;
+	}
+
+	/**
+	 * Element <i>b</i> is the number of interactions of the type whose bin,
+	 * <code>(int) (confidence / increment)</code> capped at the last bin, is
+	 * at least <i>b</i>; negative bins are not counted. The array is shared,
+	 * callers must not modify it.
+	 */
+	int[] distribution(String interactionType, short confidenceType,
+			double increment, int bins) {
+		Column column = column(interactionType, confidenceType);
+		if (column == null) {
+			return new int[bins];
+		}
+		if (column.distribution != null
+				&& column.distribution.length == bins
+				&& Double.compare(column.increment, increment) == 0) {
+			return column.distribution;
+		}
+		int[] distribution = new int[bins];
+		double[] values = column.values;
+		int from = 0;
+		for (int b = 0; b < bins; b++) {
+			// (int) (v / increment) >= b is monotone in v, so the first
+			// value in the bin is found by bisection from the last one
+			int low = from;
+			int high = values.length;
+			while (low < high) {
+				int mid = (low + high) >>> 1;
+				if ((int) (values[mid] / increment) >= b) {
+					high = mid;
+				} else {
+					low = mid + 1;
+				}
+			}
+			from = low;
+			distribution[b] = values.length - low;
+		}
+		// NaN truncates to bin 0
+		distribution[0] += column.nanCount;
+		column.increment = increment;
+		column.distribution = distribution;
+		return distribution;
+	}
+
+	private Column column(String interactionType, short confidenceType) {
+		Map<String, Column> byType = columns.get(confidenceType);
+		if (byType == null) {
+			byType = new HashMap<String, Column>();
+			columns.put(confidenceType, byType);
+		}
+		Column column = byType.get(interactionType);
+		if (column == null) {
+			int[] at = positions.get(interactionType);
+			if (at == null) {
+				return null;
+			}
+			column = build(at, confidenceType);
+			byType.put(interactionType, column);
+		}
+		return column;
+	}
+
+	private Column build(int[] at, short confidenceType) {
+		double[] raw = new double[at.length];
+		for (int i = 0; i < at.length; i++) {
+			raw[i] = details[at[i]].getConfidenceValue(confidenceType);
+		}
+		// stable, so tied values stay in position order
+		int[] order = NumericSort.argsort(raw, true, NumericSort.NaNPolicy.OMIT);
+		double[] values = new double[order.length];
+		int[] positions = new int[order.length];
+		for (int i = 0; i < order.length; i++) {
+			values[i] = raw[order[i]];
+			positions[i] = at[order[i]];
+		}
+		return new Column(values, positions, at.length - order.length);
+	}
+
+	/* first index whose value is >= threshold */
+	private static int atLeast(double[] values, double threshold) {
+		int low = 0;
+		int high = values.length;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (values[mid] >= threshold) {
+				high = mid;
+			} else {
+				low = mid + 1;
+			}
+		}
+		return low;
+	}
+
+}
@@ -1,65 +1,435 @@
 package org.geworkbench.util.pathwaydecoder.mutualinformation;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamField;
 import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
+/**
+ * A list of directed edges between named nodes, in the order they were added.
+ * Duplicates are allowed unless {@link #deduplicate()} is called.
+ *
+ * Node names are numbered by a shared dictionary and edges are kept as two
+ * int arrays. A hash index on (start, end) answers {@link #contains} and
+ * finds the edges to remove without scanning the list; removed edges are
+ * dropped from the arrays by the call that removes them, so reading never
+ * changes the list. Like an ArrayList, a list may be read from several
+ * threads, but not while it is being changed.
+ *
+ * @version $Id$
+ */
 public class EdgeList implements Serializable {
 	private static final long serialVersionUID = -1146449113733368462L;
 
 	static Log log = LogFactory.getLog(EdgeList.class);
-	
-	private ArrayList<Edge> edgeList;
-	
-	public EdgeList(){
-		edgeList = new ArrayList<Edge>();
-	}
-	
-	public EdgeList(int number){
-		edgeList = new ArrayList<Edge>(number);
-	}
-	
-	public void addEdge(Edge e){
-		this.edgeList.add(e);
-	}
-	
-	public void addEdge(String start, String end){
-		this.edgeList.add(new Edge(start, end));
-	}
-	
-	public void removeEdge(String start, String end){
-		for(int i = 0; i < this.edgeList.size(); i++){
-			if(this.edgeList.get(i).equals(start, end)){
-				this.edgeList.remove(i);
-			}				
-		}
-	}
-	
-	public void removeEdge(Edge e){
+
+	/* edges were an ArrayList<Edge> field in earlier versions */
+	private static final ObjectStreamField[] serialPersistentFields = { new ObjectStreamField(
+			"edgeList", ArrayList.class) };
+
+	private static final int FREE = -2;
+	private static final int NONE = -1;
+
+	private transient NodeDictionary nodes;
+	private transient int[] source;
+	private transient int[] target;
+	/* next edge with the same key, lower positions last */
+	private transient int[] next;
+	private transient boolean[] removed;
+	private transient int count;
+	private transient int removedCount;
+
+	/* index: key of (start, end) and the last edge added with it */
+	private transient long[] keys;
+	private transient int[] last;
+	private transient int keyCount;
+
+	public EdgeList() {
+		this(16);
+	}
+
+	public EdgeList(int number) {
+		init(Math.max(1, number));
+	}
+
+	private void init(int capacity) {
+		nodes = new NodeDictionary(Math.min(capacity, 1 << 16));
+		source = new int[capacity];
+		target = new int[capacity];
+		next = new int[capacity];
+		removed = new boolean[capacity];
+		count = 0;
+		removedCount = 0;
+		int size = 16;
+		while (size < capacity * 2) {
+			size <<= 1;
+		}
+		keys = new long[size];
+		last = new int[size];
+		Arrays.fill(last, FREE);
+		keyCount = 0;
+	}
+
+	public void addEdge(Edge e) {
+		addEdge(e.getStartNode(), e.getEndNode());
+	}
+
+	public void addEdge(String start, String end) {
+		add(nodes.add(start), nodes.add(end));
+	}
+
+	/**
+	 * Add an edge between nodes given as UTF-8 bytes, as read by
+	 * {@link EdgeListReader}.
+	 */
+	void addEdge(byte[] buf, int startFrom, int startTo, int endFrom, int endTo) {
+		int s = nodes.add(buf, startFrom, startTo);
+		add(s, nodes.add(buf, endFrom, endTo));
+	}
+
+	private void add(int s, int t) {
+		if (count == source.length) {
+			int capacity = count + (count >> 1) + 1;
+			source = Arrays.copyOf(source, capacity);
+			target = Arrays.copyOf(target, capacity);
+			next = Arrays.copyOf(next, capacity);
+			removed = Arrays.copyOf(removed, capacity);
+		}
+		int slot = slot(key(s, t), true);
+		source[count] = s;
+		target[count] = t;
+		next[count] = last[slot] == FREE ? NONE : last[slot];
+		last[slot] = count;
+		count++;
+	}
+
+	private static long key(int s, int t) {
+		return ((long) s << 32) | (t & 0xffffffffL);
+	}
+
+	/* slot of key in the index; with create, a free slot is claimed */
+	private int slot(long key, boolean create) {
+		if (create && (keyCount + 1) * 2 > keys.length) {
+			rehash(keys.length * 2);
+		}
+		int mask = keys.length - 1;
+		long h = key * 0x9E3779B97F4A7C15L;
+		int i = (int) (h ^ (h >>> 32)) & mask;
+		while (last[i] != FREE) {
+			if (keys[i] == key) {
+				return i;
+			}
+			i = (i + 1) & mask;
+		}
+		if (!create) {
+			return -1;
+		}
+		keys[i] = key;
+		last[i] = NONE;
+		keyCount++;
+		return i;
+	}
+
+	private void rehash(int size) {
+		long[] oldKeys = keys;
+		int[] oldLast = last;
+		keys = new long[size];
+		last = new int[size];
+		Arrays.fill(last, FREE);
+		keyCount = 0;
+		int mask = size - 1;
+		for (int j = 0; j < oldKeys.length; j++) {
+			// keys whose edges were all removed are dropped
+			if (oldLast[j] < 0) {
+				continue;
+			}
+			long h = oldKeys[j] * 0x9E3779B97F4A7C15L;
+			int i = (int) (h ^ (h >>> 32)) & mask;
+			while (last[i] != FREE) {
+				i = (i + 1) & mask;
+			}
+			keys[i] = oldKeys[j];
+			last[i] = oldLast[j];
+			keyCount++;
+		}
+	}
+
+	/* the index slot of an edge given by name, or -1 */
+	private int find(String start, String end) {
+		int s = nodes.find(start);
+		int t = s < 0 ? -1 : nodes.find(end);
+		return t < 0 ? -1 : slot(key(s, t), false);
+	}
+
+	public boolean contains(String start, String end) {
+		int slot = find(start, end);
+		return slot >= 0 && last[slot] >= 0;
+	}
+
+	public boolean contains(Edge e) {
+		return contains(e.getStartNode(), e.getEndNode());
+	}
+
+	/** Remove every edge from <code>start</code> to <code>end</code>. */
+	public void removeEdge(String start, String end) {
+		markRemoved(start, end);
+		compact();
+	}
+
+	public void removeEdge(Edge e) {
 		this.removeEdge(e.getStartNode(), e.getEndNode());
 	}
-	
-	public Edge getEdge(int i){
-		return this.edgeList.get(i);
+
+	/**
+	 * Remove every edge equal to one of <code>edges</code>; cheaper than
+	 * removing them one by one.
+	 */
+	public void removeEdges(Collection<Edge> edges) {
+		for (Edge e : edges) {
+			markRemoved(e.getStartNode(), e.getEndNode());
+		}
+		compact();
 	}
-	
-	public String print(String header){
-		String result = header + "\n";
-		for(Edge e: this.edgeList){
-			result += e.getStartNode() + "\t" + e.getEndNode() + "\n";
-		}		
+
+	private void markRemoved(String start, String end) {
+		int slot = find(start, end);
+		if (slot < 0) {
+			return;
+		}
+		for (int e = last[slot]; e >= 0; e = next[e]) {
+			removed[e] = true;
+			removedCount++;
+		}
+		last[slot] = NONE;
+	}
+
+	/**
+	 * Remove repeated edges, keeping the first occurrence of each.
+	 *
+	 * @return the number of edges removed
+	 */
+	public int deduplicate() {
+		int before = removedCount;
+		for (int slot = 0; slot < last.length; slot++) {
+			int e = last[slot];
+			if (e < 0) {
+				continue;
+			}
+			// the chain runs from the latest edge to the first one
+			while (next[e] >= 0) {
+				removed[e] = true;
+				removedCount++;
+				e = next[e];
+			}
+			last[slot] = e;
+		}
+		int dropped = removedCount - before;
+		compact();
+		return dropped;
+	}
+
+	/** The edges of this list that are not in <code>other</code>, in order. */
+	public EdgeList difference(EdgeList other) {
+		// map node ids of this list to those of the other once
+		int[] map = new int[nodes.size()];
+		for (int id = 0; id < map.length; id++) {
+			map[id] = other.nodes.find(nodes.name(id));
+		}
+		EdgeList result = new EdgeList(Math.max(1, count / 2));
+		for (int e = 0; e < count; e++) {
+			int s = map[source[e]];
+			int t = map[target[e]];
+			if (s >= 0 && t >= 0) {
+				int slot = other.slot(key(s, t), false);
+				if (slot >= 0 && other.last[slot] >= 0) {
+					continue;
+				}
+			}
+			result.add(result.nodes.add(nodes.name(source[e])), result.nodes
+					.add(nodes.name(target[e])));
+		}
 		return result;
 	}
-	
-	public boolean isEmpty(){
-		if(this.edgeList.size() <= 0)
-			return true;
-		return false;
+
+	/*
+	 * Drop removed edges from the arrays and renumber the rest in the index.
+	 * A removal takes a whole chain, or all of it but its oldest edge, so
+	 * kept edges only chain to kept edges.
+	 */
+	private void compact() {
+		if (removedCount == 0) {
+			return;
+		}
+		int[] position = new int[count];
+		int n = 0;
+		for (int e = 0; e < count; e++) {
+			if (removed[e]) {
+				position[e] = NONE;
+				removed[e] = false;
+			} else {
+				position[e] = n;
+				source[n] = source[e];
+				target[n] = target[e];
+				next[n] = next[e];
+				n++;
+			}
+		}
+		for (int e = 0; e < n; e++) {
+			if (next[e] >= 0) {
+				next[e] = position[next[e]];
+			}
+		}
+		for (int slot = 0; slot < last.length; slot++) {
+			if (last[slot] >= 0) {
+				last[slot] = position[last[slot]];
+			}
+		}
+		count = n;
+		removedCount = 0;
+	}
+
+	public Edge getEdge(int i) {
+		return new Edge(nodes.name(source[i]), nodes.name(target[i]));
+	}
+
+	public String getStartNode(int i) {
+		return nodes.name(source[i]);
+	}
+
+	public String getEndNode(int i) {
+		return nodes.name(target[i]);
+	}
+
+	/** Number of distinct node names the edges have used. */
+	public int getNodeCount() {
+		return nodes.size();
+	}
+
+	public String print(String header) {
+		StringBuilder result = new StringBuilder(header).append('\n');
+		for (int e = 0; e < count; e++) {
+			result.append(nodes.name(source[e])).append('\t').append(
+					nodes.name(target[e])).append('\n');
+		}
+		return result.toString();
+	}
+
+	/**
+	 * Write the header line and one tab separated line per edge, the same
+	 * text as {@link #print(String)}, without building it in memory.
+	 */
+	public void write(WritableByteChannel channel, String header)
+			throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(1 << 16);
+		put(channel, buffer, NodeDictionary.utf8(header));
+		put(channel, buffer, '\n');
+		for (int e = 0; e < count; e++) {
+			put(channel, buffer, nodes.bytes(source[e]));
+			put(channel, buffer, '\t');
+			put(channel, buffer, nodes.bytes(target[e]));
+			put(channel, buffer, '\n');
+		}
+		buffer.flip();
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+	}
+
+	private static void put(WritableByteChannel channel, ByteBuffer buffer,
+			byte[] bytes) throws IOException {
+		if (buffer.remaining() < bytes.length) {
+			drain(channel, buffer);
+			if (buffer.remaining() < bytes.length) {
+				ByteBuffer big = ByteBuffer.wrap(bytes);
+				while (big.hasRemaining()) {
+					channel.write(big);
+				}
+				return;
+			}
+		}
+		buffer.put(bytes);
+	}
+
+	private static void put(WritableByteChannel channel, ByteBuffer buffer,
+			char c) throws IOException {
+		if (!buffer.hasRemaining()) {
+			drain(channel, buffer);
+		}
+		buffer.put((byte) c);
+	}
+
+	private static void drain(WritableByteChannel channel, ByteBuffer buffer)
+			throws IOException {
+		buffer.flip();
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+		buffer.clear();
+	}
+
+	public boolean isEmpty() {
+		return size() == 0;
 	}
-	
-	public int size(){
-		return this.edgeList.size();
+
+	public int size() {
+		return count;
+	}
+
+	/*
+	 * The edges are written as node names followed by pairs of node ids. The
+	 * edgeList field of the former form is left null, and read back when a
+	 * list saved by an earlier version is loaded.
+	 */
+	private void writeObject(ObjectOutputStream out) throws IOException {
+		ObjectOutputStream.PutField fields = out.putFields();
+		fields.put("edgeList", null);
+		out.writeFields();
+		out.writeInt(nodes.size());
+		for (int id = 0; id < nodes.size(); id++) {
+			out.writeUTF(nodes.name(id));
+		}
+		out.writeInt(count);
+		for (int e = 0; e < count; e++) {
+			out.writeInt(source[e]);
+			out.writeInt(target[e]);
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private void readObject(ObjectInputStream in) throws IOException,
+			ClassNotFoundException {
+		ObjectInputStream.GetField fields = in.readFields();
+		ArrayList<Edge> edgeList = (ArrayList<Edge>) fields.get("edgeList",
+				null);
+		if (edgeList != null) {
+			init(Math.max(1, edgeList.size()));
+			for (Edge e : edgeList) {
+				addEdge(e);
+			}
+			return;
+		}
+		int nodeCount = in.readInt();
+		String[] names = new String[nodeCount];
+		for (int id = 0; id < nodeCount; id++) {
+			names[id] = in.readUTF();
+		}
+		int edges = in.readInt();
+		init(Math.max(1, edges));
+		for (String name : names) {
+			nodes.add(name);
+		}
+		for (int e = 0; e < edges; e++) {
+			int s = in.readInt();
+			add(s, in.readInt());
+		}
 	}
 }
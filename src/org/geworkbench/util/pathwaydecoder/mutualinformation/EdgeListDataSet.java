@@ -1,8 +1,7 @@
 package org.geworkbench.util.pathwaydecoder.mutualinformation;
 
-import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileWriter;
+import java.io.FileOutputStream;
 import java.io.IOException;
 
 import javax.swing.JOptionPane;
@@ -51,9 +50,12 @@ public class EdgeListDataSet extends CSAncillaryDataSet<DSBioObject> {
                 JOptionPane.showMessageDialog(null, "Cannot write to specified file.");
                 return;
             }
-            BufferedWriter writer = new BufferedWriter(new FileWriter(file));         
-            writer.write(this.data.print("# Saved from geWorkBench"));            
-            writer.close();
+            FileOutputStream out = new FileOutputStream(file);
+            try {
+                this.data.write(out.getChannel(), "# Saved from geWorkBench");
+            } finally {
+                out.close();
+            }
         } catch (IOException e) {
             log.error(e);
         }
@@ -0,0 +1,175 @@
+package org.geworkbench.util.pathwaydecoder.mutualinformation;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.util.Arrays;
+
+/**
+ * Reads edge lists from a byte channel without creating a String per line or
+ * token: lines are split on whitespace in the read buffer and node names are
+ * looked up in the list's dictionary straight from the bytes.
+ *
+ * Blank lines and lines whose first non-blank characters are one of the
+ * comment prefixes are skipped. Node tokens that contain one of the node
+ * delimiters (as in <code>name:id</code>) are cut down to the part after the
+ * first delimiter found, trying the delimiters in order.
+ *
+ * @version $Id$
+ */
+public final class EdgeListReader {
+
+	private final byte[][] comments;
+	private final byte[][] delimiters;
+
+	private byte[] buf = new byte[1 << 16];
+	private int[] tokenStart = new int[16];
+	private int[] tokenEnd = new int[16];
+
+	public EdgeListReader(String[] commentPrefixes, String[] nodeDelimiters) {
+		comments = encode(commentPrefixes);
+		delimiters = encode(nodeDelimiters);
+	}
+
+	private static byte[][] encode(String[] strings) {
+		byte[][] bytes = new byte[strings == null ? 0 : strings.length][];
+		for (int i = 0; i < bytes.length; i++) {
+			bytes[i] = NodeDictionary.utf8(strings[i]);
+		}
+		return bytes;
+	}
+
+	/** One edge per line of exactly two tokens; other lines are ignored. */
+	public EdgeList readEdgeList(ReadableByteChannel channel)
+			throws IOException {
+		return read(channel, false);
+	}
+
+	/**
+	 * Lines of at least three tokens: a node, then pairs of a neighbour and an
+	 * interaction strength, which is ignored. One edge per neighbour.
+	 */
+	public EdgeList readAdjacencyMatrix(ReadableByteChannel channel)
+			throws IOException {
+		return read(channel, true);
+	}
+
+	private EdgeList read(ReadableByteChannel channel, boolean adjacency)
+			throws IOException {
+		int capacity = 1024;
+		if (channel instanceof FileChannel) {
+			// assume short lines, to avoid growing the list over and over
+			long size = ((FileChannel) channel).size() / 16;
+			capacity = (int) Math.max(capacity, Math.min(size, 1 << 26));
+		}
+		EdgeList list = new EdgeList(capacity);
+		int filled = 0;
+		boolean eof = false;
+		while (!eof) {
+			if (filled == buf.length) {
+				// a line longer than the buffer
+				buf = Arrays.copyOf(buf, buf.length * 2);
+			}
+			ByteBuffer bb = ByteBuffer.wrap(buf, filled, buf.length - filled);
+			int n = channel.read(bb);
+			if (n < 0) {
+				eof = true;
+			} else {
+				filled += n;
+			}
+			int lineStart = 0;
+			for (int i = 0; i < filled; i++) {
+				if (buf[i] == '\n') {
+					line(list, lineStart, i, adjacency);
+					lineStart = i + 1;
+				}
+			}
+			if (eof && lineStart < filled) {
+				line(list, lineStart, filled, adjacency);
+				lineStart = filled;
+			}
+			System.arraycopy(buf, lineStart, buf, 0, filled - lineStart);
+			filled -= lineStart;
+		}
+		return list;
+	}
+
+	private void line(EdgeList list, int from, int to, boolean adjacency) {
+		int tokens = 0;
+		int i = from;
+		while (true) {
+			while (i < to && isSpace(buf[i])) {
+				i++;
+			}
+			if (i == to) {
+				break;
+			}
+			if (tokens == 0 && isComment(i, to)) {
+				return;
+			}
+			if (tokens == tokenStart.length) {
+				tokenStart = Arrays.copyOf(tokenStart, tokens * 2);
+				tokenEnd = Arrays.copyOf(tokenEnd, tokens * 2);
+			}
+			tokenStart[tokens] = i;
+			while (i < to && !isSpace(buf[i])) {
+				i++;
+			}
+			tokenEnd[tokens++] = i;
+		}
+		if (!adjacency) {
+			if (tokens == 2) {
+				list.addEdge(buf, tokenStart[0], tokenEnd[0], tokenStart[1],
+						tokenEnd[1]);
+			}
+			return;
+		}
+		if (tokens < 3) {
+			return;
+		}
+		int first = afterDelimiter(tokenStart[0], tokenEnd[0]);
+		for (int k = 1; k < tokens; k += 2) {
+			list.addEdge(buf, first, tokenEnd[0], afterDelimiter(
+					tokenStart[k], tokenEnd[k]), tokenEnd[k]);
+		}
+	}
+
+	/* StringTokenizer's default delimiters */
+	private static boolean isSpace(byte b) {
+		return b == ' ' || b == '\t' || b == '\r' || b == '\f' || b == '\n';
+	}
+
+	private boolean isComment(int from, int to) {
+		for (byte[] comment : comments) {
+			if (startsWith(from, to, comment)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private int afterDelimiter(int from, int to) {
+		for (byte[] delimiter : delimiters) {
+			for (int i = from; i + delimiter.length <= to; i++) {
+				if (startsWith(i, to, delimiter)) {
+					return i + delimiter.length;
+				}
+			}
+		}
+		return from;
+	}
+
+	private boolean startsWith(int from, int to, byte[] prefix) {
+		if (to - from < prefix.length) {
+			return false;
+		}
+		for (int k = 0; k < prefix.length; k++) {
+			if (buf[from + k] != prefix[k]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+}
@@ -0,0 +1,224 @@
+package org.geworkbench.util.pathwaydecoder.mutualinformation;
+
+import java.util.List;
+
+import org.geworkbench.bison.datastructure.bioobjects.microarray.DSMicroarray;
+import org.geworkbench.bison.util.ExpressionMatrix;
+import org.geworkbench.util.NumericSort;
+import org.geworkbench.util.NumericSort.NaNPolicy;
+import org.geworkbench.util.Parallel;
+
+/**
+ * Pearson correlations between markers of a MINDY run.
+ *
+ * Every marker row is standardized once (centered and scaled to unit norm),
+ * so that the correlation of two markers is the dot product of their rows.
+ * Bulk requests are evaluated as blocked dot products on the shared
+ * fork-join pool. Markers are addressed by serial.
+ *
+ * Rows with zero variance have an undefined correlation (NaN), as with
+ * <code>SimpleRegression.getR()</code>.
+ *
+ * @version $Id$
+ */
+public class MindyCorrelationEngine {
+
+	/* targets per block: one block of standardized rows stays in cache */
+	private static final int BLOCK = 64;
+
+	private final ExpressionMatrix raw;
+	private final int arrayCount;
+	private final float[] standardized;
+	private final boolean[] defined;
+
+	public MindyCorrelationEngine(List<? extends DSMicroarray> arrays,
+			int markerCount) {
+		this(ExpressionMatrix.fromMicroarrays(arrays, markerCount, false));
+	}
+
+	/**
+	 * @param raw
+	 *            one row per marker, row <i>i</i> holding the marker with
+	 *            serial <i>i</i>
+	 */
+	public MindyCorrelationEngine(ExpressionMatrix raw) {
+		this.raw = raw;
+		this.arrayCount = raw.getColumnCount();
+		final int rows = raw.getRowCount();
+		this.standardized = new float[rows * arrayCount];
+		this.defined = new boolean[rows];
+		Parallel.forRange(0, rows, 256, new Parallel.RangeTask() {
+			public void run(int from, int to) {
+				for (int i = from; i < to; i++) {
+					defined[i] = standardize(i);
+				}
+			}
+		});
+	}
+
+	private boolean standardize(int row) {
+		float[] x = raw.getValues();
+		int offset = raw.getRowOffset(row);
+		double sum = 0;
+		for (int j = 0; j < arrayCount; j++) {
+			sum += x[offset + j];
+		}
+		double mean = sum / arrayCount;
+		double ss = 0;
+		for (int j = 0; j < arrayCount; j++) {
+			double d = x[offset + j] - mean;
+			ss += d * d;
+		}
+		if (!(ss > 0)) {
+			return false;
+		}
+		double scale = 1 / Math.sqrt(ss);
+		for (int j = 0; j < arrayCount; j++) {
+			standardized[offset + j] = (float) ((x[offset + j] - mean) * scale);
+		}
+		return true;
+	}
+
+	public int getArrayCount() {
+		return arrayCount;
+	}
+
+	/** Correlation of the markers with serials <code>a</code> and <code>b</code>. */
+	public double correlation(int a, int b) {
+		if (!defined[a] || !defined[b]) {
+			return Double.NaN;
+		}
+		return dot(a, b);
+	}
+
+	/**
+	 * Correlation of one marker (typically the transcription factor) with each
+	 * of the given markers.
+	 */
+	public float[] correlations(final int tf, final int[] targets) {
+		final float[] result = new float[targets.length];
+		Parallel.forRange(0, targets.length, 1024, new Parallel.RangeTask() {
+			public void run(int from, int to) {
+				for (int t = from; t < to; t++) {
+					result[t] = (float) correlation(tf, targets[t]);
+				}
+			}
+		});
+		return result;
+	}
+
+	/**
+	 * Correlations of every marker in <code>tfs</code> with every marker in
+	 * <code>targets</code>, row-major with one row per entry of
+	 * <code>tfs</code>.
+	 */
+	public float[] correlations(final int[] tfs, final int[] targets) {
+		final int t = targets.length;
+		final float[] result = new float[tfs.length * t];
+		int blocks = (t + BLOCK - 1) / BLOCK;
+		Parallel.forRange(0, blocks, 1, new Parallel.RangeTask() {
+			public void run(int from, int to) {
+				for (int b = from; b < to; b++) {
+					int start = b * BLOCK;
+					int end = Math.min(t, start + BLOCK);
+					for (int f = 0; f < tfs.length; f++) {
+						for (int k = start; k < end; k++) {
+							result[f * t + k] = (float) correlation(tfs[f],
+									targets[k]);
+						}
+					}
+				}
+			}
+		});
+		return result;
+	}
+
+	/**
+	 * Correlation of <code>tf</code> with each target, computed separately on
+	 * the arrays where the modulator is least expressed (row 0 of the result)
+	 * and most expressed (row 1). Each subset holds <code>fraction</code> of
+	 * the arrays.
+	 */
+	public float[][] conditionalCorrelations(int modulator, float fraction,
+			final int tf, final int[] targets) {
+		int[] order = NumericSort.argsort(raw.getRow(modulator), true,
+				NaNPolicy.LAST);
+		int size = Math.max(2, (int) (arrayCount * fraction));
+		size = Math.min(size, arrayCount);
+		int[] low = new int[size];
+		int[] high = new int[size];
+		System.arraycopy(order, 0, low, 0, size);
+		System.arraycopy(order, arrayCount - size, high, 0, size);
+		return new float[][] { subsetCorrelations(low, tf, targets),
+				subsetCorrelations(high, tf, targets) };
+	}
+
+	private float[] subsetCorrelations(final int[] columns, final int tf,
+			final int[] targets) {
+		final double[] z = new double[columns.length];
+		final boolean tfDefined = standardize(raw.getValues(), raw
+				.getRowOffset(tf), columns, z);
+		final float[] result = new float[targets.length];
+		Parallel.forRange(0, targets.length, 512, new Parallel.RangeTask() {
+			public void run(int from, int to) {
+				float[] x = raw.getValues();
+				for (int t = from; t < to; t++) {
+					if (!tfDefined) {
+						result[t] = Float.NaN;
+						continue;
+					}
+					int offset = raw.getRowOffset(targets[t]);
+					double sum = 0;
+					for (int c : columns) {
+						sum += x[offset + c];
+					}
+					double mean = sum / columns.length;
+					double ss = 0;
+					double dot = 0;
+					for (int k = 0; k < columns.length; k++) {
+						double d = x[offset + columns[k]] - mean;
+						ss += d * d;
+						dot += d * z[k];
+					}
+					result[t] = ss > 0 ? (float) (dot / Math.sqrt(ss))
+							: Float.NaN;
+				}
+			}
+		});
+		return result;
+	}
+
+	private static boolean standardize(float[] x, int offset, int[] columns,
+			double[] z) {
+		double sum = 0;
+		for (int c : columns) {
+			sum += x[offset + c];
+		}
+		double mean = sum / columns.length;
+		double ss = 0;
+		for (int k = 0; k < columns.length; k++) {
+			z[k] = x[offset + columns[k]] - mean;
+			ss += z[k] * z[k];
+		}
+		if (!(ss > 0)) {
+			return false;
+		}
+		double scale = 1 / Math.sqrt(ss);
+		for (int k = 0; k < z.length; k++) {
+			z[k] *= scale;
+		}
+		return true;
+	}
+
+	private double dot(int a, int b) {
+		int oa = a * arrayCount;
+		int ob = b * arrayCount;
+		double sum = 0;
+		for (int j = 0; j < arrayCount; j++) {
+			sum += standardized[oa + j] * standardized[ob + j];
+		}
+		// guard against rounding slightly outside [-1, 1]
+		return Math.max(-1, Math.min(1, sum));
+	}
+
+}
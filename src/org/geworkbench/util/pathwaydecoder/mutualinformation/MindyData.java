@@ -1,17 +1,20 @@
 package org.geworkbench.util.pathwaydecoder.mutualinformation;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
 import java.text.CollationKey;
 import java.text.Collator;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
-import org.apache.commons.math.stat.regression.SimpleRegression;
 import org.geworkbench.bison.datastructure.biocollections.microarrays.CSMicroarraySet;
 import org.geworkbench.bison.datastructure.biocollections.microarrays.DSMicroarraySet;
 import org.geworkbench.bison.datastructure.bioobjects.markers.DSGeneMarker;
@@ -36,7 +39,15 @@ public class MindyData implements Serializable {
 
 	private DSGeneMarker transcriptionFactor;
 
-    private HashMap<DSGeneMarker, Double> targetInfoMap = new HashMap<DSGeneMarker, Double>();
+    // only set in data saved before correlations were kept by marker serial
+    private HashMap<DSGeneMarker, Double> targetInfoMap = null;
+
+    // Pearson correlation with the TF by target serial, NaN if not computed
+    private float[] targetCorrelations = null;
+
+    // standardized rows for the correlations of a run, dropped by runFinished()
+    private transient MindyCorrelationEngine correlationEngine = null;
+    private transient boolean running = false;
 
     // can go to global key repository, maybe related to a file
     private HashMap<DSGeneMarker, MindyGeneMarker> geneSortkeyMap = new HashMap<DSGeneMarker, MindyGeneMarker>();
@@ -63,6 +74,7 @@ public class MindyData implements Serializable {
     	}
 
         this.setFraction = setFraction;
+        this.running = true;
 	}
 
 
@@ -94,34 +106,169 @@ public class MindyData implements Serializable {
 	}
 
 	/**
-	 * used for sorting
+	 * Keep the correlation between target and TF, unless one is already kept.
 	 *
-	 * @param myCollator
+	 * @param correlation
 	 * @param target
 	 */
 	public void addToTargetInfoMap(double correlation, DSGeneMarker target) {
-		if (!targetInfoMap.containsKey(target)) {
-			targetInfoMap.put(target, correlation);
+		float[] column = getTargetCorrelations();
+		if (Float.isNaN(column[target.getSerial()])) {
+			column[target.getSerial()] = (float) correlation;
+		}
+	}
+
+	/**
+	 * Compute in bulk the correlations a run shows: the TF with every target
+	 * of every modulator, and for each modulator the TF with its targets on
+	 * the arrays where the modulator is least and most expressed.
+	 */
+	public void calcCorrelations() {
+		Map<DSGeneMarker, Boolean> targets = new LinkedHashMap<DSGeneMarker, Boolean>();
+		for (ModulatorInfo info : modulatorInfoMap.values()) {
+			for (MindyResultRow row : info.getData()) {
+				targets.put(row.getTarget(), Boolean.TRUE);
+			}
+		}
+		calcPearsonCorrelations(new ArrayList<DSGeneMarker>(targets.keySet()));
+		for (Map.Entry<DSGeneMarker, ModulatorInfo> entry : modulatorInfoMap
+				.entrySet()) {
+			ModulatorInfo info = entry.getValue();
+			info.setConditionalCorrelations(calcConditionalCorrelations(entry
+					.getKey(), getTargets(entry.getKey())));
 		}
 	}
 
 	/**
-	 * Pearson correlation between target and TF
+	 * Pearson correlation between the TF and each target, computed in bulk and
+	 * kept for {@link #getCorrelation(DSGeneMarker)}.
+	 *
+	 * @param targets
+	 * @return correlations in the order of <code>targets</code>
+	 */
+	public float[] calcPearsonCorrelations(List<DSGeneMarker> targets) {
+		int[] serials = toSerials(targets);
+		float[] r = getCorrelationEngine().correlations(
+				getTranscriptionFactor().getSerial(), serials);
+		float[] column = getTargetCorrelations();
+		for (int i = 0; i < serials.length; i++) {
+			column[serials[i]] = r[i];
+		}
+		return r;
+	}
+
+	/**
+	 * Correlation between the TF and each target on the arrays with the lowest
+	 * (row 0) and the highest (row 1) expression of the modulator; each subset
+	 * is the sample-per-condition fraction of the arrays.
+	 *
+	 * @param modulator
+	 * @param targets
+	 */
+	public float[][] calcConditionalCorrelations(DSGeneMarker modulator,
+			List<DSGeneMarker> targets) {
+		return getCorrelationEngine().conditionalCorrelations(
+				modulator.getSerial(), setFraction,
+				getTranscriptionFactor().getSerial(), toSerials(targets));
+	}
+
+	/**
+	 * The correlations of a modulator's targets, in the order of
+	 * {@link #getRows(DSGeneMarker)}, as {@link #calcCorrelations()} kept them;
+	 * null if they were not computed.
+	 */
+	public float[][] getConditionalCorrelations(DSGeneMarker modulator) {
+		return modulatorInfoMap.get(modulator).getConditionalCorrelations();
+	}
+
+	/** Drop the standardized rows once the run has computed what it shows. */
+	public void runFinished() {
+		running = false;
+		correlationEngine = null;
+	}
+
+	/* correlations use all arrays of the set, as SimpleRegression did before */
+	private MindyCorrelationEngine getCorrelationEngine() {
+		if (correlationEngine == null) {
+			correlationEngine = new MindyCorrelationEngine(arraySet, arraySet
+					.getMarkers().size());
+		}
+		return correlationEngine;
+	}
+
+	private static int[] toSerials(List<DSGeneMarker> markers) {
+		int[] serials = new int[markers.size()];
+		for (int i = 0; i < serials.length; i++) {
+			serials[i] = markers.get(i).getSerial();
+		}
+		return serials;
+	}
+
+	/**
+	 * Pearson correlation between target and TF over all arrays of the set,
+	 * as <code>SimpleRegression.getR()</code> gave it; NaN if either has no
+	 * variance. During a run this is a dot product of standardized rows;
+	 * after it, the two rows are read, so nothing is kept for a single value.
 	 *
 	 * @param target
 	 */
 	public double calcPearsonCorrelation(DSGeneMarker target) {
-		SimpleRegression sr = new SimpleRegression();
-
-		int sizeArraySet = this.arraySet.size();
-		for(int i = 0; i < sizeArraySet; i++){
-			DSMicroarray ma = (DSMicroarray)this.arraySet.get(i);
-			sr.addData(ma.getMarkerValue(target).getValue(), ma
-					.getMarkerValue(getTranscriptionFactor())
-					.getValue());
+		DSGeneMarker tf = getTranscriptionFactor();
+		if (running) {
+			return getCorrelationEngine().correlation(target.getSerial(), tf
+					.getSerial());
+		}
+		int n = arraySet.size();
+		double[] x = new double[n];
+		double[] y = new double[n];
+		double sumX = 0;
+		double sumY = 0;
+		for (int i = 0; i < n; i++) {
+			DSMicroarray ma = (DSMicroarray) arraySet.get(i);
+			x[i] = ma.getMarkerValue(target).getValue();
+			y[i] = ma.getMarkerValue(tf).getValue();
+			sumX += x[i];
+			sumY += y[i];
+		}
+		// centered sums, which keep their precision for large values
+		double meanX = sumX / n;
+		double meanY = sumY / n;
+		double sxx = 0;
+		double syy = 0;
+		double sxy = 0;
+		for (int i = 0; i < n; i++) {
+			double dx = x[i] - meanX;
+			double dy = y[i] - meanY;
+			sxx += dx * dx;
+			syy += dy * dy;
+			sxy += dx * dy;
+		}
+		if (!(sxx > 0) || !(syy > 0)) {
+			return Double.NaN;
+		}
+		return Math.max(-1, Math.min(1, sxy / Math.sqrt(sxx * syy)));
+	}
+
+	private float[] getTargetCorrelations() {
+		int markerCount = arraySet.getMarkers().size();
+		if (targetCorrelations == null || targetCorrelations.length < markerCount) {
+			int old = targetCorrelations == null ? 0 : targetCorrelations.length;
+			targetCorrelations = targetCorrelations == null ? new float[markerCount]
+					: Arrays.copyOf(targetCorrelations, markerCount);
+			Arrays.fill(targetCorrelations, old, markerCount, Float.NaN);
 		}
+		return targetCorrelations;
+	}
 
-		return sr.getR();
+	private void readObject(ObjectInputStream in) throws IOException,
+			ClassNotFoundException {
+		in.defaultReadObject();
+		if (targetInfoMap != null) {
+			for (Map.Entry<DSGeneMarker, Double> entry : targetInfoMap.entrySet()) {
+				addToTargetInfoMap(entry.getValue(), entry.getKey());
+			}
+			targetInfoMap = null;
+		}
 	}
 
 	public static ArrayList<DSMicroarray> createArrayForMindyRun(
@@ -289,10 +436,10 @@ public class MindyData implements Serializable {
     /**
      * Pearson correlation between the transcription factor and the target gene.
      * Used primarily for the heat map.
-     * @return result of Pearson correlation
+     * @return result of Pearson correlation, NaN if it was not computed
      */
     public double getCorrelation(DSGeneMarker target){
-    	return this.targetInfoMap.get(target);
+    	return getTargetCorrelations()[target.getSerial()];
     }
 
     /**
@@ -20,6 +20,11 @@ public class MindyDataSet extends CSAncillaryDataSet<DSMicroarray> {
         super(parent, label);
         this.data = data;
         this.filename = filename;
+        // the run is over once its result is made
+        if (data != null) {
+            data.calcCorrelations();
+            data.runFinished();
+        }
     }
 
     public MindyData getData() {
@@ -71,9 +71,23 @@ public class ModulatorInfo implements Serializable {
 		return row;
 	}
 
+	/**
+	 * @return correlations of the TF with the targets in the order of the
+	 *         rows, on the arrays where the modulator is least (row 0) and
+	 *         most (row 1) expressed; null if not computed
+	 */
+	public float[][] getConditionalCorrelations() {
+		return conditionalCorrelations;
+	}
+
+	public void setConditionalCorrelations(float[][] conditionalCorrelations) {
+		this.conditionalCorrelations = conditionalCorrelations;
+	}
+
     private ModulatorStatistics modStat= new ModulatorStatistics(0, 0, 0);;
 
     private List<MindyResultRow> data = new ArrayList<MindyResultRow>();
 	private HashMap<DSGeneMarker, MindyResultRow> targetResultMap = new HashMap<DSGeneMarker, MindyResultRow>();
+	private float[][] conditionalCorrelations = null;
 
 }
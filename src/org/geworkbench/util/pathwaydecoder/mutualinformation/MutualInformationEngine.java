@@ -0,0 +1,502 @@
+package org.geworkbench.util.pathwaydecoder.mutualinformation;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.geworkbench.bison.datastructure.biocollections.AdjacencyMatrix;
+import org.geworkbench.bison.datastructure.biocollections.views.DSMicroarraySetView;
+import org.geworkbench.bison.datastructure.bioobjects.markers.DSGeneMarker;
+import org.geworkbench.bison.datastructure.bioobjects.microarray.DSMicroarray;
+import org.geworkbench.bison.datastructure.complex.panels.DSItemList;
+import org.geworkbench.bison.util.ExpressionMatrix;
+import org.geworkbench.util.NumericSort;
+import org.geworkbench.util.NumericSort.NaNPolicy;
+import org.geworkbench.util.Parallel;
+
+/**
+ * ARACNe-style network inference: pairwise mutual information between
+ * markers, a threshold on the MI, and data processing inequality (DPI)
+ * pruning of the weakest edge of every triangle.
+ *
+ * Two estimators are available. ADAPTIVE_PARTITIONING works on the ranks of
+ * each marker and recursively splits the rank square into quadrants until
+ * the points in a cell look uniform (chi-square, 95%). CORRELATION assumes
+ * Gaussian data and uses -ln(1 - r<sup>2</sup>) / 2.
+ *
+ * Pairs are evaluated on the shared fork-join pool. The result does not
+ * depend on scheduling. Ties in the data are broken in a random order drawn
+ * from the seed; with {@link #setDeterministic(boolean)} they are broken by
+ * array order instead, so the same input always gives the same network.
+ *
+ * Missing values are ranked last; impute them first for meaningful MI.
+ *
+ * @version $Id$
+ */
+public class MutualInformationEngine {
+
+	private static Log log = LogFactory.getLog(MutualInformationEngine.class);
+
+	public enum Estimator {
+		ADAPTIVE_PARTITIONING, CORRELATION
+	}
+
+	/* chi-square with 3 degrees of freedom at 95% */
+	private static final double CHI_SQUARE_CUTOFF = 7.815;
+
+	private Estimator estimator = Estimator.ADAPTIVE_PARTITIONING;
+	private double threshold = 0;
+	private boolean dpi = true;
+	private double dpiTolerance = 0;
+	private boolean deterministic = false;
+	private long seed = System.nanoTime();
+
+	/**
+	 * Edges as parallel primitive columns; edge <i>i</i> connects rows
+	 * <code>first[i]</code> and <code>second[i]</code> of the input matrix.
+	 */
+	public static final class Edges {
+		public final int[] first;
+		public final int[] second;
+		public final float[] mi;
+
+		Edges(int[] first, int[] second, float[] mi) {
+			this.first = first;
+			this.second = second;
+			this.mi = mi;
+		}
+
+		public int size() {
+			return mi.length;
+		}
+	}
+
+	public void setEstimator(Estimator estimator) {
+		this.estimator = estimator;
+	}
+
+	/** Only pairs with MI (in nats) above the threshold become edges. */
+	public void setThreshold(double threshold) {
+		this.threshold = threshold;
+	}
+
+	public void setDpi(boolean dpi) {
+		this.dpi = dpi;
+	}
+
+	/**
+	 * An edge is removed when its MI is below <code>(1 - tolerance)</code>
+	 * times the weaker of the other two edges of a triangle.
+	 */
+	public void setDpiTolerance(double dpiTolerance) {
+		this.dpiTolerance = dpiTolerance;
+	}
+
+	public void setDeterministic(boolean deterministic) {
+		this.deterministic = deterministic;
+	}
+
+	public void setSeed(long seed) {
+		this.seed = seed;
+	}
+
+	/**
+	 * Infer the network among the markers and arrays active in the view.
+	 *
+	 * @param hubs
+	 *            only edges touching one of these markers are considered;
+	 *            null or empty for all pairs
+	 */
+	public AdjacencyMatrix compute(
+			DSMicroarraySetView<DSGeneMarker, DSMicroarray> view,
+			List<DSGeneMarker> hubs, String name) {
+		ExpressionMatrix matrix = ExpressionMatrix.fromView(view, true);
+		DSItemList<DSGeneMarker> markers = view.markers();
+
+		int[] hubRows = null;
+		if (hubs != null && !hubs.isEmpty()) {
+			int[] rowOfSerial = new int[view.allMarkers().size()];
+			Arrays.fill(rowOfSerial, -1);
+			for (int row = 0; row < markers.size(); row++) {
+				rowOfSerial[markers.get(row).getSerial()] = row;
+			}
+			int[] rows = new int[hubs.size()];
+			int count = 0;
+			for (DSGeneMarker hub : hubs) {
+				int row = rowOfSerial[hub.getSerial()];
+				if (row >= 0) {
+					rows[count++] = row;
+				} else {
+					log.warn("hub " + hub.getLabel() + " is not in the view");
+				}
+			}
+			hubRows = Arrays.copyOf(rows, count);
+		}
+
+		long start = System.currentTimeMillis();
+		Edges edges = computeEdges(matrix, hubRows);
+		log.info(edges.size() + " edges among " + markers.size()
+				+ " markers in " + (System.currentTimeMillis() - start)
+				+ " ms");
+
+		AdjacencyMatrix adjacencyMatrix = new AdjacencyMatrix(name);
+		AdjacencyMatrix.Node[] nodes = new AdjacencyMatrix.Node[markers.size()];
+		for (int i = 0; i < edges.size(); i++) {
+			adjacencyMatrix.add(node(nodes, markers, edges.first[i]), node(
+					nodes, markers, edges.second[i]), edges.mi[i]);
+		}
+		return adjacencyMatrix;
+	}
+
+	private static AdjacencyMatrix.Node node(AdjacencyMatrix.Node[] nodes,
+			DSItemList<DSGeneMarker> markers, int row) {
+		if (nodes[row] == null) {
+			nodes[row] = new AdjacencyMatrix.Node(markers.get(row));
+		}
+		return nodes[row];
+	}
+
+	/**
+	 * Thresholded, optionally DPI-pruned edges between rows of
+	 * <code>matrix</code>, ordered by first row and then by second row.
+	 *
+	 * @param hubRows
+	 *            rows whose edges are considered, null for all pairs
+	 */
+	public Edges computeEdges(ExpressionMatrix matrix, int[] hubRows) {
+		final int rows = matrix.getRowCount();
+		final int[] sources;
+		final boolean[] isSource = new boolean[rows];
+		if (hubRows == null) {
+			sources = new int[rows];
+			for (int i = 0; i < rows; i++) {
+				sources[i] = i;
+			}
+		} else {
+			int[] sorted = hubRows.clone();
+			Arrays.sort(sorted);
+			int count = 0;
+			for (int i = 0; i < sorted.length; i++) {
+				if (i == 0 || sorted[i] != sorted[i - 1]) {
+					sorted[count++] = sorted[i];
+				}
+			}
+			sources = Arrays.copyOf(sorted, count);
+		}
+		for (int s : sources) {
+			isSource[s] = true;
+		}
+
+		final PairEstimator pairs = estimator == Estimator.CORRELATION ? new CorrelationEstimator(
+				matrix)
+				: new PartitioningEstimator(matrix, deterministic, seed);
+
+		// each source row owns the pairs to non-sources and to later sources
+		final int[][] targets = new int[sources.length][];
+		final float[][] values = new float[sources.length][];
+		Parallel.forRange(0, sources.length, 1, new Parallel.RangeTask() {
+			public void run(int from, int to) {
+				PairEstimator.Scratch scratch = pairs.newScratch();
+				int[] t = new int[rows];
+				float[] v = new float[rows];
+				for (int s = from; s < to; s++) {
+					int a = sources[s];
+					int count = 0;
+					for (int b = 0; b < rows; b++) {
+						if (b == a || (isSource[b] && b < a)) {
+							continue;
+						}
+						double mi = pairs.mutualInformation(a, b, scratch);
+						if (mi > threshold) {
+							t[count] = b;
+							v[count++] = (float) mi;
+						}
+					}
+					targets[s] = Arrays.copyOf(t, count);
+					values[s] = Arrays.copyOf(v, count);
+				}
+			}
+		});
+
+		int total = 0;
+		for (int[] t : targets) {
+			total += t.length;
+		}
+		int[] first = new int[total];
+		int[] second = new int[total];
+		float[] mi = new float[total];
+		for (int s = 0, k = 0; s < sources.length; s++) {
+			for (int j = 0; j < targets[s].length; j++, k++) {
+				first[k] = sources[s];
+				second[k] = targets[s][j];
+				mi[k] = values[s][j];
+			}
+		}
+		Edges edges = new Edges(first, second, mi);
+		return dpi ? prune(edges, rows) : edges;
+	}
+
+	/*
+	 * All triangles are judged on the unpruned network, as in ARACNe, so the
+	 * order in which edges are visited does not matter.
+	 */
+	private Edges prune(final Edges edges, int rows) {
+		final Adjacency adjacency = new Adjacency(edges, rows);
+		final double keep = 1 - dpiTolerance;
+		final boolean[] removed = new boolean[edges.size()];
+		Parallel.forRange(0, edges.size(), 4096, new Parallel.RangeTask() {
+			public void run(int from, int to) {
+				for (int e = from; e < to; e++) {
+					removed[e] = adjacency.weakestInTriangle(edges.first[e],
+							edges.second[e], edges.mi[e], keep);
+				}
+			}
+		});
+
+		int kept = 0;
+		for (boolean r : removed) {
+			if (!r) {
+				kept++;
+			}
+		}
+		int[] first = new int[kept];
+		int[] second = new int[kept];
+		float[] mi = new float[kept];
+		for (int e = 0, k = 0; e < removed.length; e++) {
+			if (!removed[e]) {
+				first[k] = edges.first[e];
+				second[k] = edges.second[e];
+				mi[k++] = edges.mi[e];
+			}
+		}
+		return new Edges(first, second, mi);
+	}
+
+	/* undirected neighbour lists sorted by row, for triangle lookups */
+	private static final class Adjacency {
+		private final int[] start;
+		private final int[] neighbour;
+		private final float[] mi;
+
+		Adjacency(Edges edges, int rows) {
+			start = new int[rows + 1];
+			for (int e = 0; e < edges.size(); e++) {
+				start[edges.first[e] + 1]++;
+				start[edges.second[e] + 1]++;
+			}
+			for (int i = 0; i < rows; i++) {
+				start[i + 1] += start[i];
+			}
+			int[] fill = Arrays.copyOf(start, rows);
+			neighbour = new int[start[rows]];
+			mi = new float[start[rows]];
+			for (int e = 0; e < edges.size(); e++) {
+				int a = edges.first[e];
+				int b = edges.second[e];
+				neighbour[fill[a]] = b;
+				mi[fill[a]++] = edges.mi[e];
+				neighbour[fill[b]] = a;
+				mi[fill[b]++] = edges.mi[e];
+			}
+			for (int i = 0; i < rows; i++) {
+				sortRange(start[i], start[i + 1]);
+			}
+		}
+
+		private void sortRange(int from, int to) {
+			if (to - from < 2) {
+				return;
+			}
+			double[] keys = new double[to - from];
+			for (int k = 0; k < keys.length; k++) {
+				keys[k] = neighbour[from + k];
+			}
+			int[] order = NumericSort.argsort(keys, true, NaNPolicy.LAST);
+			int[] n = new int[keys.length];
+			float[] m = new float[keys.length];
+			for (int k = 0; k < keys.length; k++) {
+				n[k] = neighbour[from + order[k]];
+				m[k] = mi[from + order[k]];
+			}
+			System.arraycopy(n, 0, neighbour, from, n.length);
+			System.arraycopy(m, 0, mi, from, m.length);
+		}
+
+		boolean weakestInTriangle(int a, int b, float value, double keep) {
+			int i = start[a];
+			int j = start[b];
+			int endA = start[a + 1];
+			int endB = start[b + 1];
+			while (i < endA && j < endB) {
+				if (neighbour[i] < neighbour[j]) {
+					i++;
+				} else if (neighbour[i] > neighbour[j]) {
+					j++;
+				} else {
+					if (value < keep * Math.min(mi[i], mi[j])) {
+						return true;
+					}
+					i++;
+					j++;
+				}
+			}
+			return false;
+		}
+	}
+
+	private static abstract class PairEstimator {
+		static class Scratch {
+		}
+
+		Scratch newScratch() {
+			return null;
+		}
+
+		abstract double mutualInformation(int a, int b, Scratch scratch);
+	}
+
+	private static final class CorrelationEstimator extends PairEstimator {
+		private final MindyCorrelationEngine correlations;
+
+		CorrelationEstimator(ExpressionMatrix matrix) {
+			correlations = new MindyCorrelationEngine(matrix);
+		}
+
+		@Override
+		double mutualInformation(int a, int b, Scratch scratch) {
+			double r = correlations.correlation(a, b);
+			if (Double.isNaN(r)) {
+				return 0;
+			}
+			return -0.5 * Math.log(Math.max(1e-12, 1 - r * r));
+		}
+	}
+
+	private static final class PartitioningEstimator extends PairEstimator {
+		private final int n;
+		/* ranks 0..n-1 of every row, row-major */
+		private final int[] ranks;
+
+		static final class PartitionScratch extends Scratch {
+			final int[] xs;
+			final int[] ys;
+
+			PartitionScratch(int n) {
+				xs = new int[n];
+				ys = new int[n];
+			}
+		}
+
+		PartitioningEstimator(final ExpressionMatrix matrix,
+				final boolean deterministic, final long seed) {
+			n = matrix.getColumnCount();
+			ranks = new int[matrix.getRowCount() * n];
+			Parallel.forRange(0, matrix.getRowCount(), 256,
+					new Parallel.RangeTask() {
+						public void run(int from, int to) {
+							double[] row = new double[n];
+							int[] permutation = new int[n];
+							for (int i = from; i < to; i++) {
+								int offset = matrix.getRowOffset(i);
+								for (int j = 0; j < n; j++) {
+									permutation[j] = j;
+								}
+								if (!deterministic) {
+									shuffle(permutation, new Random(seed + i));
+								}
+								for (int j = 0; j < n; j++) {
+									row[j] = matrix.getValues()[offset
+											+ permutation[j]];
+								}
+								// the sort is stable, so tied values are
+								// ranked in permutation order
+								int[] order = NumericSort.argsort(row, true,
+										NaNPolicy.LAST);
+								for (int p = 0; p < n; p++) {
+									ranks[offset + permutation[order[p]]] = p;
+								}
+							}
+						}
+					});
+		}
+
+		private static void shuffle(int[] a, Random random) {
+			for (int i = a.length - 1; i > 0; i--) {
+				int j = random.nextInt(i + 1);
+				int t = a[i];
+				a[i] = a[j];
+				a[j] = t;
+			}
+		}
+
+		@Override
+		Scratch newScratch() {
+			return new PartitionScratch(n);
+		}
+
+		@Override
+		double mutualInformation(int a, int b, Scratch scratch) {
+			PartitionScratch s = (PartitionScratch) scratch;
+			System.arraycopy(ranks, a * n, s.xs, 0, n);
+			System.arraycopy(ranks, b * n, s.ys, 0, n);
+			return cell(s.xs, s.ys, 0, n, 0, n, 0, n, true);
+		}
+
+		/* MI contribution of the points [lo, hi) inside the given rank cell */
+		private double cell(int[] xs, int[] ys, int lo, int hi, int x0,
+				int x1, int y0, int y1, boolean force) {
+			int count = hi - lo;
+			if (count == 0) {
+				return 0;
+			}
+			if (x1 - x0 >= 2 && y1 - y0 >= 2) {
+				int xm = (x0 + x1) >>> 1;
+				int ym = (y0 + y1) >>> 1;
+				int mid = partition(xs, ys, xs, lo, hi, xm);
+				int lowMid = partition(xs, ys, ys, lo, mid, ym);
+				int highMid = partition(xs, ys, ys, mid, hi, ym);
+				double expected = count / 4.0;
+				double chi = square(lowMid - lo - expected)
+						+ square(mid - lowMid - expected)
+						+ square(highMid - mid - expected)
+						+ square(hi - highMid - expected);
+				chi /= expected;
+				if (force || chi > CHI_SQUARE_CUTOFF) {
+					return cell(xs, ys, lo, lowMid, x0, xm, y0, ym, false)
+							+ cell(xs, ys, lowMid, mid, x0, xm, ym, y1, false)
+							+ cell(xs, ys, mid, highMid, xm, x1, y0, ym, false)
+							+ cell(xs, ys, highMid, hi, xm, x1, ym, y1, false);
+				}
+			}
+			double p = (double) count / n;
+			return p
+					* Math.log((double) count * n
+							/ ((double) (x1 - x0) * (y1 - y0)));
+		}
+
+		/* move points with key < pivot to the front of [lo, hi) */
+		private static int partition(int[] xs, int[] ys, int[] key, int lo,
+				int hi, int pivot) {
+			int i = lo;
+			for (int j = lo; j < hi; j++) {
+				if (key[j] < pivot) {
+					int tx = xs[i];
+					xs[i] = xs[j];
+					xs[j] = tx;
+					int ty = ys[i];
+					ys[i] = ys[j];
+					ys[j] = ty;
+					i++;
+				}
+			}
+			return i;
+		}
+
+		private static double square(double d) {
+			return d * d;
+		}
+	}
+
+}
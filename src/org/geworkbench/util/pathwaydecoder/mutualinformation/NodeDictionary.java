@@ -0,0 +1,169 @@
+package org.geworkbench.util.pathwaydecoder.mutualinformation;
+
+import java.io.UnsupportedEncodingException;
+import java.util.Arrays;
+
+/**
+ * Numbers the distinct node names of an {@link EdgeList}. Names are held
+ * once, interned, and looked up through an open addressing table; names read
+ * from a file can be looked up straight from the bytes, so a token only turns
+ * into a String the first time it is seen.
+ *
+ * @version $Id$
+ */
+final class NodeDictionary {
+
+	private String[] names;
+	private int[] hashes;
+	/* UTF-8 form of each name, filled in when first needed */
+	private byte[][] encoded;
+	private int size = 0;
+	/* node id + 1 per slot, 0 when free */
+	private int[] table;
+
+	NodeDictionary(int capacity) {
+		capacity = Math.max(4, capacity);
+		names = new String[capacity];
+		hashes = new int[capacity];
+		encoded = new byte[capacity][];
+		table = new int[tableSize(capacity)];
+	}
+
+	private static int tableSize(int capacity) {
+		int n = 8;
+		while (n < capacity * 2) {
+			n <<= 1;
+		}
+		return n;
+	}
+
+	int size() {
+		return size;
+	}
+
+	String name(int id) {
+		return names[id];
+	}
+
+	byte[] bytes(int id) {
+		byte[] b = encoded[id];
+		if (b == null) {
+			b = utf8(names[id]);
+			encoded[id] = b;
+		}
+		return b;
+	}
+
+	/** The id of a name, or -1 if it has not been added. */
+	int find(String name) {
+		int h = name.hashCode();
+		int mask = table.length - 1;
+		for (int i = spread(h) & mask;; i = (i + 1) & mask) {
+			int id = table[i] - 1;
+			if (id < 0) {
+				return -1;
+			}
+			if (hashes[id] == h && names[id].equals(name)) {
+				return id;
+			}
+		}
+	}
+
+	/** The id of a name, adding it if needed. */
+	int add(String name) {
+		int id = find(name);
+		return id >= 0 ? id : insert(name.intern(), name.hashCode(), null);
+	}
+
+	/**
+	 * The id of the name held in <code>buf[from, to)</code> as UTF-8, adding
+	 * it if needed.
+	 */
+	int add(byte[] buf, int from, int to) {
+		// String.hashCode() of an ASCII name equals the hash of its bytes
+		int h = 0;
+		for (int k = from; k < to; k++) {
+			byte b = buf[k];
+			if (b < 0) {
+				try {
+					return add(new String(buf, from, to - from, "UTF-8"));
+				} catch (UnsupportedEncodingException e) {
+					throw new IllegalStateException(e);
+				}
+			}
+			h = 31 * h + b;
+		}
+		int length = to - from;
+		int mask = table.length - 1;
+		for (int i = spread(h) & mask;; i = (i + 1) & mask) {
+			int id = table[i] - 1;
+			if (id < 0) {
+				break;
+			}
+			if (hashes[id] == h && names[id].length() == length
+					&& sameAscii(names[id], buf, from)) {
+				return id;
+			}
+		}
+		String name;
+		try {
+			name = new String(buf, from, length, "US-ASCII").intern();
+		} catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException(e);
+		}
+		return insert(name, h, Arrays.copyOfRange(buf, from, to));
+	}
+
+	private static boolean sameAscii(String name, byte[] buf, int from) {
+		for (int k = 0; k < name.length(); k++) {
+			if (name.charAt(k) != buf[from + k]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private int insert(String name, int h, byte[] bytes) {
+		if (size == names.length) {
+			int capacity = size + (size >> 1) + 1;
+			names = Arrays.copyOf(names, capacity);
+			hashes = Arrays.copyOf(hashes, capacity);
+			encoded = Arrays.copyOf(encoded, capacity);
+		}
+		if ((size + 1) * 2 > table.length) {
+			table = new int[table.length * 2];
+			for (int id = 0; id < size; id++) {
+				place(id);
+			}
+		}
+		int id = size++;
+		names[id] = name;
+		hashes[id] = h;
+		encoded[id] = bytes;
+		place(id);
+		return id;
+	}
+
+	private void place(int id) {
+		int mask = table.length - 1;
+		int i = spread(hashes[id]) & mask;
+		while (table[i] != 0) {
+			i = (i + 1) & mask;
+		}
+		table[i] = id + 1;
+	}
+
+	private static int spread(int h) {
+		h *= 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+
+	static byte[] utf8(String s) {
+		try {
+			return s.getBytes("UTF-8");
+		} catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+}
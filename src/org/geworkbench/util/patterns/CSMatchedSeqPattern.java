@@ -2,10 +2,11 @@ package org.geworkbench.util.patterns;
 
 import java.io.BufferedWriter;
 import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.regex.Matcher;
 
 import org.apache.commons.lang.StringUtils;
 import org.geworkbench.bison.datastructure.biocollections.sequences.DSSequenceSet;
@@ -29,13 +30,6 @@ public final class CSMatchedSeqPattern extends
 		Serializable {
 	private static final long serialVersionUID = -8809856414947634034L;
 
-	static private final java.util.regex.Pattern headerPattern = java.util.regex.Pattern
-			.compile("\\[\\d+\\]\\s+(\\S+)\\s+\\[(\\d+)\\D*(\\d+)\\D*(\\d+)\\D*(\\d+\\.?\\d*E?\\d*)\\]");
-	static private final java.util.regex.Pattern locusPattern = java.util.regex.Pattern
-			.compile("\\[(\\d+)\\D*(\\d+)\\]");
-	static private final java.util.regex.Pattern offsetPattern = java.util.regex.Pattern
-			.compile("([a-zA-Z]|\\.|\\[[^\\]]+\\])");
-
 	private int idNo = 0;
 	private int seqNo = 0;
 	private DSSequenceSet<DSSequence> seqDB = null;
@@ -49,11 +43,21 @@ public final class CSMatchedSeqPattern extends
 	private ArrayList<PatternOfflet> offset = new ArrayList<PatternOfflet>();
 	private String ascii = null;
 
+	/*
+	 * a pattern read from a file reads its fields from the store; it is
+	 * copied out when changed, and then written back by the store, or when
+	 * serialized on its own
+	 */
+	private transient PatternStore store = null;
+	private transient int index = -1;
+
 	public void setLocus(byte[] locus) {
+		detach();
 		this.locus = locus;
 	}
 
 	public void setOffset(ArrayList<PatternOfflet> offset) {
+		detach();
 		this.offset = offset;
 	}
 
@@ -61,13 +65,72 @@ public final class CSMatchedSeqPattern extends
 		this.seqDB = seqDB;
 	}
 
+	CSMatchedSeqPattern(PatternStore store, int index) {
+		this.store = store;
+		this.index = index;
+	}
+
+	/** Copy the fields out of the store, if the pattern is read from one. */
+	private void detach() {
+		if (store != null) {
+			CSMatchedSeqPattern copy = store.materialize(index);
+			locus = copy.locus;
+			offset = copy.offset;
+			ascii = copy.ascii;
+			idNo = copy.idNo;
+			seqNo = copy.seqNo;
+			zScore = copy.zScore;
+			store.detached(index);
+			store = null;
+			index = -1;
+		}
+	}
+
+	private Object writeReplace() {
+		return store != null ? store.materialize(index) : this;
+	}
+
+	/*
+	 * the p-value lives in the superclass, which is not serializable; null
+	 * in patterns saved by older versions
+	 */
+	private Double savedPValue = null;
+
+	private void writeObject(ObjectOutputStream out) throws IOException {
+		savedPValue = zScore;
+		out.defaultWriteObject();
+	}
+
+	private void readObject(ObjectInputStream in) throws IOException,
+			ClassNotFoundException {
+		in.defaultReadObject();
+		if (savedPValue != null) {
+			zScore = savedPValue;
+		}
+	}
+
+	void setASCII(String ascii) {
+		this.ascii = ascii;
+	}
+
+	/* the fields a store writes back once the pattern holds its own */
+	int getIdNo() {
+		return idNo;
+	}
+
+	byte[] getLocus() {
+		return locus;
+	}
+
 	public String toString() {
-		String s = new String();
-		if (ascii != null) {
-			s += ascii + "    ";
+		StringBuilder s = new StringBuilder();
+		String text = getASCII();
+		if (text != null) {
+			s.append(text).append("    ");
 		}
-		s += "(" + idNo + "," + offset.size() + ")";
-		return s;
+		s.append('(').append(getSupport()).append(',').append(getLength())
+				.append(')');
+		return s.toString();
 	}
 
 	/**
@@ -75,85 +138,51 @@ public final class CSMatchedSeqPattern extends
 	 * method.
 	 */
 	public void updateASCII() {
-		String s = new String();
+		if (store != null) {
+			// read from the file as it is
+			return;
+		}
+		StringBuilder s = new StringBuilder();
 
 		int j = offset.get(0).getPosition();
 		for (int i = 0; i < offset.size(); i++, j++) {
 			int dx = offset.get(i).getPosition();
 			for (; j < dx; j++) {
-				s += '.';
+				s.append('.');
 			}
 			String tokString = offset.get(i).getToken();
 			if (tokString.length() > 1) {
-				s += '[' + tokString + ']';
+				s.append('[').append(tokString).append(']');
 			} else {
-				s += tokString;
+				s.append(tokString);
 			}
 		}
-		ascii = s;
+		ascii = s.toString();
 
 	}
 
+	/**
+	 * A pattern from one line of a pattern file, as written by
+	 * {@link #write(BufferedWriter)}.
+	 */
 	public CSMatchedSeqPattern(String s) {
-		Matcher m0 = CSMatchedSeqPattern.headerPattern.matcher(s);
-
-		if (m0.find()) {
-			Matcher m1 = CSMatchedSeqPattern.locusPattern.matcher(s);
-			String pat = m0.group(1);
-			int seqNo = Integer.parseInt(m0.group(2));
-			int idNo = Integer.parseInt(m0.group(3));
-
-			double pVal = Double.parseDouble(m0.group(5));
-			this.zScore = pVal;
-			this.seqNo = seqNo;
-			this.idNo = idNo;
-			this.offset = new ArrayList<PatternOfflet>();
-			int offDx = 0;
-			int j = 0;
-			Matcher m2 = offsetPattern.matcher(pat);
-			while (m2.find()) {
-				String token = m2.group(1);
-				if (!token.equalsIgnoreCase(".")) {
-
-					PatternOfflet patternOfflet = new PatternOfflet(offDx,
-							token);
-					if (this.offset.size() <= j) {
-						this.offset.add(j, patternOfflet);
-					} else {
-						this.offset.set(j, patternOfflet);
-					}
-					j++;
-				}
-				offDx++;
-			}
-			this.ascii = pat;
-			int index = m0.end();
-			boolean found = m1.find(index);
-			int locId = 0;
-			locus = new byte[idNo * 8]; // 4 bytes per int for id and offset
-			while (found) {
-				int id = Integer.parseInt(m1.group(1));
-				int dx = Integer.parseInt(m1.group(2));
-				locus[locId++] = (byte) (id % 256);
-				id /= 256;
-				locus[locId++] = (byte) (id % 256);
-				id /= 256;
-				locus[locId++] = (byte) (id % 256);
-				id /= 256;
-				locus[locId++] = (byte) (id % 256);
-				locus[locId++] = (byte) (dx % 256);
-				dx /= 256;
-				locus[locId++] = (byte) (dx % 256);
-				dx /= 256;
-				locus[locId++] = (byte) (dx % 256);
-				dx /= 256;
-				locus[locId++] = (byte) (dx % 256);
-				found = m1.find();
-			}
+		PatternStore one = new PatternStore();
+		byte[] line = s.getBytes();
+		if (one.parseLine(line, 0, line.length)) {
+			CSMatchedSeqPattern copy = one.materialize(0);
+			locus = copy.locus;
+			offset = copy.offset;
+			ascii = copy.ascii;
+			idNo = copy.idNo;
+			seqNo = copy.seqNo;
+			zScore = copy.zScore;
 		}
 	}
 
 	private int getId(int i) {
+		if (store != null) {
+			return store.getLocusSequence(index, i);
+		}
 		if (locus != null) {
 			return BinaryEncodeDecode.decodeUnsignedInt32(locus, i * 2);
 		}
@@ -161,18 +190,46 @@ public final class CSMatchedSeqPattern extends
 	}
 
 	public int getLength() {
+		if (store != null) {
+			return store.getLength(index);
+		}
 		return offset.size();
 	}
 
 	public int getSupport() {
+		if (store != null) {
+			return store.getSupport(index);
+		}
 		return idNo != -1 ? idNo : 0;
 	}
 
 	public int getUniqueSupport() {
+		if (store != null) {
+			return store.getUniqueSupport(index);
+		}
 		return seqNo;
 	}
 
+	@Override
+	public double getPValue() {
+		if (store != null) {
+			return store.getPValue(index);
+		}
+		return zScore;
+	}
+
+	@Override
+	public void setPValue(double pValue) {
+		if (store != null) {
+			store.setPValue(index, pValue);
+		}
+		zScore = pValue;
+	}
+
 	public int getMaxLength() {
+		if (store != null) {
+			return store.getMaxLength(index);
+		}
 		int baseOffset = this.offset.get(0).getPosition();
 		int extent = offset.get(getLength() - 1).getPosition() + 1 - baseOffset;
 		
@@ -189,10 +246,17 @@ public final class CSMatchedSeqPattern extends
 	}
 
 	public String getASCII() {
+		if (store != null) {
+			return store.getASCII(index);
+		}
 		return ascii;
 	}
 
 	public void write(BufferedWriter writer) throws IOException {
+		if (store != null) {
+			store.write(index, writer);
+			return;
+		}
 		writer.write(ascii);
 		writer.write("\t");
 		writer.write("[" + seqNo + "," + getSupport() + "," + getLength()
@@ -206,6 +270,9 @@ public final class CSMatchedSeqPattern extends
 	}
 
 	public int getOffset(int j) {
+		if (store != null) {
+			return store.getLocusOffset(index, j);
+		}
 		int baseOffset = this.offset.get(0).getPosition();
 
 		int absoluteOffset = 0;
@@ -227,7 +294,7 @@ public final class CSMatchedSeqPattern extends
 				CSSeqPatternMatch match = new CSSeqPatternMatch(object);
 				CSSeqRegistration reg = match.getRegistration();
 				reg.x1 = getOffset(i);
-				reg.x2 = reg.x1 + getLength() + StringUtils.countMatches(ascii, ".");
+				reg.x2 = reg.x1 + getLength() + dotCount();
 
 				return match;
 			}
@@ -235,6 +302,13 @@ public final class CSMatchedSeqPattern extends
 		return null;
 	}
 
+	private int dotCount() {
+		if (store != null) {
+			return store.getDotCount(index);
+		}
+		return StringUtils.countMatches(ascii, ".");
+	}
+
 	public List<DSPatternMatch<DSSequence, CSSeqRegistration>> matches() {
 		if (matches.size() < 1) {
 			for (int i = 0; i < this.getSupport(); i++) {
@@ -255,10 +329,14 @@ public final class CSMatchedSeqPattern extends
 	}
 
 	public void setIdNo(int value) {
+		detach();
 		idNo = value;
 	}
 
 	public void setSeqNo(int value) {
+		if (store != null) {
+			store.setUniqueSupport(index, value);
+		}
 		seqNo = value;
 	}
 
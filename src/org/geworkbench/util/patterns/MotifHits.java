@@ -0,0 +1,144 @@
+package org.geworkbench.util.patterns;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+import org.geworkbench.bison.datastructure.bioobjects.sequence.CSSequence;
+import org.geworkbench.bison.datastructure.bioobjects.sequence.DSSequence;
+import org.geworkbench.bison.datastructure.complex.pattern.matrix.DSPositionSpecificAffintyMatrix;
+import org.geworkbench.bison.datastructure.complex.pattern.sequence.CSSeqRegistration;
+
+/**
+ * Motif hits stored as parallel primitive columns. Hit <i>i</i> is a window
+ * of <code>length[i]</code> bases starting at <code>position[i]</code> of
+ * sequence <code>sequence[i]</code>, on the forward (0) or reverse (1)
+ * strand, scored by matrix <code>matrix[i]</code> with log-affinity
+ * <code>score[i]</code>.
+ *
+ * @version $Id$
+ */
+public final class MotifHits {
+
+	private int size = 0;
+	private int[] matrix;
+	private int[] sequence;
+	private int[] position;
+	private int[] length;
+	private byte[] strand;
+	private float[] score;
+
+	public MotifHits() {
+		this(16);
+	}
+
+	public MotifHits(int capacity) {
+		capacity = Math.max(1, capacity);
+		matrix = new int[capacity];
+		sequence = new int[capacity];
+		position = new int[capacity];
+		length = new int[capacity];
+		strand = new byte[capacity];
+		score = new float[capacity];
+	}
+
+	public void add(int matrixIndex, int sequenceIndex, int start, int len,
+			int strandCode, float logAffinity) {
+		if (size == score.length) {
+			int capacity = size * 2;
+			matrix = Arrays.copyOf(matrix, capacity);
+			sequence = Arrays.copyOf(sequence, capacity);
+			position = Arrays.copyOf(position, capacity);
+			length = Arrays.copyOf(length, capacity);
+			strand = Arrays.copyOf(strand, capacity);
+			score = Arrays.copyOf(score, capacity);
+		}
+		matrix[size] = matrixIndex;
+		sequence[size] = sequenceIndex;
+		position[size] = start;
+		length[size] = len;
+		strand[size] = (byte) strandCode;
+		score[size] = logAffinity;
+		size++;
+	}
+
+	public void addAll(MotifHits other) {
+		for (int i = 0; i < other.size; i++) {
+			add(other.matrix[i], other.sequence[i], other.position[i],
+					other.length[i], other.strand[i], other.score[i]);
+		}
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public int getMatrix(int hit) {
+		return matrix[hit];
+	}
+
+	public int getSequence(int hit) {
+		return sequence[hit];
+	}
+
+	public int getPosition(int hit) {
+		return position[hit];
+	}
+
+	public int getLength(int hit) {
+		return length[hit];
+	}
+
+	public int getStrand(int hit) {
+		return strand[hit];
+	}
+
+	public float getScore(int hit) {
+		return score[hit];
+	}
+
+	/** Registration of one hit in the form the sequence viewers use. */
+	public CSSeqRegistration getRegistration(int hit) {
+		CSSeqRegistration reg = new CSSeqRegistration();
+		reg.x1 = position[hit];
+		reg.x2 = position[hit] + length[hit];
+		reg.strand = strand[hit];
+		return reg;
+	}
+
+	/**
+	 * Add every hit as a TFBS pattern location to the per-sequence display
+	 * map built by {@link PatternOperations#processPatterns}, creating entries
+	 * for sequences that have none.
+	 *
+	 * @param sequences
+	 *            the sequences that were scanned, in scan order
+	 * @param matrices
+	 *            the matrices that were scanned, in scan order
+	 */
+	public HashMap<CSSequence, PatternSequenceDisplayUtil> addTo(
+			HashMap<CSSequence, PatternSequenceDisplayUtil> display,
+			List<? extends DSSequence> sequences,
+			List<? extends DSPositionSpecificAffintyMatrix> matrices) {
+		if (display == null) {
+			display = new HashMap<CSSequence, PatternSequenceDisplayUtil>();
+		}
+		for (int i = 0; i < size; i++) {
+			CSSequence s = (CSSequence) sequences.get(sequence[i]);
+			PatternSequenceDisplayUtil util = display.get(s);
+			if (util == null) {
+				util = new PatternSequenceDisplayUtil(s);
+				display.put(s, util);
+			}
+			DSPositionSpecificAffintyMatrix m = matrices.get(matrix[i]);
+			String ascii = m.getConsensusSequence() != null ? m
+					.getConsensusSequence() : m.getID();
+			PatternLocations pl = new PatternLocations(ascii,
+					getRegistration(i), PatternLocations.TFTYPE);
+			pl.setIDForDisplay(m.hashCode());
+			util.addPattern(pl);
+		}
+		return display;
+	}
+
+}
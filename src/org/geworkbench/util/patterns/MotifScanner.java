@@ -0,0 +1,262 @@
+package org.geworkbench.util.patterns;
+
+import java.util.List;
+
+import org.geworkbench.bison.datastructure.complex.pattern.matrix.DSPositionSpecificAffintyMatrix;
+import org.geworkbench.util.Parallel;
+
+/**
+ * Scans packed nucleotide sequences with position-specific affinity matrices
+ * (PSAMs) on both strands.
+ *
+ * PSAM scores are relative affinities indexed <code>[position][base]</code>
+ * with bases in A, C, G, T order, as written by MatrixREDUCE. The affinity of
+ * a site is the product of the affinities of its bases; the scanner works
+ * with its natural logarithm, precomputed per matrix as a lookup table for
+ * each strand. Windows containing anything but A, C, G or T are never hits.
+ *
+ * Sequences are split into blocks that are scanned in parallel; hits come
+ * back ordered by sequence, then matrix, then position and strand.
+ *
+ * @version $Id$
+ */
+public class MotifScanner {
+
+	private static final int CODES = PackedSequences.OTHER + 1;
+
+	private final int[] lengths;
+	/* per matrix: log-affinity by window offset and base code, each strand */
+	private final float[][] forward;
+	private final float[][] reverse;
+
+	public MotifScanner(List<? extends DSPositionSpecificAffintyMatrix> matrices) {
+		int n = matrices.size();
+		lengths = new int[n];
+		forward = new float[n][];
+		reverse = new float[n][];
+		for (int m = 0; m < n; m++) {
+			double[][] scores = matrices.get(m).getScores();
+			int len = scores.length;
+			lengths[m] = len;
+			forward[m] = new float[len * CODES];
+			reverse[m] = new float[len * CODES];
+			for (int i = 0; i < len; i++) {
+				for (byte c = 0; c < CODES; c++) {
+					forward[m][i * CODES + c] = logAffinity(scores[i], c);
+					// window offset i on the reverse strand pairs with the
+					// complement of matrix position len - 1 - i
+					reverse[m][i * CODES + c] = logAffinity(scores[len - 1 - i],
+							PackedSequences.complement(c));
+				}
+			}
+		}
+	}
+
+	private static float logAffinity(double[] position, byte code) {
+		if (code == PackedSequences.OTHER || !(position[code] > 0)) {
+			return Float.NEGATIVE_INFINITY;
+		}
+		return (float) Math.log(position[code]);
+	}
+
+	public int getMatrixCount() {
+		return lengths.length;
+	}
+
+	/**
+	 * All windows whose relative affinity is at least
+	 * <code>minAffinity</code> (between 0 and 1).
+	 */
+	public MotifHits scan(final PackedSequences sequences, double minAffinity) {
+		final float threshold = (float) Math.log(minAffinity);
+		final MotifHits[] blocks = new MotifHits[Math.max(1, Math.min(
+				sequences.size(), Parallel.getParallelism() * 8))];
+		final int blockSize = (sequences.size() + blocks.length - 1)
+				/ blocks.length;
+		Parallel.forRange(0, blocks.length, 1, new Parallel.RangeTask() {
+			public void run(int from, int to) {
+				for (int b = from; b < to; b++) {
+					MotifHits hits = new MotifHits();
+					int end = Math.min(sequences.size(), (b + 1) * blockSize);
+					for (int s = b * blockSize; s < end; s++) {
+						for (int m = 0; m < lengths.length; m++) {
+							scanSequence(sequences, s, m, threshold, hits, null);
+						}
+					}
+					blocks[b] = hits;
+				}
+			}
+		});
+		MotifHits all = new MotifHits();
+		for (MotifHits hits : blocks) {
+			if (hits != null) {
+				all.addAll(hits);
+			}
+		}
+		return all;
+	}
+
+	/**
+	 * The <code>k</code> best windows of every matrix over all sequences,
+	 * best first within each matrix, matrices in order.
+	 */
+	public MotifHits topHits(final PackedSequences sequences, final int k) {
+		final TopHits[] best = new TopHits[lengths.length];
+		Parallel.forRange(0, lengths.length, 1, new Parallel.RangeTask() {
+			public void run(int from, int to) {
+				for (int m = from; m < to; m++) {
+					TopHits top = new TopHits(k);
+					for (int s = 0; s < sequences.size(); s++) {
+						scanSequence(sequences, s, m, Float.NEGATIVE_INFINITY,
+								null, top);
+					}
+					best[m] = top;
+				}
+			}
+		});
+		MotifHits all = new MotifHits();
+		for (int m = 0; m < best.length; m++) {
+			best[m].drainTo(all, m, lengths[m]);
+		}
+		return all;
+	}
+
+	private void scanSequence(PackedSequences sequences, int s, int m,
+			float threshold, MotifHits hits, TopHits top) {
+		byte[] bases = sequences.getBases();
+		int offset = sequences.offset(s);
+		int len = lengths[m];
+		int last = sequences.length(s) - len;
+		float[] fw = forward[m];
+		float[] rc = reverse[m];
+		for (int p = 0; p <= last; p++) {
+			float f = 0;
+			float r = 0;
+			int base = offset + p;
+			for (int i = 0, t = 0; i < len; i++, t += CODES) {
+				byte c = bases[base + i];
+				f += fw[t + c];
+				r += rc[t + c];
+			}
+			if (f == Float.NEGATIVE_INFINITY && r == Float.NEGATIVE_INFINITY) {
+				continue;
+			}
+			if (hits != null) {
+				if (f >= threshold) {
+					hits.add(m, s, p, len, 0, f);
+				}
+				if (r >= threshold) {
+					hits.add(m, s, p, len, 1, r);
+				}
+			} else {
+				if (f > Float.NEGATIVE_INFINITY) {
+					top.offer(f, s, p, 0);
+				}
+				if (r > Float.NEGATIVE_INFINITY) {
+					top.offer(r, s, p, 1);
+				}
+			}
+		}
+	}
+
+	/* bounded min-heap on score; ties keep the earlier window */
+	private static final class TopHits {
+		private final float[] score;
+		private final int[] sequence;
+		private final int[] position;
+		private final byte[] strand;
+		private int size = 0;
+
+		TopHits(int k) {
+			score = new float[k];
+			sequence = new int[k];
+			position = new int[k];
+			strand = new byte[k];
+		}
+
+		void offer(float sc, int seq, int pos, int str) {
+			if (score.length == 0) {
+				return;
+			}
+			if (size < score.length) {
+				set(size, sc, seq, pos, str);
+				up(size++);
+			} else if (sc > score[0]) {
+				set(0, sc, seq, pos, str);
+				down(0);
+			}
+		}
+
+		void drainTo(MotifHits hits, int matrix, int length) {
+			int n = size;
+			// pop the worst repeatedly and fill from the back
+			float[] sc = new float[n];
+			int[] seq = new int[n];
+			int[] pos = new int[n];
+			byte[] str = new byte[n];
+			for (int i = n - 1; i >= 0; i--) {
+				sc[i] = score[0];
+				seq[i] = sequence[0];
+				pos[i] = position[0];
+				str[i] = strand[0];
+				size--;
+				if (size > 0) {
+					move(size, 0);
+					down(0);
+				}
+			}
+			for (int i = 0; i < n; i++) {
+				hits.add(matrix, seq[i], pos[i], length, str[i], sc[i]);
+			}
+		}
+
+		private void set(int i, float sc, int seq, int pos, int str) {
+			score[i] = sc;
+			sequence[i] = seq;
+			position[i] = pos;
+			strand[i] = (byte) str;
+		}
+
+		private void move(int from, int to) {
+			set(to, score[from], sequence[from], position[from], strand[from]);
+		}
+
+		private void swap(int i, int j) {
+			float sc = score[i];
+			int seq = sequence[i];
+			int pos = position[i];
+			byte str = strand[i];
+			move(j, i);
+			set(j, sc, seq, pos, str);
+		}
+
+		private void up(int i) {
+			while (i > 0) {
+				int parent = (i - 1) >>> 1;
+				if (score[parent] <= score[i]) {
+					break;
+				}
+				swap(i, parent);
+				i = parent;
+			}
+		}
+
+		private void down(int i) {
+			while (true) {
+				int child = 2 * i + 1;
+				if (child >= size) {
+					break;
+				}
+				if (child + 1 < size && score[child + 1] < score[child]) {
+					child++;
+				}
+				if (score[i] <= score[child]) {
+					break;
+				}
+				swap(i, child);
+				i = child;
+			}
+		}
+	}
+
+}
@@ -0,0 +1,85 @@
+package org.geworkbench.util.patterns;
+
+import java.util.List;
+
+import org.geworkbench.bison.datastructure.bioobjects.sequence.DSSequence;
+import org.geworkbench.util.Parallel;
+
+/**
+ * Nucleotide sequences encoded as one byte per base and concatenated into a
+ * single array: A=0, C=1, G=2, T=3, anything else (N, masked repeats, gaps)
+ * = {@link #OTHER}. Scanning code reads codes directly instead of calling
+ * <code>charAt</code> on every sequence string.
+ *
+ * @version $Id$
+ */
+public final class PackedSequences {
+
+	public static final byte A = 0;
+	public static final byte C = 1;
+	public static final byte G = 2;
+	public static final byte T = 3;
+	public static final byte OTHER = 4;
+
+	private static final byte[] CODE = new byte[128];
+	static {
+		for (int i = 0; i < CODE.length; i++) {
+			CODE[i] = OTHER;
+		}
+		CODE['A'] = CODE['a'] = A;
+		CODE['C'] = CODE['c'] = C;
+		CODE['G'] = CODE['g'] = G;
+		CODE['T'] = CODE['t'] = T;
+		CODE['U'] = CODE['u'] = T;
+	}
+
+	private final byte[] bases;
+	/* sequence i occupies [start[i], start[i + 1]) */
+	private final int[] start;
+
+	public PackedSequences(final List<? extends DSSequence> sequences) {
+		start = new int[sequences.size() + 1];
+		for (int i = 0; i < sequences.size(); i++) {
+			start[i + 1] = start[i] + sequences.get(i).length();
+		}
+		bases = new byte[start[sequences.size()]];
+		Parallel.forRange(0, sequences.size(), 64, new Parallel.RangeTask() {
+			public void run(int from, int to) {
+				for (int i = from; i < to; i++) {
+					String s = sequences.get(i).getSequence();
+					int offset = start[i];
+					for (int k = 0; k < s.length(); k++) {
+						bases[offset + k] = encode(s.charAt(k));
+					}
+				}
+			}
+		});
+	}
+
+	public static byte encode(char c) {
+		return c < 128 ? CODE[c] : OTHER;
+	}
+
+	/** Complement of a base code; OTHER stays OTHER. */
+	public static byte complement(byte code) {
+		return code == OTHER ? OTHER : (byte) (T - code);
+	}
+
+	public int size() {
+		return start.length - 1;
+	}
+
+	public int length(int sequence) {
+		return start[sequence + 1] - start[sequence];
+	}
+
+	/** Offset of the first base of <code>sequence</code> in {@link #getBases()}. */
+	public int offset(int sequence) {
+		return start[sequence];
+	}
+
+	public byte[] getBases() {
+		return bases;
+	}
+
+}
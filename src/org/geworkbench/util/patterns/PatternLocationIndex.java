@@ -0,0 +1,230 @@
+package org.geworkbench.util.patterns;
+
+import java.awt.Color;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.TreeSet;
+
+import org.geworkbench.bison.datastructure.biocollections.sequences.DSSequenceSet;
+import org.geworkbench.bison.datastructure.bioobjects.sequence.CSSequence;
+import org.geworkbench.bison.datastructure.bioobjects.sequence.DSSequence;
+import org.geworkbench.bison.datastructure.complex.pattern.sequence.CSSeqRegistration;
+
+/**
+ * Interval index over the pattern locations of a sequence set, answering
+ * "which hits of sequence <i>s</i> overlap bases [from, to)" without walking
+ * every hit of the sequence.
+ *
+ * Hits of each sequence are sorted by start and carry a running maximum of
+ * their ends, so both ends of the candidate range are found by binary
+ * search. Display colors, drawing extents, pattern type and strand are
+ * copied when the index is built; the index is immutable afterwards and can
+ * be read from any thread without touching the pattern locations.
+ *
+ * @version $Id$
+ */
+public final class PatternLocationIndex {
+
+	/** One pattern location with its resolved drawing extent and color. */
+	public static final class Hit {
+		private final PatternLocations location;
+		private final String patternType;
+		private final int start;
+		private final int registrationEnd;
+		private final int strand;
+		private final int length;
+		private final int end;
+		private final Color color;
+
+		private Hit(PatternLocations location, CSSeqRegistration reg,
+				int length, int end, Color color) {
+			this.location = location;
+			this.patternType = location.getPatternType();
+			this.start = reg.x1;
+			this.registrationEnd = reg.x2;
+			this.strand = reg.strand;
+			this.length = length;
+			this.end = end;
+			this.color = color;
+		}
+
+		/** The location indexed; read it on the event dispatch thread only. */
+		public PatternLocations getLocation() {
+			return location;
+		}
+
+		/** {@link PatternLocations#getPatternType()} when indexed. */
+		public String getPatternType() {
+			return patternType;
+		}
+
+		/** Start of the registration. */
+		public int getStart() {
+			return start;
+		}
+
+		/** Exclusive end of the registration. */
+		public int getRegistrationEnd() {
+			return registrationEnd;
+		}
+
+		public int getStrand() {
+			return strand;
+		}
+
+		/**
+		 * Number of bases drawn in the full sequence view: the ascii length
+		 * for discovered patterns, the registration length otherwise.
+		 */
+		public int getLength() {
+			return length;
+		}
+
+		/** Exclusive end of the bases the hit covers when drawn. */
+		public int getEnd() {
+			return end;
+		}
+
+		public Color getColor() {
+			return color;
+		}
+	}
+
+	private static final Hit[] NONE = new Hit[0];
+
+	/* per sequence index: hits sorted by start, and prefix maximum of ends */
+	private final Hit[][] hits;
+	private final int[][] maxEnd;
+	private final int hitCount;
+
+	/**
+	 * Index the pattern locations of every sequence of <code>sequences</code>,
+	 * addressed by position in the set. Must be called on the event dispatch
+	 * thread since pattern colors are assigned lazily by
+	 * {@link PatternOperations#getPatternColor(int)}.
+	 */
+	public PatternLocationIndex(
+			HashMap<CSSequence, PatternSequenceDisplayUtil> patternSeqMatches,
+			DSSequenceSet<? extends DSSequence> sequences) {
+		int n = sequences == null ? 0 : sequences.size();
+		hits = new Hit[n][];
+		maxEnd = new int[n][];
+		int count = 0;
+		for (int i = 0; i < n; i++) {
+			hits[i] = NONE;
+			maxEnd[i] = new int[0];
+			if (patternSeqMatches == null) {
+				continue;
+			}
+			DSSequence sequence = sequences.getSequence(i);
+			if (sequence == null) {
+				continue;
+			}
+			PatternSequenceDisplayUtil psd = patternSeqMatches.get(sequence);
+			if (psd == null || psd.getTreeSet() == null) {
+				continue;
+			}
+			Hit[] h = index(psd.getTreeSet());
+			int[] m = new int[h.length];
+			int max = Integer.MIN_VALUE;
+			for (int k = 0; k < h.length; k++) {
+				max = Math.max(max, h[k].end);
+				m[k] = max;
+			}
+			hits[i] = h;
+			maxEnd[i] = m;
+			count += h.length;
+		}
+		hitCount = count;
+	}
+
+	private static Hit[] index(TreeSet<PatternLocations> locations) {
+		List<Hit> list = new ArrayList<Hit>(locations.size());
+		for (PatternLocations pl : locations) {
+			CSSeqRegistration reg = pl.getRegistration();
+			if (reg == null) {
+				continue;
+			}
+			int length = reg.length();
+			if (PatternLocations.DEFAULTTYPE.equals(pl.getPatternType())) {
+				// the full view draws the ascii form
+				length = pl.getAsciiLength();
+			}
+			int end = Math.max(reg.x2, reg.x1 + length);
+			list.add(new Hit(pl, reg, length, end, PatternOperations
+					.getPatternColor(pl.getIdForDisplay())));
+		}
+		Hit[] h = list.toArray(new Hit[list.size()]);
+		// the tree set orders by start already; sort anyway so that an
+		// inconsistent comparator cannot break the binary searches
+		Arrays.sort(h, new Comparator<Hit>() {
+			public int compare(Hit a, Hit b) {
+				return a.start < b.start ? -1 : (a.start == b.start ? 0 : 1);
+			}
+		});
+		return h;
+	}
+
+	public int getSequenceCount() {
+		return hits.length;
+	}
+
+	public int getHitCount() {
+		return hitCount;
+	}
+
+	/** All hits of one sequence, by start. */
+	public List<Hit> getHits(int sequence) {
+		if (sequence < 0 || sequence >= hits.length) {
+			return Collections.emptyList();
+		}
+		return Collections.unmodifiableList(Arrays.asList(hits[sequence]));
+	}
+
+	/**
+	 * Hits of one sequence that cover at least one base of [from, to), by
+	 * start.
+	 */
+	public List<Hit> overlapping(int sequence, int from, int to) {
+		if (sequence < 0 || sequence >= hits.length || from >= to) {
+			return Collections.emptyList();
+		}
+		Hit[] h = hits[sequence];
+		int[] m = maxEnd[sequence];
+		// first hit whose running maximum end passes from
+		int lo = 0;
+		int hi = h.length;
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if (m[mid] > from) {
+				hi = mid;
+			} else {
+				lo = mid + 1;
+			}
+		}
+		int first = lo;
+		// first hit starting at or after to
+		lo = first;
+		hi = h.length;
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if (h[mid].start >= to) {
+				hi = mid;
+			} else {
+				lo = mid + 1;
+			}
+		}
+		List<Hit> result = new ArrayList<Hit>(lo - first);
+		for (int k = first; k < lo; k++) {
+			if (h[k].end > from) {
+				result.add(h[k]);
+			}
+		}
+		return result;
+	}
+
+}
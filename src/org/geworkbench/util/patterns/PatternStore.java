@@ -0,0 +1,882 @@
+package org.geworkbench.util.patterns;
+
+import java.io.BufferedWriter;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+
+import org.geworkbench.bison.datastructure.biocollections.sequences.DSSequenceSet;
+import org.geworkbench.bison.datastructure.bioobjects.sequence.DSSequence;
+import org.geworkbench.util.BinaryEncodeDecode;
+import org.geworkbench.util.Parallel;
+
+/**
+ * Sequence patterns held in shared primitive columns. Pattern <i>p</i> has
+ * its summary fields at index <i>p</i> of the per-pattern columns, its ASCII
+ * form in <code>ascii[asciiStart[p], asciiStart[p + 1])</code> and its loci
+ * (sequence id and offset, as written in pattern files) in
+ * <code>[locusStart[p], locusStart[p + 1])</code> of the locus columns.
+ *
+ * Patterns are read from the text format written by
+ * {@link CSMatchedSeqPattern#write(BufferedWriter)}, split into chunks that
+ * are parsed in parallel, or from the binary form of
+ * {@link #write(DataOutput)}. {@link #getPattern(int)} returns a view that
+ * reads the columns; nothing per pattern is allocated until asked for, and
+ * the same view is returned for a pattern from then on. A view that is
+ * changed beyond its p-value and number of sequences holds its own fields;
+ * the columns no longer describe it ({@link #isChanged()}) until the store is
+ * written, which writes the view's fields in its place.
+ *
+ * @version $Id$
+ */
+public final class PatternStore implements Serializable {
+
+	private static final long serialVersionUID = 4178129347601338410L;
+
+	/** Sort orders of {@link #order(int)}, as used by {@link PatternSorter}. */
+	public static final int BY_SUPPORT = 1;
+	public static final int BY_SEQUENCES = 2;
+	public static final int BY_LENGTH = 3;
+	public static final int BY_PVALUE = 4;
+
+	private static final int MAGIC = 0x50415453; // "PATS"
+	private static final int VERSION = 1;
+
+	private transient int size;
+	private transient int[] seqNo;
+	private transient int[] support;
+	private transient double[] pValue;
+	/* tokens other than '.', position of the first and extent to the last */
+	private transient int[] length;
+	private transient int[] base;
+	private transient int[] extent;
+	private transient int[] dots;
+
+	private transient int[] asciiStart;
+	private transient byte[] ascii;
+	private transient int asciiSize;
+
+	private transient int[] locusStart;
+	private transient int[] locusSeq;
+	private transient int[] locusOffset;
+	private transient int locusCount;
+
+	/* per sequence id: the loci in it, built on first use */
+	private transient volatile int[][] sequenceIndex;
+
+	/* views handed out by getPattern, and those that hold their own fields */
+	private transient CSMatchedSeqPattern[] views;
+	private transient BitSet changed;
+
+	public PatternStore() {
+		this(16, 16);
+	}
+
+	private PatternStore(int patterns, int loci) {
+		patterns = Math.max(1, patterns);
+		loci = Math.max(1, loci);
+		seqNo = new int[patterns];
+		support = new int[patterns];
+		pValue = new double[patterns];
+		length = new int[patterns];
+		base = new int[patterns];
+		extent = new int[patterns];
+		dots = new int[patterns];
+		asciiStart = new int[patterns + 1];
+		ascii = new byte[patterns * 8];
+		locusStart = new int[patterns + 1];
+		locusSeq = new int[loci];
+		locusOffset = new int[loci];
+	}
+
+	/**
+	 * Parse the pattern lines in <code>data[from, to)</code>. Lines that are
+	 * not patterns are skipped.
+	 */
+	public static PatternStore parse(final byte[] data, int from, int to) {
+		int chunks = Math.max(1, Math.min(Parallel.getParallelism() * 4,
+				(to - from) >> 16));
+		final int[] bounds = new int[chunks + 1];
+		bounds[0] = from;
+		bounds[chunks] = to;
+		for (int c = 1; c < chunks; c++) {
+			int p = Math.max(bounds[c - 1], from + (int) ((long) (to - from)
+					* c / chunks));
+			while (p < to && data[p - 1] != '\n') {
+				p++;
+			}
+			bounds[c] = p;
+		}
+		final PatternStore[] parts = new PatternStore[chunks];
+		Parallel.forRange(0, chunks, 1, new Parallel.RangeTask() {
+			public void run(int first, int last) {
+				for (int c = first; c < last; c++) {
+					PatternStore part = new PatternStore(
+							(bounds[c + 1] - bounds[c]) / 64, 16);
+					for (int p = bounds[c]; p < bounds[c + 1];) {
+						int end = p;
+						while (end < bounds[c + 1] && data[end] != '\n') {
+							end++;
+						}
+						part.parseLine(data, p, end);
+						p = end + 1;
+					}
+					parts[c] = part;
+				}
+			}
+		});
+		if (chunks == 1) {
+			return parts[0];
+		}
+		int patterns = 0;
+		int loci = 0;
+		for (PatternStore part : parts) {
+			patterns += part.size;
+			loci += part.locusCount;
+		}
+		PatternStore store = new PatternStore(patterns, loci);
+		for (PatternStore part : parts) {
+			store.append(part);
+		}
+		return store;
+	}
+
+	/**
+	 * Parse one line of the form
+	 * <code>[n]&lt;tab&gt;ascii&lt;tab&gt;[sequences,support,tokens,pvalue]&lt;tab&gt;[id,offset]...</code>
+	 * and add it as a pattern.
+	 *
+	 * @return false if the line is not a pattern
+	 */
+	boolean parseLine(byte[] b, int p, int end) {
+		// [n]
+		if (p >= end || b[p] != '[') {
+			return false;
+		}
+		p = skipDigits(b, p + 1, end);
+		if (p >= end || b[p] != ']') {
+			return false;
+		}
+		p = skipSpace(b, p + 1, end);
+		int asciiFrom = p;
+		while (p < end && !isSpace(b[p])) {
+			p++;
+		}
+		int asciiTo = p;
+		if (asciiFrom == asciiTo) {
+			return false;
+		}
+		p = skipSpace(b, p, end);
+		if (p >= end || b[p] != '[') {
+			return false;
+		}
+		int close = p;
+		while (close < end && b[close] != ']') {
+			close++;
+		}
+		if (close >= end) {
+			return false;
+		}
+		// sequences, support, tokens and p-value separated by non-digits
+		long[] numbers = new long[3];
+		int q = p + 1;
+		for (int k = 0; k < 3; k++) {
+			while (q < close && !isDigit(b[q])) {
+				q++;
+			}
+			if (q >= close) {
+				return false;
+			}
+			long v = 0;
+			while (q < close && isDigit(b[q])) {
+				v = v * 10 + (b[q++] - '0');
+			}
+			numbers[k] = v;
+		}
+		while (q < close && !isDigit(b[q]) && b[q] != '-' && b[q] != '.') {
+			q++;
+		}
+		double p0;
+		try {
+			p0 = Double.parseDouble(new String(b, q, close - q, "ISO-8859-1")
+					.trim());
+		} catch (Exception e) {
+			return false;
+		}
+
+		int idNo = (int) numbers[1];
+		ensurePattern(asciiTo - asciiFrom);
+		ensureLoci(idNo);
+		int pattern = size;
+		seqNo[pattern] = (int) numbers[0];
+		support[pattern] = idNo;
+		pValue[pattern] = p0;
+		System.arraycopy(b, asciiFrom, ascii, asciiSize, asciiTo - asciiFrom);
+		asciiSize += asciiTo - asciiFrom;
+		asciiStart[pattern + 1] = asciiSize;
+		measure(pattern, b, asciiFrom, asciiTo);
+
+		// [id,offset] pairs; missing ones are zero, extra ones ignored
+		int found = 0;
+		p = close + 1;
+		while (p < end && found < idNo) {
+			while (p < end && b[p] != '[') {
+				p++;
+			}
+			int id = 0;
+			int dx = 0;
+			p = skipNonDigits(b, p, end);
+			int digits = p;
+			while (p < end && isDigit(b[p])) {
+				id = id * 10 + (b[p++] - '0');
+			}
+			if (p == digits) {
+				break;
+			}
+			p = skipNonDigits(b, p, end);
+			digits = p;
+			while (p < end && isDigit(b[p])) {
+				dx = dx * 10 + (b[p++] - '0');
+			}
+			if (p == digits || p >= end || b[p] != ']') {
+				break;
+			}
+			locusSeq[locusCount + found] = id;
+			locusOffset[locusCount + found] = dx;
+			found++;
+		}
+		for (int k = found; k < idNo; k++) {
+			locusSeq[locusCount + k] = 0;
+			locusOffset[locusCount + k] = 0;
+		}
+		locusCount += idNo;
+		locusStart[pattern + 1] = locusCount;
+		size++;
+		return true;
+	}
+
+	/*
+	 * tokens are letters, '.' or bracketed alternatives; other characters do
+	 * not take a position
+	 */
+	private void measure(int pattern, byte[] b, int from, int to) {
+		int position = 0;
+		int tokens = 0;
+		int first = -1;
+		int last = -1;
+		int dotCount = 0;
+		for (int i = from; i < to; i++) {
+			byte c = b[i];
+			if (c == '.') {
+				dotCount++;
+				position++;
+			} else if (isLetter(c)) {
+				if (first < 0) {
+					first = position;
+				}
+				last = position++;
+				tokens++;
+			} else if (c == '[') {
+				int close = i + 1;
+				while (close < to && b[close] != ']') {
+					close++;
+				}
+				if (close < to && close > i + 1) {
+					if (first < 0) {
+						first = position;
+					}
+					last = position++;
+					tokens++;
+					for (int k = i + 1; k < close; k++) {
+						if (b[k] == '.') {
+							dotCount++;
+						}
+					}
+					i = close;
+				}
+			}
+		}
+		length[pattern] = tokens;
+		base[pattern] = Math.max(0, first);
+		extent[pattern] = tokens == 0 ? 0 : last + 1 - first;
+		dots[pattern] = dotCount;
+	}
+
+	private void append(PatternStore other) {
+		int n = other.size;
+		System.arraycopy(other.seqNo, 0, seqNo, size, n);
+		System.arraycopy(other.support, 0, support, size, n);
+		System.arraycopy(other.pValue, 0, pValue, size, n);
+		System.arraycopy(other.length, 0, length, size, n);
+		System.arraycopy(other.base, 0, base, size, n);
+		System.arraycopy(other.extent, 0, extent, size, n);
+		System.arraycopy(other.dots, 0, dots, size, n);
+		ensureAscii(other.asciiSize);
+		System.arraycopy(other.ascii, 0, ascii, asciiSize, other.asciiSize);
+		for (int p = 0; p < n; p++) {
+			asciiStart[size + p + 1] = asciiSize + other.asciiStart[p + 1];
+			locusStart[size + p + 1] = locusCount + other.locusStart[p + 1];
+		}
+		System.arraycopy(other.locusSeq, 0, locusSeq, locusCount,
+				other.locusCount);
+		System.arraycopy(other.locusOffset, 0, locusOffset, locusCount,
+				other.locusCount);
+		size += n;
+		asciiSize += other.asciiSize;
+		locusCount += other.locusCount;
+	}
+
+	private void ensurePattern(int asciiLength) {
+		if (size == seqNo.length) {
+			int capacity = size * 2;
+			seqNo = Arrays.copyOf(seqNo, capacity);
+			support = Arrays.copyOf(support, capacity);
+			pValue = Arrays.copyOf(pValue, capacity);
+			length = Arrays.copyOf(length, capacity);
+			base = Arrays.copyOf(base, capacity);
+			extent = Arrays.copyOf(extent, capacity);
+			dots = Arrays.copyOf(dots, capacity);
+			asciiStart = Arrays.copyOf(asciiStart, capacity + 1);
+			locusStart = Arrays.copyOf(locusStart, capacity + 1);
+		}
+		ensureAscii(asciiLength);
+	}
+
+	private void ensureAscii(int more) {
+		if (asciiSize + more > ascii.length) {
+			ascii = Arrays.copyOf(ascii, Math.max(ascii.length * 2, asciiSize
+					+ more));
+		}
+	}
+
+	private void ensureLoci(int more) {
+		if (locusCount + more > locusSeq.length) {
+			int capacity = Math.max(locusSeq.length * 2, locusCount + more);
+			locusSeq = Arrays.copyOf(locusSeq, capacity);
+			locusOffset = Arrays.copyOf(locusOffset, capacity);
+		}
+	}
+
+	private static boolean isDigit(byte c) {
+		return c >= '0' && c <= '9';
+	}
+
+	private static boolean isLetter(byte c) {
+		return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+	}
+
+	private static boolean isSpace(byte c) {
+		return c == ' ' || c == '\t' || c == '\r' || c == '\f' || c == 0x0b;
+	}
+
+	private static int skipDigits(byte[] b, int p, int end) {
+		while (p < end && isDigit(b[p])) {
+			p++;
+		}
+		return p;
+	}
+
+	private static int skipNonDigits(byte[] b, int p, int end) {
+		while (p < end && !isDigit(b[p]) && b[p] != ']') {
+			p++;
+		}
+		return p;
+	}
+
+	private static int skipSpace(byte[] b, int p, int end) {
+		while (p < end && isSpace(b[p])) {
+			p++;
+		}
+		return p;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	/** The pattern reading this store; the same one on every call. */
+	public synchronized CSMatchedSeqPattern getPattern(int pattern) {
+		if (pattern < 0 || pattern >= size) {
+			throw new IndexOutOfBoundsException("[pattern=" + pattern
+					+ ", size=" + size + "]");
+		}
+		if (views == null) {
+			views = new CSMatchedSeqPattern[size];
+		}
+		if (views[pattern] == null) {
+			views[pattern] = new CSMatchedSeqPattern(this, pattern);
+		}
+		return views[pattern];
+	}
+
+	/* called by a view that copies its fields out to be changed */
+	synchronized void detached(int pattern) {
+		if (changed == null) {
+			changed = new BitSet(size);
+		}
+		changed.set(pattern);
+	}
+
+	/**
+	 * True if a pattern from {@link #getPattern(int)} has been changed so that
+	 * the columns, and what is read or sorted from them, no longer describe
+	 * it.
+	 */
+	public synchronized boolean isChanged() {
+		return changed != null && !changed.isEmpty();
+	}
+
+	public int getUniqueSupport(int pattern) {
+		return seqNo[pattern];
+	}
+
+	void setUniqueSupport(int pattern, int value) {
+		seqNo[pattern] = value;
+	}
+
+	/** Number of loci, as written in the pattern header. */
+	public int getSupport(int pattern) {
+		return support[pattern] != -1 ? support[pattern] : 0;
+	}
+
+	public double getPValue(int pattern) {
+		return pValue[pattern];
+	}
+
+	void setPValue(int pattern, double value) {
+		pValue[pattern] = value;
+	}
+
+	/** Number of tokens other than '.'. */
+	public int getLength(int pattern) {
+		return length[pattern];
+	}
+
+	/** Position of the first token other than '.'. */
+	int getBase(int pattern) {
+		return base[pattern];
+	}
+
+	/** Number of '.' characters in the ASCII form. */
+	int getDotCount(int pattern) {
+		return dots[pattern];
+	}
+
+	public String getASCII(int pattern) {
+		int from = asciiStart[pattern];
+		char[] chars = new char[asciiStart[pattern + 1] - from];
+		for (int i = 0; i < chars.length; i++) {
+			chars[i] = (char) (ascii[from + i] & 0xff);
+		}
+		return new String(chars);
+	}
+
+	/** Sequence id of a locus of a pattern. */
+	public int getLocusSequence(int pattern, int locus) {
+		return locusSeq[locusStart[pattern] + locus];
+	}
+
+	/** Start of a locus of a pattern within its sequence. */
+	public int getLocusOffset(int pattern, int locus) {
+		return locusOffset[locusStart[pattern] + locus] + base[pattern];
+	}
+
+	public int getMaxLength(int pattern) {
+		int maxLen = 0;
+		int span = extent[pattern] + base[pattern];
+		for (int l = locusStart[pattern]; l < locusStart[pattern + 1]; l++) {
+			maxLen = Math.max(maxLen, locusOffset[l] + span);
+		}
+		return maxLen;
+	}
+
+	/** The loci of all patterns that fall in one sequence, by pattern. */
+	public int[] getSequenceLoci(int sequence) {
+		int[][] index = sequenceIndex;
+		if (index == null) {
+			index = buildSequenceIndex();
+		}
+		return sequence >= 0 && sequence < index.length ? index[sequence]
+				.clone() : new int[0];
+	}
+
+	/** The pattern a locus returned by {@link #getSequenceLoci(int)} is of. */
+	public int getLocusPattern(int locus) {
+		int lo = 0;
+		int hi = size - 1;
+		while (lo < hi) {
+			int mid = (lo + hi + 1) >>> 1;
+			if (locusStart[mid] <= locus) {
+				lo = mid;
+			} else {
+				hi = mid - 1;
+			}
+		}
+		return lo;
+	}
+
+	/** Position of a locus returned by {@link #getSequenceLoci(int)}. */
+	public int getLocusPosition(int locus) {
+		return locusOffset[locus] + base[getLocusPattern(locus)];
+	}
+
+	private synchronized int[][] buildSequenceIndex() {
+		if (sequenceIndex != null) {
+			return sequenceIndex;
+		}
+		int sequences = 0;
+		for (int l = 0; l < locusCount; l++) {
+			sequences = Math.max(sequences, locusSeq[l] + 1);
+		}
+		int[] counts = new int[sequences];
+		for (int l = 0; l < locusCount; l++) {
+			counts[locusSeq[l]]++;
+		}
+		int[][] index = new int[sequences][];
+		for (int s = 0; s < sequences; s++) {
+			index[s] = new int[counts[s]];
+			counts[s] = 0;
+		}
+		for (int l = 0; l < locusCount; l++) {
+			int s = locusSeq[l];
+			index[s][counts[s]++] = l;
+		}
+		sequenceIndex = index;
+		return index;
+	}
+
+	/**
+	 * Pattern indices in the order {@link PatternSorter} gives for
+	 * <code>mode</code>; stable, largest first.
+	 */
+	public int[] order(int mode) {
+		int[] order = new int[size];
+		for (int i = 0; i < size; i++) {
+			order[i] = i;
+		}
+		sort(order, mode);
+		return order;
+	}
+
+	/** Sort a subset of pattern indices like {@link #order(int)}. */
+	public void sort(int[] patterns, int mode) {
+		if (patterns.length > 1) {
+			int[] work = patterns.clone();
+			mergeSort(work, patterns, 0, patterns.length, mode);
+		}
+	}
+
+	/* top-down merge sort from src into dst; src and dst start equal */
+	private void mergeSort(int[] src, int[] dst, int from, int to, int mode) {
+		if (to - from < 16) {
+			for (int i = from + 1; i < to; i++) {
+				int v = dst[i];
+				int j = i - 1;
+				while (j >= from && compare(dst[j], v, mode) > 0) {
+					dst[j + 1] = dst[j];
+					j--;
+				}
+				dst[j + 1] = v;
+			}
+			return;
+		}
+		int mid = (from + to) >>> 1;
+		mergeSort(dst, src, from, mid, mode);
+		mergeSort(dst, src, mid, to, mode);
+		if (compare(src[mid - 1], src[mid], mode) <= 0) {
+			System.arraycopy(src, from, dst, from, to - from);
+			return;
+		}
+		for (int i = from, p = from, q = mid; i < to; i++) {
+			if (q >= to || (p < mid && compare(src[p], src[q], mode) <= 0)) {
+				dst[i] = src[p++];
+			} else {
+				dst[i] = src[q++];
+			}
+		}
+	}
+
+	/* negative if a comes first; larger values come first */
+	private int compare(int a, int b, int mode) {
+		switch (mode) {
+		case BY_SUPPORT:
+			return chain(desc(getSupport(a), getSupport(b)), desc(seqNo[a],
+					seqNo[b]), desc(length[a], length[b]));
+		case BY_SEQUENCES:
+			return chain(desc(seqNo[a], seqNo[b]), desc(getSupport(a),
+					getSupport(b)), desc(length[a], length[b]));
+		case BY_LENGTH:
+			return chain(desc(length[a], length[b]), desc(seqNo[a], seqNo[b]),
+					desc(getSupport(a), getSupport(b)));
+		case BY_PVALUE:
+			int c = pValue[a] < pValue[b] ? 1 : (pValue[a] == pValue[b] ? 0
+					: -1);
+			return c != 0 ? c : desc(getSupport(a), getSupport(b));
+		default:
+			return 0;
+		}
+	}
+
+	private static int desc(int a, int b) {
+		return a < b ? 1 : (a == b ? 0 : -1);
+	}
+
+	private static int chain(int first, int second, int third) {
+		return first != 0 ? first : (second != 0 ? second : third);
+	}
+
+	/**
+	 * Indices of the patterns with at least the given support, number of
+	 * sequences and tokens, in store order.
+	 */
+	public int[] select(int minSupport, int minSequences, int minLength) {
+		int[] selected = new int[size];
+		int n = 0;
+		for (int p = 0; p < size; p++) {
+			if (getSupport(p) >= minSupport && seqNo[p] >= minSequences
+					&& length[p] >= minLength) {
+				selected[n++] = p;
+			}
+		}
+		return Arrays.copyOf(selected, n);
+	}
+
+	/** Write one pattern in the text form read by {@link #parse}. */
+	void write(int pattern, BufferedWriter writer) throws IOException {
+		StringBuilder line = new StringBuilder(asciiStart[pattern + 1]
+				- asciiStart[pattern] + 32 + 16 * getSupport(pattern));
+		line.append(getASCII(pattern)).append('\t');
+		line.append('[').append(seqNo[pattern]).append(',').append(
+				getSupport(pattern)).append(',').append(length[pattern])
+				.append(',').append(pValue[pattern]).append("]\t");
+		for (int l = 0; l < getSupport(pattern); l++) {
+			line.append('[').append(getLocusSequence(pattern, l)).append(',')
+					.append(getLocusOffset(pattern, l)).append(']');
+		}
+		writer.write(line.toString());
+		writer.newLine();
+	}
+
+	/** A standalone copy of one pattern, as the text parser used to build. */
+	CSMatchedSeqPattern materialize(int pattern) {
+		CSMatchedSeqPattern p = new CSMatchedSeqPattern(
+				(DSSequenceSet<DSSequence>) null);
+		int loci = locusStart[pattern + 1] - locusStart[pattern];
+		byte[] locus = new byte[loci * 8];
+		for (int l = 0; l < loci; l++) {
+			int at = locusStart[pattern] + l;
+			BinaryEncodeDecode.encodeUnsignedInt32(locus, 2 * l, locusSeq[at]);
+			BinaryEncodeDecode.encodeUnsignedInt32(locus, 2 * l + 1,
+					locusOffset[at]);
+		}
+		p.setLocus(locus);
+		p.setOffset(offsets(pattern));
+		p.setIdNo(support[pattern]);
+		p.setSeqNo(seqNo[pattern]);
+		p.setPValue(pValue[pattern]);
+		p.setASCII(getASCII(pattern));
+		return p;
+	}
+
+	/* the tokens of the ASCII form with their positions */
+	ArrayList<PatternOfflet> offsets(int pattern) {
+		ArrayList<PatternOfflet> offsets = new ArrayList<PatternOfflet>(
+				length[pattern]);
+		String s = getASCII(pattern);
+		int position = 0;
+		for (int i = 0; i < s.length(); i++) {
+			char c = s.charAt(i);
+			if (c == '.') {
+				position++;
+			} else if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z')) {
+				offsets.add(new PatternOfflet(position++, String.valueOf(c)));
+			} else if (c == '[') {
+				int close = s.indexOf(']', i + 1);
+				if (close > i + 1) {
+					offsets.add(new PatternOfflet(position++, s.substring(
+							i, close + 1)));
+					i = close;
+				}
+			}
+		}
+		return offsets;
+	}
+
+	/**
+	 * Write the store in the binary form read by {@link #read(DataInput)},
+	 * with the fields of changed patterns in place of their columns.
+	 */
+	public void write(DataOutput out) throws IOException {
+		merged().writeColumns(out);
+	}
+
+	private synchronized PatternStore merged() {
+		if (!isChanged()) {
+			return this;
+		}
+		PatternStore merged = new PatternStore(size, locusCount);
+		for (int p = 0; p < size; p++) {
+			if (changed.get(p)) {
+				merged.add(views[p]);
+			} else {
+				merged.copy(this, p);
+			}
+		}
+		return merged;
+	}
+
+	/* add a row copied from another store */
+	private void copy(PatternStore other, int pattern) {
+		int from = other.asciiStart[pattern];
+		int chars = other.asciiStart[pattern + 1] - from;
+		int firstLocus = other.locusStart[pattern];
+		int loci = other.locusStart[pattern + 1] - firstLocus;
+		ensurePattern(chars);
+		ensureLoci(loci);
+		seqNo[size] = other.seqNo[pattern];
+		support[size] = other.support[pattern];
+		pValue[size] = other.pValue[pattern];
+		length[size] = other.length[pattern];
+		base[size] = other.base[pattern];
+		extent[size] = other.extent[pattern];
+		dots[size] = other.dots[pattern];
+		System.arraycopy(other.ascii, from, ascii, asciiSize, chars);
+		asciiSize += chars;
+		asciiStart[size + 1] = asciiSize;
+		System.arraycopy(other.locusSeq, firstLocus, locusSeq, locusCount,
+				loci);
+		System.arraycopy(other.locusOffset, firstLocus, locusOffset,
+				locusCount, loci);
+		locusCount += loci;
+		locusStart[size + 1] = locusCount;
+		size++;
+	}
+
+	/* add a row from the fields of a pattern that holds its own */
+	private void add(CSMatchedSeqPattern pattern) {
+		String text = pattern.getASCII();
+		byte[] b = new byte[text == null ? 0 : text.length()];
+		for (int i = 0; i < b.length; i++) {
+			b[i] = (byte) text.charAt(i);
+		}
+		int idNo = pattern.getIdNo();
+		byte[] locus = pattern.getLocus();
+		int loci = Math.max(0, idNo);
+		int known = locus == null ? 0 : Math.min(loci, locus.length / 8);
+		ensurePattern(b.length);
+		ensureLoci(loci);
+		seqNo[size] = pattern.getUniqueSupport();
+		support[size] = idNo;
+		pValue[size] = pattern.getPValue();
+		System.arraycopy(b, 0, ascii, asciiSize, b.length);
+		asciiSize += b.length;
+		asciiStart[size + 1] = asciiSize;
+		measure(size, b, 0, b.length);
+		for (int l = 0; l < loci; l++) {
+			locusSeq[locusCount + l] = l < known ? BinaryEncodeDecode
+					.decodeUnsignedInt32(locus, 2 * l) : 0;
+			locusOffset[locusCount + l] = l < known ? BinaryEncodeDecode
+					.decodeUnsignedInt32(locus, 2 * l + 1) : 0;
+		}
+		locusCount += loci;
+		locusStart[size + 1] = locusCount;
+		size++;
+	}
+
+	private void writeColumns(DataOutput out) throws IOException {
+		out.writeInt(MAGIC);
+		out.writeInt(VERSION);
+		out.writeInt(size);
+		out.writeInt(asciiSize);
+		out.writeInt(locusCount);
+		for (int p = 0; p < size; p++) {
+			out.writeInt(seqNo[p]);
+			out.writeInt(support[p]);
+			out.writeDouble(pValue[p]);
+			out.writeInt(asciiStart[p + 1] - asciiStart[p]);
+			out.writeInt(locusStart[p + 1] - locusStart[p]);
+		}
+		out.write(ascii, 0, asciiSize);
+		for (int l = 0; l < locusCount; l++) {
+			out.writeInt(locusSeq[l]);
+			out.writeInt(locusOffset[l]);
+		}
+	}
+
+	/**
+	 * Read a store written by {@link #write(DataOutput)}.
+	 *
+	 * @throws IOException
+	 *             if the data is not a pattern store of this version
+	 */
+	public static PatternStore read(DataInput in) throws IOException {
+		if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+			throw new IOException("not a pattern store");
+		}
+		int patterns = in.readInt();
+		int asciiSize = in.readInt();
+		int loci = in.readInt();
+		PatternStore store = new PatternStore(patterns, loci);
+		store.ascii = new byte[Math.max(1, asciiSize)];
+		for (int p = 0; p < patterns; p++) {
+			store.seqNo[p] = in.readInt();
+			store.support[p] = in.readInt();
+			store.pValue[p] = in.readDouble();
+			store.asciiStart[p + 1] = store.asciiStart[p] + in.readInt();
+			store.locusStart[p + 1] = store.locusStart[p] + in.readInt();
+		}
+		in.readFully(store.ascii, 0, asciiSize);
+		for (int l = 0; l < loci; l++) {
+			store.locusSeq[l] = in.readInt();
+			store.locusOffset[l] = in.readInt();
+		}
+		store.size = patterns;
+		store.asciiSize = asciiSize;
+		store.locusCount = loci;
+		for (int p = 0; p < patterns; p++) {
+			store.measure(p, store.ascii, store.asciiStart[p],
+					store.asciiStart[p + 1]);
+		}
+		return store;
+	}
+
+	/** True if <code>data</code> starts like {@link #write(DataOutput)}. */
+	public static boolean isStore(byte[] data, int length) {
+		return length >= 4
+				&& ((data[0] & 0xff) << 24 | (data[1] & 0xff) << 16
+						| (data[2] & 0xff) << 8 | (data[3] & 0xff)) == MAGIC;
+	}
+
+	private void writeObject(ObjectOutputStream out) throws IOException {
+		out.defaultWriteObject();
+		write(out);
+	}
+
+	private void readObject(ObjectInputStream in) throws IOException,
+			ClassNotFoundException {
+		in.defaultReadObject();
+		PatternStore read = read(in);
+		size = read.size;
+		seqNo = read.seqNo;
+		support = read.support;
+		pValue = read.pValue;
+		length = read.length;
+		base = read.base;
+		extent = read.extent;
+		dots = read.dots;
+		asciiStart = read.asciiStart;
+		ascii = read.ascii;
+		asciiSize = read.asciiSize;
+		locusStart = read.locusStart;
+		locusSeq = read.locusSeq;
+		locusOffset = read.locusOffset;
+		locusCount = read.locusCount;
+	}
+
+}
@@ -3,6 +3,7 @@ package org.geworkbench.util.sequences;
 import java.text.DecimalFormat;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
 
 import javax.swing.table.AbstractTableModel;
@@ -10,6 +11,7 @@ import javax.swing.table.AbstractTableModel;
 import org.geworkbench.bison.datastructure.complex.pattern.PatternResult;
 import org.geworkbench.bison.datastructure.complex.pattern.sequence.DSMatchedSeqPattern;
 import org.geworkbench.util.patterns.PatternSorter;
+import org.geworkbench.util.patterns.PatternStore;
 
 /**
  * <p>Title: Sequence and Pattern Plugin</p>
@@ -34,8 +36,9 @@ public class PatternTableModel extends AbstractTableModel {
     public static final int PTMPattern = 4;
     private static final String[] headerName = {"Hits", "Sequences Hit", "# of Tokens", "ZScore", "Motif"};
 
-    // TODO this is only an artifact to implement sorting. It may not be necessary.
-    private List<DSMatchedSeqPattern> pattern = new ArrayList<DSMatchedSeqPattern>();
+    private final PatternResult patternResult;
+    /* row to pattern index in patternResult */
+    private int[] order;
 
     /**
      * Used to format the pValue/zScore field.
@@ -45,21 +48,42 @@ public class PatternTableModel extends AbstractTableModel {
     private final int rowCount;
 
     public PatternTableModel(PatternResult patternResult) {
-    	// convert to a List. this may not be necessary except to implement sorting
+        this.patternResult = patternResult;
         rowCount = patternResult.getPatternNo();
-
+        order = new int[rowCount];
         for (int i = 0; i < rowCount; ++i) {
-            pattern.add( patternResult.getPattern(i) );
+            order[i] = i;
         }
 	}
 
     /**
      * Sort the patterns in the model on field
      */
-	public void sort(int field) {
-		PatternSorter sorter = new PatternSorter();
+	public synchronized void sort(int field) {
+		PatternStore store = patternResult.getPatternStore();
+		if (store != null && store.size() == rowCount && !store.isChanged()) {
+			// sort the columns without creating the patterns
+			store.sort(order, field);
+			return;
+		}
+		final List<DSMatchedSeqPattern> patterns = new ArrayList<DSMatchedSeqPattern>(rowCount);
+		for (int i = 0; i < rowCount; ++i) {
+			patterns.add(patternResult.getPattern(i));
+		}
+		final PatternSorter sorter = new PatternSorter();
 		sorter.setMode(field);
-		Collections.sort(pattern, sorter);
+		List<Integer> rows = new ArrayList<Integer>(rowCount);
+		for (int row : order) {
+			rows.add(row);
+		}
+		Collections.sort(rows, new Comparator<Integer>() {
+			public int compare(Integer a, Integer b) {
+				return sorter.compare(patterns.get(a), patterns.get(b));
+			}
+		});
+		for (int i = 0; i < rowCount; ++i) {
+			order[i] = rows.get(i);
+		}
 	}
 
     /**
@@ -142,7 +166,7 @@ public class PatternTableModel extends AbstractTableModel {
             throw new IndexOutOfBoundsException("[row=" + row + ", rowCount=" + rowCount + "]");
         }
 
-        return pattern.get(row);
+        return patternResult.getPattern(order[row]);
     }
 
 }
@@ -11,19 +11,29 @@ import java.awt.RenderingHints;
 import java.awt.event.MouseEvent;
 import java.awt.event.MouseMotionAdapter;
 import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 
 import javax.swing.JMenuItem;
 import javax.swing.JPanel;
 import javax.swing.JPopupMenu;
-import javax.swing.JViewport;
 import javax.swing.SwingUtilities;
 
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
 import org.geworkbench.bison.datastructure.biocollections.sequences.DSSequenceSet;
 import org.geworkbench.bison.datastructure.bioobjects.sequence.CSSequence;
 import org.geworkbench.bison.datastructure.bioobjects.sequence.DSSequence;
 import org.geworkbench.bison.datastructure.complex.pattern.sequence.CSSeqRegistration;
+import org.geworkbench.util.patterns.PatternLocationIndex;
 import org.geworkbench.util.patterns.PatternLocations;
 import org.geworkbench.util.patterns.PatternOperations;
 import org.geworkbench.util.patterns.PatternSequenceDisplayUtil;
@@ -34,11 +44,36 @@ import org.geworkbench.util.patterns.PatternSequenceDisplayUtil;
  * sequences as either lines or full sequences of letters. It is only used in
  * SequenceViewWidget.
  *
+ * The line and full views only draw the rows that intersect the clip, and
+ * find the pattern hits to draw through a {@link PatternLocationIndex}. The
+ * panel is cut into horizontal tiles that are rendered on a background
+ * thread and cached; a tile that is not cached yet is drawn directly for the
+ * clipped area. The cache is dropped when the sequences, patterns, view mode,
+ * selection or width change.
+ *
  * @version $Id$
  */
 public class SequenceViewWidgetPanel extends JPanel {
 
 	private static final long serialVersionUID = 7202257250696337753L;
+	private static Log log = LogFactory.getLog(SequenceViewWidgetPanel.class);
+
+	private static final int TILE_HEIGHT = 256;
+	private static final int MAX_TILES = 24;
+	private static final Font FULL_VIEW_FONT = new Font("Courier New",
+			Font.PLAIN, 11);
+	private static final Font LINE_VIEW_FONT = new Font("Courier New",
+			Font.PLAIN, 10);
+
+	private static final ExecutorService tileRenderer = Executors
+			.newSingleThreadExecutor(new ThreadFactory() {
+				public Thread newThread(Runnable r) {
+					Thread t = new Thread(r, "sequence-view-tiles");
+					t.setDaemon(true);
+					t.setPriority(Thread.MIN_PRIORITY);
+					return t;
+				}
+			});
 
 	private int xOff = 80;
 	private final int yOff = 20;
@@ -50,6 +85,7 @@ public class SequenceViewWidgetPanel extends JPanel {
 
 	private DSSequenceSet<? extends DSSequence> sequenceDB = null;
 	private HashMap<CSSequence, PatternSequenceDisplayUtil> sequencePatternmatches;
+	private PatternLocationIndex patternIndex = null;
 
 	private boolean lineView;
 	private boolean singleSequenceView;
@@ -63,6 +99,46 @@ public class SequenceViewWidgetPanel extends JPanel {
 	private DSSequence selectedSequence;
 	private JPopupMenu itemListPopup = new JPopupMenu();
 
+	/* the following are only touched on the event dispatch thread */
+	private Layout layout = null;
+	private volatile int generation = 0;
+	private final Map<Integer, BufferedImage> tiles = new LinkedHashMap<Integer, BufferedImage>(
+			16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(
+				Map.Entry<Integer, BufferedImage> eldest) {
+			return size() > MAX_TILES;
+		}
+	};
+	private final Set<Integer> pendingTiles = new HashSet<Integer>();
+
+	/*
+	 * Geometry of the line or full view for one width, computed once on the
+	 * event dispatch thread and shared read-only with the tile renderer. The
+	 * labels and bases are copied from the sequence set here, so that the
+	 * renderer never reads the set while it may be changed; null for a
+	 * missing sequence.
+	 */
+	private static final class Layout {
+		String[] labels;
+		String[] bases;
+		PatternLocationIndex index;
+		boolean lineView;
+		int width;
+		int height;
+		Color background;
+		int xOff;
+		/* line view */
+		double scale;
+		/* full view */
+		double xscale;
+		double yscale;
+		int cols;
+		int[] startRow;
+	}
+
 	/* The only constructor. */
 	public SequenceViewWidgetPanel() {
 		try {
@@ -103,10 +179,23 @@ public class SequenceViewWidgetPanel extends JPanel {
 		lineView = isLineView;
 		// keep the original xOff/labelLength ratio: xOff=80 -> maxDisplayChars=12
 		xOff = getMaxLabLen() * 20 / 3;
-		repaint();
+		patternIndex = null;
+		invalidateView();
 
 	}
 
+	/**
+	 * Drop the cached layout and tiles and repaint. Call this after changing
+	 * the pattern locations passed to {@link #initialize} in place.
+	 */
+	public void invalidateView() {
+		generation++;
+		layout = null;
+		tiles.clear();
+		pendingTiles.clear();
+		repaint();
+	}
+
 	@Override
 	public void paintComponent(Graphics g) {
 		super.paintComponent(g);
@@ -116,126 +205,251 @@ public class SequenceViewWidgetPanel extends JPanel {
 			return;
 		}
 
-		if (lineView) {
-			if (!singleSequenceView || selected >= sequenceDB.size()) {
-				paintText(g);
-			} else {
-				paintSingleSequence(g);
+		if (lineView && singleSequenceView && selected < sequenceDB.size()) {
+			paintSingleSequence(g);
+			return;
+		}
+		if (!lineView) {
+			// make sure when the view shifts, the singlesequenceview is not
+			// selected.
+			singleSequenceView = false;
+		}
+		if (getWidth() <= 0) {
+			return;
+		}
+		paintTiles(g, getLayout(g));
+	}
+
+	private Layout getLayout(Graphics g) {
+		if (layout != null && layout.width == getWidth()
+				&& layout.lineView == lineView) {
+			return layout;
+		}
+		if (layout != null) {
+			generation++;
+			tiles.clear();
+			pendingTiles.clear();
+		}
+		if (patternIndex == null) {
+			patternIndex = new PatternLocationIndex(sequencePatternmatches,
+					sequenceDB);
+		}
+		Layout l = new Layout();
+		l.index = patternIndex;
+		l.lineView = lineView;
+		l.width = getWidth();
+		l.background = getBackground();
+		l.xOff = xOff;
+		int n = sequenceDB.size();
+		l.labels = new String[n];
+		l.bases = new String[n];
+		for (int i = 0; i < n; i++) {
+			DSSequence theone = sequenceDB.getSequence(i);
+			if (theone != null) {
+				l.labels[i] = theone.getLabel();
+				l.bases[i] = theone.getSequence();
 			}
+		}
+		if (lineView) {
+			l.scale = Math.min(5.0, (double) (l.width - 20 - xOff)
+					/ (double) maxSeqLen);
+			scale = l.scale;
+			l.height = n * yStep + yOff;
 		} else {
-			paintFullView(g);
+			FontMetrics fm = g.getFontMetrics(FULL_VIEW_FONT);
+			l.xscale = 0.1;
+			l.yscale = 0.1;
+			for (int i = 0; i < n; i++) {
+				String asc = l.bases[i];
+				if (asc == null) {
+					continue;
+				}
+				Rectangle2D r2d = fm.getStringBounds(asc, g);
+				l.xscale = (r2d.getWidth() + 3)
+						/ (double) Math.max(1, asc.length());
+				l.yscale = 1.3 * r2d.getHeight();
+				break;
+			}
+			l.cols = Math.max(1, (int) (l.width / l.xscale) - 8);
+			// a sequence takes its label row and one row per piece of cols
+			// bases
+			l.startRow = new int[n];
+			int row = 0;
+			for (int i = 0; i < n; i++) {
+				l.startRow[i] = row;
+				if (l.bases[i] != null) {
+					row += 1 + (l.bases[i].length() + l.cols - 1) / l.cols;
+				}
+			}
+			yBasescale = l.yscale;
+			xBasescale = l.xscale;
+			xBaseCols = l.cols;
+			eachSeqStartRowNum = l.startRow;
+			l.height = (int) (yOff + 3 + row * l.yscale) + yOff;
+		}
+		layout = l;
 
+		Dimension size = new Dimension(l.width - yOff, l.height);
+		if (!size.equals(getPreferredSize())) {
+			setPreferredSize(size);
+			revalidate();
 		}
+		return l;
 	}
 
-	private void paintFullView(Graphics g) {
-		singleSequenceView = false; // make sure when the view shifts, the
-									// singlesequenceview is not selected.
-		int rowId = 0;
-		double y = yOff + 3;
-		double xscale = 0.1;
-		double yscale = 0.1;
-		int cols = 1;
-		boolean setupScale = true;
-		eachSeqStartRowNum = new int[sequenceDB.size()];
-		int seqId = 0;
-		Font f = new Font("Courier New", Font.PLAIN, 11);
-		((Graphics2D) g).setRenderingHint(RenderingHints.KEY_ANTIALIASING,
-				RenderingHints.VALUE_ANTIALIAS_ON);
-		FontMetrics fm = g.getFontMetrics(f);
-		g.setFont(f);
-		for (DSSequence theone : sequenceDB) {
-			if (theone == null)
+	private void paintTiles(Graphics g, Layout l) {
+		Rectangle clip = g.getClipBounds();
+		if (clip == null) {
+			clip = new Rectangle(0, 0, getWidth(), getHeight());
+		}
+		int first = Math.max(0, clip.y / TILE_HEIGHT);
+		int last = Math.max(first, (clip.y + clip.height - 1) / TILE_HEIGHT);
+		for (int t = first; t <= last; t++) {
+			BufferedImage image = tiles.get(t);
+			if (image != null) {
+				g.drawImage(image, 0, t * TILE_HEIGHT, null);
 				continue;
-
-			String asc = theone.getSequence();
-			Rectangle2D r2d = fm.getStringBounds(asc, g);
-			int width = this.getWidth();
-
-			// Set up scales.
-			if (setupScale) {
-				xscale = (r2d.getWidth() + 3) / (double) (asc.length());
-				yscale = 1.3 * r2d.getHeight();
-				yBasescale = yscale;
-				cols = (int) (width / xscale) - 8;
-				xBaseCols = cols;
-				xBasescale = xscale;
-				setupScale = false;
 			}
+			Graphics tg = g.create();
+			tg.clipRect(0, t * TILE_HEIGHT, l.width, TILE_HEIGHT);
+			render(tg, l);
+			tg.dispose();
+			requestTile(t, l);
+		}
+		// keep the neighbours ready for scrolling
+		requestTile(first - 1, l);
+		requestTile(last + 1, l);
+	}
 
-			String lab = theone.getLabel();
-			g.setColor(SEQUENCEBACKGROUDCOLOR);
-			// if (lab.length() > 10) {
-			// g.drawString(lab.substring(0, 10), 2, y + 3);
-			// }
-			// else {
-			g.drawString(lab, 2, (int) (y));
-			// }
-			y += 1 * yscale;
-			int begin = 0 - cols;
-			int end = 0;
-			eachSeqStartRowNum[seqId] = rowId;
-
-			while (end < asc.length()) {
-				rowId++;
-
-				begin = end;
-				end += cols;
-				String onepiece = "";
-				if (end > asc.length()) {
-					onepiece = asc.substring(begin, asc.length());
-				} else {
-					onepiece = asc.substring(begin, end);
-
+	private void requestTile(final int tile, final Layout l) {
+		if (tile < 0 || tile * TILE_HEIGHT >= Math.max(l.height, getHeight())
+				|| tiles.containsKey(tile) || pendingTiles.contains(tile)) {
+			return;
+		}
+		pendingTiles.add(tile);
+		final int requested = generation;
+		tileRenderer.execute(new Runnable() {
+			public void run() {
+				if (requested != generation) {
+					// a stale read only costs a wasted tile
+					return;
 				}
-				g.setColor(SEQUENCEBACKGROUDCOLOR);
-				g.drawString(onepiece, (int) (6 * xscale), (int) y);
-				y += 1 * yscale;
+				BufferedImage image = null;
+				try {
+					image = new BufferedImage(l.width, TILE_HEIGHT,
+							BufferedImage.TYPE_INT_RGB);
+					Graphics2D g = image.createGraphics();
+					g.setBackground(l.background);
+					g.clearRect(0, 0, l.width, TILE_HEIGHT);
+					g.translate(0, -tile * TILE_HEIGHT);
+					g.setClip(0, tile * TILE_HEIGHT, l.width, TILE_HEIGHT);
+					render(g, l);
+					g.dispose();
+				} catch (RuntimeException e) {
+					// the layout is a snapshot, so this is a drawing bug; the
+					// next paint draws the area directly on the EDT
+					log.warn("sequence view tile not rendered", e);
+					image = null;
+				}
+				final BufferedImage rendered = image;
+				SwingUtilities.invokeLater(new Runnable() {
+					public void run() {
+						if (requested != generation) {
+							return;
+						}
+						pendingTiles.remove(tile);
+						if (rendered != null) {
+							tiles.put(tile, rendered);
+							repaint(0, tile * TILE_HEIGHT, l.width, TILE_HEIGHT);
+						}
+					}
+				});
 			}
-			rowId++;
+		});
+	}
 
-			// don't skip counting seqId if null shows up
-			if (sequencePatternmatches == null) {
-				seqId++;
-				continue;
-			}
-			PatternSequenceDisplayUtil psd = sequencePatternmatches.get(theone);
-			if (psd == null) {
-				seqId++;
-				continue;
-			}
+	/* draw the part of the line or full view inside the clip of g */
+	private void render(Graphics g, Layout l) {
+		g.setColor(l.background);
+		((Graphics2D) g).setBackground(l.background);
+		if (l.lineView) {
+			paintText(g, l);
+		} else {
+			paintFullView(g, l);
+		}
+	}
 
-			TreeSet<PatternLocations> patternsPerSequence = psd.getTreeSet();
-			if (patternsPerSequence == null) {
-				seqId++;
+	private void paintFullView(Graphics g, Layout l) {
+		Rectangle clip = g.getClipBounds();
+		((Graphics2D) g).setRenderingHint(RenderingHints.KEY_ANTIALIASING,
+				RenderingHints.VALUE_ANTIALIAS_ON);
+		g.setFont(FULL_VIEW_FONT);
+		double xscale = l.xscale;
+		double yscale = l.yscale;
+		int cols = l.cols;
+		int[] startRow = l.startRow;
+		double base = yOff + 3;
+		// row r has its baseline at base + r * yscale; keep a row of margin
+		// for ascenders, descenders and the pattern boxes
+		int firstRow = (int) Math.floor((clip.y - base) / yscale) - 1;
+		int lastRow = (int) Math.ceil((clip.y + clip.height - base) / yscale) + 1;
+
+		int seqId = Math.max(0, lastStartingAtOrBefore(startRow, firstRow));
+		for (; seqId < startRow.length && startRow[seqId] <= lastRow; seqId++) {
+			String asc = l.bases[seqId];
+			if (asc == null)
 				continue;
+
+			int rowStart = startRow[seqId];
+			if (rowStart >= firstRow) {
+				g.setColor(SEQUENCEBACKGROUDCOLOR);
+				g.drawString(l.labels[seqId], 2, (int) (base + rowStart
+						* yscale));
 			}
 
-			for (PatternLocations pl : patternsPerSequence) {
-				CSSeqRegistration reg = pl.getRegistration();
-				if (reg == null)
-					continue;
+			int pieces = (asc.length() + cols - 1) / cols;
+			int firstPiece = Math.max(0, firstRow - rowStart - 1);
+			int lastPiece = Math.min(pieces - 1, lastRow - rowStart - 1);
+			g.setColor(SEQUENCEBACKGROUDCOLOR);
+			for (int p = firstPiece; p <= lastPiece; p++) {
+				int begin = p * cols;
+				int end = Math.min(asc.length(), begin + cols);
+				g.drawString(asc.substring(begin, end), (int) (6 * xscale),
+						(int) (base + (rowStart + 1 + p) * yscale));
+			}
 
-				if (pl.getPatternType().equals(PatternLocations.DEFAULTTYPE)) {
-					drawPattern(g, theone, reg.x1, xscale, yscale,
-							eachSeqStartRowNum[seqId], cols,
-							PatternOperations.getPatternColor(pl
-									.getIdForDisplay()), pl);
+			int from = Math.max(0, firstPiece - 1) * cols;
+			int to = (lastPiece + 2) * cols;
+			for (PatternLocationIndex.Hit hit : l.index.overlapping(seqId,
+					from, to)) {
+				if (PatternLocations.DEFAULTTYPE.equals(hit.getPatternType())) {
+					drawPattern(g, asc, hit.getStart(), hit.getLength(),
+							xscale, yscale, rowStart, cols, hit.getColor());
 
-				} else if (pl.getPatternType().equals(PatternLocations.TFTYPE)) {
-					drawPattern(g, theone, reg.x1, Math.abs(reg.x1 - reg.x2),
-							xscale, yscale, eachSeqStartRowNum[seqId], cols,
-							PatternOperations.getPatternColor(pl
-									.getIdForDisplay()), reg.strand);
+				} else if (PatternLocations.TFTYPE.equals(hit.getPatternType())) {
+					drawPattern(g, asc, hit.getStart(), Math.abs(hit
+							.getStart()
+							- hit.getRegistrationEnd()), xscale, yscale,
+							rowStart, cols, hit.getColor(), hit.getStrand());
 
 				}
 			}
-			seqId++;
 		} // end processing sequences.
+	}
 
-		int maxY = (int) y + yOff;
-		setPreferredSize(new Dimension(this.getWidth() - yOff, maxY));
-		revalidate();
+	/* largest i with rows[i] <= row, or -1 */
+	private static int lastStartingAtOrBefore(int[] rows, int row) {
+		int lo = 0;
+		int hi = rows.length;
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if (rows[mid] <= row) {
+				lo = mid + 1;
+			} else {
+				hi = mid;
+			}
+		}
+		return lo - 1;
 	}
 
 	private void paintSingleSequence(Graphics g) {
@@ -321,19 +535,19 @@ public class SequenceViewWidgetPanel extends JPanel {
 			if (pl.getPatternType().equals(PatternLocations.DEFAULTTYPE)) {
 				drawPattern(
 						g,
-						theone,
+						theone.getSequence(),
 						reg.x1,
+						pl.getAsciiLength(),
 						xscale,
 						yscale,
 						0,
 						cols,
-						PatternOperations.getPatternColor(pl.getIdForDisplay()),
-						pl);
+						PatternOperations.getPatternColor(pl.getIdForDisplay()));
 
 			} else if (pl.getPatternType().equals(PatternLocations.TFTYPE)) {
 				drawPattern(
 						g,
-						theone,
+						theone.getSequence(),
 						reg.x1,
 						Math.abs(reg.x1 - reg.x2),
 						xscale,
@@ -350,69 +564,44 @@ public class SequenceViewWidgetPanel extends JPanel {
 		revalidate();
 	}
 
-	private void paintText(Graphics g) {
-		Font f = new Font("Courier New", Font.PLAIN, 10);
-		int rowId = -1;
-
-		int seqNo = sequenceDB.getSequenceNo();
-
-		scale = Math.min(5.0, (double) (this.getWidth() - 20 - xOff)
-				/ (double) maxSeqLen);
-
-		g.clearRect(0, 0, getWidth(), getHeight());
-		// draw the patterns
-		g.setFont(f);
-		JViewport scroller = (JViewport) this.getParent();
-		Rectangle r = new Rectangle();
-		r = scroller.getViewRect();
-
-		for (int seqId = 0; seqId < seqNo; seqId++) {
-			rowId++;
-			drawSequence(g, seqId, seqId, maxSeqLen);
-			CSSequence sequence = (CSSequence) sequenceDB.get(seqId);
-			if (sequencePatternmatches == null)
-				continue;
-
-			PatternSequenceDisplayUtil psd = sequencePatternmatches
-					.get(sequence);
-			if (psd == null)
-				continue;
-
-			TreeSet<PatternLocations> patternsPerSequence = psd.getTreeSet();
-			if (patternsPerSequence == null)
-				continue;
 
-			for (PatternLocations pl : patternsPerSequence) {
-				CSSeqRegistration reg = pl.getRegistration();
-				if (reg != null) {
-					if (pl.getPatternType()
-							.equals(PatternLocations.DEFAULTTYPE)) {
-						drawPattern(g, seqId, reg.x1, reg.length(), r,
-								PatternOperations.getPatternColor(pl
-										.getIdForDisplay()));
-					} else if (pl.getPatternType().equals(
-							PatternLocations.TFTYPE)) {
-						drawPattern(g, seqId, reg.x1, reg.length(), r,
-								PatternOperations.getPatternColor(pl
-										.getIdForDisplay()),
-								reg.strand);
+	private void paintText(Graphics g, Layout l) {
+		Rectangle clip = g.getClipBounds();
+		int seqNo = l.bases.length;
+
+		g.setFont(LINE_VIEW_FONT);
+		// rows are yStep apart; the pattern boxes may reach into the next row
+		int first = Math.max(0, (clip.y - yOff) / yStep - 1);
+		int last = Math.min(seqNo - 1, (clip.y + clip.height - yOff) / yStep
+				+ 1);
+		Rectangle r = new Rectangle(clip.x, clip.y - yStep, clip.width,
+				clip.height + 2 * yStep);
+		int from = Math.max(0, (int) ((clip.x - l.xOff) / l.scale) - 1);
+		int to = (int) ((clip.x + clip.width - l.xOff) / l.scale) + 2;
+
+		for (int seqId = first; seqId <= last; seqId++) {
+			drawSequence(g, l, seqId, seqId, maxSeqLen);
+			for (PatternLocationIndex.Hit hit : l.index.overlapping(seqId,
+					from, to)) {
+				int length = hit.getRegistrationEnd() - hit.getStart();
+				if (PatternLocations.DEFAULTTYPE.equals(hit.getPatternType())) {
+					drawPattern(g, l, seqId, hit.getStart(), length, r,
+							hit.getColor());
+				} else if (PatternLocations.TFTYPE.equals(hit.getPatternType())) {
+					drawPattern(g, l, seqId, hit.getStart(), length, r,
+							hit.getColor(), hit.getStrand());
 
-					}
 				}
 			}
 		} // end of loop of seqNo
-
-		int maxY = (rowId + 1) * yStep + yOff;
-		setPreferredSize(new Dimension(this.getWidth() - yOff, maxY));
-		revalidate();
 	}
 
 	/**
 	 * drawPattern for type TFBS in painttext
 	 *
 	 */
-	private void drawPattern(Graphics g, int rowId, int xStart, int length,
-			Rectangle r, Color color, int strandDirection) {
+	private void drawPattern(Graphics g, Layout l, int rowId, int xStart,
+			int length, Rectangle r, Color color, int strandDirection) {
 
 		int y = yOff + rowId * yStep;
 		if (y <= r.y)
@@ -423,8 +612,8 @@ public class SequenceViewWidgetPanel extends JPanel {
 
 		double x0 = xStart;
 		double dx = length;
-		int xa = xOff + (int) (x0 * scale);
-		int xb = xa + (int) (dx * scale) - 1;
+		int xa = l.xOff + (int) (x0 * l.scale);
+		int xb = xa + (int) (dx * l.scale) - 1;
 		g.setColor(color);
 		int heightForRect = (int) (0.66 * yStep);
 		g.draw3DRect(xa, y - heightForRect / 2, xb - xa, heightForRect, false);
@@ -452,10 +641,12 @@ public class SequenceViewWidgetPanel extends JPanel {
 
 	public void setMaxSeqLen(int maxSeqLen) {
 		this.maxSeqLen = maxSeqLen;
+		invalidateView();
 	}
 
 	public void setSelectedSequence(DSSequence selectedSequence) {
 		this.selectedSequence = selectedSequence;
+		invalidateView();
 		// update selected index.
 		if (sequenceDB != null && selectedSequence != null) {
 			int location = 0;
@@ -469,26 +660,26 @@ public class SequenceViewWidgetPanel extends JPanel {
 		}
 	}
 
-	private void drawSequence(Graphics g, int rowId, int seqId, double len) {
+	private void drawSequence(Graphics g, Layout l, int rowId, int seqId,
+			double len) {
 		String lab = ">seq " + seqId;
-		if (sequenceDB.getSequenceNo() > 0) {
-			DSSequence theSequence = sequenceDB.getSequence(seqId);
-			len = (double) theSequence.length();
-			lab = theSequence.getLabel();
+		if (l.bases[seqId] != null) {
+			len = (double) l.bases[seqId].length();
+			lab = l.labels[seqId];
 
 		}
 		int y = yOff + rowId * yStep;
-		int x = xOff + (int) (len * scale);
+		int x = l.xOff + (int) (len * l.scale);
 		g.setColor(SEQUENCEBACKGROUDCOLOR);
 
 		g.drawString(lab, 4, y + 3);
-		g.drawLine(xOff, y, x, y);
+		g.drawLine(l.xOff, y, x, y);
 
 	}
 
 	/* for DEFAULTTYPE in paintText */
-	private void drawPattern(Graphics g, int rowId, int xStart, int length,
-			Rectangle r, Color color) {
+	private void drawPattern(Graphics g, Layout l, int rowId, int xStart,
+			int length, Rectangle r, Color color) {
 
 		int y = yOff + rowId * yStep;
 		if (y <= r.y)
@@ -498,8 +689,8 @@ public class SequenceViewWidgetPanel extends JPanel {
 
 		double x0 = xStart;
 		double dx = length;
-		int xa = xOff + (int) (x0 * scale) + 1;
-		int xb = xa + (int) (dx * scale) - 1;
+		int xa = l.xOff + (int) (x0 * l.scale) + 1;
+		int xb = xa + (int) (dx * l.scale) - 1;
 		g.setColor(color);
 
 		int heightForRect = (int) (0.66 * yStep);
@@ -513,9 +704,11 @@ public class SequenceViewWidgetPanel extends JPanel {
 	 * @param g
 	 *            Graphics
 	 * @param hitSeq
-	 *            DSSequence
+	 *            bases of the sequence
 	 * @param offset
 	 *            int
+	 * @param length
+	 *            int, length of the pattern's ascii form
 	 * @param xscale
 	 *            double
 	 * @param yscale
@@ -526,15 +719,12 @@ public class SequenceViewWidgetPanel extends JPanel {
 	 *            int
 	 * @param color
 	 *            Color
-	 * @param highlight
-	 *            String
 	 */
-	private void drawPattern(Graphics g, DSSequence hitSeq, int offset,
-			double xscale, double yscale, int yBase, int cols, Color color,
-			PatternLocations pl) {
+	private void drawPattern(Graphics g, String hitSeq, int offset,
+			int length, double xscale, double yscale, int yBase, int cols,
+			Color color) {
 
-		int length = pl.getAsciiLength();
-		String hitSeqStr = hitSeq.getSequence().substring(offset,
+		String hitSeqStr = hitSeq.substring(offset,
 				offset + length);
 		
 		int x = (int) ((6 + offset % cols) * xscale);
@@ -594,7 +784,7 @@ public class SequenceViewWidgetPanel extends JPanel {
 	 * @param g
 	 *            Graphics
 	 * @param hitSeq
-	 *            DSSequence
+	 *            bases of the sequence
 	 * @param offset
 	 *            int
 	 * @param length
@@ -612,7 +802,7 @@ public class SequenceViewWidgetPanel extends JPanel {
 	 * @param strand
 	 *            int
 	 */
-	private void drawPattern(Graphics g, DSSequence hitSeq, int offset,
+	private void drawPattern(Graphics g, String hitSeq, int offset,
 			int length, double xscale, double yscale, int yBase, int cols,
 			Color color, int strand) {
 
@@ -622,7 +812,7 @@ public class SequenceViewWidgetPanel extends JPanel {
 
 		int height = (int) (1.15 * yscale);
 		double y = ((yBase + 2 + (offset / cols)) * yscale);
-		String hitSeqStr = hitSeq.getSequence().substring(offset,
+		String hitSeqStr = hitSeq.substring(offset,
 				offset + length);
 		if (offset % cols + length <= cols) {
 			g.clearRect(x, (int) y - height / 2, xb, height);
@@ -755,7 +945,7 @@ public class SequenceViewWidgetPanel extends JPanel {
 
 		if (e.getClickCount() == 2) {
 			singleSequenceView = !singleSequenceView;
-			this.repaint();
+			invalidateView();
 		}
 
 	}
@@ -882,13 +1072,18 @@ public class SequenceViewWidgetPanel extends JPanel {
 	private int getSeqIdInFullView(int y) {
 		double yBase = (y - yOff - 3) / yBasescale + 1;
 		if (eachSeqStartRowNum != null) {
-			for (int i = 0; i < eachSeqStartRowNum.length; i++) {
-				if (eachSeqStartRowNum[i] > yBase) {
-					return Math.max(0, i - 1);
+			// first sequence starting after yBase, minus one
+			int lo = 0;
+			int hi = eachSeqStartRowNum.length;
+			while (lo < hi) {
+				int mid = (lo + hi) >>> 1;
+				if (eachSeqStartRowNum[mid] > yBase) {
+					hi = mid;
+				} else {
+					lo = mid + 1;
 				}
-
 			}
-			return Math.max(0, eachSeqStartRowNum.length - 1);
+			return Math.max(0, lo - 1);
 		}
 		return 0;
 	}
@@ -942,14 +1137,18 @@ public class SequenceViewWidgetPanel extends JPanel {
 
 	public void setSingleSequenceView(boolean singleSequenceView) {
 		this.singleSequenceView = singleSequenceView;
+		invalidateView();
 	}
 
 	public void setSequenceDB(DSSequenceSet<DSSequence> sequenceDB) {
 		this.sequenceDB = sequenceDB;
+		patternIndex = null;
+		invalidateView();
 	}
 
 	public void setLineView(boolean lineView) {
 		this.lineView = lineView;
+		invalidateView();
 		revalidate();
 	}
 
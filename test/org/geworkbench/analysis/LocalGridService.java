@@ -0,0 +1,90 @@
+package org.geworkbench.analysis;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * In-process stand-in for a grid service taking a microarray view: the
+ * inputs go through Java serialization as they would on the wire, view
+ * blocks are kept by content hash and references are resolved against them.
+ * The "analysis" returns the mean of every marker over the arrays, ignoring
+ * missing values.
+ *
+ * @version $Id$
+ */
+class LocalGridService {
+
+	private final Map<String, MicroarrayViewBlock> blocks = new HashMap<String, MicroarrayViewBlock>();
+	private int lastRequestSize;
+	private MicroarrayViewBlock lastBlock;
+
+	/**
+	 * @throws IllegalStateException
+	 *             if a reference names a block this service does not hold
+	 */
+	@SuppressWarnings("unchecked")
+	float[] submit(List<Serializable> inputs) throws IOException,
+			ClassNotFoundException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		ObjectOutputStream out = new ObjectOutputStream(bytes);
+		out.writeObject(inputs);
+		out.close();
+		lastRequestSize = bytes.size();
+
+		ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(
+				bytes.toByteArray()));
+		List<Serializable> received = (List<Serializable>) in.readObject();
+		Serializable input = received.get(0);
+		MicroarrayViewBlock block;
+		if (input instanceof MicroarrayViewBlock.Reference) {
+			String hash = ((MicroarrayViewBlock.Reference) input)
+					.getContentHash();
+			block = blocks.get(hash);
+			if (block == null) {
+				throw new IllegalStateException("unknown input " + hash);
+			}
+		} else {
+			block = (MicroarrayViewBlock) input;
+			blocks.put(block.getContentHash(), block);
+		}
+		lastBlock = block;
+
+		float[] means = new float[block.getMarkerCount()];
+		for (int i = 0; i < means.length; i++) {
+			double sum = 0;
+			int n = 0;
+			for (int j = 0; j < block.getArrayCount(); j++) {
+				float value = block.getValue(i, j);
+				if (!Float.isNaN(value)) {
+					sum += value;
+					n++;
+				}
+			}
+			means[i] = n == 0 ? Float.NaN : (float) (sum / n);
+		}
+		return means;
+	}
+
+	/** Serialized size of the last request, in bytes. */
+	int getLastRequestSize() {
+		return lastRequestSize;
+	}
+
+	/** The block the last request resolved to. */
+	MicroarrayViewBlock getLastBlock() {
+		return lastBlock;
+	}
+
+	/** Drop every stored block, as a restarted service would. */
+	void restart() {
+		blocks.clear();
+	}
+
+}
@@ -0,0 +1,80 @@
+package org.geworkbench.analysis;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.util.Random;
+
+import org.geworkbench.bison.datastructure.biocollections.microarrays.CSMicroarraySet;
+import org.geworkbench.bison.datastructure.biocollections.microarrays.DSMicroarraySet;
+import org.geworkbench.bison.datastructure.biocollections.views.CSMicroarraySetView;
+import org.geworkbench.bison.datastructure.bioobjects.markers.CSExpressionMarker;
+import org.geworkbench.bison.datastructure.bioobjects.markers.DSGeneMarker;
+import org.geworkbench.bison.datastructure.bioobjects.microarray.CSExpressionMarkerValue;
+import org.geworkbench.bison.datastructure.bioobjects.microarray.CSMicroarray;
+import org.geworkbench.bison.datastructure.bioobjects.microarray.DSMicroarray;
+
+/**
+ * Compares what goes on the wire for a grid submission: the Java-serialized
+ * view against a {@link MicroarrayViewBlock}. Run with the number of markers
+ * and arrays as (optional) arguments.
+ *
+ * @version $Id$
+ */
+public class MicroarrayViewBlockBenchmark {
+
+	public static void main(String[] args) throws IOException {
+		int markers = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+		int arrays = args.length > 1 ? Integer.parseInt(args[1]) : 500;
+		Random random = new Random(5);
+		CSMicroarraySet set = new CSMicroarraySet();
+		for (int i = 0; i < markers; i++) {
+			CSExpressionMarker marker = new CSExpressionMarker(i);
+			marker.setLabel(i + "_at");
+			set.getMarkers().add(marker);
+		}
+		set.getMarkers().correctMaps();
+		for (int j = 0; j < arrays; j++) {
+			CSMicroarray array = new CSMicroarray(j, markers, "array " + j,
+					DSMicroarraySet.DO_NOT_CREATE_VALUE_OBJECT);
+			for (int i = 0; i < markers; i++) {
+				CSExpressionMarkerValue value = new CSExpressionMarkerValue(
+						(float) Math.exp(random.nextGaussian() * 2 + 6));
+				value.setPresent();
+				array.setMarkerValue(i, value);
+			}
+			set.add(array);
+		}
+		final CSMicroarraySetView<DSGeneMarker, DSMicroarray> view = new CSMicroarraySetView<DSGeneMarker, DSMicroarray>(
+				set);
+		System.out.println(markers + " markers x " + arrays + " arrays");
+
+		for (int round = 0; round < 3; round++) {
+			System.out.println("round " + round);
+			long start = System.nanoTime();
+			int graph = serializedSize(view);
+			report("object graph", graph, start);
+			start = System.nanoTime();
+			MicroarrayViewBlock block = MicroarrayViewBlock.fromView(view);
+			int compact = serializedSize(block);
+			report("view block", compact, start);
+			start = System.nanoTime();
+			int reference = serializedSize(block.getReference());
+			report("reference", reference, start);
+		}
+	}
+
+	private static int serializedSize(Object o) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		ObjectOutputStream out = new ObjectOutputStream(bytes);
+		out.writeObject(o);
+		out.close();
+		return bytes.size();
+	}
+
+	private static void report(String label, int bytes, long start) {
+		System.out.println(String.format("  %-16s %12d bytes %8.1f ms", label,
+				bytes, (System.nanoTime() - start) / 1e6));
+	}
+
+}
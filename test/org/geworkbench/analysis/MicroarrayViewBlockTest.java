@@ -0,0 +1,274 @@
+package org.geworkbench.analysis;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import org.geworkbench.bison.annotation.CSAnnotationContext;
+import org.geworkbench.bison.annotation.CSAnnotationContextManager;
+import org.geworkbench.bison.annotation.DSAnnotationContext;
+import org.geworkbench.bison.datastructure.biocollections.DSDataSet;
+import org.geworkbench.bison.datastructure.biocollections.microarrays.CSMicroarraySet;
+import org.geworkbench.bison.datastructure.biocollections.views.CSMicroarraySetView;
+import org.geworkbench.bison.datastructure.biocollections.views.DSMicroarraySetView;
+import org.geworkbench.bison.datastructure.bioobjects.markers.CSExpressionMarker;
+import org.geworkbench.bison.datastructure.bioobjects.markers.DSGeneMarker;
+import org.geworkbench.bison.datastructure.bioobjects.microarray.CSExpressionMarkerValue;
+import org.geworkbench.bison.datastructure.bioobjects.microarray.CSMicroarray;
+import org.geworkbench.bison.datastructure.bioobjects.microarray.DSMicroarray;
+import org.geworkbench.bison.datastructure.complex.panels.CSPanel;
+import org.geworkbench.bison.datastructure.complex.panels.DSPanel;
+import org.geworkbench.bison.model.analysis.AlgorithmExecutionResults;
+import org.geworkbench.bison.model.analysis.ParamValidationResults;
+
+/**
+ * @version $Id$
+ */
+public class MicroarrayViewBlockTest extends TestCase {
+
+	private static final int MARKERS = 2000;
+	private static final int ARRAYS = 40;
+
+	private CSMicroarraySet set;
+	private DSMicroarraySetView<DSGeneMarker, DSMicroarray> view;
+	/* a service of its own for each test */
+	private String url;
+
+	/* a service analysis that accepts view blocks */
+	private static class MeanAnalysis extends AbstractGridAnalysis {
+		private static final long serialVersionUID = 1L;
+
+		private final boolean compact;
+
+		MeanAnalysis(boolean compact) {
+			this.compact = compact;
+		}
+
+		public String getAnalysisName() {
+			return "Mean" + compact;
+		}
+
+		public Class<?> getBisonReturnType() {
+			return null;
+		}
+
+		protected boolean useMicroarraySetView() {
+			return true;
+		}
+
+		protected boolean useCompactMicroarrayView() {
+			return compact;
+		}
+
+		protected boolean useOtherDataSet() {
+			return false;
+		}
+
+		protected Map<Serializable, Serializable> getBisonParameters() {
+			return new HashMap<Serializable, Serializable>();
+		}
+
+		public ParamValidationResults validInputData(
+				DSMicroarraySetView<DSGeneMarker, DSMicroarray> maSetView,
+				DSDataSet<?> refMASet) {
+			return new ParamValidationResults(true, null);
+		}
+
+		public int getAnalysisType() {
+			return 0;
+		}
+
+		public AlgorithmExecutionResults execute(Object input) {
+			return null;
+		}
+	}
+
+	public MicroarrayViewBlockTest(String name) {
+		super(name);
+	}
+
+	/*
+	 * marker i of array j is missing when (i + j) is a multiple of 13; the
+	 * view keeps every other marker and the first 30 arrays
+	 */
+	@SuppressWarnings("unchecked")
+	protected void setUp() throws Exception {
+		super.setUp();
+		Random random = new Random(23);
+		set = new CSMicroarraySet();
+		set.setLabel("submitted");
+		for (int i = 0; i < MARKERS; i++) {
+			DSGeneMarker marker = new CSExpressionMarker(i);
+			marker.setLabel("probe " + i);
+			set.getMarkers().add(marker);
+		}
+		set.getMarkers().correctMaps();
+		for (int j = 0; j < ARRAYS; j++) {
+			DSMicroarray microarray = new CSMicroarray(MARKERS);
+			microarray.setLabel("array " + j);
+			for (int i = 0; i < MARKERS; i++) {
+				CSExpressionMarkerValue value = new CSExpressionMarkerValue(
+						(float) Math.exp(random.nextGaussian() + 5));
+				value.setPresent();
+				value.setMissing((i + j) % 13 == 0);
+				microarray.setMarkerValue(i, value);
+			}
+			set.add(microarray);
+		}
+		DSAnnotationContext<DSMicroarray> context = CSAnnotationContextManager
+				.getInstance().getContext(set, "Phenotypes");
+		CSAnnotationContext.initializePhenotypeContext(context);
+		for (int j = 0; j < ARRAYS; j++) {
+			context.labelItem(set.get(j), j < 15 ? "Case" : "Control");
+		}
+		CSAnnotationContextManager.getInstance().setCurrentContext(set,
+				context);
+
+		view = new CSMicroarraySetView<DSGeneMarker, DSMicroarray>(set);
+		DSPanel<DSGeneMarker> markers = new CSPanel<DSGeneMarker>("active");
+		for (int i = 0; i < MARKERS; i += 2) {
+			markers.add(set.getMarkers().get(i));
+		}
+		view.setMarkerPanel(markers);
+		DSPanel<DSMicroarray> arrays = new CSPanel<DSMicroarray>("active");
+		for (int j = 0; j < 30; j++) {
+			arrays.add(set.get(j));
+		}
+		view.setItemPanel(arrays);
+
+		url = "local:" + getName();
+	}
+
+	public void testBlockHoldsTheView() throws Exception {
+		MicroarrayViewBlock block = MicroarrayViewBlock.fromView(view);
+		assertEquals(MARKERS / 2, block.getMarkerCount());
+		assertEquals(30, block.getArrayCount());
+		assertEquals("submitted", block.getLabel());
+		assertEquals("Phenotypes", block.getPhenotypeContext());
+
+		LocalGridService service = new LocalGridService();
+		float[] means = service.submit(new MeanAnalysis(true)
+				.handleBisonInputs(view, null));
+		MicroarrayViewBlock received = service.getLastBlock();
+		assertEquals(block.getContentHash(), received.getContentHash());
+		for (int i = 0; i < received.getMarkerCount(); i++) {
+			assertEquals("probe " + 2 * i, received.getMarkerLabels()[i]);
+			assertEquals(2 * i, received.getMarkerSerials()[i]);
+			double sum = 0;
+			int n = 0;
+			for (int j = 0; j < received.getArrayCount(); j++) {
+				CSExpressionMarkerValue value = (CSExpressionMarkerValue) set
+						.get(j).getMarkerValue(2 * i);
+				if (value.isMissing()) {
+					assertTrue(Float.isNaN(received.getValue(i, j)));
+				} else {
+					assertEquals(Float.floatToIntBits((float) value.getValue()),
+							Float.floatToIntBits(received.getValue(i, j)));
+					sum += received.getValue(i, j);
+					n++;
+				}
+			}
+			assertEquals((float) (sum / n), means[i], 0);
+		}
+		assertEquals("array 29", received.getArrayLabels()[29]);
+		assertEquals(29, received.getArraySerials()[29]);
+		assertEquals("Case", received.getPhenotypes(14)[0]);
+		assertEquals("Control", received.getPhenotypes(15)[0]);
+		assertEquals(received.getValue(7, 3), received.getMatrix().get(7, 3), 0);
+	}
+
+	/* submit as a grid service runner would, reporting how it went */
+	private float[] submit(LocalGridService service, String url,
+			List<Serializable> inputs) throws Exception {
+		boolean succeeded = false;
+		try {
+			float[] result = service.submit(inputs);
+			succeeded = true;
+			return result;
+		} finally {
+			AbstractGridAnalysis.submissionFinished(url, inputs, succeeded);
+		}
+	}
+
+	public void testResubmissionSendsReference() throws Exception {
+		MeanAnalysis analysis = new MeanAnalysis(true);
+		LocalGridService service = new LocalGridService();
+		float[] first = submit(service, url, analysis.handleBisonInputs(view,
+				null, url));
+		int full = service.getLastRequestSize();
+
+		List<Serializable> inputs = analysis.handleBisonInputs(view, null, url);
+		assertTrue(inputs.get(0) instanceof MicroarrayViewBlock.Reference);
+		float[] second = submit(service, url, inputs);
+		assertTrue(service.getLastRequestSize() < 1024);
+		assertTrue(Arrays.equals(first, second));
+
+		// another service, or none named, gets the block
+		assertTrue(analysis.handleBisonInputs(view, null, url + "/other")
+				.get(0) instanceof MicroarrayViewBlock);
+		assertTrue(analysis.handleBisonInputs(view, null).get(0)
+				instanceof MicroarrayViewBlock);
+
+		// a changed value changes the content
+		((CSExpressionMarkerValue) set.get(0).getMarkerValue(2)).setValue(-1);
+		inputs = analysis.handleBisonInputs(view, null, url);
+		assertTrue(inputs.get(0) instanceof MicroarrayViewBlock);
+		submit(service, url, inputs);
+
+		// a service that lost its blocks gets the full block again
+		service.restart();
+		try {
+			submit(service, url, analysis.handleBisonInputs(view, null, url));
+			fail();
+		} catch (IllegalStateException e) {
+			// reported as failed
+		}
+		submit(service, url, analysis.handleBisonInputs(view, null, url));
+		assertTrue(service.getLastRequestSize() > full / 2);
+	}
+
+	public void testFailedSubmissionIsNotRecorded() throws Exception {
+		MeanAnalysis analysis = new MeanAnalysis(true);
+		List<Serializable> inputs = analysis.handleBisonInputs(view, null, url);
+		AbstractGridAnalysis.submissionFinished(url, inputs, false);
+		assertTrue(analysis.handleBisonInputs(view, null, url).get(0)
+				instanceof MicroarrayViewBlock);
+
+		// only so many blocks are kept track of
+		for (int i = 0; i <= AbstractGridAnalysis.MAX_SUBMITTED_INPUTS; i++) {
+			AbstractGridAnalysis.submissionFinished(url + i, inputs, true);
+		}
+		assertTrue(analysis.handleBisonInputs(view, null, url + 0).get(0)
+				instanceof MicroarrayViewBlock);
+		assertTrue(analysis.handleBisonInputs(view, null,
+				url + AbstractGridAnalysis.MAX_SUBMITTED_INPUTS).get(0)
+				instanceof MicroarrayViewBlock.Reference);
+	}
+
+	public void testSmallerThanObjectGraph() throws IOException {
+		List<Serializable> graph = new MeanAnalysis(false).handleBisonInputs(
+				view, null);
+		assertSame(view, graph.get(0));
+		int graphSize = serializedSize(graph);
+		int blockSize = serializedSize(new MeanAnalysis(true)
+				.handleBisonInputs(view, null));
+		assertTrue(blockSize + " vs " + graphSize, blockSize * 4 < graphSize);
+	}
+
+	private static int serializedSize(Object o) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		ObjectOutputStream out = new ObjectOutputStream(bytes);
+		out.writeObject(o);
+		out.close();
+		return bytes.size();
+	}
+
+}
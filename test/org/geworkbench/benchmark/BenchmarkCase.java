@@ -0,0 +1,45 @@
+package org.geworkbench.benchmark;
+
+import java.io.File;
+
+/**
+ * One measured operation. The runner calls {@link #setUp} once, then
+ * {@link #invoke()} repeatedly, first to warm up and then to measure, then
+ * {@link #tearDown()}. Only <code>invoke()</code> is timed.
+ *
+ * @version $Id$
+ */
+public abstract class BenchmarkCase {
+
+	private final String name;
+
+	protected BenchmarkCase(String name) {
+		this.name = name;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * Build the data for this scale; files go in <code>directory</code>,
+	 * which is shared by all cases of a run.
+	 */
+	public void setUp(Scale scale, File directory) throws Exception {
+	}
+
+	/**
+	 * Do the work once. Return something computed from the result so that
+	 * the work cannot be optimized away.
+	 */
+	public abstract Object invoke() throws Exception;
+
+	/** How many operations one invocation does, for the throughput. */
+	public long getOperations() {
+		return 1;
+	}
+
+	public void tearDown() throws Exception {
+	}
+
+}
@@ -0,0 +1,32 @@
+package org.geworkbench.benchmark;
+
+import org.geworkbench.engine.management.Publish;
+
+/**
+ * A component that only publishes, for the event bus benchmark. It has to
+ * be a public top-level class for the registry to proxy it and to remove it
+ * by name.
+ *
+ * @version $Id$
+ */
+public class BenchmarkPublisher {
+
+	/** What is published. */
+	public static class Event {
+		private final int value;
+
+		public Event(int value) {
+			this.value = value;
+		}
+
+		public int getValue() {
+			return value;
+		}
+	}
+
+	@Publish
+	public Event publish(Event event) {
+		return event;
+	}
+
+}
@@ -0,0 +1,237 @@
+package org.geworkbench.benchmark;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Measurements of one run, kept as a tab-delimited file that can be compared
+ * with the file of another run: comment lines starting with <code>#</code>
+ * describing the machine and settings (<code># key=value</code>), a header
+ * line, then one line per benchmark, scale and metric:
+ *
+ * <pre>
+ * benchmark	scale	metric	value	unit
+ * </pre>
+ *
+ * Throughput is better when higher; latency and allocation are better when
+ * lower.
+ *
+ * @version $Id$
+ */
+public final class BenchmarkResults {
+
+	static final String HEADER = "benchmark\tscale\tmetric\tvalue\tunit";
+
+	public static final String THROUGHPUT = "throughput";
+	public static final String LATENCY_P50 = "latency.p50";
+	public static final String LATENCY_P90 = "latency.p90";
+	public static final String LATENCY_P99 = "latency.p99";
+	public static final String LATENCY_MAX = "latency.max";
+	public static final String ALLOCATION = "allocation";
+
+	/** One value of one metric. */
+	public static final class Measurement {
+		private final String benchmark;
+		private final String scale;
+		private final String metric;
+		private final double value;
+		private final String unit;
+
+		public Measurement(String benchmark, String scale, String metric,
+				double value, String unit) {
+			this.benchmark = benchmark;
+			this.scale = scale;
+			this.metric = metric;
+			this.value = value;
+			this.unit = unit;
+		}
+
+		public String getBenchmark() {
+			return benchmark;
+		}
+
+		public String getScale() {
+			return scale;
+		}
+
+		public String getMetric() {
+			return metric;
+		}
+
+		public double getValue() {
+			return value;
+		}
+
+		public String getUnit() {
+			return unit;
+		}
+
+		String getKey() {
+			return benchmark + "\t" + scale + "\t" + metric;
+		}
+	}
+
+	/** A metric measured in both runs that got worse beyond the tolerance. */
+	public static final class Regression {
+		private final Measurement baseline;
+		private final Measurement current;
+
+		Regression(Measurement baseline, Measurement current) {
+			this.baseline = baseline;
+			this.current = current;
+		}
+
+		public Measurement getBaseline() {
+			return baseline;
+		}
+
+		public Measurement getCurrent() {
+			return current;
+		}
+
+		/** current / baseline */
+		public double getRatio() {
+			return current.getValue() / baseline.getValue();
+		}
+
+		public String toString() {
+			return String.format("%s %s %s: %.4g -> %.4g %s (x%.2f)", current
+					.getBenchmark(), current.getScale(), current.getMetric(),
+					baseline.getValue(), current.getValue(), current.getUnit(),
+					getRatio());
+		}
+	}
+
+	private final Map<String, String> environment = new LinkedHashMap<String, String>();
+	private final List<Measurement> measurements = new ArrayList<Measurement>();
+
+	public void setEnvironment(String key, String value) {
+		environment.put(key, value);
+	}
+
+	public Map<String, String> getEnvironment() {
+		return Collections.unmodifiableMap(environment);
+	}
+
+	public void add(Measurement measurement) {
+		measurements.add(measurement);
+	}
+
+	public List<Measurement> getMeasurements() {
+		return Collections.unmodifiableList(measurements);
+	}
+
+	public Measurement get(String benchmark, String scale, String metric) {
+		for (Measurement m : measurements) {
+			if (m.benchmark.equals(benchmark) && m.scale.equals(scale)
+					&& m.metric.equals(metric)) {
+				return m;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * The metrics that are worse here than in <code>baseline</code> by more
+	 * than <code>tolerance</code> (0.1 for ten percent). The maximum latency
+	 * is left out, being mostly noise; so are metrics missing from either run
+	 * and allocation growing by less than a byte per operation.
+	 */
+	public List<Regression> compareTo(BenchmarkResults baseline,
+			double tolerance) {
+		Map<String, Measurement> before = new LinkedHashMap<String, Measurement>();
+		for (Measurement m : baseline.measurements) {
+			before.put(m.getKey(), m);
+		}
+		List<Regression> regressions = new ArrayList<Regression>();
+		for (Measurement m : measurements) {
+			Measurement old = before.get(m.getKey());
+			if (old == null || LATENCY_MAX.equals(m.metric)) {
+				continue;
+			}
+			boolean worse;
+			if (THROUGHPUT.equals(m.metric)) {
+				worse = m.value < old.value * (1 - tolerance);
+			} else if (ALLOCATION.equals(m.metric)) {
+				worse = m.value > old.value * (1 + tolerance)
+						&& m.value - old.value >= 1;
+			} else {
+				worse = m.value > old.value * (1 + tolerance);
+			}
+			if (worse) {
+				regressions.add(new Regression(old, m));
+			}
+		}
+		return regressions;
+	}
+
+	public void write(File file) throws IOException {
+		PrintWriter out = new PrintWriter(new OutputStreamWriter(
+				new FileOutputStream(file), "UTF-8"));
+		try {
+			for (Map.Entry<String, String> entry : environment.entrySet()) {
+				out.print("# " + entry.getKey() + "=" + entry.getValue() + "\n");
+			}
+			out.print(HEADER + "\n");
+			for (Measurement m : measurements) {
+				// Double.toString round-trips and does not depend on the locale
+				out.print(m.benchmark + "\t" + m.scale + "\t" + m.metric + "\t"
+						+ Double.toString(m.value) + "\t" + m.unit + "\n");
+			}
+		} finally {
+			out.close();
+		}
+	}
+
+	public static BenchmarkResults read(File file) throws IOException {
+		BenchmarkResults results = new BenchmarkResults();
+		BufferedReader in = new BufferedReader(new InputStreamReader(
+				new FileInputStream(file), "UTF-8"));
+		try {
+			String line;
+			int lineNumber = 0;
+			while ((line = in.readLine()) != null) {
+				lineNumber++;
+				if (line.startsWith("#")) {
+					int equals = line.indexOf('=');
+					if (equals > 0) {
+						results.setEnvironment(line.substring(1, equals).trim(),
+								line.substring(equals + 1));
+					}
+					continue;
+				}
+				if (line.length() == 0 || line.equals(HEADER)) {
+					continue;
+				}
+				String[] fields = line.split("\t");
+				if (fields.length != 5) {
+					throw new IOException(file + ", line " + lineNumber
+							+ ": expected 5 fields, found " + fields.length);
+				}
+				try {
+					results.add(new Measurement(fields[0], fields[1],
+							fields[2], Double.parseDouble(fields[3]),
+							fields[4]));
+				} catch (NumberFormatException e) {
+					throw new IOException(file + ", line " + lineNumber
+							+ ": not a number: " + fields[3]);
+				}
+			}
+		} finally {
+			in.close();
+		}
+		return results;
+	}
+
+}
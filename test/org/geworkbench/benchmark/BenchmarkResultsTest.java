@@ -0,0 +1,86 @@
+package org.geworkbench.benchmark;
+
+import java.io.File;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.geworkbench.benchmark.BenchmarkResults.Measurement;
+import org.geworkbench.benchmark.BenchmarkResults.Regression;
+
+/**
+ * @version $Id$
+ */
+public class BenchmarkResultsTest extends TestCase {
+
+	public BenchmarkResultsTest(String name) {
+		super(name);
+	}
+
+	private static BenchmarkResults results(double throughput, double p50,
+			double max) {
+		BenchmarkResults results = new BenchmarkResults();
+		results.add(new Measurement("parser", "SMALL",
+				BenchmarkResults.THROUGHPUT, throughput, "ops/s"));
+		results.add(new Measurement("parser", "SMALL",
+				BenchmarkResults.LATENCY_P50, p50, "ms"));
+		results.add(new Measurement("parser", "SMALL",
+				BenchmarkResults.LATENCY_MAX, max, "ms"));
+		return results;
+	}
+
+	public void testWriteAndRead() throws Exception {
+		BenchmarkResults results = results(12345.678, 0.1 / 3, 7);
+		results.setEnvironment("java.version", "1.7.0");
+		File file = File.createTempFile("benchmark", ".tsv");
+		try {
+			results.write(file);
+			BenchmarkResults read = BenchmarkResults.read(file);
+			assertEquals("1.7.0", read.getEnvironment().get("java.version"));
+			assertEquals(3, read.getMeasurements().size());
+			Measurement p50 = read.get("parser", "SMALL",
+					BenchmarkResults.LATENCY_P50);
+			assertEquals(0.1 / 3, p50.getValue(), 0);
+			assertEquals("ms", p50.getUnit());
+			assertEquals(12345.678, read.get("parser", "SMALL",
+					BenchmarkResults.THROUGHPUT).getValue(), 0);
+		} finally {
+			file.delete();
+		}
+	}
+
+	public void testCompare() {
+		BenchmarkResults baseline = results(1000, 10, 20);
+
+		assertTrue(results(950, 10.5, 100).compareTo(baseline, 0.1).isEmpty());
+
+		List<Regression> regressions = results(800, 12, 100).compareTo(
+				baseline, 0.1);
+		assertEquals(2, regressions.size());
+		assertEquals(BenchmarkResults.THROUGHPUT, regressions.get(0)
+				.getCurrent().getMetric());
+		assertEquals(0.8, regressions.get(0).getRatio(), 1e-9);
+		assertEquals(BenchmarkResults.LATENCY_P50, regressions.get(1)
+				.getCurrent().getMetric());
+
+		// the allocation of the harness itself is noise
+		BenchmarkResults small = new BenchmarkResults();
+		small.add(new Measurement("parser", "SMALL",
+				BenchmarkResults.ALLOCATION, 0.0001, "B/op"));
+		BenchmarkResults larger = new BenchmarkResults();
+		larger.add(new Measurement("parser", "SMALL",
+				BenchmarkResults.ALLOCATION, 0.01, "B/op"));
+		assertTrue(larger.compareTo(small, 0.1).isEmpty());
+		BenchmarkResults allocating = new BenchmarkResults();
+		allocating.add(new Measurement("parser", "SMALL",
+				BenchmarkResults.ALLOCATION, 24, "B/op"));
+		assertEquals(1, allocating.compareTo(small, 0.1).size());
+
+		// what the baseline did not measure is not compared
+		BenchmarkResults other = new BenchmarkResults();
+		other.add(new Measurement("writer", "SMALL",
+				BenchmarkResults.THROUGHPUT, 1, "ops/s"));
+		assertTrue(other.compareTo(baseline, 0.1).isEmpty());
+	}
+
+}
@@ -0,0 +1,135 @@
+package org.geworkbench.benchmark;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Arrays;
+
+import org.geworkbench.benchmark.BenchmarkResults.Measurement;
+
+/**
+ * Runs {@link BenchmarkCase}s: a warm-up of at least
+ * <code>warmupMillis</code> and <code>warmupIterations</code> invocations, so
+ * that the JIT has compiled the code measured, then at least
+ * <code>measureMillis</code> and <code>measureIterations</code> timed
+ * invocations, with a garbage collection in between.
+ * <p>
+ * Reported per case:
+ * <ul>
+ * <li>throughput, in operations a second over all measured invocations;
+ * <li>latency of one invocation, median, 90th and 99th percentile and
+ * maximum, in milliseconds;
+ * <li>allocation, in bytes per operation, where the JVM can tell how much
+ * the running thread allocated. Work handed to other threads (the shared
+ * fork-join pool) is not counted.
+ * </ul>
+ *
+ * @version $Id$
+ */
+public final class BenchmarkRunner {
+
+	private long warmupMillis = 2000;
+	private int warmupIterations = 3;
+	private long measureMillis = 5000;
+	private int measureIterations = 5;
+
+	/* results of invoke(), so that the work is not optimized away */
+	private volatile int sink;
+
+	public void setWarmup(long millis, int iterations) {
+		this.warmupMillis = millis;
+		this.warmupIterations = iterations;
+	}
+
+	public void setMeasurement(long millis, int iterations) {
+		this.measureMillis = millis;
+		this.measureIterations = Math.max(1, iterations);
+	}
+
+	/**
+	 * Run one case at one scale and add its measurements to
+	 * <code>results</code>.
+	 */
+	public void run(BenchmarkCase benchmark, Scale scale, File directory,
+			BenchmarkResults results) throws Exception {
+		benchmark.setUp(scale, directory);
+		try {
+			long end = System.nanoTime() + warmupMillis * 1000000L;
+			for (int i = 0; i < warmupIterations || System.nanoTime() < end; i++) {
+				consume(benchmark.invoke());
+			}
+			System.gc();
+
+			ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+			com.sun.management.ThreadMXBean allocations = null;
+			if (threads instanceof com.sun.management.ThreadMXBean) {
+				allocations = (com.sun.management.ThreadMXBean) threads;
+				if (!allocations.isThreadAllocatedMemorySupported()
+						|| !allocations.isThreadAllocatedMemoryEnabled()) {
+					allocations = null;
+				}
+			}
+			long thread = Thread.currentThread().getId();
+
+			long[] times = new long[Math.max(16, measureIterations)];
+			int count = 0;
+			long allocated = 0;
+			long total = 0;
+			end = System.nanoTime() + measureMillis * 1000000L;
+			while (count < measureIterations || System.nanoTime() < end) {
+				long bytes = allocations == null ? 0 : allocations
+						.getThreadAllocatedBytes(thread);
+				long start = System.nanoTime();
+				Object result = benchmark.invoke();
+				long time = System.nanoTime() - start;
+				if (allocations != null) {
+					allocated += allocations.getThreadAllocatedBytes(thread)
+							- bytes;
+				}
+				consume(result);
+				if (count == times.length) {
+					times = Arrays.copyOf(times, count * 2);
+				}
+				times[count++] = time;
+				total += time;
+			}
+
+			String name = benchmark.getName();
+			String size = scale.toString();
+			long operations = benchmark.getOperations() * count;
+			results.add(new Measurement(name, size,
+					BenchmarkResults.THROUGHPUT, operations / (total / 1e9),
+					"ops/s"));
+			Arrays.sort(times, 0, count);
+			results.add(new Measurement(name, size,
+					BenchmarkResults.LATENCY_P50, percentile(times, count, 0.5),
+					"ms"));
+			results.add(new Measurement(name, size,
+					BenchmarkResults.LATENCY_P90, percentile(times, count, 0.9),
+					"ms"));
+			results.add(new Measurement(name, size,
+					BenchmarkResults.LATENCY_P99,
+					percentile(times, count, 0.99), "ms"));
+			results.add(new Measurement(name, size,
+					BenchmarkResults.LATENCY_MAX, times[count - 1] / 1e6, "ms"));
+			if (allocations != null) {
+				results.add(new Measurement(name, size,
+						BenchmarkResults.ALLOCATION, (double) allocated
+								/ operations, "B/op"));
+			}
+		} finally {
+			benchmark.tearDown();
+		}
+	}
+
+	/* nearest rank, in milliseconds */
+	private static double percentile(long[] sorted, int count, double fraction) {
+		int rank = (int) Math.ceil(fraction * count) - 1;
+		return sorted[Math.max(0, Math.min(count - 1, rank))] / 1e6;
+	}
+
+	private void consume(Object result) {
+		sink += result == null ? 0 : System.identityHashCode(result);
+	}
+
+}
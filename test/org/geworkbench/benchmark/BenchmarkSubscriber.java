@@ -0,0 +1,24 @@
+package org.geworkbench.benchmark;
+
+import org.geworkbench.engine.management.Subscribe;
+
+/**
+ * A component receiving {@link BenchmarkPublisher.Event}s on the publishing
+ * thread.
+ *
+ * @version $Id$
+ */
+public class BenchmarkSubscriber {
+
+	private long received;
+
+	@Subscribe
+	public void receive(BenchmarkPublisher.Event event, Object source) {
+		received += event.getValue();
+	}
+
+	public long getReceived() {
+		return received;
+	}
+
+}
@@ -0,0 +1,500 @@
+package org.geworkbench.benchmark;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.TimeZone;
+
+import org.geworkbench.benchmark.BenchmarkResults.Measurement;
+import org.geworkbench.benchmark.BenchmarkResults.Regression;
+import org.geworkbench.bison.datastructure.biocollections.DSDataSet;
+import org.geworkbench.bison.datastructure.biocollections.microarrays.CSMicroarraySet;
+import org.geworkbench.bison.datastructure.biocollections.sequences.CSSequenceSet;
+import org.geworkbench.bison.datastructure.bioobjects.markers.DSGeneMarker;
+import org.geworkbench.bison.datastructure.bioobjects.markers.annotationparser.AffyAnnotationParserBenchmark;
+import org.geworkbench.bison.datastructure.complex.panels.CSPanel;
+import org.geworkbench.bison.datastructure.complex.panels.DSPanel;
+import org.geworkbench.engine.config.PluginDescriptor;
+import org.geworkbench.engine.management.ComponentRegistry;
+import org.geworkbench.parsers.EdgeListFileFormat;
+import org.geworkbench.parsers.SOFTFileFormat;
+import org.geworkbench.parsers.TabDelimitedDataMatrixFileFormat;
+import org.geworkbench.util.pathwaydecoder.mutualinformation.EdgeListReader;
+
+/**
+ * The benchmarks of the hot paths: expression value lookup, panel indexing,
+ * the event bus and the file parsers, on synthetic data. Usage:
+ *
+ * <pre>
+ * BenchmarkSuite [-scale SMALL,MEDIUM,LARGE] [-filter text] [-data directory]
+ *     [-out results.tsv] [-baseline results.tsv] [-tolerance 0.1] [-quick]
+ * </pre>
+ *
+ * The results are written in the format of {@link BenchmarkResults}. With a
+ * baseline, the metrics that got worse by more than the tolerance are listed
+ * and the exit status is 1. <code>-quick</code> shortens warm-up and
+ * measurement, for a smoke test. The data files are generated in the data
+ * directory on first use and kept for later runs.
+ *
+ * @version $Id$
+ */
+public class BenchmarkSuite {
+
+	/* lookups per invocation of the in-memory benchmarks */
+	private static final int LOOKUPS = 1000000;
+	/* indexOf() scans the sub-panels, so fewer of those */
+	private static final int PANEL_LOOKUPS = 10000;
+	private static final int EVENTS = 10000;
+	private static final int SUBSCRIBERS = 4;
+
+	public static List<BenchmarkCase> createCases() {
+		List<BenchmarkCase> cases = new ArrayList<BenchmarkCase>();
+		cases.add(new GetValueByMarker());
+		cases.add(new GetValueByIndex());
+		cases.add(new PanelIndexing());
+		cases.add(new RegistryPublish());
+		cases.add(new TabDelimitedParser());
+		cases.add(new SoftFormatCheck());
+		cases.add(new AffyAnnotationParserBenchmark());
+		cases.add(new EdgeListParser());
+		cases.add(new FastaParser());
+		return cases;
+	}
+
+	public static void main(String[] args) throws Exception {
+		List<Scale> scales = new ArrayList<Scale>();
+		String filter = null;
+		File data = new File(System.getProperty("java.io.tmpdir"),
+				"geworkbench-benchmark");
+		File out = new File("benchmark-results.tsv");
+		File baseline = null;
+		double tolerance = 0.1;
+		boolean quick = false;
+		for (int a = 0; a < args.length; a++) {
+			String arg = args[a];
+			if (arg.equals("-quick")) {
+				quick = true;
+			} else if (a + 1 >= args.length) {
+				usage("missing value for " + arg);
+			} else if (arg.equals("-scale")) {
+				for (String s : args[++a].split(",")) {
+					scales.add(Scale.valueOf(s.trim().toUpperCase(Locale.US)));
+				}
+			} else if (arg.equals("-filter")) {
+				filter = args[++a];
+			} else if (arg.equals("-data")) {
+				data = new File(args[++a]);
+			} else if (arg.equals("-out")) {
+				out = new File(args[++a]);
+			} else if (arg.equals("-baseline")) {
+				baseline = new File(args[++a]);
+			} else if (arg.equals("-tolerance")) {
+				tolerance = Double.parseDouble(args[++a]);
+			} else {
+				usage("unknown option " + arg);
+			}
+		}
+		if (scales.isEmpty()) {
+			scales.add(Scale.SMALL);
+			scales.add(Scale.MEDIUM);
+		}
+		if (!data.isDirectory() && !data.mkdirs()) {
+			throw new IOException("Cannot create " + data);
+		}
+
+		BenchmarkRunner runner = new BenchmarkRunner();
+		if (quick) {
+			runner.setWarmup(200, 1);
+			runner.setMeasurement(500, 3);
+		}
+		BenchmarkResults results = new BenchmarkResults();
+		describeEnvironment(results, quick);
+		for (Scale scale : scales) {
+			for (BenchmarkCase benchmark : createCases()) {
+				if (filter != null && benchmark.getName().indexOf(filter) < 0) {
+					continue;
+				}
+				int before = results.getMeasurements().size();
+				runner.run(benchmark, scale, data, results);
+				print(results.getMeasurements().subList(before,
+						results.getMeasurements().size()));
+			}
+		}
+		results.write(out);
+		System.out.println("results written to " + out);
+
+		if (baseline != null) {
+			List<Regression> regressions = results.compareTo(BenchmarkResults
+					.read(baseline), tolerance);
+			if (regressions.isEmpty()) {
+				System.out.println("no regressions against " + baseline);
+			} else {
+				System.out.println(regressions.size()
+						+ " regressions against " + baseline + ":");
+				for (Regression regression : regressions) {
+					System.out.println("  " + regression);
+				}
+				System.exit(1);
+			}
+		}
+	}
+
+	private static void usage(String problem) {
+		System.err.println(problem);
+		System.err.println("usage: BenchmarkSuite [-scale SMALL,MEDIUM,LARGE]"
+				+ " [-filter text] [-data directory] [-out results.tsv]"
+				+ " [-baseline results.tsv] [-tolerance 0.1] [-quick]");
+		System.exit(2);
+	}
+
+	private static void describeEnvironment(BenchmarkResults results,
+			boolean quick) {
+		SimpleDateFormat format = new SimpleDateFormat(
+				"yyyy-MM-dd'T'HH:mm:ss'Z'", Locale.US);
+		format.setTimeZone(TimeZone.getTimeZone("UTC"));
+		results.setEnvironment("date", format.format(new Date()));
+		for (String property : new String[] { "java.version", "java.vm.name",
+				"os.name", "os.arch" }) {
+			results.setEnvironment(property, System.getProperty(property));
+		}
+		Runtime runtime = Runtime.getRuntime();
+		results.setEnvironment("processors", String.valueOf(runtime
+				.availableProcessors()));
+		results.setEnvironment("max.memory", String.valueOf(runtime
+				.maxMemory()));
+		results.setEnvironment("quick", String.valueOf(quick));
+	}
+
+	private static void print(List<Measurement> measurements) {
+		for (Measurement m : measurements) {
+			System.out.println(String.format(Locale.US,
+					"  %-32s %-7s %-12s %14.4g %s", m.getBenchmark(), m
+							.getScale(), m.getMetric(), m.getValue(), m
+							.getUnit()));
+		}
+	}
+
+	/** The file for this data and scale, written on first use. */
+	public static File dataFile(File directory, String name, Scale scale)
+			throws IOException {
+		File file = new File(directory, name + "-"
+				+ scale.toString().toLowerCase(Locale.US) + fileExtension(name));
+		if (!file.exists()) {
+			File partial = new File(file.getPath() + ".part");
+			if (name.equals("expression")) {
+				SyntheticData.writeExpressionMatrix(scale, partial);
+			} else if (name.equals("soft")) {
+				SyntheticData.writeSoftDataset(scale, partial);
+			} else if (name.equals("annotation")) {
+				SyntheticData.writeAffyAnnotation(scale, partial);
+			} else if (name.equals("network")) {
+				SyntheticData.writeEdgeList(scale, partial);
+			} else if (name.equals("sequences")) {
+				SyntheticData.writeFasta(scale, partial);
+			} else {
+				throw new IllegalArgumentException(name);
+			}
+			if (!partial.renameTo(file)) {
+				throw new IOException("Cannot rename " + partial);
+			}
+		}
+		return file;
+	}
+
+	private static String fileExtension(String name) {
+		if (name.equals("soft")) {
+			return ".soft";
+		} else if (name.equals("annotation")) {
+			return ".csv";
+		} else if (name.equals("sequences")) {
+			return ".fasta";
+		}
+		return ".txt";
+	}
+
+	/** Random marker and array indices, the same on every run. */
+	private abstract static class LookupCase extends BenchmarkCase {
+		CSMicroarraySet set;
+		int[] markers;
+		int[] arrays;
+
+		LookupCase(String name) {
+			super(name);
+		}
+
+		public void setUp(Scale scale, File directory) {
+			set = SyntheticData.microarraySet(scale);
+			Random random = new Random(LOOKUPS);
+			markers = new int[LOOKUPS];
+			arrays = new int[LOOKUPS];
+			for (int k = 0; k < LOOKUPS; k++) {
+				markers[k] = random.nextInt(scale.getMarkers());
+				arrays[k] = random.nextInt(scale.getArrays());
+			}
+		}
+
+		public long getOperations() {
+			return LOOKUPS;
+		}
+
+		public void tearDown() {
+			set = null;
+		}
+	}
+
+	/* the lookup by marker object goes through the label map */
+	private static class GetValueByMarker extends LookupCase {
+		private DSGeneMarker[] markerObjects;
+
+		GetValueByMarker() {
+			super("CSMicroarraySet.getValue(marker)");
+		}
+
+		public void setUp(Scale scale, File directory) {
+			super.setUp(scale, directory);
+			markerObjects = new DSGeneMarker[LOOKUPS];
+			for (int k = 0; k < LOOKUPS; k++) {
+				markerObjects[k] = set.getMarkers().get(markers[k]);
+			}
+		}
+
+		public Object invoke() {
+			double sum = 0;
+			for (int k = 0; k < LOOKUPS; k++) {
+				sum += set.getValue(markerObjects[k], arrays[k]);
+			}
+			return Double.valueOf(sum);
+		}
+	}
+
+	private static class GetValueByIndex extends LookupCase {
+		GetValueByIndex() {
+			super("CSMicroarraySet.getValue(index)");
+		}
+
+		public Object invoke() {
+			double sum = 0;
+			for (int k = 0; k < LOOKUPS; k++) {
+				sum += set.getValue(markers[k], arrays[k]);
+			}
+			return Double.valueOf(sum);
+		}
+	}
+
+	/*
+	 * get() and indexOf() on a panel of twenty active sub-panels, as the
+	 * marker selector builds them
+	 */
+	private static class PanelIndexing extends LookupCase {
+		private CSPanel<DSGeneMarker> panel;
+		private DSGeneMarker[] items;
+
+		PanelIndexing() {
+			super("CSPanel.get/indexOf");
+		}
+
+		public void setUp(Scale scale, File directory) {
+			super.setUp(scale, directory);
+			panel = new CSPanel<DSGeneMarker>("markers");
+			int size = scale.getMarkers() / 20;
+			for (int p = 0; p < 20; p++) {
+				DSPanel<DSGeneMarker> subPanel = new CSPanel<DSGeneMarker>(
+						"panel " + p);
+				for (int i = p * size; i < (p + 1) * size; i++) {
+					subPanel.add(set.getMarkers().get(i));
+				}
+				subPanel.setActive(true);
+				panel.panels().add(subPanel);
+			}
+			items = new DSGeneMarker[PANEL_LOOKUPS];
+			for (int k = 0; k < PANEL_LOOKUPS; k++) {
+				markers[k] = markers[k] % (20 * size);
+				items[k] = set.getMarkers().get(markers[k]);
+			}
+		}
+
+		public Object invoke() {
+			long sum = 0;
+			for (int k = 0; k < PANEL_LOOKUPS; k++) {
+				sum += panel.get(markers[k]).getSerial();
+				sum += panel.indexOf(items[k]);
+			}
+			return Long.valueOf(sum);
+		}
+
+		public long getOperations() {
+			return PANEL_LOOKUPS;
+		}
+
+		public void tearDown() {
+			super.tearDown();
+			panel = null;
+			items = null;
+		}
+	}
+
+	/* @Publish method to synchronous @Subscribe methods through the registry */
+	private static class RegistryPublish extends BenchmarkCase {
+		private final List<PluginDescriptor> descriptors = new ArrayList<PluginDescriptor>();
+		private BenchmarkPublisher publisher;
+		private BenchmarkPublisher.Event[] events;
+
+		RegistryPublish() {
+			super("ComponentRegistry.publish");
+		}
+
+		public void setUp(Scale scale, File directory) {
+			ComponentRegistry registry = ComponentRegistry.getRegistry();
+			PluginDescriptor publishing = new PluginDescriptor(
+					BenchmarkPublisher.class.getName(), "benchmarkPublisher",
+					"Benchmark publisher", null, 0);
+			descriptors.add(publishing);
+			publisher = (BenchmarkPublisher) publishing.getPlugin();
+			for (int s = 0; s < SUBSCRIBERS; s++) {
+				PluginDescriptor subscribing = new PluginDescriptor(
+						BenchmarkSubscriber.class.getName(),
+						"benchmarkSubscriber" + s, "Benchmark subscriber " + s,
+						null, 0);
+				registry.registerSubscriptions(subscribing.getPlugin(),
+						subscribing);
+				descriptors.add(subscribing);
+			}
+			events = new BenchmarkPublisher.Event[EVENTS];
+			for (int e = 0; e < EVENTS; e++) {
+				events[e] = new BenchmarkPublisher.Event(e);
+			}
+		}
+
+		public Object invoke() {
+			for (BenchmarkPublisher.Event event : events) {
+				publisher.publish(event);
+			}
+			return publisher;
+		}
+
+		public long getOperations() {
+			return EVENTS;
+		}
+
+		public void tearDown() {
+			ComponentRegistry registry = ComponentRegistry.getRegistry();
+			// removes one listener of the class a call
+			for (PluginDescriptor descriptor : descriptors) {
+				registry.removeComponent(descriptor.getPluginClass().getName());
+				registry.removePlugin(descriptor.getID());
+			}
+			descriptors.clear();
+			publisher = null;
+		}
+	}
+
+	/** A parser reading a generated file; operations are the records read. */
+	private abstract static class FileCase extends BenchmarkCase {
+		private final String data;
+		File file;
+		long records;
+
+		FileCase(String name, String data) {
+			super(name);
+			this.data = data;
+		}
+
+		public void setUp(Scale scale, File directory) throws IOException {
+			file = dataFile(directory, data, scale);
+			records = records(scale);
+		}
+
+		abstract long records(Scale scale);
+
+		public long getOperations() {
+			return records;
+		}
+	}
+
+	/* operations are values */
+	private static class TabDelimitedParser extends FileCase {
+		TabDelimitedParser() {
+			super("TabDelimitedDataMatrixFileFormat", "expression");
+		}
+
+		long records(Scale scale) {
+			return (long) scale.getMarkers() * scale.getArrays();
+		}
+
+		public Object invoke() throws Exception {
+			DSDataSet<?> set = new TabDelimitedDataMatrixFileFormat()
+					.getDataFileSkipAnnotation(file);
+			if (set.size() == 0) {
+				throw new IllegalStateException("nothing parsed from " + file);
+			}
+			return set;
+		}
+	}
+
+	/*
+	 * Parsing a SOFT file asks for the annotation file in a dialog, so only
+	 * the format check, a full pass over the file, is measured; operations
+	 * are values
+	 */
+	private static class SoftFormatCheck extends FileCase {
+		SoftFormatCheck() {
+			super("SOFTFileFormat.checkFormat", "soft");
+		}
+
+		long records(Scale scale) {
+			return (long) scale.getMarkers() * scale.getArrays();
+		}
+
+		public Object invoke() throws Exception {
+			if (!new SOFTFileFormat().checkFormat(file)) {
+				throw new IllegalStateException("format check failed: " + file);
+			}
+			return file;
+		}
+	}
+
+	/* operations are edges */
+	private static class EdgeListParser extends FileCase {
+		EdgeListParser() {
+			super("EdgeListReader", "network");
+		}
+
+		long records(Scale scale) {
+			return scale.getEdges();
+		}
+
+		public Object invoke() throws Exception {
+			FileChannel channel = new FileInputStream(file).getChannel();
+			try {
+				return new EdgeListReader(EdgeListFileFormat.COMMENTS,
+						EdgeListFileFormat.GENE_NAME_GENE_ID_DELIMITER)
+						.readEdgeList(channel);
+			} finally {
+				channel.close();
+			}
+		}
+	}
+
+	/* operations are sequences */
+	private static class FastaParser extends FileCase {
+		FastaParser() {
+			super("CSSequenceSet.readFASTAFile", "sequences");
+		}
+
+		long records(Scale scale) {
+			return scale.getSequences();
+		}
+
+		public Object invoke() {
+			return CSSequenceSet.createFASTAfile(file);
+		}
+	}
+
+}
@@ -0,0 +1,56 @@
+package org.geworkbench.benchmark;
+
+/**
+ * Sizes of the synthetic data sets. LARGE is about a full Affymetrix HG-U133
+ * Plus 2 chip: 54675 probe sets.
+ *
+ * @version $Id$
+ */
+public enum Scale {
+
+	SMALL(1000, 10, 1000, 5000, 100, 500),
+	MEDIUM(12000, 50, 10000, 100000, 1000, 1000),
+	LARGE(54675, 200, 50000, 1000000, 5000, 2000);
+
+	private final int markers;
+	private final int arrays;
+	private final int nodes;
+	private final int edges;
+	private final int sequences;
+	private final int sequenceLength;
+
+	private Scale(int markers, int arrays, int nodes, int edges,
+			int sequences, int sequenceLength) {
+		this.markers = markers;
+		this.arrays = arrays;
+		this.nodes = nodes;
+		this.edges = edges;
+		this.sequences = sequences;
+		this.sequenceLength = sequenceLength;
+	}
+
+	public int getMarkers() {
+		return markers;
+	}
+
+	public int getArrays() {
+		return arrays;
+	}
+
+	public int getNodes() {
+		return nodes;
+	}
+
+	public int getEdges() {
+		return edges;
+	}
+
+	public int getSequences() {
+		return sequences;
+	}
+
+	public int getSequenceLength() {
+		return sequenceLength;
+	}
+
+}
@@ -0,0 +1,307 @@
+package org.geworkbench.benchmark;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Random;
+
+import org.geworkbench.bison.datastructure.biocollections.microarrays.CSMicroarraySet;
+import org.geworkbench.bison.datastructure.bioobjects.markers.CSExpressionMarker;
+import org.geworkbench.bison.datastructure.bioobjects.markers.DSGeneMarker;
+import org.geworkbench.bison.datastructure.bioobjects.microarray.CSExpressionMarkerValue;
+import org.geworkbench.bison.datastructure.bioobjects.microarray.CSMicroarray;
+import org.geworkbench.bison.datastructure.bioobjects.microarray.DSMicroarray;
+
+/**
+ * Data for the benchmarks, the same for a given scale on every run and
+ * machine: each generator has its own fixed seed, numbers are written without
+ * the default locale, and lines end with a bare newline. The expression values
+ * are log-normal, as for MAS5 signals; the marker labels look like Affymetrix
+ * probe set IDs, and the annotation, GEO and network files use the same
+ * labels.
+ *
+ * @version $Id$
+ */
+public final class SyntheticData {
+
+	private static final long SEED = 50;
+	private static final String NEWLINE = "\n";
+	private static final char[] BASES = { 'A', 'C', 'G', 'T' };
+
+	private SyntheticData() {
+	}
+
+	public static String markerLabel(int marker) {
+		return (100000 + marker) + "_at";
+	}
+
+	public static String arrayLabel(int array) {
+		return "GSM" + (100000 + array);
+	}
+
+	public static String geneSymbol(int marker) {
+		// about two probe sets per gene, as on the real chips
+		return "GENE" + (marker / 2);
+	}
+
+	private static Random random(Scale scale, int kind) {
+		return new Random(SEED * 31 + scale.ordinal() * 7 + kind);
+	}
+
+	private static double expression(Random random) {
+		return Math.pow(2, 7 + 2 * random.nextGaussian());
+	}
+
+	/** A set held in memory, values as in {@link #writeExpressionMatrix}. */
+	public static CSMicroarraySet microarraySet(Scale scale) {
+		int markers = scale.getMarkers();
+		int arrays = scale.getArrays();
+		CSMicroarraySet set = new CSMicroarraySet();
+		set.setLabel("synthetic " + scale);
+		for (int i = 0; i < markers; i++) {
+			DSGeneMarker marker = new CSExpressionMarker(i);
+			marker.setLabel(markerLabel(i));
+			marker.setGeneName(geneSymbol(i));
+			set.getMarkers().add(i, marker);
+		}
+		DSMicroarray[] microarrays = new DSMicroarray[arrays];
+		for (int j = 0; j < arrays; j++) {
+			microarrays[j] = new CSMicroarray(j, markers, arrayLabel(j),
+					CSMicroarraySet.affyTxtType);
+		}
+		Random random = random(scale, 0);
+		for (int i = 0; i < markers; i++) {
+			for (int j = 0; j < arrays; j++) {
+				CSExpressionMarkerValue value = new CSExpressionMarkerValue(
+						(float) round(expression(random)));
+				value.setPresent();
+				microarrays[j].setMarkerValue(i, value);
+			}
+		}
+		for (DSMicroarray microarray : microarrays) {
+			set.add(microarray);
+		}
+		set.getMarkers().correctMaps();
+		return set;
+	}
+
+	/** The tab-delimited matrix format: a header of arrays, then one marker a line. */
+	public static void writeExpressionMatrix(Scale scale, File file)
+			throws IOException {
+		Writer out = open(file);
+		try {
+			StringBuilder line = new StringBuilder();
+			line.append("Probe Set ID");
+			for (int j = 0; j < scale.getArrays(); j++) {
+				line.append('\t').append(arrayLabel(j));
+			}
+			out.write(line.append(NEWLINE).toString());
+			Random random = random(scale, 0);
+			for (int i = 0; i < scale.getMarkers(); i++) {
+				line.setLength(0);
+				line.append(markerLabel(i));
+				for (int j = 0; j < scale.getArrays(); j++) {
+					line.append('\t');
+					appendValue(line, expression(random));
+				}
+				out.write(line.append(NEWLINE).toString());
+			}
+		} finally {
+			out.close();
+		}
+	}
+
+	/** A GEO SOFT data set (GDS) file with the same values. */
+	public static void writeSoftDataset(Scale scale, File file)
+			throws IOException {
+		Writer out = open(file);
+		try {
+			out.write("^DATABASE = Geo" + NEWLINE);
+			out.write("!Database_name = Gene Expression Omnibus (GEO)"
+					+ NEWLINE);
+			out.write("!Database_institute = NCBI NLM NIH" + NEWLINE);
+			out.write("!Database_web_link = http://www.ncbi.nlm.nih.gov/geo"
+					+ NEWLINE);
+			out.write("!Database_email = geo@ncbi.nlm.nih.gov" + NEWLINE);
+			out.write("^DATASET = GDS" + (scale.ordinal() + 1) + NEWLINE);
+			out.write("!dataset_title = synthetic " + scale + NEWLINE);
+			out.write("!dataset_platform = GPL570" + NEWLINE);
+			out.write("!dataset_sample_count = " + scale.getArrays() + NEWLINE);
+			out.write("!dataset_value_type = count" + NEWLINE);
+			out.write("!dataset_table_begin" + NEWLINE);
+			StringBuilder line = new StringBuilder("ID_REF\tIDENTIFIER");
+			for (int j = 0; j < scale.getArrays(); j++) {
+				line.append('\t').append(arrayLabel(j));
+			}
+			out.write(line.append(NEWLINE).toString());
+			Random random = random(scale, 0);
+			for (int i = 0; i < scale.getMarkers(); i++) {
+				line.setLength(0);
+				line.append(markerLabel(i)).append('\t').append(geneSymbol(i));
+				for (int j = 0; j < scale.getArrays(); j++) {
+					line.append('\t');
+					appendValue(line, expression(random));
+				}
+				out.write(line.append(NEWLINE).toString());
+			}
+			out.write("!dataset_table_end" + NEWLINE);
+		} finally {
+			out.close();
+		}
+	}
+
+	/** An Affymetrix 3' expression annotation CSV for the markers. */
+	public static void writeAffyAnnotation(Scale scale, File file)
+			throws IOException {
+		String[] columns = { "Probe Set ID", "GeneChip Array",
+				"Species Scientific Name", "Annotation Date",
+				"Sequence Type", "Archival UniGene Cluster", "UniGene ID",
+				"Genome Version", "Alignments", "Gene Title", "Gene Symbol",
+				"Entrez Gene", "SwissProt", "RefSeq Transcript ID",
+				"Gene Ontology Biological Process",
+				"Gene Ontology Cellular Component",
+				"Gene Ontology Molecular Function", "Pathway",
+				"Transcript Assignments" };
+		Writer out = open(file);
+		try {
+			out.write("#%create_date=Thu Jan 01 00:00:00 1970" + NEWLINE);
+			out.write("#%chip_type=Synthetic-" + scale + NEWLINE);
+			StringBuilder line = new StringBuilder();
+			for (int c = 0; c < columns.length; c++) {
+				quote(line, c, columns[c]);
+			}
+			out.write(line.append(NEWLINE).toString());
+			Random random = random(scale, 1);
+			for (int i = 0; i < scale.getMarkers(); i++) {
+				int gene = i / 2;
+				line.setLength(0);
+				quote(line, 0, markerLabel(i));
+				quote(line, 1, "Synthetic-" + scale);
+				quote(line, 2, "Homo sapiens");
+				quote(line, 3, "Jan 1, 1970");
+				quote(line, 4, "Consensus sequence");
+				quote(line, 5, "---");
+				quote(line, 6, "Hs." + (1000 + gene));
+				quote(line, 7, "February 2009 (Genome Reference Consortium GRCh37)");
+				quote(line, 8, "chr" + (1 + gene % 22) + ":"
+						+ (1000000 + random.nextInt(100000000)) + "-"
+						+ (1000000 + random.nextInt(100000000)) + " (+) // 95.2 // p13");
+				quote(line, 9, "synthetic gene " + gene);
+				quote(line, 10, geneSymbol(i));
+				quote(line, 11, String.valueOf(10000 + gene));
+				quote(line, 12, "P" + (10000 + gene));
+				quote(line, 13, "NM_" + (100000 + gene));
+				quote(line, 14, goTerms(random, 8000));
+				quote(line, 15, goTerms(random, 5000));
+				quote(line, 16, goTerms(random, 3000));
+				quote(line, 17, "---");
+				quote(line, 18, "NM_" + (100000 + gene)
+						+ " // synthetic gene // refseq // 1 // ---");
+				out.write(line.append(NEWLINE).toString());
+			}
+		} finally {
+			out.close();
+		}
+	}
+
+	private static String goTerms(Random random, int base) {
+		StringBuilder terms = new StringBuilder();
+		int count = 1 + random.nextInt(4);
+		for (int t = 0; t < count; t++) {
+			if (t > 0) {
+				terms.append(" /// ");
+			}
+			int term = base + random.nextInt(1000);
+			terms.append("000").append(term).append(" // term ").append(term)
+					.append(" // inferred from electronic annotation");
+		}
+		return terms.toString();
+	}
+
+	/**
+	 * A network of gene symbols, one edge per line. Node degrees are skewed:
+	 * the first nodes take part in more edges, as hubs do.
+	 */
+	public static void writeEdgeList(Scale scale, File file)
+			throws IOException {
+		Writer out = open(file);
+		try {
+			out.write("# synthetic network " + scale + NEWLINE);
+			Random random = random(scale, 2);
+			int nodes = scale.getNodes();
+			StringBuilder line = new StringBuilder();
+			for (int e = 0; e < scale.getEdges(); e++) {
+				int from = (int) (nodes * Math.pow(random.nextDouble(), 2));
+				int to = random.nextInt(nodes - 1);
+				if (to >= from) {
+					to++;
+				}
+				line.setLength(0);
+				line.append("GENE").append(from).append('\t').append("GENE")
+						.append(to).append(NEWLINE);
+				out.write(line.toString());
+			}
+		} finally {
+			out.close();
+		}
+	}
+
+	/** DNA sequences, sixty bases a line. */
+	public static void writeFasta(Scale scale, File file) throws IOException {
+		Writer out = open(file);
+		try {
+			Random random = random(scale, 3);
+			char[] row = new char[60];
+			for (int s = 0; s < scale.getSequences(); s++) {
+				out.write(">" + markerLabel(s) + " synthetic promoter " + s
+						+ NEWLINE);
+				for (int done = 0; done < scale.getSequenceLength(); done += row.length) {
+					int length = Math.min(row.length, scale.getSequenceLength()
+							- done);
+					for (int b = 0; b < length; b++) {
+						row[b] = BASES[random.nextInt(4)];
+					}
+					out.write(row, 0, length);
+					out.write(NEWLINE);
+				}
+			}
+		} finally {
+			out.close();
+		}
+	}
+
+	private static Writer open(File file) throws IOException {
+		return new BufferedWriter(new OutputStreamWriter(new FileOutputStream(
+				file), "US-ASCII"), 1 << 16);
+	}
+
+	private static void quote(StringBuilder line, int column, String value) {
+		if (column > 0) {
+			line.append(',');
+		}
+		line.append('"').append(value).append('"');
+	}
+
+	/* the value as the files hold it: three decimals */
+	private static double round(double value) {
+		return Math.round(value * 1000) / 1000.0;
+	}
+
+	/* three decimals without String.format, which depends on the locale */
+	private static void appendValue(StringBuilder line, double value) {
+		long thousandths = Math.round(value * 1000);
+		line.append(thousandths / 1000).append('.');
+		long fraction = thousandths % 1000;
+		if (fraction < 100) {
+			line.append('0');
+		}
+		if (fraction < 10) {
+			line.append('0');
+		}
+		line.append(fraction);
+	}
+
+}
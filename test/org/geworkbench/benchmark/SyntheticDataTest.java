@@ -0,0 +1,107 @@
+package org.geworkbench.benchmark;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+import org.geworkbench.bison.datastructure.biocollections.DSDataSet;
+import org.geworkbench.bison.datastructure.biocollections.microarrays.CSMicroarraySet;
+import org.geworkbench.bison.datastructure.biocollections.microarrays.DSMicroarraySet;
+import org.geworkbench.bison.datastructure.biocollections.sequences.CSSequenceSet;
+import org.geworkbench.bison.datastructure.biocollections.sequences.DSSequenceSet;
+import org.geworkbench.parsers.EdgeListFileFormat;
+import org.geworkbench.parsers.SOFTFileFormat;
+import org.geworkbench.parsers.TabDelimitedDataMatrixFileFormat;
+import org.geworkbench.util.pathwaydecoder.mutualinformation.EdgeList;
+import org.geworkbench.util.pathwaydecoder.mutualinformation.EdgeListReader;
+
+/**
+ * @version $Id$
+ */
+public class SyntheticDataTest extends TestCase {
+
+	private File directory;
+
+	public SyntheticDataTest(String name) {
+		super(name);
+	}
+
+	protected void setUp() throws Exception {
+		directory = File.createTempFile("synthetic", "");
+		directory.delete();
+		directory.mkdir();
+	}
+
+	protected void tearDown() throws Exception {
+		for (File file : directory.listFiles()) {
+			file.delete();
+		}
+		directory.delete();
+	}
+
+	public void testSameDataEveryRun() throws Exception {
+		File first = new File(directory, "first.txt");
+		File second = new File(directory, "second.txt");
+		SyntheticData.writeExpressionMatrix(Scale.SMALL, first);
+		SyntheticData.writeExpressionMatrix(Scale.SMALL, second);
+		assertTrue(Arrays.equals(read(first), read(second)));
+
+		// the set in memory holds the values of the file
+		CSMicroarraySet set = SyntheticData.microarraySet(Scale.SMALL);
+		assertEquals(Scale.SMALL.getArrays(), set.size());
+		assertEquals(Scale.SMALL.getMarkers(), set.getMarkers().size());
+		DSMicroarraySet parsed = (DSMicroarraySet) new TabDelimitedDataMatrixFileFormat()
+				.getDataFileSkipAnnotation(second);
+		assertEquals(set.getValue(7, 3), parsed.getValue(7, 3), 1e-6);
+		assertEquals(SyntheticData.markerLabel(7), parsed.getMarkers().get(7)
+				.getLabel());
+	}
+
+	public void testFilesParse() throws Exception {
+		File matrix = BenchmarkSuite.dataFile(directory, "expression",
+				Scale.SMALL);
+		DSDataSet<?> set = new TabDelimitedDataMatrixFileFormat()
+				.getDataFileSkipAnnotation(matrix);
+		assertEquals(Scale.SMALL.getArrays(), set.size());
+
+		File soft = BenchmarkSuite.dataFile(directory, "soft", Scale.SMALL);
+		assertTrue(new SOFTFileFormat().checkFormat(soft));
+
+		File network = BenchmarkSuite.dataFile(directory, "network",
+				Scale.SMALL);
+		FileChannel channel = new FileInputStream(network).getChannel();
+		try {
+			EdgeList edges = new EdgeListReader(EdgeListFileFormat.COMMENTS,
+					EdgeListFileFormat.GENE_NAME_GENE_ID_DELIMITER)
+					.readEdgeList(channel);
+			assertEquals(Scale.SMALL.getEdges(), edges.size());
+		} finally {
+			channel.close();
+		}
+
+		File fasta = BenchmarkSuite.dataFile(directory, "sequences",
+				Scale.SMALL);
+		DSSequenceSet<?> sequences = CSSequenceSet.createFASTAfile(fasta);
+		assertEquals(Scale.SMALL.getSequences(), sequences.size());
+		assertEquals(Scale.SMALL.getSequenceLength(), sequences.get(0)
+				.length());
+	}
+
+	private static byte[] read(File file) throws Exception {
+		byte[] bytes = new byte[(int) file.length()];
+		FileInputStream in = new FileInputStream(file);
+		try {
+			int done = 0;
+			while (done < bytes.length) {
+				done += in.read(bytes, done, bytes.length - done);
+			}
+		} finally {
+			in.close();
+		}
+		return bytes;
+	}
+
+}
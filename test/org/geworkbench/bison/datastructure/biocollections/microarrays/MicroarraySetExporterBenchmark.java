@@ -0,0 +1,94 @@
+package org.geworkbench.bison.datastructure.biocollections.microarrays;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+
+import org.geworkbench.bison.datastructure.bioobjects.markers.CSExpressionMarker;
+import org.geworkbench.bison.datastructure.bioobjects.microarray.CSExpressionMarkerValue;
+import org.geworkbench.bison.datastructure.bioobjects.microarray.CSMicroarray;
+
+/**
+ * Rough throughput of {@link MicroarraySetExporter} on a synthetic set. Run
+ * with the number of markers and arrays as (optional) arguments; the
+ * default is an HG-U133 Plus 2 sized set of 54675 x 2000.
+ *
+ * @version $Id$
+ */
+public class MicroarraySetExporterBenchmark {
+
+	public static void main(String[] args) throws IOException {
+		int markers = args.length > 0 ? Integer.parseInt(args[0]) : 54675;
+		int arrays = args.length > 1 ? Integer.parseInt(args[1]) : 2000;
+		Random random = new Random(3);
+		final CSMicroarraySet set = new CSMicroarraySet();
+		for (int i = 0; i < markers; i++) {
+			CSExpressionMarker marker = new CSExpressionMarker(i);
+			marker.setLabel(i + "_at");
+			set.getMarkers().add(marker);
+		}
+		set.getMarkers().correctMaps();
+		for (int j = 0; j < arrays; j++) {
+			CSMicroarray array = new CSMicroarray(j, markers, "array " + j,
+					DSMicroarraySet.DO_NOT_CREATE_VALUE_OBJECT);
+			for (int i = 0; i < markers; i++) {
+				CSExpressionMarkerValue value = new CSExpressionMarkerValue(
+						(float) Math.exp(random.nextGaussian() * 2 + 6));
+				value.setPresent();
+				array.setMarkerValue(i, value);
+			}
+			set.add(array);
+		}
+		System.out.println(markers + " markers x " + arrays + " arrays");
+
+		final File dir = new File(System.getProperty("java.io.tmpdir"));
+		for (int round = 0; round < 3; round++) {
+			System.out.println("round " + round);
+			time(new File(dir, "benchmark.exp"), new Export() {
+				public void run(File file) throws IOException {
+					new MicroarraySetExporter(set).writeExpressionFile(file);
+				}
+			});
+			time(new File(dir, "benchmark.txt"), new Export() {
+				public void run(File file) throws IOException {
+					new MicroarraySetExporter(set).writeTabDelimited(file);
+				}
+			});
+			time(new File(dir, "benchmark.exp.gz"), new Export() {
+				public void run(File file) throws IOException {
+					new MicroarraySetExporter(set).writeExpressionFile(file);
+				}
+			});
+			time(new File(dir, "benchmark.gwmx"), new Export() {
+				public void run(File file) throws IOException {
+					new MicroarraySetExporter(set).writeBinary(file);
+				}
+			});
+			final File binary = new File(dir, "benchmark.gwmx");
+			long start = System.nanoTime();
+			MicroarraySetExporter.readBinary(binary);
+			report("read " + binary.getName(), binary.length(), start);
+		}
+		new File(dir, "benchmark.gwmx").delete();
+	}
+
+	private interface Export {
+		void run(File file) throws IOException;
+	}
+
+	private static void time(File file, Export export) throws IOException {
+		long start = System.nanoTime();
+		export.run(file);
+		report(file.getName(), file.length(), start);
+		if (!file.getName().endsWith(".gwmx")) {
+			file.delete();
+		}
+	}
+
+	private static void report(String label, long bytes, long start) {
+		double seconds = (System.nanoTime() - start) / 1e9;
+		System.out.println(String.format("  %-24s %8.1f ms %8.1f MB/s", label,
+				seconds * 1000, bytes / seconds / (1 << 20)));
+	}
+
+}
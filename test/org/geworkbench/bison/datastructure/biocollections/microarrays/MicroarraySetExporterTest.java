@@ -0,0 +1,265 @@
+package org.geworkbench.bison.datastructure.biocollections.microarrays;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.Reader;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.GZIPInputStream;
+
+import junit.framework.TestCase;
+
+import org.geworkbench.bison.annotation.CSAnnotationContext;
+import org.geworkbench.bison.annotation.CSAnnotationContextManager;
+import org.geworkbench.bison.annotation.DSAnnotationContext;
+import org.geworkbench.bison.datastructure.bioobjects.markers.CSExpressionMarker;
+import org.geworkbench.bison.datastructure.bioobjects.markers.DSGeneMarker;
+import org.geworkbench.bison.datastructure.bioobjects.microarray.CSExpressionMarkerValue;
+import org.geworkbench.bison.datastructure.bioobjects.microarray.CSMicroarray;
+import org.geworkbench.bison.datastructure.bioobjects.microarray.DSMarkerValue;
+import org.geworkbench.bison.datastructure.bioobjects.microarray.DSMicroarray;
+
+/**
+ * @version $Id$
+ */
+public class MicroarraySetExporterTest extends TestCase {
+
+	private static final String NEWLINE = System
+			.getProperty("line.separator");
+
+	public MicroarraySetExporterTest(String name) {
+		super(name);
+	}
+
+	/*
+	 * enough markers to span several blocks; every seventh value is missing
+	 * and every eleventh masked
+	 */
+	private static CSMicroarraySet createSet(int markers, int arrays) {
+		Random random = new Random(17);
+		CSMicroarraySet set = new CSMicroarraySet();
+		set.setLabel("exported");
+		for (int i = 0; i < markers; i++) {
+			DSGeneMarker marker = new CSExpressionMarker(i);
+			marker.setLabel("probe_" + i);
+			marker.setDescription("gene " + i);
+			marker.setGeneId(100 + i);
+			set.getMarkers().add(marker);
+		}
+		set.getMarkers().correctMaps();
+		for (int j = 0; j < arrays; j++) {
+			DSMicroarray microarray = new CSMicroarray(markers);
+			microarray.setLabel("array " + j);
+			for (int i = 0; i < markers; i++) {
+				CSExpressionMarkerValue value = new CSExpressionMarkerValue(
+						(float) (random.nextGaussian() * Math.pow(10, random
+								.nextInt(12) - 4)));
+				value.setConfidence(random.nextFloat());
+				if ((i + j) % 7 == 0) {
+					value.setMissing(true);
+				} else if ((i + j) % 11 == 0) {
+					value.mask();
+				}
+				microarray.setMarkerValue(i, value);
+			}
+			set.add(microarray);
+		}
+		DSAnnotationContext<DSMicroarray> context = CSAnnotationContextManager
+				.getInstance().getContext(set, "Phenotype");
+		CSAnnotationContext.initializePhenotypeContext(context);
+		for (int j = 0; j < arrays; j++) {
+			context.labelItem(set.get(j), j % 2 == 0 ? "tumor" : "normal");
+			if (j % 3 == 0) {
+				context.labelItem(set.get(j), "control");
+			}
+		}
+		return set;
+	}
+
+	/* the .exp text as CSMicroarraySet used to build it */
+	private static String legacyExpressionFile(CSMicroarraySet set) {
+		StringBuilder text = new StringBuilder("AffyID\tAnnotation");
+		for (int j = 0; j < set.size(); j++) {
+			text.append("\t" + set.get(j).toString());
+		}
+		text.append(NEWLINE);
+		CSAnnotationContextManager manager = CSAnnotationContextManager
+				.getInstance();
+		for (int c = 0; c < manager.getNumberOfContexts(set); c++) {
+			DSAnnotationContext<DSMicroarray> context = manager.getContext(set,
+					c);
+			String line = "Description\t" + context.getName();
+			for (DSMicroarray microarray : set) {
+				String[] labels = context.getLabelsForItem(microarray);
+				String label = labels.length > 0 ? labels[0] : "";
+				for (int k = 1; k < labels.length; k++) {
+					label = label + "|" + labels[k];
+				}
+				line = line + "\t" + label;
+			}
+			text.append(line).append(NEWLINE);
+		}
+		for (int i = 0; i < set.getMarkers().size(); i++) {
+			String label = set.getMarkers().get(i).getLabel();
+			String line = label + "\t" + label;
+			for (int j = 0; j < set.size(); j++) {
+				DSMarkerValue mv = set.get(j).getMarkerValue(i);
+				if (!mv.isMissing()) {
+					line = line + "\t" + (float) mv.getValue();
+				} else {
+					line = line + "\t" + "n/a";
+				}
+				line = line + "\t" + (float) mv.getConfidence();
+			}
+			text.append(line).append(NEWLINE);
+		}
+		return text.toString();
+	}
+
+	public void testExpressionFileMatchesLegacyFormat() throws IOException {
+		CSMicroarraySet set = createSet(1500, 9);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		new MicroarraySetExporter(set).writeExpressionFile(out);
+		assertEquals(legacyExpressionFile(set), out.toString());
+	}
+
+	public void testTabDelimited() throws IOException {
+		CSMicroarraySet set = createSet(600, 4);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		new MicroarraySetExporter(set).writeTabDelimited(out);
+		String[] lines = out.toString().split(NEWLINE);
+		assertEquals(601, lines.length);
+		assertEquals("ID\tarray 0\tarray 1\tarray 2\tarray 3", lines[0]);
+		String[] fields = lines[1].split("\t");
+		assertEquals("probe_0", fields[0]);
+		assertEquals("n/a", fields[1]);
+		assertEquals(Float.toString((float) set.get(1).getMarkerValue(0)
+				.getValue()), fields[2]);
+	}
+
+	public void testGzipByFileName() throws IOException {
+		CSMicroarraySet set = createSet(300, 3);
+		File file = File.createTempFile("exporter", ".exp.gz");
+		try {
+			new MicroarraySetExporter(set).writeExpressionFile(file);
+			assertEquals(legacyExpressionFile(set), read(new GZIPInputStream(
+					new FileInputStream(file))));
+		} finally {
+			file.delete();
+		}
+	}
+
+	public void testBinaryRoundTrip() throws IOException {
+		CSMicroarraySet set = createSet(700, 6);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		new MicroarraySetExporter(set).writeBinary(out);
+		assertSameSet(set, MicroarraySetExporter
+				.readBinary(new ByteArrayInputStream(out.toByteArray())));
+
+		File file = File.createTempFile("exporter", ".gwmx.gz");
+		try {
+			new MicroarraySetExporter(set).writeBinary(file);
+			CSMicroarraySet copy = MicroarraySetExporter.readBinary(file);
+			assertSameSet(set, copy);
+
+			// and the copy exports to the very same text
+			ByteArrayOutputStream text = new ByteArrayOutputStream();
+			new MicroarraySetExporter(copy).writeExpressionFile(text);
+			assertEquals(legacyExpressionFile(set), text.toString());
+		} finally {
+			file.delete();
+		}
+
+		try {
+			MicroarraySetExporter.readBinary(new ByteArrayInputStream(
+					"AffyID\tAnnotation".getBytes()));
+			fail();
+		} catch (IOException e) {
+			// expected
+		}
+	}
+
+	public void testCancel() throws IOException {
+		CSMicroarraySet set = createSet(100000, 1);
+		MicroarraySetExporter exporter = new MicroarraySetExporter(set);
+		final int[] reported = new int[1];
+		exporter.setProgress(new MicroarraySetExporter.Progress() {
+			public void rowsWritten(int done, int total) {
+				reported[0] = done;
+			}
+
+			public boolean isCancelled() {
+				return reported[0] > 0;
+			}
+		});
+		try {
+			exporter.writeTabDelimited(new ByteArrayOutputStream());
+			fail();
+		} catch (InterruptedIOException e) {
+			assertTrue(reported[0] > 0 && reported[0] < 100000);
+		}
+	}
+
+	private static void assertSameSet(CSMicroarraySet expected,
+			CSMicroarraySet actual) {
+		assertEquals(expected.getLabel(), actual.getLabel());
+		assertEquals(expected.size(), actual.size());
+		assertEquals(expected.getMarkers().size(), actual.getMarkers().size());
+		for (int i = 0; i < expected.getMarkers().size(); i++) {
+			DSGeneMarker a = expected.getMarkers().get(i);
+			DSGeneMarker b = actual.getMarkers().get(i);
+			assertEquals(a.getLabel(), b.getLabel());
+			assertEquals(a.getDescription(), b.getDescription());
+			assertEquals(a.getGeneId(), b.getGeneId());
+		}
+		assertSame(actual.getMarkers().get(3), actual.getMarkers().get(
+				"probe_3"));
+		for (int j = 0; j < expected.size(); j++) {
+			assertEquals(expected.get(j).getLabel(), actual.get(j).getLabel());
+			for (int i = 0; i < expected.getMarkers().size(); i++) {
+				DSMarkerValue a = expected.get(j).getMarkerValue(i);
+				DSMarkerValue b = actual.get(j).getMarkerValue(i);
+				assertEquals(Float.floatToIntBits((float) a.getValue()), Float
+						.floatToIntBits((float) b.getValue()));
+				assertEquals(Float.floatToIntBits((float) a.getConfidence()),
+						Float.floatToIntBits((float) b.getConfidence()));
+				assertEquals(a.isMissing(), b.isMissing());
+				assertEquals(a.isMasked(), b.isMasked());
+			}
+		}
+		CSAnnotationContextManager manager = CSAnnotationContextManager
+				.getInstance();
+		DSAnnotationContext<DSMicroarray> a = manager.getContext(expected,
+				"Phenotype");
+		DSAnnotationContext<DSMicroarray> b = manager.getContext(actual,
+				"Phenotype");
+		for (int j = 0; j < expected.size(); j++) {
+			String[] la = a.getLabelsForItem(expected.get(j));
+			String[] lb = b.getLabelsForItem(actual.get(j));
+			Arrays.sort(la);
+			Arrays.sort(lb);
+			assertTrue(Arrays.equals(la, lb));
+		}
+	}
+
+	private static String read(InputStream in) throws IOException {
+		Reader reader = new InputStreamReader(in);
+		try {
+			StringBuilder text = new StringBuilder();
+			char[] buffer = new char[8192];
+			for (int n; (n = reader.read(buffer)) > 0;) {
+				text.append(buffer, 0, n);
+			}
+			return text.toString();
+		} finally {
+			reader.close();
+		}
+	}
+
+}
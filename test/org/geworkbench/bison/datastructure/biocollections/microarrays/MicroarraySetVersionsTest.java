@@ -0,0 +1,189 @@
+package org.geworkbench.bison.datastructure.biocollections.microarrays;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.lang.ref.WeakReference;
+import java.util.BitSet;
+
+import junit.framework.TestCase;
+
+import org.geworkbench.bison.datastructure.bioobjects.markers.CSExpressionMarker;
+import org.geworkbench.bison.datastructure.bioobjects.markers.DSGeneMarker;
+import org.geworkbench.bison.datastructure.bioobjects.microarray.CSExpressionMarkerValue;
+import org.geworkbench.bison.datastructure.bioobjects.microarray.CSMicroarray;
+import org.geworkbench.bison.datastructure.bioobjects.microarray.DSMarkerValue;
+import org.geworkbench.bison.datastructure.bioobjects.microarray.DSMicroarray;
+import org.geworkbench.bison.datastructure.bioobjects.microarray.DSMutableMarkerValue;
+
+/**
+ * @version $Id$
+ */
+public class MicroarraySetVersionsTest extends TestCase {
+
+	private static final int MARKERS = 300;
+	private static final int ARRAYS = 8;
+
+	public MicroarraySetVersionsTest(String name) {
+		super(name);
+	}
+
+	public void testUndoFilterBringsMarkersBack() {
+		CSMicroarraySet set = createSet();
+		DSGeneMarker removedMarker = set.getMarkers().get(1);
+		DSMarkerValue keptValue = set.get(2).getMarkerValue(4);
+		MicroarraySetVersions versions = MicroarraySetVersions
+				.getInstance(set);
+		MicroarraySetVersions.Version original = versions.save("original");
+		assertFalse(versions.canUndo());
+
+		removeOddMarkers(set);
+		MicroarraySetVersions.Version filtered = versions.save("filtered");
+		assertEquals(MARKERS / 2, filtered.getMarkerCount());
+		// the filtered version shares the values of the original
+		assertTrue(filtered.getMemoryUsage() * 4 < original.getMemoryUsage());
+
+		assertSame(original, versions.undo());
+		assertEquals(MARKERS, set.getMarkers().size());
+		assertSame(removedMarker, set.getMarkers().get(1));
+		assertEquals(1, removedMarker.getSerial());
+		assertSame(removedMarker, set.getMarkers().get("marker 1"));
+		assertEquals(MARKERS, set.get(2).getMarkerNo());
+		assertSame(keptValue, set.get(2).getMarkerValue(4));
+		assertEquals(103.0, set.get(3).getMarkerValue(1).getValue());
+		assertTrue(versions.canRedo());
+
+		assertSame(filtered, versions.redo());
+		assertEquals(MARKERS / 2, set.getMarkers().size());
+		assertEquals("marker 2", set.getMarkers().get(1).getLabel());
+		assertEquals(1, set.getMarkers().get(1).getSerial());
+		assertEquals(203.0, set.get(3).getMarkerValue(1).getValue());
+	}
+
+	public void testChangedValuesAreCopiedByArray() {
+		CSMicroarraySet set = createSet();
+		MicroarraySetVersions versions = MicroarraySetVersions
+				.getInstance(set);
+		MicroarraySetVersions.Version original = versions.save("original");
+
+		// normalize one array in place
+		DSMicroarray changed = set.get(5);
+		for (int i = 0; i < MARKERS; i++) {
+			DSMutableMarkerValue value = (DSMutableMarkerValue) changed
+					.getMarkerValue(i);
+			value.setValue(value.getValue() / 2);
+		}
+		((DSMutableMarkerValue) changed.getMarkerValue(7)).setMissing(true);
+		MicroarraySetVersions.Version normalized = versions.save("normalized");
+		assertTrue(normalized.getMemoryUsage() * (ARRAYS - 1) < original
+				.getMemoryUsage());
+		// nothing changed since
+		assertSame(normalized, versions.save("again"));
+		assertEquals(2, versions.getVersions().size());
+
+		versions.undo();
+		assertEquals(705.0, set.get(5).getMarkerValue(7).getValue());
+		assertFalse(set.get(5).getMarkerValue(7).isMissing());
+		versions.redo();
+		assertEquals(352.5, set.get(5).getMarkerValue(7).getValue());
+		assertTrue(set.get(5).getMarkerValue(7).isMissing());
+	}
+
+	public void testUndoSavesChangesAndSavingDropsRedo() {
+		CSMicroarraySet set = createSet();
+		MicroarraySetVersions versions = MicroarraySetVersions
+				.getInstance(set);
+		versions.save("original");
+		removeOddMarkers(set);
+
+		// the change was not saved; undo keeps it for redo
+		versions.undo();
+		assertEquals(MARKERS, set.getMarkers().size());
+		assertEquals(2, versions.getVersions().size());
+		assertTrue(versions.canRedo());
+
+		((DSMutableMarkerValue) set.get(0).getMarkerValue(0)).setMissing(true);
+		versions.save("marked");
+		assertFalse(versions.canRedo());
+		assertEquals(2, versions.getVersions().size());
+		assertEquals("marked", versions.getCurrent().getName());
+	}
+
+	public void testVersionsDoNotKeepTheSet() throws Exception {
+		CSMicroarraySet set = createSet();
+		MicroarraySetVersions.getInstance(set).save("original");
+		MicroarraySetVersions.remove(set);
+		assertNull(MicroarraySetVersions.getExisting(set));
+
+		MicroarraySetVersions.getInstance(set).save("original");
+		WeakReference<CSMicroarraySet> reference = new WeakReference<CSMicroarraySet>(
+				set);
+		set = null;
+		for (int i = 0; i < 50 && reference.get() != null; i++) {
+			System.gc();
+			Thread.sleep(10);
+		}
+		assertNull(reference.get());
+	}
+
+	public void testCopyOfTheSetHasNoVersions() throws Exception {
+		CSMicroarraySet set = createSet();
+		MicroarraySetVersions versions = MicroarraySetVersions
+				.getInstance(set);
+		versions.save("original");
+
+		// as read back from disk: the same id, but another object
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		ObjectOutputStream out = new ObjectOutputStream(bytes);
+		out.writeObject(set);
+		out.close();
+		CSMicroarraySet copy = (CSMicroarraySet) new ObjectInputStream(
+				new ByteArrayInputStream(bytes.toByteArray())).readObject();
+		assertEquals(set.getID(), copy.getID());
+		assertNull(MicroarraySetVersions.getExisting(copy));
+		assertNotSame(versions, MicroarraySetVersions.getInstance(copy));
+		assertSame(versions, MicroarraySetVersions.getExisting(set));
+	}
+
+	/* as the filters do: drop the markers and resize the arrays */
+	private static void removeOddMarkers(CSMicroarraySet set) {
+		BitSet odd = new BitSet();
+		for (int i = 1; i < MARKERS; i += 2) {
+			odd.set(i);
+		}
+		set.getMarkers().removeIndices(odd);
+		for (DSMicroarray microarray : set) {
+			DSMarkerValue[] values = microarray.getMarkerValues();
+			microarray.resize(MARKERS / 2);
+			for (int i = 0; i < MARKERS / 2; i++) {
+				microarray.setMarkerValue(i, values[2 * i]);
+			}
+		}
+	}
+
+	private static CSMicroarraySet createSet() {
+		CSMicroarraySet set = new CSMicroarraySet();
+		set.setLabel("versioned");
+		for (int i = 0; i < MARKERS; i++) {
+			DSGeneMarker marker = new CSExpressionMarker();
+			marker.setLabel("marker " + i);
+			marker.setGeneId(1000 + i);
+			set.getMarkers().add(marker);
+		}
+		for (int j = 0; j < ARRAYS; j++) {
+			DSMicroarray microarray = new CSMicroarray(MARKERS);
+			microarray.setLabel("array " + j);
+			for (int i = 0; i < MARKERS; i++) {
+				CSExpressionMarkerValue value = new CSExpressionMarkerValue(i
+						* 100 + j);
+				value.setPresent();
+				microarray.setMarkerValue(i, value);
+			}
+			set.add(microarray);
+		}
+		set.getMarkers().correctMaps();
+		return set;
+	}
+
+}
@@ -0,0 +1,46 @@
+package org.geworkbench.bison.datastructure.bioobjects.markers.annotationparser;
+
+import java.io.File;
+import java.util.Map;
+
+import org.geworkbench.benchmark.BenchmarkCase;
+import org.geworkbench.benchmark.BenchmarkSuite;
+import org.geworkbench.benchmark.Scale;
+
+/**
+ * Parsing an Affymetrix 3' expression annotation file, one operation per
+ * probe set. It lives in this package to call the package-private
+ * {@link AffyAnnotationParser#parse(File, boolean)} directly.
+ *
+ * @version $Id$
+ */
+public class AffyAnnotationParserBenchmark extends BenchmarkCase {
+
+	private File file;
+	private int markers;
+
+	public AffyAnnotationParserBenchmark() {
+		super("Affy3ExpressionAnnotationParser");
+	}
+
+	public void setUp(Scale scale, File directory) throws Exception {
+		file = BenchmarkSuite.dataFile(directory, "annotation", scale);
+		markers = scale.getMarkers();
+	}
+
+	public Object invoke() throws Exception {
+		Map<String, AnnotationFields> annotation = new Affy3ExpressionAnnotationParser()
+				.parse(file, true);
+		if (annotation.size() != markers) {
+			throw new IllegalStateException(annotation.size()
+					+ " probe sets parsed from " + file + ", expected "
+					+ markers);
+		}
+		return annotation;
+	}
+
+	public long getOperations() {
+		return markers;
+	}
+
+}
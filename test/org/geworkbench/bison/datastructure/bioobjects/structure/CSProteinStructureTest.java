@@ -0,0 +1,327 @@
+package org.geworkbench.bison.datastructure.bioobjects.structure;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.util.HashMap;
+
+import junit.framework.TestCase;
+
+import org.apache.commons.codec.binary.Base64;
+
+/**
+ * @version $Id$
+ */
+public class CSProteinStructureTest extends TestCase {
+
+	/*
+	 * A structure written by the version that kept the file as a String:
+	 * header 1ABC, one atom in chain A and one in chain B.
+	 */
+	private static final String OLD_FORM =
+			"rO0ABXNyAEtvcmcuZ2V3b3JrYmVuY2guYmlzb24uZGF0YXN0cnVjdHVyZS5iaW9v" +
+			"YmplY3RzLnN0cnVjdHVyZS5DU1Byb3RlaW5TdHJ1Y3R1cmVlBFhSLovzSAIAA0kA" +
+			"C2NoYWlub2Zmc2V0TAAHY29udGVudHQAEkxqYXZhL2xhbmcvU3RyaW5nO0wACGRh" +
+			"dGFGaWxldAAOTGphdmEvaW8vRmlsZTt4cgBFb3JnLmdld29ya2JlbmNoLmJpc29u" +
+			"LmRhdGFzdHJ1Y3R1cmUuYmlvY29sbGVjdGlvbnMuQ1NBbmNpbGxhcnlEYXRhU2V0" +
+			"2L9rjTpJ5Z4CAAFMAAZwYXJlbnR0AD5Mb3JnL2dld29ya2JlbmNoL2Jpc29uL2Rh" +
+			"dGFzdHJ1Y3R1cmUvYmlvY29sbGVjdGlvbnMvRFNEYXRhU2V0O3hyADxvcmcuZ2V3" +
+			"b3JrYmVuY2guYmlzb24uZGF0YXN0cnVjdHVyZS5iaW9jb2xsZWN0aW9ucy5DU0Rh" +
+			"dGFTZXQDMDe0D7PLdAIACUwACmFycmF5U2V0SWRxAH4AAUwAC2NvbHVtbk9yZGVy" +
+			"dAAVTGphdmEvdXRpbC9BcnJheUxpc3Q7TAASY29tcGF0aWJpbGl0eUxhYmVscQB+" +
+			"AAFMABFkYXRhU2V0UHJvcGVydGllc3QAE0xqYXZhL3V0aWwvSGFzaE1hcDtMAAtk" +
+			"ZXNjcmlwdGlvbnEAfgABTAAOZXhwZXJpbWVudEluZm9xAH4AAUwABmV4dGVuZHQA" +
+			"PUxvcmcvZ2V3b3JrYmVuY2gvYmlzb24vZGF0YXN0cnVjdHVyZS9wcm9wZXJ0aWVz" +
+			"L0NTRXh0ZW5kYWJsZTtMAARmaWxlcQB+AAJMAAVsYWJlbHEAfgABeHIAR29yZy5n" +
+			"ZXdvcmtiZW5jaC5iaXNvbi5kYXRhc3RydWN0dXJlLmNvbXBsZXgucGFuZWxzLkNT" +
+			"U2VxdWVudGlhbEl0ZW1MaXN0jLHnLP6BKkECAAB4cgA9b3JnLmdld29ya2JlbmNo" +
+			"LmJpc29uLmRhdGFzdHJ1Y3R1cmUuY29tcGxleC5wYW5lbHMuQ1NJdGVtTGlzdISv" +
+			"Kn3gBF5qAgACTAACaWRxAH4AAUwACW9iamVjdE1hcHQAFUxqYXZhL3V0aWwvSGFz" +
+			"aHRhYmxlO3hyABNqYXZhLnV0aWwuQXJyYXlMaXN0eIHSHZnHYZ0DAAFJAARzaXpl" +
+			"eHAAAAAAdwQAAAAAeHQACDIxMTU0MTUwc3IAE2phdmEudXRpbC5IYXNodGFibGUT" +
+			"uw8lIUrkuAMAAkYACmxvYWRGYWN0b3JJAAl0aHJlc2hvbGR4cD9AAAAAAAAIdwgA" +
+			"AAALAAAAAHhwc3EAfgAMAAAAAHcEAAAAAHhwc3IAEWphdmEudXRpbC5IYXNoTWFw" +
+			"BQfawcMWYNEDAAJGAApsb2FkRmFjdG9ySQAJdGhyZXNob2xkeHA/QAAAAAAAAHcI" +
+			"AAAAEAAAAAB4cHBzcgA7b3JnLmdld29ya2JlbmNoLmJpc29uLmRhdGFzdHJ1Y3R1" +
+			"cmUucHJvcGVydGllcy5DU0V4dGVuZGFibGXiV947RjXrVgMAAUwADm5hbWVWYWx1" +
+			"ZVBhaXJzdAASTGphdmEvdXRpbC9WZWN0b3I7eHBzcgAQamF2YS51dGlsLlZlY3Rv" +
+			"ctmXfVuAO68BAwADSQARY2FwYWNpdHlJbmNyZW1lbnRJAAxlbGVtZW50Q291bnRb" +
+			"AAtlbGVtZW50RGF0YXQAE1tMamF2YS9sYW5nL09iamVjdDt4cAAAAAAAAAAAdXIA" +
+			"E1tMamF2YS5sYW5nLk9iamVjdDuQzlifEHMpbAIAAHhwAAAACnBwcHBwcHBwcHB4" +
+			"eHNyAAxqYXZhLmlvLkZpbGUELaRFDg3k/wMAAUwABHBhdGhxAH4AAXhwdAAZL3Rt" +
+			"cC9ndy9zY3JhdGNoL3BkYi90LnBkYncCAC94dAABdHAAAAAVdADlSEVBREVSICAg" +
+			"IFRFU1QgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAgICAwMS1KQU4t" +
+			"MDAgICAxQUJDCkFUT00gICAgICAxICBOICAgQUxBIEEgICAxICAgICAgIDEuMDAw" +
+			"ICAgMi4wMDAgICAzLjAwMCAgMS4wMCAgOS41MCAgICAgICAgICAgTgpBVE9NICAg" +
+			"ICAgMiAgQ0EgIEFMQSBCICAgMSAgICAgIC0xLjUwMCAgIDAuMjUwICAgMy4wMDAg" +
+			"IDEuMDAgIDkuNTAgICAgICAgICAgIEMKRU5ECnA=";
+
+	private File dir;
+	private StructureCache cache;
+
+	public CSProteinStructureTest(String name) {
+		super(name);
+	}
+
+	@Override
+	protected void setUp() throws Exception {
+		dir = File.createTempFile("structures", "");
+		dir.delete();
+		dir.mkdirs();
+		cache = new StructureCache(new File(dir, "cache"));
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		delete(dir);
+	}
+
+	private static void delete(File f) {
+		File[] children = f.listFiles();
+		if (children != null) {
+			for (File c : children) {
+				delete(c);
+			}
+		}
+		f.delete();
+	}
+
+	private static String atom(String record, int serial, String name,
+			String residue, char chain, int number, char iCode, double x,
+			double y, double z, String element) {
+		return String.format(
+				"%-6s%5d %-4s %3s %c%4d%c   %8.3f%8.3f%8.3f%6.2f%6.2f          %2s\n",
+				record, serial, name, residue, chain, number, iCode, x, y, z,
+				1.0, 20.0, element);
+	}
+
+	private static String pdb() {
+		StringBuilder b = new StringBuilder();
+		b.append("HEADER    HYDROLASE                               01-JAN-00   1XYZ\n");
+		b.append("TITLE     A SMALL TEST\n");
+		b.append("TITLE    2 STRUCTURE\n");
+		b.append(String.format("HELIX  %3d %3s %3s %c %4d%c %3s %c %4d%c\n",
+				1, "H1", "MET", 'A', 1, ' ', "GLY", 'A', 2, 'A'));
+		b.append(String.format("SHEET  %3d %3s%2d %3s %c%4d%c %3s %c%4d%c\n",
+				1, "S1", 1, "SER", 'B', 5, ' ', "SER", 'B', 5, ' '));
+		b.append("MODEL        1\n");
+		b.append(atom("ATOM", 1, " N", "MET", 'A', 1, ' ', 1, 2, 3, "N"));
+		b.append(atom("ATOM", 2, " CA", "MET", 'A', 1, ' ', -1.25, 0.5, 10, "C"));
+		b.append(atom("ATOM", 3, " N", "GLY", 'A', 2, ' ', 2, 2, 2, "N"));
+		b.append(atom("ATOM", 4, " N", "GLY", 'A', 2, 'A', 3, 3, 3, "N"));
+		b.append(atom("ATOM", 5, " N", "LYS", 'A', 3, ' ', 4, 4, 4, "N"));
+		b.append("TER       6      LYS A   3\n");
+		b.append(atom("ATOM", 7, " OG", "SER", 'B', 5, ' ', 5, 5, 5, "O"));
+		b.append(atom("HETATM", 8, "ZN", "ZN", ' ', 101, ' ', 6, 6, 6, "ZN"));
+		b.append("ENDMDL\n");
+		b.append("MODEL        2\n");
+		b.append(atom("ATOM", 1, " N", "MET", 'C', 1, ' ', 9, 9, 9, "N"));
+		b.append("ENDMDL\n");
+		b.append("END\n");
+		return b.toString();
+	}
+
+	private CSProteinStructure load() throws IOException {
+		File f = new File(dir, "test.pdb");
+		FileWriter w = new FileWriter(f);
+		w.write(pdb());
+		w.close();
+		CSProteinStructure p = new CSProteinStructure(null, "test");
+		p.setFile(f);
+		p.setStructureCache(cache);
+		return p;
+	}
+
+	public void testSummary() throws IOException {
+		CSProteinStructure p = load();
+		StructureSummary s = p.getSummary();
+		assertEquals("1XYZ", s.getIdCode());
+		assertEquals("A SMALL TEST STRUCTURE", s.getTitle());
+		assertEquals(2, s.getModelCount());
+		assertEquals(7, s.getAtomCount());
+		assertEquals("AB ", new String(s.getChainIds()));
+		assertEquals(5, s.getChainAtomCount(0));
+
+		HashMap<String, Integer> chains = p.getChains();
+		assertEquals(3, chains.size());
+		assertEquals(Integer.valueOf(1), chains.get("A"));
+		assertEquals(Integer.valueOf(1), chains.get("_"));
+		assertEquals("# of chains: 3", p.getDescription());
+		assertEquals(pdb(), p.getContent());
+	}
+
+	public void testModel() throws IOException {
+		StructureModel m = load().getModel();
+		assertEquals("HYDROLASE", m.getClassification());
+		assertEquals(7, m.getAtomCount());
+		assertEquals("CA", m.getAtomName(1));
+		assertEquals("C", m.getElement(1));
+		assertEquals(-1.25f, m.getX(1), 0f);
+		assertEquals(10f, m.getZ(1), 0f);
+		assertEquals(20f, m.getTempFactor(1), 0f);
+		assertTrue(m.isHetero(6));
+		assertEquals("ZN", m.getResidueName(m.getAtomResidue(6)));
+
+		// the insertion code starts a residue of its own
+		assertEquals(6, m.getResidueCount());
+		assertEquals(2, m.getResidueAtomCount(0));
+		assertEquals('A', m.getInsertionCode(m.getAtomResidue(3)));
+		assertEquals(3, m.getSegmentCount());
+		assertEquals("AB ", new String(m.getChainIds()));
+		assertEquals(2, m.getResidueSegment(5));
+
+		assertEquals(StructureModel.HELIX, m.getSecondaryStructure(0));
+		assertEquals(StructureModel.HELIX, m.getSecondaryStructure(2));
+		assertEquals(StructureModel.COIL, m.getSecondaryStructure(3));
+		assertEquals(StructureModel.SHEET, m.getSecondaryStructure(4));
+	}
+
+	public void testCache() throws IOException {
+		StructureModel m = load().getModel();
+		File[] cached = new File(dir, "cache").listFiles();
+		assertEquals(1, cached.length);
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		m.write(new DataOutputStream(bytes));
+		StructureModel read = StructureModel.read(new DataInputStream(
+				new ByteArrayInputStream(bytes.toByteArray())));
+		assertEquals(m.getAtomCount(), read.getAtomCount());
+		assertEquals(m.getResidueCount(), read.getResidueCount());
+		assertEquals(m.getAtomResidue(6), read.getAtomResidue(6));
+		assertEquals(m.getY(5), read.getY(5), 0f);
+		assertEquals(m.getSecondaryStructure(4), read.getSecondaryStructure(4));
+
+		// a second structure with the same content comes from the cache
+		CSProteinStructure again = load();
+		assertEquals("ZN", again.getModel().getElement(6));
+	}
+
+	public void testCacheChecksContent() throws IOException {
+		CSProteinStructure p = load();
+		p.getModel();
+		File[] cached = cache.getDirectory().listFiles();
+		assertEquals(1, cached.length);
+		RandomAccessFile f = new RandomAccessFile(cached[0], "rw");
+		int first = f.read();
+		f.seek(0);
+		f.write(first ^ 1);
+		f.close();
+
+		// a file that holds some other content is not used
+		byte[] digest = StructureCache.digest(p.getContent().getBytes());
+		assertTrue(cache.contains(digest));
+		assertNull(cache.load(digest));
+		assertEquals(7, load().getModel().getAtomCount());
+		assertNotNull(cache.load(digest));
+	}
+
+	public void testWorkspaceCache() throws Exception {
+		CSProteinStructure p = load();
+		p.getModel();
+		String filename = new File(dir, "w.wsp").getPath();
+		// left by an earlier save
+		StructureCache.forWorkspace(filename).store(
+				StructureCache.digest(new byte[] { 1 }), p.getModel());
+		StructureCache workspace = StructureCache.forWorkspace(filename);
+
+		// saving puts the model into the cache of the workspace
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		ObjectOutputStream out = new ScopedOutput(bytes, workspace);
+		out.writeObject(p);
+		out.close();
+		assertSame(workspace, p.getStructureCache());
+		assertEquals(2, workspace.getDirectory().listFiles().length);
+
+		// ... which drops what the workspace no longer uses
+		workspace.prune();
+		assertEquals(1, workspace.getDirectory().listFiles().length);
+		delete(cache.getDirectory());
+
+		StructureCache reopened = StructureCache.forWorkspace(filename);
+		CSProteinStructure copy = (CSProteinStructure) new ScopedInput(
+				new ByteArrayInputStream(bytes.toByteArray()), reopened)
+				.readObject();
+		assertSame(reopened, copy.getStructureCache());
+		assertEquals(7, copy.getModel().getAtomCount());
+		assertFalse(cache.getDirectory().exists());
+		assertEquals(1, reopened.getDirectory().listFiles().length);
+	}
+
+	private static class ScopedOutput extends ObjectOutputStream implements
+			StructureCache.Scope {
+		private final StructureCache cache;
+
+		ScopedOutput(OutputStream out, StructureCache cache) throws IOException {
+			super(out);
+			this.cache = cache;
+		}
+
+		public StructureCache getStructureCache() {
+			return cache;
+		}
+	}
+
+	private static class ScopedInput extends ObjectInputStream implements
+			StructureCache.Scope {
+		private final StructureCache cache;
+
+		ScopedInput(InputStream in, StructureCache cache) throws IOException {
+			super(in);
+			this.cache = cache;
+		}
+
+		public StructureCache getStructureCache() {
+			return cache;
+		}
+	}
+
+	public void testSerialization() throws Exception {
+		CSProteinStructure p = load();
+		CSProteinStructure copy = roundTrip(p);
+		assertEquals("# of chains: 3", copy.getDescription());
+		assertEquals(p.getContent(), copy.getContent());
+		assertEquals(7, copy.getModel().getAtomCount());
+
+		File out = new File(dir, "out.pdb");
+		copy.writeToFile(out.getPath());
+		byte[] written = new byte[(int) out.length()];
+		DataInputStream in = new DataInputStream(new FileInputStream(out));
+		in.readFully(written);
+		in.close();
+		assertEquals(pdb(), new String(written));
+	}
+
+	public void testOldForm() throws Exception {
+		CSProteinStructure p = (CSProteinStructure) new ObjectInputStream(
+				new ByteArrayInputStream(Base64.decodeBase64(OLD_FORM
+						.getBytes("US-ASCII")))).readObject();
+		assertEquals("1ABC", p.getSummary().getIdCode());
+		assertEquals(2, p.getChains().size());
+		assertEquals(2, p.getModel().getAtomCount());
+		assertEquals(0.25f, p.getModel().getY(1), 0f);
+
+		CSProteinStructure copy = roundTrip(p);
+		assertEquals(p.getContent(), copy.getContent());
+	}
+
+	private static CSProteinStructure roundTrip(CSProteinStructure p)
+			throws Exception {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		ObjectOutputStream out = new ObjectOutputStream(bytes);
+		out.writeObject(p);
+		out.close();
+		return (CSProteinStructure) new ObjectInputStream(
+				new ByteArrayInputStream(bytes.toByteArray())).readObject();
+	}
+
+}
@@ -0,0 +1,171 @@
+package org.geworkbench.bison.datastructure.properties;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+import org.apache.commons.codec.binary.Base64;
+
+/**
+ * @version $Id$
+ */
+public class CSExtendableTest extends TestCase {
+
+	/*
+	 * A CSExtendable written by the Vector based implementation: "History"
+	 * -> "old history\n", "color" -> "red", "blue", "unique" (unique) -> 2,
+	 * and "cleared" with its value cleared.
+	 */
+	private static final String OLD_FORM =
+			"rO0ABXNyADtvcmcuZ2V3b3JrYmVuY2guYmlzb24uZGF0YXN0cnVjdHVyZS5wcm9w" +
+			"ZXJ0aWVzLkNTRXh0ZW5kYWJsZeJX3jtGNetWAgABTAAObmFtZVZhbHVlUGFpcnN0" +
+			"ABJMamF2YS91dGlsL1ZlY3Rvcjt4cHNyABBqYXZhLnV0aWwuVmVjdG9y2Zd9W4A7" +
+			"rwEDAANJABFjYXBhY2l0eUluY3JlbWVudEkADGVsZW1lbnRDb3VudFsAC2VsZW1l" +
+			"bnREYXRhdAATW0xqYXZhL2xhbmcvT2JqZWN0O3hwAAAAAAAAAAR1cgATW0xqYXZh" +
+			"LmxhbmcuT2JqZWN0O5DOWJ8QcylsAgAAeHAAAAAKc3IAQG9yZy5nZXdvcmtiZW5j" +
+			"aC5iaXNvbi5kYXRhc3RydWN0dXJlLnByb3BlcnRpZXMuQ1NFeHRlbmRhYmxlJE5h" +
+			"bWWD3y/GKg8wigIABFoAC3VuaXF1ZVZhbHVlTAAEbmFtZXQAEkxqYXZhL2xhbmcv" +
+			"U3RyaW5nO0wABnRoaXMkMHQAPUxvcmcvZ2V3b3JrYmVuY2gvYmlzb24vZGF0YXN0" +
+			"cnVjdHVyZS9wcm9wZXJ0aWVzL0NTRXh0ZW5kYWJsZTtMAAZ2YWx1ZXNxAH4AAXhw" +
+			"AHQAB0hpc3RvcnlxAH4AAnNxAH4AAwAAAAAAAAABdXEAfgAGAAAACnQADG9sZCBo" +
+			"aXN0b3J5CnBwcHBwcHBwcHhzcQB+AAgAdAAFY29sb3JxAH4AAnNxAH4AAwAAAAAA" +
+			"AAACdXEAfgAGAAAACnQAA3JlZHQABGJsdWVwcHBwcHBwcHhzcQB+AAgBdAAGdW5p" +
+			"cXVlcQB+AAJzcQB+AAMAAAAAAAAAAXVxAH4ABgAAAApzcgARamF2YS5sYW5nLklu" +
+			"dGVnZXIS4qCk94GHOAIAAUkABXZhbHVleHIAEGphdmEubGFuZy5OdW1iZXKGrJUd" +
+			"C5TgiwIAAHhwAAAAAnBwcHBwcHBwcHhzcQB+AAgAdAAHY2xlYXJlZHEAfgACc3EA" +
+			"fgADAAAAAAAAAAB1cQB+AAYAAAAKcHBwcHBwcHBwcHhwcHBwcHB4";
+
+	public CSExtendableTest(String name) {
+		super(name);
+	}
+
+	public void testValues() {
+		CSExtendable e = new CSExtendable();
+		assertNull(e.getValuesForName("a"));
+		e.addNameValuePair("a", "1");
+		e.addNameValuePair("a", "2");
+		e.addNameValuePair(null, "3");
+		e.addNameValuePair("a", null);
+		e.addNameValuePair("b", Integer.valueOf(4));
+		assertTrue(Arrays.equals(new Object[] { "1", "2" }, e
+				.getValuesForName("a")));
+		assertEquals("1", e.getValueForName("a"));
+		assertEquals(2, e.getValueCountForName("a"));
+		assertEquals(Integer.valueOf(4), e.getValueForName("b", Integer.class));
+		assertNull(e.getValueForName("b", String.class));
+		assertNull(e.getValueForName("c"));
+
+		// the returned array is a copy
+		e.getValuesForName("a")[0] = "x";
+		assertEquals("1", e.getValueForName("a"));
+	}
+
+	public void testUniqueAndClear() {
+		CSExtendable e = new CSExtendable();
+		// unknown names are ignored
+		e.forceUniqueValue("u");
+		assertFalse(e.isUniqueValue("u"));
+
+		e.addNameValuePair("u", "1");
+		e.addNameValuePair("u", "2");
+		e.forceUniqueValue("u");
+		assertTrue(e.isUniqueValue("u"));
+		assertNull(e.getValuesForName("u"));
+		e.addNameValuePair("u", "3");
+		e.addNameValuePair("u", "4");
+		assertTrue(Arrays.equals(new Object[] { "4" }, e.getValuesForName("u")));
+
+		e.clearName("u");
+		assertNull(e.getValuesForName("u"));
+		assertEquals(0, e.getValueCountForName("u"));
+		assertTrue(e.isUniqueValue("u"));
+		e.allowMultipleValues("u");
+		e.addNameValuePair("u", "5");
+		e.addNameValuePair("u", "6");
+		assertEquals(2, e.getValueCountForName("u"));
+	}
+
+	public void testManyNames() {
+		CSExtendable e = new CSExtendable();
+		for (int i = 0; i < 1000; i++) {
+			e.addNameValuePair("name " + i, Integer.valueOf(i));
+			if (i % 3 == 0) {
+				e.addNameValuePair("name " + i, Integer.valueOf(-i));
+			}
+		}
+		for (int i = 0; i < 1000; i++) {
+			// lookups with names that are equal but not the same instance
+			String name = new String("name " + i);
+			assertEquals(i % 3 == 0 ? 2 : 1, e.getValueCountForName(name));
+			assertEquals(Integer.valueOf(i), e.getValueForName(name));
+		}
+	}
+
+	public void testReadWhileChanging() throws Exception {
+		final PropertyMap map = new PropertyMap();
+		final int names = 2000;
+		Thread writer = new Thread() {
+			public void run() {
+				for (int i = 0; i < names; i++) {
+					map.add("name " + i, Integer.valueOf(i));
+					map.add("name " + i, Integer.valueOf(-i));
+					if (i % 2 == 0) {
+						map.clear("name " + i);
+					}
+				}
+			}
+		};
+		writer.start();
+		while (writer.isAlive() || map.size() < names) {
+			// every table seen is complete: listed names are there, and a
+			// name has none, one or both of its values
+			String[] listed = map.names();
+			for (String name : listed) {
+				assertNotNull(name);
+				assertTrue(map.contains(name));
+				Object[] values = map.getAll(name);
+				if (values != null) {
+					assertTrue(values.length <= 2);
+					assertEquals(name, "name " + values[0]);
+				}
+			}
+		}
+		writer.join();
+		assertEquals(names, map.size());
+		assertNull(map.getAll("name 0"));
+		assertEquals(2, map.count("name 1"));
+	}
+
+	public void testReadsOldSerializedForm() throws Exception {
+		CSExtendable e = (CSExtendable) new ObjectInputStream(
+				new ByteArrayInputStream(Base64.decodeBase64(OLD_FORM
+						.getBytes("US-ASCII")))).readObject();
+		assertOldContent(e);
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		ObjectOutputStream out = new ObjectOutputStream(bytes);
+		out.writeObject(e);
+		out.close();
+		CSExtendable read = (CSExtendable) new ObjectInputStream(
+				new ByteArrayInputStream(bytes.toByteArray())).readObject();
+		assertOldContent(read);
+		read.addNameValuePair("unique", Integer.valueOf(3));
+		assertEquals(1, read.getValueCountForName("unique"));
+	}
+
+	private static void assertOldContent(CSExtendable e) {
+		assertTrue(Arrays.equals(new Object[] { "old history\n" }, e
+				.getValuesForName("History")));
+		assertTrue(Arrays.equals(new Object[] { "red", "blue" }, e
+				.getValuesForName("color")));
+		assertTrue(e.isUniqueValue("unique"));
+		assertEquals(Integer.valueOf(2), e.getValueForName("unique"));
+		assertNull(e.getValuesForName("cleared"));
+		assertFalse(e.isUniqueValue("cleared"));
+	}
+
+}
@@ -0,0 +1,155 @@
+package org.geworkbench.bison.datastructure.properties;
+
+import java.util.Vector;
+
+/**
+ * Rough timing of {@link CSExtendable} lookups on objects carrying dozens of
+ * properties, against the Vector based store it replaces (reproduced below).
+ * Run with the number of properties per object as the only (optional)
+ * argument.
+ *
+ * @version $Id$
+ */
+public class PropertyMapBenchmark {
+
+	private static final int OBJECTS = 20000;
+
+	public static void main(String[] args) {
+		int properties = args.length > 0 ? Integer.parseInt(args[0]) : 40;
+		final String[] names = new String[properties];
+		for (int p = 0; p < properties; p++) {
+			names[p] = "annotation " + p;
+		}
+		final CSExtendable[] current = new CSExtendable[OBJECTS];
+		final VectorExtendable[] legacy = new VectorExtendable[OBJECTS];
+		for (int i = 0; i < OBJECTS; i++) {
+			current[i] = new CSExtendable();
+			legacy[i] = new VectorExtendable();
+			for (int p = 0; p < properties; p++) {
+				current[i].addNameValuePair(names[p], Integer.valueOf(p));
+				legacy[i].addNameValuePair(names[p], Integer.valueOf(p));
+			}
+		}
+
+		for (int round = 0; round < 3; round++) {
+			System.out.println("round " + round + ", " + OBJECTS
+					+ " objects, " + properties + " properties");
+			time("Vector getValuesForName", new Runnable() {
+				public void run() {
+					long sum = 0;
+					for (VectorExtendable e : legacy) {
+						for (String name : names) {
+							sum += (Integer) e.getValuesForName(name)[0];
+						}
+					}
+					consume(sum);
+				}
+			});
+			time("getValuesForName", new Runnable() {
+				public void run() {
+					long sum = 0;
+					for (CSExtendable e : current) {
+						for (String name : names) {
+							sum += (Integer) e.getValuesForName(name)[0];
+						}
+					}
+					consume(sum);
+				}
+			});
+			time("getValueForName", new Runnable() {
+				public void run() {
+					long sum = 0;
+					for (CSExtendable e : current) {
+						for (String name : names) {
+							sum += e.getValueForName(name, Integer.class);
+						}
+					}
+					consume(sum);
+				}
+			});
+			time("Vector clear and add", new Runnable() {
+				public void run() {
+					for (VectorExtendable e : legacy) {
+						for (int p = 0; p < names.length; p++) {
+							e.clearName(names[p]);
+							e.addNameValuePair(names[p], Integer.valueOf(p));
+						}
+					}
+				}
+			});
+			time("clear and add", new Runnable() {
+				public void run() {
+					for (CSExtendable e : current) {
+						for (int p = 0; p < names.length; p++) {
+							e.clearName(names[p]);
+							e.addNameValuePair(names[p], Integer.valueOf(p));
+						}
+					}
+				}
+			});
+		}
+	}
+
+	private static long sink;
+
+	private static void consume(long value) {
+		sink += value;
+	}
+
+	private static void time(String label, Runnable r) {
+		long start = System.nanoTime();
+		r.run();
+		System.out.println(String.format("  %-40s %8.1f ms", label,
+				(System.nanoTime() - start) / 1e6));
+	}
+
+	/* the lookup of the former CSExtendable */
+	private static class VectorExtendable {
+		private final Vector<Name> nameValuePairs = new Vector<Name>();
+
+		void addNameValuePair(String name, Object value) {
+			if (!nameValuePairs.contains(new Name(name))) {
+				nameValuePairs.add(new Name(name));
+			}
+			Name n = nameValuePairs.get(nameValuePairs.indexOf(new Name(name)));
+			if (n.values == null) {
+				n.values = new Vector<Object>();
+			}
+			n.values.add(value);
+		}
+
+		Object[] getValuesForName(String name) {
+			int index = nameValuePairs.indexOf(new Name(name));
+			if (index < 0) {
+				return null;
+			}
+			Name n = nameValuePairs.get(index);
+			return n.values.size() > 0 ? n.values.toArray() : null;
+		}
+
+		void clearName(String name) {
+			int index = nameValuePairs.indexOf(new Name(name));
+			if (index >= 0) {
+				nameValuePairs.get(index).values.clear();
+			}
+		}
+	}
+
+	private static class Name {
+		final String name;
+		Vector<Object> values;
+
+		Name(String name) {
+			this.name = name;
+		}
+
+		public boolean equals(Object o) {
+			return o instanceof Name && name.equals(((Name) o).name);
+		}
+
+		public int hashCode() {
+			return name.hashCode();
+		}
+	}
+
+}
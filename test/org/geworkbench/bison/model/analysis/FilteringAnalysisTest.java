@@ -0,0 +1,153 @@
+package org.geworkbench.bison.model.analysis;
+
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.geworkbench.bison.datastructure.biocollections.microarrays.CSMicroarraySet;
+import org.geworkbench.bison.datastructure.biocollections.microarrays.DSMicroarraySet;
+import org.geworkbench.bison.datastructure.bioobjects.markers.CSExpressionMarker;
+import org.geworkbench.bison.datastructure.bioobjects.markers.DSGeneMarker;
+import org.geworkbench.bison.datastructure.bioobjects.microarray.CSExpressionMarkerValue;
+import org.geworkbench.bison.datastructure.bioobjects.microarray.CSMicroarray;
+import org.geworkbench.bison.datastructure.bioobjects.microarray.DSMicroarray;
+import org.geworkbench.bison.datastructure.complex.panels.DSItemList;
+
+/**
+ * @version $Id$
+ */
+public class FilteringAnalysisTest extends TestCase {
+
+	private static final int MARKERS = 10;
+	private static final int ARRAYS = 20;
+
+	private CSMicroarraySet set;
+
+	/* removes markers with too many missing values */
+	private static class MissingValueFilter extends FilteringAnalysis {
+		private static final long serialVersionUID = 1L;
+
+		MissingValueFilter(CriterionOption option, int count, double percent) {
+			criterionOption = option;
+			numberThreshold = count;
+			percentThreshold = percent;
+		}
+
+		protected void getParametersFromPanel() {
+		}
+
+		protected boolean isMissing(int arrayIndex, int markerIndex) {
+			return maSet.get(arrayIndex).getMarkerValue(markerIndex)
+					.isMissing();
+		}
+	}
+
+	public FilteringAnalysisTest(String name) {
+		super(name);
+	}
+
+	/* marker i has i missing values, in arrays 0 .. i - 1 */
+	protected void setUp() throws Exception {
+		super.setUp();
+		set = new CSMicroarraySet();
+		for (int i = 0; i < MARKERS; i++) {
+			DSGeneMarker marker = new CSExpressionMarker();
+			marker.setLabel("marker " + i);
+			marker.setGeneId(1000 + i);
+			set.getMarkers().add(marker);
+		}
+		for (int j = 0; j < ARRAYS; j++) {
+			DSMicroarray microarray = new CSMicroarray(MARKERS);
+			microarray.setLabel("array " + j);
+			for (int i = 0; i < MARKERS; i++) {
+				CSExpressionMarkerValue value = new CSExpressionMarkerValue(i
+						* 100 + j);
+				value.setPresent();
+				value.setMissing(j < i);
+				microarray.setMarkerValue(i, value);
+			}
+			set.add(microarray);
+		}
+		set.getMarkers().correctMaps();
+	}
+
+	public void testMarkersToBeRemoved() {
+		FilteringAnalysis count = new MissingValueFilter(
+				FilteringAnalysis.CriterionOption.COUNT, 6, 0);
+		assertEquals(Arrays.asList(7, 8, 9), count.getMarkersToBeRemoved(set));
+
+		FilteringAnalysis percent = new MissingValueFilter(
+				FilteringAnalysis.CriterionOption.PERCENT, 0, 0.25);
+		assertEquals(Arrays.asList(6, 7, 8, 9), percent
+				.getMarkersToBeRemoved(set));
+	}
+
+	public void testRemovalCompactsMarkersAndArrays() {
+		FilteringAnalysis filter = new MissingValueFilter(
+				FilteringAnalysis.CriterionOption.COUNT, 2, 0);
+		DSMicroarraySet filtered = execute(filter);
+
+		// the input is left as it is
+		assertEquals(MARKERS, set.getMarkers().size());
+		assertEquals(MARKERS, set.get(0).getMarkerNo());
+
+		DSItemList<DSGeneMarker> markers = filtered.getMarkers();
+		assertEquals(3, markers.size());
+		for (int i = 0; i < markers.size(); i++) {
+			assertEquals("marker " + i, markers.get(i).getLabel());
+			assertEquals(i, markers.get(i).getSerial());
+			assertSame(markers.get(i), markers.get("marker " + i));
+		}
+		assertNull(markers.get("marker 3"));
+		assertTrue(((CSMicroarraySet) filtered).getMarkers()
+				.getMatchingMarkers("1005").isEmpty());
+		assertEquals(1, ((CSMicroarraySet) filtered).getMarkers()
+				.getMatchingMarkers("1002").size());
+
+		for (int j = 0; j < ARRAYS; j++) {
+			DSMicroarray microarray = filtered.get(j);
+			assertEquals(3, microarray.getMarkerNo());
+			for (int i = 0; i < 3; i++) {
+				assertEquals(i * 100 + j, microarray.getMarkerValue(i)
+						.getValue(), 0);
+				assertEquals(j < i, microarray.getMarkerValue(i).isMissing());
+				assertNotSame(set.get(j).getMarkerValue(i), microarray
+						.getMarkerValue(i));
+			}
+		}
+	}
+
+	public void testOverriddenSelectionIsRemoved() {
+		FilteringAnalysis filter = new MissingValueFilter(
+				FilteringAnalysis.CriterionOption.COUNT, MARKERS, 0) {
+			private static final long serialVersionUID = 1L;
+
+			public List<Integer> getMarkersToBeRemoved(DSMicroarraySet input) {
+				return Arrays.asList(0, 5);
+			}
+		};
+		DSMicroarraySet filtered = execute(filter);
+		assertEquals(MARKERS - 2, filtered.getMarkers().size());
+		assertEquals("marker 1", filtered.getMarkers().get(0).getLabel());
+		assertEquals("marker 6", filtered.getMarkers().get(4).getLabel());
+		assertEquals(MARKERS - 2, filtered.get(0).getMarkerNo());
+	}
+
+	public void testNothingRemoved() {
+		FilteringAnalysis filter = new MissingValueFilter(
+				FilteringAnalysis.CriterionOption.COUNT, MARKERS, 0);
+		List<Integer> none = filter.getMarkersToBeRemoved(set);
+		assertTrue(none.isEmpty());
+		assertSame(set, execute(filter));
+		assertEquals(MARKERS, set.getMarkers().size());
+		assertEquals(MARKERS, set.get(0).getMarkerNo());
+	}
+
+	private DSMicroarraySet execute(FilteringAnalysis filter) {
+		AlgorithmExecutionResults results = filter.execute(set);
+		assertTrue(results.isExecutionSuccessful());
+		return (DSMicroarraySet) results.getResults();
+	}
+
+}
@@ -0,0 +1,70 @@
+package org.geworkbench.bison.model.imputation;
+
+import java.util.Random;
+
+import org.geworkbench.bison.model.imputation.MissingValueImputer.Method;
+import org.geworkbench.bison.util.ExpressionMatrix;
+
+/**
+ * Rough timing of {@link MissingValueImputer} on a low-rank matrix with a
+ * twentieth of its values missing. Run with the number of markers and arrays
+ * as the (optional) arguments.
+ *
+ * @version $Id$
+ */
+public class MissingValueImputerBenchmark {
+
+	public static void main(String[] args) {
+		final int rows = args.length > 0 ? Integer.parseInt(args[0]) : 50000;
+		final int columns = args.length > 1 ? Integer.parseInt(args[1]) : 500;
+		Random random = new Random(48);
+		double[] rowFactors = new double[rows * 5];
+		double[] columnFactors = new double[columns * 5];
+		for (int i = 0; i < rowFactors.length; i++) {
+			rowFactors[i] = random.nextGaussian();
+		}
+		for (int i = 0; i < columnFactors.length; i++) {
+			columnFactors[i] = random.nextGaussian();
+		}
+		final float[] values = new float[rows * columns];
+		for (int i = 0; i < rows; i++) {
+			double offset = 5 + 2 * random.nextGaussian();
+			for (int j = 0; j < columns; j++) {
+				double value = offset + 0.1 * random.nextGaussian();
+				for (int k = 0; k < 5; k++) {
+					value += rowFactors[i * 5 + k] * columnFactors[j * 5 + k];
+				}
+				values[i * columns + j] = random.nextDouble() < 0.05 ? Float.NaN
+						: (float) value;
+			}
+		}
+		final int[] serials = new int[rows];
+		for (int i = 0; i < rows; i++) {
+			serials[i] = i;
+		}
+
+		for (int round = 0; round < 3; round++) {
+			System.out.println("round " + round + ", " + rows + " x " + columns);
+			for (final Method method : Method.values()) {
+				time(method.toString(), new Runnable() {
+					public void run() {
+						ExpressionMatrix matrix = new ExpressionMatrix(rows,
+								columns, values.clone(), serials);
+						MissingValueImputer imputer = new MissingValueImputer(
+								method);
+						imputer.setRank(5);
+						imputer.impute(matrix);
+					}
+				});
+			}
+		}
+	}
+
+	private static void time(String label, Runnable r) {
+		long start = System.nanoTime();
+		r.run();
+		System.out.println(String.format("  %-40s %8.1f ms", label,
+				(System.nanoTime() - start) / 1e6));
+	}
+
+}
@@ -0,0 +1,165 @@
+package org.geworkbench.bison.model.imputation;
+
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import org.geworkbench.bison.datastructure.biocollections.microarrays.CSMicroarraySet;
+import org.geworkbench.bison.datastructure.bioobjects.markers.CSExpressionMarker;
+import org.geworkbench.bison.datastructure.bioobjects.markers.DSGeneMarker;
+import org.geworkbench.bison.datastructure.bioobjects.microarray.CSExpressionMarkerValue;
+import org.geworkbench.bison.datastructure.bioobjects.microarray.CSMicroarray;
+import org.geworkbench.bison.datastructure.bioobjects.microarray.DSMarkerValue;
+import org.geworkbench.bison.datastructure.bioobjects.microarray.DSMicroarray;
+import org.geworkbench.bison.util.ExpressionMatrix;
+import org.geworkbench.bison.model.imputation.MissingValueImputer.Method;
+
+/**
+ * Accuracy is measured on synthetic data of rank three plus noise, with
+ * offsets per marker, from which some values are masked.
+ *
+ * @version $Id$
+ */
+public class MissingValueImputerTest extends TestCase {
+
+	private static final int RANK = 3;
+	private static final double NOISE = 0.1;
+
+	public MissingValueImputerTest(String name) {
+		super(name);
+	}
+
+	/** A low-rank matrix and a copy with about a twentieth of it missing. */
+	private static class Masked {
+		final float[] truth;
+		final ExpressionMatrix matrix;
+		final int maskedCount;
+
+		Masked(int rows, int columns, long seed) {
+			Random random = new Random(seed);
+			double[] rowFactors = gaussian(random, rows * RANK);
+			double[] columnFactors = gaussian(random, columns * RANK);
+			truth = new float[rows * columns];
+			float[] values = new float[rows * columns];
+			int masked = 0;
+			for (int i = 0; i < rows; i++) {
+				double offset = 5 + 2 * random.nextGaussian();
+				for (int j = 0; j < columns; j++) {
+					double value = offset + NOISE * random.nextGaussian();
+					for (int k = 0; k < RANK; k++) {
+						value += rowFactors[i * RANK + k]
+								* columnFactors[j * RANK + k];
+					}
+					truth[i * columns + j] = (float) value;
+					if (random.nextDouble() < 0.05) {
+						values[i * columns + j] = Float.NaN;
+						masked++;
+					} else {
+						values[i * columns + j] = (float) value;
+					}
+				}
+			}
+			int[] serials = new int[rows];
+			for (int i = 0; i < rows; i++) {
+				serials[i] = i;
+			}
+			matrix = new ExpressionMatrix(rows, columns, values, serials);
+			maskedCount = masked;
+		}
+
+		/* root mean square error over the masked cells */
+		double error(ImputedCells cells) {
+			assertEquals(maskedCount, cells.size());
+			double sum = 0;
+			int columns = matrix.getColumnCount();
+			for (int cell = 0; cell < cells.size(); cell++) {
+				int k = cells.getRow(cell) * columns + cells.getColumn(cell);
+				assertEquals(cells.getValue(cell), matrix.getValues()[k]);
+				double d = cells.getValue(cell) - truth[k];
+				sum += d * d;
+			}
+			return Math.sqrt(sum / cells.size());
+		}
+	}
+
+	private static double[] gaussian(Random random, int n) {
+		double[] values = new double[n];
+		for (int i = 0; i < n; i++) {
+			values[i] = random.nextGaussian();
+		}
+		return values;
+	}
+
+	private static double error(Method method, int rows, int columns) {
+		Masked masked = new Masked(rows, columns, 7);
+		MissingValueImputer imputer = new MissingValueImputer(method);
+		imputer.setRank(RANK);
+		return masked.error(imputer.impute(masked.matrix));
+	}
+
+	public void testLowRankBeatsMeans() {
+		double rowMean = error(Method.ROW_MEAN, 600, 40);
+		double columnMean = error(Method.COLUMN_MEAN, 600, 40);
+		double svd = error(Method.SVD, 600, 40);
+		// the offsets of the markers are the larger part of the variance
+		assertTrue(rowMean < columnMean);
+		assertTrue("SVD error " + svd, svd < 3 * NOISE);
+		assertTrue(svd < rowMean / 4);
+	}
+
+	public void testNearestNeighbors() {
+		double rowMean = error(Method.ROW_MEAN, 600, 40);
+		double exact = error(Method.KNN, 600, 40);
+		assertTrue("KNN error " + exact, exact < rowMean / 2);
+
+		// enough markers to go through the neighbor index
+		double indexed = error(Method.KNN, 3000, 40);
+		assertTrue("indexed KNN error " + indexed, indexed < rowMean / 2);
+	}
+
+	public void testApplyAndRevert() {
+		CSMicroarraySet set = new CSMicroarraySet();
+		for (int i = 0; i < 30; i++) {
+			DSGeneMarker marker = new CSExpressionMarker();
+			marker.setLabel("marker " + i);
+			set.getMarkers().add(marker);
+		}
+		for (int j = 0; j < 6; j++) {
+			DSMicroarray microarray = new CSMicroarray(30);
+			microarray.setLabel("array " + j);
+			for (int i = 0; i < 30; i++) {
+				CSExpressionMarkerValue value = new CSExpressionMarkerValue(i
+						+ j);
+				if ((i + j) % 7 == 0) {
+					value.setMissing(true);
+				} else {
+					value.setPresent();
+				}
+				microarray.setMarkerValue(i, value);
+			}
+			set.add(microarray);
+		}
+		set.getMarkers().correctMaps();
+
+		ImputedCells cells = new MissingValueImputer(Method.ROW_MEAN)
+				.impute(set);
+		assertEquals(25, cells.size());
+		assertTrue(cells.isImputed(0, 0));
+		assertTrue(cells.isImputed(3, 4));
+		assertFalse(cells.isImputed(3, 3));
+		// not changed yet
+		assertTrue(set.get(4).getMarkerValue(3).isMissing());
+
+		cells.apply();
+		DSMarkerValue value = set.get(4).getMarkerValue(3);
+		assertFalse(value.isMissing());
+		// the mean of the values measured for marker 3
+		assertEquals(5.2, value.getValue(), 1e-5);
+		assertTrue(cells.isApplied());
+
+		cells.revert();
+		assertTrue(value.isMissing());
+		assertEquals(7.0, value.getValue());
+	}
+
+}
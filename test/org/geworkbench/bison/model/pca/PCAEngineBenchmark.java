@@ -0,0 +1,72 @@
+package org.geworkbench.bison.model.pca;
+
+import java.util.Random;
+
+import org.geworkbench.bison.model.pca.PCAEngine.Mode;
+import org.geworkbench.bison.util.ExpressionMatrix;
+
+/**
+ * Rough timing of the top ten components with {@link PCAEngine} on a matrix
+ * of rank twenty plus noise. Run with the number of markers and arrays as the
+ * (optional) arguments; the exact mode is left out above 1000 arrays.
+ *
+ * @version $Id$
+ */
+public class PCAEngineBenchmark {
+
+	public static void main(String[] args) {
+		int rows = args.length > 0 ? Integer.parseInt(args[0]) : 54000;
+		int columns = args.length > 1 ? Integer.parseInt(args[1]) : 2000;
+		Random random = new Random(49);
+		float[][] columnFactors = new float[20][columns];
+		for (int k = 0; k < 20; k++) {
+			for (int j = 0; j < columns; j++) {
+				columnFactors[k][j] = (float) random.nextGaussian();
+			}
+		}
+		float[] values = new float[rows * columns];
+		for (int i = 0; i < rows; i++) {
+			for (int k = 0; k < 20; k++) {
+				float factor = (float) (random.nextGaussian() / (k + 1));
+				for (int j = 0; j < columns; j++) {
+					values[i * columns + j] += factor * columnFactors[k][j];
+				}
+			}
+			for (int j = 0; j < columns; j++) {
+				values[i * columns + j] += 0.1f * random.nextFloat();
+			}
+		}
+		int[] serials = new int[rows];
+		for (int i = 0; i < rows; i++) {
+			serials[i] = i;
+		}
+		final ExpressionMatrix matrix = new ExpressionMatrix(rows, columns,
+				values, serials);
+
+		for (int round = 0; round < 3; round++) {
+			System.out.println("round " + round + ", " + rows + " x " + columns);
+			for (final Mode mode : Mode.values()) {
+				if (mode == Mode.INCREMENTAL
+						|| (mode == Mode.EXACT && columns > 1000)) {
+					// the incremental mode reads from a view, not a matrix
+					continue;
+				}
+				time(mode.toString(), new Runnable() {
+					public void run() {
+						PCAEngine engine = new PCAEngine(mode);
+						engine.setComponents(10);
+						engine.compute(matrix);
+					}
+				});
+			}
+		}
+	}
+
+	private static void time(String label, Runnable r) {
+		long start = System.nanoTime();
+		r.run();
+		System.out.println(String.format("  %-40s %8.1f ms", label,
+				(System.nanoTime() - start) / 1e6));
+	}
+
+}
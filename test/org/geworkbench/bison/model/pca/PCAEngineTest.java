@@ -0,0 +1,223 @@
+package org.geworkbench.bison.model.pca;
+
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import org.geworkbench.bison.datastructure.biocollections.microarrays.CSMicroarraySet;
+import org.geworkbench.bison.datastructure.biocollections.pca.CSPCADataSet;
+import org.geworkbench.bison.datastructure.biocollections.pca.PrincipalComponents;
+import org.geworkbench.bison.datastructure.biocollections.views.CSMicroarraySetView;
+import org.geworkbench.bison.datastructure.bioobjects.markers.CSExpressionMarker;
+import org.geworkbench.bison.datastructure.bioobjects.markers.DSGeneMarker;
+import org.geworkbench.bison.datastructure.bioobjects.microarray.CSExpressionMarkerValue;
+import org.geworkbench.bison.datastructure.bioobjects.microarray.CSMicroarray;
+import org.geworkbench.bison.datastructure.bioobjects.microarray.DSMicroarray;
+import org.geworkbench.bison.model.pca.PCAEngine.Mode;
+import org.geworkbench.bison.util.ExpressionMatrix;
+
+/**
+ * The data is of rank three with a little noise, the three directions of
+ * clearly different strength.
+ *
+ * @version $Id$
+ */
+public class PCAEngineTest extends TestCase {
+
+	private static final double[] STRENGTHS = { 9, 5, 3 };
+
+	public PCAEngineTest(String name) {
+		super(name);
+	}
+
+	public void testModesAgree() {
+		CSMicroarraySet set = createSet(500, 60, 11);
+		CSMicroarraySetView<DSGeneMarker, DSMicroarray> view = new CSMicroarraySetView<DSGeneMarker, DSMicroarray>(
+				set);
+		PrincipalComponents exact = compute(Mode.EXACT, view);
+		assertEquals(3, exact.getComponentCount());
+		assertEquals(500, exact.getMarkerCount());
+		assertEquals(60, exact.getArrayCount());
+		double explained = 0;
+		for (int c = 0; c < 3; c++) {
+			explained += exact.getVarianceFraction(c);
+		}
+		assertTrue("explained " + explained, explained > 0.95);
+		assertTrue(exact.getVariance(0) > exact.getVariance(1));
+		assertTrue(exact.getVariance(1) > exact.getVariance(2));
+		assertOrthonormal(exact);
+
+		for (Mode mode : new Mode[] { Mode.RANDOMIZED, Mode.INCREMENTAL }) {
+			PrincipalComponents other = compute(mode, view);
+			for (int c = 0; c < 3; c++) {
+				assertEquals(mode + " variance", exact.getVariance(c),
+						other.getVariance(c), exact.getVariance(c) * 1e-3);
+				double cosine = 0;
+				for (int i = 0; i < 500; i++) {
+					cosine += exact.getLoading(i, c) * other.getLoading(i, c);
+				}
+				assertEquals(mode + " loading", 1, cosine, 1e-3);
+				for (int j = 0; j < 60; j++) {
+					assertEquals(exact.getScore(j, c), other.getScore(j, c),
+							0.05);
+				}
+			}
+		}
+	}
+
+	public void testFewerMarkersThanArrays() {
+		CSMicroarraySet set = createSet(40, 120, 12);
+		ExpressionMatrix matrix = ExpressionMatrix.fromMicroarraySet(set, true);
+		PCAEngine engine = new PCAEngine(Mode.EXACT);
+		engine.setComponents(3);
+		PrincipalComponents exact = engine.compute(matrix);
+		assertOrthonormal(exact);
+		PrincipalComponents randomized = compute(Mode.RANDOMIZED,
+				new CSMicroarraySetView<DSGeneMarker, DSMicroarray>(set));
+		for (int c = 0; c < 3; c++) {
+			assertEquals(exact.getVariance(c), randomized.getVariance(c),
+					exact.getVariance(c) * 1e-3);
+		}
+	}
+
+	public void testProjectNewArrays() {
+		CSMicroarraySet set = createSet(300, 50, 13);
+		// the components of the first 40 arrays only
+		ExpressionMatrix matrix = ExpressionMatrix.fromMicroarrays(set
+				.subList(0, 40), 300, true);
+		PCAEngine engine = new PCAEngine(Mode.RANDOMIZED);
+		engine.setComponents(3);
+		PrincipalComponents components = engine.compute(matrix);
+		assertEquals(40, components.getArrayCount());
+
+		// the arrays used project onto their own scores
+		float[] scores = components.project(set.get(7));
+		for (int c = 0; c < 3; c++) {
+			assertEquals(components.getScore(7, c), scores[c], 1e-3);
+		}
+		// the others are described by their projection, up to the noise
+		for (int j = 40; j < 50; j++) {
+			scores = components.project(set.get(j));
+			double residual = 0;
+			double total = 0;
+			for (int i = 0; i < 300; i++) {
+				double x = set.get(j).getMarkerValue(i).getValue()
+						- components.getMean(i);
+				double fitted = 0;
+				for (int c = 0; c < 3; c++) {
+					fitted += scores[c] * components.getLoading(i, c);
+				}
+				residual += (x - fitted) * (x - fitted);
+				total += x * x;
+			}
+			assertTrue("residual " + residual / total, residual < total * 0.01);
+		}
+	}
+
+	public void testDataSetDerivesLegacyMaps() {
+		CSMicroarraySet set = createSet(100, 20, 14);
+		PCAEngine engine = new PCAEngine(Mode.EXACT);
+		engine.setComponents(2);
+		CSPCADataSet dataSet = engine.createDataSet(
+				new CSMicroarraySetView<DSGeneMarker, DSMicroarray>(set), "PCA");
+		PrincipalComponents components = dataSet.getComponents();
+		assertEquals(2, dataSet.getNumPCs());
+		assertEquals(components.getVariance(1), dataSet.getEigenValues()
+				.get(2), 1e-9);
+		assertEquals(100, dataSet.getEigenVectors().get(1).size());
+		assertEquals(components.getLoading(5, 1), Float.parseFloat(dataSet
+				.getEigenVectors().get(2).get(5)));
+		assertEquals(components.getLoading(7, 0), dataSet.getUMatrix()[7][0]);
+		assertNotNull(dataSet.getPercentVars().get(1));
+	}
+
+	public void testSymmetricEigen() {
+		Random random = new Random(5);
+		int n = 30;
+		double[][] a = new double[n][n];
+		for (int i = 0; i < n; i++) {
+			for (int j = 0; j <= i; j++) {
+				a[i][j] = a[j][i] = random.nextGaussian();
+			}
+		}
+		double[][] copy = new double[n][];
+		for (int i = 0; i < n; i++) {
+			copy[i] = a[i].clone();
+		}
+		SymmetricEigen eigen = new SymmetricEigen(copy);
+		for (int c = 0; c < n; c++) {
+			if (c > 0) {
+				assertTrue(eigen.getValue(c) <= eigen.getValue(c - 1));
+			}
+			double[] v = eigen.getVector(c);
+			for (int i = 0; i < n; i++) {
+				double av = 0;
+				for (int j = 0; j < n; j++) {
+					av += a[i][j] * v[j];
+				}
+				assertEquals(eigen.getValue(c) * v[i], av, 1e-9);
+			}
+		}
+	}
+
+	private static PrincipalComponents compute(Mode mode,
+			CSMicroarraySetView<DSGeneMarker, DSMicroarray> view) {
+		PCAEngine engine = new PCAEngine(mode);
+		engine.setComponents(3);
+		return engine.compute(view);
+	}
+
+	private static void assertOrthonormal(PrincipalComponents components) {
+		int k = components.getComponentCount();
+		for (int a = 0; a < k; a++) {
+			for (int b = 0; b <= a; b++) {
+				double dot = 0;
+				for (int i = 0; i < components.getMarkerCount(); i++) {
+					dot += components.getLoading(i, a)
+							* components.getLoading(i, b);
+				}
+				assertEquals(a == b ? 1 : 0, dot, 1e-4);
+			}
+		}
+	}
+
+	private static CSMicroarraySet createSet(int markers, int arrays, long seed) {
+		Random random = new Random(seed);
+		double[][] markerFactors = new double[markers][3];
+		double[][] arrayFactors = new double[arrays][3];
+		for (int i = 0; i < markers; i++) {
+			for (int c = 0; c < 3; c++) {
+				markerFactors[i][c] = random.nextGaussian();
+			}
+		}
+		for (int j = 0; j < arrays; j++) {
+			for (int c = 0; c < 3; c++) {
+				arrayFactors[j][c] = STRENGTHS[c] * random.nextGaussian();
+			}
+		}
+		CSMicroarraySet set = new CSMicroarraySet();
+		for (int i = 0; i < markers; i++) {
+			DSGeneMarker marker = new CSExpressionMarker();
+			marker.setLabel("marker " + i);
+			set.getMarkers().add(marker);
+		}
+		for (int j = 0; j < arrays; j++) {
+			DSMicroarray microarray = new CSMicroarray(markers);
+			microarray.setLabel("array " + j);
+			for (int i = 0; i < markers; i++) {
+				double value = 8 + i % 5 + 0.1 * random.nextGaussian();
+				for (int c = 0; c < 3; c++) {
+					value += markerFactors[i][c] * arrayFactors[j][c];
+				}
+				CSExpressionMarkerValue markerValue = new CSExpressionMarkerValue(
+						(float) value);
+				markerValue.setPresent();
+				microarray.setMarkerValue(i, markerValue);
+			}
+			set.add(microarray);
+		}
+		set.getMarkers().correctMaps();
+		return set;
+	}
+
+}
@@ -0,0 +1,201 @@
+package org.geworkbench.bison.model.pipeline;
+
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import org.geworkbench.bison.datastructure.biocollections.microarrays.CSMicroarraySet;
+import org.geworkbench.bison.datastructure.biocollections.microarrays.DSMicroarraySet;
+import org.geworkbench.bison.datastructure.bioobjects.markers.CSExpressionMarker;
+import org.geworkbench.bison.datastructure.bioobjects.markers.DSGeneMarker;
+import org.geworkbench.bison.datastructure.bioobjects.microarray.CSExpressionMarkerValue;
+import org.geworkbench.bison.datastructure.bioobjects.microarray.CSMicroarray;
+import org.geworkbench.bison.datastructure.bioobjects.microarray.DSMicroarray;
+import org.geworkbench.bison.util.ExpressionMatrix;
+
+/**
+ * @version $Id$
+ */
+public class PreprocessingPipelineTest extends TestCase {
+
+	private static final int MARKERS = 50;
+	private static final int ARRAYS = 12;
+
+	private CSMicroarraySet set;
+	private float[][] raw;
+
+	public PreprocessingPipelineTest(String name) {
+		super(name);
+	}
+
+	/* positive values; marker i has i % 5 missing values */
+	protected void setUp() throws Exception {
+		super.setUp();
+		Random random = new Random(32);
+		raw = new float[MARKERS][ARRAYS];
+		set = new CSMicroarraySet();
+		set.setLabel("raw");
+		for (int i = 0; i < MARKERS; i++) {
+			DSGeneMarker marker = new CSExpressionMarker();
+			marker.setLabel("marker " + i);
+			set.getMarkers().add(marker);
+		}
+		for (int j = 0; j < ARRAYS; j++) {
+			DSMicroarray microarray = new CSMicroarray(MARKERS);
+			microarray.setLabel("array " + j);
+			for (int i = 0; i < MARKERS; i++) {
+				raw[i][j] = 1 + 100 * random.nextFloat();
+				CSExpressionMarkerValue value = new CSExpressionMarkerValue(
+						raw[i][j]);
+				value.setPresent();
+				if (j < i % 5) {
+					value.setMissing(true);
+					raw[i][j] = Float.NaN;
+				}
+				microarray.setMarkerValue(i, value);
+			}
+			set.add(microarray);
+		}
+	}
+
+	public void testChainMatchesDirectComputation() {
+		PreprocessingPipeline pipeline = new PreprocessingPipeline(set);
+		pipeline.addStage(new LogTransformStage());
+		MissingValueFilterStage missing = new MissingValueFilterStage();
+		missing.setMaxCount(2);
+		pipeline.addStage(missing);
+		ArrayCenteringStage arrays = new ArrayCenteringStage();
+		arrays.setCentering(Centering.MEAN);
+		pipeline.addStage(arrays);
+		pipeline.addStage(new MarkerCenteringStage());
+
+		// reference: log2, drop markers with more than 2 missing, then
+		// center arrays and markers on their means
+		int kept = 0;
+		int[] serials = new int[MARKERS];
+		for (int i = 0; i < MARKERS; i++) {
+			if (i % 5 <= 2) {
+				serials[kept++] = i;
+			}
+		}
+		double[][] expected = new double[kept][ARRAYS];
+		for (int r = 0; r < kept; r++) {
+			for (int j = 0; j < ARRAYS; j++) {
+				expected[r][j] = Math.log(raw[serials[r]][j]) / Math.log(2);
+			}
+		}
+		for (int j = 0; j < ARRAYS; j++) {
+			double sum = 0;
+			int n = 0;
+			for (int r = 0; r < kept; r++) {
+				if (!Double.isNaN(expected[r][j])) {
+					sum += expected[r][j];
+					n++;
+				}
+			}
+			for (int r = 0; r < kept; r++) {
+				expected[r][j] -= sum / n;
+			}
+		}
+		for (int r = 0; r < kept; r++) {
+			double sum = 0;
+			int n = 0;
+			for (int j = 0; j < ARRAYS; j++) {
+				if (!Double.isNaN(expected[r][j])) {
+					sum += expected[r][j];
+					n++;
+				}
+			}
+			for (int j = 0; j < ARRAYS; j++) {
+				expected[r][j] -= sum / n;
+			}
+		}
+
+		ExpressionMatrix result = pipeline.materialize();
+		assertEquals(kept, result.getRowCount());
+		assertEquals(ARRAYS, result.getColumnCount());
+		PipelineView view = pipeline.getResult();
+		for (int r = 0; r < kept; r++) {
+			assertEquals(serials[r], result.getRowSerial(r));
+			for (int j = 0; j < ARRAYS; j++) {
+				if (Double.isNaN(expected[r][j])) {
+					assertTrue(Float.isNaN(result.get(r, j)));
+				} else {
+					assertEquals(expected[r][j], result.get(r, j), 1e-4);
+					assertEquals(result.get(r, j), view.get(r, j), 1e-6);
+				}
+			}
+		}
+
+		// the source set is untouched
+		assertEquals(MARKERS, set.getMarkers().size());
+		assertEquals(raw[0][0], set.get(0).getMarkerValue(0).getValue(), 1e-4);
+	}
+
+	public void testOnlyAffectedColumnsChange() {
+		PreprocessingPipeline pipeline = new PreprocessingPipeline(set);
+		DeviationFilterStage deviation = new DeviationFilterStage();
+		pipeline.addStage(deviation);
+		ArrayCenteringStage arrays = new ArrayCenteringStage();
+		pipeline.addStage(arrays);
+		PipelineView view = pipeline.getResult();
+		long[] before = stamps(view);
+
+		// a cutoff that keeps every marker leaves all columns as they were
+		deviation.setMinDeviation(0.001f);
+		assertTrue(java.util.Arrays.equals(before, stamps(view)));
+
+		// excluding one array from centering only touches that array
+		float centered = view.get(0, 3);
+		arrays.setArrayIncluded(3, false);
+		long[] after = stamps(view);
+		for (int j = 0; j < ARRAYS; j++) {
+			assertEquals(j != 3, before[j] == after[j]);
+		}
+		assertEquals(set.get(3).getMarkerValue(view.getRowSerial(0))
+				.getValue(), view.get(0, 3), 1e-4);
+		arrays.setArrayIncluded(3, true);
+		assertEquals(centered, view.get(0, 3), 1e-6);
+
+		// a cutoff that drops markers changes every column
+		deviation.setMinDeviation(1000);
+		assertEquals(0, view.getRowCount());
+		long[] empty = stamps(view);
+		for (int j = 0; j < ARRAYS; j++) {
+			assertTrue(empty[j] != after[j]);
+		}
+	}
+
+	public void testCreateMicroarraySet() {
+		PreprocessingPipeline pipeline = new PreprocessingPipeline(set);
+		MissingValueFilterStage missing = new MissingValueFilterStage();
+		missing.setMaxFraction(0.1);
+		pipeline.addStage(missing);
+		pipeline.addStage(new LogTransformStage());
+
+		DSMicroarraySet result = pipeline.createMicroarraySet("filtered");
+		assertNotSame(set, result);
+		assertEquals("filtered", result.getLabel());
+		// 10% of 12 arrays allows one missing value
+		assertEquals(MARKERS * 2 / 5, result.getMarkers().size());
+		assertEquals(ARRAYS, result.size());
+		assertEquals("marker 1", result.getMarkers().get(1).getLabel());
+		assertEquals(1, result.getMarkers().get(1).getSerial());
+		assertTrue(result.get(0).getMarkerValue(1).isMissing());
+		assertEquals(Math.log(raw[1][5]) / Math.log(2), result.get(5)
+				.getMarkerValue(1).getValue(), 1e-4);
+
+		String history = pipeline.getHistory();
+		assertTrue(history.startsWith("Filtered with Missing values filter"));
+		assertTrue(history.contains("Normalized with Log transformation (base 2.0)"));
+	}
+
+	private static long[] stamps(PipelineView view) {
+		long[] stamps = new long[view.getColumnCount()];
+		for (int j = 0; j < stamps.length; j++) {
+			stamps[j] = view.getColumnStamp(j);
+		}
+		return stamps;
+	}
+
+}
@@ -0,0 +1,315 @@
+package org.geworkbench.builtin.projects;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+
+import javax.swing.SwingUtilities;
+
+import junit.framework.TestCase;
+
+import org.geworkbench.bison.datastructure.biocollections.CSAncillaryDataSet;
+import org.geworkbench.bison.datastructure.biocollections.DSDataSet;
+import org.geworkbench.bison.datastructure.biocollections.microarrays.CSMicroarraySet;
+import org.geworkbench.bison.datastructure.biocollections.microarrays.DSMicroarraySet;
+import org.geworkbench.bison.datastructure.biocollections.microarrays.MicroarraySetVersions;
+import org.geworkbench.bison.datastructure.bioobjects.markers.CSExpressionMarker;
+import org.geworkbench.bison.datastructure.bioobjects.markers.DSGeneMarker;
+import org.geworkbench.bison.datastructure.bioobjects.microarray.CSExpressionMarkerValue;
+import org.geworkbench.bison.datastructure.bioobjects.microarray.CSMicroarray;
+import org.geworkbench.bison.datastructure.bioobjects.microarray.DSMicroarray;
+
+/**
+ * @version $Id$
+ */
+public class DataSetResidencyTest extends TestCase {
+
+	private static final int MARKERS = 200;
+	private static final int ARRAYS = 10;
+
+	private File directory;
+
+	/* a result that refers to its parent set and to one of its markers */
+	private static class TopMarkerResult extends CSAncillaryDataSet<DSMicroarray> {
+		private static final long serialVersionUID = 1L;
+
+		final DSGeneMarker top;
+
+		TopMarkerResult(DSMicroarraySet parent, DSGeneMarker top) {
+			super(parent, "top marker");
+			this.top = top;
+		}
+
+		public File getDataSetFile() {
+			return null;
+		}
+
+		public void setDataSetFile(File file) {
+		}
+	}
+
+	/*
+	 * a result that remembers whether it was last serialized on the event
+	 * dispatch thread
+	 */
+	private static class RecordingResult extends CSAncillaryDataSet<DSMicroarray> {
+		private static final long serialVersionUID = 1L;
+
+		static volatile Boolean onEventThread;
+
+		RecordingResult(DSMicroarraySet parent) {
+			super(parent, "recording");
+		}
+
+		public File getDataSetFile() {
+			return null;
+		}
+
+		public void setDataSetFile(File file) {
+		}
+
+		private void writeObject(ObjectOutputStream out) throws IOException {
+			onEventThread = SwingUtilities.isEventDispatchThread();
+			out.defaultWriteObject();
+		}
+	}
+
+	public DataSetResidencyTest(String name) {
+		super(name);
+	}
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		directory = File.createTempFile("residency", "");
+		directory.delete();
+	}
+
+	protected void tearDown() throws Exception {
+		File[] files = directory.listFiles();
+		if (files != null) {
+			for (File file : files) {
+				file.delete();
+			}
+		}
+		directory.delete();
+		super.tearDown();
+	}
+
+	public void testLeastRecentlyUsedGoToDiskAndComeBack() throws Exception {
+		CSMicroarraySet a = createSet("a");
+		long cost = DataSetResidency.estimate(a);
+		DataSetResidency residency = new DataSetResidency(directory, cost + 1);
+		SpillableDataSet first = new SpillableDataSet(residency, a);
+		SpillableDataSet second = new SpillableDataSet(residency,
+				createSet("b"));
+		SpillableDataSet third = new SpillableDataSet(residency,
+				createSet("c"));
+		residency.track(first);
+		residency.track(second);
+		residency.track(third);
+		residency.awaitWrites();
+
+		assertEquals(2, residency.getWriteCount());
+		assertEquals(cost, residency.getResidentCost());
+		assertEquals(2, directory.listFiles().length);
+		assertEquals("b", second.getLabel());
+		assertEquals(CSMicroarraySet.class, second.getType());
+
+		// still used elsewhere: the same object comes back
+		assertSame(a, first.get());
+		assertEquals(1, residency.getReuseCount());
+		residency.awaitWrites();
+
+		// gone from memory: read back from disk
+		DSMicroarraySet b = (DSMicroarraySet) forget(residency, second).get();
+		assertEquals(1, residency.getReadCount());
+		assertEquals("b", b.getLabel());
+		assertEquals(ARRAYS, b.size());
+		assertEquals(MARKERS, b.getMarkers().size());
+		assertEquals("marker 7", b.getMarkers().get(7).getLabel());
+		assertEquals(703.0, b.get(3).getMarkerValue(7).getValue());
+	}
+
+	public void testReferencesResolveToObjectsInMemory() throws Exception {
+		CSMicroarraySet parent = createSet("parent");
+		CSMicroarraySet other = createSet("other");
+		DataSetResidency residency = new DataSetResidency(directory,
+				DataSetResidency.estimate(parent)
+						+ DataSetResidency.estimate(other) + 1);
+		SpillableDataSet parentData = new SpillableDataSet(residency, parent);
+		SpillableDataSet resultData = new SpillableDataSet(residency,
+				new TopMarkerResult(parent, parent.getMarkers().get(3)));
+		SpillableDataSet otherData = new SpillableDataSet(residency, other);
+		residency.track(parentData);
+		residency.track(resultData);
+		// the parent is kept for its result, so the result goes
+		residency.track(otherData);
+		residency.awaitWrites();
+		assertEquals(1, residency.getWriteCount());
+		assertNull(resultData.resident);
+
+		TopMarkerResult result = (TopMarkerResult) forget(residency,
+				resultData).get();
+		assertEquals(1, residency.getReadCount());
+		assertSame(parent, result.getParentDataSet());
+		assertSame(parent.getMarkers().get(3), result.top);
+	}
+
+	public void testNoBudgetKeepsEverything() throws Exception {
+		DataSetResidency residency = new DataSetResidency(directory, 0);
+		DSDataSet<?> set = createSet("a");
+		SpillableDataSet data = new SpillableDataSet(residency, set);
+		residency.track(data);
+		residency.track(new SpillableDataSet(residency, createSet("b")));
+		residency.awaitWrites();
+		assertEquals(0, residency.getWriteCount());
+		assertSame(set, data.get());
+		assertFalse(directory.exists());
+	}
+
+	public void testResultsGoBeforeTheirSetOffTheEventThread()
+			throws Exception {
+		CSMicroarraySet set = createSet("set");
+		RecordingResult result = new RecordingResult(set);
+		CSMicroarraySet other = createSet("other");
+		DataSetResidency residency = new DataSetResidency(directory,
+				DataSetResidency.estimate(other) + 1);
+		SpillableDataSet setData = new SpillableDataSet(residency, set);
+		SpillableDataSet resultData = new SpillableDataSet(residency, result);
+		residency.track(setData);
+		residency.track(resultData);
+		residency.track(new SpillableDataSet(residency, other));
+		residency.awaitWrites();
+		// the set waits for its result, then goes too
+		assertEquals(2, residency.getWriteCount());
+		assertNull(resultData.resident);
+		assertNull(setData.resident);
+		assertEquals(Boolean.FALSE, RecordingResult.onEventThread);
+		assertEquals("recording", resultData.getLabel());
+
+		RecordingResult back = (RecordingResult) forget(residency,
+				resultData).get();
+		assertEquals(1, residency.getReadCount());
+		assertSame(set, back.getParentDataSet());
+	}
+
+	public void testUsedFromManyThreadsReadOnce() throws Exception {
+		DataSetResidency residency = new DataSetResidency(directory,
+				DataSetResidency.estimate(createSet("a")) + 1);
+		final SpillableDataSet first = new SpillableDataSet(residency,
+				createSet("a"));
+		residency.track(first);
+		residency.track(new SpillableDataSet(residency, createSet("b")));
+		residency.awaitWrites();
+		forget(residency, first);
+
+		final DSDataSet<?>[] seen = new DSDataSet<?>[4];
+		Thread[] threads = new Thread[seen.length];
+		for (int i = 0; i < threads.length; i++) {
+			final int index = i;
+			threads[i] = new Thread() {
+				public void run() {
+					seen[index] = first.get();
+				}
+			};
+			threads[i].start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		assertEquals(1, residency.getReadCount());
+		for (DSDataSet<?> dataset : seen) {
+			assertSame(seen[0], dataset);
+		}
+	}
+
+	public void testSavedFromDiskWithoutReadingBack() throws Exception {
+		CSMicroarraySet a = createSet("a");
+		DataSetResidency residency = new DataSetResidency(directory,
+				DataSetResidency.estimate(a) + 1);
+		SpillableDataSet first = new SpillableDataSet(residency, a);
+		residency.track(first);
+		residency.track(new SpillableDataSet(residency, createSet("b")));
+		residency.awaitWrites();
+		long length = first.spillFile.length();
+		forget(residency, first);
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		ObjectOutputStream out = new ObjectOutputStream(bytes);
+		out.writeObject(first);
+		out.close();
+		assertEquals(0, residency.getReadCount());
+		assertTrue(bytes.size() > length);
+
+		SpillableDataSet copy = (SpillableDataSet) new ObjectInputStream(
+				new ByteArrayInputStream(bytes.toByteArray())).readObject();
+		try {
+			assertNull(copy.peek());
+			assertEquals("a", copy.getLabel());
+			assertEquals(length, copy.spillFile.length());
+			DSMicroarraySet back = (DSMicroarraySet) copy.get();
+			assertEquals(703.0, back.get(3).getMarkerValue(7).getValue());
+			assertNull(copy.spillFile);
+		} finally {
+			if (copy.spillFile != null) {
+				copy.spillFile.delete();
+			}
+		}
+	}
+
+	public void testSetWithVersionsStaysInMemory() throws Exception {
+		CSMicroarraySet a = createSet("a");
+		DataSetResidency residency = new DataSetResidency(directory,
+				DataSetResidency.estimate(a) + 1);
+		SpillableDataSet first = new SpillableDataSet(residency, a);
+		MicroarraySetVersions.getInstance(a).save("original");
+		residency.track(first);
+		residency.track(new SpillableDataSet(residency, createSet("b")));
+		residency.awaitWrites();
+		assertEquals(0, residency.getWriteCount());
+		assertSame(a, first.resident);
+
+		MicroarraySetVersions.remove(a);
+		residency.track(new SpillableDataSet(residency, createSet("c")));
+		residency.awaitWrites();
+		assertNull(first.resident);
+	}
+
+	/* as if the garbage collector had taken the dataset */
+	private static SpillableDataSet forget(DataSetResidency residency,
+			SpillableDataSet data) {
+		synchronized (residency) {
+			assertNull(data.resident);
+			data.released.clear();
+		}
+		return data;
+	}
+
+	private static CSMicroarraySet createSet(String label) {
+		CSMicroarraySet set = new CSMicroarraySet();
+		set.setLabel(label);
+		for (int i = 0; i < MARKERS; i++) {
+			DSGeneMarker marker = new CSExpressionMarker();
+			marker.setLabel("marker " + i);
+			marker.setGeneId(1000 + i);
+			set.getMarkers().add(marker);
+		}
+		for (int j = 0; j < ARRAYS; j++) {
+			DSMicroarray microarray = new CSMicroarray(MARKERS);
+			microarray.setLabel("array " + j);
+			for (int i = 0; i < MARKERS; i++) {
+				CSExpressionMarkerValue value = new CSExpressionMarkerValue(i
+						* 100 + j);
+				value.setPresent();
+				microarray.setMarkerValue(i, value);
+			}
+			set.add(microarray);
+		}
+		set.getMarkers().correctMaps();
+		return set;
+	}
+
+}
@@ -0,0 +1,246 @@
+package org.geworkbench.builtin.projects;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+import org.geworkbench.bison.datastructure.biocollections.CSAncillaryDataSet;
+import org.geworkbench.bison.datastructure.biocollections.DSDataSet;
+import org.geworkbench.bison.datastructure.biocollections.microarrays.CSMicroarraySet;
+import org.geworkbench.bison.datastructure.biocollections.microarrays.DSMicroarraySet;
+import org.geworkbench.bison.datastructure.bioobjects.markers.CSExpressionMarker;
+import org.geworkbench.bison.datastructure.bioobjects.markers.DSGeneMarker;
+import org.geworkbench.bison.datastructure.bioobjects.microarray.CSExpressionMarkerValue;
+import org.geworkbench.bison.datastructure.bioobjects.microarray.CSMicroarray;
+import org.geworkbench.bison.datastructure.bioobjects.microarray.DSMicroarray;
+
+/**
+ * @version $Id$
+ */
+public class WorkspaceJournalTest extends TestCase {
+
+	private static final int MARKERS = 20;
+	private static final int ARRAYS = 5;
+
+	private File file;
+	private DataSetResidency residency;
+
+	/* a result that refers to its parent set and to one of its markers */
+	private static class TopMarkerResult extends CSAncillaryDataSet<DSMicroarray> {
+		private static final long serialVersionUID = 1L;
+
+		final DSGeneMarker top;
+
+		TopMarkerResult(DSMicroarraySet parent, DSGeneMarker top) {
+			super(parent, "top marker");
+			this.top = top;
+		}
+
+		public File getDataSetFile() {
+			return null;
+		}
+
+		public void setDataSetFile(File file) {
+		}
+	}
+
+	public WorkspaceJournalTest(String name) {
+		super(name);
+	}
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		file = File.createTempFile("journal", ".log");
+		residency = new DataSetResidency(file.getParentFile(), 0);
+	}
+
+	protected void tearDown() throws Exception {
+		file.delete();
+		super.tearDown();
+	}
+
+	public void testReplayGivesTheLastState() throws Exception {
+		CSMicroarraySet a = createSet("a");
+		CSMicroarraySet b = createSet("b");
+		Map<SpillableDataSet, Integer> journaled = new IdentityHashMap<SpillableDataSet, Integer>();
+		JournalFile journal = new JournalFile(file, true);
+		journal.append(add(1, 0, WorkspaceJournal.DATASET, a, journaled));
+		journal.append(add(2, 1, WorkspaceJournal.SUBSET, new TopMarkerResult(
+				a, a.getMarkers().get(3)), journaled));
+		journal.append(add(3, 0, WorkspaceJournal.DATASET, b, journaled));
+		journal.append(WorkspaceJournal.change(1, "renamed", "some comments"));
+		journal.append(WorkspaceJournal.remove(3));
+		journal.append(WorkspaceJournal.select(2));
+		journal.close();
+
+		WorkspaceJournal.Recovery recovery = new WorkspaceJournal.Recovery();
+		assertEquals(6, JournalFile.read(file, recovery));
+		assertEquals(2, recovery.nodes.size());
+		assertEquals(2, recovery.selected);
+
+		WorkspaceJournal.Recovered set = recovery.nodes.get(1);
+		assertEquals("renamed", set.label);
+		assertEquals("some comments", set.description);
+		DSMicroarraySet recovered = (DSMicroarraySet) set.dataset;
+		assertEquals(ARRAYS, recovered.size());
+		assertEquals(703.0, recovered.get(3).getMarkerValue(7).getValue());
+
+		// the result refers to the recovered objects
+		TopMarkerResult result = (TopMarkerResult) recovery.nodes.get(2).dataset;
+		assertEquals(1, recovery.nodes.get(2).parentId);
+		assertSame(recovered, result.getParentDataSet());
+		assertSame(recovered.getMarkers().get(3), result.top);
+	}
+
+	public void testRemovingASetRemovesItsResults() throws Exception {
+		CSMicroarraySet a = createSet("a");
+		Map<SpillableDataSet, Integer> journaled = new IdentityHashMap<SpillableDataSet, Integer>();
+		JournalFile journal = new JournalFile(file, true);
+		journal.append(add(1, 0, WorkspaceJournal.DATASET, a, journaled));
+		journal.append(add(2, 1, WorkspaceJournal.SUBSET, new TopMarkerResult(
+				a, a.getMarkers().get(3)), journaled));
+		journal.append(WorkspaceJournal.remove(1));
+		journal.close();
+
+		WorkspaceJournal.Recovery recovery = new WorkspaceJournal.Recovery();
+		assertEquals(3, JournalFile.read(file, recovery));
+		assertTrue(recovery.nodes.isEmpty());
+	}
+
+	public void testDamagedTailIsIgnored() throws Exception {
+		JournalFile journal = new JournalFile(file, true);
+		journal.append(WorkspaceJournal.select(1));
+		journal.append(WorkspaceJournal.select(2));
+		long complete = journal.length();
+		journal.append(WorkspaceJournal.change(1, "label", "description"));
+		journal.close();
+
+		// a crash in the middle of the last record
+		RandomAccessFile access = new RandomAccessFile(file, "rw");
+		access.setLength(file.length() - 3);
+		access.close();
+		WorkspaceJournal.Recovery recovery = new WorkspaceJournal.Recovery();
+		assertEquals(2, JournalFile.read(file, recovery));
+		assertEquals(2, recovery.selected);
+
+		// a record whose content does not match its checksum
+		access = new RandomAccessFile(file, "rw");
+		access.setLength(complete);
+		access.seek(complete - 1);
+		access.write(9);
+		access.close();
+		recovery = new WorkspaceJournal.Recovery();
+		assertEquals(1, JournalFile.read(file, recovery));
+		assertEquals(1, recovery.selected);
+
+		// appending after what is left
+		journal = new JournalFile(file, false);
+		assertEquals(complete, journal.length());
+		journal.close();
+	}
+
+	public void testUsedWhileWrittenLeavesNothing() throws Exception {
+		Map<SpillableDataSet, Integer> journaled = new IdentityHashMap<SpillableDataSet, Integer>();
+		SpillableDataSet data = new SpillableDataSet(residency, createSet("a"));
+		DataSetResidency.Capture capture = residency.capture(data, journaled
+				.keySet());
+		// asked for, so maybe about to change, before it is written
+		data.get();
+		JournalFile journal = new JournalFile(file, true);
+		try {
+			journal.append(WorkspaceJournal.add(1, 0, WorkspaceJournal.DATASET,
+					"a", null, capture, journaled));
+			fail("written although it was used");
+		} catch (DataSetResidency.StoppedException e) {
+			// expected
+		} finally {
+			capture.close();
+		}
+		assertEquals(0, journal.length());
+		journal.close();
+	}
+
+	public void testSetOnDiskIsCopied() throws Exception {
+		CSMicroarraySet a = createSet("a");
+		File directory = new File(file.getPath() + ".d");
+		DataSetResidency budgeted = new DataSetResidency(directory,
+				DataSetResidency.estimate(a) + 1);
+		SpillableDataSet data = new SpillableDataSet(budgeted, a);
+		budgeted.track(data);
+		budgeted.track(new SpillableDataSet(budgeted, createSet("b")));
+		budgeted.awaitWrites();
+		assertNull(data.resident);
+
+		Map<SpillableDataSet, Integer> journaled = new IdentityHashMap<SpillableDataSet, Integer>();
+		DataSetResidency.Capture capture = budgeted.capture(data, journaled
+				.keySet());
+		assertTrue(capture.isCopy());
+		JournalFile journal = new JournalFile(file, true);
+		journal.append(WorkspaceJournal.add(1, 0, WorkspaceJournal.DATASET,
+				"a", null, capture, journaled));
+		capture.close();
+		journal.close();
+		assertEquals(0, budgeted.getReadCount());
+		for (File spilled : directory.listFiles()) {
+			spilled.delete();
+		}
+		directory.delete();
+
+		WorkspaceJournal.Recovery recovery = new WorkspaceJournal.Recovery();
+		assertEquals(1, JournalFile.read(file, recovery));
+		DSMicroarraySet recovered = (DSMicroarraySet) recovery.nodes.get(1).dataset;
+		assertEquals(703.0, recovered.get(3).getMarkerValue(7).getValue());
+	}
+
+	/* the way the journal writes an add record */
+	private JournalFile.Content add(int id, int parentId, byte kind,
+			DSDataSet<?> dataset, Map<SpillableDataSet, Integer> journaled)
+			throws Exception {
+		SpillableDataSet data = new SpillableDataSet(residency, dataset);
+		final DataSetResidency.Capture capture = residency.capture(data,
+				journaled.keySet());
+		final JournalFile.Content content = WorkspaceJournal.add(id,
+				parentId, kind, dataset.getLabel(), null, capture,
+				new IdentityHashMap<SpillableDataSet, Integer>(journaled));
+		journaled.put(data, id);
+		return new JournalFile.Content() {
+			public void writeTo(DataOutputStream out) throws IOException {
+				try {
+					content.writeTo(out);
+				} finally {
+					capture.close();
+				}
+			}
+		};
+	}
+
+	private static CSMicroarraySet createSet(String label) {
+		CSMicroarraySet set = new CSMicroarraySet();
+		set.setLabel(label);
+		for (int i = 0; i < MARKERS; i++) {
+			DSGeneMarker marker = new CSExpressionMarker();
+			marker.setLabel("marker " + i);
+			marker.setGeneId(1000 + i);
+			set.getMarkers().add(marker);
+		}
+		for (int j = 0; j < ARRAYS; j++) {
+			DSMicroarray microarray = new CSMicroarray(MARKERS);
+			microarray.setLabel("array " + j);
+			for (int i = 0; i < MARKERS; i++) {
+				CSExpressionMarkerValue value = new CSExpressionMarkerValue(i
+						* 100 + j);
+				value.setPresent();
+				microarray.setMarkerValue(i, value);
+			}
+			set.add(microarray);
+		}
+		set.getMarkers().correctMaps();
+		return set;
+	}
+
+}
@@ -0,0 +1,235 @@
+package org.geworkbench.builtin.projects.history;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.geworkbench.analysis.AbstractAnalysis;
+import org.geworkbench.bison.datastructure.biocollections.microarrays.CSMicroarraySet;
+import org.geworkbench.bison.datastructure.biocollections.views.CSMicroarraySetView;
+import org.geworkbench.bison.datastructure.bioobjects.markers.CSExpressionMarker;
+import org.geworkbench.bison.datastructure.bioobjects.markers.DSGeneMarker;
+import org.geworkbench.bison.datastructure.bioobjects.microarray.CSMicroarray;
+import org.geworkbench.bison.datastructure.bioobjects.microarray.DSMicroarray;
+import org.geworkbench.bison.model.analysis.AlgorithmExecutionResults;
+
+/**
+ * @version $Id$
+ */
+public class ProvenanceLogTest extends TestCase {
+
+	private static final int MARKERS = 20000;
+
+	private CSMicroarraySet set;
+
+	public ProvenanceLogTest(String name) {
+		super(name);
+	}
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		set = new CSMicroarraySet();
+		set.setLabel("provenance");
+		for (int i = 0; i < MARKERS; i++) {
+			DSGeneMarker marker = new CSExpressionMarker();
+			marker.setLabel(i + "_at");
+			set.getMarkers().add(marker);
+		}
+		for (int j = 0; j < 3; j++) {
+			CSMicroarray array = new CSMicroarray(0);
+			array.setLabel("array " + j);
+			set.add(array);
+		}
+	}
+
+	public void testStringHistoryRendersAsBefore() {
+		HistoryPanel.addToHistory(set, "Data file:  a.exp");
+		HistoryPanel.addBeforeToHistory(set, "first");
+		HistoryPanel.addToHistory(set, "second\nline");
+		HistoryPanel.addStep(set, new ProvenanceStep("Normalized with",
+				null, "Mean centering", null, "", 0));
+		HistoryPanel.addStep(set, new ProvenanceStep("Filtered with",
+				getClass().getName(), "Deviation filter", null, null, 0));
+
+		assertEquals("first\nData file:  a.exp\nsecond\nline\n"
+				+ "Normalized with Mean centering\n\n"
+				+ "Filtered with Deviation filter\n", HistoryPanel
+				.getHistory(set));
+		assertEquals(5, HistoryPanel.getProvenance(set).size());
+	}
+
+	public void testOldHistoryStringIsConverted() {
+		set.addNameValuePair(HistoryPanel.HISTORY, "old history\n");
+		assertEquals("old history\n", HistoryPanel.getHistory(set));
+		// the string became the first step and is not kept beside the log
+		assertNull(set.getValuesForName(HistoryPanel.HISTORY));
+
+		CSMicroarraySet derived = new CSMicroarraySet();
+		HistoryPanel.copyHistory(set, derived);
+		assertEquals("old history\n", HistoryPanel.getHistory(set));
+
+		HistoryPanel.addToHistory(set, "new step");
+		assertNull(set.getValuesForName(HistoryPanel.HISTORY));
+		assertEquals("old history\nnew step\n", HistoryPanel.getHistory(set));
+		assertEquals(2, HistoryPanel.getProvenance(set).size());
+		assertEquals("old history\n", HistoryPanel.getHistory(derived));
+
+		assertNull(HistoryPanel.getHistory(new CSMicroarraySet()));
+		assertFalse(HistoryPanel.hasHistory(new CSMicroarraySet()));
+	}
+
+	public void testAnalysisStepsShareSelections() throws Exception {
+		AbstractAnalysis analysis = new AbstractAnalysis() {
+			private static final long serialVersionUID = 1L;
+
+			public AlgorithmExecutionResults execute(Object input) {
+				return null;
+			}
+		};
+		CSMicroarraySetView<DSGeneMarker, DSMicroarray> view = new CSMicroarraySetView<DSGeneMarker, DSMicroarray>(
+				set);
+		ProvenanceStep first = analysis.createHistoryStep("Analysis", view);
+		ProvenanceStep second = analysis.createHistoryStep("Analysis", view);
+		assertEquals(analysis.generateHistoryForMaSetView(view), first
+				.getDetail());
+		// the marker listing is made once, not written out for every step
+		assertEquals(1, first.getSelections().size());
+		assertSame(first.getSelections().get(0), second.getSelections()
+				.get(0));
+		assertEquals(MARKERS, first.getSelections().get(0).size());
+
+		CSMicroarraySet other = new CSMicroarraySet();
+		HistoryPanel.addStep(set, first);
+		HistoryPanel.addStep(other, second);
+		assertEquals(HistoryPanel.getHistory(set), HistoryPanel
+				.getHistory(other));
+		assertEquals("Analysis\n" + first.getDetail() + "\n", HistoryPanel
+				.getHistory(set));
+	}
+
+	public void testRepeatedSelectionsAreShared() throws Exception {
+		AbstractAnalysis analysis = new AbstractAnalysis() {
+			private static final long serialVersionUID = 1L;
+
+			public AlgorithmExecutionResults execute(Object input) {
+				return null;
+			}
+		};
+		CSMicroarraySetView<DSGeneMarker, DSMicroarray> view = new CSMicroarraySetView<DSGeneMarker, DSMicroarray>(
+				set);
+		String text = analysis.generateHistoryForMaSetView(view);
+		assertTrue(text.startsWith("=The MicroarraySetView used for analysis: \n"
+				+ "==Used Microarrays [3]==\n\tarray 0\n\tarray 1\n\tarray 2\n"
+				+ "==End of Microarray Sets==\n==Used Markers [20000]==\n"
+				+ "\t0_at\n"));
+		assertTrue(text.endsWith("\t19999_at\n==End of Used Markers==\n"
+				+ "=End of MicroarraySetView data="));
+
+		int runs = 10;
+		for (int i = 0; i < runs; i++) {
+			HistoryPanel.addToHistory(set, "Analysis " + i + "\n"
+					+ analysis.generateHistoryForMaSetView(view));
+		}
+		ProvenanceLog log = HistoryPanel.getProvenance(set);
+		ProvenanceStep first = log.getSteps().get(0);
+		assertEquals("Analysis 0\n" + text, first.getDescription());
+		// the three arrays are too few to be worth holding apart
+		List<SelectionRecord> selections = first.getSelections();
+		assertEquals(1, selections.size());
+		SelectionRecord markers = selections.get(0);
+		assertEquals(MARKERS, markers.size());
+		assertSame(markers, log.getSteps().get(runs - 1).getSelections()
+				.get(0));
+
+		// the full listing appears once, later steps refer back to it
+		String history = HistoryPanel.getHistory(set);
+		assertEquals(history, log.render());
+		assertEquals(1, count(history, "\t12345_at\n"));
+		assertEquals(runs - 1, count(history, HistoryText.SAME_AS_ABOVE));
+		assertEquals(runs, count(history, "==Used Markers [20000]==\n"));
+		assertEquals(runs, count(history, "\tarray 2\n"));
+		assertTrue(history.startsWith("Analysis 0\n" + text + "\n"));
+
+		// saved size grows with the steps, not with steps times markers
+		byte[] one = serialize(first);
+		byte[] all = serialize(log);
+		assertTrue(all.length < one.length + runs * 1000);
+		assertTrue(all.length < history.length() / 2);
+
+		Object read = new ObjectInputStream(new ByteArrayInputStream(all))
+				.readObject();
+		assertTrue(read instanceof byte[]);
+		ProvenanceLog log2 = ProvenanceLog.fromBytes((byte[]) read);
+		assertEquals(history, log2.render());
+		assertSame(log2.getSteps().get(1).getSelections().get(0), log2
+				.getSteps().get(3).getSelections().get(0));
+	}
+
+	public void testEqualListingsOnly() {
+		String listing = "\ta\n\tb\n\tc\n\td\n\te\n\tf\n\tg\n\th\n";
+		ProvenanceLog log = new ProvenanceLog();
+		log.add(ProvenanceStep.text("one\n" + listing + "end", 0));
+		log.add(ProvenanceStep.text("two\n" + listing + "end", 0));
+		log.add(ProvenanceStep.text("three\n" + listing.replace('h', 'i')
+				+ "end", 0));
+		// too short to be held apart
+		log.add(ProvenanceStep.text("four\n\ta\n", 0));
+		List<ProvenanceStep> steps = log.getSteps();
+		assertSame(steps.get(0).getSelections().get(0), steps.get(1)
+				.getSelections().get(0));
+		assertFalse(steps.get(0).getSelections().get(0).equals(
+				steps.get(2).getSelections().get(0)));
+		assertTrue(steps.get(3).getSelections().isEmpty());
+		assertEquals("three\n" + listing.replace('h', 'i') + "end", steps
+				.get(2).getDescription());
+		assertEquals("one\n" + listing + "end\ntwo\n"
+				+ HistoryText.SAME_AS_ABOVE + "end\nthree\n"
+				+ listing.replace('h', 'i') + "end\nfour\n\ta\n\n", log
+				.render());
+	}
+
+	public void testSavedDataSetReadWithoutProvenance() throws Exception {
+		CSMicroarraySet small = new CSMicroarraySet();
+		HistoryPanel.addToHistory(small, "Data file:  a.exp");
+		HistoryPanel.addStep(small, new ProvenanceStep("Filtered with",
+				getClass().getName(), "Deviation filter", null, null, 0));
+		CSMicroarraySet read = (CSMicroarraySet) new ObjectInputStream(
+				new ByteArrayInputStream(serialize(small))).readObject();
+		assertNull(read.getValuesForName(HistoryPanel.HISTORY));
+		assertTrue(read.getValuesForName(HistoryPanel.PROVENANCE)[0] instanceof byte[]);
+		assertEquals("Data file:  a.exp\nFiltered with Deviation filter\n",
+				HistoryPanel.getHistory(read));
+
+		// history text added by an older version is carried over
+		read.addNameValuePair(HistoryPanel.HISTORY,
+				"Data file:  a.exp\nFiltered with Deviation filter\n"
+						+ "Normalized elsewhere\n");
+		ProvenanceLog log = HistoryPanel.getProvenance(read);
+		assertEquals(3, log.size());
+		assertEquals("Filtered with", log.getSteps().get(1).getAction());
+		assertEquals("Normalized elsewhere", log.getSteps().get(2)
+				.getDescription());
+		assertEquals(HistoryPanel.getHistory(read), log.render());
+	}
+
+	private static byte[] serialize(Object o) throws Exception {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		ObjectOutputStream out = new ObjectOutputStream(bytes);
+		out.writeObject(o);
+		out.close();
+		return bytes.toByteArray();
+	}
+
+	private static int count(String text, String part) {
+		int n = 0;
+		for (int i = text.indexOf(part); i >= 0; i = text.indexOf(part, i + 1)) {
+			n++;
+		}
+		return n;
+	}
+
+}
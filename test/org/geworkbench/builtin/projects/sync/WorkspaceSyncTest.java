@@ -0,0 +1,223 @@
+package org.geworkbench.builtin.projects.sync;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+/**
+ * @version $Id$
+ */
+public class WorkspaceSyncTest extends TestCase {
+
+	private static final int SIZE = 6 << 20;
+
+	private File directory;
+	private FileChunkStore store;
+	private byte[] content;
+
+	public WorkspaceSyncTest(String name) {
+		super(name);
+	}
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		directory = File.createTempFile("sync", "");
+		directory.delete();
+		directory.mkdirs();
+		store = new FileChunkStore(new File(directory, "server"));
+		// compressible but not repetitive, like a serialized workspace
+		Random random = new Random(29);
+		content = new byte[SIZE];
+		for (int i = 0; i < SIZE; i++) {
+			content[i] = (byte) ('a' + random.nextInt(12));
+		}
+	}
+
+	protected void tearDown() throws Exception {
+		delete(directory);
+		super.tearDown();
+	}
+
+	public void testBoundariesFollowContent() throws IOException {
+		ChunkManifest before = manifest(content);
+		assertEquals(SIZE, before.getLength());
+		assertTrue(before.size() > SIZE / Chunker.MAX_CHUNK);
+		for (int i = 0; i < before.size() - 1; i++) {
+			assertTrue(before.getLength(i) > Chunker.MIN_CHUNK);
+			assertTrue(before.getLength(i) <= Chunker.MAX_CHUNK);
+		}
+
+		// an insertion near the start only touches the chunks around it
+		byte[] edited = insert(content, 1000, "annotation".getBytes());
+		ChunkManifest after = manifest(edited);
+		int shared = 0;
+		for (String id : after.getIds()) {
+			if (before.getIds().contains(id)) {
+				shared++;
+			}
+		}
+		assertTrue(shared >= after.size() - 2);
+
+		ByteArrayOutputStream text = new ByteArrayOutputStream();
+		after.write(text);
+		ChunkManifest copy = ChunkManifest.read(new ByteArrayInputStream(text
+				.toByteArray()));
+		assertEquals(after.getIds(), copy.getIds());
+		assertEquals(after.getLength(), copy.getLength());
+		assertEquals(after.getOffset(5), copy.getOffset(5));
+	}
+
+	public void testSmallEditSendsFewChunks() throws IOException {
+		File workspace = write("local.wsp", content);
+		WorkspaceSync sync = new WorkspaceSync(store);
+		assertEquals(SIZE, sync.upload(workspace, "42"));
+		assertEquals(0, sync.upload(workspace, "42"));
+
+		byte[] edited = insert(content, SIZE / 2, "new annotation".getBytes());
+		write("local.wsp", edited);
+		long sent = sync.upload(workspace, "42");
+		assertTrue(sent > 0);
+		assertTrue("sent " + sent, sent <= 3 * Chunker.MAX_CHUNK);
+
+		// a stale copy elsewhere fetches only the difference
+		File other = write("other.wsp", content);
+		long fetched = sync.download("42", other);
+		assertTrue("fetched " + fetched, fetched <= 3 * Chunker.MAX_CHUNK);
+		assertTrue(Arrays.equals(edited, read(other)));
+		assertFalse(new File(other.getPath() + ".part").exists());
+
+		// a fresh copy fetches everything
+		File fresh = new File(directory, "fresh.wsp");
+		assertEquals(edited.length, sync.download("42", fresh));
+		assertTrue(Arrays.equals(edited, read(fresh)));
+	}
+
+	public void testInterruptedUploadResumes() throws IOException {
+		File workspace = write("local.wsp", content);
+		final AtomicInteger budget = new AtomicInteger(10);
+		ChunkStore failing = new FileChunkStore(new File(directory, "server")) {
+			public void putChunk(String id, byte[] data, int offset,
+					int length) throws IOException {
+				if (budget.decrementAndGet() < 0) {
+					throw new IOException("connection reset");
+				}
+				super.putChunk(id, data, offset, length);
+			}
+		};
+		try {
+			new WorkspaceSync(failing, 1).upload(workspace, "7");
+			fail();
+		} catch (IOException e) {
+			assertEquals("connection reset", e.getMessage());
+		}
+		assertNull(store.getManifest("7"));
+
+		long sent = new WorkspaceSync(store).upload(workspace, "7");
+		assertTrue(sent > 0 && sent < SIZE);
+		assertEquals(SIZE, store.getManifest("7").getLength());
+	}
+
+	public void testInterruptedDownloadResumes() throws IOException {
+		File workspace = write("local.wsp", content);
+		WorkspaceSync sync = new WorkspaceSync(store);
+		sync.upload(workspace, "9");
+		ChunkManifest manifest = store.getManifest("9");
+
+		// half of the chunks already made it into the partial file
+		File target = new File(directory, "target.wsp");
+		int half = manifest.size() / 2;
+		write("target.wsp.part", Arrays.copyOf(content, (int) manifest
+				.getOffset(half)));
+		long fetched = sync.download("9", target);
+		assertEquals(SIZE - manifest.getOffset(half), fetched);
+		assertTrue(Arrays.equals(content, read(target)));
+	}
+
+	public void testCorruptChunkIsRejected() throws IOException {
+		File workspace = write("local.wsp", content);
+		WorkspaceSync sync = new WorkspaceSync(store);
+		sync.upload(workspace, "3");
+		String id = store.getManifest("3").getId(1);
+		RandomAccessFile chunk = new RandomAccessFile(store.chunkFile(id),
+				"rw");
+		chunk.seek(100);
+		chunk.write('!');
+		chunk.close();
+
+		File target = new File(directory, "target.wsp");
+		try {
+			sync.download("3", target);
+			fail();
+		} catch (IOException e) {
+			assertTrue(e.getMessage().indexOf("corrupt") >= 0);
+		}
+		assertFalse(target.exists());
+
+		try {
+			store.putChunk(id, new byte[10], 0, 10);
+			fail();
+		} catch (IOException e) {
+			// content does not match the id
+		}
+	}
+
+	private static ChunkManifest manifest(byte[] data) throws IOException {
+		final ChunkManifest manifest = new ChunkManifest();
+		Chunker.split(new ByteArrayInputStream(data), new Chunker.Sink() {
+			public void chunk(String id, byte[] bytes, int offset, int length) {
+				manifest.add(id, length);
+			}
+		});
+		return manifest;
+	}
+
+	private static byte[] insert(byte[] data, int at, byte[] inserted) {
+		byte[] result = new byte[data.length + inserted.length];
+		System.arraycopy(data, 0, result, 0, at);
+		System.arraycopy(inserted, 0, result, at, inserted.length);
+		System.arraycopy(data, at, result, at + inserted.length, data.length
+				- at);
+		return result;
+	}
+
+	private File write(String name, byte[] data) throws IOException {
+		File file = new File(directory, name);
+		FileOutputStream out = new FileOutputStream(file);
+		try {
+			out.write(data);
+		} finally {
+			out.close();
+		}
+		return file;
+	}
+
+	private static byte[] read(File file) throws IOException {
+		RandomAccessFile in = new RandomAccessFile(file, "r");
+		try {
+			byte[] data = new byte[(int) in.length()];
+			in.readFully(data);
+			return data;
+		} finally {
+			in.close();
+		}
+	}
+
+	private static void delete(File file) {
+		File[] children = file.listFiles();
+		if (children != null) {
+			for (File child : children) {
+				delete(child);
+			}
+		}
+		file.delete();
+	}
+
+}
@@ -0,0 +1,55 @@
+package org.geworkbench.engine.management;
+
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+/**
+ * @version $Id$
+ */
+public class ComponentRegistryTest extends TestCase {
+
+	/* stand-ins for data types and the components accepting them */
+	private static class Base {
+	}
+
+	private static class Derived extends Base {
+	}
+
+	private static class BaseViewer {
+	}
+
+	private static class DerivedViewer {
+	}
+
+	public ComponentRegistryTest(String name) {
+		super(name);
+	}
+
+	public void testResolvedAcceptorsFollowChanges() {
+		ComponentRegistry registry = ComponentRegistry.getRegistry();
+		registry.addAcceptor(Base.class, BaseViewer.class);
+		registry.addAcceptor(Derived.class, DerivedViewer.class);
+
+		Set<Class<?>> acceptors = registry.getAcceptors(Derived.class);
+		assertTrue(acceptors.contains(BaseViewer.class));
+		assertTrue(acceptors.contains(DerivedViewer.class));
+		assertFalse(registry.getAcceptors(Base.class).contains(
+				DerivedViewer.class));
+
+		// callers get their own copy
+		acceptors.clear();
+		assertEquals(2, registry.getAcceptors(Derived.class).size());
+
+		int version = registry.getAcceptorsVersion();
+		registry.removeAcceptor(Base.class, BaseViewer.class.getName());
+		assertTrue(registry.getAcceptorsVersion() != version);
+		acceptors = registry.getAcceptors(Derived.class);
+		assertFalse(acceptors.contains(BaseViewer.class));
+		assertTrue(acceptors.contains(DerivedViewer.class));
+
+		registry.removeComponent(DerivedViewer.class.getName());
+		assertTrue(registry.getAcceptors(Derived.class).isEmpty());
+	}
+
+}
@@ -0,0 +1,152 @@
+package org.geworkbench.engine.properties;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+import junit.framework.TestCase;
+
+/**
+ * @version $Id$
+ */
+public class SettingsStoreTest extends TestCase {
+
+	private File directory;
+
+	public SettingsStoreTest(String name) {
+		super(name);
+	}
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		directory = File.createTempFile("settings", "");
+		directory.delete();
+		directory.mkdirs();
+	}
+
+	protected void tearDown() throws Exception {
+		SettingsWriter.flushAll();
+		for (File file : directory.listFiles()) {
+			file.delete();
+		}
+		directory.delete();
+		super.tearDown();
+	}
+
+	public void testReadsExistingFileOnce() throws IOException {
+		File file = new File(directory, "component.xml");
+		Properties properties = new Properties();
+		properties.setProperty("threshold", "0.05");
+		SettingsWriter.write(file, toXml(properties));
+
+		SettingsStore store = SettingsStore.forFile(file, true);
+		assertSame(store, SettingsStore.forFile(new File(directory,
+				"./component.xml"), true));
+		assertEquals("0.05", store.get("threshold", null));
+		assertEquals("x", store.get("missing", "x"));
+
+		// later reads come from memory
+		file.delete();
+		assertEquals("0.05", store.get("threshold", null));
+	}
+
+	public void testChangesAreWrittenBehind() throws Exception {
+		File file = new File(directory, "behind.xml");
+		SettingsStore store = SettingsStore.forFile(file, true);
+		for (int i = 0; i < 1000; i++) {
+			store.set("counter", "" + i);
+		}
+		assertEquals("999", store.get("counter", null));
+		for (int wait = 0; wait < 100 && !file.exists(); wait++) {
+			Thread.sleep(50);
+		}
+		assertEquals("999", read(file, true).getProperty("counter"));
+		assertFalse(new File(directory, "behind.xml.tmp").exists());
+
+		store.set("counter", null);
+		store.flush();
+		assertNull(read(file, true).getProperty("counter"));
+	}
+
+	public void testListenersAndPlainFormat() throws IOException {
+		File file = new File(directory, "soap.ini");
+		SettingsStore store = SettingsStore.forFile(file, false);
+		final List<String> changes = new ArrayList<String>();
+		SettingsStore.Listener listener = new SettingsStore.Listener() {
+			public void settingChanged(SettingsStore s, String key,
+					String oldValue, String newValue) {
+				changes.add(key + ":" + oldValue + "->" + newValue);
+			}
+		};
+		store.addListener(listener);
+		store.set("port", "8001");
+		store.set("port", "8001");
+		store.set("port", "8002");
+		store.set("host", null);
+		store.removeListener(listener);
+		store.set("host", "localhost");
+		assertEquals(2, changes.size());
+		assertEquals("port:null->8001", changes.get(0));
+		assertEquals("port:8001->8002", changes.get(1));
+
+		store.flush();
+		Properties written = read(file, false);
+		assertEquals("8002", written.getProperty("port"));
+		assertEquals("localhost", written.getProperty("host"));
+	}
+
+	public void testConcurrentWriters() throws Exception {
+		File file = new File(directory, "shared.xml");
+		final SettingsStore store = SettingsStore.forFile(file, true);
+		Thread[] threads = new Thread[4];
+		for (int t = 0; t < threads.length; t++) {
+			final int id = t;
+			threads[t] = new Thread() {
+				public void run() {
+					try {
+						for (int i = 0; i < 500; i++) {
+							store.set(id + "." + i, "" + i);
+							store.get(id + "." + (i / 2), null);
+						}
+					} catch (IOException e) {
+						fail(e.toString());
+					}
+				}
+			};
+			threads[t].start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		store.flush();
+		Properties written = read(file, true);
+		assertEquals(2000, written.size());
+		assertEquals("499", written.getProperty("3.499"));
+	}
+
+	private static byte[] toXml(Properties properties) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		properties.storeToXML(bytes, null);
+		return bytes.toByteArray();
+	}
+
+	private static Properties read(File file, boolean xml) throws IOException {
+		Properties properties = new Properties();
+		FileInputStream in = new FileInputStream(file);
+		try {
+			if (xml) {
+				properties.loadFromXML(in);
+			} else {
+				properties.load(in);
+			}
+		} finally {
+			in.close();
+		}
+		return properties;
+	}
+
+}
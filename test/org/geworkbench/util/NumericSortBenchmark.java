@@ -0,0 +1,88 @@
+package org.geworkbench.util;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Random;
+
+import org.geworkbench.util.NumericSort.NaNPolicy;
+import org.geworkbench.util.NumericSort.TieMethod;
+
+/**
+ * Rough timing of {@link NumericSort} against the boxed-comparator argsort it
+ * replaces. Run with the array size as the only (optional) argument.
+ *
+ * @version $Id$
+ */
+public class NumericSortBenchmark {
+
+	public static void main(String[] args) {
+		int n = args.length > 0 ? Integer.parseInt(args[0]) : 2000000;
+		Random random = new Random(26);
+		final double[] randomData = new double[n];
+		double[] sortedData = new double[n];
+		double[] tiedData = new double[n];
+		for (int i = 0; i < n; i++) {
+			randomData[i] = random.nextGaussian();
+			sortedData[i] = i;
+			tiedData[i] = random.nextInt(10);
+		}
+
+		for (int round = 0; round < 3; round++) {
+			System.out.println("round " + round + ", n = " + n);
+			time("boxed comparator argsort", new Runnable() {
+				public void run() {
+					Integer[] index = new Integer[randomData.length];
+					for (int i = 0; i < index.length; i++) {
+						index[i] = i;
+					}
+					Arrays.sort(index, new Comparator<Integer>() {
+						public int compare(Integer o1, Integer o2) {
+							return Double.compare(randomData[o1], randomData[o2]);
+						}
+					});
+				}
+			});
+			timeArgsort("random", randomData);
+			timeArgsort("sorted", sortedData);
+			timeArgsort("ten distinct values", tiedData);
+			final double[] data = randomData;
+			time("parallel rank (average)", new Runnable() {
+				public void run() {
+					NumericSort.parallelRank(data, TieMethod.AVERAGE,
+							NaNPolicy.OMIT);
+				}
+			});
+			time("top 100", new Runnable() {
+				public void run() {
+					NumericSort.topK(data, 100, true);
+				}
+			});
+		}
+	}
+
+	private static void timeArgsort(String label, final double[] data) {
+		time("argsort " + label, new Runnable() {
+			public void run() {
+				NumericSort.argsort(data, true, NaNPolicy.LAST);
+			}
+		});
+		time("parallel argsort " + label, new Runnable() {
+			public void run() {
+				NumericSort.parallelArgsort(data, true, NaNPolicy.LAST);
+			}
+		});
+		time("QSort " + label, new Runnable() {
+			public void run() {
+				new QSort(data).getOrigIndx();
+			}
+		});
+	}
+
+	private static void time(String label, Runnable r) {
+		long start = System.nanoTime();
+		r.run();
+		System.out.println(String.format("  %-40s %8.1f ms", label,
+				(System.nanoTime() - start) / 1e6));
+	}
+
+}
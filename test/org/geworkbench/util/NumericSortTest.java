@@ -0,0 +1,98 @@
+package org.geworkbench.util;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import org.geworkbench.util.NumericSort.NaNPolicy;
+import org.geworkbench.util.NumericSort.TieMethod;
+
+/**
+ * @version $Id$
+ */
+public class NumericSortTest extends TestCase {
+
+	private static final double NaN = Double.NaN;
+
+	public NumericSortTest(String name) {
+		super(name);
+	}
+
+	public void testArgsortIsStable() {
+		double[] a = { 3, 1, 2, 1, 3, 1 };
+		assertTrue(Arrays.equals(new int[] { 1, 3, 5, 2, 0, 4 },
+				NumericSort.argsort(a, true, NaNPolicy.LAST)));
+		assertTrue(Arrays.equals(new int[] { 0, 4, 2, 1, 3, 5 },
+				NumericSort.argsort(a, false, NaNPolicy.LAST)));
+	}
+
+	public void testNaNPolicy() {
+		double[] a = { 2, NaN, 1, NaN, 0 };
+		assertTrue(Arrays.equals(new int[] { 1, 3, 4, 2, 0 },
+				NumericSort.argsort(a, true, NaNPolicy.FIRST)));
+		assertTrue(Arrays.equals(new int[] { 4, 2, 0, 1, 3 },
+				NumericSort.argsort(a, true, NaNPolicy.LAST)));
+		assertTrue(Arrays.equals(new int[] { 4, 2, 0 },
+				NumericSort.argsort(a, true, NaNPolicy.OMIT)));
+	}
+
+	public void testRank() {
+		double[] a = { 10, 20, 20, 5, NaN, 20 };
+		assertTrue(Arrays.equals(new double[] { 2, 4, 4, 1, NaN, 4 },
+				NumericSort.rank(a, TieMethod.AVERAGE, NaNPolicy.OMIT)));
+		assertTrue(Arrays.equals(new double[] { 2, 3, 3, 1, NaN, 3 },
+				NumericSort.rank(a, TieMethod.MIN, NaNPolicy.OMIT)));
+		assertTrue(Arrays.equals(new double[] { 2, 3, 3, 1, NaN, 3 },
+				NumericSort.rank(a, TieMethod.DENSE, NaNPolicy.OMIT)));
+		assertTrue(Arrays.equals(new double[] { 3, 4, 5, 2, 1, 6 },
+				NumericSort.rank(a, TieMethod.ORDINAL, NaNPolicy.FIRST)));
+	}
+
+	public void testTopK() {
+		double[] a = { 5, NaN, 9, 1, 9, 7, 3 };
+		assertTrue(Arrays.equals(new int[] { 2, 4, 5 },
+				NumericSort.topK(a, 3, true)));
+		assertTrue(Arrays.equals(new int[] { 3, 6 },
+				NumericSort.topK(a, 2, false)));
+		assertEquals(6, NumericSort.topK(a, 10, true).length);
+	}
+
+	public void testParallelMatchesSerial() {
+		Random random = new Random(26);
+		double[] a = new double[NumericSort.PARALLEL_THRESHOLD * 5 + 17];
+		for (int i = 0; i < a.length; i++) {
+			// few distinct values so that stability matters
+			a[i] = i % 97 == 0 ? NaN : random.nextInt(1000);
+		}
+		assertTrue(Arrays.equals(NumericSort.argsort(a, false, NaNPolicy.LAST),
+				NumericSort.parallelArgsort(a, false, NaNPolicy.LAST)));
+		assertTrue(Arrays.equals(NumericSort.rank(a, TieMethod.AVERAGE,
+				NaNPolicy.OMIT), NumericSort.parallelRank(a, TieMethod.AVERAGE,
+				NaNPolicy.OMIT)));
+
+		int[] order = NumericSort.parallelArgsort(a, true, NaNPolicy.OMIT);
+		for (int i = 1; i < order.length; i++) {
+			assertTrue(a[order[i - 1]] < a[order[i]]
+					|| (a[order[i - 1]] == a[order[i]] && order[i - 1] < order[i]));
+		}
+	}
+
+	public void testQSortCompatibility() {
+		double[] a = { 120d, 0.01d, NaN, -65d, Double.NEGATIVE_INFINITY, 3.5d,
+				NaN, Double.NEGATIVE_INFINITY };
+		QSort sort = new QSort(a, QSort.ASCENDING);
+		assertTrue(Arrays.equals(new int[] { 2, 6, 4, 7, 3, 1, 5, 0 },
+				sort.getOrigIndx()));
+		double[] sorted = sort.getSortedDouble();
+		assertTrue(Double.isNaN(sorted[0]) && Double.isNaN(sorted[1]));
+		assertEquals(120d, sorted[7], 0);
+
+		QSort descending = new QSort(new float[] { 1f, 3f, 2f },
+				QSort.DESCENDING);
+		assertTrue(Arrays.equals(new int[] { 1, 2, 0 }, descending.getOrigIndx()));
+		assertTrue(Arrays.equals(new float[] { 3f, 2f, 1f },
+				descending.getSorted()));
+	}
+
+}
@@ -0,0 +1,100 @@
+package org.geworkbench.util;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.math.BigDecimal;
+import java.util.Random;
+
+/**
+ * Rough timing of decoding an interactions result with {@link ResultSetlUtil}
+ * against the readLine, split and trim it did before. Run with the number of
+ * rows as the only (optional) argument.
+ *
+ * @version $Id$
+ */
+public class ResultSetlUtilBenchmark {
+
+	public static void main(String[] args) throws IOException {
+		int n = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+		Random random = new Random(42);
+		StringBuilder text = new StringBuilder(
+				"ms_id1|ms_id2|confidence_value|interaction_type|short_name\n");
+		for (int i = 0; i < n; i++) {
+			text.append(random.nextInt(100000)).append('|').append(
+					random.nextInt(100000)).append('|').append(
+					random.nextInt(10) == 0 ? "null" : Double.toString(Math
+							.round(random.nextDouble() * 1e4) / 1e4)).append(
+					"|protein-protein|G").append(i).append('\n');
+		}
+		final byte[] data = text.toString().getBytes();
+
+		for (int round = 0; round < 3; round++) {
+			System.out.println("round " + round + ", rows = " + n);
+			time("split and parse", new Task() {
+				public void run() throws IOException {
+					BufferedReader in = new BufferedReader(
+							new InputStreamReader(new ByteArrayInputStream(data)));
+					in.readLine();
+					double sum = 0;
+					String line;
+					while ((line = in.readLine()) != null) {
+						String[] row = line.split(ResultSetlUtil.REGEX_DEL,
+								ResultSetlUtil.SPLIT_ALL);
+						String id = row[0].trim();
+						BigDecimal msid = id.equals(ResultSetlUtil.NULL_STR) ? ResultSetlUtil.NULL_BIGDECIMAL
+								: new BigDecimal(id);
+						String c = row[2].trim();
+						sum += msid.intValue()
+								+ (c.equals(ResultSetlUtil.NULL_STR) ? 0
+										: Double.valueOf(c));
+					}
+					consume(sum);
+				}
+			});
+			time("row decoder", new Task() {
+				public void run() throws IOException {
+					ResultSetlUtil rs = new ResultSetlUtil(
+							new ByteArrayInputStream(data));
+					double sum = 0;
+					while (rs.next()) {
+						sum += rs.getBigDecimal(1).intValue() + rs.getDouble(3);
+					}
+					consume(sum);
+				}
+			});
+			time("typed columns", new Task() {
+				public void run() throws IOException {
+					ResultTable table = new ResultSetlUtil(
+							new ByteArrayInputStream(data)).readTable();
+					double[] confidence = table.getDoubles("confidence_value");
+					BigDecimal[] ids = table.getBigDecimals("ms_id1");
+					double sum = 0;
+					for (int i = 0; i < confidence.length; i++) {
+						sum += ids[i].intValue() + confidence[i];
+					}
+					consume(sum);
+				}
+			});
+		}
+	}
+
+	private interface Task {
+		void run() throws IOException;
+	}
+
+	private static void consume(double sum) {
+		if (sum == 42) {
+			System.out.println();
+		}
+	}
+
+	private static void time(String label, Task task) throws IOException {
+		long start = System.nanoTime();
+		task.run();
+		System.out.println(String.format("  %-40s %8.1f ms", label,
+				(System.nanoTime() - start) / 1e6));
+	}
+
+}
@@ -0,0 +1,293 @@
+package org.geworkbench.util;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.StringReader;
+import java.math.BigDecimal;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Checks the byte decoder against the String splitting it replaced, and the
+ * response cache and batched queries against an embedded HTTP server that
+ * stands in for the interactions servlet.
+ *
+ * @version $Id$
+ */
+public class ResultSetlUtilTest extends TestCase {
+
+	private static final String HEADER = "ms_id1|ms_id2|confidence_value|interaction_type|short_name\n";
+
+	private HttpServer server;
+	private String url;
+	private final AtomicInteger requests = new AtomicInteger();
+	private File directory;
+
+	public ResultSetlUtilTest(String name) {
+		super(name);
+	}
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		server.createContext("/InteractionsServlet", new HttpHandler() {
+			public void handle(HttpExchange exchange) throws IOException {
+				requests.incrementAndGet();
+				String query = new String(read(exchange.getRequestBody()),
+						"UTF-8");
+				String[] params = query.split("\\|");
+				int code = 200;
+				byte[] body;
+				if (exchange.getRequestHeaders().containsKey("Authorization")) {
+					code = 401;
+					body = new byte[0];
+				} else if (!params[0].equals("getInteractionsByEntrezIdOrGeneSymbol")) {
+					code = 400;
+					body = new byte[0];
+				} else {
+					body = interactions(Integer.parseInt(params[1])).getBytes(
+							"UTF-8");
+				}
+				exchange.sendResponseHeaders(code, body.length == 0 ? -1
+						: body.length);
+				OutputStream out = exchange.getResponseBody();
+				out.write(body);
+				out.close();
+			}
+		});
+		server.start();
+		url = "http://127.0.0.1:" + server.getAddress().getPort()
+				+ "/InteractionsServlet";
+		directory = File.createTempFile("responses", "");
+		directory.delete();
+	}
+
+	protected void tearDown() throws Exception {
+		ResultSetlUtil.setResponseCache(null);
+		server.stop(0);
+		File[] files = directory.listFiles();
+		if (files != null) {
+			for (File file : files) {
+				file.delete();
+			}
+		}
+		directory.delete();
+		super.tearDown();
+	}
+
+	public void testDecodesLikeSplit() throws IOException {
+		String text = HEADER + "1|2| 0.75 |protein-protein|ABC\r\n"
+				+ "null|-3|null|  |\n" + "+4|0005|1e-3|protein-dna|x y\r"
+				+ "-0|12345678901234567890|-0.000|modification|e\n"
+				+ "7|8|.5|a|b|extra|\n" + "\n" + "9|9|9|after|blank\n";
+		ResultSetlUtil rs = new ResultSetlUtil(new ByteArrayInputStream(text
+				.getBytes(DelimitedRowDecoder.CHARSET)));
+		BufferedReader lines = new BufferedReader(new StringReader(text));
+		assertEquals(HEADER.trim(), lines.readLine());
+		assertEquals(3, rs.getColumNum("confidence_value"));
+		int rows = 0;
+		while (rs.next()) {
+			String[] row = lines.readLine().split(ResultSetlUtil.REGEX_DEL,
+					ResultSetlUtil.SPLIT_ALL);
+			for (int c = 0; c < row.length; c++) {
+				assertEquals(row[c], rs.getString(c + 1));
+			}
+			assertEquals(legacyBigDecimal(row[0]), rs.getBigDecimal("ms_id1"));
+			assertEquals(legacyBigDecimal(row[1]), rs.getBigDecimal(2));
+			assertEquals(legacyDouble(row[2]), rs.getDouble("confidence_value"));
+			assertEquals(legacyDouble(row[0]), rs.getDouble(1));
+			rows++;
+		}
+		assertEquals(5, rows);
+		assertNull(rs.getString("no_such_column"));
+
+		// the Reader constructor still works the same way
+		rs = new ResultSetlUtil(new BufferedReader(new StringReader(text)));
+		assertTrue(rs.next());
+		assertEquals(" 0.75 ", rs.getString("confidence_value"));
+	}
+
+	public void testNumbersMatchStringParsing() {
+		Random random = new Random(3);
+		for (int i = 0; i < 20000; i++) {
+			String s;
+			switch (i % 4) {
+			case 0:
+				s = Double.toString(random.nextGaussian()
+						* Math.pow(10, random.nextInt(20) - 10));
+				break;
+			case 1:
+				s = String.format(Locale.US, "%." + random.nextInt(12) + "f", random
+						.nextDouble()
+						* 1000 - 500);
+				break;
+			case 2:
+				s = Long.toString(random.nextLong() >> random.nextInt(63));
+				break;
+			default:
+				s = "0." + Math.abs(random.nextLong()) + "1";
+			}
+			byte[] b = (" " + s + "\t").getBytes();
+			assertEquals(s, legacyDouble(s), DelimitedRowDecoder.parseDouble(b,
+					0, b.length));
+			assertEquals(s, legacyBigDecimal(s), DelimitedRowDecoder
+					.parseBigDecimal(b, 0, b.length));
+		}
+	}
+
+	public void testTableColumns() throws IOException {
+		ResultSetlUtil rs = new ResultSetlUtil(new ByteArrayInputStream(
+				interactions(42).getBytes("UTF-8")));
+		ResultTable table = rs.readTable();
+		assertEquals(42, table.getRowCount());
+		assertEquals(4, table.getColumnIndex("short_name"));
+		double[] confidence = table.getDoubles("confidence_value");
+		BigDecimal[] ids = table.getBigDecimals("ms_id2");
+		String[] names = table.getStrings("short_name");
+		for (int r = 0; r < 42; r++) {
+			assertEquals(r % 5 == 0 ? 0 : r / 100.0, confidence[r]);
+			assertEquals(new BigDecimal(1000 + r), ids[r]);
+			assertEquals("G" + r, names[r]);
+			assertEquals("G" + r, table.getString(r, "short_name"));
+		}
+		assertNull(table.getStrings("unknown"));
+	}
+
+	public void testCacheAnswersRepeatedQueries() throws Exception {
+		ResponseCache cache = new ResponseCache(directory, 60000, 1 << 20);
+		ResultSetlUtil.setResponseCache(cache);
+		String query = "getInteractionsByEntrezIdOrGeneSymbol|10|geneName|HGi|1.0";
+		assertEquals(10, ResultSetlUtil.executeQuery(query, url).readTable()
+				.getRowCount());
+		assertEquals(10, ResultSetlUtil.executeQuery(query, url).readTable()
+				.getRowCount());
+		assertEquals(1, requests.get());
+
+		// a later session finds the entry on disk
+		ResultSetlUtil.setResponseCache(new ResponseCache(directory, 60000,
+				1 << 20));
+		ResultSetlUtil rs = ResultSetlUtil.executeQuery(query, url);
+		assertTrue(rs.next());
+		assertEquals("G0", rs.getString("short_name"));
+		assertEquals(1, requests.get());
+
+		// expired entries are fetched again
+		ResultSetlUtil.setResponseCache(new ResponseCache(directory, 0,
+				1 << 20));
+		ResultSetlUtil.executeQuery(query, url).readTable();
+		assertEquals(2, requests.get());
+
+		// errors are not cached
+		try {
+			ResultSetlUtil.executeQuery("unknownMethod|1", url);
+			fail();
+		} catch (IOException e) {
+			assertTrue(e.getMessage().indexOf("400") >= 0);
+		}
+		try {
+			ResultSetlUtil.executeQueryWithUserInfo(query, url, "user:pw");
+			fail();
+		} catch (UnAuthenticatedException e) {
+			// the stand-in rejects every user
+		}
+	}
+
+	public void testCacheStaysWithinSizeLimit() {
+		ResponseCache cache = new ResponseCache(directory, 60000, 10000);
+		byte[] data = new byte[3000];
+		for (int i = 0; i < 10; i++) {
+			cache.put("k" + i, data);
+			// keep the first entry in use
+			assertNotNull(cache.get("k0"));
+		}
+		assertTrue(cache.size() <= 10000);
+		assertNotNull(cache.get("k0"));
+		assertNotNull(cache.get("k9"));
+		assertNull(cache.get("k5"));
+		assertNull(cache.get("k1"));
+		cache.clear();
+		assertEquals(0, cache.size());
+		assertNull(cache.get("k0"));
+	}
+
+	public void testBatchedQueries() throws Exception {
+		ResultSetlUtil.setResponseCache(new ResponseCache(directory, 60000,
+				1 << 20));
+		List<String> queries = new ArrayList<String>();
+		for (int gene = 0; gene < 200; gene++) {
+			queries.add("getInteractionsByEntrezIdOrGeneSymbol|" + (gene % 50)
+					+ "|geneName|HGi|1.0");
+		}
+		List<ResultTable> tables = ResultSetlUtil.executeQueries(queries, url,
+				null, 4);
+		assertEquals(200, tables.size());
+		for (int gene = 0; gene < 200; gene++) {
+			ResultTable table = tables.get(gene);
+			assertEquals(gene % 50, table.getRowCount());
+			if (table.getRowCount() > 0) {
+				assertEquals("G0", table.getString(0, "short_name"));
+			}
+		}
+		// repeats that arrive while the first copy is in flight may still
+		// reach the server, but most are answered from the cache
+		assertTrue("requests " + requests.get(), requests.get() < 200);
+
+		queries.add("unknownMethod|1");
+		try {
+			ResultSetlUtil.executeQueries(queries, url, null, 4);
+			fail();
+		} catch (IOException e) {
+			assertTrue(e.getMessage().indexOf("400") >= 0);
+		}
+	}
+
+	/* n interactions; every fifth confidence is null */
+	private static String interactions(int n) {
+		StringBuilder text = new StringBuilder(HEADER);
+		for (int r = 0; r < n; r++) {
+			text.append(r).append('|').append(1000 + r).append('|').append(
+					r % 5 == 0 ? "null" : Double.toString(r / 100.0)).append(
+					"|protein-protein|G").append(r).append('\n');
+		}
+		return text.toString();
+	}
+
+	/* the conversions of the String based ResultSetlUtil */
+	private static double legacyDouble(String s) {
+		String tmp = s.trim();
+		return tmp.equals(ResultSetlUtil.NULL_STR) ? 0 : Double.valueOf(tmp)
+				.doubleValue();
+	}
+
+	private static BigDecimal legacyBigDecimal(String s) {
+		String tmp = s.trim();
+		return tmp.equals(ResultSetlUtil.NULL_STR) ? ResultSetlUtil.NULL_BIGDECIMAL
+				: new BigDecimal(tmp);
+	}
+
+	private static byte[] read(InputStream in) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		byte[] buffer = new byte[4096];
+		int n;
+		while ((n = in.read(buffer)) > 0) {
+			bytes.write(buffer, 0, n);
+		}
+		return bytes.toByteArray();
+	}
+
+}
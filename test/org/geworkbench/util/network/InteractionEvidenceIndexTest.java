@@ -0,0 +1,126 @@
+package org.geworkbench.util.network;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+/**
+ * Checks {@link InteractionEvidenceIndex} against the loops it replaces in
+ * {@link CellularNetWorkElementInformation}.
+ *
+ * @version $Id$
+ */
+public class InteractionEvidenceIndexTest extends TestCase {
+
+	private static final String[] TYPES = { "protein-protein",
+			"protein-dna", "modification" };
+	private static final short LIKELIHOOD = 1;
+	private static final short P_VALUE = 2;
+	private static final short ABSENT = 9;
+	private static final int BINS = CellularNetWorkElementInformation
+			.getBinNumber();
+
+	private InteractionDetail[] details;
+	private InteractionEvidenceIndex index;
+
+	public InteractionEvidenceIndexTest(String name) {
+		super(name);
+	}
+
+	/*
+	 * every tenth slot is null, every seventh interaction lacks the p-value;
+	 * scores repeat so that ties and bin edges are exercised
+	 */
+	protected void setUp() throws Exception {
+		super.setUp();
+		Random random = new Random(13);
+		details = new InteractionDetail[3000];
+		for (int i = 0; i < details.length; i++) {
+			if (i % 10 == 9) {
+				continue;
+			}
+			InteractionDetail detail = new InteractionDetail(
+					new InteractionParticipant("" + i, "G" + i, "Entrez Gene"),
+					TYPES[random.nextInt(TYPES.length)], (short) 1);
+			detail.addConfidence(random.nextInt(120) / 100.0, LIKELIHOOD);
+			if (i % 7 != 0) {
+				detail.addConfidence(random.nextDouble() * 2 - 0.2, P_VALUE);
+			}
+			details[i] = detail;
+		}
+		index = new InteractionEvidenceIndex(details);
+	}
+
+	public void testCounts() {
+		for (short type : new short[] { LIKELIHOOD, P_VALUE, ABSENT }) {
+			for (double threshold = -0.5; threshold <= 1.5; threshold += 0.05) {
+				for (String interactionType : TYPES) {
+					int expected = 0;
+					for (InteractionDetail d : details) {
+						if (d != null
+								&& d.getConfidenceValue(type) >= threshold
+								&& d.getInteractionType().equals(
+										interactionType)) {
+							expected++;
+						}
+					}
+					assertEquals(expected, index.count(interactionType, type,
+							threshold));
+				}
+			}
+		}
+		assertEquals(0, index.count("unknown", LIKELIHOOD, 0));
+	}
+
+	public void testSelectKeepsOrder() {
+		List<String> included = Arrays.asList(TYPES[0], TYPES[2], TYPES[0]);
+		for (double threshold = 0; threshold <= 1.2; threshold += 0.1) {
+			List<InteractionDetail> expected = new ArrayList<InteractionDetail>();
+			for (InteractionDetail d : details) {
+				if (d != null && d.getConfidenceValue(P_VALUE) >= threshold
+						&& included.contains(d.getInteractionType())) {
+					expected.add(d);
+				}
+			}
+			assertEquals(expected, Arrays.asList(index.select(included,
+					P_VALUE, threshold)));
+		}
+	}
+
+	public void testDistributions() {
+		for (double increment : new double[] { 0.01, 0.015, 0.1, 1 }) {
+			for (short type : new short[] { LIKELIHOOD, P_VALUE }) {
+				for (String interactionType : TYPES) {
+					assertTrue(Arrays.equals(distribution(interactionType,
+							type, increment), index.distribution(
+							interactionType, type, increment, BINS)));
+				}
+			}
+		}
+		assertTrue(Arrays.equals(new int[BINS], index.distribution("unknown",
+				LIKELIHOOD, 0.01, BINS)));
+	}
+
+	/* the loop of CellularNetWorkElementInformation.getInteractionDistribution */
+	private int[] distribution(String interactionType, short type,
+			double increment) {
+		int[] distribution = new int[BINS];
+		for (InteractionDetail d : details) {
+			if (d == null || !d.getInteractionType().equals(interactionType)) {
+				continue;
+			}
+			int confidence = (int) (d.getConfidenceValue(type) / increment);
+			if (confidence >= 0) {
+				if (confidence >= distribution.length)
+					confidence = distribution.length - 1;
+				for (int i = 0; i <= confidence; i++)
+					distribution[i]++;
+			}
+		}
+		return distribution;
+	}
+
+}
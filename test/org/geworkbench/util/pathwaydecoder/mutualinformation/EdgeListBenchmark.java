@@ -0,0 +1,81 @@
+package org.geworkbench.util.pathwaydecoder.mutualinformation;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Times loading, deduplicating, diffing and exporting a synthetic edge list
+ * file. Arguments (all optional): edges, nodes.
+ *
+ * @version $Id$
+ */
+public class EdgeListBenchmark {
+
+	public static void main(String[] args) throws IOException {
+		int edges = args.length > 0 ? Integer.parseInt(args[0]) : 3000000;
+		int nodeCount = args.length > 1 ? Integer.parseInt(args[1]) : 20000;
+
+		// one edge in ten repeats an earlier one
+		Random random = new Random(35);
+		EdgeList generated = new EdgeList(edges);
+		for (int e = 0; e < edges; e++) {
+			int s = random.nextInt(nodeCount);
+			int t = e % 10 == 9 ? s + 1 : random.nextInt(nodeCount);
+			generated.addEdge(s + "_at", t + "_at");
+		}
+		File file = File.createTempFile("edges", ".txt");
+		file.deleteOnExit();
+
+		for (int round = 0; round < 3; round++) {
+			System.out.println("round " + round + ", " + edges + " edges, "
+					+ nodeCount + " nodes");
+			long start = System.nanoTime();
+			write(generated, file);
+			lap("export", start, file.length() / 1024 / 1024 + " MB");
+
+			start = System.nanoTime();
+			FileInputStream in = new FileInputStream(file);
+			EdgeList list = new EdgeListReader(new String[] { "#" },
+					new String[0]).readEdgeList(in.getChannel());
+			in.close();
+			lap("load", start, list.size() + " edges");
+
+			start = System.nanoTime();
+			int removed = list.deduplicate();
+			lap("deduplicate", start, removed + " removed");
+
+			start = System.nanoTime();
+			EdgeList diff = generated.difference(list);
+			lap("difference", start, diff.size() + " edges");
+
+			start = System.nanoTime();
+			List<Edge> remove = new ArrayList<Edge>();
+			for (int k = 0; k < 1000; k++) {
+				remove.add(new Edge(k + "_at", (k + 1) + "_at"));
+			}
+			list.removeEdges(remove);
+			write(list, file);
+			lap("remove 1000 and export", start, list.size() + " edges");
+		}
+	}
+
+	private static void write(EdgeList list, File file) throws IOException {
+		FileOutputStream out = new FileOutputStream(file);
+		try {
+			list.write(out.getChannel(), "# benchmark");
+		} finally {
+			out.close();
+		}
+	}
+
+	private static void lap(String label, long start, String detail) {
+		System.out.println(String.format("  %-30s %8.1f ms  %s", label, (System
+				.nanoTime() - start) / 1e6, detail));
+	}
+
+}
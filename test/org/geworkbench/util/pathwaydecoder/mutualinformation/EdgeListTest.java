@@ -0,0 +1,182 @@
+package org.geworkbench.util.pathwaydecoder.mutualinformation;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.channels.Channels;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+import org.apache.commons.codec.binary.Base64;
+
+/**
+ * @version $Id$
+ */
+public class EdgeListTest extends TestCase {
+
+	private static final String[] COMMENTS = { "#", ">" };
+	private static final String[] DELIMITERS = { ":", "/" };
+
+	/* A -> B, B -> C, A -> B written by the ArrayList based implementation */
+	private static final String OLD_FORM =
+			"rO0ABXNyAD5vcmcuZ2V3b3JrYmVuY2gudXRpbC5wYXRod2F5ZGVjb2Rlci5tdXR1" +
+			"YWxpbmZvcm1hdGlvbi5FZGdlTGlzdPAW/pru3HVyAgABTAAIZWRnZUxpc3R0ABVM" +
+			"amF2YS91dGlsL0FycmF5TGlzdDt4cHNyABNqYXZhLnV0aWwuQXJyYXlMaXN0eIHS" +
+			"HZnHYZ0DAAFJAARzaXpleHAAAAADdwQAAAADc3IAOm9yZy5nZXdvcmtiZW5jaC51" +
+			"dGlsLnBhdGh3YXlkZWNvZGVyLm11dHVhbGluZm9ybWF0aW9uLkVkZ2UKTFYpqDSG" +
+			"SAIAAkwAB2VuZE5vZGV0ABJMamF2YS9sYW5nL1N0cmluZztMAAlzdGFydE5vZGVx" +
+			"AH4ABnhwdAABQnQAAUFzcQB+AAV0AAFDcQB+AAhzcQB+AAVxAH4ACHEAfgAJeA==";
+
+	public EdgeListTest(String name) {
+		super(name);
+	}
+
+	public void testAddRemoveContains() {
+		EdgeList list = new EdgeList(2);
+		list.addEdge("A", "B");
+		list.addEdge("A", "B");
+		list.addEdge(new Edge("B", "C"));
+		list.addEdge("A", "B");
+		list.addEdge("C", "A");
+		assertEquals(5, list.size());
+		assertEquals(3, list.getNodeCount());
+		assertTrue(list.contains("A", "B"));
+		assertFalse(list.contains("B", "A"));
+		assertFalse(list.contains("A", "D"));
+
+		// every copy goes, including neighbouring ones
+		list.removeEdge("A", "B");
+		assertEquals(2, list.size());
+		assertFalse(list.contains("A", "B"));
+		assertEquals(new Edge("B", "C"), list.getEdge(0));
+		assertEquals(new Edge("C", "A"), list.getEdge(1));
+
+		list.addEdge("A", "B");
+		list.removeEdge(new Edge("C", "A"));
+		list.removeEdge("X", "Y");
+		assertEquals("h\nB\tC\nA\tB\n", list.print("h"));
+		list.removeEdge("B", "C");
+		list.removeEdge("A", "B");
+		assertTrue(list.isEmpty());
+	}
+
+	public void testDeduplicateAndDifference() {
+		EdgeList list = new EdgeList();
+		String[][] edges = { { "A", "B" }, { "B", "C" }, { "A", "B" },
+				{ "C", "D" }, { "B", "C" }, { "A", "B" } };
+		for (String[] e : edges) {
+			list.addEdge(e[0], e[1]);
+		}
+		assertEquals(3, list.deduplicate());
+		assertEquals("\nA\tB\nB\tC\nC\tD\n", list.print(""));
+		assertEquals(0, list.deduplicate());
+
+		EdgeList other = new EdgeList();
+		other.addEdge("B", "C");
+		other.addEdge("D", "C");
+		other.addEdge("E", "F");
+		EdgeList diff = list.difference(other);
+		assertEquals("\nA\tB\nC\tD\n", diff.print(""));
+		assertEquals(2, other.difference(list).size());
+	}
+
+	public void testRemoveEdges() {
+		EdgeList list = new EdgeList(2);
+		for (int i = 0; i < 100; i++) {
+			list.addEdge("n" + (i % 10), "n" + (i % 7));
+		}
+		List<Edge> remove = new ArrayList<Edge>();
+		for (int i = 0; i < 10; i++) {
+			remove.add(new Edge("n" + i, "n" + i));
+		}
+		list.removeEdges(remove);
+		int size = list.size();
+		for (int i = 0; i < size; i++) {
+			Edge e = list.getEdge(i);
+			assertFalse(e.getStartNode().equals(e.getEndNode()));
+		}
+		assertFalse(list.contains("n3", "n3"));
+
+		// the index still finds what is left after positions moved
+		Set<Edge> distinct = new HashSet<Edge>();
+		for (int i = 0; i < size; i++) {
+			distinct.add(list.getEdge(i));
+		}
+		assertTrue(distinct.contains(new Edge("n9", "n2")));
+		assertEquals(size - distinct.size(), list.deduplicate());
+		list.addEdge("n9", "n2");
+		list.removeEdge("n9", "n2");
+		assertEquals(distinct.size() - 1, list.size());
+		for (int i = 0; i < list.size(); i++) {
+			assertTrue(distinct.remove(list.getEdge(i)));
+		}
+		assertEquals(Collections.singleton(new Edge("n9", "n2")), distinct);
+	}
+
+	public void testReadAndWrite() throws Exception {
+		String text = "# comment\n\n  > also a comment\nA\tB\r\n"
+				+ "B C D\nC  \u00e9t\u00e9\n\u00e9t\u00e9 A\nlast line";
+		EdgeListReader reader = new EdgeListReader(COMMENTS, DELIMITERS);
+		EdgeList list = reader.readEdgeList(Channels
+				.newChannel(new ByteArrayInputStream(text.getBytes("UTF-8"))));
+		assertEquals(4, list.size());
+		assertTrue(list.contains("C", "\u00e9t\u00e9"));
+		assertTrue(list.contains("\u00e9t\u00e9", "A"));
+		assertTrue(list.contains("last", "line"));
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		list.write(Channels.newChannel(bytes), "# Saved");
+		assertEquals(list.print("# Saved"), new String(bytes.toByteArray(),
+				"UTF-8"));
+	}
+
+	public void testReadAdjacencyMatrix() throws Exception {
+		String text = "# header\n1:A 2:B 0.5 C 0.2\nx/D E\nF/1 G/2 0.1 H\n";
+		EdgeList list = new EdgeListReader(COMMENTS, DELIMITERS)
+				.readAdjacencyMatrix(Channels.newChannel(new ByteArrayInputStream(
+						text.getBytes("UTF-8"))));
+		assertEquals("\nA\tB\nA\tC\n1\t2\n1\tH\n", list.print(""));
+	}
+
+	public void testLongLines() throws Exception {
+		StringBuilder text = new StringBuilder();
+		for (int i = 0; i < 30000; i++) {
+			text.append("N").append(i).append(' ');
+		}
+		text.append('\n');
+		for (int i = 0; i < 30000; i++) {
+			text.append("N").append(i).append(' ').append("M").append(i)
+					.append('\n');
+		}
+		EdgeList list = new EdgeListReader(COMMENTS, DELIMITERS)
+				.readEdgeList(Channels.newChannel(new ByteArrayInputStream(
+						text.toString().getBytes("UTF-8"))));
+		assertEquals(30000, list.size());
+		assertEquals("N29999", list.getStartNode(29999));
+		assertEquals("M29999", list.getEndNode(29999));
+	}
+
+	public void testSerialization() throws Exception {
+		EdgeList old = (EdgeList) new ObjectInputStream(new ByteArrayInputStream(
+				Base64.decodeBase64(OLD_FORM.getBytes("US-ASCII")))).readObject();
+		assertEquals("\nA\tB\nB\tC\nA\tB\n", old.print(""));
+
+		old.removeEdge("B", "C");
+		old.addEdge("C", "D");
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		ObjectOutputStream out = new ObjectOutputStream(bytes);
+		out.writeObject(old);
+		out.close();
+		EdgeList read = (EdgeList) new ObjectInputStream(new ByteArrayInputStream(
+				bytes.toByteArray())).readObject();
+		assertEquals("\nA\tB\nA\tB\nC\tD\n", read.print(""));
+		assertTrue(read.contains("C", "D"));
+	}
+
+}
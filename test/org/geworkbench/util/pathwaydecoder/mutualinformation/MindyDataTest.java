@@ -0,0 +1,152 @@
+package org.geworkbench.util.pathwaydecoder.mutualinformation;
+
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import org.apache.commons.math.stat.regression.SimpleRegression;
+import org.geworkbench.bison.datastructure.biocollections.microarrays.CSMicroarraySet;
+import org.geworkbench.bison.datastructure.bioobjects.markers.CSExpressionMarker;
+import org.geworkbench.bison.datastructure.bioobjects.markers.DSGeneMarker;
+import org.geworkbench.bison.datastructure.bioobjects.microarray.CSExpressionMarkerValue;
+import org.geworkbench.bison.datastructure.bioobjects.microarray.CSMicroarray;
+import org.geworkbench.bison.datastructure.bioobjects.microarray.DSMicroarray;
+
+/**
+ * The correlations of MindyData and MindyCorrelationEngine against the
+ * SimpleRegression they replace.
+ *
+ * @version $Id$
+ */
+public class MindyDataTest extends TestCase {
+
+	private static final int MARKERS = 12;
+	private static final int ARRAYS = 60;
+
+	private CSMicroarraySet set;
+
+	public MindyDataTest(String name) {
+		super(name);
+	}
+
+	/*
+	 * marker 0 is the TF; the others mix it with noise in varying amounts,
+	 * some negatively, around a large offset; the last is constant
+	 */
+	protected void setUp() throws Exception {
+		super.setUp();
+		Random random = new Random(27);
+		set = new CSMicroarraySet();
+		for (int i = 0; i < MARKERS; i++) {
+			DSGeneMarker marker = new CSExpressionMarker(i);
+			marker.setLabel("m" + i);
+			set.getMarkers().add(i, marker);
+		}
+		float[][] values = new float[MARKERS][ARRAYS];
+		for (int j = 0; j < ARRAYS; j++) {
+			double tf = random.nextGaussian();
+			values[0][j] = (float) (1000 + 50 * tf);
+			for (int i = 1; i < MARKERS - 1; i++) {
+				double weight = (i % 2 == 0 ? -1 : 1) * i / (double) MARKERS;
+				values[i][j] = (float) (1000 + 50 * (weight * tf + (1 - Math
+						.abs(weight)) * random.nextGaussian()));
+			}
+			values[MARKERS - 1][j] = 7;
+		}
+		for (int j = 0; j < ARRAYS; j++) {
+			DSMicroarray array = new CSMicroarray(j, MARKERS, "a" + j,
+					CSMicroarraySet.affyTxtType);
+			for (int i = 0; i < MARKERS; i++) {
+				CSExpressionMarkerValue value = new CSExpressionMarkerValue(
+						values[i][j]);
+				value.setPresent();
+				array.setMarkerValue(i, value);
+			}
+			set.add(array);
+		}
+		set.getMarkers().correctMaps();
+	}
+
+	private double simpleRegression(DSGeneMarker target, DSGeneMarker tf) {
+		SimpleRegression sr = new SimpleRegression();
+		for (int j = 0; j < set.size(); j++) {
+			DSMicroarray ma = set.get(j);
+			sr.addData(ma.getMarkerValue(target).getValue(), ma
+					.getMarkerValue(tf).getValue());
+		}
+		return sr.getR();
+	}
+
+	public void testCalcPearsonCorrelation() {
+		DSGeneMarker tf = set.getMarkers().get(0);
+		MindyData data = new MindyData(set, null, 0.35f, tf);
+		// after a run, single values are read from the two rows
+		data.runFinished();
+		for (int i = 0; i < MARKERS - 1; i++) {
+			DSGeneMarker target = set.getMarkers().get(i);
+			assertEquals(target.getLabel(), simpleRegression(target, tf), data
+					.calcPearsonCorrelation(target), 1e-9);
+		}
+		// no variance: SimpleRegression gives NaN too
+		DSGeneMarker constant = set.getMarkers().get(MARKERS - 1);
+		assertTrue(Double.isNaN(simpleRegression(constant, tf)));
+		assertTrue(Double.isNaN(data.calcPearsonCorrelation(constant)));
+	}
+
+	public void testRunCorrelations() {
+		DSGeneMarker tf = set.getMarkers().get(0);
+		DSGeneMarker modulator = set.getMarkers().get(1);
+		MindyData data = new MindyData(set, null, 0.5f, tf);
+		ModulatorInfo info = new ModulatorInfo();
+		for (int i = 2; i < MARKERS; i++) {
+			info.insertRow(new MindyResultRow(modulator, set.getMarkers().get(
+					i), i % 2 == 0 ? 0.5f : -0.5f));
+		}
+		data.getModulatorInfoMap().put(modulator, info);
+		assertTrue(Double.isNaN(data.getCorrelation(set.getMarkers().get(2))));
+
+		data.calcCorrelations();
+		for (int i = 2; i < MARKERS - 1; i++) {
+			DSGeneMarker target = set.getMarkers().get(i);
+			double expected = simpleRegression(target, tf);
+			assertEquals(expected, data.getCorrelation(target), 1e-5);
+			assertEquals(expected, data.calcPearsonCorrelation(target), 1e-5);
+		}
+		assertTrue(Double.isNaN(data.getCorrelation(set.getMarkers().get(
+				MARKERS - 1))));
+
+		float[][] conditional = data.getConditionalCorrelations(modulator);
+		assertEquals(2, conditional.length);
+		assertEquals(MARKERS - 2, conditional[0].length);
+		float[][] direct = new MindyCorrelationEngine(set, MARKERS)
+				.conditionalCorrelations(modulator.getSerial(), 0.5f, 0,
+						new int[] { 2, 3 });
+		assertEquals(direct[0][1], conditional[0][1], 0);
+		assertEquals(direct[1][0], conditional[1][0], 0);
+
+		// the kept values outlive the run
+		data.runFinished();
+		assertEquals(simpleRegression(set.getMarkers().get(3), tf), data
+				.getCorrelation(set.getMarkers().get(3)), 1e-5);
+	}
+
+	public void testEngineCorrelations() {
+		MindyCorrelationEngine engine = new MindyCorrelationEngine(set,
+				MARKERS);
+		DSGeneMarker tf = set.getMarkers().get(0);
+		int[] targets = new int[MARKERS - 1];
+		for (int i = 0; i < targets.length; i++) {
+			targets[i] = i + 1;
+		}
+		float[] bulk = engine.correlations(0, targets);
+		for (int i = 1; i < MARKERS - 1; i++) {
+			double expected = simpleRegression(set.getMarkers().get(i), tf);
+			// standardized rows are floats
+			assertEquals(expected, engine.correlation(i, 0), 1e-5);
+			assertEquals(expected, bulk[i - 1], 1e-5);
+		}
+		assertTrue(Double.isNaN(engine.correlation(MARKERS - 1, 0)));
+		assertTrue(Float.isNaN(bulk[MARKERS - 2]));
+	}
+
+}
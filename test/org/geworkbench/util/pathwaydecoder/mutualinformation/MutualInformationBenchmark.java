@@ -0,0 +1,57 @@
+package org.geworkbench.util.pathwaydecoder.mutualinformation;
+
+import java.util.Random;
+
+import org.geworkbench.bison.util.ExpressionMatrix;
+import org.geworkbench.util.pathwaydecoder.mutualinformation.MutualInformationEngine.Edges;
+import org.geworkbench.util.pathwaydecoder.mutualinformation.MutualInformationEngine.Estimator;
+
+/**
+ * Times {@link MutualInformationEngine} on synthetic expression data where
+ * every tenth marker follows one of the hubs. Arguments (all optional):
+ * markers, arrays, hubs.
+ *
+ * @version $Id$
+ */
+public class MutualInformationBenchmark {
+
+	public static void main(String[] args) {
+		int markers = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+		int arrays = args.length > 1 ? Integer.parseInt(args[1]) : 300;
+		int hubCount = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+
+		Random random = new Random(28);
+		float[] values = new float[markers * arrays];
+		int[] serials = new int[markers];
+		for (int i = 0; i < markers; i++) {
+			serials[i] = i;
+			int hub = i % 10 == 0 ? (i / 10) % hubCount : -1;
+			for (int j = 0; j < arrays; j++) {
+				float noise = (float) random.nextGaussian();
+				values[i * arrays + j] = hub >= 0 && i >= hubCount ? values[hub
+						* arrays + j]
+						+ 0.5f * noise : noise;
+			}
+		}
+		ExpressionMatrix matrix = new ExpressionMatrix(markers, arrays, values,
+				serials);
+		int[] hubs = new int[hubCount];
+		for (int h = 0; h < hubCount; h++) {
+			hubs[h] = h;
+		}
+
+		for (Estimator estimator : Estimator.values()) {
+			MutualInformationEngine engine = new MutualInformationEngine();
+			engine.setEstimator(estimator);
+			engine.setDeterministic(true);
+			engine.setThreshold(0.05);
+			long start = System.nanoTime();
+			Edges edges = engine.computeEdges(matrix, hubs);
+			System.out.println(String.format(
+					"%-24s %d x %d, %d hubs: %d edges in %.1f s", estimator,
+					markers, arrays, hubCount, edges.size(),
+					(System.nanoTime() - start) / 1e9));
+		}
+	}
+
+}
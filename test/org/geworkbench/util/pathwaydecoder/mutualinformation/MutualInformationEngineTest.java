@@ -0,0 +1,115 @@
+package org.geworkbench.util.pathwaydecoder.mutualinformation;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import org.geworkbench.bison.datastructure.biocollections.AdjacencyMatrix;
+import org.geworkbench.bison.datastructure.biocollections.microarrays.CSMicroarraySet;
+import org.geworkbench.bison.datastructure.biocollections.views.CSMicroarraySetView;
+import org.geworkbench.bison.datastructure.bioobjects.markers.CSExpressionMarker;
+import org.geworkbench.bison.datastructure.bioobjects.markers.DSGeneMarker;
+import org.geworkbench.bison.datastructure.bioobjects.microarray.CSExpressionMarkerValue;
+import org.geworkbench.bison.datastructure.bioobjects.microarray.CSMicroarray;
+import org.geworkbench.bison.datastructure.bioobjects.microarray.DSMicroarray;
+import org.geworkbench.bison.util.ExpressionMatrix;
+import org.geworkbench.util.pathwaydecoder.mutualinformation.MutualInformationEngine.Edges;
+import org.geworkbench.util.pathwaydecoder.mutualinformation.MutualInformationEngine.Estimator;
+
+/**
+ * @version $Id$
+ */
+public class MutualInformationEngineTest extends TestCase {
+
+	private static final int ARRAYS = 400;
+
+	/* rows: x, y = x + noise, z = y + noise, w independent */
+	private ExpressionMatrix matrix;
+
+	public MutualInformationEngineTest(String name) {
+		super(name);
+	}
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		Random random = new Random(28);
+		float[] values = new float[4 * ARRAYS];
+		for (int j = 0; j < ARRAYS; j++) {
+			float x = (float) random.nextGaussian();
+			float y = x + 0.4f * (float) random.nextGaussian();
+			float z = y + 0.4f * (float) random.nextGaussian();
+			values[j] = x;
+			values[ARRAYS + j] = y;
+			values[2 * ARRAYS + j] = z;
+			values[3 * ARRAYS + j] = (float) random.nextGaussian();
+		}
+		matrix = new ExpressionMatrix(4, ARRAYS, values, new int[] { 0, 1, 2, 3 });
+	}
+
+	public void testDpiRemovesIndirectEdge() {
+		for (Estimator estimator : Estimator.values()) {
+			MutualInformationEngine engine = new MutualInformationEngine();
+			engine.setEstimator(estimator);
+			engine.setDeterministic(true);
+			engine.setThreshold(0.1);
+
+			engine.setDpi(false);
+			Edges all = engine.computeEdges(matrix, null);
+			assertEquals(estimator.name(), 3, all.size());
+			assertTrue(Arrays.equals(new int[] { 0, 0, 1 }, all.first));
+			assertTrue(Arrays.equals(new int[] { 1, 2, 2 }, all.second));
+			assertTrue(all.mi[1] < all.mi[0] && all.mi[1] < all.mi[2]);
+
+			engine.setDpi(true);
+			Edges pruned = engine.computeEdges(matrix, null);
+			assertTrue(Arrays.equals(new int[] { 0, 1 }, pruned.first));
+			assertTrue(Arrays.equals(new int[] { 1, 2 }, pruned.second));
+		}
+	}
+
+	public void testHubsAndDeterminism() {
+		MutualInformationEngine engine = new MutualInformationEngine();
+		engine.setDeterministic(true);
+		engine.setDpi(false);
+		Edges first = engine.computeEdges(matrix, new int[] { 2 });
+		Edges second = engine.computeEdges(matrix, new int[] { 2, 2 });
+		assertEquals(3, first.size());
+		for (int i = 0; i < first.size(); i++) {
+			assertEquals(2, first.first[i]);
+		}
+		assertTrue(Arrays.equals(first.second, second.second));
+		assertTrue(Arrays.equals(first.mi, second.mi));
+	}
+
+	public void testAdjacencyMatrixFromView() {
+		CSMicroarraySet set = new CSMicroarraySet();
+		for (int i = 0; i < 4; i++) {
+			DSGeneMarker marker = new CSExpressionMarker();
+			marker.setLabel("marker " + i);
+			marker.setSerial(i);
+			set.getMarkers().add(marker);
+		}
+		for (int j = 0; j < ARRAYS; j++) {
+			DSMicroarray microarray = new CSMicroarray(4);
+			microarray.setLabel("array " + j);
+			for (int i = 0; i < 4; i++) {
+				CSExpressionMarkerValue value = new CSExpressionMarkerValue(
+						matrix.get(i, j));
+				value.setPresent();
+				microarray.setMarkerValue(i, value);
+			}
+			set.add(microarray);
+		}
+
+		MutualInformationEngine engine = new MutualInformationEngine();
+		engine.setDeterministic(true);
+		engine.setThreshold(0.1);
+		AdjacencyMatrix network = engine.compute(
+				new CSMicroarraySetView<DSGeneMarker, DSMicroarray>(set), null,
+				"test network");
+		assertEquals(2, network.getConnectionNo());
+		assertEquals(3, network.getNodeNumber());
+	}
+
+}
@@ -0,0 +1,175 @@
+package org.geworkbench.util.patterns;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import org.geworkbench.bison.datastructure.bioobjects.sequence.CSSequence;
+import org.geworkbench.bison.datastructure.complex.pattern.matrix.CSPositionSpecificAffinityMatrix;
+import org.geworkbench.bison.datastructure.complex.pattern.sequence.CSSeqRegistration;
+
+/**
+ * PackedSequences, MotifScanner and MotifHits.
+ *
+ * @version $Id$
+ */
+public class MotifScannerTest extends TestCase {
+
+	private static final String DECODED = "ACGTN";
+
+	public MotifScannerTest(String name) {
+		super(name);
+	}
+
+	private static List<CSSequence> sequences(String... bases) {
+		List<CSSequence> list = new ArrayList<CSSequence>();
+		for (int i = 0; i < bases.length; i++) {
+			list.add(new CSSequence("s" + i, bases[i]));
+		}
+		return list;
+	}
+
+	/* affinity 1 for the consensus base, <code>other</code> for the rest */
+	private static CSPositionSpecificAffinityMatrix matrix(String consensus,
+			double other) {
+		double[][] scores = new double[consensus.length()][4];
+		for (int i = 0; i < scores.length; i++) {
+			Arrays.fill(scores[i], other);
+			scores[i][DECODED.indexOf(consensus.charAt(i))] = 1;
+		}
+		CSPositionSpecificAffinityMatrix m = new CSPositionSpecificAffinityMatrix();
+		m.setConsensusSequence(consensus);
+		m.setScores(scores);
+		return m;
+	}
+
+	public void testPackingRoundTrip() {
+		String[] bases = { "ACGTNacgt", "", "GAUuXR-", "T" };
+		PackedSequences packed = new PackedSequences(sequences(bases));
+		assertEquals(4, packed.size());
+		StringBuilder all = new StringBuilder();
+		for (int s = 0; s < bases.length; s++) {
+			assertEquals(bases[s].length(), packed.length(s));
+			assertEquals(all.length(), packed.offset(s));
+			all.append(bases[s]);
+		}
+		assertEquals(all.length(), packed.getBases().length);
+
+		StringBuilder decoded = new StringBuilder();
+		for (byte code : packed.getBases()) {
+			decoded.append(DECODED.charAt(code));
+		}
+		assertEquals("ACGTNACGT" + "GATTNNN" + "T", decoded.toString());
+
+		for (byte code = 0; code <= PackedSequences.OTHER; code++) {
+			assertEquals(code, PackedSequences.complement(PackedSequences
+					.complement(code)));
+		}
+		assertEquals(PackedSequences.T, PackedSequences
+				.complement(PackedSequences.A));
+		assertEquals(PackedSequences.G, PackedSequences
+				.complement(PackedSequences.C));
+		assertEquals(PackedSequences.OTHER, PackedSequences.encode('\u00e9'));
+	}
+
+	public void testReverseStrand() {
+		// AAC forward at 7; its reverse complement GTT at 2; the GTT at 11
+		// holds an N
+		List<CSSequence> seqs = sequences("TTGTTTTAACAGNT", "CCCC");
+		List<CSPositionSpecificAffinityMatrix> matrices = new ArrayList<CSPositionSpecificAffinityMatrix>();
+		matrices.add(matrix("AAC", 0));
+		MotifScanner scanner = new MotifScanner(matrices);
+		MotifHits hits = scanner.scan(new PackedSequences(seqs), 1.0);
+
+		assertEquals(2, hits.size());
+		assertEquals(0, hits.getSequence(0));
+		assertEquals(2, hits.getPosition(0));
+		assertEquals(1, hits.getStrand(0));
+		assertEquals(7, hits.getPosition(1));
+		assertEquals(0, hits.getStrand(1));
+		for (int i = 0; i < hits.size(); i++) {
+			assertEquals(0, hits.getMatrix(i));
+			assertEquals(3, hits.getLength(i));
+			assertEquals(0f, hits.getScore(i), 0);
+		}
+		CSSeqRegistration reg = hits.getRegistration(0);
+		assertEquals(2, reg.x1);
+		assertEquals(5, reg.x2);
+		assertEquals(1, reg.strand);
+
+		// one mismatch at relative affinity 0.1 passes a threshold of 0.1
+		matrices.set(0, matrix("AAC", 0.1));
+		MotifHits loose = new MotifScanner(matrices).scan(new PackedSequences(
+				seqs), 0.1);
+		for (int i = 0; i < loose.size(); i++) {
+			assertEquals(0, loose.getSequence(i));
+			assertTrue(loose.getScore(i) >= (float) Math.log(0.1));
+		}
+		assertTrue(loose.size() > hits.size());
+	}
+
+	public void testTopHits() {
+		Random random = new Random(29);
+		String[] bases = new String[20];
+		for (int s = 0; s < bases.length; s++) {
+			char[] c = new char[50 + random.nextInt(50)];
+			for (int k = 0; k < c.length; k++) {
+				c[k] = DECODED.charAt(random.nextInt(random.nextInt(20) == 0 ? 5
+						: 4));
+			}
+			bases[s] = new String(c);
+		}
+		PackedSequences packed = new PackedSequences(sequences(bases));
+		List<CSPositionSpecificAffinityMatrix> matrices = new ArrayList<CSPositionSpecificAffinityMatrix>();
+		matrices.add(matrix("TGACTCA", 0.3));
+		matrices.add(matrix("CACGTG", 0.2));
+		MotifScanner scanner = new MotifScanner(matrices);
+		assertEquals(2, scanner.getMatrixCount());
+
+		// every window, to select from by hand
+		MotifHits all = scanner.scan(packed, 1e-30);
+		int k = 25;
+		MotifHits top = scanner.topHits(packed, k);
+		assertEquals(2 * k, top.size());
+		for (int m = 0; m < 2; m++) {
+			List<Float> scores = new ArrayList<Float>();
+			for (int i = 0; i < all.size(); i++) {
+				if (all.getMatrix(i) == m) {
+					scores.add(all.getScore(i));
+				}
+			}
+			Float[] sorted = scores.toArray(new Float[scores.size()]);
+			Arrays.sort(sorted);
+			for (int r = 0; r < k; r++) {
+				int i = m * k + r;
+				assertEquals(m, top.getMatrix(i));
+				assertEquals(sorted[sorted.length - 1 - r].floatValue(), top
+						.getScore(i), 0);
+				// the hit is the window it says it is
+				assertTrue(contains(all, m, top.getSequence(i), top
+						.getPosition(i), top.getStrand(i), top.getScore(i)));
+			}
+		}
+
+		assertEquals(0, scanner.topHits(packed, 0).size());
+		// asking for more than there are returns them all
+		assertEquals(all.size(), scanner.topHits(packed, all.size() + 10)
+				.size());
+	}
+
+	private static boolean contains(MotifHits hits, int matrix, int sequence,
+			int position, int strand, float score) {
+		for (int i = 0; i < hits.size(); i++) {
+			if (hits.getMatrix(i) == matrix && hits.getSequence(i) == sequence
+					&& hits.getPosition(i) == position
+					&& hits.getStrand(i) == strand && hits.getScore(i) == score) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+}
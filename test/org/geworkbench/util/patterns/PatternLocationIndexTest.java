@@ -0,0 +1,132 @@
+package org.geworkbench.util.patterns;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import org.geworkbench.bison.datastructure.biocollections.sequences.CSSequenceSet;
+import org.geworkbench.bison.datastructure.bioobjects.sequence.CSSequence;
+import org.geworkbench.bison.datastructure.bioobjects.sequence.DSSequence;
+import org.geworkbench.bison.datastructure.complex.pattern.sequence.CSSeqRegistration;
+
+/**
+ * @version $Id$
+ */
+public class PatternLocationIndexTest extends TestCase {
+
+	private CSSequenceSet<DSSequence> sequences;
+	private HashMap<CSSequence, PatternSequenceDisplayUtil> matches;
+
+	public PatternLocationIndexTest(String name) {
+		super(name);
+	}
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		sequences = new CSSequenceSet<DSSequence>();
+		matches = new HashMap<CSSequence, PatternSequenceDisplayUtil>();
+		for (int s = 0; s < 3; s++) {
+			sequences.addASequence(new CSSequence("s" + s, "ACGTACGTAC"));
+		}
+	}
+
+	private static CSSeqRegistration registration(int x1, int x2, int strand) {
+		CSSeqRegistration reg = new CSSeqRegistration();
+		reg.x1 = x1;
+		reg.x2 = x2;
+		reg.strand = strand;
+		return reg;
+	}
+
+	private void add(int sequence, PatternLocations location) {
+		CSSequence s = (CSSequence) sequences.getSequence(sequence);
+		PatternSequenceDisplayUtil util = matches.get(s);
+		if (util == null) {
+			util = new PatternSequenceDisplayUtil(s);
+			matches.put(s, util);
+		}
+		util.addPattern(location);
+	}
+
+	public void testOverlappingMatchesScan() {
+		Random random = new Random(30);
+		// a long hit first, so that the running maximum of the ends matters
+		add(0, new PatternLocations("long", registration(0, 500, 0),
+				PatternLocations.TFTYPE));
+		for (int k = 0; k < 300; k++) {
+			int x1 = random.nextInt(1000);
+			add(0, new PatternLocations("t" + k, registration(x1, x1 + 1
+					+ random.nextInt(20), k % 2), PatternLocations.TFTYPE));
+		}
+		PatternLocationIndex index = new PatternLocationIndex(matches,
+				sequences);
+		assertEquals(3, index.getSequenceCount());
+		int stored = matches.get(sequences.getSequence(0)).getTreeSet().size();
+		assertEquals(stored, index.getHitCount());
+		List<PatternLocationIndex.Hit> all = index.getHits(0);
+		for (int k = 1; k < all.size(); k++) {
+			assertTrue(all.get(k - 1).getStart() <= all.get(k).getStart());
+		}
+
+		for (int q = 0; q < 200; q++) {
+			int from = random.nextInt(1100) - 50;
+			int to = from + 1 + random.nextInt(60);
+			List<PatternLocations> expected = new ArrayList<PatternLocations>();
+			for (PatternLocationIndex.Hit hit : all) {
+				if (hit.getStart() < to && hit.getEnd() > from) {
+					expected.add(hit.getLocation());
+				}
+			}
+			List<PatternLocations> found = new ArrayList<PatternLocations>();
+			for (PatternLocationIndex.Hit hit : index.overlapping(0, from, to)) {
+				found.add(hit.getLocation());
+			}
+			assertEquals("[" + from + ", " + to + ")", expected, found);
+		}
+
+		assertTrue(index.overlapping(1, 0, 1000).isEmpty());
+		assertTrue(index.overlapping(3, 0, 1000).isEmpty());
+		assertTrue(index.overlapping(0, 10, 10).isEmpty());
+		assertTrue(index.getHits(-1).isEmpty());
+	}
+
+	public void testHitIsSnapshot() {
+		CSSeqRegistration tf = registration(4, 8, 1);
+		add(1, new PatternLocations("TGAC", tf, PatternLocations.TFTYPE));
+		// a discovered pattern is drawn with the length of its ascii form
+		CSSeqRegistration splash = registration(20, 22, 0);
+		PatternLocations discovered = new PatternLocations("A[CG]T.A",
+				splash);
+		add(2, discovered);
+		PatternLocationIndex index = new PatternLocationIndex(matches,
+				sequences);
+		assertEquals(2, index.getHitCount());
+
+		PatternLocationIndex.Hit hit = index.getHits(1).get(0);
+		assertEquals(PatternLocations.TFTYPE, hit.getPatternType());
+		assertEquals(4, hit.getStart());
+		assertEquals(8, hit.getRegistrationEnd());
+		assertEquals(1, hit.getStrand());
+		assertEquals(4, hit.getLength());
+		assertEquals(8, hit.getEnd());
+		assertNotNull(hit.getColor());
+
+		PatternLocationIndex.Hit wide = index.getHits(2).get(0);
+		assertEquals(PatternLocations.DEFAULTTYPE, wide.getPatternType());
+		assertEquals(5, wide.getLength());
+		assertEquals(25, wide.getEnd());
+		assertEquals(1, index.overlapping(2, 24, 30).size());
+
+		// changing the locations afterwards does not reach the index
+		tf.x1 = 0;
+		tf.strand = 0;
+		discovered.setPatternType(PatternLocations.TFTYPE);
+		assertEquals(4, hit.getStart());
+		assertEquals(1, hit.getStrand());
+		assertEquals(PatternLocations.DEFAULTTYPE, wide.getPatternType());
+	}
+
+}
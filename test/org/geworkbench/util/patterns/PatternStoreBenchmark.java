@@ -0,0 +1,102 @@
+package org.geworkbench.util.patterns;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Random;
+
+/**
+ * Rough timing of loading, sorting and filtering a large pattern file with
+ * {@link PatternStore}. Run with the number of patterns as the only
+ * (optional) argument.
+ *
+ * @version $Id$
+ */
+public class PatternStoreBenchmark {
+
+	public static void main(String[] args) throws IOException {
+		int n = args.length > 0 ? Integer.parseInt(args[0]) : 300000;
+		Random random = new Random(37);
+		StringBuilder text = new StringBuilder("discovery\n");
+		for (int i = 0; i < n; i++) {
+			text.append('[').append(i).append("]\t");
+			int tokens = 3 + random.nextInt(8);
+			for (int t = 0; t < tokens; t++) {
+				text.append(t > 0 && random.nextInt(4) == 0 ? "." : "");
+				text.append("ACGT".charAt(random.nextInt(4)));
+			}
+			int support = 2 + random.nextInt(20);
+			text.append("\t[").append(1 + random.nextInt(support)).append(',')
+					.append(support).append(',').append(tokens).append(',')
+					.append(random.nextDouble()).append("]\t");
+			for (int l = 0; l < support; l++) {
+				text.append('[').append(random.nextInt(2000)).append(',')
+						.append(random.nextInt(5000)).append(']');
+			}
+			text.append('\n');
+		}
+		final byte[] data = text.toString().getBytes();
+		final int from = "discovery\n".length();
+		System.out.println(n + " patterns, " + (data.length >> 20) + " MB");
+
+		for (int round = 0; round < 3; round++) {
+			System.out.println("round " + round);
+			final PatternStore[] store = new PatternStore[1];
+			time("parse", new Runnable() {
+				public void run() {
+					store[0] = PatternStore.parse(data, from, data.length);
+				}
+			});
+			time("sort by support", new Runnable() {
+				public void run() {
+					store[0].order(PatternStore.BY_SUPPORT);
+				}
+			});
+			time("sort by p-value", new Runnable() {
+				public void run() {
+					store[0].order(PatternStore.BY_PVALUE);
+				}
+			});
+			time("select support >= 10", new Runnable() {
+				public void run() {
+					store[0].select(10, 0, 0);
+				}
+			});
+			time("sequence index", new Runnable() {
+				public void run() {
+					store[0].getSequenceLoci(0);
+				}
+			});
+			final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			time("binary write", new Runnable() {
+				public void run() {
+					try {
+						store[0].write(new DataOutputStream(bytes));
+					} catch (IOException e) {
+						throw new RuntimeException(e);
+					}
+				}
+			});
+			time("binary read (" + (bytes.size() >> 20) + " MB)", new Runnable() {
+				public void run() {
+					try {
+						PatternStore.read(new DataInputStream(
+								new ByteArrayInputStream(bytes.toByteArray())));
+					} catch (IOException e) {
+						throw new RuntimeException(e);
+					}
+				}
+			});
+		}
+	}
+
+	private static void time(String label, Runnable task) {
+		long start = System.nanoTime();
+		task.run();
+		System.out.println(String.format("  %-28s %8.1f ms", label,
+				(System.nanoTime() - start) / 1e6));
+	}
+
+}
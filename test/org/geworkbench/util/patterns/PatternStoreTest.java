@@ -0,0 +1,250 @@
+package org.geworkbench.util.patterns;
+
+import java.io.BufferedWriter;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+import org.geworkbench.bison.datastructure.complex.pattern.sequence.DSMatchedSeqPattern;
+
+/**
+ * @version $Id$
+ */
+public class PatternStoreTest extends TestCase {
+
+	private static final String LINES = "discovery\n"
+			+ "File:/data/seq.fa\n"
+			+ "[0]\tAC..G[AT]T\t[2,3,5,0.5]\t[0,10][1,4][1,20]\n"
+			+ "[1]\tGATTACA\t[1,1,7,1.25E-4]\t[3,0]\r\n"
+			+ "not a pattern\n"
+			+ "[2]\t.A.C\t[2,2,2,3.0]\t[0,1][2,7]\n";
+
+	public PatternStoreTest(String name) {
+		super(name);
+	}
+
+	private static PatternStore parse(String text) {
+		byte[] data = text.getBytes();
+		return PatternStore.parse(data, 0, data.length);
+	}
+
+	public void testParse() {
+		PatternStore store = parse(LINES);
+		assertEquals(3, store.size());
+
+		CSMatchedSeqPattern p = store.getPattern(0);
+		assertEquals("AC..G[AT]T", p.getASCII());
+		assertEquals(2, p.getUniqueSupport());
+		assertEquals(3, p.getSupport());
+		assertEquals(5, p.getLength());
+		assertEquals(0.5, p.getPValue(), 0);
+		assertEquals(4, p.getOffset(1));
+		assertEquals(7 + 20, p.getMaxLength());
+		assertEquals("AC..G[AT]T    (3,5)", p.toString());
+
+		assertEquals(1.25E-4, store.getPValue(1), 0);
+		assertEquals(7, store.getLength(1));
+
+		// the leading '.' shifts every locus
+		CSMatchedSeqPattern q = store.getPattern(2);
+		assertEquals(2, q.getLength());
+		assertEquals(2, q.getOffset(0));
+		assertEquals(8, q.getOffset(1));
+
+		// the same view is handed out for a row, so identity is enough as a key
+		assertSame(p, store.getPattern(0));
+		assertFalse(p.equals(q));
+	}
+
+	public void testMatchesLineConstructor() {
+		PatternStore store = parse(LINES);
+		String[] lines = LINES.split("\r?\n");
+		int[] rows = { 2, 3, 5 };
+		for (int i = 0; i < rows.length; i++) {
+			CSMatchedSeqPattern view = store.getPattern(i);
+			CSMatchedSeqPattern copy = new CSMatchedSeqPattern(lines[rows[i]]);
+			assertEquals(copy.getASCII(), view.getASCII());
+			assertEquals(copy.getSupport(), view.getSupport());
+			assertEquals(copy.getUniqueSupport(), view.getUniqueSupport());
+			assertEquals(copy.getLength(), view.getLength());
+			assertEquals(copy.getMaxLength(), view.getMaxLength());
+			assertEquals(copy.getPValue(), view.getPValue(), 0);
+			for (int l = 0; l < view.getSupport(); l++) {
+				assertEquals(copy.getOffset(l), view.getOffset(l));
+			}
+			assertEquals(write(copy), write(view));
+		}
+	}
+
+	public void testSequenceIndex() {
+		PatternStore store = parse(LINES);
+		int[] loci = store.getSequenceLoci(1);
+		assertEquals(2, loci.length);
+		assertEquals(0, store.getLocusPattern(loci[0]));
+		assertEquals(4, store.getLocusPosition(loci[0]));
+		assertEquals(20, store.getLocusPosition(loci[1]));
+
+		loci = store.getSequenceLoci(0);
+		assertEquals(2, loci.length);
+		assertEquals(2, store.getLocusPattern(loci[1]));
+		assertEquals(2, store.getLocusPosition(loci[1]));
+		assertEquals(0, store.getSequenceLoci(9).length);
+	}
+
+	public void testChunkedParse() {
+		Random random = new Random(37);
+		StringBuilder text = new StringBuilder();
+		for (int i = 0; i < 20000; i++) {
+			text.append(line(random, i));
+		}
+		PatternStore store = parse(text.toString());
+		assertEquals(20000, store.size());
+		String[] lines = text.toString().split("\n");
+		for (int i = 0; i < lines.length; i += 997) {
+			CSMatchedSeqPattern copy = new CSMatchedSeqPattern(lines[i]);
+			assertEquals(write(copy), write(store.getPattern(i)));
+		}
+	}
+
+	public void testOrderAndSelect() {
+		Random random = new Random(41);
+		StringBuilder text = new StringBuilder();
+		List<DSMatchedSeqPattern> copies = new ArrayList<DSMatchedSeqPattern>();
+		for (int i = 0; i < 500; i++) {
+			String line = line(random, i);
+			text.append(line);
+			copies.add(new CSMatchedSeqPattern(line.trim()));
+		}
+		PatternStore store = parse(text.toString());
+		for (int mode = PatternStore.BY_SUPPORT; mode <= PatternStore.BY_PVALUE; mode++) {
+			PatternSorter sorter = new PatternSorter();
+			sorter.setMode(mode);
+			List<DSMatchedSeqPattern> sorted = new ArrayList<DSMatchedSeqPattern>(
+					copies);
+			Collections.sort(sorted, sorter);
+			int[] order = store.order(mode);
+			for (int i = 0; i < order.length; i++) {
+				assertSame(copies.get(order[i]), sorted.get(i));
+			}
+		}
+
+		int[] selected = store.select(3, 2, 4);
+		int expected = 0;
+		for (DSMatchedSeqPattern p : copies) {
+			if (p.getSupport() >= 3 && p.getUniqueSupport() >= 2
+					&& p.getLength() >= 4) {
+				expected++;
+			}
+		}
+		assertEquals(expected, selected.length);
+	}
+
+	public void testBinaryForm() throws Exception {
+		PatternStore store = parse(LINES);
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		store.write(new DataOutputStream(bytes));
+		byte[] data = bytes.toByteArray();
+		assertTrue(PatternStore.isStore(data, data.length));
+		PatternStore read = PatternStore.read(new DataInputStream(
+				new ByteArrayInputStream(data)));
+		assertEquals(store.size(), read.size());
+		for (int i = 0; i < store.size(); i++) {
+			assertEquals(write(store.getPattern(i)), write(read.getPattern(i)));
+		}
+
+		// a single pattern is serialized on its own, without the store
+		bytes = new ByteArrayOutputStream();
+		ObjectOutputStream out = new ObjectOutputStream(bytes);
+		out.writeObject(store.getPattern(0));
+		out.writeObject(store);
+		out.close();
+		ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(
+				bytes.toByteArray()));
+		CSMatchedSeqPattern p = (CSMatchedSeqPattern) in.readObject();
+		PatternStore copy = (PatternStore) in.readObject();
+		assertEquals(write(store.getPattern(0)), write(p));
+		assertEquals(write(store.getPattern(2)), write(copy.getPattern(2)));
+	}
+
+	public void testChangedPattern() throws Exception {
+		PatternStore store = parse(LINES);
+		CSMatchedSeqPattern p = store.getPattern(0);
+		assertSame(p, store.getPattern(0));
+		Set<CSMatchedSeqPattern> selected = new HashSet<CSMatchedSeqPattern>();
+		selected.add(p);
+		p.setPValue(0.25);
+		assertEquals(0.25, store.getPValue(0), 0);
+		assertFalse(store.isChanged());
+
+		// a change the columns cannot hold is kept by the view itself
+		p.setIdNo(2);
+		assertSame(p, store.getPattern(0));
+		assertEquals(2, store.getPattern(0).getSupport());
+		assertTrue(store.isChanged());
+		assertEquals(3, store.getSupport(0));
+		// the view keeps its hash when it takes its own fields
+		assertTrue(selected.contains(p));
+
+		// ... and written in place of the columns
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		store.write(new DataOutputStream(bytes));
+		PatternStore read = PatternStore.read(new DataInputStream(
+				new ByteArrayInputStream(bytes.toByteArray())));
+		assertEquals(3, read.size());
+		assertFalse(read.isChanged());
+		assertEquals(2, read.getSupport(0));
+		assertEquals(0.25, read.getPValue(0), 0);
+		assertEquals(write(p), write(read.getPattern(0)));
+		for (int i = 1; i < store.size(); i++) {
+			assertEquals(write(store.getPattern(i)), write(read.getPattern(i)));
+		}
+	}
+
+	private static String line(Random random, int i) {
+		StringBuilder ascii = new StringBuilder();
+		int tokens = 1 + random.nextInt(6);
+		for (int t = 0; t < tokens; t++) {
+			if (t > 0 && random.nextInt(3) == 0) {
+				ascii.append("..");
+			}
+			ascii.append(random.nextInt(4) == 0 ? "[AG]" : "ACGT".charAt(random
+					.nextInt(4)));
+		}
+		int support = 1 + random.nextInt(6);
+		StringBuilder line = new StringBuilder();
+		line.append('[').append(i).append("]\t").append(ascii).append("\t[")
+				.append(1 + random.nextInt(support)).append(',').append(
+						support).append(',').append(tokens).append(',')
+				.append(random.nextInt(5) + 0.5).append("]\t");
+		for (int l = 0; l < support; l++) {
+			line.append('[').append(random.nextInt(50)).append(',').append(
+					random.nextInt(1000)).append(']');
+		}
+		return line.append('\n').toString();
+	}
+
+	private static String write(DSMatchedSeqPattern p) {
+		try {
+			StringWriter s = new StringWriter();
+			BufferedWriter writer = new BufferedWriter(s);
+			p.write(writer);
+			writer.flush();
+			return s.toString();
+		} catch (Exception e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+}